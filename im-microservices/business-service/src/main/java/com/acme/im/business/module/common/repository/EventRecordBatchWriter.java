@@ -0,0 +1,498 @@
+package com.acme.im.business.module.common.repository;
+
+import com.acme.im.common.infrastructure.nats.config.EventPersistenceConfig;
+import com.acme.im.common.infrastructure.nats.entity.EventRecord;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 事件记录批量写入器
+ * 单一写线程从有界队列取出事件记录，按目标表分组后以JDBC批量写入
+ *
+ * 特性：
+ * 1. 批量写入 - 同一表的记录一次batchUpdate提交，配合rewriteBatchedStatements由驱动改写为多行INSERT
+ * 2. 有界队列 - 容量固定、大小O(1)，队列满时调用方短暂等待，超时拒绝并计数，不静默丢弃旧事件
+ * 3. 失败隔离 - 批量失败后逐行重写，只有出错的行进入重试队列，约束冲突等不可恢复错误直接放弃
+ * 4. 按天分表 - 可选，短保留期事件写入event_records_yyyyMMdd，清理时整表删除；
+ *    分表创建和删除后重建event_records_all视图（主表UNION ALL各分表），查询统一读取该视图
+ *
+ * 写入使用INSERT IGNORE，按event_id唯一约束去重，重试不会产生重复记录
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class EventRecordBatchWriter {
+
+    private static final String MAIN_TABLE = "event_records";
+    private static final String READ_VIEW = "event_records_all";
+    private static final String PARTITION_PREFIX = MAIN_TABLE + "_";
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private static final String COLUMNS = "event_id, subject, event_type, status, priority, source_service, " +
+            "source_instance, target_service, target_instance, user_id, device_id, session_id, event_data, " +
+            "metadata, created_at, expires_at, retry_count, max_retries, error_message, error_code, " +
+            "processing_time, persisted, persisted_at";
+    private static final String PLACEHOLDERS = "?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?";
+
+    /**
+     * 过期记录分块删除的行数
+     */
+    private static final int DELETE_CHUNK_SIZE = 5000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EventPersistenceConfig config;
+
+    private BlockingQueue<EventRecord> queue;
+    private final ArrayDeque<RetryRow> retryQueue = new ArrayDeque<>();
+    private final Set<String> knownPartitions = ConcurrentHashMap.newKeySet();
+    private Thread writerThread;
+    private volatile boolean running = false;
+
+    // 统计信息
+    private final AtomicLong enqueuedRows = new AtomicLong(0);
+    private final AtomicLong rejectedRows = new AtomicLong(0);
+    private final AtomicLong writtenRows = new AtomicLong(0);
+    private final AtomicLong batches = new AtomicLong(0);
+    private final AtomicLong rowFallbacks = new AtomicLong(0);
+    private final AtomicLong retriedRows = new AtomicLong(0);
+    private final AtomicLong abandonedRows = new AtomicLong(0);
+    private final AtomicLong totalFlushNanos = new AtomicLong(0);
+
+    /**
+     * 等待重试的行，只由写线程访问
+     */
+    private static final class RetryRow {
+        private final EventRecord record;
+        private int attempts;
+        private long nextAttemptAt;
+
+        RetryRow(EventRecord record) {
+            this.record = record;
+        }
+    }
+
+    /**
+     * 启动写线程
+     */
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(config.getMaxCacheSize());
+        try {
+            knownPartitions.addAll(listPartitions());
+            refreshReadView();
+        } catch (Exception e) {
+            log.warn("事件记录读视图初始化失败: error={}", e.getMessage());
+        }
+        running = true;
+        writerThread = new Thread(this::runWriter, "event-record-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("事件记录批量写入器已启动: batchSize={}, queueCapacity={}, partitioned={}",
+                config.getBatchSize(), config.getMaxCacheSize(), config.getPartition().isEnabled());
+    }
+
+    /**
+     * 提交一条记录，队列满时最多等待offerTimeoutMs
+     *
+     * @return 是否已入队
+     */
+    public boolean submit(EventRecord record) {
+        if (!running) {
+            return false;
+        }
+        try {
+            if (queue.offer(record, config.getBatch().getOfferTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                enqueuedRows.incrementAndGet();
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejectedRows.incrementAndGet();
+        log.warn("事件记录队列已满，拒绝写入: eventId={}, queueSize={}", record.getEventId(), queue.size());
+        return false;
+    }
+
+    /**
+     * 立即写入一条记录，不经过队列
+     *
+     * @return 是否写入成功
+     */
+    public boolean writeNow(EventRecord record) {
+        try {
+            insertRow(tableFor(record), record);
+            writtenRows.incrementAndGet();
+            return true;
+        } catch (Exception e) {
+            log.error("事件记录写入失败: eventId={}, error={}", record.getEventId(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 当前排队的记录数
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * 清理过期事件：删除到期的分表，并分块删除主表中已过期的记录
+     *
+     * @return 删除的行数（不含整表删除的分表）
+     */
+    public int cleanupExpired(LocalDateTime now) {
+        if (config.getPartition().isEnabled()) {
+            dropExpiredPartitions(now.toLocalDate());
+        }
+        int deleted = 0;
+        int chunk;
+        do {
+            chunk = jdbcTemplate.update("DELETE FROM " + MAIN_TABLE + " WHERE expires_at < ? LIMIT " + DELETE_CHUNK_SIZE, now);
+            deleted += chunk;
+        } while (chunk == DELETE_CHUNK_SIZE && running);
+        return deleted;
+    }
+
+    /**
+     * 获取写入统计
+     */
+    public WriterStats getStats() {
+        return new WriterStats(queue.size(), enqueuedRows.get(), rejectedRows.get(), writtenRows.get(),
+                batches.get(), rowFallbacks.get(), retriedRows.get(), abandonedRows.get(),
+                batches.get() > 0 ? totalFlushNanos.get() / 1_000_000.0 / batches.get() : 0.0);
+    }
+
+    /**
+     * 停止写线程，写完队列中剩余的记录
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("事件记录批量写入器已关闭: {}", getStats());
+    }
+
+    // ================================
+    // 写线程
+    // ================================
+
+    private void runWriter() {
+        int batchSize = Math.max(1, config.getBatchSize());
+        List<EventRecord> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                long waitMs = retryQueue.isEmpty() ? config.getBatchIntervalMs() : config.getBatch().getRetryBackoffMs();
+                EventRecord first = queue.poll(waitMs, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    writeBatch(batch);
+                    batch.clear();
+                }
+                retryDue(System.currentTimeMillis());
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            } catch (Exception e) {
+                log.error("事件记录写线程异常", e);
+                batch.clear();
+            }
+        }
+
+        // 关闭时写完剩余记录，重试队列中的行最后尝试一次
+        while (queue.drainTo(batch, batchSize) > 0) {
+            writeBatch(batch);
+            batch.clear();
+        }
+        retryDue(Long.MAX_VALUE);
+        if (!retryQueue.isEmpty()) {
+            abandonedRows.addAndGet(retryQueue.size());
+            log.warn("关闭时放弃未写入的事件记录: count={}", retryQueue.size());
+            retryQueue.clear();
+        }
+    }
+
+    /**
+     * 按目标表分组批量写入，批量失败时逐行写入隔离失败的行
+     */
+    private void writeBatch(List<EventRecord> batch) {
+        Map<String, List<EventRecord>> byTable = new LinkedHashMap<>();
+        for (EventRecord record : batch) {
+            byTable.computeIfAbsent(tableFor(record), t -> new ArrayList<>()).add(record);
+        }
+        for (Map.Entry<String, List<EventRecord>> entry : byTable.entrySet()) {
+            String table = entry.getKey();
+            List<EventRecord> rows = entry.getValue();
+            long start = System.nanoTime();
+            try {
+                jdbcTemplate.batchUpdate(insertSql(table), rows, rows.size(), this::bind);
+                writtenRows.addAndGet(rows.size());
+                batches.incrementAndGet();
+                totalFlushNanos.addAndGet(System.nanoTime() - start);
+            } catch (Exception e) {
+                log.warn("事件记录批量写入失败，逐行重写: table={}, size={}, error={}", table, rows.size(), e.getMessage());
+                rowFallbacks.incrementAndGet();
+                for (EventRecord record : rows) {
+                    try {
+                        insertRow(table, record);
+                        writtenRows.incrementAndGet();
+                    } catch (Exception rowError) {
+                        scheduleRetry(new RetryRow(record), rowError);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 重写到期的失败行
+     */
+    private void retryDue(long now) {
+        int count = retryQueue.size();
+        for (int i = 0; i < count; i++) {
+            RetryRow row = retryQueue.pollFirst();
+            if (row.nextAttemptAt > now) {
+                retryQueue.addLast(row);
+                continue;
+            }
+            retriedRows.incrementAndGet();
+            try {
+                insertRow(tableFor(row.record), row.record);
+                writtenRows.incrementAndGet();
+            } catch (Exception e) {
+                scheduleRetry(row, e);
+            }
+        }
+    }
+
+    private void scheduleRetry(RetryRow row, Exception error) {
+        row.attempts++;
+        boolean permanent = error instanceof DataIntegrityViolationException;
+        if (permanent || row.attempts > config.getBatch().getMaxRetries()
+                || retryQueue.size() >= config.getBatch().getRetryCapacity()) {
+            abandonedRows.incrementAndGet();
+            log.error("放弃写入事件记录: eventId={}, attempts={}, error={}",
+                    row.record.getEventId(), row.attempts, error.getMessage());
+            return;
+        }
+        row.nextAttemptAt = System.currentTimeMillis() + config.getBatch().getRetryBackoffMs() * row.attempts;
+        retryQueue.addLast(row);
+    }
+
+    // ================================
+    // SQL
+    // ================================
+
+    private void insertRow(String table, EventRecord record) {
+        jdbcTemplate.update(insertSql(table), ps -> bind(ps, record));
+    }
+
+    private static String insertSql(String table) {
+        return "INSERT IGNORE INTO " + table + " (" + COLUMNS + ") VALUES (" + PLACEHOLDERS + ")";
+    }
+
+    private void bind(PreparedStatement ps, EventRecord record) throws SQLException {
+        int i = 1;
+        ps.setString(i++, record.getEventId());
+        ps.setString(i++, record.getSubject());
+        ps.setString(i++, record.getEventType());
+        ps.setString(i++, record.getStatus());
+        ps.setString(i++, record.getPriority());
+        ps.setString(i++, record.getSourceService());
+        ps.setString(i++, record.getSourceInstance());
+        ps.setString(i++, record.getTargetService());
+        ps.setString(i++, record.getTargetInstance());
+        ps.setString(i++, record.getUserId());
+        ps.setString(i++, record.getDeviceId());
+        ps.setString(i++, record.getSessionId());
+        ps.setString(i++, record.getEventData());
+        ps.setString(i++, record.getMetadata());
+        ps.setObject(i++, record.getCreatedAt());
+        ps.setObject(i++, record.getExpiresAt());
+        ps.setObject(i++, record.getRetryCount() != null ? record.getRetryCount() : 0);
+        ps.setObject(i++, record.getMaxRetries() != null ? record.getMaxRetries() : 3);
+        ps.setString(i++, record.getErrorMessage());
+        ps.setString(i++, record.getErrorCode());
+        ps.setObject(i++, record.getProcessingTime());
+        ps.setBoolean(i++, true);
+        ps.setObject(i, LocalDateTime.now());
+    }
+
+    /**
+     * 记录的目标表：启用分表且保留期不超过分表保留天数时写入当天分表
+     */
+    private String tableFor(EventRecord record) {
+        EventPersistenceConfig.PartitionConfig partition = config.getPartition();
+        if (!partition.isEnabled() || record.getCreatedAt() == null || record.getExpiresAt() == null
+                || record.getExpiresAt().isAfter(record.getCreatedAt().plusDays(partition.getRetentionDays()))) {
+            return MAIN_TABLE;
+        }
+        String table = PARTITION_PREFIX + record.getCreatedAt().format(PARTITION_FORMAT);
+        if (!knownPartitions.contains(table)) {
+            synchronized (knownPartitions) {
+                if (!knownPartitions.contains(table)) {
+                    try {
+                        // 视图未包含新分表前不写入，避免写入的记录查询不到
+                        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + " LIKE " + MAIN_TABLE);
+                        knownPartitions.add(table);
+                        refreshReadView();
+                    } catch (Exception e) {
+                        knownPartitions.remove(table);
+                        log.warn("创建事件分表失败，写入主表: table={}, error={}", table, e.getMessage());
+                        return MAIN_TABLE;
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    private void dropExpiredPartitions(LocalDate today) {
+        LocalDate cutoff = today.minusDays(config.getPartition().getRetentionDays());
+        List<String> expired = new ArrayList<>();
+        for (String table : listPartitions()) {
+            if (partitionDay(table).isBefore(cutoff)) {
+                expired.add(table);
+            }
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        synchronized (knownPartitions) {
+            // 先把过期分表移出视图再删除，视图不会引用不存在的表
+            expired.forEach(knownPartitions::remove);
+            refreshReadView();
+        }
+        for (String table : expired) {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+            log.info("删除过期事件分表: table={}", table);
+        }
+    }
+
+    /**
+     * 数据库中已存在的分表
+     */
+    private List<String> listPartitions() {
+        List<String> tables = jdbcTemplate.queryForList(
+                "SELECT table_name FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name LIKE ?",
+                String.class, "event\\_records\\_%");
+        List<String> partitions = new ArrayList<>();
+        for (String table : tables) {
+            if (partitionDay(table) != null) {
+                partitions.add(table);
+            }
+        }
+        return partitions;
+    }
+
+    private static LocalDate partitionDay(String table) {
+        try {
+            return LocalDate.parse(table.substring(PARTITION_PREFIX.length()), PARTITION_FORMAT);
+        } catch (DateTimeParseException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 重建读视图：主表UNION ALL当前所有分表，分表按日期排序
+     */
+    private void refreshReadView() {
+        synchronized (knownPartitions) {
+            jdbcTemplate.execute(readViewSql(new TreeSet<>(knownPartitions)));
+        }
+    }
+
+    static String readViewSql(Collection<String> partitions) {
+        StringBuilder sql = new StringBuilder("CREATE OR REPLACE VIEW ").append(READ_VIEW)
+                .append(" AS SELECT * FROM ").append(MAIN_TABLE);
+        for (String partition : partitions) {
+            sql.append(" UNION ALL SELECT * FROM ").append(partition);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 写入统计
+     */
+    public static class WriterStats {
+        private final int queueSize;
+        private final long enqueued;
+        private final long rejected;
+        private final long written;
+        private final long batches;
+        private final long fallbacks;
+        private final long retried;
+        private final long abandoned;
+        private final double avgFlushMillis;
+
+        public WriterStats(int queueSize, long enqueued, long rejected, long written, long batches,
+                           long fallbacks, long retried, long abandoned, double avgFlushMillis) {
+            this.queueSize = queueSize;
+            this.enqueued = enqueued;
+            this.rejected = rejected;
+            this.written = written;
+            this.batches = batches;
+            this.fallbacks = fallbacks;
+            this.retried = retried;
+            this.abandoned = abandoned;
+            this.avgFlushMillis = avgFlushMillis;
+        }
+
+        public int getQueueSize() { return queueSize; }
+        public long getEnqueued() { return enqueued; }
+        public long getRejected() { return rejected; }
+        public long getWritten() { return written; }
+        public long getBatches() { return batches; }
+        public long getFallbacks() { return fallbacks; }
+        public long getRetried() { return retried; }
+        public long getAbandoned() { return abandoned; }
+        public double getAvgFlushMillis() { return avgFlushMillis; }
+
+        @Override
+        public String toString() {
+            return String.format("EventWriterStats{queue=%d, enqueued=%d, rejected=%d, written=%d, batches=%d, " +
+                            "fallbacks=%d, retried=%d, abandoned=%d, avgFlush=%.2fms}",
+                    queueSize, enqueued, rejected, written, batches, fallbacks, retried, abandoned, avgFlushMillis);
+        }
+    }
+}
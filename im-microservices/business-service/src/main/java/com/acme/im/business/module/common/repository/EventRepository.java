@@ -16,6 +16,8 @@ import java.util.Map;
 /**
  * 事件记录仓库接口
  * 使用MyBatis-Plus提供事件记录的数据库操作
+ *
+ * 查询读取event_records_all视图，同时覆盖主表和按天分表；删除只作用于主表，分表到期整表删除
  * 
  * @author IM开发团队
  * @since 1.0.0
@@ -26,31 +28,31 @@ public interface EventRepository extends BaseMapper<EventRecord> {
     /**
      * 根据事件ID查找事件记录
      */
-    @Select("SELECT * FROM event_records WHERE event_id = #{eventId}")
+    @Select("SELECT * FROM event_records_all WHERE event_id = #{eventId}")
     EventRecord findByEventId(@Param("eventId") String eventId);
 
     /**
      * 根据主题查找事件记录，按创建时间倒序
      */
-    @Select("SELECT * FROM event_records WHERE subject = #{subject} ORDER BY created_at DESC LIMIT #{limit}")
+    @Select("SELECT * FROM event_records_all WHERE subject = #{subject} ORDER BY created_at DESC LIMIT #{limit}")
     List<EventRecord> findBySubjectOrderByCreatedAtDesc(@Param("subject") String subject, @Param("limit") int limit);
 
     /**
      * 根据用户ID查找事件记录，按创建时间倒序
      */
-    @Select("SELECT * FROM event_records WHERE user_id = #{userId} ORDER BY created_at DESC LIMIT #{limit}")
+    @Select("SELECT * FROM event_records_all WHERE user_id = #{userId} ORDER BY created_at DESC LIMIT #{limit}")
     List<EventRecord> findByUserIdOrderByCreatedAtDesc(@Param("userId") String userId, @Param("limit") int limit);
 
     /**
      * 根据状态查找事件记录，按创建时间倒序
      */
-    @Select("SELECT * FROM event_records WHERE status = #{status} ORDER BY created_at DESC LIMIT #{limit}")
+    @Select("SELECT * FROM event_records_all WHERE status = #{status} ORDER BY created_at DESC LIMIT #{limit}")
     List<EventRecord> findByStatusOrderByCreatedAtDesc(@Param("status") String status, @Param("limit") int limit);
 
     /**
      * 根据优先级列表查找事件记录，按创建时间倒序
      */
-    @Select("SELECT * FROM event_records WHERE priority IN (${priorities}) ORDER BY created_at DESC LIMIT #{limit}")
+    @Select("SELECT * FROM event_records_all WHERE priority IN (${priorities}) ORDER BY created_at DESC LIMIT #{limit}")
     List<EventRecord> findByPriorityInOrderByCreatedAtDesc(@Param("priorities") String priorities, @Param("limit") int limit);
 
     /**
@@ -62,25 +64,25 @@ public interface EventRepository extends BaseMapper<EventRecord> {
     /**
      * 统计指定状态的事件数量
      */
-    @Select("SELECT COUNT(*) FROM event_records WHERE status = #{status}")
+    @Select("SELECT COUNT(*) FROM event_records_all WHERE status = #{status}")
     long countByStatus(@Param("status") String status);
 
     /**
      * 统计指定优先级列表的事件数量
      */
-    @Select("SELECT COUNT(*) FROM event_records WHERE priority IN (${priorities})")
+    @Select("SELECT COUNT(*) FROM event_records_all WHERE priority IN (${priorities})")
     long countByPriorityIn(@Param("priorities") String priorities);
 
     /**
      * 按主题分组统计事件数量
      */
-    @Select("SELECT subject, COUNT(*) as count FROM event_records GROUP BY subject")
+    @Select("SELECT subject, COUNT(*) as count FROM event_records_all GROUP BY subject")
     List<Map<String, Object>> countBySubjectGroupBySubject();
 
     /**
      * 查找指定时间范围内的事件记录
      */
-    @Select("SELECT * FROM event_records WHERE created_at BETWEEN #{startTime} AND #{endTime} ORDER BY created_at DESC")
+    @Select("SELECT * FROM event_records_all WHERE created_at BETWEEN #{startTime} AND #{endTime} ORDER BY created_at DESC")
     List<EventRecord> findByCreatedAtBetweenOrderByCreatedAtDesc(
         @Param("startTime") LocalDateTime startTime, 
         @Param("endTime") LocalDateTime endTime
@@ -89,12 +91,12 @@ public interface EventRepository extends BaseMapper<EventRecord> {
     /**
      * 查找包含指定错误代码的事件记录
      */
-    @Select("SELECT * FROM event_records WHERE error_code = #{errorCode} ORDER BY created_at DESC LIMIT #{limit}")
+    @Select("SELECT * FROM event_records_all WHERE error_code = #{errorCode} ORDER BY created_at DESC LIMIT #{limit}")
     List<EventRecord> findByErrorCodeOrderByCreatedAtDesc(@Param("errorCode") String errorCode, @Param("limit") int limit);
 
     /**
      * 查找指定服务的事件记录
      */
-    @Select("SELECT * FROM event_records WHERE source_service = #{serviceName} OR target_service = #{serviceName} ORDER BY created_at DESC LIMIT #{limit}")
+    @Select("SELECT * FROM event_records_all WHERE source_service = #{serviceName} OR target_service = #{serviceName} ORDER BY created_at DESC LIMIT #{limit}")
     List<EventRecord> findByServiceOrderByCreatedAtDesc(@Param("serviceName") String serviceName, @Param("limit") int limit);
 } 
\ No newline at end of file
@@ -1,27 +1,22 @@
 package com.acme.im.business.module.common.service;
 
-import com.acme.im.common.infrastructure.nats.constants.EventTopics;
+import com.acme.im.common.infrastructure.nats.config.EventPersistenceConfig;
 import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
 import com.acme.im.common.infrastructure.nats.entity.EventRecord;
-import com.acme.im.business.module.common.repository.EventRepository;
+import com.acme.im.business.module.common.repository.EventRecordBatchWriter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * 事件持久化服务（优化版）
- * 使用批量处理、缓存机制和异步队列，减少数据库操作频率
+ * 事件持久化服务
+ * 普通事件进入有界队列由EventRecordBatchWriter批量写入，高优先级和失败事件直接写入
  * 
  * @author IM开发团队
  * @since 1.0.0
@@ -32,26 +27,13 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class EventPersistenceService {
 
     private final ObjectMapper objectMapper;
-    private final EventRepository eventRepository;
-
-    // 事件缓存队列（内存缓存，减少数据库写入）
-    private final ConcurrentLinkedQueue<EventRecord> eventCache = new ConcurrentLinkedQueue<>();
-    
-    // 批量处理配置
-    private static final int BATCH_SIZE = 100; // 批量写入大小
-    private static final int MAX_CACHE_SIZE = 1000; // 最大缓存大小
-    private static final long BATCH_INTERVAL_MS = 5000; // 批量处理间隔（毫秒）
-    
-    // 统计信息
-    private final AtomicInteger cacheHitCount = new AtomicInteger(0);
-    private final AtomicInteger dbWriteCount = new AtomicInteger(0);
-    private final AtomicInteger batchProcessCount = new AtomicInteger(0);
+    private final EventRecordBatchWriter batchWriter;
+    private final EventPersistenceConfig config;
 
     /**
-     * 异步持久化事件（优化版）
-     * 优先使用缓存，批量写入数据库
+     * 异步持久化事件
+     * 入队后立即返回，队列满时短暂等待，仍无空位则返回false
      */
-    @Async
     public CompletableFuture<Boolean> persistEventAsync(BaseEvent<?> event) {
         try {
             // 检查是否为重要事件
@@ -60,17 +42,9 @@ public class EventPersistenceService {
                 return CompletableFuture.completedFuture(true);
             }
 
-            // 转换为EventRecord
+            // 转换为EventRecord并入队
             EventRecord eventRecord = convertToEventRecord(event);
-            
-            // 添加到缓存
-            addToCache(eventRecord);
-            
-            if (eventCache.size() >= BATCH_SIZE) {
-                triggerBatchProcessing();
-            }
-            
-            return CompletableFuture.completedFuture(true);
+            return CompletableFuture.completedFuture(batchWriter.submit(eventRecord));
 
         } catch (Exception e) {
             log.error("异步持久化事件失败: eventId={}", event.getEventId(), e);
@@ -92,7 +66,7 @@ public class EventPersistenceService {
             // 对于高优先级或失败事件，直接写入数据库
             if (isHighPriorityEvent(event) || isFailureEvent(event)) {
                 EventRecord eventRecord = convertToEventRecord(event);
-                return persistEventDirectly(eventRecord);
+                return batchWriter.writeNow(eventRecord);
             }
 
             // 其他事件使用异步批量处理
@@ -136,84 +110,6 @@ public class EventPersistenceService {
         return "FAILURE".equals(event.getStatus());
     }
 
-    /**
-     * 将事件添加到缓存
-     */
-    private void addToCache(EventRecord eventRecord) {
-        // 限制缓存大小
-        if (eventCache.size() >= MAX_CACHE_SIZE) {
-            EventRecord removed = eventCache.poll();
-            log.debug("缓存已满，移除最旧的事件: eventId={}", removed != null ? removed.getEventId() : "null");
-        }
-        
-        eventCache.offer(eventRecord);
-        cacheHitCount.incrementAndGet();
-        log.debug("事件已添加到缓存: eventId={}, cacheSize={}", eventRecord.getEventId(), eventCache.size());
-    }
-
-    /**
-     * 触发批量处理
-     */
-    private void triggerBatchProcessing() {
-        try {
-            List<EventRecord> batch = extractBatch();
-            if (!batch.isEmpty()) {
-                persistBatch(batch);
-                batchProcessCount.incrementAndGet();
-                log.info("批量处理完成: batchSize={}, totalProcessed={}", batch.size(), batchProcessCount.get());
-            }
-        } catch (Exception e) {
-            log.error("批量处理失败", e);
-        }
-    }
-
-    /**
-     * 提取批量数据
-     */
-    private List<EventRecord> extractBatch() {
-        List<EventRecord> batch = new java.util.ArrayList<>();
-        for (int i = 0; i < BATCH_SIZE && !eventCache.isEmpty(); i++) {
-            EventRecord record = eventCache.poll();
-            if (record != null) {
-                batch.add(record);
-            }
-        }
-        return batch;
-    }
-
-    /**
-     * 批量持久化
-     */
-    private void persistBatch(List<EventRecord> batch) {
-        try {
-            // 使用MyBatis-Plus的批量插入
-            for (EventRecord record : batch) {
-                eventRepository.insert(record);
-            }
-            dbWriteCount.addAndGet(batch.size());
-            log.debug("批量持久化成功: batchSize={}", batch.size());
-        } catch (Exception e) {
-            log.error("批量持久化失败: batchSize={}", batch.size(), e);
-            // 失败时重新放回缓存
-            eventCache.addAll(batch);
-        }
-    }
-
-    /**
-     * 直接持久化单个事件
-     */
-    private boolean persistEventDirectly(EventRecord eventRecord) {
-        try {
-            eventRepository.insert(eventRecord);
-            dbWriteCount.incrementAndGet();
-            log.debug("直接持久化成功: eventId={}", eventRecord.getEventId());
-            return true;
-        } catch (Exception e) {
-            log.error("直接持久化失败: eventId={}", eventRecord.getEventId(), e);
-            return false;
-        }
-    }
-
     /**
      * 转换BaseEvent为EventRecord
      */
@@ -228,7 +124,21 @@ public class EventPersistenceService {
         record.setSourceInstance(event.getSourceInstance());
         record.setUserId(event.getUserId());
         record.setDeviceId(event.getDeviceId());
-        record.setCreatedAt(event.getCreatedAt());
+        record.setTargetService(event.getTargetService());
+        record.setTargetInstance(event.getTargetInstance());
+        record.setSessionId(event.getSessionId());
+        record.setErrorMessage(event.getErrorMessage());
+        record.setErrorCode(event.getErrorCode());
+        record.setRetryCount(event.getRetryCount());
+        record.setMaxRetries(event.getMaxRetries());
+        record.setCreatedAt(event.getCreatedAt() != null ? event.getCreatedAt() : LocalDateTime.now());
+
+        // 按保留策略设置过期时间，永久保留的事件不设置
+        EventPersistenceConfig.RetentionStrategy retention = config.getRetentionStrategy(
+                event.getSubject(), event.getStatus(), event.getPriority());
+        if (!retention.isPermanent()) {
+            record.setExpiresAt(record.getCreatedAt().plusDays(retention.getRetentionDays()));
+        }
         
         // 设置事件数据
         try {
@@ -241,26 +151,18 @@ public class EventPersistenceService {
         return record;
     }
 
-    /**
-     * 定时批量处理（兜底机制）
-     */
-    @Scheduled(fixedDelay = BATCH_INTERVAL_MS)
-    public void scheduledBatchProcessing() {
-        if (!eventCache.isEmpty()) {
-            log.debug("定时批量处理: cacheSize={}", eventCache.size());
-            triggerBatchProcessing();
-        }
-    }
-
     /**
      * 获取统计信息
      */
     public Map<String, Object> getStatistics() {
+        EventRecordBatchWriter.WriterStats stats = batchWriter.getStats();
         return Map.of(
-            "cacheSize", eventCache.size(),
-            "cacheHitCount", cacheHitCount.get(),
-            "dbWriteCount", dbWriteCount.get(),
-            "batchProcessCount", batchProcessCount.get()
+            "queueSize", stats.getQueueSize(),
+            "rejectedCount", stats.getRejected(),
+            "dbWriteCount", stats.getWritten(),
+            "batchProcessCount", stats.getBatches(),
+            "retriedCount", stats.getRetried(),
+            "abandonedCount", stats.getAbandoned()
         );
     }
 
@@ -270,8 +172,8 @@ public class EventPersistenceService {
     @Scheduled(cron = "0 0 2 * * ?") // 每天凌晨2点执行
     public void cleanupExpiredEvents() {
         try {
-            LocalDateTime cutoffTime = LocalDateTime.now().minusDays(7); // 保留7天
-            int deletedCount = eventRepository.deleteByExpiresAtBefore(cutoffTime);
+            // 过期时间由保留策略写入，分表到期整表删除
+            int deletedCount = batchWriter.cleanupExpired(LocalDateTime.now());
             log.info("清理过期事件记录完成: deletedCount={}", deletedCount);
         } catch (Exception e) {
             log.error("清理过期事件记录失败", e);
@@ -32,6 +32,8 @@ public class MessageEventHandler {
     @NatsEventHandler(
         value = EventTopics.Common.Message.CHAT,
         priority = 50,
+        queueGroup = "${spring.application.name}",
+        partitionKey = "conversationId",
         description = "处理聊天消息发送请求"
     )
     public void handleChatMessage(BaseEvent<?> event) {
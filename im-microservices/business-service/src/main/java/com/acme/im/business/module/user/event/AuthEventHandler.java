@@ -39,6 +39,7 @@ public class AuthEventHandler {
     @NatsEventHandler(
         value = EventTopics.Common.Auth.VALIDATE,
         priority = 10,
+        queueGroup = "${spring.application.name}",
         description = "处理用户认证验证请求"
     )
     public void handleAuthValidation(BaseEvent<?> event) {
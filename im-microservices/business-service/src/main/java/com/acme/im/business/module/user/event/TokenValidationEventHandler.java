@@ -4,46 +4,62 @@ import com.acme.im.common.infrastructure.nats.annotation.NatsEventHandler;
 import com.acme.im.common.infrastructure.nats.constants.EventTopics;
 import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
 import com.acme.im.common.infrastructure.nats.dto.UserEvents;
-import com.acme.im.common.infrastructure.nats.publisher.AsyncEventPublisher;
 import com.acme.im.common.security.jwt.JwtTokenProvider;
 import com.acme.im.business.module.user.service.UserService;
-import lombok.RequiredArgsConstructor;
+import com.google.gson.Gson;
+import io.nats.client.Connection;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
 /**
  * Token验证事件处理器
- * 处理来自通信服务的Token验证请求
+ * 处理来自通信服务的Token验证请求，结果直接应答到请求的应答主题
  * 
  * @author acme
  * @since 1.0.0
  */
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class TokenValidationEventHandler {
 
-    private final AsyncEventPublisher eventPublisher;
+    private final Connection natsConnection;
+    private final Gson gson;
     private final JwtTokenProvider jwtTokenProvider;
     private final UserService userService;
 
+    public TokenValidationEventHandler(Connection natsConnection, @Qualifier("gson") Gson gson,
+                                       JwtTokenProvider jwtTokenProvider, UserService userService) {
+        this.natsConnection = natsConnection;
+        this.gson = gson;
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.userService = userService;
+    }
+
     /**
      * 处理Token验证请求
      */
-    @NatsEventHandler(value = EventTopics.Security.TOKEN_VALIDATE, priority = 100)
+    @NatsEventHandler(value = EventTopics.Security.TOKEN_VALIDATE, priority = 100, queueGroup = "${spring.application.name}")
     public void handleTokenValidationRequest(BaseEvent<UserEvents.TokenValidationRequest> event) {
         UserEvents.TokenValidationRequest request = event.getData();
-        String requestId = (String) event.getMetadata().get("requestId");
+        String requestId = request.getRequestId();
+        String replyTo = event.replyTo();
+        if (replyTo == null) {
+            // 只应答NATS请求，发布到同一主题的普通事件无人等待
+            log.debug("忽略无应答主题的Token验证事件: requestId={}", requestId);
+            return;
+        }
         
-        log.info("收到Token验证请求: requestId={}", requestId);
+        log.debug("收到Token验证请求: requestId={}", requestId);
         
         try {
             // 验证Token
             String token = request.getToken();
             if (!jwtTokenProvider.validateToken(token)) {
-                sendValidationResponse(requestId, false, null, null, null, "Token无效或已过期");
+                sendValidationResponse(replyTo, requestId, false, null, null, null, "Token无效或已过期");
                 return;
             }
             
@@ -54,7 +70,7 @@ public class TokenValidationEventHandler {
             // 查找用户
             Optional<com.acme.im.business.module.user.entity.User> userOpt = userService.findUserByUsername(username);
             if (userOpt.isEmpty()) {
-                sendValidationResponse(requestId, false, null, null, null, "用户不存在");
+                sendValidationResponse(replyTo, requestId, false, null, null, null, "用户不存在");
                 return;
             }
             
@@ -62,25 +78,25 @@ public class TokenValidationEventHandler {
             
             // 检查用户状态
             if (user.getStatus() != 1) { // 1表示正常状态
-                sendValidationResponse(requestId, false, null, null, null, "用户账户已被禁用");
+                sendValidationResponse(replyTo, requestId, false, null, null, null, "用户账户已被禁用");
                 return;
             }
             
             // 发送验证成功响应
-            sendValidationResponse(requestId, true, user.getId(), username, deviceId, null);
+            sendValidationResponse(replyTo, requestId, true, user.getId(), username, deviceId, null);
             
-            log.info("Token验证成功: requestId={}, userId={}, username={}", requestId, user.getId(), username);
+            log.debug("Token验证成功: requestId={}, userId={}, username={}", requestId, user.getId(), username);
             
         } catch (Exception e) {
             log.error("Token验证处理失败: requestId={}, error={}", requestId, e.getMessage(), e);
-            sendValidationResponse(requestId, false, null, null, null, "Token验证失败: " + e.getMessage());
+            sendValidationResponse(replyTo, requestId, false, null, null, null, "Token验证失败: " + e.getMessage());
         }
     }
 
     /**
-     * 发送Token验证响应
+     * 应答Token验证结果
      */
-    private void sendValidationResponse(String requestId, boolean valid, Long userId, String username, 
+    private void sendValidationResponse(String replyTo, String requestId, boolean valid, Long userId, String username, 
                                      String deviceId, String errorMessage) {
         try {
             UserEvents.TokenValidationResponse response = UserEvents.TokenValidationResponse.builder()
@@ -98,7 +114,7 @@ public class TokenValidationEventHandler {
                     .fromService("business-service", "default")
                     .addMetadata("requestId", requestId);
 
-            eventPublisher.publishEvent(EventTopics.Security.TOKEN_VALIDATE, responseEvent);
+            natsConnection.publish(replyTo, gson.toJson(responseEvent).getBytes(StandardCharsets.UTF_8));
             
             log.debug("发送Token验证响应: requestId={}, valid={}", requestId, valid);
             
@@ -33,6 +33,8 @@ public class WebSocketEventHandler {
     @NatsEventHandler(
         value = EventTopics.Common.WebSocket.ALL,
         priority = 100,
+        queueGroup = "${spring.application.name}",
+        partitionKey = "userId",
         description = "处理WebSocket连接状态事件"
     )
     public void handleWebSocketEvents(BaseEvent<WebSocketEvents.ConnectionEvent> event) {
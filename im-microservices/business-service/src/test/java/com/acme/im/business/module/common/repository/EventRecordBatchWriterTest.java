@@ -0,0 +1,203 @@
+package com.acme.im.business.module.common.repository;
+
+import com.acme.im.common.infrastructure.nats.config.EventPersistenceConfig;
+import com.acme.im.common.infrastructure.nats.entity.EventRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 事件记录批量写入器单元测试
+ * 用记录SQL的JdbcTemplate替代数据库，覆盖读视图、按天分表和批量失败后的逐行重写
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@DisplayName("EventRecordBatchWriter单元测试")
+class EventRecordBatchWriterTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2026, 10, 17, 12, 0);
+
+    /**
+     * 按执行顺序记录SQL，写线程和测试线程都会访问
+     */
+    private static class RecordingJdbcTemplate extends JdbcTemplate {
+        private final List<String> sqls = new CopyOnWriteArrayList<>();
+        private final List<String> partitions = new ArrayList<>();
+        private volatile boolean failBatches;
+        private volatile String rejectedEventId;
+
+        @Override
+        public void execute(String sql) {
+            sqls.add(sql);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            return (List<T>) new ArrayList<>(partitions);
+        }
+
+        @Override
+        public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                       ParameterizedPreparedStatementSetter<T> pss) {
+            if (failBatches) {
+                throw new TransientDataAccessResourceException("batch failed");
+            }
+            sqls.add(sql);
+            return new int[][]{new int[batchArgs.size()]};
+        }
+
+        @Override
+        public int update(String sql, PreparedStatementSetter pss) {
+            try {
+                PreparedStatement ps = mock(PreparedStatement.class);
+                pss.setValues(ps);
+                ArgumentCaptor<String> eventId = ArgumentCaptor.forClass(String.class);
+                verify(ps, atLeastOnce()).setString(eq(1), eventId.capture());
+                if (eventId.getValue().equals(rejectedEventId)) {
+                    throw new DataIntegrityViolationException("duplicate key");
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+            sqls.add(sql);
+            return 1;
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            sqls.add(sql);
+            return 0;
+        }
+    }
+
+    private final RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+    private final EventPersistenceConfig config = new EventPersistenceConfig();
+    private final EventRecordBatchWriter writer = new EventRecordBatchWriter(jdbcTemplate, config);
+
+    @BeforeEach
+    void setUp() {
+        config.getPartition().setEnabled(true);
+        config.getPartition().setRetentionDays(7);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.shutdown();
+    }
+
+    @Test
+    @DisplayName("读视图按日期顺序合并主表和分表")
+    void testReadViewUnionsPartitionsInDateOrder() {
+        jdbcTemplate.partitions.addAll(List.of("event_records_20261016", "event_records_20261015", "event_records_bak"));
+        writer.start();
+
+        assertEquals("CREATE OR REPLACE VIEW event_records_all AS SELECT * FROM event_records"
+                + " UNION ALL SELECT * FROM event_records_20261015"
+                + " UNION ALL SELECT * FROM event_records_20261016", jdbcTemplate.sqls.get(0));
+        assertEquals("CREATE OR REPLACE VIEW event_records_all AS SELECT * FROM event_records",
+                EventRecordBatchWriter.readViewSql(List.of()));
+    }
+
+    @Test
+    @DisplayName("短保留期记录写入当天分表，写入前视图已包含该分表")
+    void testShortLivedRecordGoesToDailyPartitionAfterViewRefresh() {
+        writer.start();
+        jdbcTemplate.sqls.clear();
+
+        assertTrue(writer.writeNow(record("e-1", 1)));
+        assertTrue(writer.writeNow(record("e-2", 7)));
+
+        assertEquals(4, jdbcTemplate.sqls.size());
+        assertEquals("CREATE TABLE IF NOT EXISTS event_records_20261017 LIKE event_records", jdbcTemplate.sqls.get(0));
+        assertTrue(jdbcTemplate.sqls.get(1).endsWith("UNION ALL SELECT * FROM event_records_20261017"),
+                "新分表先加入视图再写入");
+        assertTrue(jdbcTemplate.sqls.get(2).startsWith("INSERT IGNORE INTO event_records_20261017 ("));
+        assertTrue(jdbcTemplate.sqls.get(3).startsWith("INSERT IGNORE INTO event_records_20261017 ("),
+                "已知分表不重复创建");
+    }
+
+    @Test
+    @DisplayName("长保留期记录和未启用分表时写入主表")
+    void testLongRetentionRecordStaysInMainTable() {
+        writer.start();
+        jdbcTemplate.sqls.clear();
+
+        assertTrue(writer.writeNow(record("e-1", 30)));
+        config.getPartition().setEnabled(false);
+        assertTrue(writer.writeNow(record("e-2", 1)));
+
+        assertEquals(2, jdbcTemplate.sqls.size());
+        assertTrue(jdbcTemplate.sqls.get(0).startsWith("INSERT IGNORE INTO event_records ("));
+        assertTrue(jdbcTemplate.sqls.get(1).startsWith("INSERT IGNORE INTO event_records ("));
+    }
+
+    @Test
+    @DisplayName("清理时先把过期分表移出视图再删除")
+    void testCleanupRefreshesViewBeforeDroppingPartitions() {
+        jdbcTemplate.partitions.addAll(List.of("event_records_20261001", "event_records_20261015"));
+        writer.start();
+        jdbcTemplate.sqls.clear();
+
+        assertEquals(0, writer.cleanupExpired(NOW));
+
+        assertEquals(List.of(
+                "CREATE OR REPLACE VIEW event_records_all AS SELECT * FROM event_records"
+                        + " UNION ALL SELECT * FROM event_records_20261015",
+                "DROP TABLE IF EXISTS event_records_20261001",
+                "DELETE FROM event_records WHERE expires_at < ? LIMIT 5000"), jdbcTemplate.sqls);
+    }
+
+    @Test
+    @DisplayName("批量写入失败后逐行重写，约束冲突的行直接放弃")
+    void testBatchFailureFallsBackToRows() throws InterruptedException {
+        config.getPartition().setEnabled(false);
+        jdbcTemplate.failBatches = true;
+        jdbcTemplate.rejectedEventId = "e-2";
+        writer.start();
+
+        assertTrue(writer.submit(record("e-1", 30)));
+        assertTrue(writer.submit(record("e-2", 30)));
+        assertTrue(writer.submit(record("e-3", 30)));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getStats().getWritten() + writer.getStats().getAbandoned() < 3
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        EventRecordBatchWriter.WriterStats stats = writer.getStats();
+        assertEquals(2, stats.getWritten());
+        assertEquals(1, stats.getAbandoned());
+        assertEquals(0, stats.getBatches());
+        assertTrue(stats.getFallbacks() >= 1);
+    }
+
+    private static EventRecord record(String eventId, int retentionDays) {
+        EventRecord record = new EventRecord();
+        record.setEventId(eventId);
+        record.setSubject("im.orders");
+        record.setCreatedAt(NOW);
+        record.setExpiresAt(NOW.plusDays(retentionDays));
+        return record;
+    }
+}
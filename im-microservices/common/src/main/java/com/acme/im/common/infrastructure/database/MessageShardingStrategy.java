@@ -1,19 +1,22 @@
 package com.acme.im.common.infrastructure.database;
 
+import com.acme.im.common.infrastructure.database.sharding.ShardRouter;
+import com.acme.im.common.infrastructure.database.sharding.ShardRoutingTable;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 /**
  * 消息分表策略
  * 基于 messages_sharding_design.sql 的分表设计
- * 分表策略：按会话ID取模分表，共32张表
+ * 分表定位委托给分片路由器，初始布局与按会话ID对32取模一致；返回的表名均为读节点的表名
  */
 @Component
+@RequiredArgsConstructor
 public class MessageShardingStrategy {
     
-    /**
-     * 分表数量
-     */
-    private static final int SHARD_COUNT = 32;
+    private final ShardRouter shardRouter;
     
     /**
      * 根据会话ID获取分表名
@@ -26,8 +29,7 @@ public class MessageShardingStrategy {
             throw new IllegalArgumentException("会话ID不能为空");
         }
         
-        int shardIndex = (int) (conversationId % SHARD_COUNT);
-        return String.format("messages_%02d", shardIndex);
+        return shardRouter.route(conversationId).getReadNode().getTableName();
     }
     
     /**
@@ -55,21 +57,22 @@ public class MessageShardingStrategy {
      * @return 分表数量
      */
     public int getShardCount() {
-        return SHARD_COUNT;
+        return shardRouter.current().getNodes().size();
     }
     
     /**
      * 根据会话ID获取分表索引
      * 
      * @param conversationId 会话ID
-     * @return 分表索引 (0-31)
+     * @return 分表索引（路由表中的节点索引）
      */
     public int getShardIndex(Long conversationId) {
         if (conversationId == null) {
             throw new IllegalArgumentException("会话ID不能为空");
         }
         
-        return (int) (conversationId % SHARD_COUNT);
+        ShardRoutingTable table = shardRouter.current();
+        return table.indexOf(table.route(conversationId).getReadNode());
     }
     
     /**
@@ -83,25 +86,20 @@ public class MessageShardingStrategy {
             return false;
         }
         
-        try {
-            String suffix = tableName.substring("messages_".length());
-            int index = Integer.parseInt(suffix);
-            return index >= 0 && index < SHARD_COUNT;
-        } catch (NumberFormatException e) {
-            return false;
-        }
+        return shardRouter.current().getNodes().stream()
+                .anyMatch(node -> node.getTableName().equals(tableName));
     }
     
     /**
-     * 获取所有分表名列表
+     * 获取所有提供读的分表名列表
      * 
      * @return 分表名数组
      */
     public String[] getAllTableNames() {
-        String[] tableNames = new String[SHARD_COUNT];
-        for (int i = 0; i < SHARD_COUNT; i++) {
-            tableNames[i] = String.format("messages_%02d", i);
-        }
-        return tableNames;
+        List<String> tableNames = shardRouter.current().getScans().stream()
+                .map(scan -> scan.getNode().getTableName())
+                .distinct()
+                .toList();
+        return tableNames.toArray(new String[0]);
     }
 } 
\ No newline at end of file
@@ -1,5 +1,9 @@
 package com.acme.im.common.infrastructure.database;
 
+import com.acme.im.common.infrastructure.database.sharding.ShardNode;
+import com.acme.im.common.infrastructure.database.sharding.ShardRouter;
+import com.acme.im.common.infrastructure.database.sharding.ShardRoutingTable;
+
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -13,15 +17,23 @@ import java.util.Set;
  * 消息分表工具类
  * 提供分表相关的静态方法和常量
  * 
+ * 表名与分表索引均来自分片路由器的当前路由表（分表索引即路由表中的节点索引），
+ * 路由器未绑定前使用与 {@link #SHARD_COUNT} 一致的初始布局
+ * 
  * @author IM开发团队
  * @since 1.0.0
  */
 public class MessageShardingUtils {
     
     /**
-     * 分表总数
+     * 初始分表总数
      */
     public static final int SHARD_COUNT = 32;
+
+    /**
+     * 初始分片槽数
+     */
+    public static final int SLOT_COUNT = 1024;
     
     /**
      * 分表名称前缀
@@ -31,7 +43,31 @@ public class MessageShardingUtils {
     /**
      * 分表名称格式
      */
-    public static final String TABLE_NAME_FORMAT = "messages_%02d";
+    public static final String TABLE_NAME_FORMAT = ShardRoutingTable.TABLE_NAME_FORMAT;
+
+    private static final ShardRoutingTable INITIAL_TABLE = ShardRoutingTable.legacy(SHARD_COUNT, SLOT_COUNT);
+
+    /**
+     * 分片路由器，由Spring容器中的路由器启动时绑定
+     */
+    private static volatile ShardRouter router;
+
+    /**
+     * 绑定分片路由器
+     * 
+     * @param shardRouter 分片路由器
+     */
+    public static void bindRouter(ShardRouter shardRouter) {
+        router = shardRouter;
+    }
+
+    /**
+     * 当前路由表
+     */
+    private static ShardRoutingTable table() {
+        ShardRouter current = router;
+        return current != null ? current.current() : INITIAL_TABLE;
+    }
     
     /**
      * 根据会话ID获取分表名称
@@ -43,8 +79,7 @@ public class MessageShardingUtils {
         if (conversationId == null) {
             return getDefaultTableName();
         }
-        int shardIndex = getShardIndex(conversationId);
-        return String.format(TABLE_NAME_FORMAT, shardIndex);
+        return table().route(conversationId).getReadNode().getTableName();
     }
     
     /**
@@ -57,7 +92,8 @@ public class MessageShardingUtils {
         if (conversationId == null) {
             return 0;
         }
-        return (int) (conversationId % SHARD_COUNT);
+        ShardRoutingTable table = table();
+        return table.indexOf(table.route(conversationId).getReadNode());
     }
     
     /**
@@ -67,7 +103,7 @@ public class MessageShardingUtils {
      * @return 是否为有效分表索引
      */
     public static boolean isValidShardIndex(int shardIndex) {
-        return shardIndex >= 0 && shardIndex < SHARD_COUNT;
+        return shardIndex >= 0 && shardIndex < table().getNodes().size();
     }
     
     /**
@@ -76,7 +112,7 @@ public class MessageShardingUtils {
      * @return 默认分表名称
      */
     public static String getDefaultTableName() {
-        return String.format(TABLE_NAME_FORMAT, 0);
+        return table().getNodes().get(0).getTableName();
     }
     
     /**
@@ -85,11 +121,10 @@ public class MessageShardingUtils {
      * @return 所有分表名称列表
      */
     public static List<String> getAllTableNames() {
-        List<String> tableNames = new ArrayList<>();
-        for (int i = 0; i < SHARD_COUNT; i++) {
-            tableNames.add(String.format(TABLE_NAME_FORMAT, i));
-        }
-        return tableNames;
+        return table().getScans().stream()
+                .map(scan -> scan.getNode().getTableName())
+                .distinct()
+                .collect(Collectors.toList());
     }
     
     /**
@@ -100,13 +135,14 @@ public class MessageShardingUtils {
      * @return 指定范围的分表名称列表
      */
     public static List<String> getTableNamesInRange(int startIndex, int endIndex) {
-        if (startIndex < 0 || endIndex > SHARD_COUNT || startIndex >= endIndex) {
+        List<ShardNode> nodes = table().getNodes();
+        if (startIndex < 0 || endIndex > nodes.size() || startIndex >= endIndex) {
             throw new IllegalArgumentException("Invalid range: startIndex=" + startIndex + ", endIndex=" + endIndex);
         }
         
         List<String> tableNames = new ArrayList<>();
         for (int i = startIndex; i < endIndex; i++) {
-            tableNames.add(String.format(TABLE_NAME_FORMAT, i));
+            tableNames.add(nodes.get(i).getTableName());
         }
         return tableNames;
     }
@@ -122,15 +158,12 @@ public class MessageShardingUtils {
             return Arrays.asList(getDefaultTableName());
         }
         
-        Set<Integer> shardIndices = new HashSet<>();
+        Set<String> involved = new HashSet<>();
         for (Long conversationId : conversationIds) {
-            shardIndices.add(getShardIndex(conversationId));
+            involved.add(getTableName(conversationId));
         }
         
-        List<String> tableNames = new ArrayList<>();
-        for (Integer index : shardIndices) {
-            tableNames.add(String.format(TABLE_NAME_FORMAT, index));
-        }
+        List<String> tableNames = new ArrayList<>(involved);
         Collections.sort(tableNames);
         return tableNames;
     }
@@ -155,8 +188,7 @@ public class MessageShardingUtils {
      * @return 分表统计信息字符串
      */
     public static String getShardingInfo() {
-        return String.format("Message Sharding: %d tables (0-%d), prefix: %s", 
-                SHARD_COUNT, SHARD_COUNT - 1, TABLE_PREFIX);
+        return String.format("Message Sharding: %s, prefix: %s", table(), TABLE_PREFIX);
     }
     
     /**
@@ -170,13 +202,12 @@ public class MessageShardingUtils {
             return false;
         }
         
-        try {
-            String suffix = tableName.substring(TABLE_PREFIX.length());
-            int index = Integer.parseInt(suffix);
-            return isValidShardIndex(index);
-        } catch (NumberFormatException e) {
-            return false;
+        for (ShardNode node : table().getNodes()) {
+            if (node.getTableName().equals(tableName)) {
+                return true;
+            }
         }
+        return false;
     }
     
     /**
@@ -186,15 +217,12 @@ public class MessageShardingUtils {
      * @return 分表索引，如果不是有效分表名称则返回-1
      */
     public static int extractShardIndex(String tableName) {
-        if (!isValidTableName(tableName)) {
-            return -1;
-        }
-        
-        try {
-            String suffix = tableName.substring(TABLE_PREFIX.length());
-            return Integer.parseInt(suffix);
-        } catch (NumberFormatException e) {
-            return -1;
+        List<ShardNode> nodes = table().getNodes();
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i).getTableName().equals(tableName)) {
+                return i;
+            }
         }
+        return -1;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,20 @@
+package com.acme.im.common.infrastructure.database.sharding;
+
+/**
+ * 分片槽迁移阶段
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public enum MigrationPhase {
+
+    /**
+     * 双写：读源节点，写源节点并同步写目标节点，期间进行回填与校验
+     */
+    DUAL_WRITE,
+
+    /**
+     * 切读：读目标节点，仍双写，保证尚未刷新路由表的实例读到的数据不落后
+     */
+    CUTOVER
+}
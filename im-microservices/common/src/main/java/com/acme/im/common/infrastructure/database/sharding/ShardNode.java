@@ -0,0 +1,42 @@
+package com.acme.im.common.infrastructure.database.sharding;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * 物理分片节点
+ * 由数据源名称和表名唯一确定，同名表可以分布在不同的数据库实例上
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Getter
+@EqualsAndHashCode
+public final class ShardNode {
+
+    /**
+     * 数据源名称，default表示服务自身的主从数据源
+     */
+    private final String dataSource;
+
+    /**
+     * 表名，如 messages_00
+     */
+    private final String tableName;
+
+    public ShardNode(String dataSource, String tableName) {
+        if (dataSource == null || dataSource.isBlank()) {
+            throw new IllegalArgumentException("分片数据源不能为空");
+        }
+        if (tableName == null || !tableName.matches("[A-Za-z0-9_]+")) {
+            throw new IllegalArgumentException("无效的分片表名: " + tableName);
+        }
+        this.dataSource = dataSource;
+        this.tableName = tableName;
+    }
+
+    @Override
+    public String toString() {
+        return dataSource + "/" + tableName;
+    }
+}
@@ -0,0 +1,60 @@
+package com.acme.im.common.infrastructure.database.sharding;
+
+import lombok.Getter;
+
+/**
+ * 单个分片槽的路由结果
+ * 路由表按槽预先生成，查询路由不产生对象分配
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Getter
+public final class ShardRoute {
+
+    /**
+     * 分片槽
+     */
+    private final int slot;
+
+    /**
+     * 读节点
+     */
+    private final ShardNode readNode;
+
+    /**
+     * 主写节点，负责分配自增ID
+     */
+    private final ShardNode writeNode;
+
+    /**
+     * 影子写节点，迁移期间同步写入，未迁移时为null
+     */
+    private final ShardNode shadowNode;
+
+    /**
+     * 迁移阶段，未迁移时为null
+     */
+    private final MigrationPhase phase;
+
+    ShardRoute(int slot, ShardNode readNode, ShardNode writeNode, ShardNode shadowNode, MigrationPhase phase) {
+        this.slot = slot;
+        this.readNode = readNode;
+        this.writeNode = writeNode;
+        this.shadowNode = shadowNode;
+        this.phase = phase;
+    }
+
+    /**
+     * 是否处于迁移双写中
+     */
+    public boolean isDualWrite() {
+        return shadowNode != null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ShardRoute{slot=%d, read=%s, write=%s, shadow=%s, phase=%s}",
+                slot, readNode, writeNode, shadowNode, phase);
+    }
+}
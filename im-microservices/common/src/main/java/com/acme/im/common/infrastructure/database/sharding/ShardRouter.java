@@ -0,0 +1,24 @@
+package com.acme.im.common.infrastructure.database.sharding;
+
+/**
+ * 消息分片路由
+ * 所有消息分表的定位都经过路由器，业务代码不再直接对分表数取模
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public interface ShardRouter {
+
+    /**
+     * 路由会话
+     *
+     * @param conversationId 会话ID
+     * @return 会话所在分片槽的路由
+     */
+    ShardRoute route(Long conversationId);
+
+    /**
+     * 当前生效的路由表
+     */
+    ShardRoutingTable current();
+}
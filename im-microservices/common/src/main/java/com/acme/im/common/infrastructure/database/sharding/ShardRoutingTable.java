@@ -0,0 +1,402 @@
+package com.acme.im.common.infrastructure.database.sharding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 版本化分片路由表
+ * 会话按 conversation_id % slotCount 落到固定数量的分片槽，槽再映射到物理分片节点（数据源 + 表）
+ *
+ * 设计要点：
+ * 1. 槽数固定且为分表数的整数倍，初始布局 slot % tableCount 与原有 conversation_id % 32 完全一致，无需搬迁存量数据
+ * 2. 扩容只移动被重新分配的槽，其他会话的路由不变
+ * 3. 路由表不可变，每次变更生成新版本，路由器原子替换
+ * 4. 迁移中的槽同时记录源节点与目标节点，由迁移阶段决定读写哪一侧
+ * 5. 迁移完成后源节点残留的数据记为残留槽，清理完成前跨分片扫描需要按槽过滤
+ *
+ * 约束：消息ID是分表内自增，为避免ID冲突，一次迁移只能把同一源节点的槽迁往一个未承载任何数据的新节点
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public final class ShardRoutingTable {
+
+    /**
+     * 服务自身主从数据源的名称
+     */
+    public static final String DEFAULT_DATA_SOURCE = "default";
+
+    /**
+     * 消息分表名格式
+     */
+    public static final String TABLE_NAME_FORMAT = "messages_%02d";
+
+    private static final int NONE = -1;
+
+    private final long version;
+    private final int slotCount;
+    private final List<ShardNode> nodes;
+    private final int[] slotNodes;
+    private final int[] slotTargets;
+    private final MigrationPhase[] slotPhases;
+    private final int[] slotResiduals;
+
+    // 派生数据
+    private final ShardRoute[] routes;
+    private final List<ShardScan> scans;
+
+    private ShardRoutingTable(long version, int slotCount, List<ShardNode> nodes, int[] slotNodes,
+                              int[] slotTargets, MigrationPhase[] slotPhases, int[] slotResiduals) {
+        if (slotCount <= 0) {
+            throw new IllegalArgumentException("分片槽数必须大于0: " + slotCount);
+        }
+        if (slotNodes.length != slotCount || slotTargets.length != slotCount
+                || slotPhases.length != slotCount || slotResiduals.length != slotCount) {
+            throw new IllegalArgumentException("分片槽映射长度与槽数不一致: " + slotCount);
+        }
+        for (int slot = 0; slot < slotCount; slot++) {
+            checkNodeIndex(slotNodes[slot], nodes.size(), false);
+            checkNodeIndex(slotTargets[slot], nodes.size(), true);
+            checkNodeIndex(slotResiduals[slot], nodes.size(), true);
+            if ((slotTargets[slot] == NONE) != (slotPhases[slot] == null)) {
+                throw new IllegalArgumentException("分片槽迁移目标与迁移阶段不一致: slot=" + slot);
+            }
+        }
+        this.version = version;
+        this.slotCount = slotCount;
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        this.slotNodes = slotNodes;
+        this.slotTargets = slotTargets;
+        this.slotPhases = slotPhases;
+        this.slotResiduals = slotResiduals;
+        this.routes = buildRoutes();
+        this.scans = buildScans();
+    }
+
+    /**
+     * 构造路由表（用于从持久化的布局还原）
+     *
+     * @param version 版本
+     * @param slotCount 分片槽数
+     * @param nodes 节点列表，下标即节点索引
+     * @param slotNodes 槽 -> 所属节点索引
+     * @param slotTargets 槽 -> 迁移目标节点索引，-1表示未迁移
+     * @param slotPhases 槽 -> 迁移阶段，未迁移为null
+     * @param slotResiduals 槽 -> 存在残留数据的节点索引，-1表示无残留
+     */
+    public static ShardRoutingTable of(long version, int slotCount, List<ShardNode> nodes, int[] slotNodes,
+                                       int[] slotTargets, MigrationPhase[] slotPhases, int[] slotResiduals) {
+        return new ShardRoutingTable(version, slotCount, nodes, slotNodes.clone(), slotTargets.clone(),
+                slotPhases.clone(), slotResiduals.clone());
+    }
+
+    /**
+     * 与原有取模分表一致的初始布局（版本0）
+     *
+     * @param tableCount 分表数
+     * @param slotCount 分片槽数，必须是分表数的整数倍
+     */
+    public static ShardRoutingTable legacy(int tableCount, int slotCount) {
+        if (tableCount <= 0 || slotCount % tableCount != 0) {
+            throw new IllegalArgumentException(
+                    "分片槽数必须是分表数的整数倍: tableCount=" + tableCount + ", slotCount=" + slotCount);
+        }
+        List<ShardNode> nodes = new ArrayList<>(tableCount);
+        for (int i = 0; i < tableCount; i++) {
+            nodes.add(new ShardNode(DEFAULT_DATA_SOURCE, String.format(TABLE_NAME_FORMAT, i)));
+        }
+        int[] slotNodes = new int[slotCount];
+        for (int slot = 0; slot < slotCount; slot++) {
+            slotNodes[slot] = slot % tableCount;
+        }
+        return new ShardRoutingTable(0, slotCount, nodes, slotNodes, filled(slotCount),
+                new MigrationPhase[slotCount], filled(slotCount));
+    }
+
+    // ================================
+    // 路由
+    // ================================
+
+    /**
+     * 计算会话所在的分片槽
+     */
+    public int slotOf(long conversationId) {
+        return (int) Math.floorMod(conversationId, (long) slotCount);
+    }
+
+    /**
+     * 路由会话
+     */
+    public ShardRoute route(long conversationId) {
+        return routes[slotOf(conversationId)];
+    }
+
+    /**
+     * 路由分片槽
+     */
+    public ShardRoute routeSlot(int slot) {
+        return routes[slot];
+    }
+
+    /**
+     * 跨分片扫描目标：所有提供读的节点，附带必要的槽过滤
+     */
+    public List<ShardScan> getScans() {
+        return scans;
+    }
+
+    /**
+     * 节点索引
+     *
+     * @return 索引，不存在返回-1
+     */
+    public int indexOf(ShardNode node) {
+        return nodes.indexOf(node);
+    }
+
+    // ================================
+    // 迁移状态变更，均返回新版本
+    // ================================
+
+    /**
+     * 开始迁移：指定槽进入双写阶段
+     *
+     * @param slots 待迁移的槽，必须属于同一源节点且不在迁移或残留清理中
+     * @param target 目标节点，必须未承载任何数据
+     */
+    public ShardRoutingTable startMigration(int[] slots, ShardNode target) {
+        requireSlots(slots);
+        int source = slotNodes[slots[0]];
+        for (int slot : slots) {
+            if (slotNodes[slot] != source) {
+                throw new IllegalStateException("一次迁移的分片槽必须属于同一源节点: slot=" + slot);
+            }
+            if (slotTargets[slot] != NONE || slotResiduals[slot] != NONE) {
+                throw new IllegalStateException("分片槽正在迁移或待清理: slot=" + slot);
+            }
+        }
+
+        List<ShardNode> newNodes = new ArrayList<>(nodes);
+        int targetIndex = newNodes.indexOf(target);
+        if (targetIndex == NONE) {
+            newNodes.add(target);
+            targetIndex = newNodes.size() - 1;
+        } else if (holdsData(targetIndex)) {
+            throw new IllegalStateException("迁移目标节点已承载数据: " + target);
+        }
+
+        int[] targets = slotTargets.clone();
+        MigrationPhase[] phases = slotPhases.clone();
+        for (int slot : slots) {
+            targets[slot] = targetIndex;
+            phases[slot] = MigrationPhase.DUAL_WRITE;
+        }
+        return new ShardRoutingTable(version + 1, slotCount, newNodes, slotNodes.clone(), targets, phases,
+                slotResiduals.clone());
+    }
+
+    /**
+     * 切读：双写中的槽改为读目标节点
+     */
+    public ShardRoutingTable cutover(int[] slots) {
+        requirePhase(slots, MigrationPhase.DUAL_WRITE);
+        MigrationPhase[] phases = slotPhases.clone();
+        for (int slot : slots) {
+            phases[slot] = MigrationPhase.CUTOVER;
+        }
+        return new ShardRoutingTable(version + 1, slotCount, nodes, slotNodes.clone(), slotTargets.clone(),
+                phases, slotResiduals.clone());
+    }
+
+    /**
+     * 完成迁移：槽归属目标节点，停止双写，源节点数据记为残留
+     */
+    public ShardRoutingTable complete(int[] slots) {
+        requirePhase(slots, MigrationPhase.CUTOVER);
+        int[] owners = slotNodes.clone();
+        int[] targets = slotTargets.clone();
+        MigrationPhase[] phases = slotPhases.clone();
+        int[] residuals = slotResiduals.clone();
+        for (int slot : slots) {
+            residuals[slot] = owners[slot];
+            owners[slot] = targets[slot];
+            targets[slot] = NONE;
+            phases[slot] = null;
+        }
+        return new ShardRoutingTable(version + 1, slotCount, nodes, owners, targets, phases, residuals);
+    }
+
+    /**
+     * 放弃迁移：仅允许在双写阶段放弃，目标节点上已写入的数据需另行清理
+     */
+    public ShardRoutingTable abort(int[] slots) {
+        requirePhase(slots, MigrationPhase.DUAL_WRITE);
+        int[] targets = slotTargets.clone();
+        MigrationPhase[] phases = slotPhases.clone();
+        for (int slot : slots) {
+            targets[slot] = NONE;
+            phases[slot] = null;
+        }
+        return new ShardRoutingTable(version + 1, slotCount, nodes, slotNodes.clone(), targets, phases,
+                slotResiduals.clone());
+    }
+
+    /**
+     * 残留数据清理完成
+     */
+    public ShardRoutingTable clearResidual(int[] slots) {
+        requireSlots(slots);
+        int[] residuals = slotResiduals.clone();
+        for (int slot : slots) {
+            residuals[slot] = NONE;
+        }
+        return new ShardRoutingTable(version + 1, slotCount, nodes, slotNodes.clone(), slotTargets.clone(),
+                slotPhases.clone(), residuals);
+    }
+
+    // ================================
+    // 访问器
+    // ================================
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * 全部节点（含迁移目标与已不承载数据的节点），下标即节点索引
+     */
+    public List<ShardNode> getNodes() {
+        return nodes;
+    }
+
+    public int[] getSlotNodes() {
+        return slotNodes.clone();
+    }
+
+    public int[] getSlotTargets() {
+        return slotTargets.clone();
+    }
+
+    public MigrationPhase[] getSlotPhases() {
+        return slotPhases.clone();
+    }
+
+    public int[] getSlotResiduals() {
+        return slotResiduals.clone();
+    }
+
+    @Override
+    public String toString() {
+        long migrating = Arrays.stream(slotTargets).filter(t -> t != NONE).count();
+        long residual = Arrays.stream(slotResiduals).filter(r -> r != NONE).count();
+        return String.format("ShardRoutingTable{version=%d, slots=%d, nodes=%d, readNodes=%d, migratingSlots=%d, residualSlots=%d}",
+                version, slotCount, nodes.size(), scans.size(), migrating, residual);
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    private ShardRoute[] buildRoutes() {
+        ShardRoute[] result = new ShardRoute[slotCount];
+        for (int slot = 0; slot < slotCount; slot++) {
+            ShardNode owner = nodes.get(slotNodes[slot]);
+            MigrationPhase phase = slotPhases[slot];
+            if (phase == null) {
+                result[slot] = new ShardRoute(slot, owner, owner, null, null);
+            } else {
+                ShardNode target = nodes.get(slotTargets[slot]);
+                ShardNode read = phase == MigrationPhase.CUTOVER ? target : owner;
+                result[slot] = new ShardRoute(slot, read, owner, target, phase);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按读节点归集槽；节点上存在不归它读的槽数据时需要过滤
+     */
+    private List<ShardScan> buildScans() {
+        int nodeCount = nodes.size();
+        int[] readSlotCounts = new int[nodeCount];
+        boolean[] foreignData = new boolean[nodeCount];
+        for (int slot = 0; slot < slotCount; slot++) {
+            int read = nodes.indexOf(routes[slot].getReadNode());
+            readSlotCounts[read]++;
+            if (slotTargets[slot] != NONE) {
+                // 双写阶段目标节点有部分数据，切读阶段源节点数据不再提供读
+                foreignData[read == slotNodes[slot] ? slotTargets[slot] : slotNodes[slot]] = true;
+            }
+            if (slotResiduals[slot] != NONE) {
+                foreignData[slotResiduals[slot]] = true;
+            }
+        }
+
+        List<ShardScan> result = new ArrayList<>();
+        for (int node = 0; node < nodeCount; node++) {
+            if (readSlotCounts[node] == 0) {
+                continue;
+            }
+            int[] filter = null;
+            if (foreignData[node]) {
+                filter = new int[readSlotCounts[node]];
+                int i = 0;
+                for (int slot = 0; slot < slotCount; slot++) {
+                    if (routes[slot].getReadNode().equals(nodes.get(node))) {
+                        filter[i++] = slot;
+                    }
+                }
+            }
+            result.add(new ShardScan(nodes.get(node), filter));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private boolean holdsData(int nodeIndex) {
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slotNodes[slot] == nodeIndex || slotTargets[slot] == nodeIndex || slotResiduals[slot] == nodeIndex) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void requireSlots(int[] slots) {
+        if (slots == null || slots.length == 0) {
+            throw new IllegalArgumentException("分片槽不能为空");
+        }
+        for (int slot : slots) {
+            if (slot < 0 || slot >= slotCount) {
+                throw new IllegalArgumentException("无效的分片槽: " + slot);
+            }
+        }
+    }
+
+    private void requirePhase(int[] slots, MigrationPhase phase) {
+        requireSlots(slots);
+        for (int slot : slots) {
+            if (slotPhases[slot] != phase) {
+                throw new IllegalStateException("分片槽不处于" + phase + "阶段: slot=" + slot + ", phase=" + slotPhases[slot]);
+            }
+        }
+    }
+
+    private static void checkNodeIndex(int index, int nodeCount, boolean optional) {
+        if ((optional && index == NONE) || (index >= 0 && index < nodeCount)) {
+            return;
+        }
+        throw new IllegalArgumentException("无效的分片节点索引: " + index);
+    }
+
+    private static int[] filled(int length) {
+        int[] array = new int[length];
+        Arrays.fill(array, NONE);
+        return array;
+    }
+}
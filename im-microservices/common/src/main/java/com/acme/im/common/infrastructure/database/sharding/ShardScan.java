@@ -0,0 +1,26 @@
+package com.acme.im.common.infrastructure.database.sharding;
+
+import lombok.Getter;
+
+/**
+ * 跨分片扫描目标
+ * 节点上存在不归它读的分片槽数据（迁移中或迁移后待清理）时，slots给出需要过滤保留的槽
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Getter
+public final class ShardScan {
+
+    private final ShardNode node;
+
+    /**
+     * 需要保留的分片槽，null表示节点上的数据全部由其提供读
+     */
+    private final int[] slots;
+
+    ShardScan(ShardNode node, int[] slots) {
+        this.node = node;
+        this.slots = slots;
+    }
+}
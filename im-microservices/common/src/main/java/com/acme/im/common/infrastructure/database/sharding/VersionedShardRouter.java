@@ -0,0 +1,75 @@
+package com.acme.im.common.infrastructure.database.sharding;
+
+import com.acme.im.common.infrastructure.database.MessageShardingUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 版本化分片路由器
+ * 持有当前生效的路由表，新版本通过 {@link #publish(ShardRoutingTable)} 原子替换
+ *
+ * 启动时使用与原有取模分表一致的初始布局（版本0），持久化的路由表由各服务加载后发布。
+ * 路由表只允许前进，旧版本的发布被忽略，保证多个刷新来源并发时不会回退。
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Slf4j
+@Component
+public class VersionedShardRouter implements ShardRouter {
+
+    private final AtomicReference<ShardRoutingTable> current;
+
+    public VersionedShardRouter(@Value("${message.sharding.table-count:32}") int tableCount,
+                                @Value("${message.sharding.slot-count:1024}") int slotCount) {
+        this.current = new AtomicReference<>(ShardRoutingTable.legacy(tableCount, slotCount));
+    }
+
+    /**
+     * 绑定到静态分表工具，使其与路由器使用同一份路由表
+     */
+    @PostConstruct
+    public void init() {
+        MessageShardingUtils.bindRouter(this);
+        log.info("消息分片路由器初始化完成: {}", current.get());
+    }
+
+    @Override
+    public ShardRoute route(Long conversationId) {
+        if (conversationId == null) {
+            throw new IllegalArgumentException("会话ID不能为空");
+        }
+        return current.get().route(conversationId);
+    }
+
+    @Override
+    public ShardRoutingTable current() {
+        return current.get();
+    }
+
+    /**
+     * 发布新路由表
+     * 版本0的初始布局可以被同为版本0的布局替换（配置变更），其余情况要求版本递增
+     *
+     * @param table 新路由表
+     * @return 是否生效
+     */
+    public boolean publish(ShardRoutingTable table) {
+        while (true) {
+            ShardRoutingTable existing = current.get();
+            boolean accept = table.getVersion() > existing.getVersion()
+                    || (table.getVersion() == 0 && existing.getVersion() == 0);
+            if (!accept) {
+                return false;
+            }
+            if (current.compareAndSet(existing, table)) {
+                log.info("分片路由表已切换: {} -> {}", existing.getVersion(), table);
+                return true;
+            }
+        }
+    }
+}
@@ -62,4 +62,25 @@ public @interface NatsEventHandler {
      * 描述信息
      */
     String description() default "";
-} 
\ No newline at end of file
+
+    /**
+     * 队列组，可用占位符，例如：${spring.application.name}
+     * 同一队列组的多个实例之间负载均衡，每条事件只由其中一个实例处理；默认空，每个实例都处理
+     */
+    String queueGroup() default "";
+
+    /**
+     * 分区键，例如：conversationId, userId
+     * 按键在有序通道中并行处理，同一键的事件保持顺序；
+     * 依次从事件字段、事件数据（Map的键或对象字段）、元数据中取值；默认空，不分区
+     */
+    String partitionKey() default "";
+
+    /**
+     * JetStream持久消费者名称，可用占位符；非空时以拉取模式消费：
+     * 批量拉取、处理完成后显式确认、失败按退避重投，超过重投上限写入 event_retry_queue。
+     * 此模式下 retryCount 为最大重投次数，为0时使用 im.event.consumer.max-deliver；
+     * 消息至少投递一次，处理器需幂等。默认空，使用普通订阅
+     */
+    String durable() default "";
+}
@@ -0,0 +1,24 @@
+package com.acme.im.common.infrastructure.nats.codec;
+
+import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
+import io.nats.client.Message;
+
+import java.io.IOException;
+
+/**
+ * 事件解码器
+ * 把NATS消息直接解码为带具体数据类型的BaseEvent
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public interface EventCodec {
+
+    /**
+     * 解码消息
+     *
+     * @param message NATS消息
+     * @return 事件，消息体为空时返回null
+     */
+    BaseEvent<?> decode(Message message) throws IOException;
+}
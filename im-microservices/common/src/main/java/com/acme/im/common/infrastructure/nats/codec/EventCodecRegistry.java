@@ -0,0 +1,134 @@
+package com.acme.im.common.infrastructure.nats.codec;
+
+import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
+import com.acme.im.common.infrastructure.nats.handler.SubjectTrie;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 事件解码器注册表
+ * 按主题选择解码器，类型适配器按数据类型只构建一次
+ *
+ * 选择顺序：
+ * 1. 显式注册 - registerPayloadType / registerProtobuf 注册的主题模式，精确模式优先
+ * 2. 处理器推断 - 订阅方根据处理器方法的参数类型给出的数据类型
+ * 3. 默认 - 不带类型的BaseEvent，data解码为Map
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@Slf4j
+public class EventCodecRegistry {
+
+    @Autowired
+    @Qualifier("gson")
+    private Gson gson;
+
+    /**
+     * 显式注册的解码器
+     */
+    private final SubjectTrie<Registration> registrations = new SubjectTrie<>();
+
+    /**
+     * 数据类型 -> JSON解码器
+     */
+    private final Map<Type, GsonEventCodec> jsonCodecs = new ConcurrentHashMap<>();
+
+    private volatile GsonEventCodec untypedCodec;
+
+    /**
+     * 注册信息
+     */
+    private static final class Registration {
+        private final String pattern;
+        private final EventCodec codec;
+
+        Registration(String pattern, EventCodec codec) {
+            this.pattern = pattern;
+            this.codec = codec;
+        }
+    }
+
+    /**
+     * 注册主题的JSON事件数据类型
+     *
+     * @param pattern 主题模式，支持 * 与 >
+     * @param payloadType data的具体类型
+     */
+    public void registerPayloadType(String pattern, Type payloadType) {
+        registrations.insert(pattern, new Registration(pattern, jsonCodec(payloadType)));
+        log.info("注册事件数据类型: pattern={}, type={}", pattern, payloadType.getTypeName());
+    }
+
+    /**
+     * 注册主题的Protobuf解码器，消息体为protobuf编码的事件数据
+     *
+     * @param pattern 主题模式，支持 * 与 >
+     * @param parser protobuf消息解析器
+     */
+    public <M extends MessageLite> void registerProtobuf(String pattern, Parser<M> parser) {
+        registrations.insert(pattern, new Registration(pattern, new ProtobufEventCodec<>(parser)));
+        log.info("注册Protobuf事件解码器: pattern={}", pattern);
+    }
+
+    /**
+     * 选择主题的解码器
+     *
+     * @param subject 主题
+     * @param handlerPayloadType 处理器期望的数据类型，未知时为null
+     * @return 解码器
+     */
+    public EventCodec resolve(String subject, Type handlerPayloadType) {
+        List<Registration> matches = registrations.match(subject);
+        if (!matches.isEmpty()) {
+            for (Registration registration : matches) {
+                if (registration.pattern.equals(subject)) {
+                    return registration.codec;
+                }
+            }
+            return matches.get(0).codec;
+        }
+        if (handlerPayloadType != null) {
+            return jsonCodec(handlerPayloadType);
+        }
+        return untypedCodec();
+    }
+
+    /**
+     * 获取数据类型对应的JSON解码器
+     */
+    @SuppressWarnings("unchecked")
+    public GsonEventCodec jsonCodec(Type payloadType) {
+        return jsonCodecs.computeIfAbsent(payloadType, type -> {
+            TypeAdapter<? extends BaseEvent<?>> adapter = (TypeAdapter<? extends BaseEvent<?>>)
+                    gson.getAdapter(TypeToken.getParameterized(BaseEvent.class, type));
+            return new GsonEventCodec(type, adapter);
+        });
+    }
+
+    /**
+     * 不带类型的解码器
+     */
+    @SuppressWarnings("unchecked")
+    public GsonEventCodec untypedCodec() {
+        GsonEventCodec codec = untypedCodec;
+        if (codec == null) {
+            codec = new GsonEventCodec(null, (TypeAdapter<? extends BaseEvent<?>>) (TypeAdapter<?>) gson.getAdapter(BaseEvent.class));
+            untypedCodec = codec;
+        }
+        return codec;
+    }
+}
@@ -0,0 +1,47 @@
+package com.acme.im.common.infrastructure.nats.codec;
+
+import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import io.nats.client.Message;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * JSON事件解码器
+ * 持有预先取得的 BaseEvent&lt;T&gt; 类型适配器，从消息字节流式解码，data直接得到具体类型
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class GsonEventCodec implements EventCodec {
+
+    private final Type payloadType;
+    private final TypeAdapter<? extends BaseEvent<?>> adapter;
+
+    public GsonEventCodec(Type payloadType, TypeAdapter<? extends BaseEvent<?>> adapter) {
+        this.payloadType = payloadType;
+        this.adapter = adapter;
+    }
+
+    @Override
+    public BaseEvent<?> decode(Message message) throws IOException {
+        byte[] data = message.getData();
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        JsonReader reader = new JsonReader(new Utf8ByteReader(data));
+        reader.setLenient(true);
+        return adapter.read(reader);
+    }
+
+    public Type getPayloadType() {
+        return payloadType;
+    }
+
+    @Override
+    public String toString() {
+        return "GsonEventCodec{" + (payloadType != null ? payloadType.getTypeName() : "untyped") + "}";
+    }
+}
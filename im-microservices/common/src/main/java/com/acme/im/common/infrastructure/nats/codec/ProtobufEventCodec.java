@@ -0,0 +1,52 @@
+package com.acme.im.common.infrastructure.nats.codec;
+
+import com.acme.im.common.infrastructure.nats.constants.EventTopics;
+import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import io.nats.client.Message;
+import io.nats.client.impl.Headers;
+
+import java.io.IOException;
+
+/**
+ * Protobuf事件解码器
+ * 消息体是protobuf编码的事件数据，事件ID等元信息放在NATS消息头中
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class ProtobufEventCodec<M extends MessageLite> implements EventCodec {
+
+    public static final String HEADER_EVENT_ID = "Nats-Msg-Id";
+    public static final String HEADER_EVENT_TYPE = "Im-Event-Type";
+    public static final String HEADER_USER_ID = "Im-User-Id";
+
+    private final Parser<M> parser;
+
+    public ProtobufEventCodec(Parser<M> parser) {
+        this.parser = parser;
+    }
+
+    @Override
+    public BaseEvent<?> decode(Message message) throws IOException {
+        byte[] data = message.getData();
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        M payload = parser.parseFrom(data);
+        Headers headers = message.getHeaders();
+        String eventType = header(headers, HEADER_EVENT_TYPE);
+        return BaseEvent.<M>builder()
+                .eventId(header(headers, HEADER_EVENT_ID))
+                .subject(message.getSubject())
+                .eventType(eventType != null ? eventType : EventTopics.EventType.NOTIFICATION)
+                .userId(header(headers, HEADER_USER_ID))
+                .data(payload)
+                .build();
+    }
+
+    private static String header(Headers headers, String key) {
+        return headers != null ? headers.getFirst(key) : null;
+    }
+}
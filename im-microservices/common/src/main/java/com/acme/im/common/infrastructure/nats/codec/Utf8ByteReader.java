@@ -0,0 +1,82 @@
+package com.acme.im.common.infrastructure.nats.codec;
+
+import java.io.Reader;
+
+/**
+ * 字节数组UTF-8读取器
+ * 直接从消息字节解码字符交给JsonReader，省去中间的String与InputStreamReader缓冲区
+ *
+ * 非法字节序列按U+FFFD输出，不抛异常
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class Utf8ByteReader extends Reader {
+
+    private static final char REPLACEMENT = '�';
+
+    private final byte[] data;
+    private final int limit;
+    private int position;
+
+    /**
+     * 四字节序列解码出的低位代理，等待下一次读取输出
+     */
+    private char pendingLowSurrogate;
+
+    public Utf8ByteReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public Utf8ByteReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        int n = 0;
+        while (n < length && (pendingLowSurrogate != 0 || position < limit)) {
+            if (pendingLowSurrogate != 0) {
+                buffer[offset + n++] = pendingLowSurrogate;
+                pendingLowSurrogate = 0;
+                continue;
+            }
+            int b = data[position] & 0xFF;
+            if (b < 0x80) {
+                buffer[offset + n++] = (char) b;
+                position++;
+            } else if ((b & 0xE0) == 0xC0 && position + 1 < limit) {
+                buffer[offset + n++] = (char) (((b & 0x1F) << 6) | (data[position + 1] & 0x3F));
+                position += 2;
+            } else if ((b & 0xF0) == 0xE0 && position + 2 < limit) {
+                buffer[offset + n++] = (char) (((b & 0x0F) << 12)
+                        | ((data[position + 1] & 0x3F) << 6)
+                        | (data[position + 2] & 0x3F));
+                position += 3;
+            } else if ((b & 0xF8) == 0xF0 && position + 3 < limit) {
+                int codePoint = ((b & 0x07) << 18)
+                        | ((data[position + 1] & 0x3F) << 12)
+                        | ((data[position + 2] & 0x3F) << 6)
+                        | (data[position + 3] & 0x3F);
+                position += 4;
+                buffer[offset + n++] = Character.highSurrogate(codePoint);
+                pendingLowSurrogate = Character.lowSurrogate(codePoint);
+            } else {
+                buffer[offset + n++] = REPLACEMENT;
+                position++;
+            }
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    @Override
+    public void close() {
+        position = limit;
+        pendingLowSurrogate = 0;
+    }
+}
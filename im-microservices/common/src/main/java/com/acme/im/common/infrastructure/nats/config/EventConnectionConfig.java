@@ -0,0 +1,44 @@
+package com.acme.im.common.infrastructure.nats.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 发布连接配置
+ * 发布方共享的固定连接组大小、慢连接判定与后台维护参数
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "im.event.connection")
+public class EventConnectionConfig {
+
+    /**
+     * 连接数，NATS连接本身线程安全且多路复用，少量连接即可
+     */
+    private int connections = 4;
+
+    /**
+     * 慢连接阈值（字节），未确认字节数超过该值的连接暂不分配轮询流量；
+     * 按主题或键选择的有序发布不换连接，在原连接上等待回落
+     */
+    private long slowPendingBytes = 8 * 1024 * 1024;
+
+    /**
+     * 有序发布的背压等待上限（毫秒），首选连接超过慢连接阈值时最多等待这么久，超时后仍在原连接发布
+     */
+    private long backpressureMaxWaitMs = 100;
+
+    /**
+     * 后台维护间隔（毫秒），维护时flush各连接、采样吞吐并重建已关闭的连接
+     */
+    private long maintenanceIntervalMs = 1000;
+
+    /**
+     * 维护flush超时时间（毫秒）
+     */
+    private long flushTimeoutMs = 2000;
+}
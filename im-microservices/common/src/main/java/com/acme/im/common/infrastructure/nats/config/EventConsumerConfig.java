@@ -0,0 +1,62 @@
+package com.acme.im.common.infrastructure.nats.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * JetStream拉取消费者配置
+ * 持久事件处理器的拉取批量、确认与重投参数
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "im.event.consumer")
+public class EventConsumerConfig {
+
+    /**
+     * 是否启动拉取消费者
+     */
+    private boolean enabled = true;
+
+    /**
+     * 单次拉取的最大消息数，建议100~1000
+     */
+    private int batchSize = 200;
+
+    /**
+     * 单次拉取的最长等待时间（毫秒）
+     */
+    private long fetchWaitMs = 500;
+
+    /**
+     * 已投递未确认的最大消息数，同时设置在服务端消费者上并限制本地拉取
+     */
+    private int maxAckPending = 2000;
+
+    /**
+     * 确认超时（毫秒），超时未确认的消息由服务端重投
+     */
+    private long ackWaitMs = 30000;
+
+    /**
+     * 默认最大投递次数（含首次），达到后写入死信
+     */
+    private int maxDeliver = 5;
+
+    /**
+     * 处理失败后的重投延迟（毫秒），按已投递次数取值，超出时取最后一个
+     */
+    private List<Long> backoffMs = new ArrayList<>(Arrays.asList(1000L, 5000L, 30000L, 120000L));
+
+    /**
+     * 连接或拉取异常后的重试间隔（毫秒）
+     */
+    private long retryIntervalMs = 2000;
+}
@@ -0,0 +1,48 @@
+package com.acme.im.common.infrastructure.nats.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 事件处理器配置
+ * 事件分发、异步处理线程池、分区通道与主题缓存参数
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "im.event.handler")
+public class EventHandlerConfig {
+
+    /**
+     * 异步处理器线程数
+     */
+    private int asyncThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * 异步处理队列容量，队列满时由分发线程直接执行，形成背压
+     */
+    private int asyncQueueCapacity = 10000;
+
+    /**
+     * 分区处理器的有序通道数
+     */
+    private int partitionLanes = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 每个有序通道的队列容量，队列满时分发线程阻塞等待
+     */
+    private int partitionQueueCapacity = 1024;
+
+    /**
+     * 缓存处理器列表的具体主题数上限
+     */
+    private int subjectCacheSize = 4096;
+
+    /**
+     * 慢处理器告警阈值（毫秒）
+     */
+    private long slowHandlerThresholdMs = 1000;
+}
@@ -0,0 +1,67 @@
+package com.acme.im.common.infrastructure.nats.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.File;
+
+/**
+ * 事件发件箱配置
+ * 本地持久化发件箱的存储与转发参数
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "im.event.outbox")
+public class EventOutboxConfig {
+
+    /**
+     * 是否启用发件箱，未启用时事件直接走异步发布器
+     */
+    private boolean enabled = false;
+
+    /**
+     * 日志目录，生产环境应指向持久化磁盘
+     */
+    private String dir = System.getProperty("java.io.tmpdir") + File.separator + "im-event-outbox";
+
+    /**
+     * 单个分段大小（字节）
+     */
+    private int segmentBytes = 64 * 1024 * 1024;
+
+    /**
+     * 追加后是否刷盘。关闭时进程崩溃不丢事件，主机掉电可能丢失最近写入的事件
+     */
+    private boolean forceOnAppend = true;
+
+    /**
+     * 转发时允许未确认的发布数
+     */
+    private int maxInFlight = 256;
+
+    /**
+     * JetStream确认超时（毫秒）
+     */
+    private long ackTimeoutMs = 10000;
+
+    /**
+     * 发布失败后的重试间隔（毫秒）
+     */
+    private long retryBackoffMs = 1000;
+
+    /**
+     * 确认位置持久化间隔（毫秒）
+     * 重启后重放的记录由JetStream按Nats-Msg-Id去重，前提是流的duplicate_window
+     * 大于该间隔加上进程停机到恢复转发的时间，否则重放会重复投递
+     */
+    private long checkpointIntervalMs = 200;
+
+    /**
+     * 无新事件时转发线程的最长等待时间（毫秒）
+     */
+    private long idleWaitMs = 50;
+}
@@ -36,6 +36,11 @@ public class EventPersistenceConfig {
      */
     private StrategyConfig strategy = new StrategyConfig();
 
+    /**
+     * 按天分表配置
+     */
+    private PartitionConfig partition = new PartitionConfig();
+
     /**
      * 批量处理配置
      */
@@ -60,6 +65,26 @@ public class EventPersistenceConfig {
          * 是否启用异步批量处理
          */
         private boolean asyncEnabled = true;
+
+        /**
+         * 队列满时入队的最长等待时间（毫秒），超时后拒绝该事件
+         */
+        private long offerTimeoutMs = 50;
+
+        /**
+         * 单行写入失败后的最大重试次数
+         */
+        private int maxRetries = 3;
+
+        /**
+         * 重试间隔（毫秒）
+         */
+        private long retryBackoffMs = 1000;
+
+        /**
+         * 等待重试的行数上限
+         */
+        private int retryCapacity = 10000;
     }
 
     /**
@@ -68,9 +93,9 @@ public class EventPersistenceConfig {
     @Data
     public static class CacheConfig {
         /**
-         * 最大缓存大小
+         * 最大缓存大小，即待写入队列容量
          */
-        private int maxSize = 1000;
+        private int maxSize = 50000;
 
         /**
          * 缓存过期时间（秒）
@@ -88,6 +113,25 @@ public class EventPersistenceConfig {
         private long cleanupIntervalMs = 60000;
     }
 
+    /**
+     * 按天分表配置
+     * 启用后保留期不超过retentionDays的事件写入event_records_yyyyMMdd，到期整表删除；
+     * 保留期更长或永久保留的事件仍写入event_records
+     * 查询读取event_records_all视图，分表创建和删除时重建，包含主表和所有分表
+     */
+    @Data
+    public static class PartitionConfig {
+        /**
+         * 是否启用按天分表
+         */
+        private boolean enabled = false;
+
+        /**
+         * 分表保留天数
+         */
+        private int retentionDays = 7;
+    }
+
     /**
      * 持久化策略配置
      */
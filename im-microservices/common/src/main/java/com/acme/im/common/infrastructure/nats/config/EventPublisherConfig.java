@@ -0,0 +1,110 @@
+package com.acme.im.common.infrastructure.nats.config;
+
+import com.acme.im.common.infrastructure.nats.publisher.BackpressurePolicy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 异步事件发布配置
+ * 控制发布通道数、批量聚合、JetStream确认流水线与队列背压参数
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "im.event.publisher")
+public class EventPublisherConfig {
+
+    /**
+     * 发布通道数，每个通道独占一个写线程和一个NATS连接，同一主题固定落在同一通道以保持顺序
+     */
+    private int lanes = 4;
+
+    /**
+     * 事件队列总容量，平均分配到各通道（每个通道向上取整为2的幂）
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * 单批最大事件数
+     */
+    private int batchSize = 256;
+
+    /**
+     * 批量聚合等待时间（微秒），拿到首个事件后最多再等待这么久凑批
+     */
+    private long lingerMicros = 500;
+
+    /**
+     * 序列化缓冲区初始大小（字节）
+     */
+    private int bufferSize = 8192;
+
+    /**
+     * 批次flush超时（毫秒）
+     */
+    private long flushTimeoutMs = 5000;
+
+    /**
+     * 每个通道允许未确认的JetStream发布数，达到上限时写线程等待确认
+     */
+    private int maxPendingAcks = 1024;
+
+    /**
+     * JetStream确认超时（毫秒）
+     */
+    private long ackTimeoutMs = 10000;
+
+    /**
+     * 最大重试次数
+     */
+    private int maxRetries = 3;
+
+    /**
+     * 事件最长排队时间（毫秒），超过后丢弃
+     */
+    private long eventTtlMs = 60000;
+
+    /**
+     * 背压配置
+     */
+    private Backpressure backpressure = new Backpressure();
+
+    /**
+     * 背压配置
+     */
+    @Data
+    public static class Backpressure {
+        /**
+         * 未单独配置的主题使用的策略
+         */
+        private BackpressurePolicy defaultPolicy = BackpressurePolicy.FAIL_FAST;
+
+        /**
+         * 按主题配置的策略，键为NATS主题通配模式（* 匹配一段，> 匹配其余所有段），按配置顺序取首个匹配。
+         * YAML中键需加方括号，如 "[im.message.>]": SPILL
+         */
+        private Map<String, BackpressurePolicy> subjects = new LinkedHashMap<>();
+
+        /**
+         * BLOCK策略下调用方最长阻塞时间（毫秒）
+         */
+        private long blockTimeoutMs = 50;
+
+        /**
+         * SPILL策略的溢写目录
+         */
+        private String spillDir = System.getProperty("java.io.tmpdir") + File.separator + "im-event-spill";
+
+        /**
+         * 每个通道溢写日志的最大字节数，超过后按FAIL_FAST处理
+         */
+        private long spillMaxBytes = 256L * 1024 * 1024;
+    }
+}
@@ -0,0 +1,22 @@
+package com.acme.im.common.infrastructure.nats.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 事件订阅器配置
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "im.event.subscriber")
+public class EventSubscriberConfig {
+
+    /**
+     * 共享分发线程数，订阅按轮询分配到各分发线程，同一订阅内的消息保持顺序
+     */
+    private int dispatcherThreads = 4;
+}
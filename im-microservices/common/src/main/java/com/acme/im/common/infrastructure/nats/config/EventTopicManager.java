@@ -90,7 +90,10 @@ public final class EventTopicManager {
             EventTopics.Common.Auth.PERMISSION_DENIED,
             
             // 公共缓存事件（需要处理缓存失效）
-            EventTopics.Common.Cache.INVALIDATED
+            EventTopics.Common.Cache.INVALIDATED,
+            
+            // 安全相关事件（应答通信服务的Token验证请求）
+            EventTopics.Security.TOKEN_VALIDATE
         );
     }
 
@@ -115,6 +118,7 @@ public final class EventTopicManager {
             EventTopics.Business.User.STATUS_CHANGED,
             EventTopics.Business.User.LOGIN,
             EventTopics.Business.User.LOGOUT,
+            EventTopics.Business.User.DEVICE_REMOVED,
             EventTopics.Business.User.PROFILE_UPDATED,
             EventTopics.Business.User.AVATAR_UPDATED,
             EventTopics.Business.User.ONLINE_STATUS_CHANGED,
@@ -147,8 +151,7 @@ public final class EventTopicManager {
             EventTopics.Common.Auth.TOKEN_EXPIRED,
             EventTopics.Common.Auth.PERMISSION_DENIED,
             
-            // 安全相关事件（需要处理token验证等）
-            EventTopics.Security.TOKEN_VALIDATE,
+            // 安全相关事件（Token验证走请求/应答，不订阅TOKEN_VALIDATE）
             EventTopics.Security.TOKEN_REFRESH,
             EventTopics.Security.TOKEN_REVOKE,
             EventTopics.Security.AUTH_FAILED,
@@ -0,0 +1,483 @@
+package com.acme.im.common.infrastructure.nats.config;
+
+import io.nats.client.Connection;
+import io.nats.client.JetStream;
+import io.nats.client.Nats;
+import io.nats.client.Options;
+import io.nats.client.PublishOptions;
+import io.nats.client.Statistics;
+import io.nats.client.api.PublishAck;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * NATS发布连接管理器
+ * NATS连接线程安全且多路复用，发布方共享一组固定数量的连接，不借还、不加锁
+ *
+ * 特性：
+ * 1. 有序选择 - 按主题或键的哈希选定连接，同一键始终落在同一连接上以保持顺序；
+ *    首选连接过慢时在原连接上flush并等待未确认字节回落（有上限），不换连接；
+ *    只有首选连接已关闭、等待后台重建时才顺延到其他连接，此期间该键的顺序不保证
+ * 2. 慢连接规避 - 按连接统计未确认字节数（未flush的普通发布与未确认的JetStream发布），
+ *    轮询选择时超过阈值或未处于连接状态的连接顺延到下一个可用连接
+ * 3. 透明重连 - 断线期间由客户端自动重连并缓冲；重连耗尽被关闭的连接由后台线程重建
+ * 4. 指标 - 每个连接的吞吐、未确认字节、往返时延与重连次数
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@Slf4j
+public class NatsConnectionManager {
+
+    @Autowired
+    private Options natsOptions;
+
+    @Autowired
+    private EventConnectionConfig config;
+
+    private ManagedConnection[] connections;
+    private final AtomicInteger roundRobin = new AtomicInteger(0);
+    private ScheduledExecutorService maintenanceExecutor;
+    private volatile boolean shutdown = false;
+
+    /**
+     * 受管连接
+     * 连接对象可能在重建后被替换，调用方每次发布前通过本对象取用，不要长期持有底层连接
+     */
+    public static final class ManagedConnection {
+        private final int index;
+        private final Options options;
+        private volatile Connection connection;
+        private volatile JetStream jetStream;
+
+        private final AtomicLong publishedMessages = new AtomicLong(0);
+        private final AtomicLong publishedBytes = new AtomicLong(0);
+        private final AtomicLong unflushedBytes = new AtomicLong(0);
+        private final AtomicLong unackedBytes = new AtomicLong(0);
+        private final AtomicLong recreations = new AtomicLong(0);
+        private final AtomicLong backpressureWaits = new AtomicLong(0);
+        private final AtomicLong failovers = new AtomicLong(0);
+
+        // 维护线程采样
+        private long lastOutMsgs;
+        private long lastOutBytes;
+        private long lastSampleNanos;
+        private volatile double msgsPerSecond;
+        private volatile double bytesPerSecond;
+        private volatile long rttMicros = -1;
+
+        ManagedConnection(int index, Options options) {
+            this.index = index;
+            this.options = options;
+        }
+
+        /**
+         * 底层连接
+         *
+         * @throws IllegalStateException 连接尚未建立
+         */
+        public Connection connection() {
+            Connection current = connection;
+            if (current == null) {
+                throw new IllegalStateException("NATS连接不可用: " + options.getConnectionName());
+            }
+            return current;
+        }
+
+        /**
+         * 当前连接的JetStream上下文
+         */
+        public JetStream jetStream() throws IOException {
+            JetStream current = jetStream;
+            if (current == null) {
+                current = connection().jetStream();
+                jetStream = current;
+            }
+            return current;
+        }
+
+        /**
+         * 普通发布，字节数计入未确认量直到下一次flush完成
+         */
+        public void publish(String subject, byte[] data) {
+            connection().publish(subject, data);
+            publishedMessages.incrementAndGet();
+            publishedBytes.addAndGet(data.length);
+            unflushedBytes.addAndGet(data.length);
+        }
+
+        /**
+         * flush本连接，完成后清除此前的未flush字节数
+         */
+        public void flush(Duration timeout) throws TimeoutException, InterruptedException {
+            long snapshot = unflushedBytes.get();
+            connection().flush(timeout);
+            unflushedBytes.addAndGet(-snapshot);
+        }
+
+        /**
+         * JetStream异步发布，字节数计入未确认量直到收到确认或失败
+         */
+        public CompletableFuture<PublishAck> publishAsync(String subject, byte[] data, PublishOptions publishOptions)
+                throws IOException {
+            JetStream js = jetStream();
+            CompletableFuture<PublishAck> ack = publishOptions != null
+                    ? js.publishAsync(subject, data, publishOptions)
+                    : js.publishAsync(subject, data);
+            publishedMessages.incrementAndGet();
+            publishedBytes.addAndGet(data.length);
+            unackedBytes.addAndGet(data.length);
+            ack.whenComplete((result, error) -> unackedBytes.addAndGet(-data.length));
+            return ack;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getName() {
+            return options.getConnectionName();
+        }
+
+        public boolean isConnected() {
+            Connection current = connection;
+            return current != null && current.getStatus() == Connection.Status.CONNECTED;
+        }
+
+        /**
+         * 未确认字节数
+         */
+        public long getPendingBytes() {
+            return Math.max(0, unflushedBytes.get()) + Math.max(0, unackedBytes.get());
+        }
+
+        boolean isAvailable(long slowPendingBytes) {
+            return isConnected() && getPendingBytes() <= slowPendingBytes;
+        }
+
+        /**
+         * 连接已建立且未关闭，断线重连期间由客户端缓冲，仍可发布
+         */
+        boolean isOpen() {
+            Connection current = connection;
+            return current != null && current.getStatus() != Connection.Status.CLOSED;
+        }
+    }
+
+    /**
+     * 建立连接组并启动后台维护
+     */
+    @PostConstruct
+    public void initialize() {
+        int count = Math.max(1, config.getConnections());
+        String baseName = natsOptions.getConnectionName() != null ? natsOptions.getConnectionName() : "im";
+        connections = new ManagedConnection[count];
+        for (int i = 0; i < count; i++) {
+            Options options = new Options.Builder(natsOptions)
+                    .connectionName(baseName + "-pub-" + i)
+                    .build();
+            connections[i] = new ManagedConnection(i, options);
+            connect(connections[i]);
+        }
+
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "nats-connection-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(100, config.getMaintenanceIntervalMs());
+        maintenanceExecutor.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+
+        log.info("NATS发布连接管理器初始化完成: connections={}, connected={}",
+                count, (int) Arrays.stream(connections).filter(ManagedConnection::isConnected).count());
+    }
+
+    /**
+     * 按主题选择连接，同一主题固定落在同一连接上
+     */
+    public ManagedConnection select(String subject) {
+        return select(subject.hashCode());
+    }
+
+    /**
+     * 按键选择连接，同一键固定落在同一连接上；该连接过慢时在原连接上等待，已关闭时才顺延
+     */
+    public ManagedConnection select(int key) {
+        int h = key ^ (key >>> 16);
+        return pinned(Math.floorMod(h, connections.length));
+    }
+
+    /**
+     * 轮询选择连接，用于无顺序要求的发布
+     */
+    public ManagedConnection next() {
+        return pick(Math.floorMod(roundRobin.getAndIncrement(), connections.length));
+    }
+
+    public int getConnectionCount() {
+        return connections.length;
+    }
+
+    /**
+     * 有序选择：换连接会让同一键的消息在两条连接上乱序，因此只在首选连接已关闭时顺延
+     */
+    private ManagedConnection pinned(int preferred) {
+        ManagedConnection candidate = connections[preferred];
+        if (!candidate.isOpen()) {
+            candidate.failovers.incrementAndGet();
+            return pick(preferred);
+        }
+        awaitDrain(candidate);
+        return candidate;
+    }
+
+    /**
+     * 背压：未确认字节超过阈值时flush本连接，再等待JetStream确认回落，总时长不超过backpressureMaxWaitMs
+     * 超时后仍返回原连接，由客户端缓冲
+     */
+    private void awaitDrain(ManagedConnection managed) {
+        long threshold = config.getSlowPendingBytes();
+        if (managed.getPendingBytes() <= threshold) {
+            return;
+        }
+        managed.backpressureWaits.incrementAndGet();
+        long maxWaitMs = Math.max(0, config.getBackpressureMaxWaitMs());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        try {
+            if (managed.isConnected() && maxWaitMs > 0) {
+                managed.flush(Duration.ofMillis(maxWaitMs));
+            }
+            while (managed.getPendingBytes() > threshold && System.nanoTime() < deadline && !shutdown) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.debug("NATS连接背压等待超时: name={}, pending={}, error={}",
+                    managed.getName(), managed.getPendingBytes(), e.getMessage());
+        }
+    }
+
+    private ManagedConnection pick(int preferred) {
+        long threshold = config.getSlowPendingBytes();
+        ManagedConnection[] all = connections;
+        for (int i = 0; i < all.length; i++) {
+            ManagedConnection candidate = all[(preferred + i) % all.length];
+            if (candidate.isAvailable(threshold)) {
+                return candidate;
+            }
+        }
+        // 没有未超阈值的连接：选已连接中未确认最少的，全部断开时仍用首选连接，由客户端在重连期间缓冲
+        ManagedConnection best = null;
+        for (ManagedConnection candidate : all) {
+            if (candidate.isConnected() && (best == null || candidate.getPendingBytes() < best.getPendingBytes())) {
+                best = candidate;
+            }
+        }
+        return best != null ? best : all[preferred];
+    }
+
+    /**
+     * 后台维护：重建已关闭的连接、flush测量往返时延、采样吞吐
+     */
+    private void maintain() {
+        for (ManagedConnection managed : connections) {
+            if (shutdown) {
+                return;
+            }
+            try {
+                Connection current = managed.connection;
+                if (current == null || current.getStatus() == Connection.Status.CLOSED) {
+                    if (current != null) {
+                        log.warn("NATS连接已关闭，重建: name={}", managed.getName());
+                    }
+                    connect(managed);
+                    continue;
+                }
+                if (current.getStatus() == Connection.Status.CONNECTED) {
+                    long start = System.nanoTime();
+                    managed.flush(Duration.ofMillis(config.getFlushTimeoutMs()));
+                    managed.rttMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+                }
+                sample(managed, current.getStatistics());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.debug("NATS连接维护失败: name={}, error={}", managed.getName(), e.getMessage());
+            }
+        }
+    }
+
+    private void sample(ManagedConnection managed, Statistics statistics) {
+        long now = System.nanoTime();
+        long outMsgs = statistics.getOutMsgs();
+        long outBytes = statistics.getOutBytes();
+        if (managed.lastSampleNanos > 0 && now > managed.lastSampleNanos) {
+            double seconds = (now - managed.lastSampleNanos) / 1_000_000_000.0;
+            managed.msgsPerSecond = Math.max(0, outMsgs - managed.lastOutMsgs) / seconds;
+            managed.bytesPerSecond = Math.max(0, outBytes - managed.lastOutBytes) / seconds;
+        }
+        managed.lastOutMsgs = outMsgs;
+        managed.lastOutBytes = outBytes;
+        managed.lastSampleNanos = now;
+    }
+
+    private void connect(ManagedConnection managed) {
+        try {
+            Connection connection = Nats.connect(managed.options);
+            Connection previous = managed.connection;
+            managed.connection = connection;
+            managed.jetStream = null;
+            managed.unflushedBytes.set(0);
+            managed.lastSampleNanos = 0;
+            if (previous != null) {
+                managed.recreations.incrementAndGet();
+            }
+            log.debug("NATS发布连接已建立: name={}, url={}", managed.getName(), connection.getConnectedUrl());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("创建NATS发布连接失败: name={}, error={}", managed.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * 获取各连接统计信息
+     */
+    public List<ConnectionStats> getStats() {
+        List<ConnectionStats> stats = new ArrayList<>(connections.length);
+        for (ManagedConnection managed : connections) {
+            Connection current = managed.connection;
+            Statistics statistics = current != null ? current.getStatistics() : null;
+            stats.add(new ConnectionStats(
+                    managed.getName(),
+                    current != null ? current.getStatus().name() : "NOT_CONNECTED",
+                    managed.publishedMessages.get(),
+                    managed.publishedBytes.get(),
+                    managed.getPendingBytes(),
+                    managed.msgsPerSecond,
+                    managed.bytesPerSecond,
+                    managed.rttMicros,
+                    statistics != null ? statistics.getReconnects() : 0,
+                    managed.recreations.get(),
+                    managed.backpressureWaits.get(),
+                    managed.failovers.get()));
+        }
+        return stats;
+    }
+
+    /**
+     * 连接统计信息
+     */
+    public static class ConnectionStats {
+        private final String name;
+        private final String status;
+        private final long publishedMessages;
+        private final long publishedBytes;
+        private final long pendingBytes;
+        private final double msgsPerSecond;
+        private final double bytesPerSecond;
+        private final long rttMicros;
+        private final long reconnects;
+        private final long recreations;
+        private final long backpressureWaits;
+        private final long failovers;
+
+        public ConnectionStats(String name, String status, long publishedMessages, long publishedBytes,
+                               long pendingBytes, double msgsPerSecond, double bytesPerSecond,
+                               long rttMicros, long reconnects, long recreations,
+                               long backpressureWaits, long failovers) {
+            this.name = name;
+            this.status = status;
+            this.publishedMessages = publishedMessages;
+            this.publishedBytes = publishedBytes;
+            this.pendingBytes = pendingBytes;
+            this.msgsPerSecond = msgsPerSecond;
+            this.bytesPerSecond = bytesPerSecond;
+            this.rttMicros = rttMicros;
+            this.reconnects = reconnects;
+            this.recreations = recreations;
+            this.backpressureWaits = backpressureWaits;
+            this.failovers = failovers;
+        }
+
+        public String getName() { return name; }
+        public String getStatus() { return status; }
+        public long getPublishedMessages() { return publishedMessages; }
+        public long getPublishedBytes() { return publishedBytes; }
+        public long getPendingBytes() { return pendingBytes; }
+        public double getMsgsPerSecond() { return msgsPerSecond; }
+        public double getBytesPerSecond() { return bytesPerSecond; }
+        public long getRttMicros() { return rttMicros; }
+        public long getReconnects() { return reconnects; }
+        public long getRecreations() { return recreations; }
+        public long getBackpressureWaits() { return backpressureWaits; }
+        public long getFailovers() { return failovers; }
+
+        @Override
+        public String toString() {
+            return String.format("ConnectionStats{name=%s, status=%s, published=%d, bytes=%d, pending=%d, " +
+                            "msgs/s=%.1f, bytes/s=%.1f, rtt=%dus, reconnects=%d, recreations=%d, " +
+                            "backpressureWaits=%d, failovers=%d}",
+                    name, status, publishedMessages, publishedBytes, pendingBytes,
+                    msgsPerSecond, bytesPerSecond, rttMicros, reconnects, recreations,
+                    backpressureWaits, failovers);
+        }
+    }
+
+    /**
+     * 关闭全部连接，关闭前尽量flush已发布的消息
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+        }
+        if (connections == null) {
+            return;
+        }
+        for (ManagedConnection managed : connections) {
+            Connection current = managed.connection;
+            if (current == null) {
+                continue;
+            }
+            try {
+                if (current.getStatus() == Connection.Status.CONNECTED) {
+                    current.flush(Duration.ofMillis(config.getFlushTimeoutMs()));
+                }
+                current.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("关闭NATS发布连接异常: name={}, error={}", managed.getName(), e.getMessage());
+            }
+        }
+        log.info("NATS发布连接管理器已关闭: connections={}", connections.length);
+    }
+}
@@ -169,6 +169,40 @@ public final class EventTopics {
             public static final String ALL = "communication.push.*";
         }
         
+        /**
+         * 跨节点投递主题
+         * 每个通信服务节点订阅自己的节点主题：communication.delivery.node.{nodeId}
+         */
+        public static final class Delivery {
+            public static final String NODE_PREFIX = "communication.delivery.node.";
+            
+            // 通配符
+            public static final String ALL = "communication.delivery.node.*";
+            
+            /**
+             * 构建节点投递主题
+             */
+            public static String node(String nodeId) {
+                return NODE_PREFIX + nodeId;
+            }
+        }
+        
+        /**
+         * 搜索索引同步主题
+         * 各节点把本地产生的索引变更广播给其他节点，保证每个节点的内存索引完整
+         */
+        public static final class Search {
+            public static final String INDEX = "communication.search.index";
+        }
+        
+        /**
+         * 热点会话缓存失效主题
+         * 节点写入消息后通知其他节点丢弃该会话的缓存窗口
+         */
+        public static final class HotCache {
+            public static final String INVALIDATE = "communication.hotcache.invalidate";
+        }
+        
         /**
          * 多设备同步事件
          */
@@ -0,0 +1,354 @@
+package com.acme.im.common.infrastructure.nats.consumer;
+
+import com.acme.im.common.infrastructure.nats.codec.EventCodec;
+import com.acme.im.common.infrastructure.nats.codec.EventCodecRegistry;
+import com.acme.im.common.infrastructure.nats.config.EventConsumerConfig;
+import com.acme.im.common.infrastructure.nats.constants.EventErrorCodes;
+import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
+import com.acme.im.common.infrastructure.nats.handler.EventHandlerRegistry;
+import com.acme.im.common.utils.monitoring.LongHistogram;
+import io.nats.client.Connection;
+import io.nats.client.JetStream;
+import io.nats.client.JetStreamSubscription;
+import io.nats.client.Message;
+import io.nats.client.PullSubscribeOptions;
+import io.nats.client.api.AckPolicy;
+import io.nats.client.api.ConsumerConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 持久事件消费者管理器
+ * 为声明了 durable 的事件处理器创建JetStream拉取消费者，节点停机期间的事件留在流中，恢复后继续消费
+ *
+ * 1. 批量拉取 - 每个消费者一个拉取线程，单次最多拉取 batchSize 条
+ * 2. 流控 - 本地未确认数不超过 maxAckPending，服务端消费者设置相同上限
+ * 3. 确认 - 处理器全部成功后显式确认；失败按已投递次数退避重投
+ * 4. 死信 - 超过最大投递次数或无法解码时写入 event_retry_queue 并终止投递；写入失败时继续重投
+ *
+ * 多个实例使用同名持久消费者时由服务端在实例间分配消息
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@Slf4j
+public class DurableEventConsumerManager {
+
+    @Autowired
+    private Connection natsConnection;
+
+    @Autowired
+    @Lazy
+    private EventHandlerRegistry eventHandlerRegistry;
+
+    @Autowired
+    private EventCodecRegistry codecRegistry;
+
+    @Autowired
+    private EventDeadLetterStore deadLetterStore;
+
+    @Autowired
+    private EventConsumerConfig config;
+
+    private final List<PullConsumer> consumers = new ArrayList<>();
+    private volatile boolean started = false;
+
+    /**
+     * 启动全部持久消费者，重复调用无效
+     */
+    public synchronized void start() {
+        if (started || !config.isEnabled()) {
+            return;
+        }
+        started = true;
+        if (!eventHandlerRegistry.isInitialized()) {
+            eventHandlerRegistry.initialize();
+        }
+        for (EventHandlerRegistry.DurableSubscription subscription : eventHandlerRegistry.getDurableSubscriptions()) {
+            PullConsumer consumer = new PullConsumer(subscription);
+            consumers.add(consumer);
+            consumer.thread = new Thread(consumer, "event-consumer-" + subscription.getDurable());
+            consumer.thread.setDaemon(true);
+            consumer.thread.start();
+        }
+        if (!consumers.isEmpty()) {
+            log.info("持久事件消费者已启动: count={}", consumers.size());
+        }
+    }
+
+    /**
+     * 获取各消费者统计信息
+     */
+    public List<ConsumerStats> getStats() {
+        List<ConsumerStats> stats = new ArrayList<>(consumers.size());
+        for (PullConsumer consumer : consumers) {
+            stats.add(consumer.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * 停止拉取，等待已拉取的消息处理完成并确认
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        for (PullConsumer consumer : consumers) {
+            consumer.running = false;
+        }
+        for (PullConsumer consumer : consumers) {
+            try {
+                consumer.thread.join(config.getFetchWaitMs() + 1000);
+                consumer.awaitInFlight(config.getAckWaitMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            consumer.unsubscribe();
+            log.info("持久事件消费者已停止: {}", consumer.stats());
+        }
+        consumers.clear();
+    }
+
+    /**
+     * 单个持久消费者
+     */
+    private final class PullConsumer implements Runnable {
+        private final EventHandlerRegistry.DurableSubscription subscription;
+        private final int maxDeliver;
+        private final int maxAckPending;
+        private final Semaphore inFlight;
+        private Thread thread;
+        private volatile boolean running = true;
+        private volatile JetStreamSubscription jsSubscription;
+        private volatile EventCodec codec;
+
+        private final AtomicLong fetched = new AtomicLong(0);
+        private final AtomicLong acked = new AtomicLong(0);
+        private final AtomicLong redelivered = new AtomicLong(0);
+        private final AtomicLong deadLettered = new AtomicLong(0);
+        private final LongHistogram batchSizes = new LongHistogram();
+
+        PullConsumer(EventHandlerRegistry.DurableSubscription subscription) {
+            this.subscription = subscription;
+            this.maxDeliver = subscription.getMaxDeliver() > 0 ? subscription.getMaxDeliver() : config.getMaxDeliver();
+            this.maxAckPending = Math.max(1, config.getMaxAckPending());
+            this.inFlight = new Semaphore(maxAckPending);
+        }
+
+        @Override
+        public void run() {
+            int batchSize = Math.max(1, config.getBatchSize());
+            Duration fetchWait = Duration.ofMillis(config.getFetchWaitMs());
+            while (running) {
+                try {
+                    if (jsSubscription == null) {
+                        subscribe();
+                    }
+                    // 本地流控：可用额度为0时等待确认释放
+                    if (!inFlight.tryAcquire(config.getFetchWaitMs(), TimeUnit.MILLISECONDS)) {
+                        continue;
+                    }
+                    inFlight.release();
+                    int want = Math.min(batchSize, inFlight.availablePermits());
+                    List<Message> messages = jsSubscription.fetch(want, fetchWait);
+                    if (messages.isEmpty()) {
+                        continue;
+                    }
+                    inFlight.acquireUninterruptibly(messages.size());
+                    fetched.addAndGet(messages.size());
+                    batchSizes.record(messages.size());
+                    for (Message message : messages) {
+                        process(message);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    log.error("持久事件消费者拉取失败: durable={}, subject={}, error={}",
+                            subscription.getDurable(), subscription.getSubject(), e.getMessage());
+                    unsubscribe();
+                    sleepQuietly(config.getRetryIntervalMs());
+                }
+            }
+        }
+
+        private void subscribe() throws Exception {
+            JetStream jetStream = natsConnection.jetStream();
+            ConsumerConfiguration consumerConfig = ConsumerConfiguration.builder()
+                    .durable(subscription.getDurable())
+                    .ackPolicy(AckPolicy.Explicit)
+                    .ackWait(Duration.ofMillis(config.getAckWaitMs()))
+                    .maxAckPending(maxAckPending)
+                    .filterSubject(subscription.getSubject())
+                    .build();
+            PullSubscribeOptions options = PullSubscribeOptions.builder()
+                    .durable(subscription.getDurable())
+                    .configuration(consumerConfig)
+                    .build();
+            jsSubscription = jetStream.subscribe(subscription.getSubject(), options);
+            codec = codecRegistry.resolve(subscription.getSubject(), subscription.getPayloadType());
+            log.info("持久事件消费者订阅成功: durable={}, subject={}, maxDeliver={}, codec={}",
+                    subscription.getDurable(), subscription.getSubject(), maxDeliver, codec);
+        }
+
+        private void process(Message message) {
+            BaseEvent<?> event;
+            try {
+                event = codec.decode(message);
+            } catch (Exception e) {
+                deadLetter(message, null, EventErrorCodes.DATA_FORMAT_ERROR, "解码失败: " + e.getMessage());
+                return;
+            }
+            if (event == null) {
+                deadLetter(message, null, EventErrorCodes.DATA_NULL, "消息体为空");
+                return;
+            }
+            event.setSubject(message.getSubject());
+            eventHandlerRegistry.handleDurableEvent(subscription.getDurable(), event)
+                    .whenComplete((success, error) -> complete(message, event,
+                            Boolean.TRUE.equals(success) && error == null,
+                            error != null ? error.getMessage() : "处理器执行失败"));
+        }
+
+        private void complete(Message message, BaseEvent<?> event, boolean success, String reason) {
+            try {
+                if (success) {
+                    message.ack();
+                    acked.incrementAndGet();
+                    return;
+                }
+                long deliveries = message.metaData().deliveredCount();
+                if (deliveries >= maxDeliver) {
+                    terminate(message, event, deliveries, EventErrorCodes.INTERNAL_ERROR,
+                            "超过最大投递次数: " + reason);
+                } else {
+                    message.nakWithDelay(backoff(deliveries));
+                    redelivered.incrementAndGet();
+                }
+            } catch (Exception e) {
+                log.warn("确认持久事件失败，等待服务端超时重投: durable={}, subject={}, error={}",
+                        subscription.getDurable(), message.getSubject(), e.getMessage());
+            } finally {
+                inFlight.release();
+            }
+        }
+
+        private void deadLetter(Message message, BaseEvent<?> event, String errorCode, String reason) {
+            try {
+                terminate(message, event, message.metaData().deliveredCount(), errorCode, reason);
+            } catch (Exception e) {
+                log.warn("终止持久事件失败: durable={}, subject={}, error={}",
+                        subscription.getDurable(), message.getSubject(), e.getMessage());
+            } finally {
+                inFlight.release();
+            }
+        }
+
+        private void terminate(Message message, BaseEvent<?> event, long deliveries, String errorCode, String reason) {
+            if (deadLetterStore.store(subscription.getDurable(), message, event, deliveries, maxDeliver, errorCode, reason)) {
+                message.term();
+                deadLettered.incrementAndGet();
+            } else {
+                // 死信写入失败时保留消息，稍后重投
+                message.nakWithDelay(backoff(deliveries));
+                redelivered.incrementAndGet();
+            }
+        }
+
+        private Duration backoff(long deliveries) {
+            List<Long> backoffMs = config.getBackoffMs();
+            if (backoffMs == null || backoffMs.isEmpty()) {
+                return Duration.ZERO;
+            }
+            int index = (int) Math.min(Math.max(deliveries - 1, 0), backoffMs.size() - 1);
+            return Duration.ofMillis(backoffMs.get(index));
+        }
+
+        void awaitInFlight(long timeoutMs) throws InterruptedException {
+            if (inFlight.tryAcquire(maxAckPending, timeoutMs, TimeUnit.MILLISECONDS)) {
+                inFlight.release(maxAckPending);
+            } else {
+                log.warn("持久事件消费者关闭时仍有未确认消息，由服务端超时重投: durable={}, inFlight={}",
+                        subscription.getDurable(), maxAckPending - inFlight.availablePermits());
+            }
+        }
+
+        void unsubscribe() {
+            JetStreamSubscription current = jsSubscription;
+            jsSubscription = null;
+            if (current != null) {
+                try {
+                    // 只解除本地订阅，保留服务端的持久消费者
+                    current.unsubscribe();
+                } catch (Exception e) {
+                    log.debug("解除持久事件订阅失败: durable={}, error={}", subscription.getDurable(), e.getMessage());
+                }
+            }
+        }
+
+        ConsumerStats stats() {
+            return new ConsumerStats(subscription.getDurable(), subscription.getSubject(), fetched.get(), acked.get(),
+                    redelivered.get(), deadLettered.get(), maxAckPending - inFlight.availablePermits(),
+                    batchSizes.snapshot());
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 持久消费者统计信息
+     */
+    public static class ConsumerStats {
+        private final String durable;
+        private final String subject;
+        private final long fetched;
+        private final long acked;
+        private final long redelivered;
+        private final long deadLettered;
+        private final int inFlight;
+        private final LongHistogram.Snapshot batchSize;
+
+        public ConsumerStats(String durable, String subject, long fetched, long acked, long redelivered,
+                             long deadLettered, int inFlight, LongHistogram.Snapshot batchSize) {
+            this.durable = durable;
+            this.subject = subject;
+            this.fetched = fetched;
+            this.acked = acked;
+            this.redelivered = redelivered;
+            this.deadLettered = deadLettered;
+            this.inFlight = inFlight;
+            this.batchSize = batchSize;
+        }
+
+        public String getDurable() { return durable; }
+        public String getSubject() { return subject; }
+        public long getFetched() { return fetched; }
+        public long getAcked() { return acked; }
+        public long getRedelivered() { return redelivered; }
+        public long getDeadLettered() { return deadLettered; }
+        public int getInFlight() { return inFlight; }
+        public LongHistogram.Snapshot getBatchSize() { return batchSize; }
+
+        @Override
+        public String toString() {
+            return String.format("ConsumerStats{durable=%s, subject=%s, fetched=%d, acked=%d, redelivered=%d, deadLettered=%d, inFlight=%d, batchSize=%s}",
+                    durable, subject, fetched, acked, redelivered, deadLettered, inFlight, batchSize);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.acme.im.common.infrastructure.nats.consumer;
+
+import com.acme.im.common.infrastructure.nats.constants.EventTopics;
+import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
+import com.google.gson.Gson;
+import io.nats.client.Message;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * 事件死信存储
+ * 超过重投上限或无法解码的消息写入 event_records 与 event_retry_queue，供排查与人工重放
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@Slf4j
+public class EventDeadLetterStore {
+
+    private static final int MAX_REASON_LENGTH = 255;
+    private static final int MAX_PAYLOAD_LENGTH = 4000;
+
+    private static final String INSERT_EVENT_RECORD =
+            "INSERT IGNORE INTO event_records (event_id, subject, event_type, status, priority, source_service, " +
+            "user_id, device_id, session_id, event_data, metadata, created_at, retry_count, max_retries, " +
+            "error_message, error_code) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SELECT_EVENT_RECORD_ID = "SELECT id FROM event_records WHERE event_id = ?";
+
+    private static final String INSERT_RETRY_QUEUE =
+            "INSERT INTO event_retry_queue (event_id, original_event_record_id, retry_count, max_retries, " +
+            "next_retry_at, retry_delay, retry_reason, retry_strategy, status, last_retry_at, last_retry_result) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, 'exponential', 'FAILED', ?, ?)";
+
+    @Autowired
+    private ObjectProvider<JdbcTemplate> jdbcTemplateProvider;
+
+    @Autowired
+    @Qualifier("gson")
+    private Gson gson;
+
+    /**
+     * 写入死信
+     *
+     * @param durable 持久消费者名称
+     * @param message 原始消息
+     * @param event 已解码的事件，解码失败时为null
+     * @param deliveries 已投递次数
+     * @param maxDeliver 最大投递次数
+     * @param errorCode 错误代码
+     * @param reason 失败原因
+     * @return 是否写入成功
+     */
+    public boolean store(String durable, Message message, BaseEvent<?> event, long deliveries, int maxDeliver,
+                         String errorCode, String reason) {
+        JdbcTemplate jdbcTemplate = jdbcTemplateProvider.getIfAvailable();
+        if (jdbcTemplate == null) {
+            log.error("未配置数据源，无法写入事件死信: durable={}, subject={}", durable, message.getSubject());
+            return false;
+        }
+        String eventId = event != null && event.getEventId() != null ? event.getEventId() : fallbackEventId(message);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        String payload = new String(message.getData(), StandardCharsets.UTF_8);
+        try {
+            jdbcTemplate.update(INSERT_EVENT_RECORD,
+                    eventId,
+                    message.getSubject(),
+                    event != null && event.getEventType() != null ? event.getEventType() : EventTopics.EventType.NOTIFICATION,
+                    EventTopics.EventStatus.FAILURE,
+                    event != null && event.getPriority() != null ? event.getPriority() : EventTopics.EventPriority.MEDIUM,
+                    event != null ? event.getSourceService() : null,
+                    event != null ? event.getUserId() : null,
+                    event != null ? event.getDeviceId() : null,
+                    event != null ? event.getSessionId() : null,
+                    event != null && event.getData() != null ? gson.toJson(event.getData()) : null,
+                    event != null && event.getMetadata() != null ? gson.toJson(event.getMetadata()) : null,
+                    now,
+                    deliveries,
+                    maxDeliver,
+                    reason,
+                    errorCode);
+            Long recordId = jdbcTemplate.queryForObject(SELECT_EVENT_RECORD_ID, Long.class, eventId);
+            jdbcTemplate.update(INSERT_RETRY_QUEUE,
+                    eventId,
+                    recordId,
+                    deliveries,
+                    maxDeliver,
+                    now,
+                    0,
+                    truncate("durable=" + durable + ", " + reason, MAX_REASON_LENGTH),
+                    now,
+                    truncate(payload, MAX_PAYLOAD_LENGTH));
+            log.warn("事件已写入死信: durable={}, subject={}, eventId={}, deliveries={}, reason={}",
+                    durable, message.getSubject(), eventId, deliveries, reason);
+            return true;
+        } catch (Exception e) {
+            log.error("写入事件死信失败: durable={}, subject={}, eventId={}", durable, message.getSubject(), eventId, e);
+            return false;
+        }
+    }
+
+    private static String fallbackEventId(Message message) {
+        if (message.isJetStream()) {
+            return "js:" + message.metaData().getStream() + ":" + message.metaData().streamSequence();
+        }
+        return "nats:" + message.getSubject() + ":" + System.nanoTime();
+    }
+
+    private static String truncate(String value, int maxLength) {
+        if (value == null || value.length() <= maxLength) {
+            return value;
+        }
+        return value.substring(0, maxLength);
+    }
+}
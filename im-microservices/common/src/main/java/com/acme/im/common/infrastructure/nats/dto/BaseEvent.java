@@ -23,6 +23,11 @@ import java.util.UUID;
 @Builder
 public class BaseEvent<T> {
 
+    /**
+     * 元数据键：NATS请求的应答主题，由订阅端在收到请求消息时写入
+     */
+    public static final String METADATA_REPLY_TO = "replyTo";
+
     /**
      * 事件ID - 唯一标识
      */
@@ -213,6 +218,14 @@ public class BaseEvent<T> {
         return this;
     }
 
+    /**
+     * 获取NATS请求的应答主题，非请求/应答消息返回null
+     */
+    public String replyTo() {
+        Object replyTo = metadata != null ? metadata.get(METADATA_REPLY_TO) : null;
+        return replyTo != null ? replyTo.toString() : null;
+    }
+
     /**
      * 设置源服务信息
      */
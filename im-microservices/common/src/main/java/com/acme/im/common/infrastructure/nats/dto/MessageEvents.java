@@ -111,6 +111,10 @@ public class MessageEvents {
     public static class MessageReadEvent {
         private Long conversationId;
         private Long messageId;
+        /**
+         * 已读到的消息序列号，为空时按messageId查询
+         */
+        private Long lastReadSeq;
         private Long userId;
         private Long deviceId;
         private LocalDateTime readTime;
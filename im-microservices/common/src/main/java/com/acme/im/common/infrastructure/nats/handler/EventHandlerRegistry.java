@@ -1,24 +1,45 @@
 package com.acme.im.common.infrastructure.nats.handler;
 
 import com.acme.im.common.infrastructure.nats.annotation.NatsEventHandler;
+import com.acme.im.common.infrastructure.nats.config.EventHandlerConfig;
 import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
+import com.acme.im.common.utils.monitoring.LongHistogram;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.regex.Pattern;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 事件处理器注册器
  * 自动发现和注册带有@NatsEventHandler注解的方法
+ *
+ * 1. 路由 - 注册时把订阅模式（含通配符）编译进主题树，按具体主题缓存排好序的处理器列表
+ * 2. 调用 - 处理器在注册时绑定为MethodHandle，分发时不做参数类型推断和反射调用
+ * 3. 异步 - 异步处理器在独立的有界线程池执行，队列满时由分发线程执行
+ * 4. 统计 - 每个处理器记录调用次数、失败次数与耗时分布
+ * 5. 扩展 - 处理器可声明队列组在实例间负载均衡，声明分区键在本实例内按键有序并行
+ * 6. 持久 - 声明了持久消费者的处理器不走普通订阅，由JetStream拉取消费者调用
  * 
  * @author IM开发团队
  * @since 1.0.0
@@ -30,21 +51,75 @@ public class EventHandlerRegistry {
     @Autowired
     private ApplicationContext applicationContext;
 
+    @Autowired
+    private EventHandlerConfig config;
+
     /**
      * 事件处理器映射：主题 -> 处理器列表
      */
     private final Map<String, List<EventHandlerInfo>> eventHandlers = new ConcurrentHashMap<>();
 
     /**
-     * 异步执行器
+     * 编译后的订阅主题树，注册时构建
+     */
+    private final SubjectTrie<CompiledHandler> subjectTrie = new SubjectTrie<>();
+
+    /**
+     * 具体主题（及队列组） -> 排好序的处理器，注册新处理器时整体失效
+     */
+    private final Map<String, CompiledHandler[]> resolvedHandlers = new ConcurrentHashMap<>();
+
+    private final List<CompiledHandler> compiledHandlers = new CopyOnWriteArrayList<>();
+
+    /**
+     * 持久消费者名称 -> 按优先级排序的处理器
      */
-    private final ExecutorService asyncExecutor = Executors.newFixedThreadPool(10);
+    private final Map<String, CompiledHandler[]> durableHandlers = new ConcurrentHashMap<>();
+    private final AtomicLong registrationOrder = new AtomicLong(0);
+    private final AtomicLong unmatchedEvents = new AtomicLong(0);
+
+    /**
+     * 数据对象上没有分区键字段时的占位
+     */
+    private static final MethodHandle NO_FIELD = MethodHandles.constant(Object.class, null);
+
+    /**
+     * 异步处理器执行器，有界队列
+     */
+    private ThreadPoolExecutor asyncExecutor;
+
+    /**
+     * 分区处理器执行器，同一分区键的事件按顺序执行
+     */
+    private PartitionedExecutor partitionedExecutor;
 
     /**
      * 是否已初始化
      */
     private volatile boolean initialized = false;
 
+    /**
+     * 创建异步执行器与分区执行器
+     */
+    @PostConstruct
+    public void createExecutor() {
+        int threads = Math.max(1, config.getAsyncThreads());
+        asyncExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getAsyncQueueCapacity())),
+                new ThreadFactory() {
+                    private final AtomicLong counter = new AtomicLong(0);
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "event-handler-async-" + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        partitionedExecutor = new PartitionedExecutor("event-handler-partition",
+                config.getPartitionLanes(), config.getPartitionQueueCapacity());
+    }
+
     /**
      * 手动初始化事件处理器注册器
      * 避免在@PostConstruct中自动发现导致的循环依赖
@@ -109,6 +184,7 @@ public class EventHandlerRegistry {
 
     /**
      * 注册事件处理器
+     * 注册时编译调用句柄并插入主题树，同时清空主题缓存
      */
     private void registerEventHandler(Object bean, Method method, NatsEventHandler annotation) {
         String subject = annotation.value();
@@ -119,6 +195,9 @@ public class EventHandlerRegistry {
         long timeout = annotation.timeout();
         boolean enabled = annotation.enabled();
         String description = annotation.description();
+        String queueGroup = applicationContext.getEnvironment().resolvePlaceholders(annotation.queueGroup());
+        String partitionKey = annotation.partitionKey();
+        String durable = applicationContext.getEnvironment().resolvePlaceholders(annotation.durable());
 
         // 创建处理器信息
         EventHandlerInfo handlerInfo = EventHandlerInfo.builder()
@@ -132,151 +211,359 @@ public class EventHandlerRegistry {
                 .timeout(timeout)
                 .enabled(enabled)
                 .description(description)
+                .queueGroup(queueGroup)
+                .partitionKey(partitionKey)
+                .durable(durable)
                 .build();
 
         // 注册到映射中
-        eventHandlers.computeIfAbsent(subject, k -> new ArrayList<>()).add(handlerInfo);
-        
-        // 按优先级排序
-        eventHandlers.get(subject).sort(Comparator.comparingInt(EventHandlerInfo::getPriority));
+        eventHandlers.computeIfAbsent(subject, k -> new CopyOnWriteArrayList<>()).add(handlerInfo);
+
+        if (!enabled) {
+            log.info("事件处理器已禁用，不参与分发: subject={}, method={}", subject, method.getName());
+            return;
+        }
+
+        CompiledHandler compiled;
+        try {
+            compiled = compile(handlerInfo, registrationOrder.getAndIncrement());
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            log.warn("事件处理器方法签名不支持，已忽略: {}.{}, error={}",
+                    bean.getClass().getSimpleName(), method.getName(), e.getMessage());
+            return;
+        }
+        subjectTrie.insert(compilePattern(subject), compiled);
+        compiledHandlers.add(compiled);
+        resolvedHandlers.clear();
+        if (compiled.durable != null) {
+            durableHandlers.merge(compiled.durable, new CompiledHandler[]{compiled}, (existing, added) -> {
+                CompiledHandler[] merged = Arrays.copyOf(existing, existing.length + 1);
+                merged[existing.length] = added[0];
+                Arrays.sort(merged, Comparator.<CompiledHandler>comparingInt(h -> h.info.getPriority())
+                        .thenComparingLong(h -> h.order));
+                return merged;
+            });
+        }
+
+        log.debug("注册事件处理器: subject={}, method={}, priority={}, async={}, queueGroup={}, partitionKey={}", 
+                subject, method.getName(), priority, async, queueGroup, partitionKey);
+    }
 
-        log.debug("注册事件处理器: subject={}, method={}, priority={}, async={}", 
-                subject, method.getName(), priority, async);
+    /**
+     * 编译处理器：绑定bean并统一为 (Object)void 的调用句柄，分发时不再走反射
+     */
+    private CompiledHandler compile(EventHandlerInfo handlerInfo, long order) throws IllegalAccessException {
+        Method method = handlerInfo.getMethod();
+        if (method.getParameterCount() != 1) {
+            throw new IllegalArgumentException("处理器方法必须只有一个参数");
+        }
+        Class<?> paramType = method.getParameterTypes()[0];
+        method.setAccessible(true);
+        MethodHandle invoker = MethodHandles.lookup().unreflect(method)
+                .bindTo(handlerInfo.getBean())
+                .asType(MethodType.methodType(void.class, Object.class));
+        boolean acceptsEvent = BaseEvent.class.isAssignableFrom(paramType);
+        String name = handlerInfo.getBean().getClass().getSimpleName() + "." + method.getName();
+        return new CompiledHandler(handlerInfo, name, invoker, acceptsEvent ? null : paramType,
+                payloadTypeOf(method, acceptsEvent), order);
     }
 
     /**
-     * 处理事件
+     * 从方法签名推断事件数据类型：BaseEvent&lt;T&gt; 取T，直接接受数据时取参数类型；通配或Object时返回null
+     */
+    private static Type payloadTypeOf(Method method, boolean acceptsEvent) {
+        Type parameter = method.getGenericParameterTypes()[0];
+        Type payload;
+        if (acceptsEvent) {
+            if (!(parameter instanceof ParameterizedType)) {
+                return null;
+            }
+            payload = ((ParameterizedType) parameter).getActualTypeArguments()[0];
+        } else {
+            payload = parameter;
+        }
+        if (payload == Object.class || payload instanceof WildcardType || payload instanceof TypeVariable) {
+            return null;
+        }
+        return payload;
+    }
+
+    /**
+     * 兼容旧的订阅写法：末尾的 .* 原先按前缀匹配任意层级，编译为 .>
+     */
+    static String compilePattern(String subject) {
+        if (subject.endsWith(".*")) {
+            return subject.substring(0, subject.length() - 1) + ">";
+        }
+        return subject;
+    }
+
+    /**
+     * 获取主题上处理器期望的事件数据类型，供订阅方按类型解码
+     * 处理器声明的类型不一致时返回null，按不带类型解码
+     */
+    public Type getPayloadType(String subject) {
+        Type payloadType = null;
+        for (CompiledHandler handler : resolveHandlers(subject)) {
+            if (handler.payloadType == null) {
+                continue;
+            }
+            if (payloadType == null) {
+                payloadType = handler.payloadType;
+            } else if (!payloadType.equals(handler.payloadType)) {
+                log.warn("主题上的处理器声明了不同的数据类型，按不带类型解码: subject={}, types=[{}, {}]",
+                        subject, payloadType.getTypeName(), handler.payloadType.getTypeName());
+                return null;
+            }
+        }
+        return payloadType;
+    }
+
+    /**
+     * 获取主题上普通订阅处理器声明的队列组，未声明队列组的处理器对应空字符串
+     * 持久消费者处理器不在其中
+     */
+    public Set<String> getQueueGroups(String subject) {
+        Set<String> groups = new LinkedHashSet<>();
+        for (CompiledHandler handler : resolveHandlers(subject)) {
+            if (handler.durable == null) {
+                groups.add(handler.queueGroup);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * 主题上是否有处理器
+     */
+    public boolean hasHandlers(String subject) {
+        return resolveHandlers(subject).length > 0;
+    }
+
+    /**
+     * 获取全部持久消费者
+     */
+    public List<DurableSubscription> getDurableSubscriptions() {
+        List<DurableSubscription> subscriptions = new ArrayList<>(durableHandlers.size());
+        durableHandlers.forEach((durable, handlers) -> {
+            String subject = handlers[0].info.getSubject();
+            Type payloadType = null;
+            int maxDeliver = 0;
+            for (CompiledHandler handler : handlers) {
+                if (!handler.info.getSubject().equals(subject)) {
+                    log.warn("同一持久消费者的处理器主题不一致，使用首个主题: durable={}, subject={}, ignored={}",
+                            durable, subject, handler.info.getSubject());
+                }
+                if (payloadType == null) {
+                    payloadType = handler.payloadType;
+                }
+                maxDeliver = Math.max(maxDeliver, handler.info.getRetryCount() > 0 ? handler.info.getRetryCount() + 1 : 0);
+            }
+            subscriptions.add(new DurableSubscription(durable, subject, payloadType, maxDeliver, handlers.length));
+        });
+        return subscriptions;
+    }
+
+    /**
+     * 执行持久消费者的处理器，全部成功时结果为true
+     * 处理器按优先级依次执行；声明了分区键时整条链进入该键的有序通道，声明了异步时进入异步线程池
+     */
+    public CompletableFuture<Boolean> handleDurableEvent(String durable, BaseEvent<?> event) {
+        CompiledHandler[] handlers = durableHandlers.get(durable);
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        if (handlers == null) {
+            result.complete(false);
+            return result;
+        }
+        Runnable chain = () -> {
+            boolean success = true;
+            for (CompiledHandler handler : handlers) {
+                success &= executeHandler(handler, event);
+            }
+            result.complete(success);
+        };
+        try {
+            CompiledHandler partitioned = null;
+            boolean async = false;
+            for (CompiledHandler handler : handlers) {
+                if (partitioned == null && handler.partitionKey != null) {
+                    partitioned = handler;
+                }
+                async |= handler.info.isAsync();
+            }
+            if (partitioned != null) {
+                partitionedExecutor.execute(partitionKeyOf(partitioned, event), chain);
+            } else if (async) {
+                asyncExecutor.execute(chain);
+            } else {
+                chain.run();
+            }
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * 处理事件，执行主题上的全部处理器
      */
     public void handleEvent(String subject, BaseEvent<?> event) {
-        log.info("📨 收到事件: subject={}, eventId={}, eventType={}", 
+        dispatch(subject, event, resolveHandlers(subject));
+    }
+
+    /**
+     * 处理事件，只执行声明了指定队列组的普通订阅处理器
+     *
+     * @param queueGroup 队列组，空字符串表示未声明队列组的处理器
+     */
+    public void handleEvent(String subject, String queueGroup, BaseEvent<?> event) {
+        dispatch(subject, event, resolveHandlers(subject, queueGroup));
+    }
+
+    private void dispatch(String subject, BaseEvent<?> event, CompiledHandler[] handlers) {
+        log.debug("收到事件: subject={}, eventId={}, eventType={}", 
                 subject, event.getEventId(), event.getEventType());
-        
-        // 按优先级排序处理器
-        List<EventHandlerInfo> handlers = findHandlersForSubject(subject);
-        
-        if (handlers.isEmpty()) {
+
+        if (handlers.length == 0) {
+            unmatchedEvents.incrementAndGet();
             log.warn("未找到事件处理器: subject={}", subject);
-            log.warn("已注册的主题: {}", eventHandlers.keySet());
+            log.debug("已注册的主题: {}", eventHandlers.keySet());
             return;
         }
-        
-        log.info("✅ 找到 {} 个事件处理器: subject={}", handlers.size(), subject);
-        
-        // 按优先级排序：数字越小优先级越高
-        handlers.sort(Comparator.comparingInt(EventHandlerInfo::getPriority));
-        
-        // 记录找到的处理器详情
-        for (EventHandlerInfo handler : handlers) {
-            log.info("  - 处理器: {}.{}, priority={}, async={}", 
-                    handler.getBean().getClass().getSimpleName(),
-                    handler.getMethod().getName(),
-                    handler.getPriority(),
-                    handler.isAsync());
-        }
-        
+
         // 执行处理器
-        for (EventHandlerInfo handler : handlers) {
-            try {
-                if (handler.isAsync()) {
-                    log.debug("⚡ 异步执行处理器: {}.{}", 
-                            handler.getBean().getClass().getSimpleName(),
-                            handler.getMethod().getName());
-                    // 异步执行
-                    CompletableFuture.runAsync(() -> executeHandler(handler, event));
-                } else {
-                    log.debug("⚡ 同步执行处理器: {}.{}", 
-                            handler.getBean().getClass().getSimpleName(),
-                            handler.getMethod().getName());
-                    // 同步执行
-                    executeHandler(handler, event);
-                }
-            } catch (Exception e) {
-                log.error("事件处理器执行失败: handler={}.{}, error: {}", 
-                        handler.getBean().getClass().getSimpleName(),
-                        handler.getMethod().getName(),
-                        e.getMessage(), e);
+        for (CompiledHandler handler : handlers) {
+            if (handler.partitionKey != null) {
+                // 按分区键进入有序通道
+                partitionedExecutor.execute(partitionKeyOf(handler, event), () -> executeHandler(handler, event));
+            } else if (handler.info.isAsync()) {
+                // 异步执行，队列满时由当前线程执行
+                asyncExecutor.execute(() -> executeHandler(handler, event));
+            } else {
+                // 同步执行
+                executeHandler(handler, event);
             }
         }
     }
 
     /**
-     * 查找指定主题的处理器
-     * 优先返回精确匹配的处理器，然后返回通配符处理器
+     * 解析具体主题的处理器列表
+     * 按优先级排序（数字越小优先级越高），同优先级精确匹配在前、通配符匹配在后，结果按主题缓存
      */
-    private List<EventHandlerInfo> findHandlersForSubject(String subject) {
-        List<EventHandlerInfo> exactMatches = new ArrayList<>();
-        List<EventHandlerInfo> wildcardMatches = new ArrayList<>();
-        
-        for (Map.Entry<String, List<EventHandlerInfo>> entry : eventHandlers.entrySet()) {
-            String handlerSubject = entry.getKey();
-            List<EventHandlerInfo> handlers = entry.getValue();
-            
-            if (handlerSubject.equals(subject)) {
-                // 精确匹配，优先级最高
-                exactMatches.addAll(handlers);
-            } else if (isWildcardMatch(handlerSubject, subject)) {
-                // 通配符匹配，优先级较低
-                wildcardMatches.addAll(handlers);
+    private CompiledHandler[] resolveHandlers(String subject, String queueGroup) {
+        // 空格不会出现在NATS主题中，可作分隔
+        String key = subject + " " + queueGroup;
+        CompiledHandler[] cached = resolvedHandlers.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        List<CompiledHandler> matches = new ArrayList<>();
+        for (CompiledHandler handler : resolveHandlers(subject)) {
+            if (handler.durable == null && handler.queueGroup.equals(queueGroup)) {
+                matches.add(handler);
             }
         }
-        
-        // 组合结果：精确匹配优先，通配符匹配其次
-        List<EventHandlerInfo> result = new ArrayList<>();
-        result.addAll(exactMatches);
-        result.addAll(wildcardMatches);
-        
-        return result;
+        CompiledHandler[] resolved = matches.toArray(new CompiledHandler[0]);
+        if (resolvedHandlers.size() >= config.getSubjectCacheSize()) {
+            resolvedHandlers.clear();
+        }
+        resolvedHandlers.put(key, resolved);
+        return resolved;
     }
-    
+
+    private CompiledHandler[] resolveHandlers(String subject) {
+        CompiledHandler[] cached = resolvedHandlers.get(subject);
+        if (cached != null) {
+            return cached;
+        }
+        List<CompiledHandler> matches = subjectTrie.match(subject);
+        matches.sort(Comparator.<CompiledHandler>comparingInt(h -> h.info.getPriority())
+                .thenComparingInt(h -> h.info.getSubject().equals(subject) ? 0 : 1)
+                .thenComparingLong(h -> h.order));
+        CompiledHandler[] resolved = matches.toArray(new CompiledHandler[0]);
+        if (resolvedHandlers.size() >= config.getSubjectCacheSize()) {
+            resolvedHandlers.clear();
+        }
+        resolvedHandlers.put(subject, resolved);
+        return resolved;
+    }
+
     /**
-     * 检查通配符匹配
+     * 取事件的分区键：事件字段、事件数据（Map的键或对象字段）、元数据，依次查找
      */
-    private boolean isWildcardMatch(String pattern, String subject) {
-        if (pattern.endsWith(".*")) {
-            String prefix = pattern.substring(0, pattern.length() - 2);
-            return subject.startsWith(prefix);
+    private Object partitionKeyOf(CompiledHandler handler, BaseEvent<?> event) {
+        String name = handler.partitionKey;
+        Object key;
+        switch (name) {
+            case "userId": key = event.getUserId(); break;
+            case "sessionId": key = event.getSessionId(); break;
+            case "deviceId": key = event.getDeviceId(); break;
+            case "eventId": key = event.getEventId(); break;
+            default: key = null;
+        }
+        Object data = event.getData();
+        if (key == null && data instanceof Map) {
+            key = ((Map<?, ?>) data).get(name);
+        } else if (key == null && data != null) {
+            key = readField(handler, data, name);
+        }
+        if (key == null && event.getMetadata() != null) {
+            key = event.getMetadata().get(name);
+        }
+        return key;
+    }
+
+    private Object readField(CompiledHandler handler, Object data, String name) {
+        MethodHandle getter = handler.keyGetters.computeIfAbsent(data.getClass(), type -> fieldGetter(type, name));
+        if (getter == NO_FIELD) {
+            return null;
+        }
+        try {
+            return getter.invoke(data);
+        } catch (Throwable e) {
+            log.debug("读取分区键失败: handler={}, field={}, error={}", handler.name, name, e.getMessage());
+            return null;
+        }
+    }
+
+    private static MethodHandle fieldGetter(Class<?> type, String name) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                Field field = c.getDeclaredField(name);
+                field.setAccessible(true);
+                return MethodHandles.lookup().unreflectGetter(field);
+            } catch (NoSuchFieldException e) {
+                // 继续查找父类
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                break;
+            }
         }
-        return false;
+        return NO_FIELD;
     }
 
     /**
      * 执行处理器
      */
-    private void executeHandler(EventHandlerInfo handler, BaseEvent<?> event) {
-        String handlerName = handler.getBean().getClass().getSimpleName() + "." + handler.getMethod().getName();
-        
+    private boolean executeHandler(CompiledHandler handler, BaseEvent<?> event) {
+        long start = System.nanoTime();
         try {
-            log.info("🚀 开始执行处理器: {}, subject={}, eventId={}", 
-                    handlerName, event.getSubject(), event.getEventId());
-            
-            Method method = handler.getMethod();
-            Object bean = handler.getBean();
-            
-            // 检查方法参数类型
-            Class<?>[] paramTypes = method.getParameterTypes();
-            log.debug("🔍 处理器方法参数类型: {}", Arrays.toString(paramTypes));
-            
-            Object result = null;
-            if (paramTypes.length == 1 && BaseEvent.class.isAssignableFrom(paramTypes[0])) {
-                // 方法接受BaseEvent参数
-                log.debug("📤 调用处理器方法，传递BaseEvent参数");
-                result = method.invoke(bean, event);
-            } else if (paramTypes.length == 1 && paramTypes[0].isAssignableFrom(event.getData().getClass())) {
-                // 方法接受事件数据参数
-                log.debug("📤 调用处理器方法，传递事件数据参数");
-                result = method.invoke(bean, event.getData());
-            } else {
-                // 方法接受Object参数
-                log.debug("📤 调用处理器方法，传递Object参数");
-                result = method.invoke(bean, event);
+            Object data = event.getData();
+            Object argument = handler.dataType != null && handler.dataType.isInstance(data) ? data : event;
+            handler.invoker.invokeExact(argument);
+            return true;
+        } catch (Throwable e) {
+            handler.failures.incrementAndGet();
+            log.error("事件处理器执行失败: {}, subject={}, eventId={}, error={}", 
+                    handler.name, event.getSubject(), event.getEventId(), e.getMessage(), e);
+            return false;
+        } finally {
+            long elapsedMicros = (System.nanoTime() - start) / 1000;
+            handler.invocations.incrementAndGet();
+            handler.latencyMicros.record(elapsedMicros);
+            if (elapsedMicros >= config.getSlowHandlerThresholdMs() * 1000) {
+                log.warn("事件处理器执行缓慢: {}, subject={}, elapsed={}ms", 
+                        handler.name, event.getSubject(), elapsedMicros / 1000);
             }
-            
-            log.info("✅ 事件处理器执行成功: {}, subject={}, result={}", 
-                    handlerName, handler.getSubject(), result);
-                    
-        } catch (Exception e) {
-            log.error("❌ 事件处理器执行失败: {}, subject={}, error={}", 
-                    handlerName, handler.getSubject(), e.getMessage(), e);
         }
     }
 
@@ -296,6 +583,131 @@ public class EventHandlerRegistry {
         return new HashMap<>(eventHandlers);
     }
 
+    /**
+     * 获取各处理器的执行统计
+     */
+    public List<HandlerStats> getHandlerStats() {
+        List<HandlerStats> stats = new ArrayList<>(compiledHandlers.size());
+        for (CompiledHandler handler : compiledHandlers) {
+            stats.add(new HandlerStats(handler.name, handler.info.getSubject(), handler.info.isAsync(),
+                    handler.invocations.get(), handler.failures.get(), handler.latencyMicros.snapshot()));
+        }
+        return stats;
+    }
+
+    /**
+     * 未匹配到处理器的事件数
+     */
+    public long getUnmatchedEventCount() {
+        return unmatchedEvents.get();
+    }
+
+    /**
+     * 关闭异步执行器与分区执行器，等待已提交的处理器完成
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (asyncExecutor == null) {
+            return;
+        }
+        partitionedExecutor.shutdown(5, TimeUnit.SECONDS);
+        asyncExecutor.shutdown();
+        try {
+            if (!asyncExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                asyncExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            asyncExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        for (HandlerStats stats : getHandlerStats()) {
+            log.info("事件处理器统计: {}", stats);
+        }
+    }
+
+    /**
+     * 编译后的处理器
+     */
+    private static final class CompiledHandler {
+        private final EventHandlerInfo info;
+        private final String name;
+        private final MethodHandle invoker;
+        /**
+         * 方法接受事件数据时的参数类型，接受BaseEvent时为null
+         */
+        private final Class<?> dataType;
+        /**
+         * 方法声明的事件数据类型，未声明时为null
+         */
+        private final Type payloadType;
+        private final long order;
+        /**
+         * 已解析的队列组，未声明时为空字符串
+         */
+        private final String queueGroup;
+        /**
+         * 分区键，未声明时为null
+         */
+        private final String partitionKey;
+        private final Map<Class<?>, MethodHandle> keyGetters = new ConcurrentHashMap<>();
+        /**
+         * 持久消费者名称，未声明时为null
+         */
+        private final String durable;
+        private final AtomicLong invocations = new AtomicLong(0);
+        private final AtomicLong failures = new AtomicLong(0);
+        private final LongHistogram latencyMicros = new LongHistogram();
+
+        CompiledHandler(EventHandlerInfo info, String name, MethodHandle invoker, Class<?> dataType,
+                        Type payloadType, long order) {
+            this.info = info;
+            this.name = name;
+            this.invoker = invoker;
+            this.dataType = dataType;
+            this.payloadType = payloadType;
+            this.order = order;
+            this.queueGroup = info.getQueueGroup() != null ? info.getQueueGroup() : "";
+            this.partitionKey = info.getPartitionKey() == null || info.getPartitionKey().isEmpty()
+                    ? null : info.getPartitionKey();
+            this.durable = info.getDurable() == null || info.getDurable().isEmpty() ? null : info.getDurable();
+        }
+    }
+
+    /**
+     * 处理器执行统计
+     */
+    public static class HandlerStats {
+        private final String handler;
+        private final String subject;
+        private final boolean async;
+        private final long invocations;
+        private final long failures;
+        private final LongHistogram.Snapshot latencyMicros;
+
+        public HandlerStats(String handler, String subject, boolean async, long invocations, long failures,
+                            LongHistogram.Snapshot latencyMicros) {
+            this.handler = handler;
+            this.subject = subject;
+            this.async = async;
+            this.invocations = invocations;
+            this.failures = failures;
+            this.latencyMicros = latencyMicros;
+        }
+
+        public String getHandler() { return handler; }
+        public String getSubject() { return subject; }
+        public boolean isAsync() { return async; }
+        public long getInvocations() { return invocations; }
+        public long getFailures() { return failures; }
+        public LongHistogram.Snapshot getLatencyMicros() { return latencyMicros; }
+
+        @Override
+        public String toString() {
+            return String.format("HandlerStats{handler=%s, subject=%s, async=%s, invocations=%d, failures=%d, latencyMicros=%s}",
+                    handler, subject, async, invocations, failures, latencyMicros);
+        }
+    }
+
     /**
      * 事件处理器信息
      */
@@ -314,5 +726,36 @@ public class EventHandlerRegistry {
         private long timeout;
         private boolean enabled;
         private String description;
+        private String queueGroup;
+        private String partitionKey;
+        private String durable;
+    }
+
+    /**
+     * 持久消费者描述
+     */
+    public static class DurableSubscription {
+        private final String durable;
+        private final String subject;
+        private final Type payloadType;
+        private final int maxDeliver;
+        private final int handlerCount;
+
+        public DurableSubscription(String durable, String subject, Type payloadType, int maxDeliver, int handlerCount) {
+            this.durable = durable;
+            this.subject = subject;
+            this.payloadType = payloadType;
+            this.maxDeliver = maxDeliver;
+            this.handlerCount = handlerCount;
+        }
+
+        public String getDurable() { return durable; }
+        public String getSubject() { return subject; }
+        public Type getPayloadType() { return payloadType; }
+        /**
+         * 处理器声明的最大投递次数，未声明时为0
+         */
+        public int getMaxDeliver() { return maxDeliver; }
+        public int getHandlerCount() { return handlerCount; }
     }
 } 
\ No newline at end of file
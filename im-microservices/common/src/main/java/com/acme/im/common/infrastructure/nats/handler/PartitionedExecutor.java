@@ -0,0 +1,124 @@
+package com.acme.im.common.infrastructure.nats.handler;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按键有序的并行执行器
+ * 固定数量的单线程通道，同一键的任务总是进入同一通道按提交顺序执行，不同键并行
+ *
+ * 通道队列满时提交方阻塞等待，不丢任务也不打乱顺序，背压传回NATS分发线程
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Slf4j
+public class PartitionedExecutor {
+
+    private final ThreadPoolExecutor[] lanes;
+    private final AtomicLong unkeyed = new AtomicLong(0);
+    private final AtomicLong blockedSubmits = new AtomicLong(0);
+
+    /**
+     * @param name 线程名前缀
+     * @param laneCount 通道数
+     * @param queueCapacity 每个通道的队列容量
+     */
+    public PartitionedExecutor(String name, int laneCount, int queueCapacity) {
+        lanes = new ThreadPoolExecutor[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            String threadName = name + "-" + i;
+            ThreadFactory threadFactory = r -> {
+                Thread t = new Thread(r, threadName);
+                t.setDaemon(true);
+                return t;
+            };
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), threadFactory,
+                    (task, executor) -> {
+                        // 阻塞放入队列，保持同一键的顺序
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException("分区执行器已关闭");
+                        }
+                        blockedSubmits.incrementAndGet();
+                        try {
+                            executor.getQueue().put(task);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException("提交任务被中断", e);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * 提交任务
+     *
+     * @param key 分区键，为null时任务无顺序要求，轮询分配
+     * @param task 任务
+     */
+    public void execute(Object key, Runnable task) {
+        lanes[laneOf(key)].execute(task);
+    }
+
+    /**
+     * 键所在的通道
+     */
+    public int laneOf(Object key) {
+        if (key == null) {
+            return (int) Math.floorMod(unkeyed.getAndIncrement(), (long) lanes.length);
+        }
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return Math.floorMod(h, lanes.length);
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * 各通道排队中的任务数之和
+     */
+    public int getQueuedTasks() {
+        int queued = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            queued += lane.getQueue().size();
+        }
+        return queued;
+    }
+
+    /**
+     * 因通道队列满而阻塞的提交次数
+     */
+    public long getBlockedSubmits() {
+        return blockedSubmits.get();
+    }
+
+    /**
+     * 关闭执行器，等待已提交的任务完成
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ThreadPoolExecutor lane : lanes) {
+            try {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !lane.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+                    log.warn("分区通道未在超时内完成，丢弃剩余任务: dropped={}", lane.shutdownNow().size());
+                }
+            } catch (InterruptedException e) {
+                lane.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
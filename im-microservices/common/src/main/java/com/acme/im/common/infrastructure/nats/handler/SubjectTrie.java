@@ -0,0 +1,117 @@
+package com.acme.im.common.infrastructure.nats.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 主题前缀树
+ * 按"."分段组织订阅模式，匹配一次只沿主题的各段向下走，代价与订阅总数无关
+ *
+ * 1. 通配符 - * 匹配一段，> 匹配其余至少一段，与NATS语义一致
+ * 2. 并发 - 插入串行，匹配无锁，可在运行中追加订阅
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class SubjectTrie<T> {
+
+    private static final String SINGLE_WILDCARD = "*";
+    private static final String FULL_WILDCARD = ">";
+
+    private final Node<T> root = new Node<>();
+    private volatile int size = 0;
+
+    /**
+     * 树节点
+     */
+    private static final class Node<T> {
+        private final Map<String, Node<T>> children = new ConcurrentHashMap<>();
+        private volatile Node<T> singleWildcard;
+        private final List<T> values = new CopyOnWriteArrayList<>();
+        private final List<T> fullWildcardValues = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * 插入订阅模式
+     *
+     * @param pattern 订阅模式，> 只能作为最后一段
+     * @param value 关联的值
+     */
+    public synchronized void insert(String pattern, T value) {
+        String[] tokens = tokenize(pattern);
+        Node<T> node = root;
+        for (int i = 0; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (FULL_WILDCARD.equals(token)) {
+                if (i != tokens.length - 1) {
+                    throw new IllegalArgumentException("'>' 只能作为主题最后一段: " + pattern);
+                }
+                node.fullWildcardValues.add(value);
+                size++;
+                return;
+            }
+            if (SINGLE_WILDCARD.equals(token)) {
+                if (node.singleWildcard == null) {
+                    node.singleWildcard = new Node<>();
+                }
+                node = node.singleWildcard;
+            } else {
+                node = node.children.computeIfAbsent(token, k -> new Node<>());
+            }
+        }
+        node.values.add(value);
+        size++;
+    }
+
+    /**
+     * 查找与具体主题匹配的全部值，顺序不保证
+     */
+    public List<T> match(String subject) {
+        List<T> result = new ArrayList<>();
+        collect(root, tokenize(subject), 0, result);
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void collect(Node<T> node, String[] tokens, int index, List<T> result) {
+        if (index == tokens.length) {
+            result.addAll(node.values);
+            return;
+        }
+        result.addAll(node.fullWildcardValues);
+        Node<T> literal = node.children.get(tokens[index]);
+        if (literal != null) {
+            collect(literal, tokens, index + 1, result);
+        }
+        Node<T> wildcard = node.singleWildcard;
+        if (wildcard != null) {
+            collect(wildcard, tokens, index + 1, result);
+        }
+    }
+
+    private static String[] tokenize(String subject) {
+        int count = 1;
+        for (int i = 0; i < subject.length(); i++) {
+            if (subject.charAt(i) == '.') {
+                count++;
+            }
+        }
+        String[] tokens = new String[count];
+        int start = 0;
+        int t = 0;
+        for (int i = 0; i < subject.length(); i++) {
+            if (subject.charAt(i) == '.') {
+                tokens[t++] = subject.substring(start, i);
+                start = i + 1;
+            }
+        }
+        tokens[t] = subject.substring(start);
+        return tokens;
+    }
+}
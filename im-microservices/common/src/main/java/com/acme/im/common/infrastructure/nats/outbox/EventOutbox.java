@@ -0,0 +1,317 @@
+package com.acme.im.common.infrastructure.nats.outbox;
+
+import com.acme.im.common.infrastructure.nats.config.EventOutboxConfig;
+import com.acme.im.common.infrastructure.nats.config.NatsConnectionManager;
+import com.google.gson.Gson;
+import io.nats.client.PublishOptions;
+import io.nats.client.api.PublishAck;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 事件发件箱
+ * 事件先追加到本地分段日志再返回，由转发线程按序发布到JetStream，
+ * 进程崩溃或关闭时未确认的事件在下次启动时从确认位置继续转发
+ *
+ * 1. 去重 - 每条记录带固定的去重ID，以Nats-Msg-Id发布，重放与重试由JetStream在去重窗口内过滤
+ * 2. 流水线 - 转发线程异步发布，最多保持 maxInFlight 条未确认
+ * 3. 确认 - 只推进连续确认的位置；队头失败时回退到该记录重新发布，其后已发出的记录依赖去重过滤
+ * 4. 压缩 - 确认位置定期持久化，全部确认的分段随之删除
+ *
+ * 重启后从持久化的确认位置重放，最多重放一个确认间隔加上停机到恢复转发这段时间内已发布的记录；
+ * 只有流的 duplicate_window（默认2分钟）大于 checkpointIntervalMs 与重启耗时之和，重放才不会重复投递，
+ * 停机更久时重放仍可能重复，消费方应按去重ID幂等处理
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@Slf4j
+public class EventOutbox {
+
+    @Autowired
+    private EventOutboxConfig config;
+
+    @Autowired
+    private NatsConnectionManager connectionManager;
+
+    @Autowired
+    @Qualifier("gson")
+    private Gson gson;
+
+    private OutboxSegmentLog segmentLog;
+    private Thread relayThread;
+    private volatile boolean running = false;
+
+    // 统计信息
+    private final AtomicLong appendedEvents = new AtomicLong(0);
+    private final AtomicLong publishedEvents = new AtomicLong(0);
+    private final AtomicLong publishFailures = new AtomicLong(0);
+    private final AtomicLong rewinds = new AtomicLong(0);
+    private volatile int inFlightCount = 0;
+
+    /**
+     * 已发出待确认的记录
+     */
+    private static final class InFlight {
+        private final OutboxRecord record;
+        private final CompletableFuture<PublishAck> ack;
+
+        InFlight(OutboxRecord record, CompletableFuture<PublishAck> ack) {
+            this.record = record;
+            this.ack = ack;
+        }
+    }
+
+    /**
+     * 发件箱统计信息
+     */
+    public static class OutboxStats {
+        private final long appendedEvents;
+        private final long publishedEvents;
+        private final long publishFailures;
+        private final long rewinds;
+        private final long lastSequence;
+        private final long ackedSequence;
+        private final int inFlight;
+        private final int segments;
+
+        public OutboxStats(long appendedEvents, long publishedEvents, long publishFailures, long rewinds,
+                           long lastSequence, long ackedSequence, int inFlight, int segments) {
+            this.appendedEvents = appendedEvents;
+            this.publishedEvents = publishedEvents;
+            this.publishFailures = publishFailures;
+            this.rewinds = rewinds;
+            this.lastSequence = lastSequence;
+            this.ackedSequence = ackedSequence;
+            this.inFlight = inFlight;
+            this.segments = segments;
+        }
+
+        public long getAppendedEvents() { return appendedEvents; }
+        public long getPublishedEvents() { return publishedEvents; }
+        public long getPublishFailures() { return publishFailures; }
+        public long getRewinds() { return rewinds; }
+        public long getLastSequence() { return lastSequence; }
+        public long getAckedSequence() { return ackedSequence; }
+        public long getBacklog() { return lastSequence - ackedSequence; }
+        public int getInFlight() { return inFlight; }
+        public int getSegments() { return segments; }
+
+        @Override
+        public String toString() {
+            return String.format("OutboxStats{appended=%d, published=%d, failures=%d, rewinds=%d, last=%d, acked=%d, backlog=%d, inFlight=%d, segments=%d}",
+                    appendedEvents, publishedEvents, publishFailures, rewinds, lastSequence, ackedSequence,
+                    lastSequence - ackedSequence, inFlight, segments);
+        }
+    }
+
+    /**
+     * 打开日志并启动转发线程
+     */
+    @PostConstruct
+    public void initialize() {
+        if (!config.isEnabled() || running) {
+            return;
+        }
+        try {
+            segmentLog = new OutboxSegmentLog(Paths.get(config.getDir()), config.getSegmentBytes());
+        } catch (IOException e) {
+            throw new IllegalStateException("打开事件发件箱失败: dir=" + config.getDir(), e);
+        }
+
+        running = true;
+        relayThread = new Thread(this::relay, "event-outbox-relay");
+        relayThread.setDaemon(true);
+        relayThread.start();
+
+        long backlog = segmentLog.getLastSequence() - segmentLog.getAckedSequence();
+        log.info("事件发件箱已启动: dir={}, 待转发={}", config.getDir(), backlog);
+    }
+
+    public boolean isEnabled() {
+        return segmentLog != null && running;
+    }
+
+    /**
+     * 追加事件，返回时事件已写入本地日志（按配置刷盘）
+     *
+     * @param subject JetStream主题
+     * @param event 事件对象
+     * @param dedupId 去重ID，同一业务事件必须相同；为空时生成随机ID
+     * @return 日志序号
+     */
+    public long append(String subject, Object event, String dedupId) throws IOException {
+        if (!isEnabled()) {
+            throw new IllegalStateException("事件发件箱未启用");
+        }
+        byte[] payload = gson.toJson(event).getBytes(StandardCharsets.UTF_8);
+        long sequence = segmentLog.append(subject, dedupId != null ? dedupId : UUID.randomUUID().toString(), payload);
+        if (config.isForceOnAppend()) {
+            segmentLog.force(sequence);
+        }
+        appendedEvents.incrementAndGet();
+        LockSupport.unpark(relayThread);
+        return sequence;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public OutboxStats getStats() {
+        OutboxSegmentLog current = segmentLog;
+        return new OutboxStats(
+                appendedEvents.get(),
+                publishedEvents.get(),
+                publishFailures.get(),
+                rewinds.get(),
+                current != null ? current.getLastSequence() : 0,
+                current != null ? current.getAckedSequence() : 0,
+                inFlightCount,
+                current != null ? current.getSegmentCount() : 0
+        );
+    }
+
+    /**
+     * 停止转发，未确认的事件留在日志中待下次启动继续转发
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(relayThread);
+        try {
+            relayThread.join(config.getAckTimeoutMs() + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            segmentLog.close();
+        } catch (IOException e) {
+            log.warn("关闭事件发件箱失败: {}", e.getMessage());
+        }
+        log.info("事件发件箱已关闭: {}", getStats());
+    }
+
+    // ================================
+    // 转发
+    // ================================
+
+    /**
+     * 转发循环，单线程运行
+     */
+    private void relay() {
+        ArrayDeque<InFlight> inFlight = new ArrayDeque<>();
+        OutboxSegmentLog.Cursor cursor = segmentLog.cursor(segmentLog.getAckedSequence());
+        long acked = segmentLog.getAckedSequence();
+        long lastCheckpoint = System.currentTimeMillis();
+
+        while (running) {
+            try {
+                // 1. 回收队头已完成的确认，只推进连续确认的位置
+                OutboxRecord failed = null;
+                while (!inFlight.isEmpty() && inFlight.peekFirst().ack.isDone()) {
+                    InFlight head = inFlight.pollFirst();
+                    if (head.ack.isCompletedExceptionally()) {
+                        failed = head.record;
+                        break;
+                    }
+                    acked = head.record.getSequence();
+                    publishedEvents.incrementAndGet();
+                }
+                if (failed != null) {
+                    publishFailures.incrementAndGet();
+                    rewinds.incrementAndGet();
+                    log.warn("发件箱事件发布失败，回退重发: sequence={}, subject={}, inFlight={}",
+                            failed.getSequence(), failed.getSubject(), inFlight.size());
+                    inFlight.clear();
+                    cursor.seek(failed);
+                    backoff();
+                }
+
+                // 2. 定期持久化确认位置并压缩分段
+                long now = System.currentTimeMillis();
+                if (acked > segmentLog.getAckedSequence() && now - lastCheckpoint >= config.getCheckpointIntervalMs()) {
+                    segmentLog.acknowledge(acked);
+                    lastCheckpoint = now;
+                }
+
+                // 3. 发布新记录
+                int sent = 0;
+                while (inFlight.size() < config.getMaxInFlight()) {
+                    OutboxRecord record = cursor.next();
+                    if (record == null) {
+                        break;
+                    }
+                    inFlight.addLast(new InFlight(record, publish(record)));
+                    sent++;
+                }
+                inFlightCount = inFlight.size();
+
+                if (sent == 0) {
+                    // 有未确认时短等待轮询确认，否则等待新事件唤醒
+                    LockSupport.parkNanos(inFlight.isEmpty()
+                            ? TimeUnit.MILLISECONDS.toNanos(config.getIdleWaitMs())
+                            : TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            } catch (Exception e) {
+                log.error("发件箱转发异常，从确认位置重新开始: acked={}", acked, e);
+                publishFailures.incrementAndGet();
+                rewinds.incrementAndGet();
+                inFlight.clear();
+                cursor = segmentLog.cursor(acked);
+                backoff();
+            }
+        }
+
+        // 关闭前等待已发出的确认，持久化最终位置
+        long deadline = System.currentTimeMillis() + config.getAckTimeoutMs();
+        while (!inFlight.isEmpty() && System.currentTimeMillis() < deadline) {
+            InFlight head = inFlight.peekFirst();
+            if (!head.ack.isDone()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+            if (head.ack.isCompletedExceptionally()) {
+                break;
+            }
+            acked = head.record.getSequence();
+            publishedEvents.incrementAndGet();
+            inFlight.pollFirst();
+        }
+        try {
+            segmentLog.acknowledge(acked);
+        } catch (IOException e) {
+            log.warn("持久化发件箱确认位置失败: acked={}, error={}", acked, e.getMessage());
+        }
+        inFlightCount = 0;
+    }
+
+    private CompletableFuture<PublishAck> publish(OutboxRecord record) throws IOException {
+        // 按主题选连接，同一主题的记录始终经同一连接发出
+        PublishOptions options = PublishOptions.builder().messageId(record.getDedupId()).build();
+        return connectionManager.select(record.getSubject())
+                .publishAsync(record.getSubject(), record.getPayload(), options)
+                .orTimeout(config.getAckTimeoutMs(), TimeUnit.MILLISECONDS);
+    }
+
+    private void backoff() {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(config.getRetryBackoffMs()));
+    }
+}
@@ -0,0 +1,41 @@
+package com.acme.im.common.infrastructure.nats.outbox;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 发件箱记录
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Getter
+@RequiredArgsConstructor
+public class OutboxRecord {
+
+    /**
+     * 日志内全局递增的序号
+     */
+    private final long sequence;
+
+    /**
+     * 发布主题
+     */
+    private final String subject;
+
+    /**
+     * 去重ID，作为Nats-Msg-Id发布，重放时保持不变
+     */
+    private final String dedupId;
+
+    /**
+     * 已序列化的事件
+     */
+    private final byte[] payload;
+
+    /**
+     * 所在分段与位置，用于游标回退
+     */
+    private final long segmentBase;
+    private final int position;
+}
@@ -0,0 +1,408 @@
+package com.acme.im.common.infrastructure.nats.outbox;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * 发件箱分段日志
+ * 基于内存映射文件的追加写日志，单个目录内按序号分段存放
+ *
+ * 1. 记录格式：[体长度int][CRC32 int][序号long][主题长度short][主题][去重ID长度short][去重ID][负载]
+ * 2. 分段写满后封存并新建分段，文件名为分段首条记录的序号
+ * 3. 确认位置持久化在 checkpoint 文件中，全部记录都已确认的封存分段整段删除
+ * 4. 启动时逐条校验CRC恢复写入位置，末尾残缺的记录被截掉
+ *
+ * 写入映射区后即使进程崩溃数据也由操作系统落盘；需要抵御主机掉电时调用 {@link #force(long)}，
+ * 并发调用会合并为一次刷盘
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Slf4j
+public class OutboxSegmentLog implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private static final int HEADER_SIZE = 8;
+    private static final int MIN_BODY_SIZE = 8 + 2 + 2;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final FileChannel checkpointChannel;
+    private final ByteBuffer checkpointBuffer = ByteBuffer.allocate(8);
+    private final CRC32 crc = new CRC32();
+    private final Object forceLock = new Object();
+
+    private Segment active;
+    private volatile long lastSequence;
+    private volatile long ackedSequence;
+    private volatile long forcedSequence;
+
+    /**
+     * 分段
+     */
+    private static final class Segment {
+        private final long baseSequence;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+
+        /**
+         * 已完整写入的字节数，读者只读到这里
+         */
+        private volatile int limit;
+        private volatile boolean sealed;
+        private volatile long lastSequence;
+        private int forcedPosition;
+
+        Segment(long baseSequence, Path path, MappedByteBuffer buffer) {
+            this.baseSequence = baseSequence;
+            this.path = path;
+            this.buffer = buffer;
+            this.lastSequence = baseSequence - 1;
+        }
+    }
+
+    /**
+     * 打开日志目录并恢复
+     *
+     * @param directory 日志目录
+     * @param segmentBytes 单个分段大小
+     */
+    public OutboxSegmentLog(Path directory, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+
+        this.checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (checkpointChannel.size() >= 8) {
+            checkpointChannel.read(checkpointBuffer, 0);
+            this.ackedSequence = checkpointBuffer.getLong(0);
+        }
+
+        recover();
+        this.forcedSequence = lastSequence;
+        log.info("发件箱日志已打开: dir={}, segments={}, lastSequence={}, ackedSequence={}",
+                directory, segments.size(), lastSequence, ackedSequence);
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @return 记录序号
+     * @throws IllegalArgumentException 记录超过分段大小
+     */
+    public synchronized long append(String subject, String dedupId, byte[] payload) throws IOException {
+        byte[] subjectBytes = subject.getBytes(StandardCharsets.UTF_8);
+        byte[] idBytes = dedupId.getBytes(StandardCharsets.UTF_8);
+        int bodySize = MIN_BODY_SIZE + subjectBytes.length + idBytes.length + payload.length;
+        int recordSize = HEADER_SIZE + bodySize;
+        if (recordSize > segmentBytes) {
+            throw new IllegalArgumentException("发件箱记录过大: size=" + recordSize + ", segmentBytes=" + segmentBytes);
+        }
+        if (active.limit + recordSize > segmentBytes) {
+            rotate();
+        }
+
+        long sequence = lastSequence + 1;
+        int position = active.limit;
+        ByteBuffer buffer = active.buffer;
+        int bodyStart = position + HEADER_SIZE;
+        buffer.putLong(bodyStart, sequence);
+        buffer.putShort(bodyStart + 8, (short) subjectBytes.length);
+        buffer.put(bodyStart + 10, subjectBytes);
+        int idStart = bodyStart + 10 + subjectBytes.length;
+        buffer.putShort(idStart, (short) idBytes.length);
+        buffer.put(idStart + 2, idBytes);
+        buffer.put(idStart + 2 + idBytes.length, payload);
+
+        crc.reset();
+        crc.update(buffer.slice(bodyStart, bodySize));
+        buffer.putInt(position + 4, (int) crc.getValue());
+        // 长度最后写入，读者与恢复都以非零长度判断记录已完整
+        buffer.putInt(position, bodySize);
+
+        active.lastSequence = sequence;
+        active.limit = position + recordSize;
+        lastSequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * 确保指定序号及之前的记录已刷盘，并发调用合并为一次刷盘
+     */
+    public void force(long sequence) {
+        if (forcedSequence >= sequence) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (forcedSequence >= sequence) {
+                return;
+            }
+            long target = lastSequence;
+            for (Segment segment : segments.values()) {
+                int limit = segment.limit;
+                if (limit > segment.forcedPosition) {
+                    segment.buffer.force(segment.forcedPosition, limit - segment.forcedPosition);
+                    segment.forcedPosition = limit;
+                }
+            }
+            forcedSequence = target;
+        }
+    }
+
+    /**
+     * 持久化确认位置并删除已全部确认的封存分段
+     *
+     * @param sequence 连续确认到的序号
+     */
+    public void acknowledge(long sequence) throws IOException {
+        // 与追加使用不同的锁，刷checkpoint不阻塞写入
+        synchronized (checkpointChannel) {
+            if (sequence <= ackedSequence) {
+                return;
+            }
+            checkpointBuffer.clear();
+            checkpointBuffer.putLong(0, sequence);
+            checkpointChannel.write(checkpointBuffer, 0);
+            checkpointChannel.force(false);
+            ackedSequence = sequence;
+
+            List<Segment> compacted = new ArrayList<>();
+            for (Segment segment : segments.values()) {
+                if (!segment.sealed || segment.lastSequence > sequence) {
+                    break;
+                }
+                compacted.add(segment);
+            }
+            for (Segment segment : compacted) {
+                segments.remove(segment.baseSequence);
+                Files.deleteIfExists(segment.path);
+                log.debug("发件箱分段已压缩: segment={}, lastSequence={}", segment.path.getFileName(), segment.lastSequence);
+            }
+        }
+    }
+
+    /**
+     * 创建读游标
+     *
+     * @param afterSequence 从该序号之后开始读
+     */
+    public Cursor cursor(long afterSequence) {
+        return new Cursor(afterSequence);
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public long getAckedSequence() {
+        return ackedSequence;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force(lastSequence);
+        synchronized (checkpointChannel) {
+            checkpointChannel.close();
+        }
+    }
+
+    /**
+     * 读游标，单线程使用
+     */
+    public final class Cursor {
+        private Segment segment;
+        private int position;
+
+        private Cursor(long afterSequence) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(afterSequence + 1);
+            this.segment = entry != null ? entry.getValue() : segments.firstEntry().getValue();
+            this.position = 0;
+            // 跳过已读过的记录
+            while (true) {
+                OutboxRecord record = peek();
+                if (record == null || record.getSequence() > afterSequence) {
+                    break;
+                }
+                next();
+            }
+        }
+
+        /**
+         * 读取下一条记录
+         *
+         * @return 记录，暂无新记录时返回null
+         */
+        public OutboxRecord next() {
+            OutboxRecord record = peek();
+            if (record != null) {
+                segment = segments.get(record.getSegmentBase());
+                position = record.getPosition() + HEADER_SIZE + segment.buffer.getInt(record.getPosition());
+            }
+            return record;
+        }
+
+        /**
+         * 回退到指定记录，下次next从该记录开始
+         */
+        public void seek(OutboxRecord record) {
+            Segment target = segments.get(record.getSegmentBase());
+            if (target == null) {
+                throw new IllegalStateException("发件箱分段已被压缩: base=" + record.getSegmentBase());
+            }
+            segment = target;
+            position = record.getPosition();
+        }
+
+        private OutboxRecord peek() {
+            while (true) {
+                if (position < segment.limit) {
+                    return read(segment, position);
+                }
+                if (!segment.sealed) {
+                    return null;
+                }
+                // 封存标记在最后一条记录之后写入，看到封存后重读limit，避免漏掉封存前最后写入的记录
+                if (position < segment.limit) {
+                    continue;
+                }
+                Map.Entry<Long, Segment> next = segments.higherEntry(segment.baseSequence);
+                if (next == null) {
+                    return null;
+                }
+                segment = next.getValue();
+                position = 0;
+            }
+        }
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    private void recover() throws IOException {
+        List<Long> bases = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    bases.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("忽略无法识别的发件箱文件: {}", name);
+                }
+            }
+        }
+        bases.sort(Long::compare);
+
+        long sequence = ackedSequence;
+        for (int i = 0; i < bases.size(); i++) {
+            Segment segment = openSegment(bases.get(i));
+            scan(segment);
+            segment.sealed = i < bases.size() - 1;
+            segments.put(segment.baseSequence, segment);
+        }
+
+        if (segments.isEmpty()) {
+            Segment segment = openSegment(sequence + 1);
+            segments.put(segment.baseSequence, segment);
+        }
+        active = segments.lastEntry().getValue();
+        // 新记录必须紧接活动分段的最后一条，恢复时按序号连续性校验
+        lastSequence = active.lastSequence;
+        if (ackedSequence > lastSequence) {
+            log.warn("发件箱确认位置超过日志末尾，按日志末尾处理: acked={}, last={}", ackedSequence, lastSequence);
+            ackedSequence = lastSequence;
+        }
+    }
+
+    /**
+     * 扫描分段恢复写入位置，末尾残缺的记录清零
+     */
+    private void scan(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int position = 0;
+        long expected = segment.baseSequence;
+        while (position + HEADER_SIZE <= segmentBytes) {
+            int bodySize = buffer.getInt(position);
+            if (bodySize < MIN_BODY_SIZE || position + HEADER_SIZE + bodySize > segmentBytes) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice(position + HEADER_SIZE, bodySize));
+            if ((int) crc.getValue() != buffer.getInt(position + 4)
+                    || buffer.getLong(position + HEADER_SIZE) != expected) {
+                break;
+            }
+            segment.lastSequence = expected++;
+            position += HEADER_SIZE + bodySize;
+        }
+        segment.limit = position;
+        segment.forcedPosition = position;
+
+        if (position + 4 <= segmentBytes && buffer.getInt(position) != 0) {
+            log.warn("发件箱分段末尾有残缺记录，已截断: segment={}, position={}", segment.path.getFileName(), position);
+            for (int i = position; i < segmentBytes; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            segment.buffer.force();
+        }
+    }
+
+    private void rotate() throws IOException {
+        active.sealed = true;
+        Segment segment = openSegment(lastSequence + 1);
+        segments.put(segment.baseSequence, segment);
+        active = segment;
+        log.debug("发件箱分段已轮转: segment={}", segment.path.getFileName());
+    }
+
+    private Segment openSegment(long baseSequence) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", baseSequence, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            return new Segment(baseSequence, path, buffer);
+        }
+    }
+
+    private OutboxRecord read(Segment segment, int position) {
+        ByteBuffer buffer = segment.buffer;
+        int bodySize = buffer.getInt(position);
+        int bodyStart = position + HEADER_SIZE;
+        long sequence = buffer.getLong(bodyStart);
+        int subjectLength = buffer.getShort(bodyStart + 8) & 0xFFFF;
+        byte[] subject = new byte[subjectLength];
+        buffer.get(bodyStart + 10, subject);
+        int idStart = bodyStart + 10 + subjectLength;
+        int idLength = buffer.getShort(idStart) & 0xFFFF;
+        byte[] dedupId = new byte[idLength];
+        buffer.get(idStart + 2, dedupId);
+        int payloadStart = idStart + 2 + idLength;
+        byte[] payload = new byte[bodyStart + bodySize - payloadStart];
+        buffer.get(payloadStart, payload);
+        return new OutboxRecord(sequence, new String(subject, StandardCharsets.UTF_8),
+                new String(dedupId, StandardCharsets.UTF_8), payload, segment.baseSequence, position);
+    }
+}
@@ -1,9 +1,11 @@
 package com.acme.im.common.infrastructure.nats.publisher;
 
-import com.acme.im.common.infrastructure.nats.config.NatsConnectionPool;
+import com.acme.im.common.infrastructure.nats.config.EventPublisherConfig;
+import com.acme.im.common.infrastructure.nats.config.NatsConnectionManager;
+import com.acme.im.common.utils.monitoring.LongHistogram;
+import com.acme.im.common.utils.queue.LockFreeRingBuffer;
 import com.google.gson.Gson;
-import io.nats.client.Connection;
-import io.nats.client.JetStream;
+import io.nats.client.api.PublishAck;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -11,22 +13,41 @@ import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 异步事件发布器
  * 提供高性能的异步事件发布能力，支持批量处理、重试机制和背压控制
- * 
+ *
  * 特性：
  * 1. 异步处理 - 非阻塞事件发布
- * 2. 批量发送 - 批量处理提升吞吐量
- * 3. 重试机制 - 失败重试和死信队列
- * 4. 背压控制 - 防止内存溢出
- * 5. 监控统计 - 详细的性能指标
- * 6. 优雅关闭 - 确保消息不丢失
- * 
+ * 2. 批量发送 - 每个通道由单一写线程聚合批次，整批在同一连接上发布并只flush一次
+ * 3. 确认流水线 - JetStream走异步发布，确认在后台回收，不阻塞下一批
+ * 4. 重试机制 - 失败重试和死信队列
+ * 5. 背压控制 - 预分配的无锁环形队列，队列满时按主题选择阻塞、淘汰最旧、溢写磁盘或立即拒绝
+ * 6. 监控统计 - 批大小与端到端发布延迟分布
+ * 7. 优雅关闭 - 确保消息不丢失
+ *
  * @author IM开发团队
  * @since 1.0.0
  */
@@ -35,33 +56,48 @@ import java.util.concurrent.atomic.AtomicLong;
 public class AsyncEventPublisher {
 
     @Autowired
-    private NatsConnectionPool connectionPool;
-    
+    private NatsConnectionManager connectionManager;
+
     @Autowired
     @Qualifier("gson")
     private Gson gson;
 
-    // 异步处理配置
-    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
-    private static final int DEFAULT_BATCH_SIZE = 100;
-    private static final int DEFAULT_BATCH_TIMEOUT_MS = 1000;
-    private static final int DEFAULT_MAX_RETRIES = 3;
-    private static final int DEFAULT_THREAD_POOL_SIZE = 4;
+    @Autowired
+    private EventPublisherConfig config;
+
+    /**
+     * 序列化缓冲区超过该大小后不再保留，避免偶发大事件长期占用内存
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * 主题策略缓存上限，主题含动态段时不再缓存
+     */
+    private static final int MAX_CACHED_POLICIES = 1024;
+
+    private static final String SPILL_FILE_PREFIX = "lane-";
+    private static final String SPILL_FILE_SUFFIX = ".journal";
+
+    // 发布通道
+    private PublishLane[] lanes;
 
-    // 事件队列
-    private final BlockingQueue<EventTask> eventQueue = new LinkedBlockingQueue<>(DEFAULT_QUEUE_CAPACITY);
-    
     // 线程池
-    private ThreadPoolExecutor publisherExecutor;
     private ScheduledExecutorService scheduledExecutor;
-    
+
     // 统计信息
     private final AtomicLong totalEvents = new AtomicLong(0);
     private final AtomicLong successfulEvents = new AtomicLong(0);
     private final AtomicLong failedEvents = new AtomicLong(0);
     private final AtomicLong retriedEvents = new AtomicLong(0);
     private final AtomicLong droppedEvents = new AtomicLong(0);
-    
+    private final AtomicLong spilledEvents = new AtomicLong(0);
+    private final AtomicLong totalBatches = new AtomicLong(0);
+    private final LongHistogram batchSizeHistogram = new LongHistogram();
+    private final LongHistogram publishLatencyHistogram = new LongHistogram();
+
+    // 主题 -> 背压策略
+    private final Map<String, BackpressurePolicy> policyCache = new ConcurrentHashMap<>();
+
     // 状态控制
     private volatile boolean running = false;
     private volatile boolean shutdown = false;
@@ -74,6 +110,9 @@ public class AsyncEventPublisher {
         private final Object event;
         private final boolean useJetStream;
         private final long createTime;
+        private final long enqueueNanos;
+        private byte[] payload;
+        private final boolean replayed;
         private int retryCount;
         private final CompletableFuture<Void> future;
 
@@ -82,18 +121,41 @@ public class AsyncEventPublisher {
             this.event = event;
             this.useJetStream = useJetStream;
             this.createTime = System.currentTimeMillis();
+            this.enqueueNanos = System.nanoTime();
+            this.replayed = false;
             this.retryCount = 0;
             this.future = new CompletableFuture<>();
         }
 
+        /**
+         * 从溢写日志回放的事件，负载已序列化；入队时间按原始创建时间折算，延迟统计包含在磁盘上等待的时间
+         */
+        public EventTask(String subject, byte[] payload, boolean useJetStream, long createTime,
+                         CompletableFuture<Void> future) {
+            this.subject = subject;
+            this.event = null;
+            this.payload = payload;
+            this.useJetStream = useJetStream;
+            this.createTime = createTime;
+            this.enqueueNanos = System.nanoTime()
+                    - TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - createTime));
+            this.replayed = true;
+            this.retryCount = 0;
+            this.future = future;
+        }
+
         public String getSubject() { return subject; }
         public Object getEvent() { return event; }
         public boolean isUseJetStream() { return useJetStream; }
         public long getCreateTime() { return createTime; }
+        public long getEnqueueNanos() { return enqueueNanos; }
+        public byte[] getPayload() { return payload; }
+        public void setPayload(byte[] payload) { this.payload = payload; }
+        public boolean isReplayed() { return replayed; }
         public int getRetryCount() { return retryCount; }
         public void incrementRetryCount() { this.retryCount++; }
         public CompletableFuture<Void> getFuture() { return future; }
-        
+
         public boolean isExpired(long maxAgeMs) {
             return System.currentTimeMillis() - createTime > maxAgeMs;
         }
@@ -110,9 +172,17 @@ public class AsyncEventPublisher {
         private final long droppedEvents;
         private final int queueSize;
         private final double successRate;
+        private final long totalBatches;
+        private final int pendingAcks;
+        private final long spilledEvents;
+        private final int spillPending;
+        private final LongHistogram.Snapshot batchSize;
+        private final LongHistogram.Snapshot publishLatencyMicros;
 
-        public PublishStats(long totalEvents, long successfulEvents, long failedEvents, 
-                          long retriedEvents, long droppedEvents, int queueSize) {
+        public PublishStats(long totalEvents, long successfulEvents, long failedEvents,
+                          long retriedEvents, long droppedEvents, int queueSize,
+                          long totalBatches, int pendingAcks, long spilledEvents, int spillPending,
+                          LongHistogram.Snapshot batchSize, LongHistogram.Snapshot publishLatencyMicros) {
             this.totalEvents = totalEvents;
             this.successfulEvents = successfulEvents;
             this.failedEvents = failedEvents;
@@ -120,6 +190,12 @@ public class AsyncEventPublisher {
             this.droppedEvents = droppedEvents;
             this.queueSize = queueSize;
             this.successRate = totalEvents > 0 ? (double) successfulEvents / totalEvents : 0.0;
+            this.totalBatches = totalBatches;
+            this.pendingAcks = pendingAcks;
+            this.spilledEvents = spilledEvents;
+            this.spillPending = spillPending;
+            this.batchSize = batchSize;
+            this.publishLatencyMicros = publishLatencyMicros;
         }
 
         public long getTotalEvents() { return totalEvents; }
@@ -129,11 +205,19 @@ public class AsyncEventPublisher {
         public long getDroppedEvents() { return droppedEvents; }
         public int getQueueSize() { return queueSize; }
         public double getSuccessRate() { return successRate; }
+        public long getTotalBatches() { return totalBatches; }
+        public int getPendingAcks() { return pendingAcks; }
+        public long getSpilledEvents() { return spilledEvents; }
+        public int getSpillPending() { return spillPending; }
+        public LongHistogram.Snapshot getBatchSize() { return batchSize; }
+        public LongHistogram.Snapshot getPublishLatencyMicros() { return publishLatencyMicros; }
 
         @Override
         public String toString() {
-            return String.format("PublishStats{total=%d, success=%d, failed=%d, retried=%d, dropped=%d, queue=%d, successRate=%.2f%%}", 
-                    totalEvents, successfulEvents, failedEvents, retriedEvents, droppedEvents, queueSize, successRate * 100);
+            return String.format("PublishStats{total=%d, success=%d, failed=%d, retried=%d, dropped=%d, queue=%d, successRate=%.2f%%, " +
+                            "batches=%d, pendingAcks=%d, spilled=%d, spillPending=%d, batchSize=%s, latencyUs=%s}",
+                    totalEvents, successfulEvents, failedEvents, retriedEvents, droppedEvents, queueSize, successRate * 100,
+                    totalBatches, pendingAcks, spilledEvents, spillPending, batchSize, publishLatencyMicros);
         }
     }
 
@@ -148,26 +232,7 @@ public class AsyncEventPublisher {
 
         log.info("初始化异步事件发布器...");
 
-        // 创建线程池
-        publisherExecutor = new ThreadPoolExecutor(
-                DEFAULT_THREAD_POOL_SIZE,
-                DEFAULT_THREAD_POOL_SIZE,
-                60L,
-                TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>(100),
-                new ThreadFactory() {
-                    private final AtomicLong counter = new AtomicLong(0);
-                    @Override
-                    public Thread newThread(Runnable r) {
-                        Thread t = new Thread(r, "async-event-publisher-" + counter.incrementAndGet());
-                        t.setDaemon(true);
-                        return t;
-                    }
-                },
-                new ThreadPoolExecutor.CallerRunsPolicy()
-        );
-
-        // 创建调度线程池
+        // 创建调度线程池（重试与统计）
         scheduledExecutor = Executors.newScheduledThreadPool(2, new ThreadFactory() {
             private final AtomicLong counter = new AtomicLong(0);
             @Override
@@ -178,26 +243,41 @@ public class AsyncEventPublisher {
             }
         });
 
-        // 启动事件处理任务
-        for (int i = 0; i < DEFAULT_THREAD_POOL_SIZE; i++) {
-            publisherExecutor.submit(this::processEvents);
+        // 创建发布通道，每个通道一个写线程
+        int laneCount = Math.max(1, config.getLanes());
+        int laneCapacity = Math.max(1, config.getQueueCapacity() / laneCount);
+        lanes = new PublishLane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new PublishLane(i, laneCapacity);
         }
+        openSpillJournals();
 
-        // 启动批量处理任务
-        scheduledExecutor.scheduleAtFixedRate(this::processBatchEvents, 
-                DEFAULT_BATCH_TIMEOUT_MS, DEFAULT_BATCH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        running = true;
+        ThreadFactory laneThreadFactory = new ThreadFactory() {
+            private final AtomicLong counter = new AtomicLong(0);
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "async-event-publisher-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+        for (PublishLane lane : lanes) {
+            lane.thread = laneThreadFactory.newThread(lane);
+            lane.thread.start();
+        }
 
         // 启动统计任务
         scheduledExecutor.scheduleAtFixedRate(this::logStatistics, 30, 30, TimeUnit.SECONDS);
 
-        running = true;
-        log.info("异步事件发布器初始化完成: 线程池大小={}, 队列容量={}", 
-                DEFAULT_THREAD_POOL_SIZE, DEFAULT_QUEUE_CAPACITY);
+        log.info("异步事件发布器初始化完成: 通道数={}, 队列容量={}, 批大小={}, 聚合等待={}us, 默认背压策略={}",
+                laneCount, lanes[0].ring.capacity() * laneCount, config.getBatchSize(), config.getLingerMicros(),
+                config.getBackpressure().getDefaultPolicy());
     }
 
     /**
      * 异步发布事件
-     * 
+     *
      * @param subject 主题
      * @param event 事件对象
      * @return CompletableFuture
@@ -208,7 +288,7 @@ public class AsyncEventPublisher {
 
     /**
      * 异步发布事件到JetStream
-     * 
+     *
      * @param subject 主题
      * @param event 事件对象
      * @return CompletableFuture
@@ -221,21 +301,24 @@ public class AsyncEventPublisher {
      * 异步发布事件（内部方法）
      */
     private CompletableFuture<Void> publishEventAsync(String subject, Object event, boolean useJetStream) {
-        if (shutdown) {
+        if (shutdown || lanes == null) {
             return CompletableFuture.failedFuture(new RuntimeException("发布器已关闭"));
         }
 
         EventTask task = new EventTask(subject, event, useJetStream);
         totalEvents.incrementAndGet();
 
-        // 尝试添加到队列
-        if (eventQueue.offer(task)) {
-            log.debug("事件已加入队列: subject={}, queueSize={}", subject, eventQueue.size());
+        // 按主题的背压策略加入所属通道
+        PublishLane lane = laneOf(subject);
+        BackpressurePolicy policy = policyOf(subject);
+        if (lane.enqueue(task, policy)) {
+            log.debug("事件已加入队列: subject={}, lane={}, queueSize={}", subject, lane.index, lane.ring.size());
             return task.getFuture();
         } else {
             // 队列满了，拒绝事件
             droppedEvents.incrementAndGet();
-            log.warn("事件队列已满，丢弃事件: subject={}, queueSize={}", subject, eventQueue.size());
+            log.warn("事件队列已满，丢弃事件: subject={}, lane={}, policy={}, queueSize={}",
+                    subject, lane.index, policy, lane.ring.size());
             return CompletableFuture.failedFuture(new RuntimeException("事件队列已满"));
         }
     }
@@ -277,7 +360,13 @@ public class AsyncEventPublisher {
                 failedEvents.get(),
                 retriedEvents.get(),
                 droppedEvents.get(),
-                eventQueue.size()
+                queueSize(),
+                totalBatches.get(),
+                pendingAcks(),
+                spilledEvents.get(),
+                spillPending(),
+                batchSizeHistogram.snapshot(),
+                publishLatencyHistogram.snapshot()
         );
     }
 
@@ -295,7 +384,7 @@ public class AsyncEventPublisher {
 
         // 等待队列中的事件处理完成
         long waitStart = System.currentTimeMillis();
-        while (!eventQueue.isEmpty() && (System.currentTimeMillis() - waitStart) < 30000) {
+        while (queueSize() > 0 && (System.currentTimeMillis() - waitStart) < 30000) {
             try {
                 Thread.sleep(100);
             } catch (InterruptedException e) {
@@ -304,16 +393,19 @@ public class AsyncEventPublisher {
             }
         }
 
-        // 关闭线程池
-        if (publisherExecutor != null) {
-            publisherExecutor.shutdown();
-            try {
-                if (!publisherExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
-                    publisherExecutor.shutdownNow();
+        // 停止写线程，写线程退出前等待未确认的发布并归还连接
+        running = false;
+        if (lanes != null) {
+            for (PublishLane lane : lanes) {
+                try {
+                    lane.thread.join(config.getAckTimeoutMs() + 1000);
+                    if (lane.thread.isAlive()) {
+                        lane.thread.interrupt();
+                    }
+                } catch (InterruptedException e) {
+                    lane.thread.interrupt();
+                    Thread.currentThread().interrupt();
                 }
-            } catch (InterruptedException e) {
-                publisherExecutor.shutdownNow();
-                Thread.currentThread().interrupt();
             }
         }
 
@@ -329,136 +421,734 @@ public class AsyncEventPublisher {
             }
         }
 
-        running = false;
-        log.info("异步事件发布器已关闭: 剩余队列事件={}", eventQueue.size());
+        // 未发出的事件：SPILL主题写入溢写日志待下次启动回放，其余直接失败
+        int remaining = 0;
+        if (lanes != null) {
+            for (PublishLane lane : lanes) {
+                remaining += lane.closeRemaining();
+            }
+        }
+
+        log.info("异步事件发布器已关闭: 剩余队列事件={}, 待回放溢写事件={}", remaining, spillPending());
     }
 
     // ================================
-    // 私有处理方法
+    // 发布通道
     // ================================
 
     /**
-     * 处理事件队列
+     * 发布通道
+     * 单一写线程按通道号选用共享连接：聚合批次、复用序列化缓冲区、整批发布后flush一次。
+     * 除环形队列、溢写日志与确认信号量外，通道状态只由写线程访问
      */
-    private void processEvents() {
-        while (running && !Thread.currentThread().isInterrupted()) {
+    private final class PublishLane implements Runnable {
+        private final int index;
+        private final LockFreeRingBuffer<EventTask> ring;
+        private final Semaphore pendingAcks;
+        private final List<EventTask> batch;
+        private final List<EventTask> flushPending;
+        private final SerializationBuffer buffer;
+        private volatile SpillJournal journal;
+        private Thread thread;
+
+        PublishLane(int index, int capacity) {
+            this.index = index;
+            this.ring = new LockFreeRingBuffer<>(capacity);
+            this.pendingAcks = new Semaphore(Math.max(1, config.getMaxPendingAcks()));
+            this.batch = new ArrayList<>(config.getBatchSize());
+            this.flushPending = new ArrayList<>(config.getBatchSize());
+            this.buffer = new SerializationBuffer(config.getBufferSize());
+        }
+
+        /**
+         * 按背压策略入队
+         *
+         * @return 是否被接收（入队或溢写）
+         */
+        boolean enqueue(EventTask task, BackpressurePolicy policy) {
+            switch (policy) {
+                case BLOCK:
+                    return ring.offer(task, config.getBackpressure().getBlockTimeoutMs(), TimeUnit.MILLISECONDS);
+                case DROP_OLDEST:
+                    // 淘汰与入队之间可能被其他生产者抢占空位，有限次重试
+                    for (int attempt = 0; attempt < 16; attempt++) {
+                        if (ring.offer(task)) {
+                            return true;
+                        }
+                        EventTask evicted = ring.poll();
+                        if (evicted != null) {
+                            droppedEvents.incrementAndGet();
+                            evicted.getFuture().completeExceptionally(new RuntimeException("事件被更新的事件挤出队列"));
+                            log.debug("队列已满，淘汰最旧事件: subject={}, lane={}", evicted.getSubject(), index);
+                        }
+                    }
+                    return false;
+                case SPILL:
+                    // 溢写日志未回放完时新事件继续写日志，尽量保持同一主题的顺序
+                    SpillJournal spill = journal;
+                    if (spill != null && spill.pending() > 0) {
+                        return spill(task);
+                    }
+                    return ring.offer(task) || spill(task);
+                case FAIL_FAST:
+                default:
+                    return ring.offer(task);
+            }
+        }
+
+        /**
+         * 写入溢写日志，在调用方线程序列化
+         */
+        boolean spill(EventTask task) {
+            SpillJournal spill = journal;
+            if (spill == null) {
+                return false;
+            }
             try {
-                EventTask task = eventQueue.poll(1, TimeUnit.SECONDS);
-                if (task != null) {
-                    processEventTask(task);
+                byte[] payload = task.getPayload() != null ? task.getPayload()
+                        : gson.toJson(task.getEvent()).getBytes(StandardCharsets.UTF_8);
+                if (spill.append(task.getSubject(), task.isUseJetStream(), task.getCreateTime(), payload, task.getFuture())) {
+                    spilledEvents.incrementAndGet();
+                    return true;
+                }
+                log.warn("溢写日志已达上限: lane={}, maxBytes={}", index, config.getBackpressure().getSpillMaxBytes());
+            } catch (Exception e) {
+                log.error("事件溢写失败: subject={}, lane={}", task.getSubject(), index, e);
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running && !Thread.currentThread().isInterrupted()) {
+                    try {
+                        if (collectBatch()) {
+                            publishBatch();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (Exception e) {
+                        log.error("处理事件批次异常: lane={}", index, e);
+                    } finally {
+                        batch.clear();
+                        flushPending.clear();
+                    }
+                }
+            } finally {
+                awaitPendingAcks();
+            }
+        }
+
+        /**
+         * 聚合一批事件：队列有余量时先回放一部分溢写事件，再等待首个事件，之后在聚合等待时间内凑满批大小
+         *
+         * @return 是否拿到事件
+         */
+        private boolean collectBatch() throws InterruptedException {
+            int batchSize = Math.max(1, config.getBatchSize());
+            replaySpilled(Math.max(1, batchSize / 2));
+
+            if (batch.isEmpty()) {
+                EventTask first = ring.poll();
+                if (first == null) {
+                    ring.awaitNotEmpty(100, TimeUnit.MILLISECONDS);
+                    checkInterrupted();
+                    first = ring.poll();
+                    if (first == null) {
+                        return false;
+                    }
+                }
+                batch.add(first);
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(config.getLingerMicros());
+            while (batch.size() < batchSize) {
+                if (ring.drainTo(batch, batchSize - batch.size()) > 0) {
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                ring.awaitNotEmpty(remaining, TimeUnit.NANOSECONDS);
+                checkInterrupted();
+            }
+            return true;
+        }
+
+        /**
+         * 队列低于半满时从溢写日志回放，避免回放把队列重新压满
+         */
+        private void replaySpilled(int maxEvents) {
+            SpillJournal spill = journal;
+            if (spill == null || spill.pending() == 0 || ring.size() >= ring.capacity() / 2) {
+                return;
+            }
+            try {
+                spill.drainTo(batch, maxEvents);
+            } catch (IOException e) {
+                log.error("读取溢写日志失败: lane={}", index, e);
+            }
+        }
+
+        private void checkInterrupted() throws InterruptedException {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        /**
+         * 整批发布：普通主题在flush后确认，JetStream主题在异步确认回调中确认
+         */
+        private void publishBatch() throws InterruptedException {
+            totalBatches.incrementAndGet();
+            batchSizeHistogram.record(batch.size());
+
+            NatsConnectionManager.ManagedConnection conn;
+            try {
+                conn = connectionManager.select(index);
+            } catch (RuntimeException e) {
+                for (EventTask task : batch) {
+                    handleEventError(task, e);
+                }
+                return;
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                EventTask task = batch.get(i);
+                // 检查事件是否过期，溢写回放的事件已按策略落盘，不再按排队时间丢弃
+                if (!task.isReplayed() && task.isExpired(config.getEventTtlMs())) {
+                    log.warn("事件已过期，丢弃: subject={}, age={}ms",
+                            task.getSubject(), System.currentTimeMillis() - task.getCreateTime());
+                    droppedEvents.incrementAndGet();
+                    task.getFuture().completeExceptionally(new RuntimeException("事件已过期"));
+                    continue;
+                }
+
+                // 序列化事件，序列化失败重试无意义，直接失败
+                byte[] eventData = task.getPayload();
+                if (eventData == null) {
+                    try {
+                        eventData = buffer.serialize(gson, task.getEvent());
+                    } catch (Exception e) {
+                        failedEvents.incrementAndGet();
+                        task.getFuture().completeExceptionally(e);
+                        log.error("事件序列化失败: subject={}", task.getSubject(), e);
+                        continue;
+                    }
+                }
+
+                // 发布事件
+                try {
+                    if (task.isUseJetStream()) {
+                        publishJetStream(conn, task, eventData);
+                    } else {
+                        conn.publish(task.getSubject(), eventData);
+                        flushPending.add(task);
+                    }
+                } catch (InterruptedException e) {
+                    for (int j = i; j < batch.size(); j++) {
+                        handleEventError(batch.get(j), e);
+                    }
+                    failFlushPending(e);
+                    throw e;
+                } catch (Exception e) {
+                    handleEventError(task, e);
+                }
+            }
+
+            // 整批只flush一次
+            try {
+                conn.flush(Duration.ofMillis(config.getFlushTimeoutMs()));
+                long now = System.nanoTime();
+                for (EventTask task : flushPending) {
+                    completeTask(task, now);
                 }
             } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
+                failFlushPending(e);
+                throw e;
             } catch (Exception e) {
-                log.error("处理事件任务异常", e);
+                log.warn("事件批次flush失败: lane={}, size={}, error={}", index, flushPending.size(), e.getMessage());
+                failFlushPending(e);
+            }
+        }
+
+        /**
+         * JetStream异步发布，确认在回调中处理；未确认数达到上限时等待，形成背压
+         */
+        private void publishJetStream(NatsConnectionManager.ManagedConnection conn, EventTask task, byte[] eventData) throws Exception {
+            if (!pendingAcks.tryAcquire(config.getAckTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                throw new TimeoutException("等待JetStream确认超时");
+            }
+            CompletableFuture<PublishAck> ack;
+            try {
+                ack = conn.publishAsync(task.getSubject(), eventData, null);
+            } catch (Exception e) {
+                pendingAcks.release();
+                throw e;
+            }
+            ack.orTimeout(config.getAckTimeoutMs(), TimeUnit.MILLISECONDS).whenComplete((publishAck, error) -> {
+                pendingAcks.release();
+                if (error == null) {
+                    completeTask(task, System.nanoTime());
+                } else {
+                    handleEventError(task, error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error);
+                }
+            });
+        }
+
+        private void failFlushPending(Throwable error) {
+            for (EventTask task : flushPending) {
+                handleEventError(task, error);
+            }
+            flushPending.clear();
+        }
+
+        private void awaitPendingAcks() {
+            int permits = Math.max(1, config.getMaxPendingAcks());
+            try {
+                if (pendingAcks.tryAcquire(permits, config.getAckTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                    pendingAcks.release(permits);
+                } else {
+                    log.warn("关闭时仍有未确认的JetStream发布: lane={}, pending={}",
+                            index, permits - pendingAcks.availablePermits());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
+
+        private int pendingAckCount() {
+            return Math.max(1, config.getMaxPendingAcks()) - pendingAcks.availablePermits();
+        }
+
+        /**
+         * 关闭时处理队列中剩余的事件：SPILL主题写入溢写日志，其余失败
+         *
+         * @return 剩余事件数
+         */
+        int closeRemaining() {
+            int remaining = 0;
+            EventTask task;
+            while ((task = ring.poll()) != null) {
+                remaining++;
+                if (policyOf(task.getSubject()) == BackpressurePolicy.SPILL && spill(task)) {
+                    task.getFuture().completeExceptionally(new RuntimeException("发布器已关闭，事件已溢写，重启后回放"));
+                } else {
+                    failedEvents.incrementAndGet();
+                    task.getFuture().completeExceptionally(new RuntimeException("发布器已关闭"));
+                }
+            }
+            SpillJournal spill = journal;
+            if (spill != null) {
+                journal = null;
+                try {
+                    spill.close();
+                } catch (IOException e) {
+                    log.warn("关闭溢写日志失败: lane={}, error={}", index, e.getMessage());
+                }
+            }
+            return remaining;
+        }
     }
 
     /**
-     * 批量处理事件
+     * 可复用的序列化缓冲区
+     * 直接把JSON以UTF-8写入字节缓冲，省去中间字符串；只有最终负载需要拷贝一次，
+     * 因为连接的发送队列会持有负载引用
      */
-    private void processBatchEvents() {
-        if (!running || eventQueue.isEmpty()) {
-            return;
+    private static final class SerializationBuffer extends ByteArrayOutputStream {
+        private final int initialSize;
+        private final Writer writer;
+
+        SerializationBuffer(int initialSize) {
+            super(initialSize);
+            this.initialSize = initialSize;
+            this.writer = new OutputStreamWriter(this, StandardCharsets.UTF_8);
         }
 
-        try {
-            // 收集一批事件
-            var batch = new java.util.ArrayList<EventTask>();
-            eventQueue.drainTo(batch, DEFAULT_BATCH_SIZE);
+        byte[] serialize(Gson gson, Object event) throws IOException {
+            if (buf.length > MAX_RETAINED_BUFFER_SIZE) {
+                buf = new byte[initialSize];
+            }
+            reset();
+            gson.toJson(event, writer);
+            writer.flush();
+            return toByteArray();
+        }
+    }
+
+    /**
+     * 溢写日志
+     * 每个通道一个追加写文件，记录格式：[长度int][创建时间long][JetStream标记byte][主题长度short][主题][负载]。
+     * 全部回放完后截断文件；启动时截掉末尾不完整的记录，从头回放上次遗留的事件。
+     * 溢写只用于削峰，不逐条刷盘，关闭时刷盘
+     */
+    private static final class SpillJournal implements Closeable {
+        private static final int LENGTH_SIZE = 4;
+        private static final int FIXED_BODY_SIZE = 8 + 1 + 2;
+
+        private final Path path;
+        private final long maxBytes;
+        private final FileChannel channel;
+        private final ByteBuffer lengthBuffer = ByteBuffer.allocate(LENGTH_SIZE);
+        private final ArrayDeque<CompletableFuture<Void>> futures = new ArrayDeque<>();
+        private final AtomicInteger pending = new AtomicInteger(0);
+        private long readPosition;
+        private long writePosition;
 
-            if (!batch.isEmpty()) {
-                log.debug("批量处理事件: size={}", batch.size());
-                
-                // 并行处理批次
-                batch.parallelStream().forEach(this::processEventTask);
+        /**
+         * 启动时恢复的记录数，这些记录没有调用方在等待结果
+         */
+        private int recovered;
+
+        SpillJournal(Path path, long maxBytes) throws IOException {
+            this.path = path;
+            this.maxBytes = maxBytes;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size();
+            long position = 0;
+            int records = 0;
+            while (position + LENGTH_SIZE <= size) {
+                int length = readLength(position);
+                if (length < FIXED_BODY_SIZE || position + LENGTH_SIZE + length > size) {
+                    break;
+                }
+                position += LENGTH_SIZE + length;
+                records++;
+            }
+            if (position < size) {
+                channel.truncate(position);
+            }
+            this.writePosition = position;
+            this.recovered = records;
+            this.pending.set(records);
+        }
+
+        int pending() {
+            return pending.get();
+        }
+
+        /**
+         * 追加一条记录
+         *
+         * @return false表示超过容量上限
+         */
+        synchronized boolean append(String subject, boolean jetStream, long createTime, byte[] payload,
+                                    CompletableFuture<Void> future) throws IOException {
+            byte[] subjectBytes = subject.getBytes(StandardCharsets.UTF_8);
+            if (writePosition + LENGTH_SIZE + FIXED_BODY_SIZE + subjectBytes.length + payload.length > maxBytes) {
+                return false;
+            }
+            writeRecord(subjectBytes, jetStream, createTime, payload, future);
+            return true;
+        }
+
+        /**
+         * 按写入顺序读出记录，全部读完后截断文件
+         *
+         * @return 读出数量
+         */
+        synchronized int drainTo(List<EventTask> target, int maxEvents) throws IOException {
+            int drained = 0;
+            while (drained < maxEvents && readPosition < writePosition) {
+                int length = readLength(readPosition);
+                ByteBuffer body = ByteBuffer.allocate(length);
+                readFully(body, readPosition + LENGTH_SIZE);
+                body.flip();
+                long createTime = body.getLong();
+                boolean jetStream = body.get() == 1;
+                byte[] subject = new byte[body.getShort() & 0xFFFF];
+                body.get(subject);
+                byte[] payload = new byte[body.remaining()];
+                body.get(payload);
+                readPosition += LENGTH_SIZE + length;
+
+                CompletableFuture<Void> future = null;
+                if (recovered > 0) {
+                    recovered--;
+                } else {
+                    future = futures.pollFirst();
+                }
+                target.add(new EventTask(new String(subject, StandardCharsets.UTF_8), payload, jetStream, createTime,
+                        future != null ? future : new CompletableFuture<>()));
+                pending.decrementAndGet();
+                drained++;
+            }
+            if (readPosition == writePosition && writePosition > 0) {
+                channel.truncate(0);
+                readPosition = 0;
+                writePosition = 0;
+            }
+            return drained;
+        }
+
+        /**
+         * 把全部记录转入另一个日志，不受目标容量上限限制
+         *
+         * @return 转移数量
+         */
+        synchronized int transferTo(SpillJournal target) throws IOException {
+            List<EventTask> records = new ArrayList<>();
+            int transferred = 0;
+            while (drainTo(records, 256) > 0) {
+                synchronized (target) {
+                    for (EventTask record : records) {
+                        target.writeRecord(record.getSubject().getBytes(StandardCharsets.UTF_8), record.isUseJetStream(),
+                                record.getCreateTime(), record.getPayload(), record.getFuture());
+                    }
+                }
+                transferred += records.size();
+                records.clear();
+            }
+            return transferred;
+        }
+
+        private void writeRecord(byte[] subjectBytes, boolean jetStream, long createTime, byte[] payload,
+                                 CompletableFuture<Void> future) throws IOException {
+            int length = FIXED_BODY_SIZE + subjectBytes.length + payload.length;
+            ByteBuffer record = ByteBuffer.allocate(LENGTH_SIZE + length);
+            record.putInt(length)
+                    .putLong(createTime)
+                    .put((byte) (jetStream ? 1 : 0))
+                    .putShort((short) subjectBytes.length)
+                    .put(subjectBytes)
+                    .put(payload)
+                    .flip();
+            long position = writePosition;
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            writePosition = position;
+            futures.addLast(future);
+            pending.incrementAndGet();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+            if (writePosition == 0) {
+                Files.deleteIfExists(path);
+            }
+        }
+
+        private int readLength(long position) throws IOException {
+            lengthBuffer.clear();
+            readFully(lengthBuffer, position);
+            return lengthBuffer.getInt(0);
+        }
+
+        private void readFully(ByteBuffer buffer, long position) throws IOException {
+            long offset = position;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, offset);
+                if (read < 0) {
+                    throw new IOException("溢写日志记录不完整: " + path);
+                }
+                offset += read;
             }
-        } catch (Exception e) {
-            log.error("批量处理事件异常", e);
         }
     }
 
+    // ================================
+    // 私有处理方法
+    // ================================
+
     /**
-     * 处理单个事件任务
+     * 按主题选择通道，同一主题始终由同一写线程按序发布
      */
-    private void processEventTask(EventTask task) {
-        Connection connection = null;
-        try {
-            // 检查事件是否过期
-            if (task.isExpired(60000)) { // 1分钟过期
-                log.warn("事件已过期，丢弃: subject={}, age={}ms", 
-                        task.getSubject(), System.currentTimeMillis() - task.getCreateTime());
-                droppedEvents.incrementAndGet();
-                task.getFuture().completeExceptionally(new RuntimeException("事件已过期"));
-                return;
+    private PublishLane laneOf(String subject) {
+        return lanes[Math.floorMod(subject.hashCode(), lanes.length)];
+    }
+
+    /**
+     * 解析主题的背压策略，按配置顺序取首个匹配的通配模式
+     */
+    private BackpressurePolicy policyOf(String subject) {
+        BackpressurePolicy policy = policyCache.get(subject);
+        if (policy != null) {
+            return policy;
+        }
+        EventPublisherConfig.Backpressure backpressure = config.getBackpressure();
+        policy = backpressure.getDefaultPolicy();
+        for (Map.Entry<String, BackpressurePolicy> entry : backpressure.getSubjects().entrySet()) {
+            if (subjectMatches(entry.getKey(), subject)) {
+                policy = entry.getValue();
+                break;
             }
+        }
+        if (policyCache.size() < MAX_CACHED_POLICIES) {
+            policyCache.put(subject, policy);
+        }
+        return policy;
+    }
 
-            // 获取连接
-            connection = connectionPool.borrowConnection();
-            
-            // 序列化事件
-            String jsonEvent = gson.toJson(task.getEvent());
-            byte[] eventData = jsonEvent.getBytes(StandardCharsets.UTF_8);
+    /**
+     * NATS主题通配匹配：* 匹配一段，> 匹配其余至少一段
+     */
+    static boolean subjectMatches(String pattern, String subject) {
+        String[] patternTokens = pattern.split("\\.");
+        String[] subjectTokens = subject.split("\\.");
+        for (int i = 0; i < patternTokens.length; i++) {
+            if (">".equals(patternTokens[i])) {
+                return i < subjectTokens.length;
+            }
+            if (i >= subjectTokens.length) {
+                return false;
+            }
+            if (!"*".equals(patternTokens[i]) && !patternTokens[i].equals(subjectTokens[i])) {
+                return false;
+            }
+        }
+        return patternTokens.length == subjectTokens.length;
+    }
 
-            // 发布事件
-            if (task.isUseJetStream()) {
-                JetStream jetStream = connection.jetStream();
-                jetStream.publish(task.getSubject(), eventData);
-            } else {
-                connection.publish(task.getSubject(), eventData);
+    /**
+     * 打开各通道的溢写日志：配置了SPILL策略，或目录中有上次遗留的日志需要回放
+     */
+    private void openSpillJournals() {
+        EventPublisherConfig.Backpressure backpressure = config.getBackpressure();
+        Path dir = Paths.get(backpressure.getSpillDir());
+        boolean spillConfigured = backpressure.getDefaultPolicy() == BackpressurePolicy.SPILL
+                || backpressure.getSubjects().containsValue(BackpressurePolicy.SPILL);
+        if (!spillConfigured && !Files.isDirectory(dir)) {
+            return;
+        }
+        try {
+            Files.createDirectories(dir);
+            for (PublishLane lane : lanes) {
+                lane.journal = new SpillJournal(dir.resolve(SPILL_FILE_PREFIX + lane.index + SPILL_FILE_SUFFIX),
+                        backpressure.getSpillMaxBytes());
+            }
+            // 通道数调小后遗留的日志并入现有通道
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SPILL_FILE_PREFIX + "*" + SPILL_FILE_SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    int laneIndex;
+                    try {
+                        laneIndex = Integer.parseInt(name.substring(SPILL_FILE_PREFIX.length(),
+                                name.length() - SPILL_FILE_SUFFIX.length()));
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    if (laneIndex < lanes.length) {
+                        continue;
+                    }
+                    try (SpillJournal orphan = new SpillJournal(file, Long.MAX_VALUE)) {
+                        int transferred = orphan.transferTo(lanes[laneIndex % lanes.length].journal);
+                        log.info("遗留溢写日志已并入通道: file={}, lane={}, count={}",
+                                name, laneIndex % lanes.length, transferred);
+                    }
+                }
+            }
+            int pending = spillPending();
+            if (pending > 0) {
+                log.info("发现待回放的溢写事件: count={}, dir={}", pending, dir);
             }
+        } catch (IOException e) {
+            log.error("打开溢写日志失败，SPILL策略按FAIL_FAST处理: dir={}", dir, e);
+            for (PublishLane lane : lanes) {
+                SpillJournal journal = lane.journal;
+                lane.journal = null;
+                if (journal != null) {
+                    try {
+                        journal.close();
+                    } catch (IOException ignored) {
+                        // 已在失败路径上
+                    }
+                }
+            }
+        }
+    }
 
-            // 发布成功
-            successfulEvents.incrementAndGet();
-            task.getFuture().complete(null);
-            
-            log.debug("事件发布成功: subject={}, useJetStream={}", 
-                    task.getSubject(), task.isUseJetStream());
+    private int queueSize() {
+        int size = 0;
+        if (lanes != null) {
+            for (PublishLane lane : lanes) {
+                size += lane.ring.size();
+            }
+        }
+        return size;
+    }
 
-        } catch (Exception e) {
-            handleEventError(task, e);
-        } finally {
-            // 归还连接
-            if (connection != null) {
-                connectionPool.returnConnection(connection);
+    private int spillPending() {
+        int pending = 0;
+        if (lanes != null) {
+            for (PublishLane lane : lanes) {
+                SpillJournal journal = lane.journal;
+                if (journal != null) {
+                    pending += journal.pending();
+                }
             }
         }
+        return pending;
+    }
+
+    private int pendingAcks() {
+        int pending = 0;
+        if (lanes != null) {
+            for (PublishLane lane : lanes) {
+                pending += lane.pendingAckCount();
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * 发布成功，记录入队到确认的端到端延迟
+     */
+    private void completeTask(EventTask task, long nowNanos) {
+        successfulEvents.incrementAndGet();
+        publishLatencyHistogram.record(TimeUnit.NANOSECONDS.toMicros(nowNanos - task.getEnqueueNanos()));
+        task.getFuture().complete(null);
+        log.debug("事件发布成功: subject={}, useJetStream={}", task.getSubject(), task.isUseJetStream());
     }
 
     /**
      * 处理事件错误
      */
-    private void handleEventError(EventTask task, Exception error) {
-        log.warn("事件发布失败: subject={}, retryCount={}, error={}", 
+    private void handleEventError(EventTask task, Throwable error) {
+        log.warn("事件发布失败: subject={}, retryCount={}, error={}",
                 task.getSubject(), task.getRetryCount(), error.getMessage());
 
         // 重试逻辑
-        if (task.getRetryCount() < DEFAULT_MAX_RETRIES) {
+        if (task.getRetryCount() < config.getMaxRetries() && !scheduledExecutor.isShutdown()) {
             task.incrementRetryCount();
             retriedEvents.incrementAndGet();
-            
+
             // 延迟重试
-            scheduledExecutor.schedule(() -> {
-                if (eventQueue.offer(task)) {
-                    log.debug("事件重试: subject={}, retryCount={}", 
-                            task.getSubject(), task.getRetryCount());
-                } else {
-                    // 重试队列满了
-                    droppedEvents.incrementAndGet();
-                    task.getFuture().completeExceptionally(new RuntimeException("重试队列已满"));
-                }
-            }, Math.min(1000 * (1 << task.getRetryCount()), 30000), TimeUnit.MILLISECONDS);
-            
-        } else {
-            // 重试次数耗尽
-            failedEvents.incrementAndGet();
-            task.getFuture().completeExceptionally(error);
-            
-            log.error("事件发布最终失败: subject={}, maxRetries={}", 
-                    task.getSubject(), DEFAULT_MAX_RETRIES);
+            try {
+                scheduledExecutor.schedule(() -> {
+                    // 重试在调度线程上执行，BLOCK策略不阻塞，直接按FAIL_FAST处理
+                    BackpressurePolicy policy = policyOf(task.getSubject());
+                    if (laneOf(task.getSubject()).enqueue(task,
+                            policy == BackpressurePolicy.BLOCK ? BackpressurePolicy.FAIL_FAST : policy)) {
+                        log.debug("事件重试: subject={}, retryCount={}",
+                                task.getSubject(), task.getRetryCount());
+                    } else {
+                        // 重试队列满了
+                        droppedEvents.incrementAndGet();
+                        task.getFuture().completeExceptionally(new RuntimeException("重试队列已满"));
+                    }
+                }, Math.min(1000 * (1 << task.getRetryCount()), 30000), TimeUnit.MILLISECONDS);
+                return;
+            } catch (RejectedExecutionException e) {
+                log.debug("发布器关闭中，放弃重试: subject={}", task.getSubject());
+            }
         }
+
+        // 重试次数耗尽
+        failedEvents.incrementAndGet();
+        task.getFuture().completeExceptionally(error);
+
+        log.error("事件发布最终失败: subject={}, maxRetries={}",
+                task.getSubject(), config.getMaxRetries());
     }
 
     /**
@@ -470,4 +1160,4 @@ public class AsyncEventPublisher {
 //            log.info("异步发布器统计: {}", stats);
         }
     }
-} 
\ No newline at end of file
+}
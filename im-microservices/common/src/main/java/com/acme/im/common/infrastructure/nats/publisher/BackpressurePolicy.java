@@ -0,0 +1,31 @@
+package com.acme.im.common.infrastructure.nats.publisher;
+
+/**
+ * 发布队列背压策略
+ * 发布通道的队列已满时如何处理新事件
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * 阻塞调用方直到有空位，超过阻塞超时后拒绝
+     */
+    BLOCK,
+
+    /**
+     * 淘汰队列中最旧的事件，为新事件腾出位置
+     */
+    DROP_OLDEST,
+
+    /**
+     * 溢写到本地磁盘日志，队列有余量时由写线程回放
+     */
+    SPILL,
+
+    /**
+     * 立即拒绝
+     */
+    FAIL_FAST
+}
@@ -1,9 +1,16 @@
 package com.acme.im.common.infrastructure.nats.subscriber;
 
+import com.acme.im.common.infrastructure.nats.codec.EventCodec;
+import com.acme.im.common.infrastructure.nats.codec.EventCodecRegistry;
+import com.acme.im.common.infrastructure.nats.codec.Utf8ByteReader;
+import com.acme.im.common.infrastructure.nats.config.EventSubscriberConfig;
+import com.acme.im.common.infrastructure.nats.consumer.DurableEventConsumerManager;
 import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
 import com.acme.im.common.infrastructure.nats.handler.EventHandlerRegistry;
 import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
 import io.nats.client.Connection;
 import io.nats.client.Dispatcher;
 import io.nats.client.Message;
@@ -15,10 +22,15 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 /**
@@ -29,6 +41,9 @@ import java.util.function.Consumer;
  * 1. 提供事件订阅能力
  * 2. 自动路由事件到EventHandlerRegistry
  * 3. 管理订阅生命周期
+ * 4. 按主题选择解码器，直接从消息字节解码为带具体数据类型的事件
+ * 
+ * 所有订阅共享固定数量的分发线程，数量由 im.event.subscriber.dispatcher-threads 配置
  * 
  * @author IM开发团队
  * @since 1.0.0
@@ -45,6 +60,15 @@ public class EventSubscriber {
     @Lazy
     private EventHandlerRegistry eventHandlerRegistry;
 
+    @Autowired
+    private EventCodecRegistry codecRegistry;
+
+    @Autowired
+    private EventSubscriberConfig config;
+
+    @Autowired
+    private DurableEventConsumerManager durableConsumerManager;
+
     public EventSubscriber(Connection natsConnection, @Qualifier("gson") Gson gson, 
                           @Qualifier("customTaskExecutor") Executor taskExecutor) {
         this.natsConnection = natsConnection;
@@ -55,6 +79,12 @@ public class EventSubscriber {
     // 订阅器缓存 - 使用Subscription作为key
     private final ConcurrentHashMap<Subscription, Dispatcher> dispatchers = new ConcurrentHashMap<>();
 
+    /**
+     * 共享分发线程，首次订阅时创建
+     */
+    private volatile Dispatcher[] sharedDispatchers;
+    private final AtomicInteger nextDispatcher = new AtomicInteger(0);
+
     /**
      * 订阅事件
      * 
@@ -63,9 +93,21 @@ public class EventSubscriber {
      * @return 订阅对象
      */
     public Subscription subscribe(String subject, Consumer<Message> handler) {
+        return subscribe(subject, (String) null, handler);
+    }
+
+    /**
+     * 以队列组订阅事件，同一队列组的订阅者之间负载均衡
+     * 
+     * @param subject 主题
+     * @param queueGroup 队列组，为空时为普通订阅
+     * @param handler 事件处理器
+     * @return 订阅对象
+     */
+    public Subscription subscribe(String subject, String queueGroup, Consumer<Message> handler) {
         try {
-            Dispatcher dispatcher = natsConnection.createDispatcher();
-            Subscription subscription = dispatcher.subscribe(subject, new MessageHandler() {
+            Dispatcher dispatcher = nextDispatcher();
+            MessageHandler messageHandler = new MessageHandler() {
                 @Override
                 public void onMessage(Message msg) {
                     try {
@@ -74,10 +116,13 @@ public class EventSubscriber {
                         log.error("处理消息失败: subject={}", subject, e);
                     }
                 }
-            });
+            };
+            Subscription subscription = queueGroup == null || queueGroup.isEmpty()
+                    ? dispatcher.subscribe(subject, messageHandler)
+                    : dispatcher.subscribe(subject, queueGroup, messageHandler);
             
             dispatchers.put(subscription, dispatcher);
-            log.info("事件订阅成功: subject={}, sid={}", subject, subscription.getSubject());
+            log.info("事件订阅成功: subject={}, queueGroup={}", subject, queueGroup);
             return subscription;
         } catch (Exception e) {
             log.error("订阅事件失败: subject={}", subject, e);
@@ -94,12 +139,14 @@ public class EventSubscriber {
      * @return 订阅对象
      */
     public <T> Subscription subscribe(String subject, Class<T> eventType, Consumer<T> handler) {
+        TypeAdapter<T> adapter = gson.getAdapter(eventType);
         return subscribe(subject, msg -> {
             try {
-                String json = new String(msg.getData(), StandardCharsets.UTF_8);
-                T event = gson.fromJson(json, eventType);
+                JsonReader reader = new JsonReader(new Utf8ByteReader(msg.getData()));
+                reader.setLenient(true);
+                T event = adapter.read(reader);
                 handler.accept(event);
-            } catch (JsonSyntaxException e) {
+            } catch (IOException | JsonParseException e) {
                 log.error("JSON解析失败: subject={}, json={}", subject, 
                     new String(msg.getData(), StandardCharsets.UTF_8), e);
             } catch (Exception e) {
@@ -110,65 +157,128 @@ public class EventSubscriber {
 
     /**
      * 订阅事件并自动路由到EventHandlerRegistry
+     * 首条消息时按主题选定解码器，之后直接从消息字节解码为带具体数据类型的事件
+     * 
+     * 主题上的处理器按声明的队列组分开订阅：声明了队列组的处理器以该队列组订阅，
+     * 在实例间负载均衡；未声明的处理器普通订阅，每个实例都处理
      * 
      * @param subject 主题
-     * @return 订阅对象
+     * @return 订阅对象列表
      */
-    public Subscription subscribeWithAutoRouting(String subject) {
-        log.info("🔔 订阅主题: {}", subject);
-        
-        return subscribe(subject, msg -> {
+    public List<Subscription> subscribeWithAutoRouting(String subject) {
+        log.info("订阅主题: {}", subject);
+
+        Set<String> queueGroups = Collections.singleton("");
+        if (eventHandlerRegistry != null) {
+            if (!eventHandlerRegistry.isInitialized()) {
+                eventHandlerRegistry.initialize();
+            }
+            Set<String> declared = eventHandlerRegistry.getQueueGroups(subject);
+            if (!declared.isEmpty()) {
+                queueGroups = declared;
+            } else if (eventHandlerRegistry.hasHandlers(subject)) {
+                // 只有持久消费者处理器，由拉取消费者消费
+                log.info("主题只有持久消费者处理器，跳过普通订阅: {}", subject);
+                return Collections.emptyList();
+            }
+        }
+
+        List<Subscription> subscriptions = new ArrayList<>(queueGroups.size());
+        for (String queueGroup : queueGroups) {
+            Subscription subscription = subscribe(subject, queueGroup, new AutoRoutingHandler(subject, queueGroup));
+            if (subscription != null) {
+                subscriptions.add(subscription);
+            }
+        }
+        return subscriptions;
+    }
+
+    /**
+     * 自动路由处理器，缓存该订阅的解码器
+     */
+    private final class AutoRoutingHandler implements Consumer<Message> {
+        private final String subject;
+        private final String queueGroup;
+        private volatile EventCodec codec;
+
+        AutoRoutingHandler(String subject, String queueGroup) {
+            this.subject = subject;
+            this.queueGroup = queueGroup;
+        }
+
+        @Override
+        public void accept(Message msg) {
             try {
-                log.info("📨 收到NATS消息: subject={}, replyTo={}, dataSize={} bytes", 
-                        subject, msg.getReplyTo(), msg.getData().length);
-                
-                // 确保EventHandlerRegistry已初始化
-                if (eventHandlerRegistry != null && !eventHandlerRegistry.isInitialized()) {
-                    log.info("🔄 初始化EventHandlerRegistry...");
+                if (eventHandlerRegistry == null) {
+                    log.error("EventHandlerRegistry未初始化，无法处理事件: subject={}", subject);
+                    return;
+                }
+
+                // 确保EventHandlerRegistry已初始化，解码器依赖处理器声明的数据类型
+                if (!eventHandlerRegistry.isInitialized()) {
+                    log.info("初始化EventHandlerRegistry...");
                     eventHandlerRegistry.initialize();
                 }
-                
-                String json = new String(msg.getData(), StandardCharsets.UTF_8);
-                log.debug("📄 消息JSON内容: {}", json);
-                
-                // 尝试解析为BaseEvent
-                BaseEvent<?> event = gson.fromJson(json, BaseEvent.class);
-                if (event != null) {
-                    log.info("✅ 成功解析BaseEvent: eventId={}, eventType={}, userId={}", 
-                            event.getEventId(), event.getEventType(), event.getUserId());
-                    
-                    // 设置事件主题
-                    event.setSubject(subject);
-                    log.debug("📝 设置事件主题: {}", subject);
-                    
-                    // 路由到事件处理器
-                    if (eventHandlerRegistry != null) {
-                        log.info("🚀 开始路由事件到EventHandlerRegistry...");
-                        eventHandlerRegistry.handleEvent(subject, event);
-                        log.info("✅ 事件自动路由成功: subject={}, eventId={}", subject, event.getEventId());
-                    } else {
-                        log.error("❌ EventHandlerRegistry未初始化，无法处理事件: subject={}", subject);
-                    }
-                } else {
-                    log.warn("⚠️ 无法解析为BaseEvent: subject={}, json={}", subject, json);
+
+                EventCodec current = codec;
+                if (current == null) {
+                    current = codecRegistry.resolve(subject, eventHandlerRegistry.getPayloadType(subject));
+                    codec = current;
+                    log.debug("选定事件解码器: subject={}, codec={}", subject, current);
+                }
+
+                BaseEvent<?> event = current.decode(msg);
+                if (event == null) {
+                    log.warn("无法解析为BaseEvent: subject={}, dataSize={} bytes", subject, msg.getData().length);
+                    return;
                 }
-                
+                log.debug("收到事件: subject={}, eventId={}, eventType={}, userId={}", 
+                        subject, event.getEventId(), event.getEventType(), event.getUserId());
+
+                // 设置事件主题并路由到事件处理器，请求/应答消息带上应答主题
+                event.setSubject(subject);
+                if (msg.getReplyTo() != null) {
+                    event.addMetadata(BaseEvent.METADATA_REPLY_TO, msg.getReplyTo());
+                }
+                eventHandlerRegistry.handleEvent(subject, queueGroup, event);
+
             } catch (Exception e) {
-                log.error("❌ 自动路由事件失败: subject={}, error: {}", subject, e.getMessage(), e);
+                log.error("自动路由事件失败: subject={}, error: {}", subject, e.getMessage(), e);
             }
-        });
+        }
+    }
+
+    /**
+     * 轮询选择共享分发线程
+     */
+    private Dispatcher nextDispatcher() {
+        Dispatcher[] shared = sharedDispatchers;
+        if (shared == null) {
+            synchronized (this) {
+                shared = sharedDispatchers;
+                if (shared == null) {
+                    shared = new Dispatcher[Math.max(1, config.getDispatcherThreads())];
+                    for (int i = 0; i < shared.length; i++) {
+                        shared[i] = natsConnection.createDispatcher();
+                    }
+                    sharedDispatchers = shared;
+                    log.info("创建共享事件分发线程: count={}", shared.length);
+                }
+            }
+        }
+        return shared[Math.floorMod(nextDispatcher.getAndIncrement(), shared.length)];
     }
 
     /**
-     * 批量订阅指定主题列表（自动路由）
+     * 批量订阅指定主题列表（自动路由），同时启动持久事件消费者
      * 
      * @param subjects 主题列表
      * @return 订阅对象列表
      */
     public List<Subscription> subscribeToTopics(List<String> subjects) {
+        durableConsumerManager.start();
         return subjects.stream()
-                .map(this::subscribeWithAutoRouting)
-                .filter(subscription -> subscription != null)
+                .flatMap(subject -> subscribeWithAutoRouting(subject).stream())
                 .collect(java.util.stream.Collectors.toList());
     }
 
@@ -191,7 +301,8 @@ public class EventSubscriber {
         if (subscription != null) {
             Dispatcher dispatcher = dispatchers.remove(subscription);
             if (dispatcher != null) {
-                subscription.unsubscribe();
+                // 分发线程共享，只取消该订阅
+                dispatcher.unsubscribe(subscription);
                 log.info("取消订阅成功: subject={}", subscription.getSubject());
             }
         }
@@ -213,7 +324,7 @@ public class EventSubscriber {
      */
     public void unsubscribeAll() {
         dispatchers.forEach((subscription, dispatcher) -> {
-            subscription.unsubscribe();
+            dispatcher.unsubscribe(subscription);
             log.debug("取消订阅: subject={}", subscription.getSubject());
         });
         dispatchers.clear();
@@ -237,6 +348,7 @@ public class EventSubscriber {
     public List<String> getActiveTopics() {
         return dispatchers.keySet().stream()
                 .map(Subscription::getSubject)
+                .distinct()
                 .sorted()
                 .collect(java.util.stream.Collectors.toList());
     }
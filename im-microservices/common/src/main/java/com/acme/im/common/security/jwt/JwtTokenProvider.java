@@ -31,6 +31,11 @@ public class JwtTokenProvider {
     private final JwtProperties jwtProperties;
     private final UserDetailsService userDetailsService;
 
+    /**
+     * 验签解析器，密钥固定后复用
+     */
+    private volatile JwtParser parser;
+
     /**
      * 生成访问令牌
      */
@@ -101,13 +106,30 @@ public class JwtTokenProvider {
      * 从令牌中获取所有声明
      */
     private Claims getAllClaimsFromToken(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
+        return parseClaims(token);
+    }
+
+    /**
+     * 本地验签并解析声明
+     * 签名不符或已过期时抛出JwtException，未配置密钥时抛出IllegalStateException
+     */
+    public Claims parseClaims(String token) {
+        return getParser()
                 .parseSignedClaims(token)
                 .getPayload();
     }
 
+    private JwtParser getParser() {
+        JwtParser current = parser;
+        if (current == null) {
+            current = Jwts.parser()
+                    .verifyWith(getSigningKey())
+                    .build();
+            parser = current;
+        }
+        return current;
+    }
+
     /**
      * 检查令牌是否过期
      */
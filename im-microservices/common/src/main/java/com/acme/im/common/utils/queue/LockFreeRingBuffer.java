@@ -0,0 +1,190 @@
+package com.acme.im.common.utils.queue;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 无锁有界环形缓冲区
+ * 槽位在构造时一次性分配，入队出队只做CAS与序号更新，不为每个元素分配链表节点
+ *
+ * 1. 多生产者：生产者通过CAS抢占写位置，每个槽位的序号标记该槽位可写还是可读
+ * 2. 消费者：出队同样基于CAS，允许生产者在满时淘汰最旧元素；阻塞等待仅供单一消费者线程使用
+ * 3. 容量向上取整为2的幂
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class LockFreeRingBuffer<E> {
+
+    /**
+     * 生产者等待空位时的自旋次数，超过后短暂休眠
+     */
+    private static final int SPIN_TRIES = 64;
+
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final int capacity;
+    private final int mask;
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(0);
+    private final AtomicLong head = new AtomicLong(0);
+
+    /**
+     * 正在等待元素的消费者线程
+     */
+    private volatile Thread waiter;
+
+    public LockFreeRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 1 || requestedCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("容量超出范围: " + requestedCapacity);
+        }
+        this.capacity = requestedCapacity == 1 ? 1 : Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.elements = new Object[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 入队，满时立即返回false
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long position = tail.get();
+        for (;;) {
+            int index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[index] = element;
+                    sequences.set(index, position + 1);
+                    signal();
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 入队，满时先自旋再短暂休眠等待空位，超时返回false
+     */
+    public boolean offer(E element, long timeout, TimeUnit unit) {
+        if (offer(element)) {
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int tries = 0;
+        while (System.nanoTime() - deadline < 0) {
+            if (offer(element)) {
+                return true;
+            }
+            if (++tries < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return offer(element);
+    }
+
+    /**
+     * 出队，空时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long position = head.get();
+        for (;;) {
+            int index = (int) (position & mask);
+            long diff = sequences.get(index) - (position + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = (E) elements[index];
+                    elements[index] = null;
+                    sequences.set(index, position + capacity);
+                    return element;
+                }
+                position = head.get();
+            } else if (diff < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * 批量出队
+     *
+     * @return 出队数量
+     */
+    public int drainTo(Collection<? super E> target, int maxElements) {
+        int drained = 0;
+        while (drained < maxElements) {
+            E element = poll();
+            if (element == null) {
+                break;
+            }
+            target.add(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * 等待缓冲区非空，仅供单一消费者线程调用
+     *
+     * @return 是否非空
+     */
+    public boolean awaitNotEmpty(long timeout, TimeUnit unit) {
+        if (!isEmpty()) {
+            return true;
+        }
+        waiter = Thread.currentThread();
+        try {
+            // 登记后再检查一次，避免错过登记前完成的入队
+            if (isEmpty()) {
+                LockSupport.parkNanos(this, unit.toNanos(timeout));
+            }
+        } finally {
+            waiter = null;
+        }
+        return !isEmpty();
+    }
+
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private void signal() {
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
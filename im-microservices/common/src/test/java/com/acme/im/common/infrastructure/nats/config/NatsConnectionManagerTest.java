@@ -0,0 +1,101 @@
+package com.acme.im.common.infrastructure.nats.config;
+
+import io.nats.client.Connection;
+import io.nats.client.Options;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * NATS发布连接管理器测试
+ * 用模拟连接覆盖有序选择的背压、关闭时顺延和轮询时的慢连接规避
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class NatsConnectionManagerTest {
+
+    private static final long SLOW_PENDING_BYTES = 100;
+
+    private final EventConnectionConfig config = new EventConnectionConfig();
+    private final NatsConnectionManager manager = new NatsConnectionManager();
+    private final Connection[] raw = new Connection[3];
+    private final NatsConnectionManager.ManagedConnection[] managed = new NatsConnectionManager.ManagedConnection[3];
+
+    @BeforeEach
+    public void setUp() {
+        config.setSlowPendingBytes(SLOW_PENDING_BYTES);
+        config.setBackpressureMaxWaitMs(30);
+        for (int i = 0; i < managed.length; i++) {
+            raw[i] = mock(Connection.class);
+            when(raw[i].getStatus()).thenReturn(Connection.Status.CONNECTED);
+            managed[i] = new NatsConnectionManager.ManagedConnection(i,
+                    new Options.Builder().connectionName("test-pub-" + i).build());
+            ReflectionTestUtils.setField(managed[i], "connection", raw[i]);
+        }
+        ReflectionTestUtils.setField(manager, "config", config);
+        ReflectionTestUtils.setField(manager, "connections", managed);
+    }
+
+    @Test
+    public void testSameKeyAlwaysSameConnection() {
+        for (int key = 0; key < 100; key++) {
+            assertSame(manager.select(key), manager.select(key));
+        }
+        assertSame(manager.select("im.orders"), manager.select("im.orders"));
+    }
+
+    @Test
+    public void testSlowPreferredConnectionAppliesBackpressureInPlace() throws Exception {
+        managed[0].publish("im.orders", new byte[200]);
+
+        assertSame(managed[0], manager.select(0), "过慢时不换连接，保持同一键的顺序");
+        verify(raw[0]).flush(any(Duration.class));
+        assertEquals(0, managed[0].getPendingBytes(), "flush完成后未确认字节清零");
+        assertEquals(1, manager.getStats().get(0).getBackpressureWaits());
+    }
+
+    @Test
+    public void testBackpressureIsBoundedAndStaysOnConnection() throws Exception {
+        doThrow(new TimeoutException("flush timeout")).when(raw[0]).flush(any(Duration.class));
+        managed[0].publish("im.orders", new byte[200]);
+
+        long start = System.nanoTime();
+        assertSame(managed[0], manager.select(0), "等待超时后仍在原连接发布");
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+        assertEquals(200, managed[0].getPendingBytes());
+        assertEquals(0, manager.getStats().get(0).getFailovers());
+    }
+
+    @Test
+    public void testReconnectingConnectionKeepsKey() {
+        when(raw[0].getStatus()).thenReturn(Connection.Status.RECONNECTING);
+
+        assertSame(managed[0], manager.select(0), "重连期间由客户端缓冲，不换连接");
+    }
+
+    @Test
+    public void testClosedConnectionFailsOver() {
+        when(raw[0].getStatus()).thenReturn(Connection.Status.CLOSED);
+
+        assertSame(managed[1], manager.select(0), "首选连接已关闭时顺延到下一个可用连接");
+        assertEquals(1, manager.getStats().get(0).getFailovers());
+    }
+
+    @Test
+    public void testRoundRobinSkipsSlowConnection() {
+        managed[1].publish("im.orders", new byte[200]);
+
+        for (int i = 0; i < 6; i++) {
+            assertNotSame(managed[1], manager.next(), "轮询选择跳过过慢的连接");
+        }
+        assertEquals(0, manager.getStats().get(1).getBackpressureWaits());
+    }
+}
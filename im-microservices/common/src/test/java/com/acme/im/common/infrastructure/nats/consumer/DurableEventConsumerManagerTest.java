@@ -0,0 +1,205 @@
+package com.acme.im.common.infrastructure.nats.consumer;
+
+import com.acme.im.common.infrastructure.nats.codec.EventCodec;
+import com.acme.im.common.infrastructure.nats.codec.EventCodecRegistry;
+import com.acme.im.common.infrastructure.nats.config.EventConsumerConfig;
+import com.acme.im.common.infrastructure.nats.constants.EventErrorCodes;
+import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
+import com.acme.im.common.infrastructure.nats.handler.EventHandlerRegistry;
+import io.nats.client.Connection;
+import io.nats.client.JetStream;
+import io.nats.client.JetStreamSubscription;
+import io.nats.client.Message;
+import io.nats.client.PullSubscribeOptions;
+import io.nats.client.impl.NatsJetStreamMetaData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 持久事件消费者管理器测试
+ * 用模拟的JetStream拉取订阅驱动消费线程，覆盖确认、按投递次数退避重投和死信终止
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class DurableEventConsumerManagerTest {
+
+    private static final String DURABLE = "orders";
+    private static final String SUBJECT = "im.orders";
+    private static final int MAX_DELIVER = 3;
+
+    private final Connection natsConnection = mock(Connection.class);
+    private final JetStream jetStream = mock(JetStream.class);
+    private final JetStreamSubscription subscription = mock(JetStreamSubscription.class);
+    private final EventHandlerRegistry handlerRegistry = mock(EventHandlerRegistry.class);
+    private final EventCodecRegistry codecRegistry = mock(EventCodecRegistry.class);
+    private final EventCodec codec = mock(EventCodec.class);
+    private final EventDeadLetterStore deadLetterStore = mock(EventDeadLetterStore.class);
+    private final Queue<Message> inbox = new ConcurrentLinkedQueue<>();
+
+    private DurableEventConsumerManager manager;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        EventConsumerConfig config = new EventConsumerConfig();
+        config.setFetchWaitMs(20);
+        config.setAckWaitMs(1000);
+        config.setMaxDeliver(MAX_DELIVER);
+        config.setBackoffMs(List.of(100L, 500L));
+
+        manager = new DurableEventConsumerManager();
+        ReflectionTestUtils.setField(manager, "natsConnection", natsConnection);
+        ReflectionTestUtils.setField(manager, "eventHandlerRegistry", handlerRegistry);
+        ReflectionTestUtils.setField(manager, "codecRegistry", codecRegistry);
+        ReflectionTestUtils.setField(manager, "deadLetterStore", deadLetterStore);
+        ReflectionTestUtils.setField(manager, "config", config);
+
+        when(handlerRegistry.isInitialized()).thenReturn(true);
+        when(handlerRegistry.getDurableSubscriptions()).thenReturn(List.of(
+                new EventHandlerRegistry.DurableSubscription(DURABLE, SUBJECT, BaseEvent.class, 0, 1)));
+        when(natsConnection.jetStream()).thenReturn(jetStream);
+        when(jetStream.subscribe(eq(SUBJECT), any(PullSubscribeOptions.class))).thenReturn(subscription);
+        when(codecRegistry.resolve(eq(SUBJECT), any())).thenReturn(codec);
+        // 每次拉取最多返回一条，没有消息时模拟服务端等待
+        when(subscription.fetch(anyInt(), any(Duration.class))).thenAnswer(invocation -> {
+            Message next = inbox.poll();
+            if (next == null) {
+                Thread.sleep(5);
+                return List.of();
+            }
+            return List.of(next);
+        });
+    }
+
+    @AfterEach
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void testSuccessIsAcked() throws Exception {
+        Message message = message(1);
+        handlerReturns(true);
+
+        inbox.add(message);
+        manager.start();
+
+        verify(message, timeout(2000)).ack();
+        verify(message, never()).nakWithDelay(any(Duration.class));
+        verify(message, never()).term();
+        awaitInFlight(0);
+        assertEquals(1, manager.getStats().get(0).getAcked());
+    }
+
+    @Test
+    public void testFailureBacksOffByDeliveryCount() throws Exception {
+        Message first = message(1);
+        Message second = message(2);
+        handlerReturns(false);
+
+        inbox.add(first);
+        inbox.add(second);
+        manager.start();
+
+        verify(first, timeout(2000)).nakWithDelay(Duration.ofMillis(100));
+        verify(second, timeout(2000)).nakWithDelay(Duration.ofMillis(500));
+        verify(first, never()).term();
+        verify(second, never()).term();
+        verifyNoInteractions(deadLetterStore);
+        awaitInFlight(0);
+        DurableEventConsumerManager.ConsumerStats stats = manager.getStats().get(0);
+        assertEquals(2, stats.getRedelivered());
+        assertEquals(0, stats.getDeadLettered());
+    }
+
+    @Test
+    public void testLastDeliveryIsDeadLetteredThenTerminated() throws Exception {
+        Message message = message(MAX_DELIVER);
+        BaseEvent<?> event = handlerReturns(false);
+        when(deadLetterStore.store(eq(DURABLE), same(message), same(event), eq((long) MAX_DELIVER), eq(MAX_DELIVER),
+                eq(EventErrorCodes.INTERNAL_ERROR), startsWith("超过最大投递次数"))).thenReturn(true);
+
+        inbox.add(message);
+        manager.start();
+
+        verify(message, timeout(2000)).term();
+        verify(deadLetterStore).store(eq(DURABLE), same(message), same(event), eq((long) MAX_DELIVER),
+                eq(MAX_DELIVER), eq(EventErrorCodes.INTERNAL_ERROR), startsWith("超过最大投递次数"));
+        verify(message, never()).nakWithDelay(any(Duration.class));
+        awaitInFlight(0);
+        assertEquals(1, manager.getStats().get(0).getDeadLettered());
+    }
+
+    @Test
+    public void testDeadLetterFailureKeepsMessage() throws Exception {
+        Message message = message(MAX_DELIVER);
+        handlerReturns(false);
+        when(deadLetterStore.store(any(), any(), any(), anyLong(), anyInt(), any(), any())).thenReturn(false);
+
+        inbox.add(message);
+        manager.start();
+
+        verify(message, timeout(2000)).nakWithDelay(Duration.ofMillis(500));
+        verify(message, never()).term();
+        awaitInFlight(0);
+        DurableEventConsumerManager.ConsumerStats stats = manager.getStats().get(0);
+        assertEquals(1, stats.getRedelivered());
+        assertEquals(0, stats.getDeadLettered());
+    }
+
+    @Test
+    public void testUndecodableMessageIsDeadLetteredWithoutHandling() throws Exception {
+        Message message = message(1);
+        when(codec.decode(message)).thenThrow(new IOException("bad json"));
+        when(deadLetterStore.store(eq(DURABLE), same(message), isNull(), eq(1L), eq(MAX_DELIVER),
+                eq(EventErrorCodes.DATA_FORMAT_ERROR), contains("bad json"))).thenReturn(true);
+
+        inbox.add(message);
+        manager.start();
+
+        verify(message, timeout(2000)).term();
+        verify(handlerRegistry, never()).handleDurableEvent(any(), any());
+        awaitInFlight(0);
+        assertEquals(1, manager.getStats().get(0).getDeadLettered());
+    }
+
+    private Message message(long deliveries) {
+        Message message = mock(Message.class);
+        NatsJetStreamMetaData metaData = mock(NatsJetStreamMetaData.class);
+        when(metaData.deliveredCount()).thenReturn(deliveries);
+        when(message.metaData()).thenReturn(metaData);
+        when(message.getSubject()).thenReturn(SUBJECT);
+        when(message.getData()).thenReturn("{}".getBytes());
+        return message;
+    }
+
+    private BaseEvent<?> handlerReturns(boolean success) throws IOException {
+        BaseEvent<Object> event = new BaseEvent<>();
+        event.setEventId("e-1");
+        when(codec.decode(any(Message.class))).thenAnswer(invocation -> event);
+        when(handlerRegistry.handleDurableEvent(eq(DURABLE), any()))
+                .thenReturn(CompletableFuture.completedFuture(success));
+        return event;
+    }
+
+    private void awaitInFlight(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (manager.getStats().get(0).getInFlight() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, manager.getStats().get(0).getInFlight());
+    }
+}
@@ -0,0 +1,146 @@
+package com.acme.im.common.infrastructure.nats.consumer;
+
+import com.acme.im.common.infrastructure.nats.constants.EventErrorCodes;
+import com.acme.im.common.infrastructure.nats.constants.EventTopics;
+import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
+import com.google.gson.Gson;
+import io.nats.client.Message;
+import io.nats.client.impl.NatsJetStreamMetaData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 事件死信存储测试
+ * 用记录SQL的JdbcTemplate替代数据库，覆盖事件记录与重试队列两次写入
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class EventDeadLetterStoreTest {
+
+    /**
+     * 记录执行的SQL与参数，failUpdates为true时写入失败
+     */
+    private static class RecordingJdbcTemplate extends JdbcTemplate {
+        private final List<String> sqls = new ArrayList<>();
+        private final List<Object[]> args = new ArrayList<>();
+        private boolean failUpdates;
+
+        @Override
+        public int update(String sql, Object... params) {
+            if (failUpdates) {
+                throw new DataAccessResourceFailureException("connection refused");
+            }
+            sqls.add(sql);
+            args.add(params);
+            return 1;
+        }
+
+        @Override
+        public <T> T queryForObject(String sql, Class<T> requiredType, Object... params) {
+            sqls.add(sql);
+            args.add(params);
+            return requiredType.cast(42L);
+        }
+    }
+
+    private final RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+    @SuppressWarnings("unchecked")
+    private final ObjectProvider<JdbcTemplate> jdbcTemplateProvider = mock(ObjectProvider.class);
+    private final EventDeadLetterStore store = new EventDeadLetterStore();
+
+    @BeforeEach
+    public void setUp() {
+        when(jdbcTemplateProvider.getIfAvailable()).thenReturn(jdbcTemplate);
+        ReflectionTestUtils.setField(store, "jdbcTemplateProvider", jdbcTemplateProvider);
+        ReflectionTestUtils.setField(store, "gson", new Gson());
+    }
+
+    @Test
+    public void testStoresRecordAndRetryRow() {
+        BaseEvent<Object> event = new BaseEvent<>();
+        event.setEventId("evt-1");
+        event.setUserId("7");
+        event.setPriority(EventTopics.EventPriority.HIGH);
+
+        assertTrue(store.store("orders", message("{\"id\":1}", false), event, 5, 5,
+                EventErrorCodes.INTERNAL_ERROR, "超过最大投递次数: boom"));
+
+        assertEquals(3, jdbcTemplate.sqls.size());
+        assertTrue(jdbcTemplate.sqls.get(0).startsWith("INSERT IGNORE INTO event_records"));
+        Object[] record = jdbcTemplate.args.get(0);
+        assertEquals("evt-1", record[0]);
+        assertEquals(EventTopics.EventStatus.FAILURE, record[3]);
+        assertEquals(EventTopics.EventPriority.HIGH, record[4]);
+        assertEquals("7", record[6]);
+        assertEquals(5L, record[12], "重试次数记录实际投递次数");
+        assertEquals(5, record[13]);
+        assertEquals(EventErrorCodes.INTERNAL_ERROR, record[15]);
+
+        assertTrue(jdbcTemplate.sqls.get(2).startsWith("INSERT INTO event_retry_queue"));
+        Object[] retry = jdbcTemplate.args.get(2);
+        assertEquals("evt-1", retry[0]);
+        assertEquals(42L, retry[1], "重试队列引用事件记录ID");
+        assertEquals(5L, retry[2]);
+        assertEquals("durable=orders, 超过最大投递次数: boom", retry[6]);
+        assertEquals("{\"id\":1}", retry[8], "保留原始消息体供人工重放");
+    }
+
+    @Test
+    public void testUndecodableJetStreamMessageUsesStreamSequence() {
+        assertTrue(store.store("orders", message("not json", true), null, 1, 5,
+                EventErrorCodes.DATA_FORMAT_ERROR, "解码失败"));
+
+        Object[] record = jdbcTemplate.args.get(0);
+        assertEquals("js:IM_EVENTS:99", record[0]);
+        assertEquals(EventTopics.EventType.NOTIFICATION, record[2]);
+        assertEquals(EventTopics.EventPriority.MEDIUM, record[4]);
+        assertNull(record[9]);
+    }
+
+    @Test
+    public void testFailureIsReported() {
+        jdbcTemplate.failUpdates = true;
+        assertFalse(store.store("orders", message("{}", false), null, 5, 5, EventErrorCodes.INTERNAL_ERROR, "boom"),
+                "写入失败时返回false，由消费者继续重投");
+
+        when(jdbcTemplateProvider.getIfAvailable()).thenReturn(null);
+        assertFalse(store.store("orders", message("{}", false), null, 5, 5, EventErrorCodes.INTERNAL_ERROR, "boom"));
+    }
+
+    @Test
+    public void testLongReasonAndPayloadAreTruncated() {
+        String payload = "x".repeat(5000);
+        assertTrue(store.store("orders", message(payload, false), null, 5, 5,
+                EventErrorCodes.INTERNAL_ERROR, "r".repeat(300)));
+
+        Object[] retry = jdbcTemplate.args.get(2);
+        assertEquals(255, ((String) retry[6]).length());
+        assertEquals(4000, ((String) retry[8]).length());
+    }
+
+    private static Message message(String payload, boolean jetStream) {
+        Message message = mock(Message.class);
+        when(message.getSubject()).thenReturn("im.orders");
+        when(message.getData()).thenReturn(payload.getBytes(StandardCharsets.UTF_8));
+        when(message.isJetStream()).thenReturn(jetStream);
+        if (jetStream) {
+            NatsJetStreamMetaData metaData = mock(NatsJetStreamMetaData.class);
+            when(metaData.getStream()).thenReturn("IM_EVENTS");
+            when(metaData.streamSequence()).thenReturn(99L);
+            when(message.metaData()).thenReturn(metaData);
+        }
+        return message;
+    }
+}
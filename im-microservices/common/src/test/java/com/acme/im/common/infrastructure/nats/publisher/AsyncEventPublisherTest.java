@@ -0,0 +1,146 @@
+package com.acme.im.common.infrastructure.nats.publisher;
+
+import com.acme.im.common.infrastructure.nats.config.EventPublisherConfig;
+import com.acme.im.common.infrastructure.nats.config.NatsConnectionManager;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 异步事件发布器通道测试
+ * 用模拟连接记录发布顺序，覆盖同主题固定通道、整批flush和队列满时拒绝
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class AsyncEventPublisherTest {
+
+    private static final String SUBJECT = "im.test.orders";
+
+    @TempDir
+    Path spillRoot;
+
+    private final NatsConnectionManager connectionManager = mock(NatsConnectionManager.class);
+    private final NatsConnectionManager.ManagedConnection connection = mock(NatsConnectionManager.ManagedConnection.class);
+    private final EventPublisherConfig config = new EventPublisherConfig();
+    private final AsyncEventPublisher publisher = new AsyncEventPublisher();
+    private final Gson gson = new Gson();
+
+    private final List<String> published = new CopyOnWriteArrayList<>();
+    private final CountDownLatch releaseFirstPublish = new CountDownLatch(1);
+    private final CountDownLatch firstPublishStarted = new CountDownLatch(1);
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        config.setLanes(4);
+        config.setBatchSize(16);
+        config.setLingerMicros(200);
+        config.getBackpressure().setSpillDir(spillRoot.resolve("spill").toString());
+        when(connectionManager.select(anyInt())).thenReturn(connection);
+        // 第一条发布阻塞到测试放行，其余事件在队列中积压，下一批一次取出
+        doAnswer(invocation -> {
+            published.add(new String(invocation.<byte[]>getArgument(1), StandardCharsets.UTF_8));
+            firstPublishStarted.countDown();
+            releaseFirstPublish.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(connection).publish(anyString(), any(byte[].class));
+
+        ReflectionTestUtils.setField(publisher, "connectionManager", connectionManager);
+        ReflectionTestUtils.setField(publisher, "gson", gson);
+        ReflectionTestUtils.setField(publisher, "config", config);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        releaseFirstPublish.countDown();
+        publisher.shutdown();
+    }
+
+    @Test
+    public void testSameSubjectPublishedInOrderOnItsLane() throws Exception {
+        publisher.initialize();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        futures.add(publisher.publishEventAsync(SUBJECT, Map.of("seq", 0)));
+        assertTrue(firstPublishStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < 100; i++) {
+            futures.add(publisher.publishEventAsync(SUBJECT, Map.of("seq", i)));
+        }
+        releaseFirstPublish.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        assertEquals(100, published.size());
+        for (int i = 0; i < published.size(); i++) {
+            Number seq = (Number) gson.fromJson(published.get(i), Map.class).get("seq");
+            assertEquals(i, seq.intValue(), "同一主题按提交顺序发布");
+        }
+        int lane = Math.floorMod(SUBJECT.hashCode(), config.getLanes());
+        verify(connectionManager, atLeastOnce()).select(lane);
+        verify(connectionManager, never()).select(intThat(index -> index != lane));
+        // 积压的99条按批大小整批发布，每批只flush一次
+        verify(connection, atMost(1 + (99 + config.getBatchSize() - 1) / config.getBatchSize()))
+                .flush(any(Duration.class));
+        assertEquals(100, publisher.getStats().getSuccessfulEvents());
+    }
+
+    @Test
+    public void testFullLaneRejectsWithFailFast() throws Exception {
+        config.setLanes(1);
+        config.setQueueCapacity(4);
+        publisher.initialize();
+
+        CompletableFuture<Void> first = publisher.publishEventAsync(SUBJECT, Map.of("seq", 0));
+        assertTrue(firstPublishStarted.await(5, TimeUnit.SECONDS));
+        List<CompletableFuture<Void>> queued = new ArrayList<>();
+        CompletableFuture<Void> rejected = null;
+        for (int i = 1; i <= 16 && rejected == null; i++) {
+            CompletableFuture<Void> future = publisher.publishEventAsync(SUBJECT, Map.of("seq", i));
+            if (future.isCompletedExceptionally()) {
+                rejected = future;
+            } else {
+                queued.add(future);
+            }
+        }
+
+        assertNotNull(rejected, "通道队列满时立即拒绝");
+        ExecutionException error = assertThrows(ExecutionException.class, rejected::get);
+        assertEquals("事件队列已满", error.getCause().getMessage());
+        assertEquals(1, publisher.getStats().getDroppedEvents());
+
+        releaseFirstPublish.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<Void> future : queued) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testSubjectsSpreadAcrossLanes() {
+        publisher.initialize();
+        releaseFirstPublish.countDown();
+        for (int i = 0; i < 64; i++) {
+            publisher.publishEventAsync("im.test." + i, Map.of("seq", i)).join();
+        }
+        for (int lane = 0; lane < config.getLanes(); lane++) {
+            verify(connectionManager, atLeastOnce()).select(lane);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 二进制WebSocket端点配置
+ * 控制protobuf原生端点的路径、默认线路格式与单连接发送缓冲
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.websocket.binary")
+public class BinaryWebSocketConfig {
+
+    /**
+     * 是否启用二进制端点
+     */
+    private boolean enabled = true;
+
+    /**
+     * 端点路径
+     */
+    private String path = "/ws-binary";
+
+    /**
+     * 客户端未通过子协议或format参数协商时使用的默认格式（protobuf / json）
+     */
+    private String defaultFormat = "protobuf";
+
+    /**
+     * 单次发送允许阻塞的最长时间（毫秒），超时后关闭慢连接
+     */
+    private int sendTimeLimitMs = 5000;
+
+    /**
+     * 单连接待发送缓冲上限（字节），超出后关闭慢连接
+     */
+    private int sendBufferSizeLimit = 512 * 1024;
+
+    /**
+     * 入站单帧最大字节数
+     */
+    private int maxFrameSize = 1024 * 1024;
+
+    /**
+     * 入站单帧最多包含的消息条数
+     */
+    private int maxMessagesPerFrame = 64;
+}
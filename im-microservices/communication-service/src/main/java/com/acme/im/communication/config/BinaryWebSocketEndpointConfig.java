@@ -0,0 +1,38 @@
+package com.acme.im.communication.config;
+
+import com.acme.im.communication.websocket.BinaryWebSocketHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+/**
+ * 二进制WebSocket端点注册
+ * 与STOMP端点（/ws、/ws-native）并列，直接收发protobuf帧，不经过消息代理
+ * 独立于WebSocketConfig，避免STOMP配置依赖推送链路上的Bean形成循环依赖
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Configuration
+@EnableWebSocket
+@RequiredArgsConstructor
+public class BinaryWebSocketEndpointConfig implements WebSocketConfigurer {
+
+    private final BinaryWebSocketHandler binaryWebSocketHandler;
+    private final BinaryWebSocketConfig binaryWebSocketConfig;
+
+    /**
+     * 注册二进制端点，按子协议协商protobuf或JSON
+     *
+     * @param registry WebSocket处理器注册表
+     */
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        if (binaryWebSocketConfig.isEnabled()) {
+            registry.addHandler(binaryWebSocketHandler, binaryWebSocketConfig.getPath())
+                    .setAllowedOriginPatterns("*");
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 集群投递配置
+ * 控制节点标识、Redis在线状态发布与跨节点路由缓存
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.cluster")
+public class ClusterDeliveryConfig {
+
+    /**
+     * 是否启用跨节点投递，关闭时只推送本节点连接
+     */
+    private boolean enabled = true;
+
+    /**
+     * 节点ID，为空时取 主机名-进程号
+     */
+    private String nodeId;
+
+    /**
+     * 在线状态过期时间（秒），节点宕机后其在线状态在该时间后失效
+     */
+    private long presenceTtlSeconds = 90;
+
+    /**
+     * 心跳间隔（毫秒），刷新节点存活与在线状态过期时间
+     */
+    private long heartbeatIntervalMs = 30000;
+
+    /**
+     * 会话路由（会话 -> 节点列表）本地缓存时间（毫秒）
+     */
+    private long routeCacheTtlMs = 500;
+}
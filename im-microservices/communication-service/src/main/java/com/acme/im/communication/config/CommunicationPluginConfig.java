@@ -9,6 +9,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 
 import jakarta.annotation.PostConstruct;
+import java.util.List;
 
 /**
  * 通信层插件配置类
@@ -17,7 +18,7 @@ import jakarta.annotation.PostConstruct;
  * 
  * 扩展点说明：
  * 1. message.route - 消息路由扩展点，支持自定义消息路由逻辑
- * 2. message.process - 消息处理扩展点，支持自定义消息处理逻辑
+ * 2. message.process - 消息处理扩展点，支持自定义消息处理逻辑，所有MessageProcessor按优先级注册为其实现
  * 3. websocket.message.before.process - WebSocket消息前置处理扩展点
  * 4. websocket.message.after.process - WebSocket消息后置处理扩展点
  * 5. websocket.message.on.error - WebSocket消息异常处理扩展点
@@ -32,6 +33,9 @@ public class CommunicationPluginConfig {
     @Autowired
     private ExtensionPointManager extensionPointManager;
 
+    @Autowired
+    private List<MessageProcessor> messageProcessors;
+
     /**
      * 注册通信层特有的扩展点
      */
@@ -60,6 +64,9 @@ public class CommunicationPluginConfig {
             MessageProcessor.class,
             "process"
         );
+        for (MessageProcessor processor : messageProcessors) {
+            extensionPointManager.registerImplementation("message.process", processor, processor.getPriority());
+        }
 
         // 3. WebSocket消息前置处理扩展点
         extensionPointManager.registerExtensionPoint(
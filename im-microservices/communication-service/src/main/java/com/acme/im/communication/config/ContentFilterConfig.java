@@ -0,0 +1,58 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 内容过滤配置
+ * 控制敏感词自动机的刷新以及审核记录的批量写入
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.content-filter")
+public class ContentFilterConfig {
+
+    /**
+     * 是否启用敏感词过滤
+     */
+    private boolean enabled = true;
+
+    /**
+     * 敏感词表变更检查间隔（毫秒），检测到变更后重新编译自动机
+     */
+    private long refreshIntervalMs = 30000;
+
+    /**
+     * 未配置替换词时的打码字符
+     */
+    private String mask = "*";
+
+    /**
+     * 是否写入内容审核记录
+     */
+    private boolean auditEnabled = true;
+
+    /**
+     * 审核记录待写队列容量，队列满时丢弃新记录
+     */
+    private int auditQueueCapacity = 10000;
+
+    /**
+     * 审核记录单批最大条数
+     */
+    private int auditBatchSize = 200;
+
+    /**
+     * 审核记录批量写入间隔（毫秒）
+     */
+    private long auditFlushIntervalMs = 1000;
+
+    /**
+     * 审核记录中保存的内容最大长度
+     */
+    private int auditContentMaxLength = 1000;
+}
@@ -0,0 +1,48 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 会话列表配置
+ * 控制每个用户最近会话索引的规模、合并更新间隔和摘要长度
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.conversation-list")
+public class ConversationListConfig {
+
+    /**
+     * 是否启用会话列表索引
+     */
+    private boolean enabled = true;
+
+    /**
+     * 合并更新间隔（毫秒），间隔内同一会话的多条新消息只更新一次
+     */
+    private long flushIntervalMs = 200;
+
+    /**
+     * 每个用户保留的最大会话数，超出后移除最久未活跃的会话
+     */
+    private int maxEntries = 1000;
+
+    /**
+     * 索引过期时间（天），过期后按需从数据库重建
+     */
+    private int ttlDays = 7;
+
+    /**
+     * 最后消息摘要的最大字符数
+     */
+    private int previewLength = 60;
+
+    /**
+     * 单页最大会话数
+     */
+    private int maxPageSize = 100;
+}
@@ -0,0 +1,28 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 会话成员缓存配置
+ * 收件箱时间线和会话列表按会话解析全部成员时使用
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.members")
+public class ConversationMemberConfig {
+
+    /**
+     * 会话成员本地缓存时间（毫秒）
+     */
+    private long cacheTtlMs = 30000;
+
+    /**
+     * 缓存的会话数上限，超出后清理过期条目
+     */
+    private int maxCachedConversations = 100000;
+}
@@ -0,0 +1,48 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 热点会话消息缓存配置
+ * 控制每个会话缓存的最近消息条数、缓存会话数与内存预算
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.message.hot-cache")
+public class HotConversationCacheConfig {
+
+    /**
+     * 是否启用缓存，关闭时所有查询直接访问数据库
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每个会话缓存的最近消息条数（环形窗口容量）
+     */
+    private int messagesPerConversation = 200;
+
+    /**
+     * 最多缓存的会话数
+     */
+    private int maxConversations = 10000;
+
+    /**
+     * 缓存内存预算（字节，按消息字段估算）
+     */
+    private long memoryBudgetBytes = 128L * 1024 * 1024;
+
+    /**
+     * 超出上限时按LRU淘汰到上限的比例，批量淘汰以摊薄排序开销
+     */
+    private double evictionTargetRatio = 0.9;
+
+    /**
+     * 是否通过NATS通知其他节点失效会话窗口，多节点部署时必须开启
+     */
+    private boolean broadcastInvalidations = true;
+}
@@ -0,0 +1,53 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 收件箱时间线配置
+ * 控制每个用户同步指针的保留规模、扇出上限和批量追加
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.inbox")
+public class InboxTimelineConfig {
+
+    /**
+     * 是否启用收件箱时间线
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每个用户保留的最大指针条数，超出后裁剪最旧的指针
+     */
+    private int maxEntries = 10000;
+
+    /**
+     * 时间线过期时间（天），每次追加刷新
+     */
+    private int ttlDays = 14;
+
+    /**
+     * 写时间线的会话成员数上限，更大的会话由客户端按会话拉取
+     */
+    private int maxFanoutMembers = 2000;
+
+    /**
+     * 待追加消息队列容量，队列满时在调用线程直接追加
+     */
+    private int queueCapacity = 50000;
+
+    /**
+     * 单批追加的消息条数
+     */
+    private int batchSize = 200;
+
+    /**
+     * 单次同步返回的最大条数
+     */
+    private int maxPageSize = 200;
+}
@@ -0,0 +1,33 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 消息扇出配置
+ * 控制推送工作线程分区数与每个分区的队列容量
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.push.fanout")
+public class MessageFanoutConfig {
+
+    /**
+     * 分区数（工作线程数），同一会话固定落在同一分区以保证推送顺序
+     */
+    private int partitions = 8;
+
+    /**
+     * 每个分区的待推送队列容量
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * 分区队列满时的入队等待时间（毫秒），超时后丢弃并计数
+     */
+    private long enqueueTimeoutMs = 100;
+}
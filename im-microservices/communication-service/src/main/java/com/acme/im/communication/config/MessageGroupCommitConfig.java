@@ -0,0 +1,48 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 消息组提交配置
+ * 控制按分表合并消息写入的批量大小与等待时间
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.message.group-commit")
+public class MessageGroupCommitConfig {
+
+    /**
+     * 是否启用组提交，关闭时逐条写入
+     */
+    private boolean enabled = true;
+
+    /**
+     * 单批最大行数，达到后立即刷写
+     */
+    private int maxBatchSize = 64;
+
+    /**
+     * 最大等待时间（毫秒），到期后刷写未满的批次
+     */
+    private long maxWaitMs = 3;
+
+    /**
+     * 每个分表的待写队列容量，队列满时退化为逐条写入
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * 刷写线程数
+     */
+    private int flushThreads = 4;
+
+    /**
+     * 调用方等待写入完成的超时时间（毫秒）
+     */
+    private long writeTimeoutMs = 5000;
+}
@@ -0,0 +1,64 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 消息幂等性配置
+ * 控制Redis占位、本地布隆过滤器和幂等记录批量落库
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.message.idempotency")
+public class MessageIdempotencyConfig {
+
+    /**
+     * 幂等记录缓存过期时间（小时）
+     */
+    private long cacheExpireHours = 24;
+
+    /**
+     * 占位过期时间（秒）
+     * 消息写入前先占位，节点崩溃后占位自动失效，客户端可重试
+     */
+    private long claimTtlSeconds = 60;
+
+    /**
+     * 重复请求等待首个请求完成的最长时间（毫秒）
+     */
+    private long pendingWaitMs = 1000;
+
+    /**
+     * 布隆过滤器每代预计容量
+     */
+    private int bloomExpectedInsertions = 1000000;
+
+    /**
+     * 布隆过滤器误判率
+     */
+    private double bloomFalsePositiveRate = 0.01;
+
+    /**
+     * 批量落库间隔（毫秒）
+     */
+    private long flushIntervalMs = 20;
+
+    /**
+     * 单批最大记录数
+     */
+    private int batchSize = 200;
+
+    /**
+     * 待落库队列容量，队列满时同步写入
+     */
+    private int queueCapacity = 50000;
+
+    /**
+     * 落库失败最大重试次数
+     */
+    private int maxRetries = 3;
+}
@@ -0,0 +1,80 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Set;
+
+/**
+ * 消息搜索配置
+ * 控制内存倒排索引的分段、容量、异步写入和启动时的数据库预热
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.search")
+public class MessageSearchConfig {
+
+    /**
+     * 是否启用搜索索引，未启用时搜索回退到数据库LIKE查询
+     */
+    private boolean enabled = true;
+
+    /**
+     * 索引段数，按会话ID取模分段，与消息分表数保持一致
+     */
+    private int segmentCount = 32;
+
+    /**
+     * 单个索引段的最大文档数，超出后淘汰最旧的文档
+     */
+    private int maxDocsPerSegment = 200000;
+
+    /**
+     * 单条消息参与索引的最大字符数
+     */
+    private int maxContentLength = 2000;
+
+    /**
+     * 参与索引的消息类型：文本、文件、引用、转发
+     */
+    private Set<Integer> indexedMsgTypes = Set.of(0, 2, 11, 12);
+
+    /**
+     * 待写入索引操作的队列容量，队列满时在调用线程直接写入
+     */
+    private int queueCapacity = 100000;
+
+    /**
+     * 单批写入的索引操作数
+     */
+    private int batchSize = 500;
+
+    /**
+     * 是否通过NATS把本节点的索引变更广播给其他节点
+     */
+    private boolean replicate = true;
+
+    /**
+     * 启动时从数据库加载的最近消息天数，为0时不预热
+     */
+    private int bootstrapDays = 7;
+
+    /**
+     * 预热时单个时间窗口的分钟数，窗口内消息过多时自动二分
+     */
+    private int bootstrapWindowMinutes = 60;
+
+    /**
+     * 预热时单个时间窗口的查询条数，不超过跨分表查询的maxLimit
+     */
+    private int bootstrapBatchSize = 1000;
+
+    /**
+     * 单次搜索返回的最大条数
+     */
+    private int maxResults = 100;
+}
@@ -0,0 +1,57 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 消息序列号号段配置
+ * 控制共享计数器用完上界时每次从数据库租用的序列号区间大小
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.message.sequence")
+public class MessageSequenceConfig {
+
+    /**
+     * 默认号段大小（每次租用的序列号数量）
+     */
+    private int leaseSize = 1000;
+
+    /**
+     * 热点会话号段大小
+     */
+    private int hotLeaseSize = 10000;
+
+    /**
+     * 热点判定窗口（毫秒）
+     * 上一个号段在该时间内用完的会话视为热点会话
+     */
+    private long hotWindowMs = 10000;
+
+    /**
+     * 指定会话的号段大小：conversationId -> leaseSize
+     */
+    private Map<Long, Integer> overrides = new HashMap<>();
+
+    /**
+     * 获取会话的号段大小
+     *
+     * @param conversationId 会话ID
+     * @param hot 是否为热点会话
+     * @return 号段大小
+     */
+    public int resolveLeaseSize(Long conversationId, boolean hot) {
+        Integer override = overrides.get(conversationId);
+        if (override != null && override > 0) {
+            return override;
+        }
+        return Math.max(1, hot ? hotLeaseSize : leaseSize);
+    }
+}
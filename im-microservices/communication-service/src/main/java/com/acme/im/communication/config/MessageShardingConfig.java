@@ -0,0 +1,96 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 消息分片配置
+ * 初始分表布局、路由表刷新、额外分片数据源与在线迁移参数
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.message.sharding")
+public class MessageShardingConfig {
+
+    /**
+     * 是否启用分表
+     */
+    private boolean enabled = true;
+
+    /**
+     * 初始分表数量（尚无持久化路由表时使用）
+     */
+    private int tableCount = 32;
+
+    /**
+     * 分片槽数量，必须是初始分表数量的整数倍，一经使用不可修改
+     */
+    private int slotCount = 1024;
+
+    /**
+     * 分表策略说明
+     */
+    private String strategy = "conversation_id_mod";
+
+    /**
+     * 路由表刷新间隔（毫秒），其他实例发布的新版本最迟在该间隔后生效
+     */
+    private long refreshIntervalMs = 5000;
+
+    /**
+     * 额外的分片数据源：名称 -> 连接配置，default保留给服务自身的主从数据源
+     */
+    private Map<String, ShardDataSource> dataSources = new LinkedHashMap<>();
+
+    /**
+     * 在线迁移配置
+     */
+    private Migration migration = new Migration();
+
+    /**
+     * 分片数据源连接配置
+     */
+    @Data
+    public static class ShardDataSource {
+        private String url;
+        private String username;
+        private String password;
+        private String driverClassName = "com.mysql.cj.jdbc.Driver";
+        private int maximumPoolSize = 20;
+        private int minimumIdle = 2;
+    }
+
+    /**
+     * 在线迁移配置
+     */
+    @Data
+    public static class Migration {
+
+        /**
+         * 回填、校验、清理的单批行数
+         */
+        private int batchSize = 500;
+
+        /**
+         * 批次间隔（毫秒），用于限制对源库的压力
+         */
+        private long batchIntervalMs = 50;
+
+        /**
+         * 发布新路由表后等待所有实例刷新的时间（毫秒），应大于路由表刷新间隔
+         */
+        private long propagationWaitMs = 15000;
+
+        /**
+         * 最大校验轮数，最后一轮仍有不一致时迁移失败并停留在双写阶段
+         */
+        private int maxVerifyPasses = 3;
+    }
+}
@@ -1,27 +1,29 @@
 package com.acme.im.communication.config;
 
-import org.springframework.beans.factory.annotation.Value;
+import com.acme.im.common.infrastructure.database.sharding.ShardNode;
+import com.acme.im.common.infrastructure.database.sharding.ShardRouter;
+import com.acme.im.common.infrastructure.database.sharding.ShardRoutingTable;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 /**
  * 消息分表策略
- * 按会话ID取模分表，共32张表
- * 严格按照 messages_sharding_design.sql 中的分表规则
+ * 分表定位委托给分片路由器，初始布局严格按照 messages_sharding_design.sql 中的分表规则
  * 
- * 分表规则：conversation_id % 32
+ * 初始分表规则：conversation_id % 32
  * 表名格式：messages_00, messages_01, ..., messages_31
+ * 分表索引即路由表中的节点索引，扩容后新增的节点索引从32开始；返回的表名均为读节点的表名
  * 
  * @author IM开发团队
  * @since 1.0.0
  */
 @Component("communicationMessageShardingStrategy")
+@RequiredArgsConstructor
 public class MessageShardingStrategy {
 
-    /**
-     * 分表数量，默认32张表
-     */
-    @Value("${message.sharding.table-count:32}")
-    private int shardCount;
+    private final ShardRouter shardRouter;
 
     /**
      * 表名前缀
@@ -39,22 +41,22 @@ public class MessageShardingStrategy {
             throw new IllegalArgumentException("会话ID不能为空");
         }
         
-        int shardIndex = getShardIndex(conversationId);
-        return String.format("%s%02d", TABLE_PREFIX, shardIndex);
+        return shardRouter.route(conversationId).getReadNode().getTableName();
     }
 
     /**
      * 根据会话ID获取分表索引
      * 
      * @param conversationId 会话ID
-     * @return 分表索引 (0-31)
+     * @return 分表索引（路由表中的节点索引）
      */
     public int getShardIndex(Long conversationId) {
         if (conversationId == null) {
             throw new IllegalArgumentException("会话ID不能为空");
         }
         
-        return (int) (conversationId % shardCount);
+        ShardRoutingTable table = shardRouter.current();
+        return table.indexOf(table.route(conversationId).getReadNode());
     }
 
     /**
@@ -64,20 +66,20 @@ public class MessageShardingStrategy {
      * @return 是否有效
      */
     public boolean isValidShardIndex(int shardIndex) {
-        return shardIndex >= 0 && shardIndex < shardCount;
+        return shardIndex >= 0 && shardIndex < shardRouter.current().getNodes().size();
     }
 
     /**
-     * 获取所有分表名列表
+     * 获取所有提供读的分表名列表
      * 
      * @return 分表名列表
      */
     public String[] getAllTableNames() {
-        String[] tableNames = new String[shardCount];
-        for (int i = 0; i < shardCount; i++) {
-            tableNames[i] = String.format("%s%02d", TABLE_PREFIX, i);
-        }
-        return tableNames;
+        List<String> tableNames = shardRouter.current().getScans().stream()
+                .map(scan -> scan.getNode().getTableName())
+                .distinct()
+                .toList();
+        return tableNames.toArray(new String[0]);
     }
 
     /**
@@ -87,11 +89,12 @@ public class MessageShardingStrategy {
      * @return 分表名
      */
     public String getTableNameByIndex(int shardIndex) {
-        if (!isValidShardIndex(shardIndex)) {
+        List<ShardNode> nodes = shardRouter.current().getNodes();
+        if (shardIndex < 0 || shardIndex >= nodes.size()) {
             throw new IllegalArgumentException("无效的分表索引: " + shardIndex);
         }
         
-        return String.format("%s%02d", TABLE_PREFIX, shardIndex);
+        return nodes.get(shardIndex).getTableName();
     }
 
     /**
@@ -100,7 +103,7 @@ public class MessageShardingStrategy {
      * @return 分表数量
      */
     public int getShardCount() {
-        return shardCount;
+        return shardRouter.current().getNodes().size();
     }
 
     /**
@@ -113,7 +116,7 @@ public class MessageShardingStrategy {
     }
 
     /**
-     * 计算会话ID的哈希值（用于一致性哈希等场景）
+     * 计算会话ID的哈希值
      * 
      * @param conversationId 会话ID
      * @return 哈希值
@@ -136,16 +139,13 @@ public class MessageShardingStrategy {
             throw new IllegalArgumentException("无效的表名: " + tableName);
         }
         
-        String indexStr = tableName.substring(TABLE_PREFIX.length());
-        try {
-            int index = Integer.parseInt(indexStr);
-            if (!isValidShardIndex(index)) {
-                throw new IllegalArgumentException("无效的分表索引: " + index);
+        List<ShardNode> nodes = shardRouter.current().getNodes();
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i).getTableName().equals(tableName)) {
+                return i;
             }
-            return index;
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException("无法解析分表索引: " + indexStr);
         }
+        throw new IllegalArgumentException("未知的分表: " + tableName);
     }
 
     /**
@@ -0,0 +1,48 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 已读状态配置
+ * 控制已读水位的合并写入间隔和已读回执的批量推送
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.read-state")
+public class ReadStateConfig {
+
+    /**
+     * 已读水位写入Redis和数据库的间隔（毫秒），间隔内同一用户同一会话的多次已读合并为一次写入
+     */
+    private long flushIntervalMs = 1000;
+
+    /**
+     * 单批写入的水位条数
+     */
+    private int batchSize = 500;
+
+    /**
+     * 已读回执推送间隔（毫秒）
+     */
+    private long receiptIntervalMs = 200;
+
+    /**
+     * 单条回执推送包含的最大条目数
+     */
+    private int maxReceiptsPerPush = 200;
+
+    /**
+     * 解析回执接收方时扫描的最近已读消息条数，只有这些消息的发送方收到回执
+     */
+    private int receiptSenderScan = 50;
+
+    /**
+     * Redis水位过期时间（天），过期后从数据库重新加载
+     */
+    private int redisTtlDays = 30;
+}
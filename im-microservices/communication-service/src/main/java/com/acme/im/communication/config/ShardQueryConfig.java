@@ -0,0 +1,43 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 跨分表查询配置
+ * 控制分散-聚合查询的线程池大小、超时与单次查询上限
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.message.scatter-gather")
+public class ShardQueryConfig {
+
+    /**
+     * 分表查询线程数
+     */
+    private int threads = 8;
+
+    /**
+     * 线程池等待队列容量，队列满时由调用线程执行
+     */
+    private int queueCapacity = 512;
+
+    /**
+     * 单次跨分表查询的总超时时间（毫秒）
+     */
+    private long timeoutMs = 5000;
+
+    /**
+     * 单次查询允许的最大返回条数（同时作为下推到每个分表的LIMIT上限）
+     */
+    private int maxLimit = 1000;
+
+    /**
+     * JDBC抓取大小
+     */
+    private int fetchSize = 100;
+}
@@ -0,0 +1,53 @@
+package com.acme.im.communication.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Token验证配置
+ * 控制本地验签、验证结果缓存和业务服务请求/应答超时
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "app.communication.token-validation")
+public class TokenValidationConfig {
+
+    /**
+     * 是否先在本地校验JWT签名和有效期，未配置密钥时自动退回远程验证
+     */
+    private boolean localVerifyEnabled = true;
+
+    /**
+     * 缓存的Token数上限
+     */
+    private int cacheMaxEntries = 100000;
+
+    /**
+     * 验证通过的结果最长缓存时间（秒），到期后重新向业务服务确认用户状态
+     */
+    private long cacheTtlSeconds = 300;
+
+    /**
+     * 验证失败的结果缓存时间（秒）
+     */
+    private long negativeCacheTtlSeconds = 30;
+
+    /**
+     * 向业务服务请求验证的超时时间（毫秒）
+     */
+    private long requestTimeoutMs = 2000;
+
+    /**
+     * 吊销记录保留时间（秒），应不短于访问令牌有效期
+     */
+    private long revocationRetentionSeconds = 3600;
+
+    /**
+     * 过期缓存与吊销记录的清理间隔（毫秒）
+     */
+    private long cleanupIntervalMs = 60000;
+}
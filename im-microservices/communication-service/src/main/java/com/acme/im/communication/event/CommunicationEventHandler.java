@@ -4,6 +4,10 @@ import com.acme.im.common.infrastructure.nats.annotation.NatsEventHandler;
 import com.acme.im.common.infrastructure.nats.constants.EventTopics;
 import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
 import com.acme.im.common.infrastructure.nats.dto.MessageEvents;
+import com.acme.im.communication.entity.Message;
+import com.acme.im.communication.repository.MessageRepository;
+import com.acme.im.communication.service.ReadStateService;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
@@ -15,9 +19,13 @@ import org.springframework.stereotype.Component;
  * @since 1.0.0
  */
 @Component
+@RequiredArgsConstructor
 @Slf4j
 public class CommunicationEventHandler {
 
+    private final ReadStateService readStateService;
+    private final MessageRepository messageRepository;
+
     // ================================
     // 消息相关事件处理
     // ================================
@@ -120,20 +128,32 @@ public class CommunicationEventHandler {
 
     /**
      * 处理消息已读事件
+     * 集群内只由一个实例处理，水位合并后写入，回执批量推送
      */
-    @NatsEventHandler(value = EventTopics.Communication.Message.READ, priority = 150)
+    @NatsEventHandler(value = EventTopics.Communication.Message.READ, priority = 150,
+            queueGroup = "${spring.application.name}")
     public void handleMessageRead(BaseEvent<MessageEvents.MessageReadEvent> event) {
         MessageEvents.MessageReadEvent data = event.getData();
-        log.info("处理消息已读事件: messageId={}, userId={}", 
-                data.getMessageId(), data.getUserId());
+        log.debug("处理消息已读事件: conversationId={}, messageId={}, userId={}", 
+                data.getConversationId(), data.getMessageId(), data.getUserId());
         
         try {
-            // 处理消息已读逻辑
-            // 1. 更新消息读取状态
-            // 2. 发送已读回执
-            // 3. 更新未读计数
-            
-            log.info("消息已读事件处理成功: messageId={}", data.getMessageId());
+            if (data.getConversationId() == null || data.getUserId() == null) {
+                log.warn("消息已读事件缺少会话或用户: messageId={}", data.getMessageId());
+                return;
+            }
+            Long lastReadSeq = data.getLastReadSeq();
+            if (lastReadSeq == null && data.getMessageId() != null) {
+                lastReadSeq = messageRepository.findById(data.getConversationId(), data.getMessageId())
+                        .map(Message::getSeq)
+                        .orElse(null);
+            }
+            if (lastReadSeq == null) {
+                log.warn("无法确定已读序列号: conversationId={}, messageId={}",
+                        data.getConversationId(), data.getMessageId());
+                return;
+            }
+            readStateService.markRead(data.getConversationId(), data.getUserId(), lastReadSeq);
             
         } catch (Exception e) {
             log.error("消息已读事件处理失败: messageId={}, error: {}", 
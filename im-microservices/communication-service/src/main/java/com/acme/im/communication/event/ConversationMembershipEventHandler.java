@@ -0,0 +1,109 @@
+package com.acme.im.communication.event;
+
+import com.acme.im.common.infrastructure.nats.annotation.NatsEventHandler;
+import com.acme.im.common.infrastructure.nats.constants.EventTopics;
+import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
+import com.acme.im.communication.service.ConversationListService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 会话成员变更事件处理器
+ * 会话成员增删、群组成员加入退出后，使受影响用户的会话列表索引失效，下次读取时重建
+ *
+ * 索引在Redis中共享，集群内只需一个实例处理
+ * 受影响用户取自事件数据的userId、memberId、memberIds，数据中没有时取事件的userId
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationMembershipEventHandler {
+
+    private final ConversationListService conversationListService;
+
+    /**
+     * 会话成员加入
+     */
+    @NatsEventHandler(value = EventTopics.Business.Conversation.MEMBER_ADDED, priority = 100,
+            queueGroup = "${spring.application.name}")
+    public void onConversationMemberAdded(BaseEvent<?> event) {
+        invalidate(event);
+    }
+
+    /**
+     * 会话成员移除
+     */
+    @NatsEventHandler(value = EventTopics.Business.Conversation.MEMBER_REMOVED, priority = 100,
+            queueGroup = "${spring.application.name}")
+    public void onConversationMemberRemoved(BaseEvent<?> event) {
+        invalidate(event);
+    }
+
+    /**
+     * 群组成员加入
+     */
+    @NatsEventHandler(value = EventTopics.Business.Group.MEMBER_JOINED, priority = 100,
+            queueGroup = "${spring.application.name}")
+    public void onGroupMemberJoined(BaseEvent<?> event) {
+        invalidate(event);
+    }
+
+    /**
+     * 群组成员退出
+     */
+    @NatsEventHandler(value = EventTopics.Business.Group.MEMBER_LEFT, priority = 100,
+            queueGroup = "${spring.application.name}")
+    public void onGroupMemberLeft(BaseEvent<?> event) {
+        invalidate(event);
+    }
+
+    private void invalidate(BaseEvent<?> event) {
+        Set<Long> userIds = affectedUsers(event);
+        if (userIds.isEmpty()) {
+            log.warn("成员变更事件缺少用户ID: subject={}, eventId={}", event.getSubject(), event.getEventId());
+            return;
+        }
+        for (Long userId : userIds) {
+            conversationListService.invalidate(userId);
+        }
+        log.debug("会话列表索引已失效: subject={}, userIds={}", event.getSubject(), userIds);
+    }
+
+    private static Set<Long> affectedUsers(BaseEvent<?> event) {
+        Set<Long> userIds = new LinkedHashSet<>();
+        if (event.getData() instanceof Map<?, ?> data) {
+            addUserId(userIds, data.get("userId"));
+            addUserId(userIds, data.get("memberId"));
+            if (data.get("memberIds") instanceof Collection<?> memberIds) {
+                for (Object memberId : memberIds) {
+                    addUserId(userIds, memberId);
+                }
+            }
+        }
+        if (userIds.isEmpty()) {
+            addUserId(userIds, event.getUserId());
+        }
+        return userIds;
+    }
+
+    private static void addUserId(Set<Long> userIds, Object value) {
+        if (value instanceof Number number) {
+            userIds.add(number.longValue());
+        } else if (value instanceof String text && !text.isEmpty()) {
+            try {
+                userIds.add(Long.parseLong(text));
+            } catch (NumberFormatException e) {
+                // 非数字ID忽略
+            }
+        }
+    }
+}
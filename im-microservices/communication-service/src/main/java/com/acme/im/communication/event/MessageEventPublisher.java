@@ -1,6 +1,7 @@
 package com.acme.im.communication.event;
 
 import com.acme.im.communication.entity.Message;
+import com.acme.im.common.infrastructure.nats.outbox.EventOutbox;
 import com.acme.im.common.infrastructure.nats.publisher.AsyncEventPublisher;
 import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
 import com.acme.im.common.infrastructure.nats.dto.MessageEvents;
@@ -32,6 +33,7 @@ import java.time.LocalDateTime;
 public class MessageEventPublisher {
 
     private final AsyncEventPublisher eventPublisher;
+    private final EventOutbox eventOutbox;
 
     /**
      * 消息事件主题 - 使用统一的事件主题常量
@@ -44,36 +46,55 @@ public class MessageEventPublisher {
 
     /**
      * 发布消息创建事件
+     * 启用发件箱时先追加到本地发件箱再返回，由发件箱转发并在重启后补发；
+     * 未启用时异步发布，不阻塞发送流程
      * 
      * @param message 创建的消息
+     * @throws IllegalStateException 追加发件箱失败，事件未持久化，调用方不能按发送成功返回
      */
     public void publishMessageCreated(Message message) {
-        try {
-            MessageEvent event = MessageEvent.builder()
-                    .eventType("MESSAGE_CREATED")
-                    .messageId(message.getId())
-                    .conversationId(message.getConversationId())
-                    .senderId(message.getSenderId())
-                    .seq(message.getSeq())
-                    .msgType(message.getMsgType())
-                    .content(message.getContent())
-                    .contentExtra(message.getContentExtra())
-                    .replyToId(message.getReplyToId())
-                    .forwardFromId(message.getForwardFromId())
-                    .mentions(message.getMentions())
-                    .serverTimestamp(message.getServerTimestamp())
-                    .timestamp(LocalDateTime.now())
-                    .build();
-
-            // 使用公共模块的EventPublisher
-            eventPublisher.publishToJetStream(MESSAGE_CREATED_SUBJECT, event);
-            
-            log.info("发布消息创建事件: messageId={}, conversationId={}, senderId={}", 
-                    message.getId(), message.getConversationId(), message.getSenderId());
-
-        } catch (Exception e) {
-            log.error("发布消息创建事件失败: messageId={}", message.getId(), e);
+        MessageEvent event = MessageEvent.builder()
+                .eventType("MESSAGE_CREATED")
+                .messageId(message.getId())
+                .conversationId(message.getConversationId())
+                .senderId(message.getSenderId())
+                .seq(message.getSeq())
+                .msgType(message.getMsgType())
+                .content(message.getContent())
+                .contentExtra(message.getContentExtra())
+                .replyToId(message.getReplyToId())
+                .forwardFromId(message.getForwardFromId())
+                .mentions(message.getMentions())
+                .serverTimestamp(message.getServerTimestamp())
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        if (eventOutbox.isEnabled()) {
+            try {
+                // 消息ID按分表自增，去重ID需带上会话ID
+                eventOutbox.append(MESSAGE_CREATED_SUBJECT, event,
+                        "message.created:" + message.getConversationId() + ":" + message.getId());
+            } catch (Exception e) {
+                log.error("消息创建事件写入发件箱失败: messageId={}, conversationId={}",
+                        message.getId(), message.getConversationId(), e);
+                throw new IllegalStateException("消息创建事件写入发件箱失败", e);
+            }
+        } else {
+            try {
+                eventPublisher.publishToJetStreamAsync(MESSAGE_CREATED_SUBJECT, event)
+                        .whenComplete((ignored, error) -> {
+                            if (error != null) {
+                                log.error("发布消息创建事件失败: messageId={}, error={}", message.getId(), error.getMessage());
+                            }
+                        });
+            } catch (Exception e) {
+                log.error("发布消息创建事件失败: messageId={}", message.getId(), e);
+                return;
+            }
         }
+
+        log.info("发布消息创建事件: messageId={}, conversationId={}, senderId={}",
+                message.getId(), message.getConversationId(), message.getSenderId());
     }
 
     /**
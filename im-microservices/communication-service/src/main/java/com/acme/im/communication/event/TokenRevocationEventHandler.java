@@ -0,0 +1,76 @@
+package com.acme.im.communication.event;
+
+import com.acme.im.common.infrastructure.nats.annotation.NatsEventHandler;
+import com.acme.im.common.infrastructure.nats.constants.EventTopics;
+import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
+import com.acme.im.communication.service.TokenValidationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneId;
+
+/**
+ * Token吊销事件处理器
+ * 登出、设备移除和吊销事件使本节点缓存的Token验证结果失效
+ *
+ * 不加入队列组，每个通信服务节点都需要收到
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TokenRevocationEventHandler {
+
+    private final TokenValidationService tokenValidationService;
+
+    /**
+     * 用户登出，吊销登出设备上的Token，未指定设备时吊销全部设备
+     */
+    @NatsEventHandler(value = EventTopics.Business.User.LOGOUT, priority = 10)
+    public void onUserLogout(BaseEvent<?> event) {
+        revoke(event);
+    }
+
+    /**
+     * 设备移除，吊销该设备上的Token
+     */
+    @NatsEventHandler(value = EventTopics.Business.User.DEVICE_REMOVED, priority = 10)
+    public void onDeviceRemoved(BaseEvent<?> event) {
+        revoke(event);
+    }
+
+    /**
+     * 显式吊销Token
+     */
+    @NatsEventHandler(value = EventTopics.Security.TOKEN_REVOKE, priority = 10)
+    public void onTokenRevoke(BaseEvent<?> event) {
+        revoke(event);
+    }
+
+    private void revoke(BaseEvent<?> event) {
+        Long userId = parseUserId(event.getUserId());
+        if (userId == null) {
+            log.warn("吊销事件缺少用户ID: subject={}, eventId={}", event.getSubject(), event.getEventId());
+            return;
+        }
+        long revokedAtMs = event.getCreatedAt() != null
+                ? event.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : System.currentTimeMillis();
+        tokenValidationService.revoke(userId, event.getDeviceId(), revokedAtMs);
+        log.info("Token已吊销: subject={}, userId={}, deviceId={}", event.getSubject(), userId, event.getDeviceId());
+    }
+
+    private static Long parseUserId(String userId) {
+        if (userId == null || userId.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(userId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
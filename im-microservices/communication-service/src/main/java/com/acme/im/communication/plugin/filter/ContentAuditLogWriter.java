@@ -0,0 +1,295 @@
+package com.acme.im.communication.plugin.filter;
+
+import com.acme.im.common.infrastructure.database.DataSourceContextHolder;
+import com.acme.im.communication.config.ContentFilterConfig;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内容审核记录批量写入器
+ * 敏感词命中结果先进入内存队列，由后台线程合并写入content_audit_logs，
+ * 同时按词累计命中次数并批量更新sensitive_words.hit_count，消息线程不等待数据库
+ *
+ * 队列满时丢弃新记录并计数，审核记录丢失不影响消息处理结果
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ContentAuditLogWriter {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO content_audit_logs
+                (content_type, content_id, user_id, audit_type, audit_result, risk_level,
+                 hit_rules, audit_content, audit_reason, auto_audit)
+            VALUES (?, ?, ?, 'sensitive_word', ?, ?, ?, ?, ?, 1)
+            """;
+
+    // 显式保留updated_at，命中计数不应改变词表指纹触发重建
+    private static final String UPDATE_HIT_COUNT_SQL =
+            "UPDATE sensitive_words SET hit_count = hit_count + ?, updated_at = updated_at WHERE id = ?";
+
+    private static final int AUDIT_RESULT_REJECTED = 0;
+    private static final int AUDIT_RESULT_PASSED = 1;
+    private static final int AUDIT_RESULT_PENDING = 2;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ContentFilterConfig config;
+
+    private BlockingQueue<AuditRecord> pendingRecords;
+    private final Map<Long, LongAdder> pendingHitCounts = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flushExecutor;
+
+    // 统计信息
+    private final AtomicLong submitted = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+    private final AtomicLong written = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+
+    /**
+     * 审核记录
+     */
+    private static final class AuditRecord {
+        private final String contentType;
+        private final long contentId;
+        private final Long userId;
+        private final int auditResult;
+        private final int riskLevel;
+        private final String hitRules;
+        private final String auditContent;
+        private final String auditReason;
+
+        AuditRecord(String contentType, long contentId, Long userId, int auditResult, int riskLevel,
+                    String hitRules, String auditContent, String auditReason) {
+            this.contentType = contentType;
+            this.contentId = contentId;
+            this.userId = userId;
+            this.auditResult = auditResult;
+            this.riskLevel = riskLevel;
+            this.hitRules = hitRules;
+            this.auditContent = auditContent;
+            this.auditReason = auditReason;
+        }
+    }
+
+    /**
+     * 启动批量写入线程
+     */
+    @PostConstruct
+    public void initialize() {
+        pendingRecords = new LinkedBlockingQueue<>(config.getAuditQueueCapacity());
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "content-audit-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flush,
+                config.getAuditFlushIntervalMs(), config.getAuditFlushIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 优雅关闭：写入所有待写记录
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        log.info("内容审核记录写入器已关闭: {}", getStats());
+    }
+
+    /**
+     * 提交敏感词命中结果
+     *
+     * @param contentType 内容类型：message,file,image
+     * @param contentId 内容ID，未入库的内容为0
+     * @param userId 用户ID
+     * @param content 原始内容
+     * @param result 检测结果
+     */
+    public void submit(String contentType, Long contentId, Long userId, String content,
+                       SensitiveWordAutomaton.MatchResult result) {
+        if (result == null || !result.hasHits()) {
+            return;
+        }
+        Map<Long, SensitiveWordAutomaton.Word> words = new LinkedHashMap<>();
+        int riskLevel = 0;
+        for (SensitiveWordAutomaton.Hit hit : result.getHits()) {
+            SensitiveWordAutomaton.Word word = hit.getWord();
+            riskLevel = Math.max(riskLevel, word.getLevel());
+            if (word.getId() != null && words.putIfAbsent(word.getId(), word) == null) {
+                pendingHitCounts.computeIfAbsent(word.getId(), id -> new LongAdder()).increment();
+            }
+        }
+        if (!config.isAuditEnabled()) {
+            return;
+        }
+
+        AuditRecord record = new AuditRecord(contentType, contentId != null ? contentId : 0L, userId,
+                auditResult(result.getAction()), riskLevel, encodeHitRules(words),
+                truncate(content, config.getAuditContentMaxLength()),
+                "命中敏感词: " + result.getAction().name());
+        submitted.incrementAndGet();
+        if (!pendingRecords.offer(record)) {
+            dropped.incrementAndGet();
+            log.debug("审核记录队列已满，丢弃记录: contentType={}, contentId={}", contentType, contentId);
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public WriterStats getStats() {
+        return new WriterStats(submitted.get(), dropped.get(), written.get(), failed.get(),
+                pendingRecords != null ? pendingRecords.size() : 0);
+    }
+
+    /**
+     * 批量写入审核记录和命中计数
+     */
+    private void flush() {
+        try {
+            List<AuditRecord> batch = new ArrayList<>(config.getAuditBatchSize());
+            while (pendingRecords.drainTo(batch, config.getAuditBatchSize()) > 0) {
+                persistBatch(batch);
+                batch.clear();
+            }
+            flushHitCounts();
+        } catch (Exception e) {
+            log.error("内容审核记录批量写入异常", e);
+        }
+    }
+
+    private void persistBatch(List<AuditRecord> batch) {
+        List<Object[]> args = new ArrayList<>(batch.size());
+        for (AuditRecord record : batch) {
+            args.add(new Object[]{record.contentType, record.contentId, record.userId, record.auditResult,
+                    record.riskLevel, record.hitRules, record.auditContent, record.auditReason});
+        }
+        DataSourceContextHolder.switchToPrimary();
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, args);
+            written.addAndGet(batch.size());
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+            log.warn("内容审核记录批量写入失败: size={}, error={}", batch.size(), e.getMessage());
+        } finally {
+            DataSourceContextHolder.clearDataSource();
+        }
+    }
+
+    private void flushHitCounts() {
+        if (pendingHitCounts.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(pendingHitCounts.size());
+        for (Long wordId : new ArrayList<>(pendingHitCounts.keySet())) {
+            LongAdder adder = pendingHitCounts.remove(wordId);
+            long count = adder != null ? adder.sum() : 0;
+            if (count > 0) {
+                args.add(new Object[]{count, wordId});
+            }
+        }
+        if (args.isEmpty()) {
+            return;
+        }
+        DataSourceContextHolder.switchToPrimary();
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_HIT_COUNT_SQL, args);
+        } catch (Exception e) {
+            log.warn("敏感词命中次数更新失败: size={}, error={}", args.size(), e.getMessage());
+        } finally {
+            DataSourceContextHolder.clearDataSource();
+        }
+    }
+
+    private String encodeHitRules(Map<Long, SensitiveWordAutomaton.Word> words) {
+        List<Map<String, Object>> rules = new ArrayList<>(words.size());
+        for (SensitiveWordAutomaton.Word word : words.values()) {
+            Map<String, Object> rule = new HashMap<>();
+            rule.put("wordId", word.getId());
+            rule.put("word", word.getWord());
+            rule.put("category", word.getCategory());
+            rule.put("level", word.getLevel());
+            rules.add(rule);
+        }
+        try {
+            return objectMapper.writeValueAsString(rules);
+        } catch (JsonProcessingException e) {
+            return "[]";
+        }
+    }
+
+    private static int auditResult(SensitiveWordAutomaton.Action action) {
+        return switch (action) {
+            case BLOCK -> AUDIT_RESULT_REJECTED;
+            case WARN -> AUDIT_RESULT_PENDING;
+            default -> AUDIT_RESULT_PASSED;
+        };
+    }
+
+    private static String truncate(String content, int maxLength) {
+        if (content == null || content.length() <= maxLength) {
+            return content;
+        }
+        return content.substring(0, maxLength);
+    }
+
+    /**
+     * 写入统计
+     */
+    public static class WriterStats {
+        private final long submitted;
+        private final long dropped;
+        private final long written;
+        private final long failed;
+        private final int queueSize;
+
+        public WriterStats(long submitted, long dropped, long written, long failed, int queueSize) {
+            this.submitted = submitted;
+            this.dropped = dropped;
+            this.written = written;
+            this.failed = failed;
+            this.queueSize = queueSize;
+        }
+
+        public long getSubmitted() { return submitted; }
+        public long getDropped() { return dropped; }
+        public long getWritten() { return written; }
+        public long getFailed() { return failed; }
+        public int getQueueSize() { return queueSize; }
+
+        @Override
+        public String toString() {
+            return String.format("ContentAuditStats{submitted=%d, dropped=%d, written=%d, failed=%d, queue=%d}",
+                    submitted, dropped, written, failed, queueSize);
+        }
+    }
+}
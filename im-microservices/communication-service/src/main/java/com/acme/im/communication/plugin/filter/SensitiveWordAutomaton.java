@@ -0,0 +1,496 @@
+package com.acme.im.communication.plugin.filter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 敏感词自动机
+ * 将敏感词表编译为双数组Aho-Corasick自动机，一次线性扫描完成提醒、替换和拦截
+ *
+ * 1. 结构 - 状态转移由base/check两个数组表示：t = base[s] + code，check[t] == s时转移有效；
+ *    字符先归一化（全角转半角、忽略大小写）再映射为紧凑编码，词表中未出现的字符直接回到根状态
+ * 2. 匹配 - 失配沿fail指针回退，命中沿输出链枚举所有以当前位置结尾的词，
+ *    单条消息的扫描代价只与消息长度和命中数有关，与词表规模无关
+ * 3. 动作 - 级别取自sensitive_words.level：1-提醒，2-替换，3-拦截；命中拦截词立即结束扫描，
+ *    替换按最左最长、互不重叠的原则进行，未配置替换词时按原长度打码
+ *
+ * 实例构建后不可变，可被多个线程同时使用
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public final class SensitiveWordAutomaton {
+
+    public static final int LEVEL_WARN = 1;
+    public static final int LEVEL_REPLACE = 2;
+    public static final int LEVEL_BLOCK = 3;
+
+    private static final int FREE = -1;
+    private static final int ROOT = 0;
+
+    private static final SensitiveWordAutomaton EMPTY = build(Collections.emptyList());
+
+    private final int[] base;
+    private final int[] check;
+    private final int[] fail;
+    // 在该状态结束的词下标，-1表示无
+    private final int[] output;
+    // 沿fail链下一个有输出的状态，-1表示无
+    private final int[] outputLink;
+    // 归一化字符到紧凑编码，0表示不在词表字母表中
+    private final int[] charCodes;
+    private final Word[] words;
+    private final int[] wordLengths;
+    private final int stateCount;
+
+    private SensitiveWordAutomaton(int[] base, int[] check, int[] fail, int[] output, int[] outputLink,
+                                   int[] charCodes, Word[] words, int[] wordLengths, int stateCount) {
+        this.base = base;
+        this.check = check;
+        this.fail = fail;
+        this.output = output;
+        this.outputLink = outputLink;
+        this.charCodes = charCodes;
+        this.words = words;
+        this.wordLengths = wordLengths;
+        this.stateCount = stateCount;
+    }
+
+    /**
+     * 空自动机，不命中任何内容
+     */
+    public static SensitiveWordAutomaton empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 编译词表
+     * 归一化后相同的词只保留级别最高的一条
+     *
+     * @param source 敏感词
+     * @return 自动机
+     */
+    public static SensitiveWordAutomaton build(Collection<Word> source) {
+        Map<String, Word> unique = new HashMap<>();
+        for (Word word : source) {
+            if (word == null || word.getWord() == null || word.getWord().isEmpty()) {
+                continue;
+            }
+            String normalized = normalize(word.getWord());
+            unique.merge(normalized, word, (a, b) -> b.getLevel() > a.getLevel() ? b : a);
+        }
+
+        // 1. 字母表：出现越多的字符编码越小，子节点编码更集中，双数组更容易紧凑放置
+        int[] charCodes = new int[Character.MAX_VALUE + 1];
+        List<String> patterns = new ArrayList<>(unique.keySet());
+        Collections.sort(patterns);
+        Word[] words = new Word[patterns.size()];
+        int[] wordLengths = new int[patterns.size()];
+        List<Character> alphabet = new ArrayList<>();
+        for (int i = 0; i < patterns.size(); i++) {
+            String pattern = patterns.get(i);
+            words[i] = unique.get(pattern);
+            wordLengths[i] = pattern.length();
+            for (int j = 0; j < pattern.length(); j++) {
+                char c = pattern.charAt(j);
+                if (charCodes[c]++ == 0) {
+                    alphabet.add(c);
+                }
+            }
+        }
+        alphabet.sort((a, b) -> Integer.compare(charCodes[b], charCodes[a]));
+        for (int i = 0; i < alphabet.size(); i++) {
+            charCodes[alphabet.get(i)] = i + 1;
+        }
+
+        // 2. 普通字典树
+        List<TrieNode> trie = new ArrayList<>();
+        trie.add(new TrieNode());
+        for (int i = 0; i < patterns.size(); i++) {
+            String pattern = patterns.get(i);
+            int node = 0;
+            for (int j = 0; j < pattern.length(); j++) {
+                int code = charCodes[pattern.charAt(j)];
+                Integer child = trie.get(node).children.get(code);
+                if (child == null) {
+                    child = trie.size();
+                    trie.add(new TrieNode());
+                    trie.get(node).children.put(code, child);
+                }
+                node = child;
+            }
+            trie.get(node).word = i;
+        }
+
+        // 3. 按层放置到双数组
+        Builder builder = new Builder(Math.max(16, trie.size() * 2));
+        int[] stateOf = new int[trie.size()];
+        stateOf[0] = ROOT;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        List<Integer> order = new ArrayList<>(trie.size());
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            order.add(node);
+            TreeMap<Integer, Integer> children = trie.get(node).children;
+            if (children.isEmpty()) {
+                continue;
+            }
+            int state = stateOf[node];
+            int b = builder.findBase(children.keySet());
+            builder.base[state] = b;
+            for (Map.Entry<Integer, Integer> child : children.entrySet()) {
+                int t = b + child.getKey();
+                builder.occupy(t, state);
+                stateOf[child.getValue()] = t;
+                queue.add(child.getValue());
+            }
+        }
+
+        int size = builder.stateCount;
+        int[] base = Arrays.copyOf(builder.base, size);
+        int[] check = Arrays.copyOf(builder.check, size);
+        int[] output = new int[size];
+        int[] outputLink = new int[size];
+        int[] fail = new int[size];
+        Arrays.fill(output, -1);
+        Arrays.fill(outputLink, -1);
+        for (int node = 0; node < trie.size(); node++) {
+            output[stateOf[node]] = trie.get(node).word;
+        }
+
+        SensitiveWordAutomaton automaton = new SensitiveWordAutomaton(base, check, fail, output, outputLink,
+                charCodes, words, wordLengths, trie.size());
+
+        // 4. 按层计算fail指针和输出链，父状态总是先于子状态处理
+        for (int node : order) {
+            int state = stateOf[node];
+            for (Map.Entry<Integer, Integer> child : trie.get(node).children.entrySet()) {
+                int code = child.getKey();
+                int t = stateOf[child.getValue()];
+                if (state == ROOT) {
+                    fail[t] = ROOT;
+                } else {
+                    int f = fail[state];
+                    int next = automaton.transition(f, code);
+                    while (next < 0 && f != ROOT) {
+                        f = fail[f];
+                        next = automaton.transition(f, code);
+                    }
+                    fail[t] = next >= 0 ? next : ROOT;
+                }
+                int f = fail[t];
+                outputLink[t] = output[f] >= 0 ? f : outputLink[f];
+            }
+        }
+        return automaton;
+    }
+
+    /**
+     * 扫描文本
+     *
+     * @param text 待检测文本
+     * @param mask 未配置替换词时的打码字符串，按命中长度重复
+     * @return 扫描结果
+     */
+    public MatchResult match(String text, String mask) {
+        if (text == null || text.isEmpty() || words.length == 0) {
+            return MatchResult.pass(text);
+        }
+        List<Hit> hits = null;
+        int maxLevel = 0;
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            int code = charCodes[normalize(text.charAt(i))];
+            if (code == 0) {
+                state = ROOT;
+                continue;
+            }
+            int next = transition(state, code);
+            while (next < 0 && state != ROOT) {
+                state = fail[state];
+                next = transition(state, code);
+            }
+            state = next >= 0 ? next : ROOT;
+
+            int s = output[state] >= 0 ? state : outputLink[state];
+            while (s >= 0) {
+                int index = output[s];
+                Word word = words[index];
+                if (hits == null) {
+                    hits = new ArrayList<>(4);
+                }
+                hits.add(new Hit(word, i + 1 - wordLengths[index], i + 1));
+                maxLevel = Math.max(maxLevel, word.getLevel());
+                if (maxLevel >= LEVEL_BLOCK) {
+                    return new MatchResult(Action.BLOCK, text, hits);
+                }
+                s = outputLink[s];
+            }
+        }
+        if (hits == null) {
+            return MatchResult.pass(text);
+        }
+        if (maxLevel < LEVEL_REPLACE) {
+            return new MatchResult(Action.WARN, text, hits);
+        }
+        return new MatchResult(Action.REPLACE, replace(text, hits, mask), hits);
+    }
+
+    /**
+     * 词表中的词数
+     */
+    public int getWordCount() {
+        return words.length;
+    }
+
+    /**
+     * 自动机状态数
+     */
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * 双数组长度
+     */
+    public int getArrayLength() {
+        return base.length;
+    }
+
+    /**
+     * 字符归一化：全角转半角、统一小写
+     */
+    static char normalize(char c) {
+        if (c >= '\uFF01' && c <= '\uFF5E') {
+            c = (char) (c - 0xFEE0);
+        } else if (c == '\u3000') {
+            c = ' ';
+        }
+        return Character.toLowerCase(c);
+    }
+
+    static String normalize(String s) {
+        char[] chars = new char[s.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = normalize(s.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    private int transition(int state, int code) {
+        int t = base[state] + code;
+        return t > 0 && t < check.length && check[t] == state ? t : -1;
+    }
+
+    /**
+     * 按最左最长、互不重叠的原则替换替换级命中
+     */
+    private static String replace(String text, List<Hit> hits, String mask) {
+        List<Hit> candidates = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            if (hit.getWord().getLevel() >= LEVEL_REPLACE) {
+                candidates.add(hit);
+            }
+        }
+        candidates.sort(Comparator.comparingInt(Hit::getStart)
+                .thenComparing(Comparator.comparingInt(Hit::getEnd).reversed()));
+        StringBuilder sb = new StringBuilder(text.length());
+        int last = 0;
+        for (Hit hit : candidates) {
+            if (hit.getStart() < last) {
+                continue;
+            }
+            sb.append(text, last, hit.getStart());
+            String replacement = hit.getWord().getReplacement();
+            if (replacement != null && !replacement.isEmpty()) {
+                sb.append(replacement);
+            } else {
+                for (int i = hit.getStart(); i < hit.getEnd(); i++) {
+                    sb.append(mask);
+                }
+            }
+            last = hit.getEnd();
+        }
+        sb.append(text, last, text.length());
+        return sb.toString();
+    }
+
+    /**
+     * 构建期字典树节点
+     */
+    private static final class TrieNode {
+        private final TreeMap<Integer, Integer> children = new TreeMap<>();
+        private int word = -1;
+    }
+
+    /**
+     * 双数组构建器
+     * nextFree[i]指向不小于i的空闲位置（带路径压缩），寻找base时跳过已占用的区域
+     */
+    private static final class Builder {
+        private int[] base;
+        private int[] check;
+        private int[] nextFree;
+        private int stateCount = 1;
+
+        Builder(int capacity) {
+            base = new int[0];
+            check = new int[0];
+            nextFree = new int[0];
+            ensureCapacity(capacity);
+            occupy(ROOT, ROOT);
+        }
+
+        /**
+         * 为一组子节点编码寻找可用的base，使所有 base + code 位置均空闲
+         */
+        int findBase(Collection<Integer> codes) {
+            int first = codes.iterator().next();
+            // base至少为1，第一个子节点的位置至少为first + 1
+            int pos = findFree(first + 1);
+            while (!fits(pos - first, codes)) {
+                pos = findFree(pos + 1);
+            }
+            return pos - first;
+        }
+
+        /**
+         * 占用位置
+         */
+        void occupy(int pos, int parent) {
+            ensureCapacity(pos + 1);
+            check[pos] = parent;
+            nextFree[pos] = pos + 1;
+            stateCount = Math.max(stateCount, pos + 1);
+        }
+
+        private int findFree(int from) {
+            ensureCapacity(from + 1);
+            int pos = from;
+            while (nextFree[pos] != pos) {
+                pos = nextFree[pos];
+                ensureCapacity(pos + 1);
+            }
+            // 路径压缩
+            int cur = from;
+            while (nextFree[cur] != cur) {
+                int next = nextFree[cur];
+                nextFree[cur] = pos;
+                cur = next;
+            }
+            return pos;
+        }
+
+        private boolean fits(int b, Collection<Integer> codes) {
+            for (int code : codes) {
+                ensureCapacity(b + code + 1);
+                if (check[b + code] != FREE) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void ensureCapacity(int size) {
+            if (size <= check.length) {
+                return;
+            }
+            int capacity = Math.max(size, check.length + (check.length >> 1));
+            int old = check.length;
+            base = Arrays.copyOf(base, capacity);
+            check = Arrays.copyOf(check, capacity);
+            nextFree = Arrays.copyOf(nextFree, capacity);
+            Arrays.fill(check, old, capacity, FREE);
+            for (int i = old; i < capacity; i++) {
+                nextFree[i] = i;
+            }
+        }
+    }
+
+    /**
+     * 处理动作
+     */
+    public enum Action {
+        PASS, WARN, REPLACE, BLOCK
+    }
+
+    /**
+     * 敏感词
+     */
+    public static final class Word {
+        private final Long id;
+        private final String word;
+        private final String category;
+        private final int level;
+        private final String replacement;
+
+        public Word(Long id, String word, String category, int level, String replacement) {
+            this.id = id;
+            this.word = word;
+            this.category = category;
+            this.level = Math.max(LEVEL_WARN, Math.min(LEVEL_BLOCK, level));
+            this.replacement = replacement;
+        }
+
+        public Long getId() { return id; }
+        public String getWord() { return word; }
+        public String getCategory() { return category; }
+        public int getLevel() { return level; }
+        public String getReplacement() { return replacement; }
+    }
+
+    /**
+     * 命中位置，区间为[start, end)
+     */
+    public static final class Hit {
+        private final Word word;
+        private final int start;
+        private final int end;
+
+        public Hit(Word word, int start, int end) {
+            this.word = word;
+            this.start = start;
+            this.end = end;
+        }
+
+        public Word getWord() { return word; }
+        public int getStart() { return start; }
+        public int getEnd() { return end; }
+    }
+
+    /**
+     * 扫描结果
+     */
+    public static final class MatchResult {
+        private static final MatchResult PASS_EMPTY = new MatchResult(Action.PASS, null, Collections.emptyList());
+
+        private final Action action;
+        private final String content;
+        private final List<Hit> hits;
+
+        public MatchResult(Action action, String content, List<Hit> hits) {
+            this.action = action;
+            this.content = content;
+            this.hits = hits;
+        }
+
+        static MatchResult pass(String content) {
+            return content == null ? PASS_EMPTY : new MatchResult(Action.PASS, content, Collections.emptyList());
+        }
+
+        public Action getAction() { return action; }
+        public String getContent() { return content; }
+        public List<Hit> getHits() { return hits; }
+        public boolean isBlocked() { return action == Action.BLOCK; }
+        public boolean hasHits() { return !hits.isEmpty(); }
+    }
+}
@@ -0,0 +1,182 @@
+package com.acme.im.communication.plugin.filter;
+
+import com.acme.im.common.infrastructure.database.DataSourceContextHolder;
+import com.acme.im.communication.config.ContentFilterConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 敏感词过滤器
+ * 持有当前生效的敏感词自动机，消息线程只读取引用，不参与构建
+ *
+ * 1. 加载 - 启动时从sensitive_words读取启用的词并编译
+ * 2. 刷新 - 定时比较词表指纹（行数、最大ID、最后更新时间），变化时在刷新线程重新编译，
+ *    编译完成后整体替换引用，扫描中的消息继续使用旧自动机
+ * 3. 正则 - is_regex的词无法编入自动机，加载时跳过
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SensitiveWordFilter {
+
+    private static final String SELECT_FINGERPRINT =
+            "SELECT CONCAT(COUNT(*), '|', IFNULL(MAX(id), 0), '|', IFNULL(MAX(updated_at), '')) FROM sensitive_words";
+
+    private static final String SELECT_WORDS =
+            "SELECT id, word, category, level, replacement FROM sensitive_words WHERE is_enabled = 1 AND is_regex = 0";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ContentFilterConfig config;
+
+    private volatile SensitiveWordAutomaton automaton = SensitiveWordAutomaton.empty();
+    private volatile String fingerprint;
+
+    // 统计信息
+    private final AtomicLong scanned = new AtomicLong(0);
+    private final AtomicLong warned = new AtomicLong(0);
+    private final AtomicLong replaced = new AtomicLong(0);
+    private final AtomicLong blocked = new AtomicLong(0);
+    private final AtomicLong rebuilds = new AtomicLong(0);
+
+    /**
+     * 启动时加载词表
+     */
+    @PostConstruct
+    public void initialize() {
+        if (!config.isEnabled()) {
+            log.info("敏感词过滤已关闭");
+            return;
+        }
+        refresh();
+        log.info("敏感词过滤器初始化完成: words={}, states={}",
+                automaton.getWordCount(), automaton.getStateCount());
+    }
+
+    /**
+     * 检查词表是否变更，变更时重新编译并替换
+     */
+    @Scheduled(fixedDelayString = "${app.communication.content-filter.refresh-interval-ms:30000}")
+    public void refresh() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        try {
+            String latest = onPrimary(() -> jdbcTemplate.queryForObject(SELECT_FINGERPRINT, String.class));
+            if (Objects.equals(latest, fingerprint)) {
+                return;
+            }
+            List<SensitiveWordAutomaton.Word> words = onPrimary(() -> jdbcTemplate.query(SELECT_WORDS,
+                    (rs, rowNum) -> new SensitiveWordAutomaton.Word(
+                            rs.getLong("id"),
+                            rs.getString("word"),
+                            rs.getString("category"),
+                            rs.getInt("level"),
+                            rs.getString("replacement"))));
+            long start = System.currentTimeMillis();
+            SensitiveWordAutomaton rebuilt = SensitiveWordAutomaton.build(words);
+            automaton = rebuilt;
+            fingerprint = latest;
+            rebuilds.incrementAndGet();
+            log.info("敏感词自动机已重建: words={}, states={}, arrayLength={}, costMs={}",
+                    rebuilt.getWordCount(), rebuilt.getStateCount(), rebuilt.getArrayLength(),
+                    System.currentTimeMillis() - start);
+        } catch (DataAccessException e) {
+            log.warn("读取敏感词表失败，继续使用当前自动机: words={}, error={}",
+                    automaton.getWordCount(), e.getMessage());
+        }
+    }
+
+    /**
+     * 检测文本
+     *
+     * @param content 文本内容
+     * @return 检测结果
+     */
+    public SensitiveWordAutomaton.MatchResult filter(String content) {
+        SensitiveWordAutomaton.MatchResult result = automaton.match(content, config.getMask());
+        scanned.incrementAndGet();
+        switch (result.getAction()) {
+            case WARN -> warned.incrementAndGet();
+            case REPLACE -> replaced.incrementAndGet();
+            case BLOCK -> blocked.incrementAndGet();
+            default -> { }
+        }
+        return result;
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public FilterStats getStats() {
+        SensitiveWordAutomaton current = automaton;
+        return new FilterStats(current.getWordCount(), current.getStateCount(), rebuilds.get(),
+                scanned.get(), warned.get(), replaced.get(), blocked.get());
+    }
+
+    /**
+     * 词表只存放在主库，刷新线程不带数据源上下文，需显式切换
+     */
+    private <T> T onPrimary(Supplier<T> action) {
+        DataSourceContextHolder.switchToPrimary();
+        try {
+            return action.get();
+        } finally {
+            DataSourceContextHolder.clearDataSource();
+        }
+    }
+
+    /**
+     * 过滤统计
+     */
+    public static class FilterStats {
+        private final int words;
+        private final int states;
+        private final long rebuilds;
+        private final long scanned;
+        private final long warned;
+        private final long replaced;
+        private final long blocked;
+
+        public FilterStats(int words, int states, long rebuilds, long scanned,
+                           long warned, long replaced, long blocked) {
+            this.words = words;
+            this.states = states;
+            this.rebuilds = rebuilds;
+            this.scanned = scanned;
+            this.warned = warned;
+            this.replaced = replaced;
+            this.blocked = blocked;
+        }
+
+        public int getWords() { return words; }
+        public int getStates() { return states; }
+        public long getRebuilds() { return rebuilds; }
+        public long getScanned() { return scanned; }
+        public long getWarned() { return warned; }
+        public long getReplaced() { return replaced; }
+        public long getBlocked() { return blocked; }
+
+        @Override
+        public String toString() {
+            return String.format("SensitiveWordStats{words=%d, states=%d, rebuilds=%d, scanned=%d, warned=%d, replaced=%d, blocked=%d}",
+                    words, states, rebuilds, scanned, warned, replaced, blocked);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.acme.im.communication.plugin.impl;
+
+import com.acme.im.communication.plugin.MessageProcessor;
+import com.acme.im.communication.plugin.filter.SensitiveWordAutomaton;
+import com.acme.im.communication.plugin.filter.SensitiveWordFilter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 敏感词消息处理器
+ * 在message.process扩展点上对文本内容做敏感词检测
+ *
+ * 检测结果写入处理上下文：
+ * 1. contentFilterResult - 检测结果，由调用方决定是否拦截并写审核记录
+ * 2. contentBlocked - 命中拦截级敏感词时为true，此时返回原内容
+ * 命中替换级敏感词时返回替换后的内容
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SensitiveWordMessageProcessor implements MessageProcessor {
+
+    public static final String ATTR_FILTER_RESULT = "contentFilterResult";
+    public static final String ATTR_BLOCKED = "contentBlocked";
+
+    private final SensitiveWordFilter sensitiveWordFilter;
+
+    @Override
+    public Object processMessage(Object message, ProcessingContext context) {
+        if (!(message instanceof String content) || !sensitiveWordFilter.isEnabled()) {
+            return message;
+        }
+        SensitiveWordAutomaton.MatchResult result = sensitiveWordFilter.filter(content);
+        if (!result.hasHits()) {
+            return message;
+        }
+        context.setAttribute(ATTR_FILTER_RESULT, result);
+        if (result.isBlocked()) {
+            context.setAttribute(ATTR_BLOCKED, true);
+            log.debug("消息命中拦截级敏感词: sessionId={}, hits={}", context.getSessionId(), result.getHits().size());
+            return message;
+        }
+        log.debug("消息命中敏感词: sessionId={}, action={}, hits={}",
+                context.getSessionId(), result.getAction(), result.getHits().size());
+        return result.getContent();
+    }
+
+    @Override
+    public String getProcessorName() {
+        return "SensitiveWordMessageProcessor";
+    }
+
+    @Override
+    public int getPriority() {
+        return 10; // 先于其他处理器执行，后续处理器看到的是替换后的内容
+    }
+
+    @Override
+    public boolean supportsMessageType(String messageType) {
+        return "TEXT".equals(messageType) || "QUOTE".equals(messageType) || "EDIT".equals(messageType);
+    }
+
+    @Override
+    public List<String> getSupportedMessageTypes() {
+        return List.of("TEXT", "QUOTE", "EDIT");
+    }
+}
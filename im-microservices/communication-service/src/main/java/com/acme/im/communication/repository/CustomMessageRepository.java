@@ -1,23 +1,21 @@
 package com.acme.im.communication.repository;
 
-import com.acme.im.common.infrastructure.database.MessageShardingStrategy;
 import com.acme.im.common.infrastructure.database.annotation.DataSource;
+import com.acme.im.common.infrastructure.database.sharding.ShardNode;
+import com.acme.im.common.infrastructure.database.sharding.ShardRouter;
 import com.acme.im.communication.entity.Message;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 /**
  * 自定义消息Repository实现
- * 支持分表查询和操作
+ * 支持分表查询和操作，单会话查询走分片路由的读节点，跨会话查询经分散-聚合执行器
  * 
  * 数据源策略：
  * - 所有方法都是读操作，统一使用从库(SECONDARY)
@@ -29,46 +27,19 @@ import java.util.Optional;
 @DataSource(type = DataSource.DataSourceType.SECONDARY)
 public class CustomMessageRepository {
     
-    private final JdbcTemplate jdbcTemplate;
-    private final MessageShardingStrategy shardingStrategy;
+    private final ShardDataSourceRegistry dataSources;
+    private final ShardRouter shardRouter;
+    private final ShardScatterGatherExecutor scatterGatherExecutor;
     
     /**
-     * 消息行映射器
+     * 消息行映射器（按下标读取，与SELECT_COLUMNS列布局一致）
      */
-    private static final RowMapper<Message> MESSAGE_ROW_MAPPER = new RowMapper<Message>() {
-        @Override
-        public Message mapRow(ResultSet rs, int rowNum) throws SQLException {
-            Message message = new Message();
-            message.setId(rs.getLong("id"));
-            message.setConversationId(rs.getLong("conversation_id"));
-            message.setSeq(rs.getLong("seq"));
-            message.setClientMsgId(rs.getString("client_msg_id"));
-            message.setSenderId(rs.getLong("sender_id"));
-            message.setMsgType(rs.getInt("msg_type"));
-            message.setContent(rs.getString("content"));
-            message.setContentExtra(rs.getString("content_extra"));
-            message.setReplyToId(rs.getLong("reply_to_id"));
-            message.setForwardFromId(rs.getLong("forward_from_id"));
-            message.setMentions(rs.getString("mentions"));
-            message.setIsPinned(rs.getBoolean("is_pinned") ? 1 : 0);
-            message.setIsEdited(rs.getBoolean("is_edited") ? 1 : 0);
-            message.setEditCount(rs.getInt("edit_count"));
-            message.setLastEditAt(rs.getTimestamp("last_edit_at") != null ? 
-                rs.getTimestamp("last_edit_at").toLocalDateTime() : null);
-            message.setIsRecalled(rs.getBoolean("is_recalled") ? 1 : 0);
-            message.setRecallReason(rs.getString("recall_reason"));
-            message.setRecalledAt(rs.getTimestamp("recalled_at") != null ? 
-                rs.getTimestamp("recalled_at").toLocalDateTime() : null);
-            message.setStatus(rs.getInt("status"));
-            message.setServerTimestamp(rs.getTimestamp("server_timestamp") != null ? 
-                rs.getTimestamp("server_timestamp").toLocalDateTime() : null);
-            message.setCreatedAt(rs.getTimestamp("created_at") != null ? 
-                rs.getTimestamp("created_at").toLocalDateTime() : null);
-            message.setUpdatedAt(rs.getTimestamp("updated_at") != null ? 
-                rs.getTimestamp("updated_at").toLocalDateTime() : null);
-            return message;
-        }
-    };
+    private static final RowMapper<Message> MESSAGE_ROW_MAPPER = MessageRowMapper.FULL;
+
+    /**
+     * 显式查询列清单
+     */
+    private static final String SELECT_COLUMNS = MessageRowMapper.columns(true);
     
     /**
      * 根据会话ID查找消息列表（支持分页） - 读操作，使用从库
@@ -79,15 +50,16 @@ public class CustomMessageRepository {
      * @return 消息列表
      */
     public List<Message> findByConversationId(Long conversationId, int limit, int offset) {
-        String tableName = shardingStrategy.getTableName(conversationId);
+        ShardNode node = shardRouter.route(conversationId).getReadNode();
+        String tableName = node.getTableName();
         String sql = String.format(
-            "SELECT * FROM %s WHERE conversation_id = ? ORDER BY seq DESC LIMIT ? OFFSET ?",
+            "SELECT " + SELECT_COLUMNS + " FROM %s WHERE conversation_id = ? ORDER BY seq DESC LIMIT ? OFFSET ?",
             tableName
         );
         
         log.debug("查询会话 {} 的消息，表: {}, SQL: {}", conversationId, tableName, sql);
         
-        return jdbcTemplate.query(sql, MESSAGE_ROW_MAPPER, conversationId, limit, offset);
+        return dataSources.jdbc(node).query(sql, MESSAGE_ROW_MAPPER, conversationId, limit, offset);
     }
     
     /**
@@ -97,13 +69,14 @@ public class CustomMessageRepository {
      * @return 最新消息
      */
     public Optional<Message> findLatestMessageByConversationId(Long conversationId) {
-        String tableName = shardingStrategy.getTableName(conversationId);
+        ShardNode node = shardRouter.route(conversationId).getReadNode();
+        String tableName = node.getTableName();
         String sql = String.format(
-            "SELECT * FROM %s WHERE conversation_id = ? ORDER BY seq DESC LIMIT 1",
+            "SELECT " + SELECT_COLUMNS + " FROM %s WHERE conversation_id = ? ORDER BY seq DESC LIMIT 1",
             tableName
         );
         
-        List<Message> messages = jdbcTemplate.query(sql, MESSAGE_ROW_MAPPER, conversationId);
+        List<Message> messages = dataSources.jdbc(node).query(sql, MESSAGE_ROW_MAPPER, conversationId);
         
         if (messages.isEmpty()) {
             return Optional.empty();
@@ -125,9 +98,10 @@ public class CustomMessageRepository {
                                                         LocalDateTime startTime, 
                                                         LocalDateTime endTime, 
                                                         int limit) {
-        String tableName = shardingStrategy.getTableName(conversationId);
+        ShardNode node = shardRouter.route(conversationId).getReadNode();
+        String tableName = node.getTableName();
         String sql = String.format(
-            "SELECT * FROM %s WHERE conversation_id = ? AND created_at BETWEEN ? AND ? " +
+            "SELECT " + SELECT_COLUMNS + " FROM %s WHERE conversation_id = ? AND created_at BETWEEN ? AND ? " +
             "AND status = 1 ORDER BY seq DESC LIMIT ?",
             tableName
         );
@@ -135,7 +109,7 @@ public class CustomMessageRepository {
         log.debug("查询会话 {} 在时间范围 {} - {} 的消息，表: {}", 
                  conversationId, startTime, endTime, tableName);
         
-        return jdbcTemplate.query(sql, MESSAGE_ROW_MAPPER, 
+        return dataSources.jdbc(node).query(sql, MESSAGE_ROW_MAPPER, 
                                 conversationId, startTime, endTime, limit);
     }
     
@@ -148,32 +122,57 @@ public class CustomMessageRepository {
      * @return 消息列表
      */
     public List<Message> findBySenderId(Long senderId, Long conversationId, int limit) {
-        String sql;
-        Object[] params;
-        
-        if (conversationId != null) {
-            String tableName = shardingStrategy.getTableName(conversationId);
-            sql = String.format(
-                "SELECT * FROM %s WHERE sender_id = ? AND conversation_id = ? " +
-                "AND status = 1 ORDER BY seq DESC LIMIT ?",
-                tableName
-            );
-            params = new Object[]{senderId, conversationId, limit};
-        } else {
-            // 跨表查询，需要查询所有分表
-            // 这里简化处理，只查询第一个表作为示例
-            String tableName = shardingStrategy.getTableName(0L);
-            sql = String.format(
-                "SELECT * FROM %s WHERE sender_id = ? AND status = 1 " +
-                "ORDER BY seq DESC LIMIT ?",
-                tableName
-            );
-            params = new Object[]{senderId, limit};
+        if (conversationId == null) {
+            // 未指定会话时消息分布在所有分表，并行查询各分表后按服务端时间归并
+            log.debug("跨分表查询发送者 {} 的消息, limit={}", senderId, limit);
+            return scatterGatherExecutor.query("sender_id = ? AND status = 1", new Object[]{senderId},
+                    ShardScatterGatherExecutor.MergeOrder.SERVER_TIME_DESC, limit);
         }
+
+        ShardNode node = shardRouter.route(conversationId).getReadNode();
+        String tableName = node.getTableName();
+        String sql = String.format(
+            "SELECT " + SELECT_COLUMNS + " FROM %s WHERE sender_id = ? AND conversation_id = ? " +
+            "AND status = 1 ORDER BY seq DESC LIMIT ?",
+            tableName
+        );
         
         log.debug("查询发送者 {} 的消息，SQL: {}", senderId, sql);
         
-        return jdbcTemplate.query(sql, MESSAGE_ROW_MAPPER, params);
+        return dataSources.jdbc(node).query(sql, MESSAGE_ROW_MAPPER, senderId, conversationId, limit);
+    }
+
+    /**
+     * 跨分表按时间范围查找消息 - 读操作，使用从库
+     * 用于管理后台与搜索等不限定会话的场景，结果按服务端时间倒序
+     * 
+     * @param startTime 开始时间（含）
+     * @param endTime 结束时间（不含）
+     * @param limit 限制数量
+     * @return 消息列表
+     */
+    public List<Message> findByTimeRange(LocalDateTime startTime, LocalDateTime endTime, int limit) {
+        log.debug("跨分表按时间范围查询消息: {} ~ {}, limit={}", startTime, endTime, limit);
+        return scatterGatherExecutor.query("server_timestamp >= ? AND server_timestamp < ? AND status = 1",
+                new Object[]{startTime, endTime}, ShardScatterGatherExecutor.MergeOrder.SERVER_TIME_DESC, limit);
+    }
+
+    /**
+     * 跨分表按发送者和时间范围查找消息 - 读操作，使用从库
+     * 
+     * @param senderId 发送者ID
+     * @param startTime 开始时间（含）
+     * @param endTime 结束时间（不含）
+     * @param limit 限制数量
+     * @return 消息列表，按服务端时间倒序
+     */
+    public List<Message> findBySenderIdAndTimeRange(Long senderId, LocalDateTime startTime,
+                                                    LocalDateTime endTime, int limit) {
+        log.debug("跨分表查询发送者 {} 在 {} ~ {} 的消息, limit={}", senderId, startTime, endTime, limit);
+        return scatterGatherExecutor.query(
+                "sender_id = ? AND server_timestamp >= ? AND server_timestamp < ? AND status = 1",
+                new Object[]{senderId, startTime, endTime},
+                ShardScatterGatherExecutor.MergeOrder.SERVER_TIME_DESC, limit);
     }
     
     /**
@@ -185,20 +184,22 @@ public class CustomMessageRepository {
      * @return 消息列表
      */
     public List<Message> findByMessageType(Long conversationId, int msgType, int limit) {
-        String tableName = shardingStrategy.getTableName(conversationId);
+        ShardNode node = shardRouter.route(conversationId).getReadNode();
+        String tableName = node.getTableName();
         String sql = String.format(
-            "SELECT * FROM %s WHERE conversation_id = ? AND msg_type = ? " +
+            "SELECT " + SELECT_COLUMNS + " FROM %s WHERE conversation_id = ? AND msg_type = ? " +
             "AND status = 1 ORDER BY seq DESC LIMIT ?",
             tableName
         );
         
         log.debug("查询会话 {} 中类型为 {} 的消息，表: {}", conversationId, msgType, tableName);
         
-        return jdbcTemplate.query(sql, MESSAGE_ROW_MAPPER, conversationId, msgType, limit);
+        return dataSources.jdbc(node).query(sql, MESSAGE_ROW_MAPPER, conversationId, msgType, limit);
     }
     
     /**
      * 搜索消息内容 - 读操作，使用从库
+     * LIKE查询需要扫描会话全部消息，在线搜索应使用MessageSearchService的内存索引
      * 
      * @param conversationId 会话ID
      * @param keyword 搜索关键词
@@ -206,9 +207,10 @@ public class CustomMessageRepository {
      * @return 消息列表
      */
     public List<Message> searchByContent(Long conversationId, String keyword, int limit) {
-        String tableName = shardingStrategy.getTableName(conversationId);
+        ShardNode node = shardRouter.route(conversationId).getReadNode();
+        String tableName = node.getTableName();
         String sql = String.format(
-            "SELECT * FROM %s WHERE conversation_id = ? AND content LIKE ? " +
+            "SELECT " + SELECT_COLUMNS + " FROM %s WHERE conversation_id = ? AND content LIKE ? " +
             "AND status = 1 ORDER BY seq DESC LIMIT ?",
             tableName
         );
@@ -216,7 +218,7 @@ public class CustomMessageRepository {
         String searchPattern = "%" + keyword + "%";
         log.debug("在会话 {} 中搜索关键词 '{}'，表: {}", conversationId, keyword, tableName);
         
-        return jdbcTemplate.query(sql, MESSAGE_ROW_MAPPER, conversationId, searchPattern, limit);
+        return dataSources.jdbc(node).query(sql, MESSAGE_ROW_MAPPER, conversationId, searchPattern, limit);
     }
     
     /**
@@ -228,9 +230,10 @@ public class CustomMessageRepository {
      * @return 消息列表
      */
     public List<Message> findMentionedMessages(Long conversationId, Long userId, int limit) {
-        String tableName = shardingStrategy.getTableName(conversationId);
+        ShardNode node = shardRouter.route(conversationId).getReadNode();
+        String tableName = node.getTableName();
         String sql = String.format(
-            "SELECT * FROM %s WHERE conversation_id = ? AND mentions LIKE ? " +
+            "SELECT " + SELECT_COLUMNS + " FROM %s WHERE conversation_id = ? AND mentions LIKE ? " +
             "AND status = 1 ORDER BY seq DESC LIMIT ?",
             tableName
         );
@@ -238,7 +241,7 @@ public class CustomMessageRepository {
         String mentionPattern = "%" + userId + "%";
         log.debug("查询会话 {} 中用户 {} 被提及的消息，表: {}", conversationId, userId, tableName);
         
-        return jdbcTemplate.query(sql, MESSAGE_ROW_MAPPER, conversationId, mentionPattern, limit);
+        return dataSources.jdbc(node).query(sql, MESSAGE_ROW_MAPPER, conversationId, mentionPattern, limit);
     }
     
     /**
@@ -250,16 +253,17 @@ public class CustomMessageRepository {
      * @return 消息列表
      */
     public List<Message> findReplyMessages(Long conversationId, Long replyToId, int limit) {
-        String tableName = shardingStrategy.getTableName(conversationId);
+        ShardNode node = shardRouter.route(conversationId).getReadNode();
+        String tableName = node.getTableName();
         String sql = String.format(
-            "SELECT * FROM %s WHERE conversation_id = ? AND reply_to_id = ? " +
+            "SELECT " + SELECT_COLUMNS + " FROM %s WHERE conversation_id = ? AND reply_to_id = ? " +
             "AND status = 1 ORDER BY seq ASC LIMIT ?",
             tableName
         );
         
         log.debug("查询会话 {} 中回复消息 {} 的消息，表: {}", conversationId, replyToId, tableName);
         
-        return jdbcTemplate.query(sql, MESSAGE_ROW_MAPPER, conversationId, replyToId, limit);
+        return dataSources.jdbc(node).query(sql, MESSAGE_ROW_MAPPER, conversationId, replyToId, limit);
     }
     
     /**
@@ -270,13 +274,14 @@ public class CustomMessageRepository {
      * @return 消息数量
      */
     public long countByMessageType(Long conversationId, int msgType) {
-        String tableName = shardingStrategy.getTableName(conversationId);
+        ShardNode node = shardRouter.route(conversationId).getReadNode();
+        String tableName = node.getTableName();
         String sql = String.format(
             "SELECT COUNT(*) FROM %s WHERE conversation_id = ? AND msg_type = ? AND status = 1",
             tableName
         );
         
-        Long count = jdbcTemplate.queryForObject(sql, Long.class, conversationId, msgType);
+        Long count = dataSources.jdbc(node).queryForObject(sql, Long.class, conversationId, msgType);
         return count != null ? count : 0L;
     }
     
@@ -289,14 +294,15 @@ public class CustomMessageRepository {
      * @return 消息数量
      */
     public long getActivityCount(Long conversationId, LocalDateTime startTime, LocalDateTime endTime) {
-        String tableName = shardingStrategy.getTableName(conversationId);
+        ShardNode node = shardRouter.route(conversationId).getReadNode();
+        String tableName = node.getTableName();
         String sql = String.format(
             "SELECT COUNT(*) FROM %s WHERE conversation_id = ? " +
             "AND created_at BETWEEN ? AND ? AND status = 1",
             tableName
         );
         
-        Long count = jdbcTemplate.queryForObject(sql, Long.class, conversationId, startTime, endTime);
+        Long count = dataSources.jdbc(node).queryForObject(sql, Long.class, conversationId, startTime, endTime);
         return count != null ? count : 0L;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,408 @@
+package com.acme.im.communication.repository;
+
+import com.acme.im.common.infrastructure.database.sharding.ShardNode;
+import com.acme.im.common.infrastructure.database.sharding.ShardRouter;
+import com.acme.im.communication.config.MessageGroupCommitConfig;
+import com.acme.im.communication.entity.Message;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 消息组提交写入器
+ * 将并发的消息写入按分表合并为多行INSERT，在一个事务内提交
+ *
+ * 特性：
+ * 1. 分表队列 - 每个主写节点（数据源 + messages_XX分表）独立排队，互不阻塞
+ * 2. 双触发 - 攒够maxBatchSize行立即刷写，否则最多等待maxWaitMs
+ * 3. 语义不变 - 调用方同步拿到带自增ID的消息
+ * 4. 故障隔离 - 批量写入失败时退化为逐条写入，只有出错的消息失败
+ * 5. 超时处理 - 仍在排队的消息撤销后不再写入；已在写入的消息等待结果，
+ *    最终按 (conversation_id, client_msg_id) 回查主写节点确认是否已落库
+ * 6. 监控统计 - 批量大小与刷写耗时
+ *
+ * 注意：组提交使用独立事务，消息插入不再随调用方事务回滚；
+ * 调用方不应在事务中调用，否则等待期间占用的连接会与刷写线程争抢连接池
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MessageGroupCommitWriter {
+
+    private final MessageRepository messageRepository;
+    private final ShardRouter shardRouter;
+    private final MessageGroupCommitConfig config;
+
+    // 分表队列，按主写节点懒创建
+    private final Map<ShardNode, ShardQueue> shardQueues = new ConcurrentHashMap<>();
+
+    // 刷写线程池
+    private ScheduledExecutorService flushExecutor;
+
+    private volatile boolean shutdown = false;
+
+    private static final int QUEUED = 0;
+    private static final int WRITING = 1;
+    private static final int CANCELLED = 2;
+
+    /**
+     * 待写入消息
+     */
+    private static class PendingWrite {
+        private final Message message;
+        private final CompletableFuture<Message> future = new CompletableFuture<>();
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        PendingWrite(Message message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * 分表写入队列
+     */
+    private static class ShardQueue {
+        private final ShardNode node;
+        private final String tableName;
+        private final BlockingQueue<PendingWrite> queue;
+        private final ReentrantLock flushLock = new ReentrantLock();
+        private final AtomicBoolean timerArmed = new AtomicBoolean(false);
+
+        // 统计信息
+        private final AtomicLong batches = new AtomicLong(0);
+        private final AtomicLong rows = new AtomicLong(0);
+        private final AtomicLong maxBatchSize = new AtomicLong(0);
+        private final AtomicLong totalFlushNanos = new AtomicLong(0);
+        private final AtomicLong maxFlushNanos = new AtomicLong(0);
+        private final AtomicLong fallbacks = new AtomicLong(0);
+        private final AtomicLong timeouts = new AtomicLong(0);
+
+        ShardQueue(ShardNode node, int capacity) {
+            this.node = node;
+            this.tableName = node.toString();
+            this.queue = new LinkedBlockingQueue<>(capacity);
+        }
+
+        void recordFlush(int batchSize, long elapsedNanos) {
+            batches.incrementAndGet();
+            rows.addAndGet(batchSize);
+            totalFlushNanos.addAndGet(elapsedNanos);
+            maxBatchSize.accumulateAndGet(batchSize, Math::max);
+            maxFlushNanos.accumulateAndGet(elapsedNanos, Math::max);
+        }
+    }
+
+    /**
+     * 分表写入统计
+     */
+    public static class ShardStats {
+        private final String tableName;
+        private final long batches;
+        private final long rows;
+        private final long maxBatchSize;
+        private final double avgBatchSize;
+        private final double avgFlushMillis;
+        private final double maxFlushMillis;
+        private final long fallbacks;
+        private final long timeouts;
+        private final int queueSize;
+
+        ShardStats(ShardQueue shard) {
+            this.tableName = shard.tableName;
+            this.batches = shard.batches.get();
+            this.rows = shard.rows.get();
+            this.maxBatchSize = shard.maxBatchSize.get();
+            this.avgBatchSize = batches > 0 ? (double) rows / batches : 0.0;
+            this.avgFlushMillis = batches > 0 ? shard.totalFlushNanos.get() / 1_000_000.0 / batches : 0.0;
+            this.maxFlushMillis = shard.maxFlushNanos.get() / 1_000_000.0;
+            this.fallbacks = shard.fallbacks.get();
+            this.timeouts = shard.timeouts.get();
+            this.queueSize = shard.queue.size();
+        }
+
+        public String getTableName() { return tableName; }
+        public long getBatches() { return batches; }
+        public long getRows() { return rows; }
+        public long getMaxBatchSize() { return maxBatchSize; }
+        public double getAvgBatchSize() { return avgBatchSize; }
+        public double getAvgFlushMillis() { return avgFlushMillis; }
+        public double getMaxFlushMillis() { return maxFlushMillis; }
+        public long getFallbacks() { return fallbacks; }
+        public long getTimeouts() { return timeouts; }
+        public int getQueueSize() { return queueSize; }
+
+        @Override
+        public String toString() {
+            return String.format("ShardStats{table=%s, batches=%d, rows=%d, avgBatch=%.1f, maxBatch=%d, avgFlush=%.2fms, maxFlush=%.2fms, fallbacks=%d, timeouts=%d, queue=%d}",
+                    tableName, batches, rows, avgBatchSize, maxBatchSize, avgFlushMillis, maxFlushMillis, fallbacks, timeouts, queueSize);
+        }
+    }
+
+    /**
+     * 初始化分表队列和刷写线程池
+     */
+    @PostConstruct
+    public void initialize() {
+        flushExecutor = Executors.newScheduledThreadPool(Math.max(1, config.getFlushThreads()), new ThreadFactory() {
+            private final AtomicLong counter = new AtomicLong(0);
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "message-group-commit-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        log.info("消息组提交写入器初始化完成: enabled={}, maxBatchSize={}, maxWaitMs={}",
+                config.isEnabled(), config.getMaxBatchSize(), config.getMaxWaitMs());
+    }
+
+    /**
+     * 保存消息
+     * 启用组提交时与同一分表的并发写入合并提交，阻塞直到所在批次提交完成
+     *
+     * @param message 消息对象
+     * @return 保存后的消息（包含生成的ID）
+     */
+    public Message save(Message message) {
+        if (!config.isEnabled() || shutdown) {
+            return messageRepository.save(message);
+        }
+
+        ShardNode node = shardRouter.route(message.getConversationId()).getWriteNode();
+        ShardQueue shard = shardQueues.computeIfAbsent(node, n -> new ShardQueue(n, config.getQueueCapacity()));
+        PendingWrite pending = new PendingWrite(message);
+
+        if (!shard.queue.offer(pending)) {
+            // 队列已满，退化为逐条写入
+            log.warn("组提交队列已满，逐条写入: table={}, queueSize={}", shard.tableName, shard.queue.size());
+            return messageRepository.save(message);
+        }
+
+        if (shard.queue.size() >= config.getMaxBatchSize()) {
+            flushExecutor.execute(() -> flush(shard));
+        } else if (shard.timerArmed.compareAndSet(false, true)) {
+            scheduleTimer(shard);
+        }
+
+        try {
+            return await(pending);
+        } catch (TimeoutException e) {
+            shard.timeouts.incrementAndGet();
+            return resolveTimeout(shard, pending, e);
+        }
+    }
+
+    /**
+     * 获取各分表写入统计
+     *
+     * @return 分表名 -> 统计信息
+     */
+    public Map<String, ShardStats> getStats() {
+        Map<String, ShardStats> stats = new LinkedHashMap<>();
+        for (ShardQueue shard : shardQueues.values()) {
+            stats.put(shard.tableName, new ShardStats(shard));
+        }
+        return stats;
+    }
+
+    /**
+     * 优雅关闭：刷写所有剩余消息
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+
+        log.info("正在关闭消息组提交写入器...");
+        for (ShardQueue shard : shardQueues.values()) {
+            flush(shard);
+        }
+
+        flushExecutor.shutdown();
+        try {
+            if (!flushExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                flushExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            flushExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        log.info("消息组提交写入器已关闭");
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    private Message await(PendingWrite pending) throws TimeoutException {
+        try {
+            return pending.future.get(config.getWriteTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("保存消息失败", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("保存消息被中断", e);
+        }
+    }
+
+    /**
+     * 等待超时：仍在排队则撤销，保证超时返回后不会再落库；
+     * 已进入写入则再等待一个超时周期，仍无结果时按客户端消息ID回查
+     */
+    private Message resolveTimeout(ShardQueue shard, PendingWrite pending, TimeoutException timeout) {
+        if (pending.state.compareAndSet(QUEUED, CANCELLED)) {
+            throw new RuntimeException("保存消息超时，消息未写入: table=" + shard.tableName, timeout);
+        }
+        try {
+            return await(pending);
+        } catch (TimeoutException e) {
+            Message message = pending.message;
+            if (message.getClientMsgId() != null) {
+                Message written = messageRepository.findWrittenByClientMsgId(
+                        message.getConversationId(), message.getClientMsgId()).orElse(null);
+                if (written != null) {
+                    log.warn("组提交写入超时，回查确认已落库: table={}, conversationId={}, clientMsgId={}",
+                            shard.tableName, message.getConversationId(), message.getClientMsgId());
+                    return written;
+                }
+            }
+            throw new RuntimeException("保存消息超时: table=" + shard.tableName, e);
+        }
+    }
+
+    /**
+     * 启动等待计时器，到期刷写未满的批次
+     */
+    private void scheduleTimer(ShardQueue shard) {
+        try {
+            flushExecutor.schedule(() -> {
+                shard.timerArmed.set(false);
+                flush(shard);
+            }, config.getMaxWaitMs(), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // 线程池已关闭
+            shard.timerArmed.set(false);
+            flush(shard);
+        }
+    }
+
+    /**
+     * 刷写分表队列
+     * 同一分表同时只有一个线程刷写，持锁期间持续排空队列
+     */
+    private void flush(ShardQueue shard) {
+        if (!shard.flushLock.tryLock()) {
+            return;
+        }
+        try {
+            List<PendingWrite> batch = new ArrayList<>(config.getMaxBatchSize());
+            while (shard.queue.drainTo(batch, config.getMaxBatchSize()) > 0) {
+                writeBatch(shard, batch);
+                batch.clear();
+            }
+        } finally {
+            shard.flushLock.unlock();
+        }
+
+        // 释放锁后到达的消息由计时器兜底
+        if (!shard.queue.isEmpty() && shard.timerArmed.compareAndSet(false, true)) {
+            scheduleTimer(shard);
+        }
+    }
+
+    /**
+     * 写入一个批次并通知调用方
+     */
+    private void writeBatch(ShardQueue shard, List<PendingWrite> batch) {
+        long start = System.nanoTime();
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingWrite pending : batch) {
+            messages.add(pending.message);
+        }
+
+        // 跳过等待超时已撤销的消息
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            if (!batch.get(i).state.compareAndSet(QUEUED, WRITING)) {
+                batch.remove(i);
+                messages.remove(i);
+            }
+        }
+
+        // 排队期间分片迁移完成的消息改为按最新路由逐条写入
+        rerouteMoved(shard, batch, messages);
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            messageRepository.saveBatch(shard.node, messages);
+            shard.recordFlush(batch.size(), System.nanoTime() - start);
+            for (PendingWrite pending : batch) {
+                pending.future.complete(pending.message);
+            }
+        } catch (Exception e) {
+            // 批量失败（如某条消息违反唯一约束），逐条重试以隔离失败的消息
+            log.warn("批量写入失败，逐条重试: table={}, size={}, error={}",
+                    shard.tableName, batch.size(), e.getMessage());
+            shard.fallbacks.incrementAndGet();
+            for (PendingWrite pending : batch) {
+                try {
+                    pending.message.setId(null);
+                    pending.future.complete(messageRepository.save(pending.message));
+                } catch (Exception rowError) {
+                    pending.future.completeExceptionally(rowError);
+                }
+            }
+        }
+    }
+
+    /**
+     * 移出主写节点已变化的消息并逐条写入
+     */
+    private void rerouteMoved(ShardQueue shard, List<PendingWrite> batch, List<Message> messages) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            PendingWrite pending = batch.get(i);
+            if (shardRouter.route(pending.message.getConversationId()).getWriteNode().equals(shard.node)) {
+                continue;
+            }
+            batch.remove(i);
+            messages.remove(i);
+            try {
+                pending.future.complete(messageRepository.save(pending.message));
+            } catch (Exception e) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -1,35 +1,60 @@
 package com.acme.im.communication.repository;
 
-import com.acme.im.communication.config.MessageShardingStrategy;
 import com.acme.im.communication.entity.Message;
 import com.acme.im.common.infrastructure.database.annotation.DataSource;
+import com.acme.im.common.infrastructure.database.sharding.MigrationPhase;
+import com.acme.im.common.infrastructure.database.sharding.ShardNode;
+import com.acme.im.common.infrastructure.database.sharding.ShardRoute;
+import com.acme.im.common.infrastructure.database.sharding.ShardRouter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
-import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
 
 /**
  * 消息Repository
  * 支持分表的消息CRUD操作
  * 
- * 分表策略：按会话ID取模分表
- * 表名：messages_00 ~ messages_31
+ * 分表策略：经分片路由器定位，初始布局为按会话ID取模分表
+ * 表名：messages_00 ~ messages_31（扩容后可分布到多个数据源）
  * 
  * 数据源策略：
  * - 读操作：使用从库(SECONDARY) - 查询消息、获取历史记录等
  * - 写操作：使用主库(PRIMARY) - 保存、更新、删除消息等
  * 
+ * 读路径统一使用MessageRowMapper按下标映射，查询语句按分表预先生成并使用显式列清单
+ * 
+ * 在线迁移：读操作走路由的读节点；写操作先写主写节点，迁移中的分片槽再同步写影子节点。
+ * 影子写失败只记录不影响业务，由迁移的校验阶段修复
+ * 
  * @author IM开发团队
  * @since 1.0.0
  */
@@ -38,9 +63,53 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class MessageRepository {
 
-    private final JdbcTemplate jdbcTemplate;
-    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
-    private final MessageShardingStrategy shardingStrategy;
+    private final ShardRouter shardRouter;
+    private final ShardDataSourceRegistry dataSources;
+
+    // 按表名缓存的预生成查询语句
+    private final Map<String, ShardQueries> shardQueries = new ConcurrentHashMap<>();
+
+    // 影子写失败次数
+    private final AtomicLong shadowWriteFailures = new AtomicLong(0);
+
+    // 影子节点主键冲突次数
+    private final AtomicLong shadowCollisions = new AtomicLong(0);
+
+    /**
+     * 单个分表的预生成查询，[0]不含content_extra，[1]含content_extra
+     */
+    private static class ShardQueries {
+        private final String findById;
+        private final String findByClientMsgId;
+        private final String findPinned;
+        private final String[] findLatest = new String[2];
+        private final String[] findHistory = new String[2];
+
+        ShardQueries(String tableName) {
+            String full = MessageRowMapper.columns(true);
+            this.findById = "SELECT " + full + " FROM " + tableName
+                    + " WHERE id = ? AND conversation_id = ?";
+            this.findByClientMsgId = "SELECT " + full + " FROM " + tableName
+                    + " WHERE conversation_id = ? AND client_msg_id = ?";
+            this.findPinned = "SELECT " + full + " FROM " + tableName
+                    + " WHERE conversation_id = ? AND is_pinned = 1 AND status = 1 ORDER BY seq DESC";
+            for (int variant = 0; variant < 2; variant++) {
+                String columns = MessageRowMapper.columns(variant == 1);
+                findLatest[variant] = "SELECT " + columns + " FROM " + tableName
+                        + " WHERE conversation_id = ? AND status = 1 ORDER BY seq DESC LIMIT ?";
+                findHistory[variant] = "SELECT " + columns + " FROM " + tableName
+                        + " WHERE conversation_id = ? AND seq < ? AND status = 1 ORDER BY seq DESC LIMIT ?";
+            }
+        }
+    }
+
+    private ShardQueries queries(ShardNode node) {
+        return shardQueries.computeIfAbsent(node.getTableName(), ShardQueries::new);
+    }
+
+    private ShardNode readNode(Long conversationId) {
+        return shardRouter.route(conversationId).getReadNode();
+    }
     
     /**
      * 保存消息 - 写操作，使用主库
@@ -50,7 +119,9 @@ public class MessageRepository {
      */
     @DataSource(type = DataSource.DataSourceType.PRIMARY)
     public Message save(Message message) {
-        String tableName = shardingStrategy.getTableName(message.getConversationId());
+        ShardRoute route = shardRouter.route(message.getConversationId());
+        ShardNode node = route.getWriteNode();
+        String tableName = node.getTableName();
         
         String sql = String.format("""
             INSERT INTO %s (
@@ -66,46 +137,94 @@ public class MessageRepository {
             )
             """, tableName);
 
-        // 设置默认值
-        if (message.getServerTimestamp() == null) {
-            message.setServerTimestamp(LocalDateTime.now());
-        }
-        if (message.getCreatedAt() == null) {
-            message.setCreatedAt(LocalDateTime.now());
-        }
-        if (message.getUpdatedAt() == null) {
-            message.setUpdatedAt(LocalDateTime.now());
-        }
-        if (message.getStatus() == null) {
-            message.setStatus(1); // 默认正常状态
-        }
-        if (message.getIsPinned() == null) {
-            message.setIsPinned(0);
-        }
-        if (message.getIsEdited() == null) {
-            message.setIsEdited(0);
-        }
-        if (message.getIsRecalled() == null) {
-            message.setIsRecalled(0);
-        }
-        if (message.getEditCount() == null) {
-            message.setEditCount(0);
-        }
+        applyInsertDefaults(message);
 
         KeyHolder keyHolder = new GeneratedKeyHolder();
-        namedParameterJdbcTemplate.update(sql, new BeanPropertySqlParameterSource(message), keyHolder);
+        dataSources.named(node).update(sql, new BeanPropertySqlParameterSource(message), keyHolder);
         
         // 设置生成的ID
         Number generatedKey = keyHolder.getKey();
         if (generatedKey != null) {
             message.setId(generatedKey.longValue());
         }
+
+        if (route.isDualWrite()) {
+            shadowInsert(route.getShadowNode(), List.of(message));
+        }
         
         log.debug("保存消息成功: table={}, messageId={}, conversationId={}", 
                  tableName, message.getId(), message.getConversationId());
         
         return message;
     }
+
+    /**
+     * 批量保存同一分表的消息 - 写操作，使用主库
+     * 使用一条多行INSERT在一个事务内提交，并按插入顺序回填生成的ID
+     * 
+     * @param node 主写节点
+     * @param messages 消息列表（主写节点必须都是node）
+     * @return 保存后的消息列表
+     */
+    @Transactional
+    @DataSource(type = DataSource.DataSourceType.PRIMARY)
+    public List<Message> saveBatch(ShardNode node, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return messages;
+        }
+        String tableName = node.getTableName();
+        
+        StringBuilder sql = new StringBuilder(String.format(
+            "INSERT INTO %s (" + INSERT_COLUMNS + ") VALUES", tableName));
+        for (int i = 0; i < messages.size(); i++) {
+            sql.append(i == 0 ? " " : ", ").append(INSERT_VALUES_GROUP);
+        }
+        
+        for (Message message : messages) {
+            applyInsertDefaults(message);
+        }
+
+        List<Long> generatedIds = dataSources.jdbc(node).execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql.toString(), Statement.RETURN_GENERATED_KEYS)) {
+                int index = 1;
+                for (Message message : messages) {
+                    index = bindInsertValues(ps, index, message);
+                }
+                ps.executeUpdate();
+                
+                List<Long> ids = new ArrayList<>(messages.size());
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        ids.add(keys.getLong(1));
+                    }
+                }
+                return ids;
+            }
+        });
+
+        if (generatedIds != null && generatedIds.size() == messages.size()) {
+            for (int i = 0; i < messages.size(); i++) {
+                messages.get(i).setId(generatedIds.get(i));
+            }
+        } else {
+            // 驱动未按行返回自增ID时，通过唯一键(conversation_id, seq)回查
+            resolveIdsBySeq(node, messages);
+        }
+
+        // 迁移中的分片槽按影子节点分组补写
+        Map<ShardNode, List<Message>> shadowWrites = new LinkedHashMap<>();
+        for (Message message : messages) {
+            ShardRoute route = shardRouter.route(message.getConversationId());
+            if (route.isDualWrite()) {
+                shadowWrites.computeIfAbsent(route.getShadowNode(), k -> new ArrayList<>()).add(message);
+            }
+        }
+        shadowWrites.forEach(this::shadowInsert);
+        
+        log.debug("批量保存消息成功: table={}, count={}", tableName, messages.size());
+        
+        return messages;
+    }
     
     /**
      * 根据ID查找消息 - 读操作，使用从库
@@ -116,22 +235,59 @@ public class MessageRepository {
      */
     @DataSource(type = DataSource.DataSourceType.SECONDARY)
     public Optional<Message> findById(Long conversationId, Long messageId) {
-        String tableName = shardingStrategy.getTableName(conversationId);
-        
-        String sql = String.format("""
-            SELECT * FROM %s 
-            WHERE id = ? AND conversation_id = ?
-            """, tableName);
-        
         try {
-            Message message = jdbcTemplate.queryForObject(sql, 
-                new BeanPropertyRowMapper<>(Message.class), messageId, conversationId);
+            ShardNode node = readNode(conversationId);
+            Message message = dataSources.jdbc(node).queryForObject(queries(node).findById,
+                MessageRowMapper.FULL, messageId, conversationId);
             return Optional.ofNullable(message);
         } catch (EmptyResultDataAccessException e) {
             return Optional.empty();
         }
     }
     
+    /**
+     * 跨会话批量查找消息 - 读操作，使用从库
+     * 按读节点分组，每个分表只执行一次IN查询（超过单批上限时分批）
+     * 
+     * 各分表的自增ID相互独立，不同分表可能存在相同的ID，结果按(会话ID, 消息ID)区分
+     * 
+     * @param messageIdsByConversation 会话ID到消息ID的映射
+     * @return 消息键到消息的映射，不存在的消息不包含在结果中
+     */
+    @DataSource(type = DataSource.DataSourceType.SECONDARY)
+    public Map<MessageKey, Message> findByIds(Map<Long, ? extends Collection<Long>> messageIdsByConversation) {
+        Map<ShardNode, List<MessageKey>> keysByNode = new LinkedHashMap<>();
+        messageIdsByConversation.forEach((conversationId, ids) -> {
+            List<MessageKey> keys = keysByNode.computeIfAbsent(readNode(conversationId), k -> new ArrayList<>());
+            for (Long id : ids) {
+                keys.add(new MessageKey(conversationId, id));
+            }
+        });
+
+        Map<MessageKey, Message> messages = new HashMap<>();
+        keysByNode.forEach((node, keys) -> findByKeys(node, keys, messages));
+        return messages;
+    }
+
+    /**
+     * 在主写节点上批量查找消息 - 用于读取刚提交、从库可能尚未同步的消息
+     * 
+     * @param keys 消息键
+     * @return 消息键到消息的映射，不存在的消息不包含在结果中
+     */
+    @DataSource(type = DataSource.DataSourceType.PRIMARY)
+    public Map<MessageKey, Message> findWrittenByIds(Collection<MessageKey> keys) {
+        Map<ShardNode, List<MessageKey>> keysByNode = new LinkedHashMap<>();
+        for (MessageKey key : keys) {
+            keysByNode.computeIfAbsent(shardRouter.route(key.getConversationId()).getWriteNode(),
+                    k -> new ArrayList<>()).add(key);
+        }
+
+        Map<MessageKey, Message> messages = new HashMap<>();
+        keysByNode.forEach((node, nodeKeys) -> findByKeys(node, nodeKeys, messages));
+        return messages;
+    }
+
     /**
      * 查询会话的最新消息 - 读操作，使用从库
      * 
@@ -141,17 +297,36 @@ public class MessageRepository {
      */
     @DataSource(type = DataSource.DataSourceType.SECONDARY)
     public List<Message> findLatestByConversationId(Long conversationId, int limit) {
-        String tableName = shardingStrategy.getTableName(conversationId);
-        
-        String sql = String.format("""
-            SELECT * FROM %s 
-            WHERE conversation_id = ? AND status = 1
-            ORDER BY seq DESC 
-            LIMIT ?
-            """, tableName);
-        
-        return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(Message.class), 
-                                conversationId, limit);
+        return findLatestByConversationId(conversationId, limit, true);
+    }
+
+    /**
+     * 查询会话的最新消息，可不查询content_extra - 读操作，使用从库
+     * 
+     * @param conversationId 会话ID
+     * @param limit 限制数量
+     * @param includeContentExtra 是否查询content_extra
+     * @return 消息列表
+     */
+    @DataSource(type = DataSource.DataSourceType.SECONDARY)
+    public List<Message> findLatestByConversationId(Long conversationId, int limit, boolean includeContentExtra) {
+        int variant = includeContentExtra ? 1 : 0;
+        ShardNode node = readNode(conversationId);
+        return dataSources.jdbc(node).query(queries(node).findLatest[variant],
+                MessageRowMapper.of(includeContentExtra), conversationId, limit);
+    }
+
+    /**
+     * 在主写节点上查询会话的最新消息 - 用于构建需要包含全部已提交消息的快照，不受从库延迟影响
+     * 
+     * @param conversationId 会话ID
+     * @param limit 限制数量
+     * @return 消息列表
+     */
+    @DataSource(type = DataSource.DataSourceType.PRIMARY)
+    public List<Message> findWrittenLatestByConversationId(Long conversationId, int limit) {
+        ShardNode node = shardRouter.route(conversationId).getWriteNode();
+        return dataSources.jdbc(node).query(queries(node).findLatest[1], MessageRowMapper.FULL, conversationId, limit);
     }
     
     /**
@@ -164,30 +339,28 @@ public class MessageRepository {
      */
     @DataSource(type = DataSource.DataSourceType.SECONDARY)
     public List<Message> findHistoryByConversationId(Long conversationId, Long beforeSeq, int limit) {
-        String tableName = shardingStrategy.getTableName(conversationId);
-        
-        String sql;
-        Object[] params;
-        
-        if (beforeSeq != null) {
-            sql = String.format("""
-                SELECT * FROM %s 
-                WHERE conversation_id = ? AND seq < ? AND status = 1
-                ORDER BY seq DESC 
-                LIMIT ?
-                """, tableName);
-            params = new Object[]{conversationId, beforeSeq, limit};
-        } else {
-            sql = String.format("""
-                SELECT * FROM %s 
-                WHERE conversation_id = ? AND status = 1
-                ORDER BY seq DESC 
-                LIMIT ?
-                """, tableName);
-            params = new Object[]{conversationId, limit};
+        return findHistoryByConversationId(conversationId, beforeSeq, limit, true);
+    }
+
+    /**
+     * 分页查询会话消息历史，可不查询content_extra - 读操作，使用从库
+     * 
+     * @param conversationId 会话ID
+     * @param beforeSeq 在此序号之前的消息（用于分页）
+     * @param limit 限制数量
+     * @param includeContentExtra 是否查询content_extra
+     * @return 消息列表
+     */
+    @DataSource(type = DataSource.DataSourceType.SECONDARY)
+    public List<Message> findHistoryByConversationId(Long conversationId, Long beforeSeq, int limit,
+                                                     boolean includeContentExtra) {
+        if (beforeSeq == null) {
+            return findLatestByConversationId(conversationId, limit, includeContentExtra);
         }
-        
-        return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(Message.class), params);
+        int variant = includeContentExtra ? 1 : 0;
+        ShardNode node = readNode(conversationId);
+        return dataSources.jdbc(node).query(queries(node).findHistory[variant],
+                MessageRowMapper.of(includeContentExtra), conversationId, beforeSeq, limit);
     }
     
     /**
@@ -199,16 +372,29 @@ public class MessageRepository {
      */
     @DataSource(type = DataSource.DataSourceType.SECONDARY)
     public Optional<Message> findByClientMsgId(Long conversationId, String clientMsgId) {
-        String tableName = shardingStrategy.getTableName(conversationId);
-        
-        String sql = String.format("""
-            SELECT * FROM %s 
-            WHERE conversation_id = ? AND client_msg_id = ?
-            """, tableName);
-        
         try {
-            Message message = jdbcTemplate.queryForObject(sql, 
-                new BeanPropertyRowMapper<>(Message.class), conversationId, clientMsgId);
+            ShardNode node = readNode(conversationId);
+            Message message = dataSources.jdbc(node).queryForObject(queries(node).findByClientMsgId,
+                MessageRowMapper.FULL, conversationId, clientMsgId);
+            return Optional.ofNullable(message);
+        } catch (EmptyResultDataAccessException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 在主写节点上根据客户端消息ID查找消息 - 用于确认刚提交的写入，不受从库延迟影响
+     * 
+     * @param conversationId 会话ID
+     * @param clientMsgId 客户端消息ID
+     * @return 消息对象
+     */
+    @DataSource(type = DataSource.DataSourceType.PRIMARY)
+    public Optional<Message> findWrittenByClientMsgId(Long conversationId, String clientMsgId) {
+        try {
+            ShardNode node = shardRouter.route(conversationId).getWriteNode();
+            Message message = dataSources.jdbc(node).queryForObject(queries(node).findByClientMsgId,
+                MessageRowMapper.FULL, conversationId, clientMsgId);
             return Optional.ofNullable(message);
         } catch (EmptyResultDataAccessException e) {
             return Optional.empty();
@@ -223,11 +409,9 @@ public class MessageRepository {
      */
     @DataSource(type = DataSource.DataSourceType.PRIMARY)
     public boolean update(Message message) {
-        String tableName = shardingStrategy.getTableName(message.getConversationId());
-        
         message.setUpdatedAt(LocalDateTime.now());
         
-        String sql = String.format("""
+        String sql = """
             UPDATE %s SET 
                 content = :content,
                 content_extra = :contentExtra,
@@ -241,12 +425,14 @@ public class MessageRepository {
                 status = :status,
                 updated_at = :updatedAt
             WHERE id = :id AND conversation_id = :conversationId
-            """, tableName);
+            """;
         
-        int updatedRows = namedParameterJdbcTemplate.update(sql, new BeanPropertySqlParameterSource(message));
+        BeanPropertySqlParameterSource params = new BeanPropertySqlParameterSource(message);
+        int updatedRows = writeToRoute(message.getConversationId(),
+                node -> dataSources.named(node).update(String.format(sql, node.getTableName()), params));
         
-        log.debug("更新消息: table={}, messageId={}, updatedRows={}", 
-                 tableName, message.getId(), updatedRows);
+        log.debug("更新消息: conversationId={}, messageId={}, updatedRows={}", 
+                 message.getConversationId(), message.getId(), updatedRows);
         
         return updatedRows > 0;
     }
@@ -261,22 +447,21 @@ public class MessageRepository {
      */
     @DataSource(type = DataSource.DataSourceType.PRIMARY)
     public boolean recallMessage(Long conversationId, Long messageId, String reason) {
-        String tableName = shardingStrategy.getTableName(conversationId);
-        
-        String sql = String.format("""
+        String sql = """
             UPDATE %s SET 
                 is_recalled = 1,
                 recall_reason = ?,
                 recalled_at = ?,
                 updated_at = ?
             WHERE id = ? AND conversation_id = ? AND is_recalled = 0
-            """, tableName);
+            """;
         
         LocalDateTime now = LocalDateTime.now();
-        int updatedRows = jdbcTemplate.update(sql, reason, now, now, messageId, conversationId);
+        int updatedRows = writeToRoute(conversationId, node -> dataSources.jdbc(node).update(
+                String.format(sql, node.getTableName()), reason, now, now, messageId, conversationId));
         
-        log.debug("撤回消息: table={}, messageId={}, updatedRows={}", 
-                 tableName, messageId, updatedRows);
+        log.debug("撤回消息: conversationId={}, messageId={}, updatedRows={}", 
+                 conversationId, messageId, updatedRows);
         
         return updatedRows > 0;
     }
@@ -291,9 +476,7 @@ public class MessageRepository {
      */
     @DataSource(type = DataSource.DataSourceType.PRIMARY)
     public boolean editMessage(Long conversationId, Long messageId, String newContent) {
-        String tableName = shardingStrategy.getTableName(conversationId);
-        
-        String sql = String.format("""
+        String sql = """
             UPDATE %s SET 
                 content = ?,
                 is_edited = 1,
@@ -301,13 +484,14 @@ public class MessageRepository {
                 last_edit_at = ?,
                 updated_at = ?
             WHERE id = ? AND conversation_id = ? AND is_recalled = 0 AND status = 1
-            """, tableName);
+            """;
         
         LocalDateTime now = LocalDateTime.now();
-        int updatedRows = jdbcTemplate.update(sql, newContent, now, now, messageId, conversationId);
+        int updatedRows = writeToRoute(conversationId, node -> dataSources.jdbc(node).update(
+                String.format(sql, node.getTableName()), newContent, now, now, messageId, conversationId));
         
-        log.debug("编辑消息: table={}, messageId={}, updatedRows={}", 
-                 tableName, messageId, updatedRows);
+        log.debug("编辑消息: conversationId={}, messageId={}, updatedRows={}", 
+                 conversationId, messageId, updatedRows);
         
         return updatedRows > 0;
     }
@@ -322,20 +506,19 @@ public class MessageRepository {
      */
     @DataSource(type = DataSource.DataSourceType.PRIMARY)
     public boolean pinMessage(Long conversationId, Long messageId, boolean pinned) {
-        String tableName = shardingStrategy.getTableName(conversationId);
-        
-        String sql = String.format("""
+        String sql = """
             UPDATE %s SET 
                 is_pinned = ?,
                 updated_at = ?
             WHERE id = ? AND conversation_id = ?
-            """, tableName);
+            """;
         
         LocalDateTime now = LocalDateTime.now();
-        int updatedRows = jdbcTemplate.update(sql, pinned ? 1 : 0, now, messageId, conversationId);
+        int updatedRows = writeToRoute(conversationId, node -> dataSources.jdbc(node).update(
+                String.format(sql, node.getTableName()), pinned ? 1 : 0, now, messageId, conversationId));
         
-        log.debug("{}消息: table={}, messageId={}, updatedRows={}", 
-                 pinned ? "置顶" : "取消置顶", tableName, messageId, updatedRows);
+        log.debug("{}消息: conversationId={}, messageId={}, updatedRows={}", 
+                 pinned ? "置顶" : "取消置顶", conversationId, messageId, updatedRows);
         
         return updatedRows > 0;
     }
@@ -349,20 +532,19 @@ public class MessageRepository {
      */
     @DataSource(type = DataSource.DataSourceType.PRIMARY)
     public boolean deleteMessage(Long conversationId, Long messageId) {
-        String tableName = shardingStrategy.getTableName(conversationId);
-        
-        String sql = String.format("""
+        String sql = """
             UPDATE %s SET 
                 status = 0,
                 updated_at = ?
             WHERE id = ? AND conversation_id = ?
-            """, tableName);
+            """;
         
         LocalDateTime now = LocalDateTime.now();
-        int updatedRows = jdbcTemplate.update(sql, now, messageId, conversationId);
+        int updatedRows = writeToRoute(conversationId, node -> dataSources.jdbc(node).update(
+                String.format(sql, node.getTableName()), now, messageId, conversationId));
         
-        log.debug("删除消息: table={}, messageId={}, updatedRows={}", 
-                 tableName, messageId, updatedRows);
+        log.debug("删除消息: conversationId={}, messageId={}, updatedRows={}", 
+                 conversationId, messageId, updatedRows);
         
         return updatedRows > 0;
     }
@@ -375,15 +557,8 @@ public class MessageRepository {
      */
     @DataSource(type = DataSource.DataSourceType.SECONDARY)
     public List<Message> findPinnedMessages(Long conversationId) {
-        String tableName = shardingStrategy.getTableName(conversationId);
-        
-        String sql = String.format("""
-            SELECT * FROM %s 
-            WHERE conversation_id = ? AND is_pinned = 1 AND status = 1
-            ORDER BY seq DESC
-            """, tableName);
-        
-        return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(Message.class), conversationId);
+        ShardNode node = readNode(conversationId);
+        return dataSources.jdbc(node).query(queries(node).findPinned, MessageRowMapper.FULL, conversationId);
     }
     
     /**
@@ -394,14 +569,298 @@ public class MessageRepository {
      */
     @DataSource(type = DataSource.DataSourceType.SECONDARY)
     public long countByConversationId(Long conversationId) {
-        String tableName = shardingStrategy.getTableName(conversationId);
+        ShardNode node = readNode(conversationId);
+        String tableName = node.getTableName();
         
         String sql = String.format("""
             SELECT COUNT(*) FROM %s 
             WHERE conversation_id = ? AND status = 1
             """, tableName);
         
-        Long count = jdbcTemplate.queryForObject(sql, Long.class, conversationId);
+        Long count = dataSources.jdbc(node).queryForObject(sql, Long.class, conversationId);
         return count != null ? count : 0L;
     }
+
+    /**
+     * 影子写失败次数（含主键冲突）
+     */
+    public long getShadowWriteFailures() {
+        return shadowWriteFailures.get();
+    }
+
+    /**
+     * 影子节点主键冲突次数
+     */
+    public long getShadowCollisions() {
+        return shadowCollisions.get();
+    }
+
+    /**
+     * 跨分表批量查询结果的键
+     */
+    public static final class MessageKey {
+        private final long conversationId;
+        private final long messageId;
+
+        public MessageKey(long conversationId, long messageId) {
+            this.conversationId = conversationId;
+            this.messageId = messageId;
+        }
+
+        public static MessageKey of(Message message) {
+            return new MessageKey(message.getConversationId(), message.getId());
+        }
+
+        public long getConversationId() { return conversationId; }
+        public long getMessageId() { return messageId; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MessageKey other)) {
+                return false;
+            }
+            return conversationId == other.conversationId && messageId == other.messageId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(conversationId, messageId);
+        }
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    /**
+     * 批量查找时单条IN查询的最大ID数
+     */
+    private static final int MAX_IN_LIST_SIZE = 500;
+
+    /**
+     * 在一个分表上按消息键批量查询，只收集请求的键
+     * 会话ID与消息ID同时作为条件，同一分表内ID唯一，结果不会落到其他会话
+     */
+    private void findByKeys(ShardNode node, List<MessageKey> keys, Map<MessageKey, Message> into) {
+        for (int from = 0; from < keys.size(); from += MAX_IN_LIST_SIZE) {
+            Set<MessageKey> chunk = new HashSet<>(keys.subList(from, Math.min(keys.size(), from + MAX_IN_LIST_SIZE)));
+            Set<Long> conversationIds = new LinkedHashSet<>();
+            Set<Long> ids = new LinkedHashSet<>();
+            for (MessageKey key : chunk) {
+                conversationIds.add(key.getConversationId());
+                ids.add(key.getMessageId());
+            }
+            StringBuilder sql = new StringBuilder("SELECT ").append(MessageRowMapper.columns(true))
+                    .append(" FROM ").append(node.getTableName()).append(" WHERE conversation_id IN (");
+            appendPlaceholders(sql, conversationIds.size());
+            sql.append(") AND id IN (");
+            appendPlaceholders(sql, ids.size());
+            sql.append(")");
+            List<Object> args = new ArrayList<>(conversationIds.size() + ids.size());
+            args.addAll(conversationIds);
+            args.addAll(ids);
+            for (Message message : dataSources.jdbc(node).query(sql.toString(), MessageRowMapper.FULL, args.toArray())) {
+                MessageKey key = MessageKey.of(message);
+                if (chunk.contains(key)) {
+                    into.put(key, message);
+                }
+            }
+        }
+    }
+
+    private static void appendPlaceholders(StringBuilder sql, int count) {
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+    }
+
+    /**
+     * INSERT列清单，不含自增ID
+     */
+    private static final String INSERT_COLUMNS = """
+                conversation_id, seq, client_msg_id, sender_id, msg_type, 
+                content, content_extra, reply_to_id, forward_from_id, mentions,
+                is_pinned, is_edited, edit_count, last_edit_at, is_recalled,
+                recall_reason, recalled_at, status, server_timestamp, created_at, updated_at
+            """;
+
+    /**
+     * 单行插入的占位符组，与INSERT列顺序一致
+     */
+    private static final String INSERT_VALUES_GROUP = 
+            "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * 设置插入默认值
+     */
+    private void applyInsertDefaults(Message message) {
+        if (message.getServerTimestamp() == null) {
+            message.setServerTimestamp(LocalDateTime.now());
+        }
+        if (message.getCreatedAt() == null) {
+            message.setCreatedAt(LocalDateTime.now());
+        }
+        if (message.getUpdatedAt() == null) {
+            message.setUpdatedAt(LocalDateTime.now());
+        }
+        if (message.getStatus() == null) {
+            message.setStatus(1); // 默认正常状态
+        }
+        if (message.getIsPinned() == null) {
+            message.setIsPinned(0);
+        }
+        if (message.getIsEdited() == null) {
+            message.setIsEdited(0);
+        }
+        if (message.getIsRecalled() == null) {
+            message.setIsRecalled(0);
+        }
+        if (message.getEditCount() == null) {
+            message.setEditCount(0);
+        }
+    }
+
+    /**
+     * 按INSERT列顺序绑定一行参数
+     * 
+     * @return 下一个参数位置
+     */
+    private int bindInsertValues(PreparedStatement ps, int index, Message message) throws SQLException {
+        ps.setObject(index++, message.getConversationId());
+        ps.setObject(index++, message.getSeq());
+        ps.setString(index++, message.getClientMsgId());
+        ps.setObject(index++, message.getSenderId());
+        ps.setObject(index++, message.getMsgType());
+        ps.setString(index++, message.getContent());
+        ps.setString(index++, message.getContentExtra());
+        ps.setObject(index++, message.getReplyToId());
+        ps.setObject(index++, message.getForwardFromId());
+        ps.setString(index++, message.getMentions());
+        ps.setObject(index++, message.getIsPinned());
+        ps.setObject(index++, message.getIsEdited());
+        ps.setObject(index++, message.getEditCount());
+        ps.setObject(index++, message.getLastEditAt());
+        ps.setObject(index++, message.getIsRecalled());
+        ps.setString(index++, message.getRecallReason());
+        ps.setObject(index++, message.getRecalledAt());
+        ps.setObject(index++, message.getStatus());
+        ps.setObject(index++, message.getServerTimestamp());
+        ps.setObject(index++, message.getCreatedAt());
+        ps.setObject(index++, message.getUpdatedAt());
+        return index;
+    }
+
+    /**
+     * 写入会话所在分片槽的主写节点，迁移中同步写影子节点
+     * 
+     * @return 主写节点的影响行数
+     */
+    private int writeToRoute(Long conversationId, ToIntFunction<ShardNode> write) {
+        ShardRoute route = shardRouter.route(conversationId);
+        int rows = write.applyAsInt(route.getWriteNode());
+        if (route.isDualWrite()) {
+            try {
+                write.applyAsInt(route.getShadowNode());
+            } catch (DataAccessException e) {
+                onShadowFailure(route.getShadowNode(), route.getPhase() == MigrationPhase.CUTOVER, e);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 以主写节点分配的ID写入影子节点
+     * 主键冲突时逐行确认：回填已复制的同一条消息视为成功，ID被其他消息占用是冲突，总是报错；
+     * 切读阶段影子节点已是读节点，其他写入失败也直接抛出，不留给迁移校验
+     */
+    private void shadowInsert(ShardNode shadow, List<Message> messages) {
+        boolean cutover = false;
+        for (Message message : messages) {
+            cutover |= shardRouter.route(message.getConversationId()).getPhase() == MigrationPhase.CUTOVER;
+        }
+        try {
+            insertShadowRows(shadow, messages);
+        } catch (DuplicateKeyException e) {
+            for (Message message : messages) {
+                insertShadowRow(shadow, message, cutover);
+            }
+        } catch (DataAccessException e) {
+            onShadowFailure(shadow, cutover, e);
+        }
+    }
+
+    private void insertShadowRow(ShardNode shadow, Message message, boolean cutover) {
+        try {
+            insertShadowRows(shadow, List.of(message));
+        } catch (DuplicateKeyException e) {
+            List<Map<String, Object>> existing = dataSources.jdbc(shadow).queryForList(String.format(
+                    "SELECT conversation_id, seq FROM %s WHERE id = ?", shadow.getTableName()), message.getId());
+            boolean sameMessage = existing.size() == 1
+                    && message.getConversationId().equals(((Number) existing.get(0).get("conversation_id")).longValue())
+                    && message.getSeq().equals(((Number) existing.get(0).get("seq")).longValue());
+            if (!sameMessage) {
+                shadowCollisions.incrementAndGet();
+                shadowWriteFailures.incrementAndGet();
+                log.error("影子节点主键冲突: node={}, id={}, conversationId={}, seq={}",
+                        shadow, message.getId(), message.getConversationId(), message.getSeq());
+                throw new DataIntegrityViolationException("影子节点消息ID已被占用: node=" + shadow
+                        + ", id=" + message.getId(), e);
+            }
+        } catch (DataAccessException e) {
+            onShadowFailure(shadow, cutover, e);
+        }
+    }
+
+    private void insertShadowRows(ShardNode shadow, List<Message> messages) {
+        StringBuilder sql = new StringBuilder(String.format(
+            "INSERT INTO %s (id, " + INSERT_COLUMNS + ") VALUES", shadow.getTableName()));
+        for (int i = 0; i < messages.size(); i++) {
+            sql.append(i == 0 ? " " : ", ").append("(?, ").append(INSERT_VALUES_GROUP.substring(1));
+        }
+        dataSources.jdbc(shadow).update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql.toString());
+            int index = 1;
+            for (Message message : messages) {
+                ps.setObject(index++, message.getId());
+                index = bindInsertValues(ps, index, message);
+            }
+            return ps;
+        });
+    }
+
+    private void onShadowFailure(ShardNode shadow, boolean cutover, DataAccessException e) {
+        shadowWriteFailures.incrementAndGet();
+        if (cutover) {
+            log.error("切读阶段影子节点写入失败，本次写入失败: node={}, error={}", shadow, e.getMessage());
+            throw e;
+        }
+        log.warn("影子节点写入失败，等待迁移校验修复: node={}, error={}", shadow, e.getMessage());
+    }
+
+    /**
+     * 通过唯一键(conversation_id, seq)回填消息ID
+     */
+    private void resolveIdsBySeq(ShardNode node, List<Message> messages) {
+        StringBuilder sql = new StringBuilder(String.format(
+                "SELECT id, conversation_id, seq FROM %s WHERE (conversation_id, seq) IN (", node.getTableName()));
+        List<Object> params = new ArrayList<>(messages.size() * 2);
+        for (int i = 0; i < messages.size(); i++) {
+            sql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+            params.add(messages.get(i).getConversationId());
+            params.add(messages.get(i).getSeq());
+        }
+        sql.append(")");
+        
+        Map<String, Long> idsByKey = new HashMap<>();
+        dataSources.jdbc(node).query(sql.toString(), rs -> {
+            idsByKey.put(rs.getLong("conversation_id") + ":" + rs.getLong("seq"), rs.getLong("id"));
+        }, params.toArray());
+        
+        for (Message message : messages) {
+            message.setId(idsByKey.get(message.getConversationId() + ":" + message.getSeq()));
+        }
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,230 @@
+package com.acme.im.communication.repository;
+
+import com.acme.im.communication.entity.Message;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * 消息行映射器
+ * 所有消息读路径共用，按固定列布局以下标读取，不经过反射与列名解析
+ *
+ * 列布局：
+ * 1. 查询必须使用 {@link #columns(boolean)} 生成的显式列清单，列顺序即读取下标
+ * 2. content_extra（JSON，体积最大）固定在最后一列，不需要时整列不查询，映射器少读一列即可
+ * 3. 可空的数值列通过wasNull还原为null，与实体的包装类型语义一致
+ * 4. {@link #bindRow} 按同一列布局写入整行，用于分片迁移时原样复制消息
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public final class MessageRowMapper implements RowMapper<Message> {
+
+    /**
+     * 消息表列，顺序与mapRow读取下标一一对应
+     */
+    private static final String[] COLUMNS = {
+            "id", "conversation_id", "seq", "client_msg_id", "sender_id", "receiver_id",
+            "msg_type", "content",
+            "original_message_id", "operation_type",
+            "quoted_message_id", "quoted_content", "quoted_sender_id", "quoted_content_type",
+            "original_conversation_id", "original_sender_id", "forward_reason",
+            "original_content", "edit_reason",
+            "reply_to_id", "forward_from_id", "mentions",
+            "is_pinned", "pin_scope", "pinned_by", "pinned_at",
+            "is_edited", "edit_count", "last_edit_at",
+            "is_recalled", "recall_reason", "recalled_at",
+            "is_deleted", "delete_scope", "deleted_by", "deleted_at", "delete_reason",
+            "status", "server_timestamp", "created_at", "updated_at",
+            "device_id", "source", "version",
+            "content_extra"
+    };
+
+    private static final String COLUMNS_WITH_EXTRA = String.join(", ", COLUMNS);
+    private static final String COLUMNS_WITHOUT_EXTRA = String.join(", ",
+            Arrays.copyOf(COLUMNS, COLUMNS.length - 1));
+
+    /**
+     * 完整映射（含content_extra）
+     */
+    public static final MessageRowMapper FULL = new MessageRowMapper(true);
+
+    /**
+     * 不含content_extra的映射，用于列表等不需要扩展内容的场景
+     */
+    public static final MessageRowMapper WITHOUT_CONTENT_EXTRA = new MessageRowMapper(false);
+
+    private final boolean includeContentExtra;
+
+    private MessageRowMapper(boolean includeContentExtra) {
+        this.includeContentExtra = includeContentExtra;
+    }
+
+    /**
+     * 获取映射器
+     *
+     * @param includeContentExtra 是否包含content_extra
+     */
+    public static MessageRowMapper of(boolean includeContentExtra) {
+        return includeContentExtra ? FULL : WITHOUT_CONTENT_EXTRA;
+    }
+
+    /**
+     * 与映射器列布局一致的显式列清单
+     *
+     * @param includeContentExtra 是否包含content_extra
+     * @return 逗号分隔的列清单
+     */
+    public static String columns(boolean includeContentExtra) {
+        return includeContentExtra ? COLUMNS_WITH_EXTRA : COLUMNS_WITHOUT_EXTRA;
+    }
+
+    /**
+     * 本映射器对应的列清单
+     */
+    public String columns() {
+        return columns(includeContentExtra);
+    }
+
+    /**
+     * 按列布局绑定整行（含id与content_extra）
+     *
+     * @param ps 参数顺序与 {@link #columns(boolean)}(true) 一致的语句
+     * @param index 起始参数位置
+     * @param message 消息
+     * @return 下一个参数位置
+     */
+    public static int bindRow(PreparedStatement ps, int index, Message message) throws SQLException {
+        ps.setObject(index++, message.getId());
+        ps.setObject(index++, message.getConversationId());
+        ps.setObject(index++, message.getSeq());
+        ps.setString(index++, message.getClientMsgId());
+        ps.setObject(index++, message.getSenderId());
+        ps.setObject(index++, message.getReceiverId());
+        ps.setObject(index++, message.getMsgType());
+        ps.setString(index++, message.getContent());
+        ps.setObject(index++, message.getOriginalMessageId());
+        ps.setString(index++, message.getOperationType());
+        ps.setObject(index++, message.getQuotedMessageId());
+        ps.setString(index++, message.getQuotedContent());
+        ps.setObject(index++, message.getQuotedSenderId());
+        ps.setObject(index++, message.getQuotedContentType());
+        ps.setObject(index++, message.getOriginalConversationId());
+        ps.setObject(index++, message.getOriginalSenderId());
+        ps.setString(index++, message.getForwardReason());
+        ps.setString(index++, message.getOriginalContent());
+        ps.setString(index++, message.getEditReason());
+        ps.setObject(index++, message.getReplyToId());
+        ps.setObject(index++, message.getForwardFromId());
+        ps.setString(index++, message.getMentions());
+        ps.setObject(index++, message.getIsPinned());
+        ps.setObject(index++, message.getPinScope());
+        ps.setObject(index++, message.getPinnedBy());
+        ps.setObject(index++, message.getPinnedAt());
+        ps.setObject(index++, message.getIsEdited());
+        ps.setObject(index++, message.getEditCount());
+        ps.setObject(index++, message.getLastEditAt());
+        ps.setObject(index++, message.getIsRecalled());
+        ps.setString(index++, message.getRecallReason());
+        ps.setObject(index++, message.getRecalledAt());
+        ps.setObject(index++, message.getIsDeleted());
+        ps.setObject(index++, message.getDeleteScope());
+        ps.setObject(index++, message.getDeletedBy());
+        ps.setObject(index++, message.getDeletedAt());
+        ps.setString(index++, message.getDeleteReason());
+        ps.setObject(index++, message.getStatus());
+        ps.setObject(index++, message.getServerTimestamp());
+        ps.setObject(index++, message.getCreatedAt());
+        ps.setObject(index++, message.getUpdatedAt());
+        ps.setString(index++, message.getDeviceId());
+        ps.setString(index++, message.getSource());
+        ps.setString(index++, message.getVersion());
+        ps.setString(index++, message.getContentExtra());
+        return index;
+    }
+
+    /**
+     * 列数（含content_extra）
+     */
+    public static int columnCount() {
+        return COLUMNS.length;
+    }
+
+    /**
+     * 指定列名（含content_extra），用于拼接 ON DUPLICATE KEY UPDATE 等子句
+     */
+    public static String columnAt(int index) {
+        return COLUMNS[index];
+    }
+
+    @Override
+    public Message mapRow(ResultSet rs, int rowNum) throws SQLException {
+        Message message = new Message();
+        message.setId(getLong(rs, 1));
+        message.setConversationId(getLong(rs, 2));
+        message.setSeq(getLong(rs, 3));
+        message.setClientMsgId(rs.getString(4));
+        message.setSenderId(getLong(rs, 5));
+        message.setReceiverId(getLong(rs, 6));
+        message.setMsgType(getInt(rs, 7));
+        message.setContent(rs.getString(8));
+        message.setOriginalMessageId(getLong(rs, 9));
+        message.setOperationType(rs.getString(10));
+        message.setQuotedMessageId(getLong(rs, 11));
+        message.setQuotedContent(rs.getString(12));
+        message.setQuotedSenderId(getLong(rs, 13));
+        message.setQuotedContentType(getInt(rs, 14));
+        message.setOriginalConversationId(getLong(rs, 15));
+        message.setOriginalSenderId(getLong(rs, 16));
+        message.setForwardReason(rs.getString(17));
+        message.setOriginalContent(rs.getString(18));
+        message.setEditReason(rs.getString(19));
+        message.setReplyToId(getLong(rs, 20));
+        message.setForwardFromId(getLong(rs, 21));
+        message.setMentions(rs.getString(22));
+        message.setIsPinned(getInt(rs, 23));
+        message.setPinScope(getInt(rs, 24));
+        message.setPinnedBy(getLong(rs, 25));
+        message.setPinnedAt(getDateTime(rs, 26));
+        message.setIsEdited(getInt(rs, 27));
+        message.setEditCount(getInt(rs, 28));
+        message.setLastEditAt(getDateTime(rs, 29));
+        message.setIsRecalled(getInt(rs, 30));
+        message.setRecallReason(rs.getString(31));
+        message.setRecalledAt(getDateTime(rs, 32));
+        message.setIsDeleted(getInt(rs, 33));
+        message.setDeleteScope(getInt(rs, 34));
+        message.setDeletedBy(getLong(rs, 35));
+        message.setDeletedAt(getDateTime(rs, 36));
+        message.setDeleteReason(rs.getString(37));
+        message.setStatus(getInt(rs, 38));
+        message.setServerTimestamp(getDateTime(rs, 39));
+        message.setCreatedAt(getDateTime(rs, 40));
+        message.setUpdatedAt(getDateTime(rs, 41));
+        message.setDeviceId(rs.getString(42));
+        message.setSource(rs.getString(43));
+        message.setVersion(rs.getString(44));
+        if (includeContentExtra) {
+            message.setContentExtra(rs.getString(45));
+        }
+        return message;
+    }
+
+    private static Long getLong(ResultSet rs, int index) throws SQLException {
+        long value = rs.getLong(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Integer getInt(ResultSet rs, int index) throws SQLException {
+        int value = rs.getInt(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static LocalDateTime getDateTime(ResultSet rs, int index) throws SQLException {
+        return rs.getObject(index, LocalDateTime.class);
+    }
+}
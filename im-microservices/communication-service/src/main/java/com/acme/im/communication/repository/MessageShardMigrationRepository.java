@@ -0,0 +1,163 @@
+package com.acme.im.communication.repository;
+
+import com.acme.im.common.infrastructure.database.DataSourceContextHolder;
+import com.acme.im.common.infrastructure.database.sharding.ShardNode;
+import com.acme.im.communication.entity.Message;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 分片迁移数据访问
+ * 按分片槽扫描、原样复制（保留消息ID）与清理消息分表数据
+ *
+ * 迁移读写一律走主库：从库存在复制延迟，从从库回填会漏掉刚写入的消息
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Repository
+@RequiredArgsConstructor
+public class MessageShardMigrationRepository {
+
+    private final ShardDataSourceRegistry dataSources;
+
+    private static final String FULL_COLUMNS = MessageRowMapper.columns(true);
+
+    /**
+     * 整行写入的占位符组与更新子句
+     */
+    private static final String ROW_PLACEHOLDERS;
+    private static final String UPSERT_UPDATES;
+
+    static {
+        StringBuilder placeholders = new StringBuilder("(");
+        StringBuilder updates = new StringBuilder();
+        for (int i = 0; i < MessageRowMapper.columnCount(); i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+            if (i > 0) {
+                String column = MessageRowMapper.columnAt(i);
+                updates.append(i == 1 ? "" : ", ").append(column).append(" = VALUES(").append(column).append(')');
+            }
+        }
+        ROW_PLACEHOLDERS = placeholders.append(')').toString();
+        UPSERT_UPDATES = updates.toString();
+    }
+
+    /**
+     * 按ID顺序扫描指定分片槽的消息
+     *
+     * @param node 节点
+     * @param slotCount 分片槽数
+     * @param slots 分片槽
+     * @param afterId 起始ID（不含）
+     * @param limit 批量大小
+     * @return 按ID升序的消息
+     */
+    public List<Message> scanSlots(ShardNode node, int slotCount, int[] slots, long afterId, int limit) {
+        String sql = "SELECT " + FULL_COLUMNS + " FROM " + node.getTableName()
+                + " WHERE id > ? AND " + slotCondition(slotCount, slots) + " ORDER BY id LIMIT ?";
+        return onPrimary(() -> dataSources.jdbc(node).query(sql, MessageRowMapper.FULL, afterId, limit));
+    }
+
+    /**
+     * 按ID批量查询
+     *
+     * @return ID -> 消息
+     */
+    public Map<Long, Message> findByIds(ShardNode node, List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        String sql = "SELECT " + FULL_COLUMNS + " FROM " + node.getTableName()
+                + " WHERE id IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+        List<Message> rows = onPrimary(() -> dataSources.jdbc(node).query(sql, MessageRowMapper.FULL, ids.toArray()));
+        Map<Long, Message> result = new HashMap<>(rows.size() * 2);
+        for (Message row : rows) {
+            result.put(row.getId(), row);
+        }
+        return result;
+    }
+
+    /**
+     * 原样写入消息（保留ID），已存在时整行覆盖
+     *
+     * @return 影响行数
+     */
+    public int upsert(ShardNode node, List<Message> rows) {
+        return write(node, rows, true);
+    }
+
+    /**
+     * 原样写入消息（保留ID），ID已被占用时抛出DuplicateKeyException
+     * 用于迁移完成后补写：此时目标节点已自行分配ID，不能覆盖已有的行
+     *
+     * @return 影响行数
+     */
+    public int insert(ShardNode node, List<Message> rows) {
+        return write(node, rows, false);
+    }
+
+    /**
+     * 删除指定分片槽的一批消息
+     *
+     * @return 删除行数，0表示已清理完
+     */
+    public int deleteSlots(ShardNode node, int slotCount, int[] slots, int limit) {
+        String sql = "DELETE FROM " + node.getTableName()
+                + " WHERE " + slotCondition(slotCount, slots) + " ORDER BY id LIMIT ?";
+        return onPrimary(() -> dataSources.jdbc(node).update(sql, limit));
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    private int write(ShardNode node, List<Message> rows, boolean overwrite) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(node.getTableName())
+                .append(" (").append(FULL_COLUMNS).append(") VALUES");
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? " " : ", ").append(ROW_PLACEHOLDERS);
+        }
+        if (overwrite) {
+            sql.append(" ON DUPLICATE KEY UPDATE ").append(UPSERT_UPDATES);
+        }
+
+        List<Message> copy = new ArrayList<>(rows);
+        return onPrimary(() -> dataSources.jdbc(node).update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql.toString());
+            int index = 1;
+            for (Message row : copy) {
+                index = MessageRowMapper.bindRow(ps, index, row);
+            }
+            return ps;
+        }));
+    }
+
+    private static String slotCondition(int slotCount, int[] slots) {
+        StringBuilder condition = new StringBuilder("MOD(conversation_id, ").append(slotCount).append(") IN (");
+        for (int i = 0; i < slots.length; i++) {
+            condition.append(i == 0 ? "" : ",").append(slots[i]);
+        }
+        return condition.append(')').toString();
+    }
+
+    private <T> T onPrimary(Supplier<T> action) {
+        DataSourceContextHolder.switchToPrimary();
+        try {
+            return action.get();
+        } finally {
+            DataSourceContextHolder.clearDataSource();
+        }
+    }
+}
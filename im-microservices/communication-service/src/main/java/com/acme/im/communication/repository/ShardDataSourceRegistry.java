@@ -0,0 +1,108 @@
+package com.acme.im.communication.repository;
+
+import com.acme.im.common.infrastructure.database.sharding.ShardNode;
+import com.acme.im.common.infrastructure.database.sharding.ShardRoutingTable;
+import com.acme.im.communication.config.MessageShardingConfig;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分片数据源注册表
+ * 按分片节点的数据源名称提供JdbcTemplate
+ *
+ * default对应服务自身的主从路由数据源，读写库由@DataSource切面决定；
+ * 额外配置的数据源各自是独立的连接池，不参与主从切换，也不加入服务的事务管理器
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ShardDataSourceRegistry {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final MessageShardingConfig config;
+
+    private final Map<String, JdbcTemplate> jdbcTemplates = new ConcurrentHashMap<>();
+    private final Map<String, NamedParameterJdbcTemplate> namedTemplates = new ConcurrentHashMap<>();
+    private final List<HikariDataSource> ownedDataSources = new ArrayList<>();
+
+    @PostConstruct
+    public void initialize() {
+        jdbcTemplates.put(ShardRoutingTable.DEFAULT_DATA_SOURCE, jdbcTemplate);
+        namedTemplates.put(ShardRoutingTable.DEFAULT_DATA_SOURCE, namedParameterJdbcTemplate);
+
+        for (Map.Entry<String, MessageShardingConfig.ShardDataSource> entry : config.getDataSources().entrySet()) {
+            String name = entry.getKey();
+            if (ShardRoutingTable.DEFAULT_DATA_SOURCE.equals(name)) {
+                throw new IllegalStateException("分片数据源名称default为保留名称");
+            }
+            MessageShardingConfig.ShardDataSource props = entry.getValue();
+            HikariConfig hikariConfig = new HikariConfig();
+            hikariConfig.setPoolName("message-shard-" + name);
+            hikariConfig.setJdbcUrl(props.getUrl());
+            hikariConfig.setUsername(props.getUsername());
+            hikariConfig.setPassword(props.getPassword());
+            hikariConfig.setDriverClassName(props.getDriverClassName());
+            hikariConfig.setMaximumPoolSize(props.getMaximumPoolSize());
+            hikariConfig.setMinimumIdle(props.getMinimumIdle());
+
+            HikariDataSource dataSource = new HikariDataSource(hikariConfig);
+            ownedDataSources.add(dataSource);
+            JdbcTemplate template = new JdbcTemplate(dataSource);
+            jdbcTemplates.put(name, template);
+            namedTemplates.put(name, new NamedParameterJdbcTemplate(template));
+            log.info("分片数据源已注册: name={}, url={}", name, props.getUrl());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (HikariDataSource dataSource : ownedDataSources) {
+            dataSource.close();
+        }
+    }
+
+    /**
+     * 获取分片节点所在数据源的JdbcTemplate
+     */
+    public JdbcTemplate jdbc(ShardNode node) {
+        JdbcTemplate template = jdbcTemplates.get(node.getDataSource());
+        if (template == null) {
+            throw new IllegalStateException("未配置的分片数据源: " + node.getDataSource());
+        }
+        return template;
+    }
+
+    /**
+     * 获取分片节点所在数据源的NamedParameterJdbcTemplate
+     */
+    public NamedParameterJdbcTemplate named(ShardNode node) {
+        NamedParameterJdbcTemplate template = namedTemplates.get(node.getDataSource());
+        if (template == null) {
+            throw new IllegalStateException("未配置的分片数据源: " + node.getDataSource());
+        }
+        return template;
+    }
+
+    /**
+     * 数据源是否已配置
+     */
+    public boolean contains(String dataSource) {
+        return jdbcTemplates.containsKey(dataSource);
+    }
+}
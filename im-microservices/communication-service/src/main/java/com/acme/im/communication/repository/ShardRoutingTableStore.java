@@ -0,0 +1,180 @@
+package com.acme.im.communication.repository;
+
+import com.acme.im.common.infrastructure.database.DataSourceContextHolder;
+import com.acme.im.common.infrastructure.database.sharding.MigrationPhase;
+import com.acme.im.common.infrastructure.database.sharding.ShardNode;
+import com.acme.im.common.infrastructure.database.sharding.ShardRoutingTable;
+import com.acme.im.common.infrastructure.database.sharding.VersionedShardRouter;
+import com.acme.im.communication.config.MessageShardingConfig;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 分片路由表存储
+ * 路由表各版本持久化在主库 message_shard_routing 表中，各实例定时拉取最新版本并发布到路由器
+ *
+ * 1. 版本号为主键，多个实例同时发布同一版本时只有一个成功，避免路由表分叉
+ * 2. 尚无持久化版本时使用配置的初始布局（版本0），与原有取模分表一致
+ * 3. 路由表缺失或读取失败时保持当前路由表不变
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ShardRoutingTableStore {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final VersionedShardRouter shardRouter;
+    private final MessageShardingConfig config;
+    private final ObjectMapper objectMapper;
+
+    private static final String SELECT_LATEST_VERSION =
+            "SELECT MAX(version) FROM message_shard_routing";
+
+    private static final String SELECT_LAYOUT =
+            "SELECT layout FROM message_shard_routing WHERE version = ?";
+
+    private static final String INSERT_VERSION =
+            "INSERT INTO message_shard_routing (version, layout, description, created_at) VALUES (?, ?, ?, NOW())";
+
+    /**
+     * 持久化的路由布局
+     */
+    @Data
+    static class Layout {
+        private int slotCount;
+        private List<String> nodes;
+        private int[] slots;
+        private int[] targets;
+        private String[] phases;
+        private int[] residuals;
+    }
+
+    /**
+     * 启动时加载路由表
+     */
+    @PostConstruct
+    public void initialize() {
+        shardRouter.publish(ShardRoutingTable.legacy(config.getTableCount(), config.getSlotCount()));
+        refresh();
+        ShardRoutingTable table = shardRouter.current();
+        if (table.getSlotCount() != config.getSlotCount()) {
+            log.warn("持久化路由表的分片槽数与配置不一致，以持久化版本为准: persisted={}, configured={}",
+                    table.getSlotCount(), config.getSlotCount());
+        }
+        log.info("分片路由表加载完成: {}", table);
+    }
+
+    /**
+     * 拉取最新版本
+     */
+    @Scheduled(fixedDelayString = "${app.communication.message.sharding.refresh-interval-ms:5000}")
+    public void refresh() {
+        try {
+            Long latest = onPrimary(() -> jdbcTemplate.queryForObject(SELECT_LATEST_VERSION, Long.class));
+            if (latest == null || latest <= shardRouter.current().getVersion()) {
+                return;
+            }
+            String layout = onPrimary(() -> jdbcTemplate.queryForObject(SELECT_LAYOUT, String.class, latest));
+            shardRouter.publish(decode(latest, layout));
+        } catch (DataAccessException e) {
+            log.debug("读取分片路由表失败，保持当前版本: version={}, error={}",
+                    shardRouter.current().getVersion(), e.getMessage());
+        }
+    }
+
+    /**
+     * 发布新版本
+     * 先写入存储再在本实例生效，其他实例在下次刷新时生效
+     *
+     * @param table 新路由表，版本必须为当前版本+1
+     * @param description 变更说明
+     * @throws IllegalStateException 版本已被其他实例发布
+     */
+    public void publish(ShardRoutingTable table, String description) {
+        try {
+            String layout = encode(table);
+            onPrimary(() -> jdbcTemplate.update(INSERT_VERSION, table.getVersion(), layout, description));
+        } catch (DuplicateKeyException e) {
+            throw new IllegalStateException("分片路由表版本冲突: version=" + table.getVersion(), e);
+        }
+        shardRouter.publish(table);
+        log.info("分片路由表已发布: version={}, description={}", table.getVersion(), description);
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    private String encode(ShardRoutingTable table) {
+        Layout layout = new Layout();
+        layout.setSlotCount(table.getSlotCount());
+        List<String> nodes = new ArrayList<>(table.getNodes().size());
+        for (ShardNode node : table.getNodes()) {
+            nodes.add(node.toString());
+        }
+        layout.setNodes(nodes);
+        layout.setSlots(table.getSlotNodes());
+        layout.setTargets(table.getSlotTargets());
+        MigrationPhase[] phases = table.getSlotPhases();
+        String[] phaseNames = new String[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            phaseNames[i] = phases[i] == null ? null : phases[i].name();
+        }
+        layout.setPhases(phaseNames);
+        layout.setResiduals(table.getSlotResiduals());
+        try {
+            return objectMapper.writeValueAsString(layout);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("序列化分片路由表失败", e);
+        }
+    }
+
+    private ShardRoutingTable decode(long version, String json) {
+        Layout layout;
+        try {
+            layout = objectMapper.readValue(json, Layout.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("解析分片路由表失败: version=" + version, e);
+        }
+        List<ShardNode> nodes = new ArrayList<>(layout.getNodes().size());
+        for (String node : layout.getNodes()) {
+            int separator = node.indexOf('/');
+            nodes.add(new ShardNode(node.substring(0, separator), node.substring(separator + 1)));
+        }
+        MigrationPhase[] phases = new MigrationPhase[layout.getPhases().length];
+        for (int i = 0; i < phases.length; i++) {
+            String phase = layout.getPhases()[i];
+            phases[i] = phase == null ? null : MigrationPhase.valueOf(phase);
+        }
+        return ShardRoutingTable.of(version, layout.getSlotCount(), nodes, layout.getSlots(),
+                layout.getTargets(), phases, layout.getResiduals());
+    }
+
+    /**
+     * 路由表只存放在主库，刷新线程不带数据源上下文，需显式切换
+     */
+    private <T> T onPrimary(Supplier<T> action) {
+        DataSourceContextHolder.switchToPrimary();
+        try {
+            return action.get();
+        } finally {
+            DataSourceContextHolder.clearDataSource();
+        }
+    }
+}
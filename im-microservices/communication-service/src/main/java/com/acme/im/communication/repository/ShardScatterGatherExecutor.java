@@ -0,0 +1,465 @@
+package com.acme.im.communication.repository;
+
+import com.acme.im.common.infrastructure.database.DataSourceContextHolder;
+import com.acme.im.common.infrastructure.database.sharding.ShardRouter;
+import com.acme.im.common.infrastructure.database.sharding.ShardRoutingTable;
+import com.acme.im.common.infrastructure.database.sharding.ShardScan;
+import com.acme.im.communication.config.ShardQueryConfig;
+import com.acme.im.communication.entity.Message;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 跨分表分散-聚合查询执行器
+ * 将不带会话ID的查询并行下发到路由表中所有提供读的分片节点（初始为messages_00~messages_31），在调用线程上做k路归并
+ *
+ * 执行流程：
+ * 1. 每个分表执行 WHERE条件 + ORDER BY + LIMIT，LIMIT下推为全局limit（任一分表最多贡献limit条）
+ * 2. 分表结果逐行写入各自的游标队列，调用线程用小顶堆按排序键归并各分表的队首
+ * 3. 凑满limit后立即取消尚未完成的分表任务及其正在执行的Statement
+ * 4. 分表线程不继承调用方的数据源上下文，任务内显式切换到从库并在结束时清理
+ * 5. 节点上存在迁移中或待清理的其他分片槽数据时，按分片槽过滤，避免重复或读到过期数据
+ *
+ * 各分表的ORDER BY与归并比较器必须一致，因此排序方式只能从 {@link MergeOrder} 中选择。
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ShardScatterGatherExecutor {
+
+    private final ShardDataSourceRegistry dataSources;
+    private final ShardRouter shardRouter;
+    private final ShardQueryConfig config;
+
+    /**
+     * 分表游标结束标记
+     */
+    static final Object END = new Object();
+
+    private ThreadPoolExecutor executor;
+
+    // 统计信息
+    private final AtomicLong queries = new AtomicLong(0);
+    private final AtomicLong shardQueries = new AtomicLong(0);
+    private final AtomicLong cancelledShards = new AtomicLong(0);
+    private final AtomicLong rowsFetched = new AtomicLong(0);
+    private final AtomicLong rowsReturned = new AtomicLong(0);
+    private final AtomicLong timeouts = new AtomicLong(0);
+    private final AtomicLong failures = new AtomicLong(0);
+    private final AtomicLong totalLatencyNanos = new AtomicLong(0);
+    private final AtomicLong maxLatencyNanos = new AtomicLong(0);
+
+    /**
+     * 归并排序方式
+     * sql为下推到每个分表的ORDER BY子句，comparator为调用线程归并时使用的等价比较器
+     */
+    public enum MergeOrder {
+        /**
+         * 按服务端时间倒序（最新在前）
+         */
+        SERVER_TIME_DESC("server_timestamp DESC, id DESC",
+                Comparator.comparing(Message::getServerTimestamp, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+                        .thenComparing(Message::getId, Comparator.nullsFirst(Comparator.<Long>naturalOrder()))
+                        .reversed()),
+        /**
+         * 按服务端时间正序
+         */
+        SERVER_TIME_ASC("server_timestamp ASC, id ASC",
+                Comparator.comparing(Message::getServerTimestamp, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+                        .thenComparing(Message::getId, Comparator.nullsFirst(Comparator.<Long>naturalOrder()))),
+        /**
+         * 按会话内序号倒序
+         */
+        SEQ_DESC("seq DESC, conversation_id DESC",
+                Comparator.comparing(Message::getSeq, Comparator.nullsFirst(Comparator.<Long>naturalOrder()))
+                        .thenComparing(Message::getConversationId, Comparator.nullsFirst(Comparator.<Long>naturalOrder()))
+                        .reversed()),
+        /**
+         * 按会话内序号正序
+         */
+        SEQ_ASC("seq ASC, conversation_id ASC",
+                Comparator.comparing(Message::getSeq, Comparator.nullsFirst(Comparator.<Long>naturalOrder()))
+                        .thenComparing(Message::getConversationId, Comparator.nullsFirst(Comparator.<Long>naturalOrder())));
+
+        private final String sql;
+        private final Comparator<Message> comparator;
+
+        MergeOrder(String sql, Comparator<Message> comparator) {
+            this.sql = sql;
+            this.comparator = comparator;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public Comparator<Message> getComparator() {
+            return comparator;
+        }
+    }
+
+    @PostConstruct
+    public void initialize() {
+        int threads = Math.max(1, config.getThreads());
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getQueueCapacity())),
+                new ThreadFactory() {
+                    private final AtomicLong counter = new AtomicLong(0);
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "message-shard-query-" + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+
+        log.info("跨分表查询执行器初始化完成: threads={}, timeoutMs={}, maxLimit={}",
+                threads, config.getTimeoutMs(), config.getMaxLimit());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        log.info("跨分表查询执行器已关闭: {}", getStats());
+    }
+
+    /**
+     * 跨全部分表查询消息（含content_extra）
+     *
+     * @param condition WHERE条件（不含WHERE关键字），使用?占位
+     * @param params 条件参数
+     * @param order 归并排序方式
+     * @param limit 全局返回条数
+     * @return 按排序方式归并后的前limit条消息
+     */
+    public List<Message> query(String condition, Object[] params, MergeOrder order, int limit) {
+        return query(condition, params, order, limit, true);
+    }
+
+    /**
+     * 跨全部分表查询消息
+     *
+     * @param condition WHERE条件（不含WHERE关键字），使用?占位
+     * @param params 条件参数
+     * @param order 归并排序方式
+     * @param limit 全局返回条数
+     * @param includeContentExtra 是否查询content_extra
+     * @return 按排序方式归并后的前limit条消息
+     */
+    public List<Message> query(String condition, Object[] params, MergeOrder order, int limit,
+                               boolean includeContentExtra) {
+        int effectiveLimit = Math.min(limit, config.getMaxLimit());
+        if (effectiveLimit <= 0) {
+            return new ArrayList<>();
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(config.getTimeoutMs());
+        queries.incrementAndGet();
+
+        MessageRowMapper rowMapper = MessageRowMapper.of(includeContentExtra);
+        ShardRoutingTable routingTable = shardRouter.current();
+        List<ShardScan> scans = routingTable.getScans();
+        Object[] args = new Object[params.length + 1];
+        System.arraycopy(params, 0, args, 0, params.length);
+        args[params.length] = effectiveLimit;
+
+        ShardCursor[] cursors = new ShardCursor[scans.size()];
+        try {
+            for (int i = 0; i < scans.size(); i++) {
+                ShardScan scan = scans.get(i);
+                String sql = "SELECT " + rowMapper.columns() + " FROM " + scan.getNode().getTableName()
+                        + " WHERE (" + condition + ")" + slotFilter(scan, routingTable.getSlotCount())
+                        + " ORDER BY " + order.getSql() + " LIMIT ?";
+                ShardCursor cursor = new ShardCursor(scan.getNode().toString());
+                cursors[i] = cursor;
+                cursor.future = executor.submit(() -> runShard(cursor, scan, sql, args, rowMapper));
+            }
+
+            List<Message> result = merge(cursors, order.getComparator(), effectiveLimit, deadline);
+            rowsReturned.addAndGet(result.size());
+            return result;
+        } catch (QueryTimeoutException e) {
+            timeouts.incrementAndGet();
+            throw e;
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            throw e;
+        } finally {
+            for (ShardCursor cursor : cursors) {
+                if (cursor != null) {
+                    cursor.cancel();
+                }
+            }
+            recordLatency(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * k路归并
+     * 堆中保存每个尚有数据的分表游标，按游标队首排序
+     */
+    static List<Message> merge(ShardCursor[] cursors, Comparator<Message> comparator, int limit, long deadline) {
+        PriorityQueue<ShardCursor> heap = new PriorityQueue<>(Math.max(1, cursors.length),
+                (a, b) -> comparator.compare(a.head, b.head));
+        for (ShardCursor cursor : cursors) {
+            if (cursor.advance(deadline)) {
+                heap.add(cursor);
+            }
+        }
+
+        List<Message> result = new ArrayList<>(Math.min(limit, 256));
+        while (!heap.isEmpty() && result.size() < limit) {
+            ShardCursor cursor = heap.poll();
+            result.add(cursor.head);
+            if (result.size() < limit && cursor.advance(deadline)) {
+                heap.add(cursor);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 执行单个分表查询，逐行写入游标队列
+     */
+    private void runShard(ShardCursor cursor, ShardScan scan, String sql, Object[] args, MessageRowMapper rowMapper) {
+        if (cursor.cancelled) {
+            return;
+        }
+        shardQueries.incrementAndGet();
+        DataSourceContextHolder.switchToSecondary();
+        try {
+            dataSources.jdbc(scan.getNode()).query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql);
+                ps.setFetchSize(config.getFetchSize());
+                new ArgumentPreparedStatementSetter(args).setValues(ps);
+                cursor.statement = ps;
+                return ps;
+            }, (RowCallbackHandler) rs -> {
+                if (cursor.cancelled) {
+                    throw new ShardCancelledException();
+                }
+                cursor.rows.add(rowMapper.mapRow(rs, 0));
+                rowsFetched.incrementAndGet();
+            });
+            cursor.rows.add(END);
+        } catch (RuntimeException e) {
+            if (cursor.cancelled) {
+                cancelledShards.incrementAndGet();
+            } else {
+                log.warn("分表查询失败: table={}, error={}", cursor.table, e.getMessage());
+                cursor.rows.add(e);
+            }
+        } finally {
+            cursor.statement = null;
+            DataSourceContextHolder.clearDataSource();
+        }
+    }
+
+    /**
+     * 分片槽过滤条件，槽号为路由表内的整数，直接拼接
+     */
+    private static String slotFilter(ShardScan scan, int slotCount) {
+        int[] slots = scan.getSlots();
+        if (slots == null) {
+            return "";
+        }
+        StringBuilder filter = new StringBuilder(" AND MOD(conversation_id, ").append(slotCount).append(") IN (");
+        for (int i = 0; i < slots.length; i++) {
+            filter.append(i == 0 ? "" : ",").append(slots[i]);
+        }
+        return filter.append(')').toString();
+    }
+
+    private void recordLatency(long nanos) {
+        totalLatencyNanos.addAndGet(nanos);
+        long current;
+        while (nanos > (current = maxLatencyNanos.get())) {
+            if (maxLatencyNanos.compareAndSet(current, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public ScatterGatherStats getStats() {
+        long queryCount = queries.get();
+        return new ScatterGatherStats(
+                queryCount,
+                shardQueries.get(),
+                cancelledShards.get(),
+                rowsFetched.get(),
+                rowsReturned.get(),
+                timeouts.get(),
+                failures.get(),
+                queryCount == 0 ? 0 : totalLatencyNanos.get() / queryCount / 1000,
+                maxLatencyNanos.get() / 1000,
+                executor == null ? 0 : executor.getActiveCount(),
+                executor == null ? 0 : executor.getQueue().size()
+        );
+    }
+
+    /**
+     * 分表游标
+     * 分表线程写入行，调用线程读取队首；队列长度受下推的LIMIT约束
+     */
+    static class ShardCursor {
+        final String table;
+        final LinkedBlockingQueue<Object> rows = new LinkedBlockingQueue<>();
+        volatile boolean cancelled;
+        volatile PreparedStatement statement;
+        Future<?> future;
+        Message head;
+        boolean finished;
+
+        ShardCursor(String table) {
+            this.table = table;
+        }
+
+        /**
+         * 前进到下一行
+         *
+         * @return 是否还有数据（head已更新）
+         */
+        boolean advance(long deadline) {
+            if (finished) {
+                return false;
+            }
+            Object next;
+            try {
+                long remaining = deadline - System.nanoTime();
+                next = remaining > 0 ? rows.poll(remaining, TimeUnit.NANOSECONDS) : rows.poll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueryTimeoutException("跨分表查询被中断: table=" + table);
+            }
+            if (next == null) {
+                throw new QueryTimeoutException("跨分表查询超时: table=" + table);
+            }
+            if (next == END) {
+                finished = true;
+                head = null;
+                return false;
+            }
+            if (next instanceof RuntimeException e) {
+                finished = true;
+                throw e;
+            }
+            head = (Message) next;
+            return true;
+        }
+
+        /**
+         * 取消分表任务：未开始的直接丢弃，执行中的取消Statement
+         */
+        void cancel() {
+            if (finished) {
+                return;
+            }
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+            PreparedStatement ps = statement;
+            if (ps != null) {
+                try {
+                    ps.cancel();
+                } catch (SQLException e) {
+                    log.debug("取消分表查询失败: table={}, error={}", table, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 分表任务被取消时用于中断行回调
+     */
+    private static class ShardCancelledException extends RuntimeException {
+        ShardCancelledException() {
+            super("shard query cancelled", null, false, false);
+        }
+    }
+
+    /**
+     * 跨分表查询统计信息
+     */
+    public static class ScatterGatherStats {
+        private final long queries;
+        private final long shardQueries;
+        private final long cancelledShards;
+        private final long rowsFetched;
+        private final long rowsReturned;
+        private final long timeouts;
+        private final long failures;
+        private final long avgLatencyMicros;
+        private final long maxLatencyMicros;
+        private final int activeThreads;
+        private final int queuedTasks;
+
+        public ScatterGatherStats(long queries, long shardQueries, long cancelledShards, long rowsFetched,
+                                  long rowsReturned, long timeouts, long failures, long avgLatencyMicros,
+                                  long maxLatencyMicros, int activeThreads, int queuedTasks) {
+            this.queries = queries;
+            this.shardQueries = shardQueries;
+            this.cancelledShards = cancelledShards;
+            this.rowsFetched = rowsFetched;
+            this.rowsReturned = rowsReturned;
+            this.timeouts = timeouts;
+            this.failures = failures;
+            this.avgLatencyMicros = avgLatencyMicros;
+            this.maxLatencyMicros = maxLatencyMicros;
+            this.activeThreads = activeThreads;
+            this.queuedTasks = queuedTasks;
+        }
+
+        public long getQueries() { return queries; }
+        public long getShardQueries() { return shardQueries; }
+        public long getCancelledShards() { return cancelledShards; }
+        public long getRowsFetched() { return rowsFetched; }
+        public long getRowsReturned() { return rowsReturned; }
+        public long getTimeouts() { return timeouts; }
+        public long getFailures() { return failures; }
+        public long getAvgLatencyMicros() { return avgLatencyMicros; }
+        public long getMaxLatencyMicros() { return maxLatencyMicros; }
+        public int getActiveThreads() { return activeThreads; }
+        public int getQueuedTasks() { return queuedTasks; }
+
+        @Override
+        public String toString() {
+            return String.format("ScatterGatherStats{queries=%d, shardQueries=%d, cancelledShards=%d, rowsFetched=%d, " +
+                            "rowsReturned=%d, timeouts=%d, failures=%d, avgLatency=%dus, maxLatency=%dus, active=%d, queued=%d}",
+                    queries, shardQueries, cancelledShards, rowsFetched, rowsReturned, timeouts, failures,
+                    avgLatencyMicros, maxLatencyMicros, activeThreads, queuedTasks);
+        }
+    }
+}
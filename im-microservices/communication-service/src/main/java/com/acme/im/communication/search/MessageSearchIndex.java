@@ -0,0 +1,149 @@
+package com.acme.im.communication.search;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 消息搜索索引
+ * 按会话ID取模划分为多个索引段，与消息分表规则一致，同一会话的消息落在同一段
+ *
+ * 1. 写入 - 只锁所在的段，不同段的写入和搜索互不影响
+ * 2. 搜索 - 限定单个会话时只查一个段，否则逐段取前limit条后归并
+ * 3. 分页 - 游标为最后一条结果的"时间:会话ID:消息ID"，下一页只取更旧的文档
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class MessageSearchIndex {
+
+    private final SearchSegment[] segments;
+
+    public MessageSearchIndex(int segmentCount, int maxDocsPerSegment) {
+        this.segments = new SearchSegment[Math.max(1, segmentCount)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new SearchSegment(maxDocsPerSegment);
+        }
+    }
+
+    public boolean add(SearchDocument doc) {
+        return segmentOf(doc.getConversationId()).add(doc);
+    }
+
+    public boolean edit(long conversationId, long messageId, String content) {
+        return segmentOf(conversationId).edit(conversationId, messageId, content);
+    }
+
+    public boolean remove(long conversationId, long messageId) {
+        return segmentOf(conversationId).remove(conversationId, messageId);
+    }
+
+    /**
+     * 搜索
+     *
+     * @param query 搜索条件，limit须大于0
+     * @return 按时间倒序的结果，不足limit条时nextCursor为null
+     */
+    public MessageSearchResult search(MessageSearchQuery query) {
+        long start = System.nanoTime();
+        int limit = query.getLimit();
+        List<String> keywords = NgramTokenizer.keywords(query.getKeyword());
+        Set<String> terms = new LinkedHashSet<>();
+        for (String keyword : keywords) {
+            terms.addAll(NgramTokenizer.queryTerms(keyword));
+        }
+        long[] cursor = parseCursor(query.getCursor());
+
+        List<SearchDocument> merged = new ArrayList<>();
+        Set<Long> conversations = query.getConversationIds();
+        if (conversations != null && conversations.isEmpty()) {
+            return new MessageSearchResult(List.of(), null, elapsedMicros(start));
+        }
+        for (SearchSegment segment : segmentsFor(conversations)) {
+            merged.addAll(segment.search(keywords, terms, query, cursor, limit));
+        }
+        merged.sort(SearchDocument::compareNewestFirst);
+
+        List<SearchDocument> hits = merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+        String nextCursor = null;
+        if (hits.size() == limit && limit > 0) {
+            SearchDocument last = hits.get(hits.size() - 1);
+            nextCursor = last.getTimestamp() + ":" + last.getConversationId() + ":" + last.getMessageId();
+        }
+        return new MessageSearchResult(hits, nextCursor, elapsedMicros(start));
+    }
+
+    /**
+     * 会话所在段完整覆盖的起始时间
+     */
+    public long coveredSince(long conversationId) {
+        return segmentOf(conversationId).coveredSince();
+    }
+
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    public long liveDocs() {
+        long total = 0;
+        for (SearchSegment segment : segments) {
+            total += segment.liveDocs();
+        }
+        return total;
+    }
+
+    public long terms() {
+        long total = 0;
+        for (SearchSegment segment : segments) {
+            total += segment.terms();
+        }
+        return total;
+    }
+
+    public long compactions() {
+        long total = 0;
+        for (SearchSegment segment : segments) {
+            total += segment.compactions();
+        }
+        return total;
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    private SearchSegment segmentOf(long conversationId) {
+        return segments[(int) Math.floorMod(conversationId, (long) segments.length)];
+    }
+
+    private List<SearchSegment> segmentsFor(Set<Long> conversations) {
+        if (conversations == null) {
+            return List.of(segments);
+        }
+        Set<SearchSegment> selected = new LinkedHashSet<>();
+        for (Long conversationId : conversations) {
+            selected.add(segmentOf(conversationId));
+        }
+        return new ArrayList<>(selected);
+    }
+
+    private static long[] parseCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String[] parts = cursor.split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("无效的搜索游标: " + cursor);
+        }
+        try {
+            return new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2])};
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的搜索游标: " + cursor, e);
+        }
+    }
+
+    private static long elapsedMicros(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000;
+    }
+}
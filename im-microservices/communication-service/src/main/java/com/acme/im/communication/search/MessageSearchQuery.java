@@ -0,0 +1,53 @@
+package com.acme.im.communication.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Set;
+
+/**
+ * 消息搜索条件
+ * 关键词按空白拆分后全部命中；过滤字段都为可选，未指定会话时在全部会话中搜索
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageSearchQuery {
+
+    /**
+     * 关键词，为空时只按过滤字段查询
+     */
+    private String keyword;
+
+    /**
+     * 限定会话，通常是当前用户所在的会话
+     */
+    private Set<Long> conversationIds;
+
+    private Long senderId;
+
+    private Set<Integer> msgTypes;
+
+    /**
+     * 开始时间（毫秒，含）
+     */
+    private Long startTime;
+
+    /**
+     * 结束时间（毫秒，不含）
+     */
+    private Long endTime;
+
+    /**
+     * 上一页返回的nextCursor
+     */
+    private String cursor;
+
+    private int limit;
+}
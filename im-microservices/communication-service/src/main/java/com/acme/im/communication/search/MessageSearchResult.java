@@ -0,0 +1,27 @@
+package com.acme.im.communication.search;
+
+import java.util.List;
+
+/**
+ * 消息搜索结果
+ * 按消息时间倒序，nextCursor传回下一次请求即可继续
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public final class MessageSearchResult {
+
+    private final List<SearchDocument> hits;
+    private final String nextCursor;
+    private final long tookMicros;
+
+    public MessageSearchResult(List<SearchDocument> hits, String nextCursor, long tookMicros) {
+        this.hits = hits;
+        this.nextCursor = nextCursor;
+        this.tookMicros = tookMicros;
+    }
+
+    public List<SearchDocument> getHits() { return hits; }
+    public String getNextCursor() { return nextCursor; }
+    public long getTookMicros() { return tookMicros; }
+}
@@ -0,0 +1,146 @@
+package com.acme.im.communication.search;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 搜索分词器
+ * 面向中日韩文字的n-gram分词，不依赖词典
+ *
+ * 1. 归一化 - 全角转半角、统一小写，与敏感词匹配的归一化规则一致
+ * 2. 切分 - 文本按字符类别切成连续片段：中日韩文字片段、字母数字片段，其余字符作为分隔
+ * 3. 索引词 - 中日韩片段输出单字和相邻二元组；字母数字片段输出相邻二元组，单字符片段输出单字
+ * 4. 查询词 - 单字的中日韩片段用单字，其余片段用二元组；
+ *    二元组交集只是候选，最终以归一化内容包含查询关键词为准
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public final class NgramTokenizer {
+
+    private NgramTokenizer() {
+    }
+
+    /**
+     * 字符归一化：全角转半角、统一小写
+     */
+    public static char normalize(char c) {
+        if (c >= '\uFF01' && c <= '\uFF5E') {
+            c = (char) (c - 0xFEE0);
+        } else if (c == '\u3000') {
+            c = ' ';
+        }
+        return Character.toLowerCase(c);
+    }
+
+    public static String normalize(String text) {
+        char[] chars = new char[text.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = normalize(text.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 文本的索引词，去重
+     */
+    public static Set<String> indexTerms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String normalized = normalize(text);
+        forEachRun(normalized, (start, end, cjk) -> {
+            if (end - start == 1) {
+                terms.add(normalized.substring(start, end));
+                return;
+            }
+            for (int i = start; i < end; i++) {
+                if (cjk) {
+                    terms.add(normalized.substring(i, i + 1));
+                }
+                if (i + 1 < end) {
+                    terms.add(normalized.substring(i, i + 2));
+                }
+            }
+        });
+        return terms;
+    }
+
+    /**
+     * 关键词的查询词，去重；全部命中才是候选
+     */
+    public static Set<String> queryTerms(String keyword) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (keyword == null || keyword.isEmpty()) {
+            return terms;
+        }
+        String normalized = normalize(keyword);
+        forEachRun(normalized, (start, end, cjk) -> {
+            if (end - start == 1) {
+                // 单个字母数字在长串中没有单字索引，只能交给原文校验
+                if (cjk) {
+                    terms.add(normalized.substring(start, end));
+                }
+                return;
+            }
+            for (int i = start; i + 1 < end; i++) {
+                terms.add(normalized.substring(i, i + 2));
+            }
+        });
+        return terms;
+    }
+
+    /**
+     * 按空白拆分查询串为关键词，已归一化
+     */
+    public static List<String> keywords(String query) {
+        List<String> keywords = new ArrayList<>();
+        if (query == null) {
+            return keywords;
+        }
+        for (String part : normalize(query).trim().split("\\s+")) {
+            if (!part.isEmpty()) {
+                keywords.add(part);
+            }
+        }
+        return keywords;
+    }
+
+    static boolean isCjk(char c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private interface RunConsumer {
+        void accept(int start, int end, boolean cjk);
+    }
+
+    private static void forEachRun(String text, RunConsumer consumer) {
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            char c = text.charAt(i);
+            boolean cjk = isCjk(c);
+            if (!cjk && !Character.isLetterOrDigit(c)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < length) {
+                char next = text.charAt(i);
+                boolean nextCjk = isCjk(next);
+                if (nextCjk != cjk || (!nextCjk && !Character.isLetterOrDigit(next))) {
+                    break;
+                }
+                i++;
+            }
+            consumer.accept(start, i, cjk);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.acme.im.communication.search;
+
+/**
+ * 索引中的消息文档
+ * 保存过滤字段和原文，搜索结果直接由文档构造，不回查数据库
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public final class SearchDocument {
+
+    private final long conversationId;
+    private final long messageId;
+    private final long seq;
+    private final long senderId;
+    private final int msgType;
+    private final long timestamp;
+    private final String content;
+
+    public SearchDocument(long conversationId, long messageId, long seq, long senderId,
+                          int msgType, long timestamp, String content) {
+        this.conversationId = conversationId;
+        this.messageId = messageId;
+        this.seq = seq;
+        this.senderId = senderId;
+        this.msgType = msgType;
+        this.timestamp = timestamp;
+        this.content = content != null ? content : "";
+    }
+
+    public long getConversationId() { return conversationId; }
+    public long getMessageId() { return messageId; }
+    public long getSeq() { return seq; }
+    public long getSenderId() { return senderId; }
+    public int getMsgType() { return msgType; }
+    public long getTimestamp() { return timestamp; }
+    public String getContent() { return content; }
+
+    SearchDocument withContent(String newContent) {
+        return new SearchDocument(conversationId, messageId, seq, senderId, msgType, timestamp, newContent);
+    }
+
+    /**
+     * 结果排序：时间倒序，同一时间按会话ID、消息ID倒序
+     */
+    static int compareNewestFirst(SearchDocument a, SearchDocument b) {
+        int c = Long.compare(b.timestamp, a.timestamp);
+        if (c != 0) {
+            return c;
+        }
+        c = Long.compare(b.conversationId, a.conversationId);
+        return c != 0 ? c : Long.compare(b.messageId, a.messageId);
+    }
+
+    /**
+     * 是否排在游标位置之后（更旧）
+     */
+    boolean isAfter(long[] cursor) {
+        if (timestamp != cursor[0]) {
+            return timestamp < cursor[0];
+        }
+        if (conversationId != cursor[1]) {
+            return conversationId < cursor[1];
+        }
+        return messageId < cursor[2];
+    }
+}
@@ -0,0 +1,363 @@
+package com.acme.im.communication.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 索引段
+ * 一个分片内消息的倒排索引，读写锁保护，写入串行、搜索并发
+ *
+ * 1. 文档号 - 按写入顺序递增，倒排表天然有序；近似按时间顺序，倒序扫描即可先取到最新消息
+ * 2. 倒排表 - 索引词、会话ID、发送者各一组，查询时从最短的表倒序扫描，其余表二分确认
+ * 3. 编辑 - 原文档号上替换内容并补充新词，旧词的倒排项保留到合并时清理，由内容校验排除
+ * 4. 合并 - 删除过多或超过容量时按时间重建，超出容量的最旧文档被淘汰，覆盖起点随之推进
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class SearchSegment {
+
+    private final int maxDocs;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private SearchDocument[] docs = new SearchDocument[64];
+    private int docCount;
+    private final BitSet deleted = new BitSet();
+    private int deletedCount;
+    private volatile long compactions;
+    private volatile long coveredSince = Long.MIN_VALUE;
+
+    private final Map<DocKey, Integer> docIds = new HashMap<>();
+    private final Map<String, IntList> termPostings = new HashMap<>();
+    private final Map<Long, IntList> conversationPostings = new HashMap<>();
+    private final Map<Long, IntList> senderPostings = new HashMap<>();
+
+    public SearchSegment(int maxDocs) {
+        this.maxDocs = maxDocs;
+    }
+
+    /**
+     * 写入文档，已存在时忽略
+     *
+     * @return 是否新写入
+     */
+    public boolean add(SearchDocument doc) {
+        lock.writeLock().lock();
+        try {
+            DocKey key = new DocKey(doc.getConversationId(), doc.getMessageId());
+            if (docIds.containsKey(key)) {
+                return false;
+            }
+            append(doc);
+            maybeCompact();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 替换文档内容
+     *
+     * @return 文档是否存在
+     */
+    public boolean edit(long conversationId, long messageId, String content) {
+        lock.writeLock().lock();
+        try {
+            Integer docId = docIds.get(new DocKey(conversationId, messageId));
+            if (docId == null) {
+                return false;
+            }
+            docs[docId] = docs[docId].withContent(content);
+            for (String term : NgramTokenizer.indexTerms(content)) {
+                termPostings.computeIfAbsent(term, k -> new IntList()).insertSorted(docId);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除文档
+     *
+     * @return 文档是否存在
+     */
+    public boolean remove(long conversationId, long messageId) {
+        lock.writeLock().lock();
+        try {
+            Integer docId = docIds.remove(new DocKey(conversationId, messageId));
+            if (docId == null) {
+                return false;
+            }
+            deleted.set(docId);
+            deletedCount++;
+            maybeCompact();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 搜索本段
+     *
+     * @param keywords 已归一化的关键词，全部包含才命中
+     * @param terms 关键词的查询词
+     * @param query 过滤条件
+     * @param cursor 游标位置，为null时从最新开始
+     * @param limit 最大条数
+     * @return 命中的文档，按时间倒序
+     */
+    public List<SearchDocument> search(List<String> keywords, Set<String> terms, MessageSearchQuery query,
+                                       long[] cursor, int limit) {
+        lock.readLock().lock();
+        try {
+            List<IntList> lists = new ArrayList<>();
+            for (String term : terms) {
+                IntList postings = termPostings.get(term);
+                if (postings == null) {
+                    return List.of();
+                }
+                lists.add(postings);
+            }
+            Set<Long> conversations = query.getConversationIds();
+            if (conversations != null && conversations.size() == 1) {
+                IntList postings = conversationPostings.get(conversations.iterator().next());
+                if (postings == null) {
+                    return List.of();
+                }
+                lists.add(postings);
+            }
+            if (query.getSenderId() != null) {
+                IntList postings = senderPostings.get(query.getSenderId());
+                if (postings == null) {
+                    return List.of();
+                }
+                lists.add(postings);
+            }
+            lists.sort(Comparator.comparingInt(IntList::size));
+
+            List<SearchDocument> hits = new ArrayList<>(Math.min(limit, 64));
+            if (lists.isEmpty()) {
+                for (int docId = docCount - 1; docId >= 0 && hits.size() < limit; docId--) {
+                    collect(docId, keywords, query, cursor, hits);
+                }
+            } else {
+                IntList driver = lists.get(0);
+                for (int i = driver.size() - 1; i >= 0 && hits.size() < limit; i--) {
+                    int docId = driver.get(i);
+                    if (containedInAll(lists, docId)) {
+                        collect(docId, keywords, query, cursor, hits);
+                    }
+                }
+            }
+            hits.sort(SearchDocument::compareNewestFirst);
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int liveDocs() {
+        lock.readLock().lock();
+        try {
+            return docCount - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int terms() {
+        lock.readLock().lock();
+        try {
+            return termPostings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long compactions() {
+        return compactions;
+    }
+
+    /**
+     * 本段完整覆盖的起始时间，更早的文档可能已被淘汰
+     *
+     * @return 毫秒时间戳，从未淘汰时为Long.MIN_VALUE
+     */
+    public long coveredSince() {
+        return coveredSince;
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    private void collect(int docId, List<String> keywords, MessageSearchQuery query, long[] cursor,
+                         List<SearchDocument> hits) {
+        if (deleted.get(docId)) {
+            return;
+        }
+        SearchDocument doc = docs[docId];
+        if (cursor != null && !doc.isAfter(cursor)) {
+            return;
+        }
+        if (query.getConversationIds() != null && !query.getConversationIds().contains(doc.getConversationId())) {
+            return;
+        }
+        if (query.getMsgTypes() != null && !query.getMsgTypes().isEmpty()
+                && !query.getMsgTypes().contains(doc.getMsgType())) {
+            return;
+        }
+        if (query.getStartTime() != null && doc.getTimestamp() < query.getStartTime()) {
+            return;
+        }
+        if (query.getEndTime() != null && doc.getTimestamp() >= query.getEndTime()) {
+            return;
+        }
+        if (!keywords.isEmpty()) {
+            String normalized = NgramTokenizer.normalize(doc.getContent());
+            for (String keyword : keywords) {
+                if (!normalized.contains(keyword)) {
+                    return;
+                }
+            }
+        }
+        hits.add(doc);
+    }
+
+    private static boolean containedInAll(List<IntList> lists, int docId) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(docId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(SearchDocument doc) {
+        if (docCount == docs.length) {
+            docs = Arrays.copyOf(docs, docs.length + (docs.length >> 1));
+        }
+        int docId = docCount++;
+        docs[docId] = doc;
+        docIds.put(new DocKey(doc.getConversationId(), doc.getMessageId()), docId);
+        for (String term : NgramTokenizer.indexTerms(doc.getContent())) {
+            termPostings.computeIfAbsent(term, k -> new IntList()).add(docId);
+        }
+        conversationPostings.computeIfAbsent(doc.getConversationId(), k -> new IntList()).add(docId);
+        senderPostings.computeIfAbsent(doc.getSenderId(), k -> new IntList()).add(docId);
+    }
+
+    /**
+     * 删除超过四分之一或超过容量时按时间重建，超出容量时保留最新的九成
+     */
+    private void maybeCompact() {
+        int live = docCount - deletedCount;
+        boolean tooManyDeleted = docCount >= 1024 && deletedCount > docCount / 4;
+        if (!tooManyDeleted && live <= maxDocs) {
+            return;
+        }
+        List<SearchDocument> retained = new ArrayList<>(live);
+        for (int docId = 0; docId < docCount; docId++) {
+            if (!deleted.get(docId)) {
+                retained.add(docs[docId]);
+            }
+        }
+        retained.sort((a, b) -> SearchDocument.compareNewestFirst(b, a));
+        if (retained.size() > maxDocs) {
+            int evicted = retained.size() - maxDocs * 9 / 10;
+            coveredSince = Math.max(coveredSince, retained.get(evicted - 1).getTimestamp() + 1);
+            retained = retained.subList(evicted, retained.size());
+        }
+
+        docs = new SearchDocument[Math.max(64, retained.size() + (retained.size() >> 1))];
+        docCount = 0;
+        deleted.clear();
+        deletedCount = 0;
+        docIds.clear();
+        termPostings.clear();
+        conversationPostings.clear();
+        senderPostings.clear();
+        for (SearchDocument doc : retained) {
+            append(doc);
+        }
+        compactions++;
+    }
+
+    private static final class DocKey {
+        private final long conversationId;
+        private final long messageId;
+
+        DocKey(long conversationId, long messageId) {
+            this.conversationId = conversationId;
+            this.messageId = messageId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DocKey other)) {
+                return false;
+            }
+            return conversationId == other.conversationId && messageId == other.messageId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(conversationId, messageId);
+        }
+    }
+
+    /**
+     * 有序文档号列表
+     */
+    static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = value;
+        }
+
+        void insertSorted(int value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = value;
+            size++;
+        }
+
+        boolean contains(int value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package com.acme.im.communication.service;
+
+import com.acme.im.common.infrastructure.nats.config.NatsConnectionManager;
+import com.acme.im.common.infrastructure.nats.constants.EventTopics;
+import com.acme.im.common.infrastructure.nats.subscriber.EventSubscriber;
+import com.acme.im.common.websocket.proto.WebSocketMessage;
+import com.acme.im.communication.config.ClusterDeliveryConfig;
+import com.acme.im.communication.websocket.ConnectionRegistry;
+import com.acme.im.communication.websocket.MessageFanoutEngine;
+import com.google.gson.Gson;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 集群消息投递服务
+ * 让多个通信服务节点水平扩展，消息只投递到持有接收方连接的节点
+ *
+ * 工作方式：
+ * 1. 在线状态 - 每个节点把 用户 -> 节点、会话 -> 节点 发布到Redis集合，心跳刷新过期时间
+ * 2. 精准路由 - 推送时先本地扇出，再查询会话/用户所在的其他存活节点；
+ *    存活以心跳快照为准，快照中没有的节点（如上次心跳后新启动的节点）直接查询其心跳分值确认
+ * 3. 节点主题 - 通过NATS主题 communication.delivery.node.{nodeId} 投递，消息体只序列化一次
+ * 4. 本地投递 - 接收节点交给MessageFanoutEngine推送本节点的连接
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Service
+@Slf4j
+public class ClusterDeliveryService implements ConnectionRegistry.PresenceListener {
+
+    private static final String USER_PRESENCE_PREFIX = "comm:presence:user:";
+    private static final String CONVERSATION_PRESENCE_PREFIX = "comm:presence:conv:";
+    private static final String NODES_KEY = "comm:presence:nodes";
+
+    private final ConnectionRegistry connectionRegistry;
+    private final MessageFanoutEngine fanoutEngine;
+    private final RedisTemplate<String, String> stringRedisTemplate;
+    private final NatsConnectionManager connectionManager;
+    private final EventSubscriber eventSubscriber;
+    private final Gson gson;
+    private final ClusterDeliveryConfig config;
+
+    private String nodeId;
+    private byte[] nodeIdBytes;
+
+    // 存活节点快照（心跳时刷新，查询未命中的节点确认存活后补入）
+    private volatile Set<String> liveNodes = Collections.emptySet();
+
+    // 会话路由缓存：conversationId -> 节点列表
+    private final Map<Long, RouteEntry> routeCache = new ConcurrentHashMap<>();
+
+    // 在线状态更新线程（单线程保证同一键的增删顺序）
+    private ScheduledExecutorService presenceExecutor;
+
+    // 统计信息
+    private final AtomicLong remotePublishes = new AtomicLong(0);
+    private final AtomicLong remotePublishFailures = new AtomicLong(0);
+    private final AtomicLong remoteReceived = new AtomicLong(0);
+    private final AtomicLong routeLookups = new AtomicLong(0);
+    private final AtomicLong routeCacheHits = new AtomicLong(0);
+
+    public ClusterDeliveryService(ConnectionRegistry connectionRegistry,
+                                  MessageFanoutEngine fanoutEngine,
+                                  @Qualifier("customStringRedisTemplate") RedisTemplate<String, String> stringRedisTemplate,
+                                  NatsConnectionManager connectionManager,
+                                  @Lazy EventSubscriber eventSubscriber,
+                                  @Qualifier("gson") Gson gson,
+                                  ClusterDeliveryConfig config) {
+        this.connectionRegistry = connectionRegistry;
+        this.fanoutEngine = fanoutEngine;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.connectionManager = connectionManager;
+        this.eventSubscriber = eventSubscriber;
+        this.gson = gson;
+        this.config = config;
+    }
+
+    /**
+     * 跨节点投递信封
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DeliveryEnvelope {
+        private String originNodeId;
+        private Long conversationId;
+        private Long userId;
+        private String topicDestination;
+        private String userDestination;
+        private String messageId;
+        private String payload;
+    }
+
+    /**
+     * 路由缓存条目
+     */
+    private static class RouteEntry {
+        private final Set<String> nodes;
+        private final long expiresAt;
+
+        RouteEntry(Set<String> nodes, long expiresAt) {
+            this.nodes = nodes;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * 集群投递统计信息
+     */
+    public static class ClusterStats {
+        private final String nodeId;
+        private final int liveNodes;
+        private final long remotePublishes;
+        private final long remotePublishFailures;
+        private final long remoteReceived;
+        private final long routeLookups;
+        private final long routeCacheHits;
+
+        public ClusterStats(String nodeId, int liveNodes, long remotePublishes, long remotePublishFailures,
+                            long remoteReceived, long routeLookups, long routeCacheHits) {
+            this.nodeId = nodeId;
+            this.liveNodes = liveNodes;
+            this.remotePublishes = remotePublishes;
+            this.remotePublishFailures = remotePublishFailures;
+            this.remoteReceived = remoteReceived;
+            this.routeLookups = routeLookups;
+            this.routeCacheHits = routeCacheHits;
+        }
+
+        public String getNodeId() { return nodeId; }
+        public int getLiveNodes() { return liveNodes; }
+        public long getRemotePublishes() { return remotePublishes; }
+        public long getRemotePublishFailures() { return remotePublishFailures; }
+        public long getRemoteReceived() { return remoteReceived; }
+        public long getRouteLookups() { return routeLookups; }
+        public long getRouteCacheHits() { return routeCacheHits; }
+
+        @Override
+        public String toString() {
+            return String.format("ClusterStats{nodeId=%s, liveNodes=%d, remotePublishes=%d, publishFailures=%d, remoteReceived=%d, routeLookups=%d, routeCacheHits=%d}",
+                    nodeId, liveNodes, remotePublishes, remotePublishFailures, remoteReceived, routeLookups, routeCacheHits);
+        }
+    }
+
+    /**
+     * 初始化节点标识并注册在线状态监听
+     */
+    @PostConstruct
+    public void initialize() {
+        nodeId = resolveNodeId();
+        nodeIdBytes = nodeId.getBytes(StandardCharsets.UTF_8);
+
+        presenceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cluster-presence");
+            t.setDaemon(true);
+            return t;
+        });
+
+        if (config.isEnabled()) {
+            connectionRegistry.setPresenceListener(this);
+        }
+        log.info("集群投递服务初始化: nodeId={}, enabled={}", nodeId, config.isEnabled());
+    }
+
+    /**
+     * 应用就绪后订阅本节点主题并启动心跳
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        String subject = EventTopics.Communication.Delivery.node(nodeId);
+        eventSubscriber.subscribe(subject, DeliveryEnvelope.class, this::handleRemoteDelivery);
+
+        presenceExecutor.scheduleWithFixedDelay(this::heartbeat, 0,
+                config.getHeartbeatIntervalMs(), TimeUnit.MILLISECONDS);
+        log.info("集群投递服务启动: subject={}", subject);
+    }
+
+    /**
+     * 关闭时撤销本节点的在线状态
+     */
+    @PreDestroy
+    public void shutdown() {
+        presenceExecutor.shutdown();
+        if (!config.isEnabled()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Long userId : connectionRegistry.getOnlineUserIds()) {
+                    connection.setCommands().sRem(bytes(USER_PRESENCE_PREFIX + userId), nodeIdBytes);
+                }
+                for (Long conversationId : connectionRegistry.getActiveConversationIds()) {
+                    connection.setCommands().sRem(bytes(CONVERSATION_PRESENCE_PREFIX + conversationId), nodeIdBytes);
+                }
+                connection.zSetCommands().zRem(bytes(NODES_KEY), nodeIdBytes);
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("撤销节点在线状态失败: nodeId={}, error={}", nodeId, e.getMessage());
+        }
+        log.info("集群投递服务已关闭: {}", getStats());
+    }
+
+    /**
+     * 向会话投递消息：本节点扇出，并转发给持有该会话关注者的其他节点
+     *
+     * @param conversationId 会话ID
+     * @param topicDestination 会话主题目的地，为null时不推送主题
+     * @param userDestination 成员队列目的地，为null时不推送给成员
+     * @param message 消息
+     */
+    public void deliverToConversation(long conversationId, String topicDestination, String userDestination,
+                                      WebSocketMessage message) {
+        byte[] body = fanoutEngine.toJsonBytes(message);
+        fanoutEngine.fanout(conversationId, topicDestination, userDestination, body, message.getMessageId());
+
+        if (!config.isEnabled()) {
+            return;
+        }
+        Set<String> nodes = resolveConversationNodes(conversationId);
+        if (nodes.isEmpty()) {
+            return;
+        }
+        DeliveryEnvelope envelope = new DeliveryEnvelope(nodeId, conversationId, null,
+                topicDestination, userDestination, message.getMessageId(), new String(body, StandardCharsets.UTF_8));
+        publishToNodes(nodes, envelope);
+    }
+
+    /**
+     * 向用户的所有终端投递消息（含其他节点上的终端）
+     *
+     * @param userId 用户ID
+     * @param destination 队列目的地
+     * @param message 消息
+     * @return 本节点送达的终端数
+     */
+    public int deliverToUser(long userId, String destination, WebSocketMessage message) {
+        byte[] body = fanoutEngine.toJsonBytes(message);
+        int delivered = fanoutEngine.sendToUser(userId, destination, body);
+
+        if (config.isEnabled()) {
+            Set<String> nodes = resolveUserNodes(userId);
+            if (!nodes.isEmpty()) {
+                DeliveryEnvelope envelope = new DeliveryEnvelope(nodeId, null, userId,
+                        null, destination, message.getMessageId(), new String(body, StandardCharsets.UTF_8));
+                publishToNodes(nodes, envelope);
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * 获取本节点ID
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 获取集群投递统计信息
+     */
+    public ClusterStats getStats() {
+        return new ClusterStats(nodeId, liveNodes.size(), remotePublishes.get(), remotePublishFailures.get(),
+                remoteReceived.get(), routeLookups.get(), routeCacheHits.get());
+    }
+
+    // ================================
+    // 在线状态监听
+    // ================================
+
+    @Override
+    public void onUserOnline(long userId) {
+        presenceExecutor.execute(() -> addPresence(USER_PRESENCE_PREFIX + userId));
+    }
+
+    @Override
+    public void onUserOffline(long userId) {
+        presenceExecutor.execute(() -> removePresence(USER_PRESENCE_PREFIX + userId));
+    }
+
+    @Override
+    public void onConversationActive(long conversationId) {
+        presenceExecutor.execute(() -> addPresence(CONVERSATION_PRESENCE_PREFIX + conversationId));
+    }
+
+    @Override
+    public void onConversationInactive(long conversationId) {
+        presenceExecutor.execute(() -> removePresence(CONVERSATION_PRESENCE_PREFIX + conversationId));
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    /**
+     * 处理其他节点转发的消息
+     */
+    private void handleRemoteDelivery(DeliveryEnvelope envelope) {
+        if (nodeId.equals(envelope.getOriginNodeId()) || envelope.getPayload() == null) {
+            return;
+        }
+        remoteReceived.incrementAndGet();
+        byte[] body = envelope.getPayload().getBytes(StandardCharsets.UTF_8);
+
+        if (envelope.getUserId() != null) {
+            fanoutEngine.sendToUser(envelope.getUserId(), envelope.getUserDestination(), body);
+        } else if (envelope.getConversationId() != null) {
+            fanoutEngine.fanout(envelope.getConversationId(), envelope.getTopicDestination(),
+                    envelope.getUserDestination(), body, envelope.getMessageId());
+        }
+    }
+
+    /**
+     * 发布到各节点主题
+     */
+    private void publishToNodes(Set<String> nodes, DeliveryEnvelope envelope) {
+        byte[] data = gson.toJson(envelope).getBytes(StandardCharsets.UTF_8);
+        try {
+            // 按会话选连接，同一会话的投递保持发布顺序
+            NatsConnectionManager.ManagedConnection connection =
+                    connectionManager.select(Objects.hashCode(envelope.getConversationId()));
+            for (String node : nodes) {
+                connection.publish(EventTopics.Communication.Delivery.node(node), data);
+                remotePublishes.incrementAndGet();
+            }
+        } catch (Exception e) {
+            remotePublishFailures.incrementAndGet();
+            log.warn("跨节点投递失败: nodes={}, messageId={}, error={}", nodes, envelope.getMessageId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 查询会话所在的其他存活节点（带短时本地缓存）
+     */
+    private Set<String> resolveConversationNodes(long conversationId) {
+        long now = System.currentTimeMillis();
+        RouteEntry entry = routeCache.get(conversationId);
+        if (entry != null && entry.expiresAt > now) {
+            routeCacheHits.incrementAndGet();
+            return entry.nodes;
+        }
+        Set<String> nodes = lookupNodes(CONVERSATION_PRESENCE_PREFIX + conversationId);
+        routeCache.put(conversationId, new RouteEntry(nodes, now + config.getRouteCacheTtlMs()));
+        return nodes;
+    }
+
+    /**
+     * 查询用户所在的其他存活节点
+     */
+    private Set<String> resolveUserNodes(long userId) {
+        return lookupNodes(USER_PRESENCE_PREFIX + userId);
+    }
+
+    /**
+     * 读取在线集合，过滤掉本节点与已失效节点
+     */
+    private Set<String> lookupNodes(String key) {
+        routeLookups.incrementAndGet();
+        try {
+            Set<String> members = stringRedisTemplate.opsForSet().members(key);
+            if (members == null || members.isEmpty()) {
+                return Collections.emptySet();
+            }
+            Set<String> live = liveNodes;
+            Set<String> nodes = new HashSet<>();
+            List<String> unknown = new ArrayList<>();
+            for (String member : members) {
+                if (member.equals(nodeId)) {
+                    continue;
+                }
+                if (live.contains(member)) {
+                    nodes.add(member);
+                } else {
+                    unknown.add(member);
+                }
+            }
+            if (!unknown.isEmpty()) {
+                nodes.addAll(confirmLiveNodes(unknown));
+            }
+            return nodes;
+        } catch (Exception e) {
+            log.warn("查询在线节点失败: key={}, error={}", key, e.getMessage());
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * 快照中没有的节点按心跳分值确认存活，确认存活的节点补入快照
+     */
+    private Set<String> confirmLiveNodes(List<String> candidates) {
+        byte[] nodesKey = bytes(NODES_KEY);
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String candidate : candidates) {
+                connection.zSetCommands().zScore(nodesKey, bytes(candidate));
+            }
+            return null;
+        });
+        long aliveSince = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(config.getPresenceTtlSeconds());
+        Set<String> confirmed = new HashSet<>();
+        for (int i = 0; i < candidates.size() && i < scores.size(); i++) {
+            if (scores.get(i) instanceof Number score && score.doubleValue() >= aliveSince) {
+                confirmed.add(candidates.get(i));
+            }
+        }
+        if (!confirmed.isEmpty()) {
+            synchronized (this) {
+                Set<String> refreshed = new HashSet<>(liveNodes);
+                refreshed.addAll(confirmed);
+                liveNodes = Set.copyOf(refreshed);
+            }
+            log.debug("存活节点快照补入新节点: nodes={}", confirmed);
+        }
+        return confirmed;
+    }
+
+    private void addPresence(String key) {
+        try {
+            stringRedisTemplate.opsForSet().add(key, nodeId);
+            stringRedisTemplate.expire(key, config.getPresenceTtlSeconds(), TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("发布在线状态失败: key={}, error={}", key, e.getMessage());
+        }
+    }
+
+    private void removePresence(String key) {
+        try {
+            stringRedisTemplate.opsForSet().remove(key, nodeId);
+        } catch (Exception e) {
+            log.warn("撤销在线状态失败: key={}, error={}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * 心跳：刷新节点存活、在线状态过期时间与存活节点快照
+     */
+    private void heartbeat() {
+        try {
+            long now = System.currentTimeMillis();
+            long ttlSeconds = config.getPresenceTtlSeconds();
+
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.zSetCommands().zAdd(bytes(NODES_KEY), now, nodeIdBytes);
+                for (Long userId : connectionRegistry.getOnlineUserIds()) {
+                    byte[] key = bytes(USER_PRESENCE_PREFIX + userId);
+                    connection.setCommands().sAdd(key, nodeIdBytes);
+                    connection.keyCommands().expire(key, ttlSeconds);
+                }
+                for (Long conversationId : connectionRegistry.getActiveConversationIds()) {
+                    byte[] key = bytes(CONVERSATION_PRESENCE_PREFIX + conversationId);
+                    connection.setCommands().sAdd(key, nodeIdBytes);
+                    connection.keyCommands().expire(key, ttlSeconds);
+                }
+                return null;
+            });
+
+            long aliveSince = now - TimeUnit.SECONDS.toMillis(ttlSeconds);
+            stringRedisTemplate.opsForZSet().removeRangeByScore(NODES_KEY, Double.NEGATIVE_INFINITY, aliveSince);
+            Set<String> nodes = stringRedisTemplate.opsForZSet().rangeByScore(NODES_KEY, aliveSince, Double.POSITIVE_INFINITY);
+            liveNodes = nodes != null ? Set.copyOf(nodes) : Collections.emptySet();
+
+            routeCache.entrySet().removeIf(e -> e.getValue().expiresAt <= now);
+
+            log.debug("集群心跳完成: nodeId={}, liveNodes={}, onlineUsers={}, activeConversations={}",
+                    nodeId, liveNodes.size(), connectionRegistry.getOnlineUserCount(),
+                    connectionRegistry.getActiveConversationCount());
+        } catch (Exception e) {
+            log.warn("集群心跳失败: nodeId={}, error={}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * 解析节点ID，保证可以作为NATS主题的一段
+     */
+    private String resolveNodeId() {
+        String id = config.getNodeId();
+        if (id == null || id.isBlank()) {
+            String host;
+            try {
+                host = System.getenv("HOSTNAME");
+                if (host == null || host.isBlank()) {
+                    host = InetAddress.getLocalHost().getHostName();
+                }
+            } catch (Exception e) {
+                host = "node";
+            }
+            id = host + "-" + ProcessHandle.current().pid();
+        }
+        return id.replaceAll("[^A-Za-z0-9_-]", "-");
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
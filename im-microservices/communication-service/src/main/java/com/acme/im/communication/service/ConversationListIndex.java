@@ -0,0 +1,123 @@
+package com.acme.im.communication.service;
+
+/**
+ * 会话列表索引编码
+ *
+ * 1. 排序分值 - 最后活跃毫秒数，置顶会话再加PIN_OFFSET，倒序后置顶在前且各自按时间排列
+ * 2. 条目值 - 消息ID|序列号|发送者|消息类型|时间|是否撤回|摘要，摘要放最后可以包含分隔符；
+ *    消息ID大于0而序列号为0表示重建时只知道消息ID，读取时再批量补齐
+ * 3. 游标 - 上一页最后一条的 分值:会话ID，同分值按会话ID字典序倒序继续
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public final class ConversationListIndex {
+
+    /**
+     * 置顶偏移，大于任何毫秒时间戳且仍在double精确整数范围内
+     */
+    public static final long PIN_OFFSET = 10_000_000_000_000L;
+
+    private static final char SEPARATOR = '|';
+
+    private ConversationListIndex() {
+    }
+
+    public static long score(long lastActiveMillis, boolean pinned) {
+        return pinned ? lastActiveMillis + PIN_OFFSET : lastActiveMillis;
+    }
+
+    public static long lastActiveMillis(long score) {
+        return score >= PIN_OFFSET ? score - PIN_OFFSET : score;
+    }
+
+    /**
+     * 编码条目值
+     */
+    public static String encode(ConversationSummary summary) {
+        String preview = summary.getLastMessagePreview();
+        return new StringBuilder(64)
+                .append(summary.getLastMessageId()).append(SEPARATOR)
+                .append(summary.getLastSeq()).append(SEPARATOR)
+                .append(summary.getLastSenderId()).append(SEPARATOR)
+                .append(summary.getLastMsgType()).append(SEPARATOR)
+                .append(summary.getLastMessageTime()).append(SEPARATOR)
+                .append(summary.isLastMessageRecalled() ? 1 : 0).append(SEPARATOR)
+                .append(preview != null ? preview : "")
+                .toString();
+    }
+
+    /**
+     * 解码条目值到summary，格式不合法返回false
+     */
+    public static boolean decode(String value, ConversationSummary summary) {
+        if (value == null) {
+            return false;
+        }
+        long[] fields = new long[6];
+        int from = 0;
+        for (int i = 0; i < fields.length; i++) {
+            int to = value.indexOf(SEPARATOR, from);
+            if (to < 0) {
+                return false;
+            }
+            try {
+                fields[i] = Long.parseLong(value, from, to, 10);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            from = to + 1;
+        }
+        summary.setLastMessageId(fields[0]);
+        summary.setLastSeq(fields[1]);
+        summary.setLastSenderId(fields[2]);
+        summary.setLastMsgType((int) fields[3]);
+        summary.setLastMessageTime(fields[4]);
+        summary.setLastMessageRecalled(fields[5] == 1);
+        summary.setLastMessagePreview(value.substring(from));
+        return true;
+    }
+
+    /**
+     * 是否只有消息ID、需要补齐消息摘要
+     */
+    public static boolean needsBody(ConversationSummary summary) {
+        return summary.getLastMessageId() > 0 && summary.getLastSeq() == 0;
+    }
+
+    /**
+     * 截取消息摘要，换行替换为空格
+     */
+    public static String preview(String content, int maxLength) {
+        if (content == null || content.isEmpty()) {
+            return "";
+        }
+        String text = content.length() > maxLength ? content.substring(0, maxLength) : content;
+        return text.replace('\n', ' ').replace('\r', ' ');
+    }
+
+    public static String cursor(long score, long conversationId) {
+        return score + ":" + conversationId;
+    }
+
+    /**
+     * 解析游标
+     *
+     * @return {分值, 会话ID}，空游标或格式不合法返回null，从头开始
+     */
+    public static long[] parseCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        int split = cursor.indexOf(':');
+        if (split <= 0) {
+            return null;
+        }
+        try {
+            return new long[]{Long.parseLong(cursor, 0, split, 10),
+                    Long.parseLong(cursor, split + 1, cursor.length(), 10)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
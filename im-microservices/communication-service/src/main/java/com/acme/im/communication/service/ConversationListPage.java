@@ -0,0 +1,27 @@
+package com.acme.im.communication.service;
+
+import java.util.List;
+
+/**
+ * 会话列表分页结果
+ * 置顶会话在前，其余按最后活跃时间倒序；nextCursor传回下一次请求即可继续
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public final class ConversationListPage {
+
+    private final List<ConversationSummary> conversations;
+    private final String nextCursor;
+    private final boolean hasMore;
+
+    public ConversationListPage(List<ConversationSummary> conversations, String nextCursor, boolean hasMore) {
+        this.conversations = conversations;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<ConversationSummary> getConversations() { return conversations; }
+    public String getNextCursor() { return nextCursor; }
+    public boolean isHasMore() { return hasMore; }
+}
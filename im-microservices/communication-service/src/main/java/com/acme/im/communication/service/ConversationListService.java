@@ -0,0 +1,709 @@
+package com.acme.im.communication.service;
+
+import com.acme.im.communication.config.ConversationListConfig;
+import com.acme.im.communication.entity.Message;
+import com.acme.im.communication.repository.MessageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 会话列表服务
+ * 为每个用户维护最近会话的读模型，登录时按页读取，代价与页大小成正比而不是与会话数成正比
+ *
+ * 1. 索引 - Redis有序集合 im:convlist:{用户ID} 按最后活跃时间排序（置顶在前），
+ *    哈希 im:convlist:meta:{用户ID} 保存每个会话的紧凑摘要，置顶和免打扰各用一个集合
+ * 2. 增量更新 - 新消息和撤回按会话合并，每个间隔解析一次会话成员，
+ *    每个成员一次脚本调用更新其索引；只更新已建立索引的用户，同时合并写回conversations的最后消息
+ * 3. 重建 - 索引不存在时以一条SQL从conversation_members和conversations重建，
+ *    此时只知道最后消息ID，摘要在读取该页时按分表批量补齐
+ * 4. 未读数 - 条目的最后序列号减已读水位，读取时随页计算，已读事件推进水位后即时生效
+ *
+ * 成员关系变更由业务服务发布事件，ConversationMembershipEventHandler调用invalidate使该用户的索引重建
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Service
+@Slf4j
+public class ConversationListService {
+
+    private static final String INDEX_KEY_PREFIX = "im:convlist:";
+    private static final String META_KEY_PREFIX = "im:convlist:meta:";
+    private static final String PIN_KEY_PREFIX = "im:convlist:pin:";
+    private static final String MUTE_KEY_PREFIX = "im:convlist:mute:";
+
+    // 哨兵成员，区分"没有会话"和"索引未建立"
+    private static final String SENTINEL = "_";
+
+    // KEYS=索引,摘要,置顶,免打扰 ARGV[1]=过期毫秒 ARGV[2]=置顶偏移 ARGV[3]=保留条数
+    // ARGV[4..]每4个一组：会话ID,活跃时间,摘要,模式（M新消息/R撤回）
+    private static final byte[] UPDATE_SCRIPT = ("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                return 0
+            end
+            local offset = tonumber(ARGV[2])
+            local updated = 0
+            for i = 4, #ARGV, 4 do
+                local conv, ts, value, mode = ARGV[i], tonumber(ARGV[i + 1]), ARGV[i + 2], ARGV[i + 3]
+                local current = redis.call('HGET', KEYS[2], conv)
+                local currentId = current and string.match(current, '^(%d+)|') or nil
+                if mode == 'R' then
+                    if currentId == string.match(value, '^(%d+)|') then
+                        redis.call('HSET', KEYS[2], conv, value)
+                        updated = updated + 1
+                    end
+                else
+                    local currentSeq = current and tonumber(string.match(current, '^%d+|(%d+)|')) or 0
+                    if tonumber(string.match(value, '^%d+|(%d+)|')) >= currentSeq then
+                        local pinned = redis.call('SISMEMBER', KEYS[3], conv)
+                        redis.call('ZADD', KEYS[1], ts + pinned * offset, conv)
+                        redis.call('HSET', KEYS[2], conv, value)
+                        updated = updated + 1
+                    end
+                end
+            end
+            local excess = redis.call('ZCARD', KEYS[1]) - 1 - tonumber(ARGV[3])
+            if excess > 0 then
+                local victims = redis.call('ZRANGE', KEYS[1], 1, excess)
+                redis.call('ZREM', KEYS[1], unpack(victims))
+                redis.call('HDEL', KEYS[2], unpack(victims))
+            end
+            for k = 1, 4 do
+                redis.call('PEXPIRE', KEYS[k], ARGV[1])
+            end
+            return updated
+            """).getBytes(StandardCharsets.UTF_8);
+
+    // 返回 {状态, 会话ID, 分值, 摘要, 是否置顶, 是否免打扰, ...}，索引不存在时状态为-1
+    // ARGV[1]=游标分值或+inf ARGV[2]=游标会话ID ARGV[3]=条数 ARGV[4]=过期毫秒
+    private static final byte[] READ_SCRIPT = ("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                return {-1}
+            end
+            local max = ARGV[1]
+            local maxScore = max == '+inf' and math.huge or tonumber(max)
+            local cursorMember = ARGV[2]
+            local want = tonumber(ARGV[3])
+            local out = {0}
+            local n, offset = 0, 0
+            while n < want do
+                local batch = redis.call('ZREVRANGEBYSCORE', KEYS[1], max, 0, 'WITHSCORES', 'LIMIT', offset, want)
+                if #batch == 0 then
+                    break
+                end
+                for i = 1, #batch, 2 do
+                    local m, s = batch[i], batch[i + 1]
+                    if n < want and (cursorMember == '' or tonumber(s) < maxScore or m < cursorMember) then
+                        out[#out + 1] = m
+                        out[#out + 1] = s
+                        out[#out + 1] = redis.call('HGET', KEYS[2], m) or ''
+                        out[#out + 1] = redis.call('SISMEMBER', KEYS[3], m)
+                        out[#out + 1] = redis.call('SISMEMBER', KEYS[4], m)
+                        n = n + 1
+                    end
+                end
+                offset = offset + #batch / 2
+            end
+            for k = 1, 4 do
+                redis.call('PEXPIRE', KEYS[k], ARGV[4])
+            end
+            return out
+            """).getBytes(StandardCharsets.UTF_8);
+
+    // KEYS=索引,标记集合 ARGV[1]=会话ID ARGV[2]=1设置/0取消 ARGV[3]=置顶偏移，0表示不影响排序
+    private static final byte[] FLAG_SCRIPT = ("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                return 0
+            end
+            if ARGV[2] == '1' then
+                redis.call('SADD', KEYS[2], ARGV[1])
+            else
+                redis.call('SREM', KEYS[2], ARGV[1])
+            end
+            local offset = tonumber(ARGV[3])
+            local score = redis.call('ZSCORE', KEYS[1], ARGV[1])
+            if offset > 0 and score then
+                local ts = tonumber(score)
+                if ts >= offset then
+                    ts = ts - offset
+                end
+                if ARGV[2] == '1' then
+                    ts = ts + offset
+                end
+                redis.call('ZADD', KEYS[1], ts, ARGV[1])
+            end
+            local ttl = redis.call('PTTL', KEYS[1])
+            if ttl > 0 then
+                redis.call('PEXPIRE', KEYS[2], ttl)
+            end
+            return 1
+            """).getBytes(StandardCharsets.UTF_8);
+
+    private static final String REBUILD_SQL = """
+            SELECT cm.conversation_id, cm.is_pinned, cm.is_muted, c.last_message_id,
+                   COALESCE(c.last_message_at, cm.joined_at) AS last_active_at
+            FROM conversation_members cm
+            JOIN conversations c ON c.id = cm.conversation_id
+            WHERE cm.user_id = ? AND c.status = 1
+            ORDER BY last_active_at DESC
+            LIMIT ?
+            """;
+
+    private static final String UPDATE_LAST_MESSAGE_SQL = """
+            UPDATE conversations SET last_message_id = ?, last_message_at = ?
+            WHERE id = ? AND (last_message_at IS NULL OR last_message_at <= ?)
+            """;
+
+    private static final String UPDATE_PINNED_SQL =
+            "UPDATE conversation_members SET is_pinned = ? WHERE conversation_id = ? AND user_id = ?";
+
+    private static final String UPDATE_MUTED_SQL =
+            "UPDATE conversation_members SET is_muted = ? WHERE conversation_id = ? AND user_id = ?";
+
+    private final RedisTemplate<String, String> stringRedisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final ConversationMemberCache memberCache;
+    private final MessageRepository messageRepository;
+    private final ReadStateService readStateService;
+    private final ConversationListConfig config;
+
+    // 按会话合并的待更新消息，只保留序列号最大的一条
+    private final ConcurrentHashMap<Long, Message> pendingMessages = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Message> pendingRecalls = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flushExecutor;
+
+    // 统计信息
+    private final AtomicLong conversationUpdates = new AtomicLong(0);
+    private final AtomicLong userUpdates = new AtomicLong(0);
+    private final AtomicLong updateFailures = new AtomicLong(0);
+    private final AtomicLong rebuilds = new AtomicLong(0);
+    private final AtomicLong bodyBackfills = new AtomicLong(0);
+    private final AtomicLong pageReads = new AtomicLong(0);
+
+    public ConversationListService(@Qualifier("customStringRedisTemplate") RedisTemplate<String, String> stringRedisTemplate,
+                                   JdbcTemplate jdbcTemplate,
+                                   ConversationMemberCache memberCache,
+                                   MessageRepository messageRepository,
+                                   ReadStateService readStateService,
+                                   ConversationListConfig config) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.memberCache = memberCache;
+        this.messageRepository = messageRepository;
+        this.readStateService = readStateService;
+        this.config = config;
+    }
+
+    /**
+     * 启动合并更新线程
+     */
+    @PostConstruct
+    public void initialize() {
+        if (!config.isEnabled()) {
+            log.info("会话列表索引未启用");
+            return;
+        }
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "conversation-list-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flush,
+                config.getFlushIntervalMs(), config.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        log.info("会话列表服务初始化完成: flushIntervalMs={}, maxEntries={}",
+                config.getFlushIntervalMs(), config.getMaxEntries());
+    }
+
+    /**
+     * 优雅关闭：写入所有待更新会话
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (flushExecutor == null) {
+            return;
+        }
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        log.info("会话列表服务已关闭: {}", getStats());
+    }
+
+    /**
+     * 新消息更新会话成员的会话列表
+     */
+    public void onMessage(Message message) {
+        if (!config.isEnabled() || message.getId() == null || message.getSeq() == null) {
+            return;
+        }
+        pendingMessages.merge(message.getConversationId(), message, ConversationListService::newer);
+    }
+
+    /**
+     * 消息撤回，若是会话的最后一条消息则更新摘要
+     */
+    public void onMessageRecalled(Message message) {
+        if (!config.isEnabled() || message.getId() == null || message.getSeq() == null) {
+            return;
+        }
+        pendingRecalls.merge(message.getConversationId(), message, ConversationListService::newer);
+    }
+
+    /**
+     * 分页读取会话列表
+     *
+     * @param userId 用户ID
+     * @param cursor 上一页返回的nextCursor，首页传null
+     * @param limit 每页会话数，不超过配置上限
+     * @return 会话列表页
+     */
+    public ConversationListPage getConversationList(long userId, String cursor, int limit) {
+        if (!config.isEnabled()) {
+            return new ConversationListPage(Collections.emptyList(), null, false);
+        }
+        pageReads.incrementAndGet();
+        int pageSize = Math.max(1, Math.min(limit, config.getMaxPageSize()));
+        long[] position = ConversationListIndex.parseCursor(cursor);
+
+        List<Object> raw = readIndex(userId, position, pageSize + 1);
+        if (raw != null && !raw.isEmpty() && toLong(raw.get(0)) < 0) {
+            rebuild(userId);
+            raw = readIndex(userId, position, pageSize + 1);
+        }
+        if (raw == null || raw.isEmpty() || toLong(raw.get(0)) < 0) {
+            return new ConversationListPage(Collections.emptyList(), null, false);
+        }
+
+        List<ConversationSummary> conversations = new ArrayList<>(pageSize);
+        long lastScore = 0;
+        boolean hasMore = false;
+        for (int i = 1; i + 4 < raw.size(); i += 5) {
+            if (conversations.size() == pageSize) {
+                hasMore = true;
+                break;
+            }
+            ConversationSummary summary = new ConversationSummary();
+            summary.setConversationId(Long.parseLong(toText(raw.get(i))));
+            lastScore = toLong(raw.get(i + 1));
+            ConversationListIndex.decode(toText(raw.get(i + 2)), summary);
+            if (summary.getLastMessageTime() == 0) {
+                summary.setLastMessageTime(ConversationListIndex.lastActiveMillis(lastScore));
+            }
+            summary.setPinned(toLong(raw.get(i + 3)) == 1);
+            summary.setMuted(toLong(raw.get(i + 4)) == 1);
+            conversations.add(summary);
+        }
+
+        backfillBodies(userId, conversations);
+        fillUnreadCounts(userId, conversations);
+
+        String nextCursor = hasMore
+                ? ConversationListIndex.cursor(lastScore, conversations.get(conversations.size() - 1).getConversationId())
+                : null;
+        return new ConversationListPage(conversations, nextCursor, hasMore);
+    }
+
+    /**
+     * 设置会话置顶
+     *
+     * @return 是否更新成功
+     */
+    public boolean setPinned(long userId, long conversationId, boolean pinned) {
+        return updateFlag(UPDATE_PINNED_SQL, PIN_KEY_PREFIX, userId, conversationId, pinned, ConversationListIndex.PIN_OFFSET);
+    }
+
+    /**
+     * 设置会话免打扰
+     *
+     * @return 是否更新成功
+     */
+    public boolean setMuted(long userId, long conversationId, boolean muted) {
+        return updateFlag(UPDATE_MUTED_SQL, MUTE_KEY_PREFIX, userId, conversationId, muted, 0);
+    }
+
+    /**
+     * 删除用户的会话列表索引，下次读取时重建
+     * 用户加入或退出会话后调用
+     */
+    public void invalidate(long userId) {
+        stringRedisTemplate.delete(List.of(INDEX_KEY_PREFIX + userId, META_KEY_PREFIX + userId,
+                PIN_KEY_PREFIX + userId, MUTE_KEY_PREFIX + userId));
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public ConversationListStats getStats() {
+        return new ConversationListStats(conversationUpdates.get(), userUpdates.get(), updateFailures.get(),
+                rebuilds.get(), bodyBackfills.get(), pageReads.get(), pendingMessages.size() + pendingRecalls.size());
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    /**
+     * 合并后的新消息和撤回写入各成员的索引
+     */
+    private void flush() {
+        try {
+            Map<Long, Message> messages = drain(pendingMessages);
+            Map<Long, Message> recalls = drain(pendingRecalls);
+            if (messages.isEmpty() && recalls.isEmpty()) {
+                return;
+            }
+
+            Set<Long> conversationIds = new HashSet<>(messages.keySet());
+            conversationIds.addAll(recalls.keySet());
+            Map<Long, long[]> members = memberCache.getMembers(conversationIds);
+
+            Map<Long, List<byte[]>> argsByUser = new LinkedHashMap<>();
+            collectArgs(messages, members, "M", argsByUser);
+            collectArgs(recalls, members, "R", argsByUser);
+            writeIndex(argsByUser);
+            conversationUpdates.addAndGet(messages.size() + recalls.size());
+
+            updateLastMessages(messages.values());
+        } catch (Exception e) {
+            log.error("会话列表合并更新异常", e);
+        }
+    }
+
+    private void collectArgs(Map<Long, Message> messages, Map<Long, long[]> members, String mode,
+                             Map<Long, List<byte[]>> argsByUser) {
+        byte[] modeBytes = bytes(mode);
+        for (Message message : messages.values()) {
+            long[] userIds = members.get(message.getConversationId());
+            if (userIds == null || userIds.length == 0) {
+                continue;
+            }
+            ConversationSummary summary = summarize(message);
+            byte[] conversation = bytes(String.valueOf(message.getConversationId()));
+            byte[] timestamp = bytes(String.valueOf(summary.getLastMessageTime()));
+            byte[] value = bytes(ConversationListIndex.encode(summary));
+            for (long userId : userIds) {
+                List<byte[]> args = argsByUser.computeIfAbsent(userId, k -> new ArrayList<>());
+                args.add(conversation);
+                args.add(timestamp);
+                args.add(value);
+                args.add(modeBytes);
+            }
+        }
+    }
+
+    /**
+     * 每个用户一次脚本调用，整批通过管道提交
+     */
+    private void writeIndex(Map<Long, List<byte[]>> argsByUser) {
+        if (argsByUser.isEmpty()) {
+            return;
+        }
+        byte[] ttlMs = bytes(String.valueOf(TimeUnit.DAYS.toMillis(config.getTtlDays())));
+        byte[] offset = bytes(String.valueOf(ConversationListIndex.PIN_OFFSET));
+        byte[] maxEntries = bytes(String.valueOf(config.getMaxEntries()));
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Map.Entry<Long, List<byte[]>> entry : argsByUser.entrySet()) {
+                    long userId = entry.getKey();
+                    List<byte[]> args = entry.getValue();
+                    byte[][] keysAndArgs = new byte[7 + args.size()][];
+                    keysAndArgs[0] = bytes(INDEX_KEY_PREFIX + userId);
+                    keysAndArgs[1] = bytes(META_KEY_PREFIX + userId);
+                    keysAndArgs[2] = bytes(PIN_KEY_PREFIX + userId);
+                    keysAndArgs[3] = bytes(MUTE_KEY_PREFIX + userId);
+                    keysAndArgs[4] = ttlMs;
+                    keysAndArgs[5] = offset;
+                    keysAndArgs[6] = maxEntries;
+                    for (int i = 0; i < args.size(); i++) {
+                        keysAndArgs[7 + i] = args.get(i);
+                    }
+                    connection.scriptingCommands().eval(UPDATE_SCRIPT, ReturnType.INTEGER, 4, keysAndArgs);
+                }
+                return null;
+            });
+            userUpdates.addAndGet(argsByUser.size());
+        } catch (Exception e) {
+            updateFailures.incrementAndGet();
+            log.warn("会话列表索引更新失败: users={}, error={}", argsByUser.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 合并写回conversations的最后消息，供索引重建使用
+     */
+    private void updateLastMessages(Iterable<Message> messages) {
+        List<Object[]> args = new ArrayList<>();
+        for (Message message : messages) {
+            Timestamp at = Timestamp.valueOf(message.getServerTimestamp() != null
+                    ? message.getServerTimestamp() : LocalDateTime.now());
+            args.add(new Object[]{message.getId(), at, message.getConversationId(), at});
+        }
+        if (args.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_LAST_MESSAGE_SQL, args);
+        } catch (Exception e) {
+            log.warn("更新会话最后消息失败: size={}, error={}", args.size(), e.getMessage());
+        }
+    }
+
+    private List<Object> readIndex(long userId, long[] position, int count) {
+        byte[] max = bytes(position != null ? String.valueOf(position[0]) : "+inf");
+        byte[] member = bytes(position != null ? String.valueOf(position[1]) : "");
+        byte[] ttlMs = bytes(String.valueOf(TimeUnit.DAYS.toMillis(config.getTtlDays())));
+        return stringRedisTemplate.execute((RedisCallback<List<Object>>) connection ->
+                connection.scriptingCommands().eval(READ_SCRIPT, ReturnType.MULTI, 4,
+                        bytes(INDEX_KEY_PREFIX + userId), bytes(META_KEY_PREFIX + userId),
+                        bytes(PIN_KEY_PREFIX + userId), bytes(MUTE_KEY_PREFIX + userId),
+                        max, member, bytes(String.valueOf(count)), ttlMs));
+    }
+
+    /**
+     * 从数据库重建用户的会话列表索引
+     */
+    private void rebuild(long userId) {
+        rebuilds.incrementAndGet();
+        List<Object[]> rows;
+        try {
+            rows = jdbcTemplate.query(REBUILD_SQL, (rs, rowNum) -> {
+                Timestamp lastActive = rs.getTimestamp("last_active_at");
+                return new Object[]{
+                        rs.getLong("conversation_id"),
+                        rs.getInt("is_pinned") == 1,
+                        rs.getInt("is_muted") == 1,
+                        rs.getLong("last_message_id"),
+                        lastActive != null ? lastActive.getTime() : 0L};
+            }, userId, config.getMaxEntries());
+        } catch (Exception e) {
+            log.warn("重建会话列表失败: userId={}, error={}", userId, e.getMessage());
+            return;
+        }
+
+        byte[] indexKey = bytes(INDEX_KEY_PREFIX + userId);
+        byte[] metaKey = bytes(META_KEY_PREFIX + userId);
+        byte[] pinKey = bytes(PIN_KEY_PREFIX + userId);
+        byte[] muteKey = bytes(MUTE_KEY_PREFIX + userId);
+        long ttlMs = TimeUnit.DAYS.toMillis(config.getTtlDays());
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.keyCommands().del(indexKey, metaKey, pinKey, muteKey);
+            connection.zSetCommands().zAdd(indexKey, -1, bytes(SENTINEL));
+            for (Object[] row : rows) {
+                long conversationId = (Long) row[0];
+                boolean pinned = (Boolean) row[1];
+                long lastActive = (Long) row[4];
+                byte[] member = bytes(String.valueOf(conversationId));
+                ConversationSummary summary = new ConversationSummary();
+                summary.setLastMessageId((Long) row[3]);
+                summary.setLastMessageTime(lastActive);
+                connection.zSetCommands().zAdd(indexKey, ConversationListIndex.score(lastActive, pinned), member);
+                connection.hashCommands().hSet(metaKey, member, bytes(ConversationListIndex.encode(summary)));
+                if (pinned) {
+                    connection.setCommands().sAdd(pinKey, member);
+                }
+                if ((Boolean) row[2]) {
+                    connection.setCommands().sAdd(muteKey, member);
+                }
+            }
+            for (byte[] key : new byte[][]{indexKey, metaKey, pinKey, muteKey}) {
+                connection.keyCommands().pExpire(key, ttlMs);
+            }
+            return null;
+        });
+        log.debug("会话列表索引已重建: userId={}, conversations={}", userId, rows.size());
+    }
+
+    /**
+     * 重建后只有消息ID的条目按分表批量查询消息并写回索引
+     */
+    private void backfillBodies(long userId, List<ConversationSummary> conversations) {
+        Map<Long, List<Long>> idsByConversation = new HashMap<>();
+        for (ConversationSummary summary : conversations) {
+            if (ConversationListIndex.needsBody(summary)) {
+                idsByConversation.put(summary.getConversationId(), List.of(summary.getLastMessageId()));
+            }
+        }
+        if (idsByConversation.isEmpty()) {
+            return;
+        }
+        Map<MessageRepository.MessageKey, Message> bodies = messageRepository.findByIds(idsByConversation);
+        List<byte[]> args = new ArrayList<>();
+        for (ConversationSummary summary : conversations) {
+            Message message = bodies.get(
+                    new MessageRepository.MessageKey(summary.getConversationId(), summary.getLastMessageId()));
+            if (message == null || !ConversationListIndex.needsBody(summary)) {
+                continue;
+            }
+            ConversationSummary filled = summarize(message);
+            summary.setLastSeq(filled.getLastSeq());
+            summary.setLastSenderId(filled.getLastSenderId());
+            summary.setLastMsgType(filled.getLastMsgType());
+            summary.setLastMessagePreview(filled.getLastMessagePreview());
+            summary.setLastMessageRecalled(filled.isLastMessageRecalled());
+            args.add(bytes(String.valueOf(summary.getConversationId())));
+            args.add(bytes(String.valueOf(filled.getLastMessageTime())));
+            args.add(bytes(ConversationListIndex.encode(filled)));
+            args.add(bytes("M"));
+        }
+        if (!args.isEmpty()) {
+            bodyBackfills.addAndGet(args.size() / 4);
+            writeIndex(Map.of(userId, args));
+        }
+    }
+
+    private void fillUnreadCounts(long userId, List<ConversationSummary> conversations) {
+        List<Long> withMessages = new ArrayList<>(conversations.size());
+        for (ConversationSummary summary : conversations) {
+            if (summary.getLastSeq() > 0) {
+                withMessages.add(summary.getConversationId());
+            }
+        }
+        if (withMessages.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> lastReads = readStateService.getLastReadSeqs(userId, withMessages);
+        for (ConversationSummary summary : conversations) {
+            Long lastRead = lastReads.get(summary.getConversationId());
+            if (lastRead != null) {
+                summary.setUnreadCount(Math.max(0, summary.getLastSeq() - lastRead));
+            }
+        }
+    }
+
+    private boolean updateFlag(String sql, String keyPrefix, long userId, long conversationId,
+                               boolean value, long offset) {
+        int rows = jdbcTemplate.update(sql, value ? 1 : 0, conversationId, userId);
+        if (rows == 0) {
+            return false;
+        }
+        try {
+            stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                    connection.scriptingCommands().eval(FLAG_SCRIPT, ReturnType.INTEGER, 2,
+                            bytes(INDEX_KEY_PREFIX + userId), bytes(keyPrefix + userId),
+                            bytes(String.valueOf(conversationId)), bytes(value ? "1" : "0"),
+                            bytes(String.valueOf(offset))));
+        } catch (Exception e) {
+            // 数据库已更新，索引删除后按数据库重建
+            log.warn("更新会话列表标记失败，重建索引: userId={}, conversationId={}, error={}",
+                    userId, conversationId, e.getMessage());
+            invalidate(userId);
+        }
+        return true;
+    }
+
+    private ConversationSummary summarize(Message message) {
+        ConversationSummary summary = new ConversationSummary();
+        summary.setConversationId(message.getConversationId());
+        summary.setLastMessageId(message.getId());
+        summary.setLastSeq(message.getSeq());
+        summary.setLastSenderId(message.getSenderId() != null ? message.getSenderId() : 0);
+        summary.setLastMsgType(message.getMsgType() != null ? message.getMsgType() : 0);
+        summary.setLastMessageTime(message.getServerTimestamp() != null
+                ? message.getServerTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : System.currentTimeMillis());
+        boolean recalled = message.isRecalled();
+        summary.setLastMessageRecalled(recalled);
+        summary.setLastMessagePreview(recalled ? "" : ConversationListIndex.preview(message.getContent(), config.getPreviewLength()));
+        return summary;
+    }
+
+    private static Message newer(Message a, Message b) {
+        return b.getSeq() >= a.getSeq() ? b : a;
+    }
+
+    private static Map<Long, Message> drain(ConcurrentHashMap<Long, Message> pending) {
+        Map<Long, Message> batch = new HashMap<>();
+        Iterator<Long> it = pending.keySet().iterator();
+        while (it.hasNext()) {
+            Long conversationId = it.next();
+            Message message = pending.remove(conversationId);
+            if (message != null) {
+                batch.put(conversationId, message);
+            }
+        }
+        return batch;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String toText(Object value) {
+        return value instanceof byte[] b ? new String(b, StandardCharsets.UTF_8) : String.valueOf(value);
+    }
+
+    private static long toLong(Object value) {
+        if (value instanceof Number n) {
+            return n.longValue();
+        }
+        return (long) Double.parseDouble(toText(value));
+    }
+
+    /**
+     * 会话列表统计
+     */
+    public static class ConversationListStats {
+        private final long conversationUpdates;
+        private final long userUpdates;
+        private final long updateFailures;
+        private final long rebuilds;
+        private final long bodyBackfills;
+        private final long pageReads;
+        private final int pendingConversations;
+
+        public ConversationListStats(long conversationUpdates, long userUpdates, long updateFailures,
+                                     long rebuilds, long bodyBackfills, long pageReads, int pendingConversations) {
+            this.conversationUpdates = conversationUpdates;
+            this.userUpdates = userUpdates;
+            this.updateFailures = updateFailures;
+            this.rebuilds = rebuilds;
+            this.bodyBackfills = bodyBackfills;
+            this.pageReads = pageReads;
+            this.pendingConversations = pendingConversations;
+        }
+
+        public long getConversationUpdates() { return conversationUpdates; }
+        public long getUserUpdates() { return userUpdates; }
+        public long getUpdateFailures() { return updateFailures; }
+        public long getRebuilds() { return rebuilds; }
+        public long getBodyBackfills() { return bodyBackfills; }
+        public long getPageReads() { return pageReads; }
+        public int getPendingConversations() { return pendingConversations; }
+
+        @Override
+        public String toString() {
+            return String.format("ConversationListStats{conversations=%d, users=%d, failures=%d, rebuilds=%d, backfills=%d, pages=%d, pending=%d}",
+                    conversationUpdates, userUpdates, updateFailures, rebuilds, bodyBackfills, pageReads, pendingConversations);
+        }
+    }
+}
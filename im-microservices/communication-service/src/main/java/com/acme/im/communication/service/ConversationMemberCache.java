@@ -0,0 +1,101 @@
+package com.acme.im.communication.service;
+
+import com.acme.im.communication.config.ConversationMemberConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 会话成员缓存
+ * 从conversation_members加载会话的全部成员（不限在线），短时间本地缓存
+ *
+ * 成员关系由业务服务维护，缓存过期前的成员变更不可见
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationMemberCache {
+
+    private static final String MEMBERS_SQL =
+            "SELECT conversation_id, user_id FROM conversation_members WHERE conversation_id IN (%s)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConversationMemberConfig config;
+
+    private final Map<Long, CachedMembers> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 批量解析会话成员，未缓存或已过期的会话合并为一次查询
+     *
+     * @param conversationIds 会话ID
+     * @return 会话ID到成员用户ID的映射，加载失败的会话不包含在结果中
+     */
+    public Map<Long, long[]> getMembers(Collection<Long> conversationIds) {
+        long now = System.currentTimeMillis();
+        Map<Long, long[]> resolved = new HashMap<>();
+        Set<Long> missing = new LinkedHashSet<>();
+        for (Long conversationId : conversationIds) {
+            CachedMembers cached = cache.get(conversationId);
+            if (cached != null && now - cached.loadedAt < config.getCacheTtlMs()) {
+                resolved.put(conversationId, cached.userIds);
+            } else {
+                missing.add(conversationId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return resolved;
+        }
+
+        Map<Long, List<Long>> loaded = new HashMap<>();
+        try {
+            String placeholders = String.join(", ", Collections.nCopies(missing.size(), "?"));
+            jdbcTemplate.query(String.format(MEMBERS_SQL, placeholders), rs -> {
+                loaded.computeIfAbsent(rs.getLong(1), k -> new ArrayList<>()).add(rs.getLong(2));
+            }, missing.toArray());
+        } catch (Exception e) {
+            log.warn("加载会话成员失败: conversations={}, error={}", missing.size(), e.getMessage());
+            return resolved;
+        }
+        for (Long conversationId : missing) {
+            long[] ids = loaded.getOrDefault(conversationId, Collections.emptyList())
+                    .stream().mapToLong(Long::longValue).toArray();
+            cache.put(conversationId, new CachedMembers(ids, now));
+            resolved.put(conversationId, ids);
+        }
+        if (cache.size() > config.getMaxCachedConversations()) {
+            cache.entrySet().removeIf(e -> now - e.getValue().loadedAt >= config.getCacheTtlMs());
+        }
+        return resolved;
+    }
+
+    /**
+     * 成员变更后使缓存失效
+     */
+    public void invalidate(long conversationId) {
+        cache.remove(conversationId);
+    }
+
+    private static final class CachedMembers {
+        private final long[] userIds;
+        private final long loadedAt;
+
+        CachedMembers(long[] userIds, long loadedAt) {
+            this.userIds = userIds;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
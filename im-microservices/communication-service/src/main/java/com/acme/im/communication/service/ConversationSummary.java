@@ -0,0 +1,47 @@
+package com.acme.im.communication.service;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 会话列表条目
+ * 最近会话列表的一行：最后一条消息摘要、未读数和置顶/免打扰标记
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Data
+@NoArgsConstructor
+public class ConversationSummary {
+
+    private long conversationId;
+
+    /**
+     * 最后一条消息ID，会话没有消息时为0
+     */
+    private long lastMessageId;
+
+    private long lastSeq;
+
+    private long lastSenderId;
+
+    private int lastMsgType;
+
+    /**
+     * 最后消息内容摘要，撤回后为空
+     */
+    private String lastMessagePreview;
+
+    /**
+     * 最后活跃时间（毫秒），没有消息时为加入时间
+     */
+    private long lastMessageTime;
+
+    private boolean lastMessageRecalled;
+
+    private long unreadCount;
+
+    private boolean pinned;
+
+    private boolean muted;
+}
@@ -0,0 +1,606 @@
+package com.acme.im.communication.service;
+
+import com.acme.im.common.infrastructure.nats.config.NatsConnectionManager;
+import com.acme.im.common.infrastructure.nats.constants.EventTopics;
+import com.acme.im.common.infrastructure.nats.subscriber.EventSubscriber;
+import com.acme.im.communication.config.HotConversationCacheConfig;
+import com.acme.im.communication.entity.Message;
+import com.acme.im.communication.repository.MessageRepository;
+import com.google.gson.Gson;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 热点会话消息缓存
+ * 为每个被读取过的会话在内存中维护最近N条消息的环形窗口（按seq升序），
+ * 服务 getLatestMessages 与窗口覆盖范围内的 getMessageHistory，冷历史才访问数据库
+ *
+ * 设计要点：
+ * 1. 覆盖不变式 - 窗口包含 seq >= 窗口最小seq 的全部正常（status=1）消息；
+ *    会话消息总数不足N条时窗口为完整窗口，任意beforeSeq分页都可直接服务
+ * 2. 写穿透 - 创建、编辑、撤回、删除、置顶在事务提交后更新已缓存的窗口；
+ *    未缓存的会话不因写入而加载，驻留完全由读取驱动
+ * 3. 加载防竞态 - 窗口从主写节点加载，包含加载前已提交的全部消息；
+ *    按会话分段写版本号，加载查询期间有写入则放弃安装，避免缓存旧快照
+ * 4. 淘汰 - 会话数或估算内存超出预算时按最近访问时间批量淘汰（近似LRU）
+ * 5. 跨节点失效 - 写穿透只作用于本节点，写入生效后经NATS通知其他节点丢弃该会话窗口，
+ *    下次读取时重新加载；失效同样推进写版本号，其他节点进行中的加载不会安装旧快照
+ * 6. 返回的消息对象为缓存共享实例，调用方只读使用
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@Slf4j
+public class HotConversationCache {
+
+    private static final int STAMP_STRIPES = 1024;
+
+    private final MessageRepository messageRepository;
+    private final HotConversationCacheConfig config;
+    private final ClusterDeliveryService clusterDeliveryService;
+    private final NatsConnectionManager connectionManager;
+    private final EventSubscriber eventSubscriber;
+    private final Gson gson;
+
+    private final Map<Long, RingWindow> windows = new ConcurrentHashMap<>();
+
+    // 会话写版本号（按会话ID分段），用于检测加载期间的并发写入
+    private final AtomicLongArray writeStamps = new AtomicLongArray(STAMP_STRIPES);
+
+    private final AtomicLong totalBytes = new AtomicLong(0);
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // 统计信息
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong bypasses = new AtomicLong(0);
+    private final AtomicLong loads = new AtomicLong(0);
+    private final AtomicLong staleLoads = new AtomicLong(0);
+    private final AtomicLong writeThroughs = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+    private final AtomicLong remoteInvalidations = new AtomicLong(0);
+    private final AtomicLong broadcastFailures = new AtomicLong(0);
+
+    public HotConversationCache(MessageRepository messageRepository,
+                                HotConversationCacheConfig config,
+                                ClusterDeliveryService clusterDeliveryService,
+                                NatsConnectionManager connectionManager,
+                                @Lazy EventSubscriber eventSubscriber,
+                                @Qualifier("gson") Gson gson) {
+        this.messageRepository = messageRepository;
+        this.config = config;
+        this.clusterDeliveryService = clusterDeliveryService;
+        this.connectionManager = connectionManager;
+        this.eventSubscriber = eventSubscriber;
+        this.gson = gson;
+    }
+
+    /**
+     * 节点间广播的会话缓存失效通知
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Invalidation {
+        private String originNodeId;
+        private Long conversationId;
+    }
+
+    /**
+     * 会话消息环形窗口
+     * 按seq升序保存最近的消息，满时淘汰最旧的一条
+     */
+    static class RingWindow {
+        private final Message[] ring;
+        private int head;
+        private int size;
+        private boolean complete;
+        private long bytes;
+        private boolean detached;
+        private volatile long lastAccess;
+
+        /**
+         * @param capacity 窗口容量
+         * @param latestDesc 按seq降序的最新消息
+         * @param complete 是否已包含会话的全部消息
+         */
+        RingWindow(int capacity, List<Message> latestDesc, boolean complete) {
+            this.ring = new Message[capacity];
+            int count = Math.min(capacity, latestDesc.size());
+            for (int i = count - 1; i >= 0; i--) {
+                Message message = latestDesc.get(i);
+                ring[size++] = message;
+                bytes += estimateBytes(message);
+            }
+            this.complete = complete && count == latestDesc.size();
+            this.lastAccess = System.nanoTime();
+        }
+
+        /**
+         * 最新的limit条消息（seq降序），窗口不足以回答时返回null
+         */
+        synchronized List<Message> latest(int limit) {
+            if (size < limit && !complete) {
+                return null;
+            }
+            return collectDesc(size, limit);
+        }
+
+        /**
+         * seq小于beforeSeq的limit条消息（seq降序），超出窗口覆盖范围时返回null
+         */
+        synchronized List<Message> before(long beforeSeq, int limit) {
+            int end = lowerBound(beforeSeq);
+            if (end < limit && !complete) {
+                return null;
+            }
+            return collectDesc(end, limit);
+        }
+
+        /**
+         * 插入或替换消息
+         *
+         * @return 估算内存变化量（字节）
+         */
+        synchronized long upsert(Message message) {
+            if (detached) {
+                return 0;
+            }
+            long seq = message.getSeq();
+            int index = lowerBound(seq);
+            if (index < size && at(index).getSeq() == seq) {
+                long delta = estimateBytes(message) - estimateBytes(at(index));
+                set(index, message);
+                bytes += delta;
+                return delta;
+            }
+            if (index == 0 && !complete) {
+                // 低于窗口覆盖范围（或窗口为空且不完整），不缓存
+                return 0;
+            }
+
+            long delta = 0;
+            if (size == ring.length) {
+                if (index == 0) {
+                    return 0;
+                }
+                delta -= estimateBytes(at(0));
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+                index--;
+                complete = false;
+            }
+            for (int i = size; i > index; i--) {
+                set(i, at(i - 1));
+            }
+            set(index, message);
+            size++;
+            delta += estimateBytes(message);
+            bytes += delta;
+            return delta;
+        }
+
+        /**
+         * 移除指定seq的消息
+         *
+         * @return 估算内存变化量（字节，非正数）
+         */
+        synchronized long remove(long seq) {
+            if (detached) {
+                return 0;
+            }
+            int index = lowerBound(seq);
+            if (index >= size || at(index).getSeq() != seq) {
+                return 0;
+            }
+            long delta = -estimateBytes(at(index));
+            for (int i = index; i < size - 1; i++) {
+                set(i, at(i + 1));
+            }
+            set(size - 1, null);
+            size--;
+            bytes += delta;
+            return delta;
+        }
+
+        /**
+         * 从缓存中摘除，之后的写入不再计入内存统计
+         *
+         * @return 摘除时的估算内存
+         */
+        synchronized long detach() {
+            detached = true;
+            return bytes;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized boolean isComplete() {
+            return complete;
+        }
+
+        synchronized long getBytes() {
+            return bytes;
+        }
+
+        private List<Message> collectDesc(int end, int limit) {
+            int count = Math.min(limit, end);
+            if (count <= 0) {
+                return Collections.emptyList();
+            }
+            List<Message> result = new ArrayList<>(count);
+            for (int i = end - 1; i >= end - count; i--) {
+                result.add(at(i));
+            }
+            return result;
+        }
+
+        /**
+         * 第一个seq >= target 的逻辑下标
+         */
+        private int lowerBound(long target) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (at(mid).getSeq() < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private Message at(int index) {
+            return ring[(head + index) % ring.length];
+        }
+
+        private void set(int index, Message message) {
+            ring[(head + index) % ring.length] = message;
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public static class CacheStats {
+        private final int conversations;
+        private final long estimatedBytes;
+        private final long hits;
+        private final long misses;
+        private final long bypasses;
+        private final long loads;
+        private final long staleLoads;
+        private final long writeThroughs;
+        private final long evictions;
+        private final long remoteInvalidations;
+        private final long broadcastFailures;
+
+        public CacheStats(int conversations, long estimatedBytes, long hits, long misses, long bypasses,
+                          long loads, long staleLoads, long writeThroughs, long evictions,
+                          long remoteInvalidations, long broadcastFailures) {
+            this.conversations = conversations;
+            this.estimatedBytes = estimatedBytes;
+            this.hits = hits;
+            this.misses = misses;
+            this.bypasses = bypasses;
+            this.loads = loads;
+            this.staleLoads = staleLoads;
+            this.writeThroughs = writeThroughs;
+            this.evictions = evictions;
+            this.remoteInvalidations = remoteInvalidations;
+            this.broadcastFailures = broadcastFailures;
+        }
+
+        public int getConversations() { return conversations; }
+        public long getEstimatedBytes() { return estimatedBytes; }
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getBypasses() { return bypasses; }
+        public long getLoads() { return loads; }
+        public long getStaleLoads() { return staleLoads; }
+        public long getWriteThroughs() { return writeThroughs; }
+        public long getEvictions() { return evictions; }
+        public long getRemoteInvalidations() { return remoteInvalidations; }
+        public long getBroadcastFailures() { return broadcastFailures; }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total > 0 ? (double) hits / total : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("CacheStats{conversations=%d, bytes=%d, hits=%d, misses=%d, hitRate=%.2f%%, bypasses=%d, loads=%d, staleLoads=%d, writeThroughs=%d, evictions=%d, remoteInvalidations=%d, broadcastFailures=%d}",
+                    conversations, estimatedBytes, hits, misses, getHitRate() * 100, bypasses, loads, staleLoads, writeThroughs, evictions,
+                    remoteInvalidations, broadcastFailures);
+        }
+    }
+
+    /**
+     * 应用就绪后订阅其他节点的缓存失效通知
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        if (!config.isEnabled() || !config.isBroadcastInvalidations()) {
+            return;
+        }
+        eventSubscriber.subscribe(EventTopics.Communication.HotCache.INVALIDATE, Invalidation.class,
+                this::handleRemoteInvalidation);
+        log.info("热点会话缓存失效通知已订阅: subject={}", EventTopics.Communication.HotCache.INVALIDATE);
+    }
+
+    /**
+     * 查询会话最新消息（seq降序）
+     *
+     * @param conversationId 会话ID
+     * @param limit 限制数量
+     * @return 消息列表
+     */
+    public List<Message> getLatestMessages(long conversationId, int limit) {
+        if (!config.isEnabled() || limit > config.getMessagesPerConversation()) {
+            bypasses.incrementAndGet();
+            return messageRepository.findLatestByConversationId(conversationId, limit);
+        }
+
+        RingWindow window = windows.get(conversationId);
+        if (window != null) {
+            List<Message> cached = window.latest(limit);
+            if (cached != null) {
+                window.lastAccess = System.nanoTime();
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        misses.incrementAndGet();
+        List<Message> rows = load(conversationId);
+        return rows.size() > limit ? new ArrayList<>(rows.subList(0, limit)) : rows;
+    }
+
+    /**
+     * 分页查询消息历史（seq降序），窗口覆盖范围内直接返回，冷历史查询数据库且不加载进缓存
+     *
+     * @param conversationId 会话ID
+     * @param beforeSeq 在此序号之前的消息，为null时等同于查询最新消息
+     * @param limit 限制数量
+     * @return 消息列表
+     */
+    public List<Message> getMessageHistory(long conversationId, Long beforeSeq, int limit) {
+        if (beforeSeq == null) {
+            return getLatestMessages(conversationId, limit);
+        }
+        if (!config.isEnabled()) {
+            bypasses.incrementAndGet();
+            return messageRepository.findHistoryByConversationId(conversationId, beforeSeq, limit);
+        }
+
+        RingWindow window = windows.get(conversationId);
+        if (window != null) {
+            List<Message> cached = window.before(beforeSeq, limit);
+            if (cached != null) {
+                window.lastAccess = System.nanoTime();
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        misses.incrementAndGet();
+        return messageRepository.findHistoryByConversationId(conversationId, beforeSeq, limit);
+    }
+
+    /**
+     * 消息写入后更新缓存（写穿透）并通知其他节点失效该会话
+     * 处于事务中时在提交后生效，status不为正常的消息从窗口移除
+     *
+     * @param message 已持久化的消息（需包含conversationId与seq）
+     */
+    public void onMessageWritten(Message message) {
+        if (!config.isEnabled() || message == null
+                || message.getConversationId() == null || message.getSeq() == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(message);
+                    broadcastInvalidation(message.getConversationId());
+                }
+            });
+        } else {
+            apply(message);
+            broadcastInvalidation(message.getConversationId());
+        }
+    }
+
+    /**
+     * 移除会话缓存，并通知其他节点移除
+     *
+     * @param conversationId 会话ID
+     */
+    public void invalidate(long conversationId) {
+        invalidateLocal(conversationId);
+        broadcastInvalidation(conversationId);
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public CacheStats getStats() {
+        return new CacheStats(windows.size(), totalBytes.get(), hits.get(), misses.get(), bypasses.get(),
+                loads.get(), staleLoads.get(), writeThroughs.get(), evictions.get(),
+                remoteInvalidations.get(), broadcastFailures.get());
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    private void invalidateLocal(long conversationId) {
+        writeStamps.incrementAndGet(stripe(conversationId));
+        RingWindow removed = windows.remove(conversationId);
+        if (removed != null) {
+            totalBytes.addAndGet(-removed.detach());
+        }
+    }
+
+    private void broadcastInvalidation(long conversationId) {
+        if (!config.isBroadcastInvalidations()) {
+            return;
+        }
+        Invalidation invalidation = new Invalidation(clusterDeliveryService.getNodeId(), conversationId);
+        try {
+            connectionManager.select(EventTopics.Communication.HotCache.INVALIDATE)
+                    .publish(EventTopics.Communication.HotCache.INVALIDATE,
+                            gson.toJson(invalidation).getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            broadcastFailures.incrementAndGet();
+            log.warn("热点会话缓存失效通知发送失败: conversationId={}, error={}", conversationId, e.getMessage());
+        }
+    }
+
+    private void handleRemoteInvalidation(Invalidation invalidation) {
+        if (invalidation == null || invalidation.getConversationId() == null
+                || clusterDeliveryService.getNodeId().equals(invalidation.getOriginNodeId())) {
+            return;
+        }
+        remoteInvalidations.incrementAndGet();
+        invalidateLocal(invalidation.getConversationId());
+    }
+
+    /**
+     * 从主写节点加载最新N条消息，加载期间无并发写入时安装窗口
+     * 从库可能缺少刚提交的消息，以其为快照会违反覆盖不变式
+     *
+     * @return 按seq降序的消息
+     */
+    private List<Message> load(long conversationId) {
+        int capacity = config.getMessagesPerConversation();
+        int stripe = stripe(conversationId);
+        long stamp = writeStamps.get(stripe);
+        List<Message> rows = messageRepository.findWrittenLatestByConversationId(conversationId, capacity);
+        loads.incrementAndGet();
+
+        RingWindow loaded = new RingWindow(capacity, rows, rows.size() < capacity);
+        boolean[] installed = {false};
+        // 与写穿透的computeIfPresent互斥：写入要么先于安装（版本号已变，放弃安装），要么作用于新窗口
+        windows.compute(conversationId, (k, previous) -> {
+            if (writeStamps.get(stripe) != stamp) {
+                return previous;
+            }
+            if (previous != null) {
+                totalBytes.addAndGet(-previous.detach());
+            }
+            totalBytes.addAndGet(loaded.getBytes());
+            installed[0] = true;
+            return loaded;
+        });
+
+        if (installed[0]) {
+            evictIfNecessary();
+        } else {
+            staleLoads.incrementAndGet();
+            log.debug("加载期间会话有写入，放弃安装缓存: conversationId={}", conversationId);
+        }
+        return rows;
+    }
+
+    private void apply(Message message) {
+        long conversationId = message.getConversationId();
+        writeStamps.incrementAndGet(stripe(conversationId));
+        windows.computeIfPresent(conversationId, (k, window) -> {
+            long delta = Integer.valueOf(1).equals(message.getStatus())
+                    ? window.upsert(message)
+                    : window.remove(message.getSeq());
+            totalBytes.addAndGet(delta);
+            return window;
+        });
+        writeThroughs.incrementAndGet();
+    }
+
+    /**
+     * 超出会话数或内存预算时，按最近访问时间淘汰到目标比例
+     */
+    private void evictIfNecessary() {
+        if (!overBudget(1.0) || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Map.Entry<Long, RingWindow>> entries = new ArrayList<>(windows.entrySet());
+            entries.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+            int evicted = 0;
+            for (Map.Entry<Long, RingWindow> entry : entries) {
+                if (!overBudget(config.getEvictionTargetRatio())) {
+                    break;
+                }
+                if (windows.remove(entry.getKey(), entry.getValue())) {
+                    totalBytes.addAndGet(-entry.getValue().detach());
+                    evicted++;
+                }
+            }
+            evictions.addAndGet(evicted);
+            log.debug("热点会话缓存淘汰完成: evicted={}, conversations={}, bytes={}", evicted, windows.size(), totalBytes.get());
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private boolean overBudget(double ratio) {
+        return windows.size() > config.getMaxConversations() * ratio
+                || totalBytes.get() > config.getMemoryBudgetBytes() * ratio;
+    }
+
+    private static int stripe(long conversationId) {
+        return (int) Math.floorMod(conversationId, (long) STAMP_STRIPES);
+    }
+
+    /**
+     * 估算单条消息的内存占用（对象头与装箱字段按固定值计，字符串按UTF-16计）
+     */
+    static long estimateBytes(Message message) {
+        return 400
+                + stringBytes(message.getClientMsgId())
+                + stringBytes(message.getContent())
+                + stringBytes(message.getContentExtra())
+                + stringBytes(message.getOperationType())
+                + stringBytes(message.getQuotedContent())
+                + stringBytes(message.getForwardReason())
+                + stringBytes(message.getOriginalContent())
+                + stringBytes(message.getEditReason())
+                + stringBytes(message.getMentions())
+                + stringBytes(message.getRecallReason())
+                + stringBytes(message.getDeleteReason())
+                + stringBytes(message.getDeviceId())
+                + stringBytes(message.getSource())
+                + stringBytes(message.getVersion());
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+}
@@ -0,0 +1,65 @@
+package com.acme.im.communication.service;
+
+/**
+ * 收件箱时间线指针
+ * 指向某个会话中的一条消息，按用户的同步序列号排列
+ *
+ * Redis有序集合的成员编码为 会话ID:会话序列号:消息ID，分值为同步序列号
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public final class InboxPointer {
+
+    private final long syncSeq;
+    private final long conversationId;
+    private final long seq;
+    private final long messageId;
+
+    public InboxPointer(long syncSeq, long conversationId, long seq, long messageId) {
+        this.syncSeq = syncSeq;
+        this.conversationId = conversationId;
+        this.seq = seq;
+        this.messageId = messageId;
+    }
+
+    public long getSyncSeq() { return syncSeq; }
+    public long getConversationId() { return conversationId; }
+    public long getSeq() { return seq; }
+    public long getMessageId() { return messageId; }
+
+    /**
+     * 有序集合成员编码，不含同步序列号
+     */
+    public static String member(long conversationId, long seq, long messageId) {
+        return conversationId + ":" + seq + ":" + messageId;
+    }
+
+    /**
+     * 解析有序集合成员
+     *
+     * @param syncSeq 成员分值
+     * @param member 成员编码
+     * @return 指针，格式不合法返回null
+     */
+    public static InboxPointer parse(long syncSeq, String member) {
+        int first = member.indexOf(':');
+        int second = first < 0 ? -1 : member.indexOf(':', first + 1);
+        if (second < 0) {
+            return null;
+        }
+        try {
+            return new InboxPointer(syncSeq,
+                    Long.parseLong(member, 0, first, 10),
+                    Long.parseLong(member, first + 1, second, 10),
+                    Long.parseLong(member, second + 1, member.length(), 10));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return syncSeq + "->" + member(conversationId, seq, messageId);
+    }
+}
@@ -0,0 +1,87 @@
+package com.acme.im.communication.service;
+
+import com.acme.im.communication.entity.Message;
+import com.acme.im.communication.repository.MessageRepository.MessageKey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 收件箱同步结果页
+ *
+ * 客户端保存nextSyncSeq作为下次同步的起点，hasMore为true时立即继续拉取。
+ * truncated为true表示上次同步点之后的部分指针已被裁剪或过期，
+ * 客户端需要对本地会话按会话补拉历史后再以nextSyncSeq继续
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public final class InboxSyncPage {
+
+    private final List<Message> messages;
+    private final long nextSyncSeq;
+    private final long currentSyncSeq;
+    private final boolean hasMore;
+    private final boolean truncated;
+
+    public InboxSyncPage(List<Message> messages, long nextSyncSeq, long currentSyncSeq,
+                         boolean hasMore, boolean truncated) {
+        this.messages = messages;
+        this.nextSyncSeq = nextSyncSeq;
+        this.currentSyncSeq = currentSyncSeq;
+        this.hasMore = hasMore;
+        this.truncated = truncated;
+    }
+
+    public List<Message> getMessages() { return messages; }
+    public long getNextSyncSeq() { return nextSyncSeq; }
+    public long getCurrentSyncSeq() { return currentSyncSeq; }
+    public boolean isHasMore() { return hasMore; }
+    public boolean isTruncated() { return truncated; }
+
+    /**
+     * 空结果页
+     */
+    public static InboxSyncPage empty(long sinceSyncSeq) {
+        return new InboxSyncPage(Collections.emptyList(), sinceSyncSeq, sinceSyncSeq, false, false);
+    }
+
+    /**
+     * 按指针顺序组装结果页
+     *
+     * 同步序列号每次追加加一，保留的最小序列号大于起点加一即说明中间有指针被裁剪；
+     * 当前序列号小于起点说明计数器已被重置，此时从头扫描并标记截断。
+     * 已删除或找不到的消息跳过，但同步点仍然前进
+     *
+     * @param sinceSyncSeq 客户端上次的同步点
+     * @param currentSyncSeq 用户当前的同步序列号
+     * @param firstRetainedSyncSeq 时间线中保留的最小同步序列号，时间线为空时为0
+     * @param scanned 本页扫描到的指针，按同步序列号升序
+     * @param hasMore 本页之后是否还有指针
+     * @param bodies 消息键到消息的映射，按指针的会话ID和消息ID查找
+     */
+    public static InboxSyncPage assemble(long sinceSyncSeq, long currentSyncSeq, long firstRetainedSyncSeq,
+                                         List<InboxPointer> scanned, boolean hasMore, Map<MessageKey, Message> bodies) {
+        boolean reset = currentSyncSeq < sinceSyncSeq;
+        long from = reset ? 0 : sinceSyncSeq;
+        boolean truncated = reset
+                || (currentSyncSeq > from && (firstRetainedSyncSeq == 0 || firstRetainedSyncSeq > from + 1));
+
+        List<Message> messages = new ArrayList<>(scanned.size());
+        long next = from;
+        for (InboxPointer pointer : scanned) {
+            next = pointer.getSyncSeq();
+            Message message = bodies.get(new MessageKey(pointer.getConversationId(), pointer.getMessageId()));
+            if (message != null && message.isNormal()) {
+                messages.add(message);
+            }
+        }
+        if (!hasMore) {
+            // 当前序列号与指针在同一次读取中获得，扫描完即追上
+            next = Math.max(next, currentSyncSeq);
+        }
+        return new InboxSyncPage(messages, next, currentSyncSeq, hasMore, truncated);
+    }
+}
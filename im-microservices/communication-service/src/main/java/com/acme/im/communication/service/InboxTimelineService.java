@@ -0,0 +1,394 @@
+package com.acme.im.communication.service;
+
+import com.acme.im.communication.config.InboxTimelineConfig;
+import com.acme.im.communication.entity.Message;
+import com.acme.im.communication.repository.MessageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 收件箱时间线服务
+ * 为每个用户维护一条只追加的同步时间线，断线重连时一次增量同步所有会话，
+ * 同步代价与错过的消息数成正比，而不是与会话数成正比
+ *
+ * 1. 时间线 - Redis有序集合 im:inbox:{用户ID}，成员为 会话ID:序列号:消息ID 指针，
+ *    分值为用户的同步序列号；计数器 im:inbox:seq:{用户ID} 不过期，保证序列号单调
+ * 2. 追加 - 新消息扇出时入队，后台线程按批经ConversationMemberCache解析会话成员，
+ *    每个用户一次脚本调用分配连续序列号并裁剪，整批通过管道提交
+ * 3. 同步 - 一次脚本读取当前序列号、最小保留序列号和一页指针，
+ *    消息体按分表批量查询（每个分表一次IN查询）；指针在主库写入后立即追加，
+ *    从库尚未同步的消息体再从主写节点补读，不会因复制延迟漏掉刚推送的消息
+ *
+ * 成员数超过上限的大会话不写时间线，客户端对这类会话仍按会话拉取。
+ * 新成员在成员缓存过期前收到的消息不会进入其时间线，由加入后的首次按会话拉取覆盖
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Service
+@Slf4j
+public class InboxTimelineService {
+
+    private static final String TIMELINE_KEY_PREFIX = "im:inbox:";
+    private static final String SEQ_KEY_PREFIX = "im:inbox:seq:";
+
+    // KEYS[1]=时间线 KEYS[2]=计数器 ARGV[1]=保留条数 ARGV[2]=过期毫秒 ARGV[3..]=指针
+    private static final byte[] APPEND_SCRIPT = ("""
+            local n = #ARGV - 2
+            local last = redis.call('INCRBY', KEYS[2], n)
+            local base = last - n
+            for i = 1, n do
+                redis.call('ZADD', KEYS[1], base + i, ARGV[i + 2])
+            end
+            local excess = redis.call('ZCARD', KEYS[1]) - tonumber(ARGV[1])
+            if excess > 0 then
+                redis.call('ZREMRANGEBYRANK', KEYS[1], 0, excess - 1)
+            end
+            redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            return last
+            """).getBytes(StandardCharsets.UTF_8);
+
+    // 返回 {当前序列号, 最小保留序列号, 指针1, 分值1, ...}，计数器被重置时从头扫描
+    private static final byte[] READ_SCRIPT = ("""
+            local current = tonumber(redis.call('GET', KEYS[2]) or '0')
+            local since = tonumber(ARGV[1])
+            if current < since then
+                since = 0
+            end
+            local first = redis.call('ZRANGE', KEYS[1], 0, 0, 'WITHSCORES')
+            local result = {current, first[2] and tonumber(first[2]) or 0}
+            local entries = redis.call('ZRANGEBYSCORE', KEYS[1], '(' .. since, '+inf',
+                    'WITHSCORES', 'LIMIT', 0, tonumber(ARGV[2]))
+            for i = 1, #entries do
+                result[#result + 1] = entries[i]
+            end
+            return result
+            """).getBytes(StandardCharsets.UTF_8);
+
+    private final RedisTemplate<String, String> stringRedisTemplate;
+    private final ConversationMemberCache memberCache;
+    private final MessageRepository messageRepository;
+    private final InboxTimelineConfig config;
+
+    private final BlockingQueue<Message> pending;
+    private Thread appender;
+    private volatile boolean running;
+
+    // 统计信息
+    private final AtomicLong appendedMessages = new AtomicLong(0);
+    private final AtomicLong appendedPointers = new AtomicLong(0);
+    private final AtomicLong skippedLargeConversations = new AtomicLong(0);
+    private final AtomicLong appendFailures = new AtomicLong(0);
+    private final AtomicLong syncRequests = new AtomicLong(0);
+    private final AtomicLong syncedMessages = new AtomicLong(0);
+    private final AtomicLong truncatedSyncs = new AtomicLong(0);
+    private final AtomicLong primaryBodyReads = new AtomicLong(0);
+
+    public InboxTimelineService(@Qualifier("customStringRedisTemplate") RedisTemplate<String, String> stringRedisTemplate,
+                                ConversationMemberCache memberCache,
+                                MessageRepository messageRepository,
+                                InboxTimelineConfig config) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.memberCache = memberCache;
+        this.messageRepository = messageRepository;
+        this.config = config;
+        this.pending = new LinkedBlockingQueue<>(config.getQueueCapacity());
+    }
+
+    /**
+     * 启动追加线程
+     */
+    @PostConstruct
+    public void initialize() {
+        if (!config.isEnabled()) {
+            log.info("收件箱时间线未启用");
+            return;
+        }
+        running = true;
+        appender = new Thread(this::appendLoop, "inbox-timeline-appender");
+        appender.setDaemon(true);
+        appender.start();
+        log.info("收件箱时间线服务初始化完成: maxEntries={}, maxFanoutMembers={}",
+                config.getMaxEntries(), config.getMaxFanoutMembers());
+    }
+
+    /**
+     * 优雅关闭：追加所有待写消息
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (appender != null) {
+            appender.interrupt();
+            try {
+                appender.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<Message> rest = new ArrayList<>();
+        pending.drainTo(rest);
+        if (!rest.isEmpty()) {
+            appendBatch(rest);
+        }
+        log.info("收件箱时间线服务已关闭: {}", getStats());
+    }
+
+    /**
+     * 新消息写入会话成员的时间线
+     * 正常情况下异步追加；队列满时在调用线程直接追加，不丢弃指针
+     */
+    public void append(Message message) {
+        if (!config.isEnabled() || message.getId() == null || message.getSeq() == null) {
+            return;
+        }
+        if (!pending.offer(message)) {
+            appendBatch(List.of(message));
+        }
+    }
+
+    /**
+     * 增量同步：返回同步点之后所有会话的消息
+     *
+     * @param userId 用户ID
+     * @param sinceSyncSeq 上次同步返回的nextSyncSeq，首次同步传0
+     * @param limit 本页最大条数，不超过配置上限
+     * @return 同步结果页
+     */
+    public InboxSyncPage sync(long userId, long sinceSyncSeq, int limit) {
+        if (!config.isEnabled()) {
+            return InboxSyncPage.empty(sinceSyncSeq);
+        }
+        syncRequests.incrementAndGet();
+        int pageSize = Math.max(1, Math.min(limit, config.getMaxPageSize()));
+
+        List<Object> raw = stringRedisTemplate.execute((RedisCallback<List<Object>>) connection ->
+                connection.scriptingCommands().eval(READ_SCRIPT, ReturnType.MULTI, 2,
+                        bytes(TIMELINE_KEY_PREFIX + userId), bytes(SEQ_KEY_PREFIX + userId),
+                        bytes(String.valueOf(Math.max(0, sinceSyncSeq))), bytes(String.valueOf(pageSize + 1))));
+        if (raw == null || raw.size() < 2) {
+            return InboxSyncPage.empty(sinceSyncSeq);
+        }
+
+        long currentSyncSeq = toLong(raw.get(0));
+        long firstRetained = toLong(raw.get(1));
+        List<InboxPointer> scanned = new ArrayList<>(pageSize);
+        for (int i = 2; i + 1 < raw.size() && scanned.size() < pageSize; i += 2) {
+            InboxPointer pointer = InboxPointer.parse(toLong(raw.get(i + 1)), toText(raw.get(i)));
+            if (pointer != null) {
+                scanned.add(pointer);
+            }
+        }
+        boolean hasMore = (raw.size() - 2) / 2 > pageSize;
+
+        Map<Long, List<Long>> idsByConversation = new HashMap<>();
+        for (InboxPointer pointer : scanned) {
+            idsByConversation.computeIfAbsent(pointer.getConversationId(), k -> new ArrayList<>())
+                    .add(pointer.getMessageId());
+        }
+        Map<MessageRepository.MessageKey, Message> bodies = idsByConversation.isEmpty()
+                ? Collections.emptyMap() : loadBodies(scanned, idsByConversation);
+
+        InboxSyncPage page = InboxSyncPage.assemble(sinceSyncSeq, currentSyncSeq, firstRetained,
+                scanned, hasMore, bodies);
+        syncedMessages.addAndGet(page.getMessages().size());
+        if (page.isTruncated()) {
+            truncatedSyncs.incrementAndGet();
+            log.debug("收件箱同步点已被裁剪: userId={}, since={}, firstRetained={}, current={}",
+                    userId, sinceSyncSeq, firstRetained, currentSyncSeq);
+        }
+        return page;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public InboxTimelineStats getStats() {
+        return new InboxTimelineStats(appendedMessages.get(), appendedPointers.get(), skippedLargeConversations.get(),
+                appendFailures.get(), syncRequests.get(), syncedMessages.get(), truncatedSyncs.get(),
+                primaryBodyReads.get(), pending.size());
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    /**
+     * 读取指针对应的消息体：先读从库，从库缺失的再从主写节点补读
+     */
+    private Map<MessageRepository.MessageKey, Message> loadBodies(List<InboxPointer> scanned,
+                                                                 Map<Long, List<Long>> idsByConversation) {
+        Map<MessageRepository.MessageKey, Message> bodies = new HashMap<>(messageRepository.findByIds(idsByConversation));
+        Set<MessageRepository.MessageKey> missing = new HashSet<>();
+        for (InboxPointer pointer : scanned) {
+            MessageRepository.MessageKey key =
+                    new MessageRepository.MessageKey(pointer.getConversationId(), pointer.getMessageId());
+            if (!bodies.containsKey(key)) {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            primaryBodyReads.addAndGet(missing.size());
+            bodies.putAll(messageRepository.findWrittenByIds(missing));
+        }
+        return bodies;
+    }
+
+    private void appendLoop() {
+        List<Message> batch = new ArrayList<>(config.getBatchSize());
+        while (running) {
+            try {
+                Message first = pending.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, config.getBatchSize() - 1);
+                appendBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("收件箱时间线追加异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 按用户合并一批消息的指针，每个用户一次脚本调用
+     */
+    private void appendBatch(List<Message> messages) {
+        Set<Long> conversationIds = new HashSet<>();
+        for (Message message : messages) {
+            conversationIds.add(message.getConversationId());
+        }
+        Map<Long, long[]> members = memberCache.getMembers(conversationIds);
+        Map<Long, List<byte[]>> pointersByUser = new LinkedHashMap<>();
+        for (Message message : messages) {
+            long[] userIds = members.get(message.getConversationId());
+            if (userIds == null || userIds.length == 0) {
+                continue;
+            }
+            if (userIds.length > config.getMaxFanoutMembers()) {
+                skippedLargeConversations.incrementAndGet();
+                continue;
+            }
+            byte[] pointer = bytes(InboxPointer.member(message.getConversationId(), message.getSeq(), message.getId()));
+            for (long userId : userIds) {
+                pointersByUser.computeIfAbsent(userId, k -> new ArrayList<>()).add(pointer);
+            }
+        }
+        if (pointersByUser.isEmpty()) {
+            return;
+        }
+
+        byte[] maxEntries = bytes(String.valueOf(config.getMaxEntries()));
+        byte[] ttlMs = bytes(String.valueOf(TimeUnit.DAYS.toMillis(config.getTtlDays())));
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Map.Entry<Long, List<byte[]>> entry : pointersByUser.entrySet()) {
+                    List<byte[]> pointers = entry.getValue();
+                    byte[][] keysAndArgs = new byte[4 + pointers.size()][];
+                    keysAndArgs[0] = bytes(TIMELINE_KEY_PREFIX + entry.getKey());
+                    keysAndArgs[1] = bytes(SEQ_KEY_PREFIX + entry.getKey());
+                    keysAndArgs[2] = maxEntries;
+                    keysAndArgs[3] = ttlMs;
+                    for (int i = 0; i < pointers.size(); i++) {
+                        keysAndArgs[4 + i] = pointers.get(i);
+                    }
+                    connection.scriptingCommands().eval(APPEND_SCRIPT, ReturnType.INTEGER, 2, keysAndArgs);
+                    appendedPointers.addAndGet(pointers.size());
+                }
+                return null;
+            });
+            appendedMessages.addAndGet(messages.size());
+        } catch (Exception e) {
+            appendFailures.addAndGet(messages.size());
+            log.warn("收件箱时间线追加失败: messages={}, users={}, error={}",
+                    messages.size(), pointersByUser.size(), e.getMessage());
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String toText(Object value) {
+        return value instanceof byte[] b ? new String(b, StandardCharsets.UTF_8) : String.valueOf(value);
+    }
+
+    private static long toLong(Object value) {
+        if (value instanceof Number n) {
+            return n.longValue();
+        }
+        return (long) Double.parseDouble(toText(value));
+    }
+
+    /**
+     * 收件箱时间线统计
+     */
+    public static class InboxTimelineStats {
+        private final long appendedMessages;
+        private final long appendedPointers;
+        private final long skippedLargeConversations;
+        private final long appendFailures;
+        private final long syncRequests;
+        private final long syncedMessages;
+        private final long truncatedSyncs;
+        private final long primaryBodyReads;
+        private final int pendingMessages;
+
+        public InboxTimelineStats(long appendedMessages, long appendedPointers, long skippedLargeConversations,
+                                  long appendFailures, long syncRequests, long syncedMessages,
+                                  long truncatedSyncs, long primaryBodyReads, int pendingMessages) {
+            this.appendedMessages = appendedMessages;
+            this.appendedPointers = appendedPointers;
+            this.skippedLargeConversations = skippedLargeConversations;
+            this.appendFailures = appendFailures;
+            this.syncRequests = syncRequests;
+            this.syncedMessages = syncedMessages;
+            this.truncatedSyncs = truncatedSyncs;
+            this.primaryBodyReads = primaryBodyReads;
+            this.pendingMessages = pendingMessages;
+        }
+
+        public long getAppendedMessages() { return appendedMessages; }
+        public long getAppendedPointers() { return appendedPointers; }
+        public long getSkippedLargeConversations() { return skippedLargeConversations; }
+        public long getAppendFailures() { return appendFailures; }
+        public long getSyncRequests() { return syncRequests; }
+        public long getSyncedMessages() { return syncedMessages; }
+        public long getTruncatedSyncs() { return truncatedSyncs; }
+        public long getPrimaryBodyReads() { return primaryBodyReads; }
+        public int getPendingMessages() { return pendingMessages; }
+
+        @Override
+        public String toString() {
+            return String.format("InboxTimelineStats{messages=%d, pointers=%d, skipped=%d, failures=%d, syncs=%d, synced=%d, truncated=%d, primaryReads=%d, pending=%d}",
+                    appendedMessages, appendedPointers, skippedLargeConversations, appendFailures,
+                    syncRequests, syncedMessages, truncatedSyncs, primaryBodyReads, pendingMessages);
+        }
+    }
+}
@@ -1,76 +1,509 @@
 package com.acme.im.communication.service;
 
-import lombok.RequiredArgsConstructor;
+import com.acme.im.communication.config.MessageIdempotencyConfig;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * 消息幂等性处理服务
  * 防止重复消息，确保消息的唯一性
- * 
+ *
  * 幂等性策略：
  * 1. 基于客户端消息ID + 会话ID的唯一性约束
- * 2. Redis缓存快速检查 + MySQL持久化存储
- * 3. 支持消息重试和重复检测
- * 
+ * 2. Redis原子占位：一次往返完成"检查 + 占位"，已存在时直接返回服务端消息ID
+ * 3. 本地布隆过滤器：Redis未命中时，只有可能出现过的clientMsgId才回查数据库
+ * 4. 幂等记录异步批量落库，Redis确认写入通过管道批量提交
+ *
+ * 布隆过滤器只在本实例内存中，其他实例写入或本实例重启前写入的clientMsgId会被判定为未出现过；
+ * 这类重复最终由消息表唯一键拦截，MessageService捕获唯一键冲突后按clientMsgId返回已落库的消息
+ *
  * @author IM开发团队
  * @since 1.0.0
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class MessageIdempotencyService {
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisTemplate<String, String> stringRedisTemplate;
     private final JdbcTemplate jdbcTemplate;
+    private final MessageIdempotencyConfig config;
 
     /**
      * Redis键前缀
      */
     private static final String REDIS_KEY_PREFIX = "comm:idem:";
-    
+
+    /**
+     * 占位值前缀，区分"处理中"与已确认的服务端消息ID
+     */
+    private static final String CLAIM_PREFIX = "P:";
+
+    /**
+     * 重复请求轮询间隔（毫秒）
+     */
+    private static final long PENDING_POLL_INTERVAL_MS = 10;
+
+    /**
+     * 原子占位脚本：键存在时返回当前值，否则写入占位并返回nil
+     */
+    private static final String CLAIM_SCRIPT =
+            "local v = redis.call('get', KEYS[1]) " +
+            "if v then return v end " +
+            "redis.call('set', KEYS[1], ARGV[1], 'EX', ARGV[2]) " +
+            "return nil";
+
+    /**
+     * 释放占位脚本：仅当占位仍属于当前请求时删除
+     */
+    private static final String RELEASE_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('del', KEYS[1]) " +
+            "else " +
+            "  return 0 " +
+            "end";
+
+    private static final String INSERT_SQL = """
+            INSERT IGNORE INTO message_idempotency
+            (conversation_id, client_msg_id, server_msg_id, sender_id, created_at)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+
+    private final DefaultRedisScript<String> claimScript = new DefaultRedisScript<>(CLAIM_SCRIPT, String.class);
+    private final DefaultRedisScript<Long> releaseScript = new DefaultRedisScript<>(RELEASE_SCRIPT, Long.class);
+
+    // 近期clientMsgId布隆过滤器
+    private RecentKeyFilter recentFilter;
+
+    // 待落库的幂等记录
+    private BlockingQueue<IdempotencyRecord> pendingRecords;
+
+    private ScheduledExecutorService flushExecutor;
+
+    // 统计信息
+    private final AtomicLong claimCount = new AtomicLong(0);
+    private final AtomicLong duplicateCount = new AtomicLong(0);
+    private final AtomicLong pendingCount = new AtomicLong(0);
+    private final AtomicLong dbLookupCount = new AtomicLong(0);
+    private final AtomicLong dbLookupSkipped = new AtomicLong(0);
+    private final AtomicLong flushedRecords = new AtomicLong(0);
+    private final AtomicLong flushBatches = new AtomicLong(0);
+    private final AtomicLong failedRecords = new AtomicLong(0);
+
+    public MessageIdempotencyService(@Qualifier("customStringRedisTemplate") RedisTemplate<String, String> stringRedisTemplate,
+                                     JdbcTemplate jdbcTemplate,
+                                     MessageIdempotencyConfig config) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.config = config;
+    }
+
+    /**
+     * 占位结果
+     */
+    public static class ClaimResult {
+        /**
+         * 占位状态
+         */
+        public enum Status {
+            /** 占位成功，当前请求负责写入消息 */
+            CLAIMED,
+            /** 消息已存在 */
+            EXISTING,
+            /** 相同clientMsgId的请求正在处理中 */
+            PENDING
+        }
+
+        private final Status status;
+        private final Long serverMsgId;
+        private final String token;
+
+        private ClaimResult(Status status, Long serverMsgId, String token) {
+            this.status = status;
+            this.serverMsgId = serverMsgId;
+            this.token = token;
+        }
+
+        static ClaimResult claimed(String token) {
+            return new ClaimResult(Status.CLAIMED, null, token);
+        }
+
+        static ClaimResult existing(Long serverMsgId) {
+            return new ClaimResult(Status.EXISTING, serverMsgId, null);
+        }
+
+        static ClaimResult pending() {
+            return new ClaimResult(Status.PENDING, null, null);
+        }
+
+        public Status getStatus() { return status; }
+        public Long getServerMsgId() { return serverMsgId; }
+        public String getToken() { return token; }
+        public boolean isClaimed() { return status == Status.CLAIMED; }
+        public boolean isPending() { return status == Status.PENDING; }
+    }
+
     /**
-     * 幂等性记录缓存过期时间（小时）
+     * 待落库的幂等记录
      */
-    private static final long CACHE_EXPIRE_HOURS = 24;
+    private static class IdempotencyRecord {
+        private final Long conversationId;
+        private final String clientMsgId;
+        private final Long serverMsgId;
+        private final Long senderId;
+        private final LocalDateTime createdAt;
+        private int attempts;
+
+        IdempotencyRecord(Long conversationId, String clientMsgId, Long serverMsgId, Long senderId) {
+            this.conversationId = conversationId;
+            this.clientMsgId = clientMsgId;
+            this.serverMsgId = serverMsgId;
+            this.senderId = senderId;
+            this.createdAt = LocalDateTime.now();
+        }
+    }
+
+    /**
+     * 近期键布隆过滤器
+     * 两代轮换：当前代写满后降为上一代，查询同时检查两代，保留"近期"语义且内存有界
+     */
+    static class RecentKeyFilter {
+        private final int bitCount;
+        private final int hashCount;
+        private final long capacity;
+        private volatile Generation current;
+        private volatile Generation previous;
+
+        private static class Generation {
+            private final AtomicLongArray bits;
+            private final AtomicLong insertions = new AtomicLong(0);
+
+            Generation(int bitCount) {
+                this.bits = new AtomicLongArray((bitCount + 63) >>> 6);
+            }
+
+            void set(int index) {
+                int slot = index >>> 6;
+                long mask = 1L << (index & 63);
+                long old;
+                do {
+                    old = bits.get(slot);
+                    if ((old & mask) != 0) {
+                        return;
+                    }
+                } while (!bits.compareAndSet(slot, old, old | mask));
+            }
+
+            boolean get(int index) {
+                return (bits.get(index >>> 6) & (1L << (index & 63))) != 0;
+            }
+        }
+
+        RecentKeyFilter(int expectedInsertions, double falsePositiveRate) {
+            long n = Math.max(1, expectedInsertions);
+            double p = Math.min(Math.max(falsePositiveRate, 1e-6), 0.5);
+            long bits = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+            this.bitCount = (int) Math.min(Math.max(bits, 64), Integer.MAX_VALUE - 63);
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+            this.capacity = n;
+            this.current = new Generation(bitCount);
+        }
+
+        void put(String key) {
+            long hash = hash64(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            Generation generation = current;
+            for (int i = 1; i <= hashCount; i++) {
+                generation.set(index(h1 + i * h2));
+            }
+            if (generation.insertions.incrementAndGet() >= capacity) {
+                rotate(generation);
+            }
+        }
+
+        boolean mightContain(String key) {
+            long hash = hash64(key);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            return contains(current, h1, h2) || contains(previous, h1, h2);
+        }
+
+        private boolean contains(Generation generation, int h1, int h2) {
+            if (generation == null) {
+                return false;
+            }
+            for (int i = 1; i <= hashCount; i++) {
+                if (!generation.get(index(h1 + i * h2))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private synchronized void rotate(Generation full) {
+            if (current == full) {
+                previous = full;
+                current = new Generation(bitCount);
+            }
+        }
+
+        private int index(int combined) {
+            return (combined & Integer.MAX_VALUE) % bitCount;
+        }
+
+        private static long hash64(String key) {
+            // FNV-1a + murmur3 finalizer
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                h ^= key.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    /**
+     * 幂等性统计信息
+     */
+    public static class IdempotencyStats {
+        private final long claims;
+        private final long duplicates;
+        private final long pendings;
+        private final long dbLookups;
+        private final long dbLookupsSkipped;
+        private final long flushedRecords;
+        private final long flushBatches;
+        private final long failedRecords;
+        private final int queueSize;
+
+        public IdempotencyStats(long claims, long duplicates, long pendings, long dbLookups, long dbLookupsSkipped,
+                                long flushedRecords, long flushBatches, long failedRecords, int queueSize) {
+            this.claims = claims;
+            this.duplicates = duplicates;
+            this.pendings = pendings;
+            this.dbLookups = dbLookups;
+            this.dbLookupsSkipped = dbLookupsSkipped;
+            this.flushedRecords = flushedRecords;
+            this.flushBatches = flushBatches;
+            this.failedRecords = failedRecords;
+            this.queueSize = queueSize;
+        }
+
+        public long getClaims() { return claims; }
+        public long getDuplicates() { return duplicates; }
+        public long getPendings() { return pendings; }
+        public long getDbLookups() { return dbLookups; }
+        public long getDbLookupsSkipped() { return dbLookupsSkipped; }
+        public long getFlushedRecords() { return flushedRecords; }
+        public long getFlushBatches() { return flushBatches; }
+        public long getFailedRecords() { return failedRecords; }
+        public int getQueueSize() { return queueSize; }
+
+        @Override
+        public String toString() {
+            return String.format("IdempotencyStats{claims=%d, duplicates=%d, pendings=%d, dbLookups=%d, dbLookupsSkipped=%d, flushed=%d, batches=%d, failed=%d, queue=%d}",
+                    claims, duplicates, pendings, dbLookups, dbLookupsSkipped, flushedRecords, flushBatches, failedRecords, queueSize);
+        }
+    }
+
+    /**
+     * 初始化布隆过滤器和批量落库线程
+     */
+    @PostConstruct
+    public void initialize() {
+        recentFilter = new RecentKeyFilter(config.getBloomExpectedInsertions(), config.getBloomFalsePositiveRate());
+        pendingRecords = new LinkedBlockingQueue<>(config.getQueueCapacity());
+
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "message-idempotency-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flushPendingRecords,
+                config.getFlushIntervalMs(), config.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+
+        log.info("消息幂等性服务初始化完成: bloomBits={}, bloomHashes={}, flushIntervalMs={}, batchSize={}",
+                recentFilter.bitCount, recentFilter.hashCount, config.getFlushIntervalMs(), config.getBatchSize());
+    }
+
+    /**
+     * 优雅关闭：写入所有待落库记录
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushPendingRecords();
+        log.info("消息幂等性服务已关闭: {}", getStats());
+    }
+
+    /**
+     * 占用客户端消息ID（原子操作，一次Redis往返）
+     * 键不存在时写入占位，当前请求负责写入消息；键存在时返回已有的服务端消息ID或"处理中"
+     *
+     * @param conversationId 会话ID
+     * @param clientMsgId 客户端消息ID
+     * @return 占位结果
+     */
+    public ClaimResult claimClientMsgId(Long conversationId, String clientMsgId) {
+        String redisKey = buildRedisKey(conversationId, clientMsgId);
+        String token = CLAIM_PREFIX + UUID.randomUUID();
+        claimCount.incrementAndGet();
+
+        try {
+            String value = stringRedisTemplate.execute(claimScript, Collections.singletonList(redisKey),
+                    token, String.valueOf(config.getClaimTtlSeconds()));
+
+            if (value == null) {
+                // Redis中不存在：只有布隆过滤器认为可能出现过时才回查数据库（Redis键过期或丢失）
+                Long serverMsgId = lookupInDbIfRecent(conversationId, clientMsgId);
+                if (serverMsgId != null) {
+                    stringRedisTemplate.opsForValue().set(redisKey, String.valueOf(serverMsgId),
+                            config.getCacheExpireHours(), TimeUnit.HOURS);
+                    duplicateCount.incrementAndGet();
+                    return ClaimResult.existing(serverMsgId);
+                }
+                return ClaimResult.claimed(token);
+            }
+
+            if (value.startsWith(CLAIM_PREFIX)) {
+                pendingCount.incrementAndGet();
+                log.debug("相同消息正在处理中: conversationId={}, clientMsgId={}", conversationId, clientMsgId);
+                return ClaimResult.pending();
+            }
+
+            duplicateCount.incrementAndGet();
+            log.debug("Redis幂等性检查命中: conversationId={}, clientMsgId={}, serverMsgId={}",
+                     conversationId, clientMsgId, value);
+            return ClaimResult.existing(Long.valueOf(value));
+
+        } catch (Exception e) {
+            log.error("幂等性占位失败，回查数据库: conversationId={}, clientMsgId={}", conversationId, clientMsgId, e);
+            Long serverMsgId = checkMessageExistsInDB(conversationId, clientMsgId);
+            return serverMsgId != null ? ClaimResult.existing(serverMsgId) : ClaimResult.claimed(null);
+        }
+    }
+
+    /**
+     * 释放占位（消息写入失败时调用，允许客户端重试）
+     *
+     * @param conversationId 会话ID
+     * @param clientMsgId 客户端消息ID
+     * @param token 占位令牌
+     */
+    public void releaseClaim(Long conversationId, String clientMsgId, String token) {
+        if (token == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(releaseScript,
+                    Collections.singletonList(buildRedisKey(conversationId, clientMsgId)), token);
+        } catch (Exception e) {
+            log.warn("释放幂等性占位失败: conversationId={}, clientMsgId={}, error={}",
+                    conversationId, clientMsgId, e.getMessage());
+        }
+    }
+
+    /**
+     * 等待处理中的相同消息完成
+     *
+     * @param conversationId 会话ID
+     * @param clientMsgId 客户端消息ID
+     * @return 服务端消息ID，等待超时或首个请求失败时返回null
+     */
+    public Long awaitExistingMessage(Long conversationId, String clientMsgId) {
+        String redisKey = buildRedisKey(conversationId, clientMsgId);
+        long deadline = System.currentTimeMillis() + config.getPendingWaitMs();
+
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                String value = stringRedisTemplate.opsForValue().get(redisKey);
+                if (value == null) {
+                    // 首个请求失败并释放了占位
+                    return null;
+                }
+                if (!value.startsWith(CLAIM_PREFIX)) {
+                    return Long.valueOf(value);
+                }
+                Thread.sleep(PENDING_POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (Exception e) {
+                log.warn("等待重复消息失败: conversationId={}, clientMsgId={}, error={}",
+                        conversationId, clientMsgId, e.getMessage());
+                return null;
+            }
+        }
+        return null;
+    }
 
     /**
      * 检查消息是否已存在（幂等性检查）
-     * 
+     *
      * @param conversationId 会话ID
      * @param clientMsgId 客户端消息ID
      * @return 如果消息已存在，返回服务端消息ID；否则返回null
      */
     public Long checkMessageExists(Long conversationId, String clientMsgId) {
         String redisKey = buildRedisKey(conversationId, clientMsgId);
-        
+
         try {
             // 先从Redis检查
-            Object value = redisTemplate.opsForValue().get(redisKey);
+            String value = stringRedisTemplate.opsForValue().get(redisKey);
             if (value != null) {
-                Long serverMsgId = Long.valueOf(value.toString());
-                log.debug("Redis幂等性检查命中: conversationId={}, clientMsgId={}, serverMsgId={}", 
+                if (value.startsWith(CLAIM_PREFIX)) {
+                    return null;
+                }
+                Long serverMsgId = Long.valueOf(value);
+                log.debug("Redis幂等性检查命中: conversationId={}, clientMsgId={}, serverMsgId={}",
                          conversationId, clientMsgId, serverMsgId);
                 return serverMsgId;
             }
-            
-            // Redis中没有，从数据库检查
-            Long serverMsgId = checkMessageExistsInDB(conversationId, clientMsgId);
+
+            // Redis中没有，可能出现过时才从数据库检查
+            Long serverMsgId = lookupInDbIfRecent(conversationId, clientMsgId);
             if (serverMsgId != null) {
                 // 将结果缓存到Redis
-                redisTemplate.opsForValue().set(redisKey, serverMsgId, CACHE_EXPIRE_HOURS, TimeUnit.HOURS);
-                log.debug("数据库幂等性检查命中: conversationId={}, clientMsgId={}, serverMsgId={}", 
+                stringRedisTemplate.opsForValue().set(redisKey, String.valueOf(serverMsgId),
+                        config.getCacheExpireHours(), TimeUnit.HOURS);
+                log.debug("数据库幂等性检查命中: conversationId={}, clientMsgId={}, serverMsgId={}",
                          conversationId, clientMsgId, serverMsgId);
             }
-            
+
             return serverMsgId;
-            
+
         } catch (Exception e) {
             log.error("幂等性检查失败: conversationId={}, clientMsgId={}", conversationId, clientMsgId, e);
             // 发生异常时，从数据库检查
@@ -80,35 +513,36 @@ public class MessageIdempotencyService {
 
     /**
      * 记录消息幂等性信息
-     * 
+     * Redis确认与数据库记录均由后台线程批量写入，调用方不再等待网络往返
+     *
      * @param conversationId 会话ID
      * @param clientMsgId 客户端消息ID
      * @param serverMsgId 服务端消息ID
      * @param senderId 发送者ID
      * @return 是否记录成功
      */
-    public boolean recordMessageIdempotency(Long conversationId, String clientMsgId, 
+    public boolean recordMessageIdempotency(Long conversationId, String clientMsgId,
                                           Long serverMsgId, Long senderId) {
+        recentFilter.put(buildFilterKey(conversationId, clientMsgId));
+
+        IdempotencyRecord record = new IdempotencyRecord(conversationId, clientMsgId, serverMsgId, senderId);
+        if (pendingRecords.offer(record)) {
+            return true;
+        }
+
+        // 队列已满，同步写入
+        log.warn("幂等记录队列已满，同步写入: conversationId={}, clientMsgId={}", conversationId, clientMsgId);
         try {
-            // 先记录到数据库
             boolean dbSuccess = recordMessageIdempotencyInDB(conversationId, clientMsgId, serverMsgId, senderId);
-            
-            if (dbSuccess) {
-                // 数据库记录成功后，缓存到Redis
-                String redisKey = buildRedisKey(conversationId, clientMsgId);
-                redisTemplate.opsForValue().set(redisKey, serverMsgId, CACHE_EXPIRE_HOURS, TimeUnit.HOURS);
-                
-                log.debug("记录消息幂等性成功: conversationId={}, clientMsgId={}, serverMsgId={}", 
-                         conversationId, clientMsgId, serverMsgId);
-            }
-            
+            stringRedisTemplate.opsForValue().set(buildRedisKey(conversationId, clientMsgId),
+                    String.valueOf(serverMsgId), config.getCacheExpireHours(), TimeUnit.HOURS);
             return dbSuccess;
-            
+
         } catch (DuplicateKeyException e) {
             log.warn("消息幂等性记录重复: conversationId={}, clientMsgId={}", conversationId, clientMsgId);
             return false;
         } catch (Exception e) {
-            log.error("记录消息幂等性失败: conversationId={}, clientMsgId={}, serverMsgId={}", 
+            log.error("记录消息幂等性失败: conversationId={}, clientMsgId={}, serverMsgId={}",
                      conversationId, clientMsgId, serverMsgId, e);
             return false;
         }
@@ -117,35 +551,31 @@ public class MessageIdempotencyService {
     /**
      * 检查并记录消息幂等性（原子操作）
      * 如果消息不存在则记录，如果已存在则返回现有的服务端消息ID
-     * 
+     *
      * @param conversationId 会话ID
      * @param clientMsgId 客户端消息ID
      * @param serverMsgId 服务端消息ID
      * @param senderId 发送者ID
      * @return 服务端消息ID，如果是新消息返回传入的serverMsgId，如果是重复消息返回现有的serverMsgId
      */
-    public Long checkAndRecordIdempotency(Long conversationId, String clientMsgId, 
+    public Long checkAndRecordIdempotency(Long conversationId, String clientMsgId,
                                         Long serverMsgId, Long senderId) {
-        // 先检查是否已存在
-        Long existingMsgId = checkMessageExists(conversationId, clientMsgId);
-        if (existingMsgId != null) {
-            return existingMsgId;
-        }
-        
-        // 不存在，尝试记录
-        boolean recorded = recordMessageIdempotency(conversationId, clientMsgId, serverMsgId, senderId);
-        if (recorded) {
-            return serverMsgId;
-        } else {
-            // 记录失败，可能是并发插入导致的重复，再次检查
-            existingMsgId = checkMessageExists(conversationId, clientMsgId);
+        ClaimResult claim = claimClientMsgId(conversationId, clientMsgId);
+        if (claim.getStatus() == ClaimResult.Status.EXISTING) {
+            return claim.getServerMsgId();
+        }
+        if (claim.isPending()) {
+            Long existingMsgId = awaitExistingMessage(conversationId, clientMsgId);
             return existingMsgId != null ? existingMsgId : serverMsgId;
         }
+
+        recordMessageIdempotency(conversationId, clientMsgId, serverMsgId, senderId);
+        return serverMsgId;
     }
 
     /**
      * 删除幂等性记录（谨慎使用）
-     * 
+     *
      * @param conversationId 会话ID
      * @param clientMsgId 客户端消息ID
      */
@@ -153,19 +583,19 @@ public class MessageIdempotencyService {
         try {
             // 删除Redis缓存
             String redisKey = buildRedisKey(conversationId, clientMsgId);
-            redisTemplate.delete(redisKey);
-            
+            stringRedisTemplate.delete(redisKey);
+
             // 删除数据库记录
             String deleteSql = """
-                DELETE FROM message_idempotency 
+                DELETE FROM message_idempotency
                 WHERE conversation_id = ? AND client_msg_id = ?
                 """;
-            
+
             int deletedRows = jdbcTemplate.update(deleteSql, conversationId, clientMsgId);
-            
-            log.debug("删除幂等性记录: conversationId={}, clientMsgId={}, deletedRows={}", 
+
+            log.debug("删除幂等性记录: conversationId={}, clientMsgId={}, deletedRows={}",
                      conversationId, clientMsgId, deletedRows);
-            
+
         } catch (Exception e) {
             log.error("删除幂等性记录失败: conversationId={}, clientMsgId={}", conversationId, clientMsgId, e);
         }
@@ -173,23 +603,23 @@ public class MessageIdempotencyService {
 
     /**
      * 批量清理过期的幂等性记录
-     * 
+     *
      * @param beforeTime 清理此时间之前的记录
      * @return 清理的记录数量
      */
     public int cleanExpiredRecords(LocalDateTime beforeTime) {
         try {
             String deleteSql = """
-                DELETE FROM message_idempotency 
+                DELETE FROM message_idempotency
                 WHERE created_at < ?
                 LIMIT 1000
                 """;
-            
+
             int deletedRows = jdbcTemplate.update(deleteSql, beforeTime);
-            
+
             log.info("清理过期幂等性记录: beforeTime={}, deletedRows={}", beforeTime, deletedRows);
             return deletedRows;
-            
+
         } catch (Exception e) {
             log.error("清理过期幂等性记录失败: beforeTime={}", beforeTime, e);
             return 0;
@@ -198,26 +628,43 @@ public class MessageIdempotencyService {
 
     /**
      * 获取会话的幂等性记录数量
-     * 
+     *
      * @param conversationId 会话ID
      * @return 记录数量
      */
     public long countIdempotencyRecords(Long conversationId) {
         try {
             String countSql = """
-                SELECT COUNT(*) FROM message_idempotency 
+                SELECT COUNT(*) FROM message_idempotency
                 WHERE conversation_id = ?
                 """;
-            
+
             Long count = jdbcTemplate.queryForObject(countSql, Long.class, conversationId);
             return count != null ? count : 0L;
-            
+
         } catch (Exception e) {
             log.error("统计幂等性记录失败: conversationId={}", conversationId, e);
             return 0L;
         }
     }
 
+    /**
+     * 获取幂等性统计信息
+     */
+    public IdempotencyStats getStats() {
+        return new IdempotencyStats(
+                claimCount.get(),
+                duplicateCount.get(),
+                pendingCount.get(),
+                dbLookupCount.get(),
+                dbLookupSkipped.get(),
+                flushedRecords.get(),
+                flushBatches.get(),
+                failedRecords.get(),
+                pendingRecords.size()
+        );
+    }
+
     // ================================
     // 私有方法
     // ================================
@@ -229,18 +676,99 @@ public class MessageIdempotencyService {
         return REDIS_KEY_PREFIX + conversationId + ":" + clientMsgId;
     }
 
+    /**
+     * 构建布隆过滤器键
+     */
+    private String buildFilterKey(Long conversationId, String clientMsgId) {
+        return conversationId + ":" + clientMsgId;
+    }
+
+    /**
+     * 布隆过滤器判定可能出现过时才回查数据库
+     */
+    private Long lookupInDbIfRecent(Long conversationId, String clientMsgId) {
+        if (!recentFilter.mightContain(buildFilterKey(conversationId, clientMsgId))) {
+            dbLookupSkipped.incrementAndGet();
+            return null;
+        }
+        dbLookupCount.incrementAndGet();
+        return checkMessageExistsInDB(conversationId, clientMsgId);
+    }
+
+    /**
+     * 批量写入待落库记录
+     * Redis确认值通过管道一次提交，数据库记录通过JDBC批量插入
+     */
+    private void flushPendingRecords() {
+        try {
+            List<IdempotencyRecord> batch = new ArrayList<>(config.getBatchSize());
+            while (pendingRecords.drainTo(batch, config.getBatchSize()) > 0) {
+                confirmInRedis(batch);
+                persistBatch(batch);
+                batch.clear();
+            }
+        } catch (Exception e) {
+            log.error("幂等记录批量写入异常", e);
+        }
+    }
+
+    /**
+     * 管道批量写入Redis确认值（覆盖占位）
+     */
+    private void confirmInRedis(List<IdempotencyRecord> batch) {
+        long ttlSeconds = TimeUnit.HOURS.toSeconds(config.getCacheExpireHours());
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (IdempotencyRecord record : batch) {
+                    byte[] key = buildRedisKey(record.conversationId, record.clientMsgId).getBytes(StandardCharsets.UTF_8);
+                    byte[] value = String.valueOf(record.serverMsgId).getBytes(StandardCharsets.UTF_8);
+                    connection.stringCommands().setEx(key, ttlSeconds, value);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("Redis幂等确认批量写入失败: size={}, error={}", batch.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * JDBC批量插入幂等记录，失败的记录重新入队重试
+     */
+    private void persistBatch(List<IdempotencyRecord> batch) {
+        List<Object[]> args = new ArrayList<>(batch.size());
+        for (IdempotencyRecord record : batch) {
+            args.add(new Object[]{record.conversationId, record.clientMsgId,
+                    record.serverMsgId, record.senderId, record.createdAt});
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, args);
+            flushBatches.incrementAndGet();
+            flushedRecords.addAndGet(batch.size());
+        } catch (Exception e) {
+            log.warn("幂等记录批量落库失败: size={}, error={}", batch.size(), e.getMessage());
+            for (IdempotencyRecord record : batch) {
+                if (++record.attempts >= config.getMaxRetries() || !pendingRecords.offer(record)) {
+                    failedRecords.incrementAndGet();
+                    log.error("幂等记录落库失败，放弃重试: conversationId={}, clientMsgId={}, serverMsgId={}",
+                            record.conversationId, record.clientMsgId, record.serverMsgId);
+                }
+            }
+        }
+    }
+
     /**
      * 从数据库检查消息是否存在
      */
     private Long checkMessageExistsInDB(Long conversationId, String clientMsgId) {
         try {
             String sql = """
-                SELECT server_msg_id FROM message_idempotency 
+                SELECT server_msg_id FROM message_idempotency
                 WHERE conversation_id = ? AND client_msg_id = ?
                 """;
-            
+
             return jdbcTemplate.queryForObject(sql, Long.class, conversationId, clientMsgId);
-            
+
         } catch (Exception e) {
             // 记录不存在或查询异常
             return null;
@@ -250,27 +778,27 @@ public class MessageIdempotencyService {
     /**
      * 在数据库中记录幂等性信息
      */
-    private boolean recordMessageIdempotencyInDB(Long conversationId, String clientMsgId, 
+    private boolean recordMessageIdempotencyInDB(Long conversationId, String clientMsgId,
                                                 Long serverMsgId, Long senderId) {
         try {
             String insertSql = """
-                INSERT INTO message_idempotency 
-                (conversation_id, client_msg_id, server_msg_id, sender_id, created_at) 
+                INSERT INTO message_idempotency
+                (conversation_id, client_msg_id, server_msg_id, sender_id, created_at)
                 VALUES (?, ?, ?, ?, ?)
                 """;
-            
-            int insertedRows = jdbcTemplate.update(insertSql, conversationId, clientMsgId, 
+
+            int insertedRows = jdbcTemplate.update(insertSql, conversationId, clientMsgId,
                                                   serverMsgId, senderId, LocalDateTime.now());
-            
+
             return insertedRows > 0;
-            
+
         } catch (DuplicateKeyException e) {
             // 唯一约束冲突，消息已存在
             throw e;
         } catch (Exception e) {
-            log.error("数据库记录幂等性失败: conversationId={}, clientMsgId={}, serverMsgId={}", 
+            log.error("数据库记录幂等性失败: conversationId={}, clientMsgId={}, serverMsgId={}",
                      conversationId, clientMsgId, serverMsgId, e);
             return false;
         }
     }
-} 
\ No newline at end of file
+}
@@ -9,21 +9,18 @@ import com.acme.im.common.websocket.proto.WebSocketMessage;
 import com.acme.im.common.websocket.proto.ChatMessage;
 import com.acme.im.common.websocket.proto.MessageType;
 import com.acme.im.common.websocket.proto.MessageStatus;
+import com.acme.im.communication.websocket.ConnectionRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * 消息路由服务
  * 负责消息的实时推送、多端同步、状态变更通知等
+ * 在线连接由ConnectionRegistry维护，推送统一经ClusterDeliveryService在本节点扇出并转发到持有接收方的其他节点
  * 
  * @author IM开发团队
  * @since 2.0.0
@@ -33,16 +30,19 @@ import java.util.concurrent.Executors;
 public class MessageRoutingService {
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private ConnectionRegistry connectionRegistry;
     
-    // 用户会话映射：userId -> sessionIds
-    private final Map<String, List<String>> userSessions = new ConcurrentHashMap<>();
-    
-    // 会话用户映射：conversationId -> userIds
-    private final Map<String, List<String>> conversationUsers = new ConcurrentHashMap<>();
-    
-    // 异步执行器
-    private final ExecutorService executorService = Executors.newFixedThreadPool(10);
+    @Autowired
+    private ClusterDeliveryService clusterDelivery;
+
+    @Autowired
+    private InboxTimelineService inboxTimeline;
+
+    @Autowired
+    private ConversationListService conversationList;
+
+    @Autowired
+    private ReadStateService readState;
 
     // ================================
     // 事件监听器 - 替代直接依赖
@@ -98,12 +98,18 @@ public class MessageRoutingService {
             // 1. 构建WebSocket消息
             WebSocketMessage wsMessage = buildWebSocketMessage(message);
             
-            // 2. 推送到会话主题
+            // 2. 推送到会话主题，并扇出给会话中的在线用户
             String topicDestination = "/topic/conversation/" + conversationId;
-            messagingTemplate.convertAndSend(topicDestination, wsMessage);
+            clusterDelivery.deliverToConversation(message.getConversationId(), topicDestination, "/queue/new-messages", wsMessage);
             
-            // 3. 推送给会话中的在线用户
-            pushToConversationUsers(conversationId, wsMessage);
+            // 3. 写入会话成员的收件箱时间线，供离线用户增量同步
+            inboxTimeline.append(message);
+            
+            // 4. 更新会话成员的最近会话列表
+            conversationList.onMessage(message);
+            
+            // 5. 推进会话最后消息序列号，供未读数计算
+            readState.onMessage(message);
             
             log.info("新消息推送完成: conversationId={}, messageId={}", conversationId, message.getId());
             
@@ -132,7 +138,7 @@ public class MessageRoutingService {
             
             // 推送到会话
             String topicDestination = "/topic/conversation/" + conversationId;
-            messagingTemplate.convertAndSend(topicDestination, statusMessage);
+            clusterDelivery.deliverToConversation(message.getConversationId(), topicDestination, null, statusMessage);
             
             log.info("消息状态变更推送完成: conversationId={}, messageId={}, changeType={}", 
                     conversationId, message.getId(), changeType);
@@ -164,7 +170,7 @@ public class MessageRoutingService {
             
             // 推送到会话
             String topicDestination = "/topic/conversation/" + conversationId;
-            messagingTemplate.convertAndSend(topicDestination, editNotification);
+            clusterDelivery.deliverToConversation(originalMessage.getConversationId(), topicDestination, null, editNotification);
             
             log.info("消息编辑通知推送完成: conversationId={}, originalMessageId={}, editMessageId={}",
                     conversationId, originalMessage.getId(), editMessage.getId());
@@ -196,7 +202,7 @@ public class MessageRoutingService {
             
             // 推送到会话
             String topicDestination = "/topic/conversation/" + conversationId;
-            messagingTemplate.convertAndSend(topicDestination, deleteNotification);
+            clusterDelivery.deliverToConversation(message.getConversationId(), topicDestination, null, deleteNotification);
             
             log.info("消息删除通知推送完成: conversationId={}, messageId={}, deleteScope={}",
                     conversationId, message.getId(), deleteScope);
@@ -226,7 +232,7 @@ public class MessageRoutingService {
             
             // 推送到会话
             String topicDestination = "/topic/conversation/" + conversationId;
-            messagingTemplate.convertAndSend(topicDestination, pinNotification);
+            clusterDelivery.deliverToConversation(message.getConversationId(), topicDestination, null, pinNotification);
             
             log.info("消息置顶通知推送完成: conversationId={}, messageId={}, pinScope={}",
                     conversationId, message.getId(), pinScope);
@@ -243,16 +249,13 @@ public class MessageRoutingService {
     /**
      * 同步消息到用户的所有设备
      */
-    public void syncToUserDevices(String userId, Object message, String destination) {
+    public void syncToUserDevices(String userId, WebSocketMessage message, String destination) {
         try {
-            // 获取用户的所有会话
-            List<String> sessions = userSessions.get(userId);
-            if (sessions != null && !sessions.isEmpty()) {
-                for (String sessionId : sessions) {
-                    messagingTemplate.convertAndSendToUser(sessionId, destination, message);
-                }
+            // 推送到用户的所有在线终端（只序列化一次）
+            int delivered = clusterDelivery.deliverToUser(Long.parseLong(userId), destination, message);
+            if (delivered > 0) {
                 log.debug("消息已同步到用户所有设备: userId={}, destination={}, sessionCount={}",
-                        userId, destination, sessions.size());
+                        userId, destination, delivered);
             }
         } catch (Exception e) {
             log.error("同步消息到用户设备失败: userId={}, destination={}, error={}",
@@ -265,17 +268,11 @@ public class MessageRoutingService {
      */
     public void syncMessageStatusToAllDevices(Message message, String changeType) {
         try {
-            String conversationId = message.getConversationId().toString();
-            
-            // 获取会话中的所有用户
-            List<String> userIds = conversationUsers.get(conversationId);
-            if (userIds != null && !userIds.isEmpty()) {
-                for (String userId : userIds) {
-                    syncToUserDevices(userId, buildStatusChangeMessage(message, changeType), "/queue/message-status");
-                }
-                log.debug("消息状态变更已同步到所有相关设备: conversationId={}, changeType={}, userCount={}",
-                        conversationId, changeType, userIds.size());
-            }
+            // 扇出给会话中的所有在线用户
+            clusterDelivery.deliverToConversation(message.getConversationId(), null, "/queue/message-status",
+                    buildStatusChangeMessage(message, changeType));
+            log.debug("消息状态变更已提交同步: conversationId={}, changeType={}",
+                    message.getConversationId(), changeType);
         } catch (Exception e) {
             log.error("同步消息状态变更到所有设备失败: conversationId={}, changeType={}, error={}",
                     message.getConversationId(), changeType, e.getMessage(), e);
@@ -291,11 +288,12 @@ public class MessageRoutingService {
      */
     public void userJoinConversation(String userId, String conversationId, String sessionId) {
         try {
-            // 添加到用户会话映射
-            userSessions.computeIfAbsent(userId, k -> new java.util.ArrayList<>()).add(sessionId);
+            long uid = Long.parseLong(userId);
+            long cid = Long.parseLong(conversationId);
             
-            // 添加到会话用户映射
-            conversationUsers.computeIfAbsent(conversationId, k -> new java.util.ArrayList<>()).add(userId);
+            // 注册用户终端并加入会话在线成员
+            connectionRegistry.addSession(uid, sessionId);
+            connectionRegistry.joinConversation(cid, uid);
             
             // 推送用户加入通知
             WebSocketMessage joinNotification = buildEventMessage(
@@ -308,7 +306,7 @@ public class MessageRoutingService {
             );
             
             String topicDestination = "/topic/conversation/" + conversationId;
-            messagingTemplate.convertAndSend(topicDestination, joinNotification);
+            clusterDelivery.deliverToConversation(cid, topicDestination, null, joinNotification);
             
             log.info("用户加入会话: userId={}, conversationId={}, sessionId={}", userId, conversationId, sessionId);
             
@@ -323,23 +321,11 @@ public class MessageRoutingService {
      */
     public void userLeaveConversation(String userId, String conversationId, String sessionId) {
         try {
-            // 从用户会话映射中移除
-            List<String> sessions = userSessions.get(userId);
-            if (sessions != null) {
-                sessions.remove(sessionId);
-                if (sessions.isEmpty()) {
-                    userSessions.remove(userId);
-                }
-            }
+            long cid = Long.parseLong(conversationId);
             
-            // 从会话用户映射中移除
-            List<String> userIds = conversationUsers.get(conversationId);
-            if (userIds != null) {
-                userIds.remove(userId);
-                if (userIds.isEmpty()) {
-                    conversationUsers.remove(conversationId);
-                }
-            }
+            // 移除用户终端并离开会话在线成员
+            connectionRegistry.removeSession(sessionId);
+            connectionRegistry.leaveConversation(cid, Long.parseLong(userId));
             
             // 推送用户离开通知
             WebSocketMessage leaveNotification = buildEventMessage(
@@ -352,7 +338,7 @@ public class MessageRoutingService {
             );
             
             String topicDestination = "/topic/conversation/" + conversationId;
-            messagingTemplate.convertAndSend(topicDestination, leaveNotification);
+            clusterDelivery.deliverToConversation(cid, topicDestination, null, leaveNotification);
             
             log.info("用户离开会话: userId={}, conversationId={}, sessionId={}", userId, conversationId, sessionId);
             
@@ -506,25 +492,4 @@ public class MessageRoutingService {
             buildStatusChangeDetails(message, changeType)
         );
     }
-    
-    /**
-     * 推送给会话用户
-     */
-    private void pushToConversationUsers(String conversationId, WebSocketMessage message) {
-        try {
-            List<String> userIds = conversationUsers.get(conversationId);
-            if (userIds != null && !userIds.isEmpty()) {
-                for (String userId : userIds) {
-                    List<String> sessions = userSessions.get(userId);
-                    if (sessions != null) {
-                        for (String sessionId : sessions) {
-                            messagingTemplate.convertAndSendToUser(sessionId, "/queue/new-messages", message);
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            log.error("推送给会话用户失败: conversationId={}, error={}", conversationId, e.getMessage(), e);
-        }
-    }
-} 
\ No newline at end of file
+}
\ No newline at end of file
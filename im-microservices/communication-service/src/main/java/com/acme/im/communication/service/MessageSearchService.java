@@ -0,0 +1,504 @@
+package com.acme.im.communication.service;
+
+import com.acme.im.common.infrastructure.nats.config.NatsConnectionManager;
+import com.acme.im.common.infrastructure.nats.constants.EventTopics;
+import com.acme.im.common.infrastructure.nats.subscriber.EventSubscriber;
+import com.acme.im.communication.config.MessageSearchConfig;
+import com.acme.im.communication.entity.Message;
+import com.acme.im.communication.repository.CustomMessageRepository;
+import com.acme.im.communication.search.MessageSearchIndex;
+import com.acme.im.communication.search.MessageSearchQuery;
+import com.acme.im.communication.search.MessageSearchResult;
+import com.acme.im.communication.search.SearchDocument;
+import com.google.gson.Gson;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消息搜索服务
+ * 用内存n-gram倒排索引代替 content LIKE '%关键词%' 的全表扫描，搜索只读内存，不访问数据库
+ *
+ * 1. 写入 - 消息创建、编辑、撤回、删除后转换为索引操作入队，后台线程按批写入
+ * 2. 复制 - 本节点产生的索引操作批量广播到 communication.search.index，
+ *    其他节点应用后每个节点都持有完整索引，搜索请求落在任意节点都能命中
+ * 3. 预热 - 启动后先按时间窗口从数据库加载最近的消息，再处理启动期间积压的操作
+ * 4. 搜索 - 关键词、会话、发送者、消息类型、时间范围组合过滤，按时间倒序游标分页
+ *
+ * 预热窗口之前的消息和超出段容量被淘汰的消息不在索引中，coveredSince给出会话完整覆盖的起始时间，
+ * 查询方据此对更早的范围回退数据库；仅自己可见的删除不影响索引
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Service
+@Slf4j
+public class MessageSearchService {
+
+    private static final String OP_INDEX = "INDEX";
+    private static final String OP_EDIT = "EDIT";
+    private static final String OP_REMOVE = "REMOVE";
+
+    private final CustomMessageRepository customMessageRepository;
+    private final ClusterDeliveryService clusterDeliveryService;
+    private final NatsConnectionManager connectionManager;
+    private final EventSubscriber eventSubscriber;
+    private final Gson gson;
+    private final MessageSearchConfig config;
+
+    private final MessageSearchIndex index;
+    private final BlockingQueue<PendingOp> pending;
+    private Thread indexer;
+    private volatile boolean running;
+    private volatile boolean bootstrapped;
+    private volatile long coverageStart = Long.MAX_VALUE;
+
+    // 统计信息
+    private final AtomicLong indexedOps = new AtomicLong(0);
+    private final AtomicLong bootstrapDocs = new AtomicLong(0);
+    private final AtomicLong replicatedOps = new AtomicLong(0);
+    private final AtomicLong receivedOps = new AtomicLong(0);
+    private final AtomicLong replicateFailures = new AtomicLong(0);
+    private final AtomicLong searches = new AtomicLong(0);
+    private final AtomicLong searchMicros = new AtomicLong(0);
+
+    public MessageSearchService(CustomMessageRepository customMessageRepository,
+                                ClusterDeliveryService clusterDeliveryService,
+                                NatsConnectionManager connectionManager,
+                                @Lazy EventSubscriber eventSubscriber,
+                                @Qualifier("gson") Gson gson,
+                                MessageSearchConfig config) {
+        this.customMessageRepository = customMessageRepository;
+        this.clusterDeliveryService = clusterDeliveryService;
+        this.connectionManager = connectionManager;
+        this.eventSubscriber = eventSubscriber;
+        this.gson = gson;
+        this.config = config;
+        this.index = new MessageSearchIndex(config.getSegmentCount(), config.getMaxDocsPerSegment());
+        this.pending = new LinkedBlockingQueue<>(config.getQueueCapacity());
+    }
+
+    /**
+     * 索引操作，也是节点间复制的消息体
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class IndexOp {
+        private String type;
+        private Long conversationId;
+        private Long messageId;
+        private Long seq;
+        private Long senderId;
+        private Integer msgType;
+        private Long timestamp;
+        private String content;
+    }
+
+    /**
+     * 节点间复制的一批索引操作
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class IndexBatch {
+        private String originNodeId;
+        private List<IndexOp> ops;
+    }
+
+    /**
+     * 队列元素，remote为true时来自其他节点，不再广播
+     */
+    private record PendingOp(IndexOp op, boolean remote) {
+    }
+
+    /**
+     * 启动索引线程，线程内先预热再处理队列
+     */
+    @PostConstruct
+    public void initialize() {
+        if (!config.isEnabled()) {
+            log.info("消息搜索索引未启用");
+            return;
+        }
+        running = true;
+        indexer = new Thread(this::indexLoop, "message-search-indexer");
+        indexer.setDaemon(true);
+        indexer.start();
+        log.info("消息搜索服务初始化完成: segments={}, maxDocsPerSegment={}, bootstrapDays={}",
+                config.getSegmentCount(), config.getMaxDocsPerSegment(), config.getBootstrapDays());
+    }
+
+    /**
+     * 应用就绪后订阅其他节点的索引变更
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        if (!config.isEnabled() || !config.isReplicate()) {
+            return;
+        }
+        eventSubscriber.subscribe(EventTopics.Communication.Search.INDEX, IndexBatch.class, this::handleRemoteBatch);
+        log.info("消息搜索索引复制已订阅: subject={}", EventTopics.Communication.Search.INDEX);
+    }
+
+    /**
+     * 优雅关闭：写入并广播所有待处理的操作
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (indexer != null) {
+            indexer.interrupt();
+            try {
+                indexer.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<PendingOp> rest = new ArrayList<>();
+        pending.drainTo(rest);
+        if (!rest.isEmpty()) {
+            applyBatch(rest);
+        }
+        log.info("消息搜索服务已关闭: {}", getStats());
+    }
+
+    /**
+     * 消息写入数据库后更新索引
+     * 正常情况下异步写入；队列满时在调用线程直接写入，不丢弃操作
+     */
+    public void onMessageWritten(Message message) {
+        if (!config.isEnabled() || message == null || message.getId() == null
+                || message.getConversationId() == null) {
+            return;
+        }
+        IndexOp op = toOp(message);
+        if (op == null) {
+            return;
+        }
+        PendingOp entry = new PendingOp(op, false);
+        if (!pending.offer(entry)) {
+            applyBatch(List.of(entry));
+        }
+    }
+
+    /**
+     * 搜索消息，只读内存索引
+     *
+     * @param query 搜索条件，limit不超过配置上限
+     * @return 按时间倒序的结果页
+     */
+    public MessageSearchResult search(MessageSearchQuery query) {
+        if (!config.isEnabled()) {
+            return new MessageSearchResult(Collections.emptyList(), null, 0);
+        }
+        query.setLimit(Math.max(1, Math.min(query.getLimit(), config.getMaxResults())));
+        MessageSearchResult result = index.search(query);
+        searches.incrementAndGet();
+        searchMicros.addAndGet(result.getTookMicros());
+        return result;
+    }
+
+    /**
+     * 搜索结果转换为消息实体，只包含索引保存的字段
+     */
+    public static Message toMessage(SearchDocument doc) {
+        return Message.builder()
+                .id(doc.getMessageId())
+                .conversationId(doc.getConversationId())
+                .seq(doc.getSeq())
+                .senderId(doc.getSenderId())
+                .msgType(doc.getMsgType())
+                .content(doc.getContent())
+                .status(1)
+                .serverTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(doc.getTimestamp()), ZoneId.systemDefault()))
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 会话在索引中完整覆盖的起始时间，早于该时间的消息需要查询数据库
+     * 预热完成前索引不完整，返回Long.MAX_VALUE
+     *
+     * @param conversationId 会话ID
+     * @return 毫秒时间戳
+     */
+    public long coveredSince(Long conversationId) {
+        if (!config.isEnabled() || !bootstrapped) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(coverageStart, index.coveredSince(conversationId));
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public MessageSearchStats getStats() {
+        return new MessageSearchStats(index.liveDocs(), index.terms(), index.compactions(), bootstrapped,
+                bootstrapDocs.get(), indexedOps.get(), replicatedOps.get(), receivedOps.get(),
+                replicateFailures.get(), searches.get(), searchMicros.get(), pending.size());
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    private void indexLoop() {
+        bootstrap();
+        bootstrapped = true;
+
+        List<PendingOp> batch = new ArrayList<>(config.getBatchSize());
+        while (running) {
+            try {
+                PendingOp first = pending.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, config.getBatchSize() - 1);
+                applyBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("消息搜索索引写入异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 按时间正序逐个窗口加载最近的消息，保证文档号与时间顺序一致
+     */
+    private void bootstrap() {
+        LocalDateTime end = LocalDateTime.now();
+        if (config.getBootstrapDays() <= 0) {
+            coverageStart = toEpochMilli(end);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        LocalDateTime cursor = end.minusDays(config.getBootstrapDays());
+        coverageStart = toEpochMilli(cursor);
+        long windowSeconds = TimeUnit.MINUTES.toSeconds(Math.max(1, config.getBootstrapWindowMinutes()));
+        while (running && cursor.isBefore(end)) {
+            LocalDateTime windowEnd = cursor.plusSeconds(windowSeconds);
+            if (windowEnd.isAfter(end)) {
+                windowEnd = end;
+            }
+            loadWindow(cursor, windowEnd);
+            cursor = windowEnd;
+        }
+        log.info("消息搜索索引预热完成: docs={}, 耗时{}ms", bootstrapDocs.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * 加载一个时间窗口，条数达到上限时二分窗口，直到一秒仍然过多才接受截断
+     */
+    private void loadWindow(LocalDateTime start, LocalDateTime end) {
+        List<Message> messages;
+        try {
+            messages = customMessageRepository.findByTimeRange(start, end, config.getBootstrapBatchSize());
+        } catch (Exception e) {
+            log.warn("消息搜索索引预热查询失败: {} ~ {}, error={}", start, end, e.getMessage());
+            return;
+        }
+        long seconds = Duration.between(start, end).getSeconds();
+        if (messages.size() >= config.getBootstrapBatchSize() && seconds > 1) {
+            LocalDateTime middle = start.plusSeconds(seconds / 2);
+            loadWindow(start, middle);
+            loadWindow(middle, end);
+            return;
+        }
+        if (messages.size() >= config.getBootstrapBatchSize()) {
+            // 窗口内有消息未加载，覆盖起点推进到窗口结束
+            coverageStart = Math.max(coverageStart, toEpochMilli(end));
+            log.warn("消息搜索索引预热窗口消息过多，部分消息未加载: {} ~ {}", start, end);
+        }
+        // 查询结果按时间倒序
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            IndexOp op = toOp(messages.get(i));
+            if (op != null && apply(op)) {
+                bootstrapDocs.incrementAndGet();
+            }
+        }
+    }
+
+    private void applyBatch(List<PendingOp> batch) {
+        List<IndexOp> local = new ArrayList<>();
+        for (PendingOp entry : batch) {
+            apply(entry.op());
+            indexedOps.incrementAndGet();
+            if (!entry.remote()) {
+                local.add(entry.op());
+            }
+        }
+        if (!local.isEmpty() && config.isReplicate()) {
+            replicate(local);
+        }
+    }
+
+    private boolean apply(IndexOp op) {
+        return switch (op.getType()) {
+            case OP_INDEX -> index.add(new SearchDocument(op.getConversationId(), op.getMessageId(),
+                    op.getSeq() != null ? op.getSeq() : 0, op.getSenderId() != null ? op.getSenderId() : 0,
+                    op.getMsgType() != null ? op.getMsgType() : 0,
+                    op.getTimestamp() != null ? op.getTimestamp() : 0, op.getContent()));
+            case OP_EDIT -> index.edit(op.getConversationId(), op.getMessageId(), op.getContent());
+            case OP_REMOVE -> index.remove(op.getConversationId(), op.getMessageId());
+            default -> false;
+        };
+    }
+
+    private void replicate(List<IndexOp> ops) {
+        IndexBatch batch = new IndexBatch(clusterDeliveryService.getNodeId(), ops);
+        byte[] data = gson.toJson(batch).getBytes(StandardCharsets.UTF_8);
+        try {
+            connectionManager.select(EventTopics.Communication.Search.INDEX)
+                    .publish(EventTopics.Communication.Search.INDEX, data);
+            replicatedOps.addAndGet(ops.size());
+        } catch (Exception e) {
+            replicateFailures.addAndGet(ops.size());
+            log.warn("消息搜索索引广播失败: ops={}, error={}", ops.size(), e.getMessage());
+        }
+    }
+
+    private void handleRemoteBatch(IndexBatch batch) {
+        if (batch == null || batch.getOps() == null
+                || clusterDeliveryService.getNodeId().equals(batch.getOriginNodeId())) {
+            return;
+        }
+        receivedOps.addAndGet(batch.getOps().size());
+        List<PendingOp> overflow = new ArrayList<>();
+        for (IndexOp op : batch.getOps()) {
+            PendingOp entry = new PendingOp(op, true);
+            if (!pending.offer(entry)) {
+                overflow.add(entry);
+            }
+        }
+        if (!overflow.isEmpty()) {
+            applyBatch(overflow);
+        }
+    }
+
+    /**
+     * 消息状态转换为索引操作：撤回、全员删除移出索引，编辑消息替换原消息内容
+     */
+    private IndexOp toOp(Message message) {
+        Long conversationId = message.getConversationId();
+        boolean removed = Integer.valueOf(1).equals(message.getIsRecalled())
+                || (Integer.valueOf(1).equals(message.getIsDeleted()) && Integer.valueOf(1).equals(message.getDeleteScope()))
+                || (message.getStatus() != null && message.getStatus() != 1);
+        if (removed) {
+            return new IndexOp(OP_REMOVE, conversationId, message.getId(), null, null, null, null, null);
+        }
+        Integer msgType = message.getMsgType();
+        if (Integer.valueOf(Message.MessageType.EDIT.getCode()).equals(msgType)) {
+            if (message.getOriginalMessageId() == null) {
+                return null;
+            }
+            return new IndexOp(OP_EDIT, conversationId, message.getOriginalMessageId(), null, null, null, null,
+                    truncate(message.getContent()));
+        }
+        if (msgType == null || !config.getIndexedMsgTypes().contains(msgType)
+                || message.getContent() == null || message.getContent().isEmpty()) {
+            return null;
+        }
+        long timestamp = message.getServerTimestamp() != null
+                ? message.getServerTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : System.currentTimeMillis();
+        return new IndexOp(OP_INDEX, conversationId, message.getId(), message.getSeq(), message.getSenderId(),
+                msgType, timestamp, truncate(message.getContent()));
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private String truncate(String content) {
+        if (content == null || content.length() <= config.getMaxContentLength()) {
+            return content;
+        }
+        return content.substring(0, config.getMaxContentLength());
+    }
+
+    /**
+     * 消息搜索统计
+     */
+    public static class MessageSearchStats {
+        private final long liveDocs;
+        private final long terms;
+        private final long compactions;
+        private final boolean bootstrapped;
+        private final long bootstrapDocs;
+        private final long indexedOps;
+        private final long replicatedOps;
+        private final long receivedOps;
+        private final long replicateFailures;
+        private final long searches;
+        private final long searchMicros;
+        private final int pendingOps;
+
+        public MessageSearchStats(long liveDocs, long terms, long compactions, boolean bootstrapped,
+                                  long bootstrapDocs, long indexedOps, long replicatedOps, long receivedOps,
+                                  long replicateFailures, long searches, long searchMicros, int pendingOps) {
+            this.liveDocs = liveDocs;
+            this.terms = terms;
+            this.compactions = compactions;
+            this.bootstrapped = bootstrapped;
+            this.bootstrapDocs = bootstrapDocs;
+            this.indexedOps = indexedOps;
+            this.replicatedOps = replicatedOps;
+            this.receivedOps = receivedOps;
+            this.replicateFailures = replicateFailures;
+            this.searches = searches;
+            this.searchMicros = searchMicros;
+            this.pendingOps = pendingOps;
+        }
+
+        public long getLiveDocs() { return liveDocs; }
+        public long getTerms() { return terms; }
+        public long getCompactions() { return compactions; }
+        public boolean isBootstrapped() { return bootstrapped; }
+        public long getBootstrapDocs() { return bootstrapDocs; }
+        public long getIndexedOps() { return indexedOps; }
+        public long getReplicatedOps() { return replicatedOps; }
+        public long getReceivedOps() { return receivedOps; }
+        public long getReplicateFailures() { return replicateFailures; }
+        public long getSearches() { return searches; }
+        public double getAvgSearchMicros() { return searches > 0 ? (double) searchMicros / searches : 0; }
+        public int getPendingOps() { return pendingOps; }
+
+        @Override
+        public String toString() {
+            return String.format("MessageSearchStats{liveDocs=%d, terms=%d, compactions=%d, bootstrapped=%s, bootstrapDocs=%d, indexedOps=%d, replicatedOps=%d, receivedOps=%d, replicateFailures=%d, searches=%d, avgSearchMicros=%.1f, pendingOps=%d}",
+                    liveDocs, terms, compactions, bootstrapped, bootstrapDocs, indexedOps, replicatedOps,
+                    receivedOps, replicateFailures, searches, getAvgSearchMicros(), pendingOps);
+        }
+    }
+}
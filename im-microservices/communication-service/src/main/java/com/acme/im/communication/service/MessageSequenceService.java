@@ -1,258 +1,320 @@
 package com.acme.im.communication.service;
 
-import lombok.RequiredArgsConstructor;
+import com.acme.im.communication.config.MessageSequenceConfig;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import jakarta.annotation.PostConstruct;
 import java.time.LocalDateTime;
-import java.util.concurrent.TimeUnit;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 消息序列管理服务
  * 负责为每个会话生成递增的消息序列号
- * 
+ *
  * 序列号特点：
- * 1. 会话内全局递增
+ * 1. 会话内唯一，按分配先后递增：所有实例从同一个Redis计数器分配，多实例同时写同一会话也不会交错
  * 2. 从1开始编号
- * 3. 支持高并发生成
- * 4. Redis缓存 + MySQL持久化
- * 
+ * 3. 每条消息一次Redis脚本调用；数据库只在计数器用完已租上界时访问，每次租用一个号段
+ *
+ * 号段说明：
+ * - Redis哈希 comm:seq:{会话ID} 的seq字段为最后分配的序列号，ceil字段为已租上界，不设置过期
+ * - conversation_sequences.current_seq 记录已租出号段的最高水位，所有已分配的序列号都不大于该水位
+ * - 计数器达到上界时，发现的实例从数据库租用下一段并抬高上界；多个实例并发租用时上界取最大值，
+ *   租出的号段首尾相接，计数器继续逐一分配，不会跳号
+ * - 实例重启和空闲不影响计数器，不会产生空洞
+ *
+ * 可能出现空洞的情况：
+ * - 分配后写入失败的消息
+ * - Redis丢失计数器（如未持久化时的故障转移）后从数据库水位之后重新开始，上一号段未分配的部分作废；
+ *   水位是已租上界，恢复后的序列号不会与已分配的重复
+ *
  * @author IM开发团队
  * @since 1.0.0
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class MessageSequenceService {
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisTemplate<String, String> stringRedisTemplate;
     private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final MessageSequenceConfig sequenceConfig;
+
+    /**
+     * 号段租用使用独立事务，避免随业务事务回滚导致号段被重复租出
+     */
+    private TransactionTemplate leaseTransactionTemplate;
 
     /**
      * Redis键前缀
      */
     private static final String REDIS_KEY_PREFIX = "comm:seq:";
-    
+
+    private static final String SEQ_FIELD = "seq";
+    private static final String CEIL_FIELD = "ceil";
+    private static final String LEASED_AT_FIELD = "at";
+
+    /**
+     * 同一会话租用号段的本地锁分段数，避免本实例的并发请求重复租用
+     */
+    private static final int LEASE_LOCK_STRIPES = 256;
+
+    /**
+     * 单次分配最多租用的次数
+     */
+    private static final int MAX_LEASE_ATTEMPTS = 3;
+
     /**
-     * 序列号缓存过期时间（小时）
+     * 分配脚本：未用完上界时递增并返回序列号，未初始化或已达上界时返回0
      */
-    private static final long CACHE_EXPIRE_HOURS = 24;
-    
+    private static final String ALLOCATE_SCRIPT =
+            "local v = redis.call('hmget', KEYS[1], 'seq', 'ceil') " +
+            "local seq = tonumber(v[1] or '0') " +
+            "local ceil = tonumber(v[2] or '0') " +
+            "if seq >= ceil then return 0 end " +
+            "return redis.call('hincrby', KEYS[1], 'seq', 1)";
+
     /**
-     * 序列号增长步长
+     * 抬高上界脚本：计数器不存在时以号段起点初始化，否则上界取最大值
+     * ARGV[1]=号段起点前一个序列号 ARGV[2]=号段上界 ARGV[3]=租用时间
      */
-    private static final long INCREMENT_STEP = 1L;
+    private static final String RAISE_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 then " +
+            "  redis.call('hset', KEYS[1], 'seq', ARGV[1], 'ceil', ARGV[2], 'at', ARGV[3]) " +
+            "  return 1 " +
+            "end " +
+            "if tonumber(redis.call('hget', KEYS[1], 'ceil') or '0') < tonumber(ARGV[2]) then " +
+            "  redis.call('hset', KEYS[1], 'ceil', ARGV[2], 'at', ARGV[3]) " +
+            "end " +
+            "return 0";
+
+    /**
+     * 原子租用号段：利用LAST_INSERT_ID(expr)在同一连接上返回更新后的水位
+     */
+    private static final String LEASE_SQL = """
+        INSERT INTO conversation_sequences (conversation_id, current_seq, last_message_at, updated_at)
+        VALUES (?, LAST_INSERT_ID(?), ?, ?)
+        ON DUPLICATE KEY UPDATE
+            current_seq = LAST_INSERT_ID(current_seq + ?),
+            last_message_at = VALUES(last_message_at),
+            updated_at = VALUES(updated_at)
+        """;
+
+    private final DefaultRedisScript<Long> allocateScript = new DefaultRedisScript<>(ALLOCATE_SCRIPT, Long.class);
+    private final DefaultRedisScript<Long> raiseScript = new DefaultRedisScript<>(RAISE_SCRIPT, Long.class);
+
+    private final Object[] leaseLocks = new Object[LEASE_LOCK_STRIPES];
+
+    public MessageSequenceService(@Qualifier("customStringRedisTemplate") RedisTemplate<String, String> stringRedisTemplate,
+                                  JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  MessageSequenceConfig sequenceConfig) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionManager = transactionManager;
+        this.sequenceConfig = sequenceConfig;
+        for (int i = 0; i < leaseLocks.length; i++) {
+            leaseLocks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void initialize() {
+        leaseTransactionTemplate = new TransactionTemplate(transactionManager);
+        leaseTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        log.info("消息序列号共享计数器已启用: leaseSize={}, hotLeaseSize={}, hotWindowMs={}",
+                sequenceConfig.getLeaseSize(), sequenceConfig.getHotLeaseSize(), sequenceConfig.getHotWindowMs());
+    }
 
     /**
      * 获取下一个消息序列号
-     * 
+     *
      * @param conversationId 会话ID
      * @return 消息序列号
      */
     public Long getNextSequence(Long conversationId) {
         String redisKey = REDIS_KEY_PREFIX + conversationId;
-        
-        try {
-            // 先尝试从Redis获取并递增
-            Long nextSeq = redisTemplate.opsForValue().increment(redisKey, INCREMENT_STEP);
-            
-            if (nextSeq == 1L) {
-                // 如果是第一次获取，需要从数据库同步当前序列号
-                Long dbSeq = getCurrentSequenceFromDB(conversationId);
-                if (dbSeq > 0) {
-                    // 数据库中已有序列号，设置Redis为数据库值+1
-                    nextSeq = dbSeq + INCREMENT_STEP;
-                    redisTemplate.opsForValue().set(redisKey, nextSeq);
+        long seq = allocate(redisKey);
+        if (seq > 0) {
+            return seq;
+        }
+
+        // 计数器未初始化或已达上界，本实例只允许一个线程租用
+        synchronized (leaseLock(conversationId)) {
+            for (int attempt = 0; attempt < MAX_LEASE_ATTEMPTS; attempt++) {
+                seq = allocate(redisKey);
+                if (seq > 0) {
+                    return seq;
                 }
+                lease(conversationId, redisKey);
             }
-            
-            // 设置过期时间
-            redisTemplate.expire(redisKey, CACHE_EXPIRE_HOURS, TimeUnit.HOURS);
-            
-            // 异步更新数据库序列号
-            updateSequenceInDB(conversationId, nextSeq);
-            
-            log.debug("生成消息序列号: conversationId={}, seq={}", conversationId, nextSeq);
-            return nextSeq;
-            
-        } catch (Exception e) {
-            log.error("生成消息序列号失败: conversationId={}", conversationId, e);
-            // 降级到数据库方式
-            return getNextSequenceFromDB(conversationId);
         }
+        log.error("租用号段后仍无法分配序列号: conversationId={}", conversationId);
+        throw new IllegalStateException("获取消息序列号失败");
     }
 
     /**
      * 获取当前会话的最新序列号
-     * 
+     * 计数器存在时返回最后分配的序列号，否则返回数据库水位（已租出序列号的上界）
+     *
      * @param conversationId 会话ID
      * @return 当前序列号，如果没有消息则返回0
      */
     public Long getCurrentSequence(Long conversationId) {
-        String redisKey = REDIS_KEY_PREFIX + conversationId;
-        
         try {
-            // 先从Redis获取
-            Object value = redisTemplate.opsForValue().get(redisKey);
+            Object value = stringRedisTemplate.opsForHash().get(REDIS_KEY_PREFIX + conversationId, SEQ_FIELD);
             if (value != null) {
-                Long seq = Long.valueOf(value.toString());
-                // Redis中存储的是下一个序列号，当前序列号需要减1
-                return seq > 0 ? seq - 1 : 0;
+                return Long.parseLong(value.toString());
             }
-            
-            // Redis中没有，从数据库获取
-            return getCurrentSequenceFromDB(conversationId);
-            
         } catch (Exception e) {
-            log.error("获取当前序列号失败: conversationId={}", conversationId, e);
-            return getCurrentSequenceFromDB(conversationId);
+            log.warn("读取序列号计数器失败，使用数据库水位: conversationId={}, error={}", conversationId, e.getMessage());
         }
+        return getCurrentSequenceFromDB(conversationId);
     }
 
     /**
      * 重置会话序列号（谨慎使用）
-     * 
+     * 下一个序列号为sequence+1，计数器在下次分配时从数据库重新租用号段
+     *
      * @param conversationId 会话ID
      * @param sequence 重置的序列号
      */
     public void resetSequence(Long conversationId, Long sequence) {
-        String redisKey = REDIS_KEY_PREFIX + conversationId;
-        
-        try {
-            // 更新Redis
-            redisTemplate.opsForValue().set(redisKey, sequence + 1);
-            redisTemplate.expire(redisKey, CACHE_EXPIRE_HOURS, TimeUnit.HOURS);
-            
-            // 更新数据库
-            updateSequenceInDB(conversationId, sequence);
-            
-            log.info("重置会话序列号: conversationId={}, sequence={}", conversationId, sequence);
-            
-        } catch (Exception e) {
-            log.error("重置会话序列号失败: conversationId={}, sequence={}", conversationId, sequence, e);
-            throw new RuntimeException("重置序列号失败", e);
+        synchronized (leaseLock(conversationId)) {
+            try {
+                String upsertSql = """
+                    INSERT INTO conversation_sequences (conversation_id, current_seq, last_message_at, updated_at)
+                    VALUES (?, ?, ?, ?)
+                    ON DUPLICATE KEY UPDATE
+                        current_seq = VALUES(current_seq),
+                        updated_at = VALUES(updated_at)
+                    """;
+
+                LocalDateTime now = LocalDateTime.now();
+                leaseTransactionTemplate.executeWithoutResult(status ->
+                        jdbcTemplate.update(upsertSql, conversationId, sequence, now, now));
+
+                String value = String.valueOf(sequence);
+                stringRedisTemplate.opsForHash().putAll(REDIS_KEY_PREFIX + conversationId,
+                        Map.of(SEQ_FIELD, value, CEIL_FIELD, value));
+
+                log.info("重置会话序列号: conversationId={}, sequence={}", conversationId, sequence);
+
+            } catch (Exception e) {
+                log.error("重置会话序列号失败: conversationId={}, sequence={}", conversationId, sequence, e);
+                throw new RuntimeException("重置序列号失败", e);
+            }
         }
     }
 
     /**
-     * 预热序列号缓存
-     * 将活跃会话的序列号加载到Redis中
-     * 
+     * 预热序列号计数器
+     * 为尚无计数器的活跃会话提前租用号段
+     *
      * @param conversationIds 会话ID列表
      */
     public void preloadSequences(Long... conversationIds) {
         if (conversationIds == null || conversationIds.length == 0) {
             return;
         }
-        
+
         for (Long conversationId : conversationIds) {
             try {
                 String redisKey = REDIS_KEY_PREFIX + conversationId;
-                
-                // 检查Redis中是否已存在
-                if (Boolean.FALSE.equals(redisTemplate.hasKey(redisKey))) {
-                    // 从数据库获取当前序列号
-                    Long currentSeq = getCurrentSequenceFromDB(conversationId);
-                    
-                    // 设置到Redis（下一个序列号）
-                    redisTemplate.opsForValue().set(redisKey, currentSeq + 1);
-                    redisTemplate.expire(redisKey, CACHE_EXPIRE_HOURS, TimeUnit.HOURS);
-                    
-                    log.debug("预热序列号缓存: conversationId={}, currentSeq={}", conversationId, currentSeq);
+                synchronized (leaseLock(conversationId)) {
+                    if (Boolean.FALSE.equals(stringRedisTemplate.hasKey(redisKey))) {
+                        lease(conversationId, redisKey);
+                        log.debug("预热序列号计数器: conversationId={}", conversationId);
+                    }
                 }
             } catch (Exception e) {
-                log.error("预热序列号缓存失败: conversationId={}", conversationId, e);
+                log.error("预热序列号计数器失败: conversationId={}", conversationId, e);
             }
         }
     }
 
-    /**
-     * 清理序列号缓存
-     * 
-     * @param conversationId 会话ID
-     */
-    public void clearSequenceCache(Long conversationId) {
-        String redisKey = REDIS_KEY_PREFIX + conversationId;
-        try {
-            redisTemplate.delete(redisKey);
-            log.debug("清理序列号缓存: conversationId={}", conversationId);
-        } catch (Exception e) {
-            log.error("清理序列号缓存失败: conversationId={}", conversationId, e);
-        }
-    }
-
     // ================================
-    // 私有方法 - 数据库操作
+    // 私有方法
     // ================================
 
+    private long allocate(String redisKey) {
+        Long seq = stringRedisTemplate.execute(allocateScript, Collections.singletonList(redisKey));
+        return seq != null ? seq : 0L;
+    }
+
+    private Object leaseLock(Long conversationId) {
+        return leaseLocks[Math.floorMod(conversationId.hashCode(), LEASE_LOCK_STRIPES)];
+    }
+
     /**
-     * 从数据库获取当前序列号
+     * 租用新号段并抬高计数器上界
+     * 上一个号段在热点窗口内用完时，按热点号段大小租用
      */
-    private Long getCurrentSequenceFromDB(Long conversationId) {
-        try {
-            String sql = """
-                SELECT current_seq FROM conversation_sequences 
-                WHERE conversation_id = ?
-                """;
-            
-            Long seq = jdbcTemplate.queryForObject(sql, Long.class, conversationId);
-            return seq != null ? seq : 0L;
-            
-        } catch (Exception e) {
-            log.debug("会话序列号记录不存在，返回0: conversationId={}", conversationId);
-            return 0L;
-        }
+    private void lease(Long conversationId, String redisKey) {
+        long now = System.currentTimeMillis();
+        Object leasedAt = stringRedisTemplate.opsForHash().get(redisKey, LEASED_AT_FIELD);
+        boolean hot = leasedAt != null && now - Long.parseLong(leasedAt.toString()) < sequenceConfig.getHotWindowMs();
+        int leaseSize = sequenceConfig.resolveLeaseSize(conversationId, hot);
+
+        long highWaterMark = leaseFromDB(conversationId, leaseSize);
+        List<String> keys = Collections.singletonList(redisKey);
+        Long initialized = stringRedisTemplate.execute(raiseScript, keys,
+                String.valueOf(highWaterMark - leaseSize), String.valueOf(highWaterMark), String.valueOf(now));
+
+        log.debug("租用序列号号段: conversationId={}, range=[{}, {}], hot={}, initialized={}",
+                conversationId, highWaterMark - leaseSize + 1, highWaterMark, hot, Long.valueOf(1).equals(initialized));
     }
 
     /**
-     * 从数据库获取下一个序列号（降级方案）
+     * 从数据库原子租用号段
+     *
+     * @return 租用后的水位（号段最后一个序列号）
      */
-    private Long getNextSequenceFromDB(Long conversationId) {
+    private long leaseFromDB(Long conversationId, int leaseSize) {
         try {
-            // 使用MySQL的原子操作获取下一个序列号
-            String upsertSql = """
-                INSERT INTO conversation_sequences (conversation_id, current_seq, last_message_at, updated_at) 
-                VALUES (?, 1, ?, ?) 
-                ON DUPLICATE KEY UPDATE 
-                    current_seq = current_seq + 1,
-                    last_message_at = VALUES(last_message_at),
-                    updated_at = VALUES(updated_at)
-                """;
-            
-            LocalDateTime now = LocalDateTime.now();
-            jdbcTemplate.update(upsertSql, conversationId, now, now);
-            
-            // 获取更新后的序列号
-            return getCurrentSequenceFromDB(conversationId);
-            
+            Long highWaterMark = leaseTransactionTemplate.execute(status -> {
+                LocalDateTime now = LocalDateTime.now();
+                jdbcTemplate.update(LEASE_SQL, conversationId, leaseSize, now, now, leaseSize);
+                return jdbcTemplate.queryForObject("SELECT LAST_INSERT_ID()", Long.class);
+            });
+
+            if (highWaterMark == null || highWaterMark < leaseSize) {
+                throw new IllegalStateException("号段水位异常: " + highWaterMark);
+            }
+            return highWaterMark;
+
         } catch (Exception e) {
-            log.error("从数据库获取序列号失败: conversationId={}", conversationId, e);
+            log.error("租用序列号号段失败: conversationId={}, leaseSize={}", conversationId, leaseSize, e);
             throw new RuntimeException("获取消息序列号失败", e);
         }
     }
 
     /**
-     * 异步更新数据库序列号
+     * 从数据库获取当前序列号水位
      */
-    private void updateSequenceInDB(Long conversationId, Long sequence) {
+    private Long getCurrentSequenceFromDB(Long conversationId) {
         try {
-            String upsertSql = """
-                INSERT INTO conversation_sequences (conversation_id, current_seq, last_message_at, updated_at) 
-                VALUES (?, ?, ?, ?) 
-                ON DUPLICATE KEY UPDATE 
-                    current_seq = GREATEST(current_seq, VALUES(current_seq)),
-                    last_message_at = VALUES(last_message_at),
-                    updated_at = VALUES(updated_at)
+            String sql = """
+                SELECT current_seq FROM conversation_sequences
+                WHERE conversation_id = ?
                 """;
-            
-            LocalDateTime now = LocalDateTime.now();
-            jdbcTemplate.update(upsertSql, conversationId, sequence, now, now);
-            
+
+            Long seq = jdbcTemplate.queryForObject(sql, Long.class, conversationId);
+            return seq != null ? seq : 0L;
+
         } catch (Exception e) {
-            log.error("更新数据库序列号失败: conversationId={}, sequence={}", conversationId, sequence, e);
-            // 不抛出异常，避免影响主流程
+            log.debug("会话序列号记录不存在，返回0: conversationId={}", conversationId);
+            return 0L;
         }
     }
-} 
\ No newline at end of file
+}
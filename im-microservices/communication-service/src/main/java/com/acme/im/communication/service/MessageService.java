@@ -1,17 +1,26 @@
 package com.acme.im.communication.service;
 
 import com.acme.im.communication.entity.Message;
+import com.acme.im.communication.search.MessageSearchQuery;
+import com.acme.im.communication.search.MessageSearchResult;
+import com.acme.im.communication.repository.MessageGroupCommitWriter;
 import com.acme.im.communication.repository.MessageRepository;
 import com.acme.im.communication.event.MessageEditEvent;
 import com.acme.im.communication.event.NewMessageEvent;
 import com.acme.im.communication.event.MessageDeleteEvent;
+import com.acme.im.communication.event.MessageEventPublisher;
 import com.acme.im.communication.event.MessagePinEvent;
 
 import com.acme.im.common.plugin.ExtensionPointManager;
+import com.acme.im.communication.plugin.MessageProcessor;
 import com.acme.im.communication.plugin.MessageRouter;
+import com.acme.im.communication.plugin.filter.ContentAuditLogWriter;
+import com.acme.im.communication.plugin.filter.SensitiveWordAutomaton;
+import com.acme.im.communication.plugin.impl.SensitiveWordMessageProcessor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -41,13 +50,23 @@ import java.util.HashMap;
 public class MessageService {
 
     private final MessageRepository messageRepository;
+    private final MessageGroupCommitWriter groupCommitWriter;
     private final MessageSequenceService sequenceService;
     private final MessageIdempotencyService idempotencyService;
+    private final HotConversationCache hotCache;
+    private final InboxTimelineService inboxTimeline;
+    private final ConversationListService conversationList;
+    private final MessageSearchService messageSearch;
     private final ExtensionPointManager extensionPointManager;
     private final ApplicationEventPublisher eventPublisher;
+    private final MessageEventPublisher messageEventPublisher;
+    private final ContentAuditLogWriter contentAuditLogWriter;
+
+    private static final String AUDIT_CONTENT_TYPE = "message";
 
     /**
      * 创建并保存消息
+     * 不开启事务：组提交在刷写线程的独立事务中写入，调用方等待期间不占用数据库连接
      * 
      * @param conversationId 会话ID
      * @param senderId 发送者ID
@@ -57,58 +76,76 @@ public class MessageService {
      * @param contentExtra 扩展内容
      * @return 创建的消息
      */
-    @Transactional
     public Message createMessage(Long conversationId, Long senderId, Integer msgType, 
                                String content, String clientMsgId, String contentExtra) {
         
-        // 1. 幂等性检查
-        Long existingMsgId = idempotencyService.checkMessageExists(conversationId, clientMsgId);
-        if (existingMsgId != null) {
+        // 1. 幂等性占位：一次Redis往返完成检查与占位
+        MessageIdempotencyService.ClaimResult claim = idempotencyService.claimClientMsgId(conversationId, clientMsgId);
+        if (!claim.isClaimed()) {
+            Long existingMsgId = claim.isPending()
+                    ? idempotencyService.awaitExistingMessage(conversationId, clientMsgId)
+                    : claim.getServerMsgId();
+            if (existingMsgId == null) {
+                throw new IllegalStateException("相同消息正在处理中: clientMsgId=" + clientMsgId);
+            }
             log.debug("消息已存在，返回现有消息: conversationId={}, clientMsgId={}, msgId={}", 
                      conversationId, clientMsgId, existingMsgId);
             return messageRepository.findById(conversationId, existingMsgId).orElse(null);
         }
         
-        // 2. 消息处理扩展点 - 执行所有处理器
-        Map<String, Object> processingContext = createProcessingContext(conversationId, senderId, msgType, content);
+        Message savedMessage;
+        Long seq;
+        ProcessedContent processed;
         try {
-            extensionPointManager.executeExtensionPoint("message.process", 
-                processingContext, context -> {
-                    // 这里可以添加具体的消息处理逻辑
-                    log.debug("消息处理扩展点执行: conversationId={}, senderId={}", conversationId, senderId);
-                    return null;
-                });
-            log.debug("消息处理完成: conversationId={}, senderId={}", conversationId, senderId);
-        } catch (Exception e) {
-            log.warn("消息处理失败: conversationId={}, senderId={}, error={}", 
-                    conversationId, senderId, e.getMessage());
-            // 根据业务需求决定是否继续处理
+            // 2. 消息处理扩展点 - 内容处理失败或被拦截时不入库
+            processed = processContent(conversationId, senderId, msgType, content, "MessageService.createMessage");
+
+            // 3. 生成消息序列号
+            seq = sequenceService.getNextSequence(conversationId);
+        
+            // 4. 构建消息对象
+            Message message = Message.builder()
+                    .conversationId(conversationId)
+                    .seq(seq)
+                    .clientMsgId(clientMsgId)
+                    .senderId(senderId)
+                    .msgType(msgType)
+                    .content(processed.getContent())
+                    .contentExtra(contentExtra)
+                    .status(1) // 正常状态
+                    .isPinned(0)
+                    .isEdited(0)
+                    .isRecalled(0)
+                    .editCount(0)
+                    .serverTimestamp(LocalDateTime.now())
+                    .build();
+        
+            // 5. 保存消息到分表（同分表并发写入合并提交）
+            try {
+                savedMessage = groupCommitWriter.save(message);
+            } catch (DuplicateKeyException e) {
+                // 占位只在Redis与本实例内存中，占位过期、Redis故障或上次写入确认超时后重试，
+                // 同一clientMsgId会再次写入；以唯一键(conversation_id, client_msg_id)为准返回已落库的消息
+                savedMessage = messageRepository.findWrittenByClientMsgId(conversationId, clientMsgId)
+                        .orElseThrow(() -> e);
+                seq = savedMessage.getSeq();
+                log.info("消息已由先前的请求写入，返回已有消息: conversationId={}, clientMsgId={}, msgId={}",
+                        conversationId, clientMsgId, savedMessage.getId());
+            }
+            hotCache.onMessageWritten(savedMessage);
+            messageSearch.onMessageWritten(savedMessage);
+
+            // 6. 消息创建事件写入发件箱，与写库同属发送流程，返回前已持久化；
+            //    追加失败时按发送失败处理，释放占位由客户端重试，重试命中唯一键后按相同去重ID补发
+            messageEventPublisher.publishMessageCreated(savedMessage);
+        } catch (RuntimeException e) {
+            // 写入失败，释放占位以便客户端重试
+            idempotencyService.releaseClaim(conversationId, clientMsgId, claim.getToken());
+            throw e;
         }
+        auditContent(processed, savedMessage);
         
-        // 3. 生成消息序列号
-        Long seq = sequenceService.getNextSequence(conversationId);
-        
-        // 4. 构建消息对象
-        Message message = Message.builder()
-                .conversationId(conversationId)
-                .seq(seq)
-                .clientMsgId(clientMsgId)
-                .senderId(senderId)
-                .msgType(msgType)
-                .content(content)
-                .contentExtra(contentExtra)
-                .status(1) // 正常状态
-                .isPinned(0)
-                .isEdited(0)
-                .isRecalled(0)
-                .editCount(0)
-                .serverTimestamp(LocalDateTime.now())
-                .build();
-        
-        // 5. 保存消息到分表
-        Message savedMessage = messageRepository.save(message);
-        
-        // 6. 记录幂等性信息
+        // 7. 记录幂等性信息
         idempotencyService.recordMessageIdempotency(conversationId, clientMsgId, 
                                                    savedMessage.getId(), senderId);
         
@@ -137,17 +174,22 @@ public class MessageService {
             throw new IllegalArgumentException("被回复的消息不存在: " + replyToId);
         }
         
+        ProcessedContent processed = processContent(conversationId, senderId,
+                Message.MessageType.TEXT.getCode(), content, "MessageService.createReplyMessage");
+
         // 构建回复消息
         Message message = Message.builder()
                 .conversationId(conversationId)
                 .senderId(senderId)
                 .msgType(Message.MessageType.TEXT.getCode())
-                .content(content)
+                .content(processed.getContent())
                 .clientMsgId(clientMsgId)
                 .replyToId(replyToId)
                 .build();
-        
-        return createMessageInternal(message);
+
+        Message savedMessage = createMessageInternal(message);
+        auditContent(processed, savedMessage);
+        return savedMessage;
     }
 
     /**
@@ -167,17 +209,22 @@ public class MessageService {
         // Message originalMessage = messageRepository.findById(originalConversationId, forwardFromId)
         //     .orElseThrow(() -> new IllegalArgumentException("原消息不存在: " + forwardFromId));
         
+        ProcessedContent processed = processContent(conversationId, senderId,
+                Message.MessageType.TEXT.getCode(), "转发消息", "MessageService.createForwardMessage");
+
         // 构建转发消息
         Message message = Message.builder()
                 .conversationId(conversationId)
                 .senderId(senderId)
                 .msgType(Message.MessageType.TEXT.getCode()) // 简化处理
-                .content("转发消息") // 实际应该复制原消息内容
+                .content(processed.getContent()) // 实际应该复制原消息内容
                 .clientMsgId(clientMsgId)
                 .forwardFromId(forwardFromId)
                 .build();
-        
-        return createMessageInternal(message);
+
+        Message savedMessage = createMessageInternal(message);
+        auditContent(processed, savedMessage);
+        return savedMessage;
     }
 
     /**
@@ -188,7 +235,7 @@ public class MessageService {
      * @return 消息列表
      */
     public List<Message> getLatestMessages(Long conversationId, int limit) {
-        return messageRepository.findLatestByConversationId(conversationId, limit);
+        return hotCache.getLatestMessages(conversationId, limit);
     }
 
     /**
@@ -200,7 +247,31 @@ public class MessageService {
      * @return 消息列表
      */
     public List<Message> getMessageHistory(Long conversationId, Long beforeSeq, int limit) {
-        return messageRepository.findHistoryByConversationId(conversationId, beforeSeq, limit);
+        return hotCache.getMessageHistory(conversationId, beforeSeq, limit);
+    }
+
+    /**
+     * 增量同步用户所有会话的消息
+     * 替代断线重连后逐个会话调用getMessageHistory
+     * 
+     * @param userId 用户ID
+     * @param sinceSyncSeq 上次同步返回的nextSyncSeq，首次同步传0
+     * @param limit 本页最大条数
+     * @return 同步结果页
+     */
+    public InboxSyncPage syncInbox(Long userId, long sinceSyncSeq, int limit) {
+        return inboxTimeline.sync(userId, sinceSyncSeq, limit);
+    }
+
+    /**
+     * 搜索消息
+     * 只查询内存索引，不访问数据库
+     * 
+     * @param query 搜索条件
+     * @return 按时间倒序的结果页
+     */
+    public MessageSearchResult searchMessages(MessageSearchQuery query) {
+        return messageSearch.search(query);
     }
 
     /**
@@ -251,6 +322,14 @@ public class MessageService {
         boolean success = messageRepository.recallMessage(conversationId, messageId, reason);
         
         if (success) {
+            LocalDateTime now = LocalDateTime.now();
+            message.setIsRecalled(1);
+            message.setRecallReason(reason);
+            message.setRecalledAt(now);
+            message.setUpdatedAt(now);
+            hotCache.onMessageWritten(message);
+            messageSearch.onMessageWritten(message);
+            conversationList.onMessageRecalled(message);
             log.info("撤回消息成功: conversationId={}, messageId={}, operatorId={}", 
                     conversationId, messageId, operatorId);
         }
@@ -286,14 +365,18 @@ public class MessageService {
             throw new SecurityException("无权限编辑此消息");
         }
         
-        // 4. 创建编辑消息
+        // 4. 新内容经过消息处理扩展点
+        ProcessedContent processed = processContent(conversationId, editorId,
+                Message.MessageType.EDIT.getCode(), newContent, "MessageService.editMessage");
+
+        // 5. 创建编辑消息
         Message editMessage = Message.builder()
                 .conversationId(conversationId)
                 .seq(sequenceService.getNextSequence(conversationId))
                 .clientMsgId("edit_" + System.currentTimeMillis() + "_" + editorId)
                 .senderId(editorId)
                 .msgType(Message.MessageType.EDIT.getCode())
-                .content(newContent)
+                .content(processed.getContent())
                 .originalMessageId(messageId)
                 .operationType(Message.OperationType.EDIT.getCode())
                 .originalContent(originalMessage.getContent())
@@ -302,16 +385,20 @@ public class MessageService {
                 .serverTimestamp(LocalDateTime.now())
                 .build();
         
-        // 5. 保存编辑消息
+        // 6. 保存编辑消息
         Message savedEditMessage = messageRepository.save(editMessage);
-        
-        // 6. 更新原消息状态
+        auditContent(processed, savedEditMessage);
+
+        // 7. 更新原消息状态
         originalMessage.setIsEdited(1);
         originalMessage.setEditCount(originalMessage.getEditCount() + 1);
         originalMessage.setLastEditAt(LocalDateTime.now());
         messageRepository.update(originalMessage);
+        hotCache.onMessageWritten(savedEditMessage);
+        hotCache.onMessageWritten(originalMessage);
+        messageSearch.onMessageWritten(savedEditMessage);
         
-        // 7. 推送编辑通知
+        // 8. 推送编辑通知
         // messageRoutingService.pushMessageEdit(originalMessage, savedEditMessage); // Removed direct dependency
         eventPublisher.publishEvent(new MessageEditEvent(originalMessage, savedEditMessage));
         
@@ -339,14 +426,18 @@ public class MessageService {
         Message quotedMessage = messageRepository.findById(quotedConversationId, quotedMessageId)
                 .orElseThrow(() -> new IllegalArgumentException("被引用的消息不存在"));
         
-        // 2. 创建引用消息
+        // 2. 引用内容经过消息处理扩展点
+        ProcessedContent processed = processContent(conversationId, senderId,
+                Message.MessageType.QUOTE.getCode(), content, "MessageService.quoteMessage");
+
+        // 3. 创建引用消息
         Message quoteMessage = Message.builder()
                 .conversationId(conversationId)
                 .seq(sequenceService.getNextSequence(conversationId))
                 .clientMsgId("quote_" + System.currentTimeMillis() + "_" + senderId)
                 .senderId(senderId)
                 .msgType(Message.MessageType.QUOTE.getCode())
-                .content(content)
+                .content(processed.getContent())
                 .originalMessageId(quotedMessageId)
                 .operationType(Message.OperationType.QUOTE.getCode())
                 .quotedMessageId(quotedMessageId)
@@ -357,10 +448,14 @@ public class MessageService {
                 .serverTimestamp(LocalDateTime.now())
                 .build();
         
-        // 3. 保存引用消息
+        // 4. 保存引用消息
         Message savedQuoteMessage = messageRepository.save(quoteMessage);
+        messageEventPublisher.publishMessageCreated(savedQuoteMessage);
+        auditContent(processed, savedQuoteMessage);
+        hotCache.onMessageWritten(savedQuoteMessage);
+        messageSearch.onMessageWritten(savedQuoteMessage);
         
-        // 4. 推送引用消息通知
+        // 5. 推送引用消息通知
         // messageRoutingService.pushNewMessage(savedQuoteMessage); // Removed direct dependency
         eventPublisher.publishEvent(new NewMessageEvent(savedQuoteMessage));
         
@@ -389,14 +484,18 @@ public class MessageService {
         Message originalMessage = messageRepository.findById(originalConversationId, originalMessageId)
                 .orElseThrow(() -> new IllegalArgumentException("原消息不存在"));
         
-        // 2. 创建转发消息
+        // 2. 原内容按当前词表重新经过消息处理扩展点，不能借转发绕过过滤
+        ProcessedContent processed = processContent(targetConversationId, senderId,
+                originalMessage.getMsgType(), originalMessage.getContent(), "MessageService.forwardMessage");
+
+        // 3. 创建转发消息
         Message forwardMessage = Message.builder()
                 .conversationId(targetConversationId)
                 .seq(sequenceService.getNextSequence(targetConversationId))
                 .clientMsgId("forward_" + System.currentTimeMillis() + "_" + senderId)
                 .senderId(senderId)
                 .msgType(Message.MessageType.FORWARD.getCode())
-                .content(originalMessage.getContent())
+                .content(processed.getContent())
                 .contentExtra(originalMessage.getContentExtra())
                 .originalMessageId(originalMessageId)
                 .operationType(Message.OperationType.FORWARD.getCode())
@@ -407,10 +506,14 @@ public class MessageService {
                 .serverTimestamp(LocalDateTime.now())
                 .build();
         
-        // 3. 保存转发消息
+        // 4. 保存转发消息
         Message savedForwardMessage = messageRepository.save(forwardMessage);
+        messageEventPublisher.publishMessageCreated(savedForwardMessage);
+        auditContent(processed, savedForwardMessage);
+        hotCache.onMessageWritten(savedForwardMessage);
+        messageSearch.onMessageWritten(savedForwardMessage);
         
-        // 4. 推送转发消息通知
+        // 5. 推送转发消息通知
         // messageRoutingService.pushNewMessage(savedForwardMessage); // Removed direct dependency
         eventPublisher.publishEvent(new NewMessageEvent(savedForwardMessage));
         
@@ -455,6 +558,8 @@ public class MessageService {
         
         // 4. 保存更新
         messageRepository.update(message);
+        hotCache.onMessageWritten(message);
+        messageSearch.onMessageWritten(message);
         
         // 5. 推送删除通知
         // messageRoutingService.pushMessageDelete(message, deleteReason, deleteScope); // Removed direct dependency
@@ -498,6 +603,7 @@ public class MessageService {
         
         // 4. 保存更新
         messageRepository.update(message);
+        hotCache.onMessageWritten(message);
         
         // 5. 推送置顶通知
         // messageRoutingService.pushMessagePin(message, pinScope); // Removed direct dependency
@@ -537,6 +643,7 @@ public class MessageService {
         
         // 4. 保存更新
         messageRepository.update(message);
+        hotCache.onMessageWritten(message);
         
         log.info("消息取消置顶完成: conversationId={}, messageId={}, operatorId={}", 
                 conversationId, messageId, operatorId);
@@ -597,7 +704,10 @@ public class MessageService {
         }
         
         // 保存消息
-        Message savedMessage = messageRepository.save(message);
+        Message savedMessage = groupCommitWriter.save(message);
+        hotCache.onMessageWritten(savedMessage);
+        messageSearch.onMessageWritten(savedMessage);
+        messageEventPublisher.publishMessageCreated(savedMessage);
         
         // 记录幂等性信息
         idempotencyService.recordMessageIdempotency(
@@ -610,6 +720,95 @@ public class MessageService {
         return savedMessage;
     }
 
+    /**
+     * 经过消息处理扩展点的内容及敏感词检测结果
+     */
+    private static final class ProcessedContent {
+        private final Long senderId;
+        private final String originalContent;
+        private final String content;
+        private final SensitiveWordAutomaton.MatchResult filterResult;
+
+        ProcessedContent(Long senderId, String originalContent, String content,
+                         SensitiveWordAutomaton.MatchResult filterResult) {
+            this.senderId = senderId;
+            this.originalContent = originalContent;
+            this.content = content;
+            this.filterResult = filterResult;
+        }
+
+        String getContent() {
+            return content;
+        }
+    }
+
+    /**
+     * 执行消息处理扩展点，所有写入消息内容的路径共用
+     * 按优先级依次执行支持该消息类型的处理器，前一个处理器的输出作为后一个的输入；
+     * 任一处理器异常时拒绝写入，不让未经过滤的内容入库；命中拦截级敏感词时记审核并拒绝
+     *
+     * @param source 调用来源，写入处理上下文
+     * @return 处理后的内容
+     */
+    private ProcessedContent processContent(Long conversationId, Long senderId, Integer msgType,
+                                            String content, String source) {
+        MessageProcessor.ProcessingContext processingContext =
+                createProcessingContext(conversationId, senderId, msgType, content, source);
+        // 扩展点管理器会吞掉单个实现的异常，在回调内记录后统一处理
+        Exception[] failure = new Exception[1];
+        Object processed;
+        try {
+            processed = extensionPointManager.executeExtensionPoint("message.process",
+                processingContext, context -> {
+                    Object[] current = {content};
+                    extensionPointManager.executeExtensionPointImplementations("message.process",
+                            processingContext, impl -> {
+                                MessageProcessor processor = (MessageProcessor) impl;
+                                if (failure[0] != null
+                                        || !processor.supportsMessageType(processingContext.getMessageType())) {
+                                    return Boolean.TRUE;
+                                }
+                                try {
+                                    current[0] = processor.processMessage(current[0], processingContext);
+                                } catch (Exception e) {
+                                    failure[0] = e;
+                                }
+                                return Boolean.TRUE;
+                            });
+                    return current[0];
+                });
+        } catch (Exception e) {
+            failure[0] = e;
+            processed = null;
+        }
+        if (failure[0] != null) {
+            log.error("消息处理失败，拒绝写入: conversationId={}, senderId={}, source={}",
+                    conversationId, senderId, source, failure[0]);
+            throw new IllegalStateException("消息内容处理失败", failure[0]);
+        }
+
+        SensitiveWordAutomaton.MatchResult filterResult = (SensitiveWordAutomaton.MatchResult)
+                processingContext.getAttribute(SensitiveWordMessageProcessor.ATTR_FILTER_RESULT);
+        if (Boolean.TRUE.equals(processingContext.getAttribute(SensitiveWordMessageProcessor.ATTR_BLOCKED))) {
+            // 被拦截的消息不入库，审核记录的内容ID记为0
+            contentAuditLogWriter.submit(AUDIT_CONTENT_TYPE, 0L, senderId, content, filterResult);
+            throw new IllegalArgumentException("消息包含违禁内容");
+        }
+        log.debug("消息处理完成: conversationId={}, senderId={}, source={}", conversationId, senderId, source);
+        String result = processed instanceof String processedContent ? processedContent : content;
+        return new ProcessedContent(senderId, content, result, filterResult);
+    }
+
+    /**
+     * 命中敏感词的消息入库后写审核记录
+     */
+    private void auditContent(ProcessedContent processed, Message savedMessage) {
+        if (processed.filterResult != null) {
+            contentAuditLogWriter.submit(AUDIT_CONTENT_TYPE, savedMessage.getId(), processed.senderId,
+                    processed.originalContent, processed.filterResult);
+        }
+    }
+
     /**
      * 创建验证上下文
      * 
@@ -637,16 +836,25 @@ public class MessageService {
      * @param senderId 发送者ID
      * @param msgType 消息类型
      * @param content 消息内容
+     * @param source 调用来源
      * @return 处理上下文
      */
-    private Map<String, Object> createProcessingContext(Long conversationId, Long senderId, Integer msgType, String content) {
-        Map<String, Object> context = new HashMap<>();
-        context.put("conversationId", conversationId);
-        context.put("senderId", senderId);
-        context.put("messageType", msgType);
-        context.put("content", content);
-        context.put("timestamp", System.currentTimeMillis());
-        context.put("source", "MessageService.createMessage");
+    private MessageProcessor.ProcessingContext createProcessingContext(Long conversationId, Long senderId, Integer msgType,
+                                                                       String content, String source) {
+        String typeName = String.valueOf(msgType);
+        for (Message.MessageType type : Message.MessageType.values()) {
+            if (msgType != null && type.getCode() == msgType) {
+                typeName = type.name();
+                break;
+            }
+        }
+        MessageProcessor.ProcessingContext context =
+                new MessageProcessor.ProcessingContext(String.valueOf(conversationId), typeName);
+        context.setAttribute("conversationId", conversationId);
+        context.setAttribute("senderId", senderId);
+        context.setAttribute("messageType", msgType);
+        context.setAttribute("content", content);
+        context.setAttribute("source", source);
         return context;
     }
 } 
\ No newline at end of file
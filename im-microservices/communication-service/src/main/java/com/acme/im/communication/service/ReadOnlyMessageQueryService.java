@@ -4,6 +4,8 @@ import com.acme.im.common.infrastructure.database.MessageShardingUtils;
 import com.acme.im.common.infrastructure.database.MessageQueryBuilder;
 import com.acme.im.common.infrastructure.database.annotation.DataSource;
 import com.acme.im.communication.entity.Message;
+import com.acme.im.communication.search.MessageSearchQuery;
+import com.acme.im.communication.search.MessageSearchResult;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -12,9 +14,14 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * 只读消息查询服务
@@ -35,6 +42,9 @@ public class ReadOnlyMessageQueryService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private MessageSearchService messageSearchService;
+
     /**
      * 消息行映射器
      */
@@ -127,6 +137,8 @@ public class ReadOnlyMessageQueryService {
 
     /**
      * 搜索会话内的消息
+     * 启用搜索索引时先查询内存索引，索引结果不足一页时，
+     * 早于索引覆盖起点的部分从数据库补齐；未启用时直接查询数据库
      * 
      * @param conversationId 会话ID
      * @param searchTerm 搜索关键词
@@ -134,11 +146,58 @@ public class ReadOnlyMessageQueryService {
      * @return 消息列表
      */
     public List<Message> searchMessages(Long conversationId, String searchTerm, int limit) {
+        if (messageSearchService.isEnabled()) {
+            MessageSearchQuery query = MessageSearchQuery.builder()
+                    .keyword(searchTerm)
+                    .conversationIds(Set.of(conversationId))
+                    .limit(limit)
+                    .build();
+            MessageSearchResult result = messageSearchService.search(query);
+            List<Message> messages = result.getHits().stream()
+                    .map(MessageSearchService::toMessage)
+                    .collect(Collectors.toCollection(ArrayList::new));
+            if (result.getNextCursor() != null || messages.size() >= limit) {
+                return messages;
+            }
+            long coveredSince = messageSearchService.coveredSince(conversationId);
+            if (coveredSince == Long.MIN_VALUE) {
+                return messages;
+            }
+            // 索引之外的历史消息从数据库补齐，边界时间的消息可能两边都有，按ID去重
+            Set<Long> seen = messages.stream().map(Message::getId).collect(Collectors.toSet());
+            for (Message message : searchBefore(conversationId, searchTerm, coveredSince, limit - messages.size())) {
+                if (seen.add(message.getId())) {
+                    messages.add(message);
+                }
+            }
+            return messages;
+        }
         String sql = MessageQueryBuilder.buildSearchQuery(conversationId, searchTerm, limit);
         
         return jdbcTemplate.query(sql, messageRowMapper, searchTerm, conversationId);
     }
 
+    /**
+     * 数据库搜索早于指定时间的消息，按时间倒序
+     */
+    private List<Message> searchBefore(Long conversationId, String searchTerm, long beforeMillis, int limit) {
+        String conditions = "MATCH(content) AGAINST(? IN BOOLEAN MODE) AND conversation_id = ? AND status = 1";
+        if (beforeMillis == Long.MAX_VALUE) {
+            // 索引尚未预热完成，整个会话都查询数据库
+            String sql = MessageQueryBuilder.buildShardedQuery(conversationId, conditions, "server_timestamp DESC", limit);
+            return jdbcTemplate.query(sql, messageRowMapper, searchTerm, conversationId);
+        }
+        String sql = MessageQueryBuilder.buildShardedQuery(
+            conversationId,
+            conditions + " AND server_timestamp < ?",
+            "server_timestamp DESC",
+            limit
+        );
+        LocalDateTime before = LocalDateTime.ofInstant(Instant.ofEpochMilli(beforeMillis), ZoneId.systemDefault());
+        
+        return jdbcTemplate.query(sql, messageRowMapper, searchTerm, conversationId, before);
+    }
+
     /**
      * 查询用户发送的消息
      * 
@@ -0,0 +1,581 @@
+package com.acme.im.communication.service;
+
+import com.acme.im.common.websocket.proto.EventMessage;
+import com.acme.im.common.websocket.proto.MessageStatus;
+import com.acme.im.common.websocket.proto.MessageType;
+import com.acme.im.common.websocket.proto.WebSocketMessage;
+import com.acme.im.communication.config.ReadStateConfig;
+import com.acme.im.communication.entity.Message;
+import com.acme.im.communication.repository.MessageRepository;
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 已读状态服务
+ * 维护每个用户在每个会话的已读水位（last_read_seq），并据此计算未读数和推送已读回执
+ *
+ * 1. 水位 - 以Redis哈希 im:read:{会话ID} 保存，字段为用户ID，所有实例共享；
+ *    只前进不后退，Redis未命中时从message_read_status加载并回填
+ * 2. 合并写入 - 已读事件先按"会话|用户"合并到本地缓冲，每个间隔通过管道写Redis、
+ *    批量upsert数据库一次，连续快速的已读只产生一次写入；数据库失败时放回缓冲重试
+ * 3. 未读数 - 会话最后消息序列号减已读水位，不扫描消息行；撤回和删除的消息仍计入。
+ *    最后消息序列号保存在同一哈希的_seq字段，新消息按会话合并后随水位一起写入，所有实例共享；
+ *    不使用conversation_sequences的水位，它是已租号段的上界，高于实际发出的序列号
+ * 4. 回执 - 同样按"会话|用户"合并，每个推送间隔每个会话解析一次最近已读消息的发送方，
+ *    回执只推送到这些发送方和读者本人的用户队列
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Service
+@Slf4j
+public class ReadStateService {
+
+    private static final String REDIS_KEY_PREFIX = "im:read:";
+    private static final String LAST_SEQ_FIELD = "_seq";
+    private static final String RECEIPT_DESTINATION = "/queue/read-receipts";
+    private static final String RECEIPT_EVENT_TYPE = "READ_RECEIPT";
+
+    // 只在新水位更大时写入，并刷新过期时间
+    private static final byte[] ADVANCE_SCRIPT = ("""
+            local current = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0')
+            if tonumber(ARGV[2]) > current then
+                redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+            end
+            redis.call('PEXPIRE', KEYS[1], ARGV[3])
+            return current
+            """).getBytes(StandardCharsets.UTF_8);
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO message_read_status (conversation_id, user_id, last_read_seq, last_read_at)
+            VALUES (?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE
+                last_read_seq = GREATEST(last_read_seq, VALUES(last_read_seq)),
+                last_read_at = VALUES(last_read_at)
+            """;
+
+    private static final String SELECT_SQL =
+            "SELECT last_read_seq FROM message_read_status WHERE conversation_id = ? AND user_id = ?";
+
+    private final RedisTemplate<String, String> stringRedisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final HotConversationCache hotCache;
+    private final MessageRepository messageRepository;
+    private final ClusterDeliveryService clusterDelivery;
+    private final Gson gson;
+    private final ReadStateConfig config;
+
+    private final ReadWatermarkBuffer pendingWatermarks = new ReadWatermarkBuffer();
+    private final ReadWatermarkBuffer pendingReceipts = new ReadWatermarkBuffer();
+
+    // 按会话合并的最后消息序列号，只保留最大值
+    private final ConcurrentHashMap<Long, Long> pendingLastSeqs = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flushExecutor;
+
+    // 统计信息
+    private final AtomicLong readEvents = new AtomicLong(0);
+    private final AtomicLong watermarkWrites = new AtomicLong(0);
+    private final AtomicLong writeFailures = new AtomicLong(0);
+    private final AtomicLong receiptPushes = new AtomicLong(0);
+    private final AtomicLong dbLoads = new AtomicLong(0);
+
+    public ReadStateService(@Qualifier("customStringRedisTemplate") RedisTemplate<String, String> stringRedisTemplate,
+                            JdbcTemplate jdbcTemplate,
+                            HotConversationCache hotCache,
+                            MessageRepository messageRepository,
+                            ClusterDeliveryService clusterDelivery,
+                            @Qualifier("gson") Gson gson,
+                            ReadStateConfig config) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.hotCache = hotCache;
+        this.messageRepository = messageRepository;
+        this.clusterDelivery = clusterDelivery;
+        this.gson = gson;
+        this.config = config;
+    }
+
+    /**
+     * 启动水位写入与回执推送线程
+     */
+    @PostConstruct
+    public void initialize() {
+        flushExecutor = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "read-state-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flushWatermarks,
+                config.getFlushIntervalMs(), config.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        flushExecutor.scheduleWithFixedDelay(this::flushReceipts,
+                config.getReceiptIntervalMs(), config.getReceiptIntervalMs(), TimeUnit.MILLISECONDS);
+        log.info("已读状态服务初始化完成: flushIntervalMs={}, receiptIntervalMs={}",
+                config.getFlushIntervalMs(), config.getReceiptIntervalMs());
+    }
+
+    /**
+     * 优雅关闭：写入所有待写水位
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushWatermarks();
+        log.info("已读状态服务已关闭: {}", getStats());
+    }
+
+    /**
+     * 标记已读到指定序列号
+     *
+     * @param conversationId 会话ID
+     * @param userId 用户ID
+     * @param lastReadSeq 已读到的消息序列号
+     */
+    public void markRead(long conversationId, long userId, long lastReadSeq) {
+        if (lastReadSeq <= 0) {
+            return;
+        }
+        readEvents.incrementAndGet();
+        pendingWatermarks.advance(conversationId, userId, lastReadSeq);
+        pendingReceipts.advance(conversationId, userId, lastReadSeq);
+    }
+
+    /**
+     * 新消息推进会话的最后消息序列号
+     *
+     * @param message 已持久化的消息
+     */
+    public void onMessage(Message message) {
+        if (message.getConversationId() == null || message.getSeq() == null) {
+            return;
+        }
+        pendingLastSeqs.merge(message.getConversationId(), message.getSeq(), Math::max);
+    }
+
+    /**
+     * 获取已读水位
+     *
+     * @return 已读到的消息序列号，从未读过返回0
+     */
+    public long getLastReadSeq(long conversationId, long userId) {
+        long pending = pendingWatermarks.peek(conversationId, userId);
+        String value = null;
+        try {
+            value = stringRedisTemplate.<String, String>opsForHash().get(redisKey(conversationId), String.valueOf(userId));
+        } catch (Exception e) {
+            log.debug("读取Redis已读水位失败: conversationId={}, userId={}, error={}",
+                    conversationId, userId, e.getMessage());
+        }
+        long stored = value != null ? Long.parseLong(value) : loadAndBackfill(conversationId, userId);
+        return Math.max(pending, stored);
+    }
+
+    /**
+     * 获取会话最后一条消息的序列号
+     *
+     * @return 最后消息序列号，没有消息返回0
+     */
+    public long getLastSeq(long conversationId) {
+        String value = null;
+        try {
+            value = stringRedisTemplate.<String, String>opsForHash().get(redisKey(conversationId), LAST_SEQ_FIELD);
+        } catch (Exception e) {
+            log.debug("读取Redis最后消息序列号失败: conversationId={}, error={}", conversationId, e.getMessage());
+        }
+        long stored = value != null ? Long.parseLong(value) : loadLastSeq(conversationId);
+        return Math.max(stored, pendingLastSeqs.getOrDefault(conversationId, 0L));
+    }
+
+    /**
+     * 获取未读数
+     * 会话最后消息序列号减已读水位
+     */
+    public long getUnreadCount(long conversationId, long userId) {
+        return Math.max(0, getLastSeq(conversationId) - getLastReadSeq(conversationId, userId));
+    }
+
+    /**
+     * 批量获取用户在多个会话的未读数，Redis读取通过管道一次完成
+     *
+     * @param userId 用户ID
+     * @param conversationIds 会话ID
+     * @return 会话ID到未读数的映射
+     */
+    public Map<Long, Long> getUnreadCounts(long userId, Collection<Long> conversationIds) {
+        List<Long> ids = new ArrayList<>(conversationIds);
+        List<Object> values = readFields(ids, String.valueOf(userId), LAST_SEQ_FIELD);
+
+        Map<Long, Long> unread = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            long conversationId = ids.get(i);
+            List<?> fields = values != null && i < values.size() && values.get(i) instanceof List<?> l ? l : null;
+            Object lastReadValue = fields != null ? fields.get(0) : null;
+            Object lastSeqValue = fields != null ? fields.get(1) : null;
+            long lastRead = Math.max(pendingWatermarks.peek(conversationId, userId), lastReadValue != null
+                    ? Long.parseLong(lastReadValue.toString()) : loadAndBackfill(conversationId, userId));
+            long lastSeq = Math.max(pendingLastSeqs.getOrDefault(conversationId, 0L), lastSeqValue != null
+                    ? Long.parseLong(lastSeqValue.toString()) : loadLastSeq(conversationId));
+            unread.put(conversationId, Math.max(0, lastSeq - lastRead));
+        }
+        return unread;
+    }
+
+    /**
+     * 批量获取用户在多个会话的已读水位，Redis读取通过管道一次完成
+     *
+     * @param userId 用户ID
+     * @param conversationIds 会话ID
+     * @return 会话ID到已读序列号的映射，从未读过为0
+     */
+    public Map<Long, Long> getLastReadSeqs(long userId, Collection<Long> conversationIds) {
+        List<Long> ids = new ArrayList<>(conversationIds);
+        List<Object> values = readFields(ids, String.valueOf(userId));
+
+        Map<Long, Long> lastReads = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            long conversationId = ids.get(i);
+            List<?> fields = values != null && i < values.size() && values.get(i) instanceof List<?> l ? l : null;
+            Object value = fields != null ? fields.get(0) : null;
+            long stored = value != null ? Long.parseLong(value.toString()) : loadAndBackfill(conversationId, userId);
+            lastReads.put(conversationId, Math.max(stored, pendingWatermarks.peek(conversationId, userId)));
+        }
+        return lastReads;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public ReadStateStats getStats() {
+        return new ReadStateStats(readEvents.get(), watermarkWrites.get(), writeFailures.get(),
+                receiptPushes.get(), dbLoads.get(), pendingWatermarks.size(), pendingReceipts.size());
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    /**
+     * 通过管道一次读取多个会话哈希的指定字段，每个会话返回与fields对应的值列表，失败时返回null
+     */
+    private List<Object> readFields(List<Long> conversationIds, String... fields) {
+        byte[][] fieldBytes = new byte[fields.length][];
+        for (int i = 0; i < fields.length; i++) {
+            fieldBytes[i] = fields[i].getBytes(StandardCharsets.UTF_8);
+        }
+        try {
+            return stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Long conversationId : conversationIds) {
+                    connection.hashCommands().hMGet(redisKey(conversationId).getBytes(StandardCharsets.UTF_8), fieldBytes);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.debug("批量读取Redis已读状态失败: conversations={}, error={}", conversationIds.size(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 合并后的水位写入Redis和数据库
+     */
+    private void flushWatermarks() {
+        try {
+            List<ReadWatermarkBuffer.Watermark> batch;
+            while (!(batch = pendingWatermarks.drain(config.getBatchSize())).isEmpty()) {
+                writeToRedis(batch);
+                writeToDatabase(batch);
+            }
+            writeLastSeqs(drainLastSeqs());
+        } catch (Exception e) {
+            log.error("已读水位批量写入异常", e);
+        }
+    }
+
+    private Map<Long, Long> drainLastSeqs() {
+        Map<Long, Long> batch = new HashMap<>();
+        Iterator<Long> it = pendingLastSeqs.keySet().iterator();
+        while (it.hasNext()) {
+            Long conversationId = it.next();
+            Long seq = pendingLastSeqs.remove(conversationId);
+            if (seq != null) {
+                batch.put(conversationId, seq);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * 最后消息序列号写入Redis，只前进不后退；失败时放回待写集合
+     */
+    private void writeLastSeqs(Map<Long, Long> lastSeqs) {
+        if (lastSeqs.isEmpty()) {
+            return;
+        }
+        byte[] field = LAST_SEQ_FIELD.getBytes(StandardCharsets.UTF_8);
+        byte[] ttlMs = String.valueOf(TimeUnit.DAYS.toMillis(config.getRedisTtlDays())).getBytes(StandardCharsets.UTF_8);
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Map.Entry<Long, Long> entry : lastSeqs.entrySet()) {
+                    connection.scriptingCommands().eval(ADVANCE_SCRIPT, ReturnType.INTEGER, 1,
+                            redisKey(entry.getKey()).getBytes(StandardCharsets.UTF_8), field,
+                            String.valueOf(entry.getValue()).getBytes(StandardCharsets.UTF_8), ttlMs);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            lastSeqs.forEach((conversationId, seq) -> pendingLastSeqs.merge(conversationId, seq, Math::max));
+            log.warn("最后消息序列号写入Redis失败，下次重试: size={}, error={}", lastSeqs.size(), e.getMessage());
+        }
+    }
+
+    private void writeToRedis(List<ReadWatermarkBuffer.Watermark> batch) {
+        byte[] ttlMs = String.valueOf(TimeUnit.DAYS.toMillis(config.getRedisTtlDays())).getBytes(StandardCharsets.UTF_8);
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (ReadWatermarkBuffer.Watermark watermark : batch) {
+                    connection.scriptingCommands().eval(ADVANCE_SCRIPT, ReturnType.INTEGER, 1,
+                            redisKey(watermark.getConversationId()).getBytes(StandardCharsets.UTF_8),
+                            String.valueOf(watermark.getUserId()).getBytes(StandardCharsets.UTF_8),
+                            String.valueOf(watermark.getLastReadSeq()).getBytes(StandardCharsets.UTF_8),
+                            ttlMs);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("已读水位写入Redis失败: size={}, error={}", batch.size(), e.getMessage());
+        }
+    }
+
+    private void writeToDatabase(List<ReadWatermarkBuffer.Watermark> batch) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Object[]> args = new ArrayList<>(batch.size());
+        for (ReadWatermarkBuffer.Watermark watermark : batch) {
+            args.add(new Object[]{watermark.getConversationId(), watermark.getUserId(),
+                    watermark.getLastReadSeq(), now});
+        }
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, args);
+            watermarkWrites.addAndGet(batch.size());
+        } catch (Exception e) {
+            writeFailures.addAndGet(batch.size());
+            pendingWatermarks.restore(batch);
+            log.warn("已读水位批量落库失败，下次重试: size={}, error={}", batch.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 按会话分组推送合并后的已读回执，每个接收方只收到与自己相关的条目
+     */
+    private void flushReceipts() {
+        try {
+            List<ReadWatermarkBuffer.Watermark> batch;
+            while (!(batch = pendingReceipts.drain(config.getBatchSize())).isEmpty()) {
+                Map<Long, List<Map<String, Long>>> byConversation = new HashMap<>();
+                for (ReadWatermarkBuffer.Watermark watermark : batch) {
+                    Map<String, Long> entry = new LinkedHashMap<>();
+                    entry.put("userId", watermark.getUserId());
+                    entry.put("lastReadSeq", watermark.getLastReadSeq());
+                    byConversation.computeIfAbsent(watermark.getConversationId(), k -> new ArrayList<>()).add(entry);
+                }
+                for (Map.Entry<Long, List<Map<String, Long>>> e : byConversation.entrySet()) {
+                    Map<Long, List<Map<String, Long>>> byRecipient = resolveRecipients(e.getKey(), e.getValue());
+                    for (Map.Entry<Long, List<Map<String, Long>>> r : byRecipient.entrySet()) {
+                        List<Map<String, Long>> receipts = r.getValue();
+                        for (int from = 0; from < receipts.size(); from += config.getMaxReceiptsPerPush()) {
+                            int to = Math.min(receipts.size(), from + config.getMaxReceiptsPerPush());
+                            pushReceipts(e.getKey(), r.getKey(), receipts.subList(from, to));
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("已读回执推送异常", e);
+        }
+    }
+
+    /**
+     * 解析回执接收方：读者本人（同步其他终端），以及最近已读范围内消息的发送方
+     * 发送方只收到已读水位覆盖其消息的回执
+     *
+     * @return 接收方用户ID到回执条目的映射
+     */
+    private Map<Long, List<Map<String, Long>>> resolveRecipients(long conversationId, List<Map<String, Long>> receipts) {
+        Map<Long, List<Map<String, Long>>> byRecipient = new LinkedHashMap<>();
+        long maxReadSeq = 0;
+        for (Map<String, Long> receipt : receipts) {
+            byRecipient.computeIfAbsent(receipt.get("userId"), k -> new ArrayList<>()).add(receipt);
+            maxReadSeq = Math.max(maxReadSeq, receipt.get("lastReadSeq"));
+        }
+
+        List<Message> recent;
+        try {
+            recent = hotCache.getMessageHistory(conversationId, maxReadSeq + 1, config.getReceiptSenderScan());
+        } catch (Exception e) {
+            log.warn("解析已读回执发送方失败，只推送给读者: conversationId={}, error={}", conversationId, e.getMessage());
+            return byRecipient;
+        }
+        // 每个发送方在扫描范围内最早的消息序列号
+        Map<Long, Long> earliestBySender = new HashMap<>();
+        for (Message message : recent) {
+            if (message.getSenderId() != null && message.getSeq() != null) {
+                earliestBySender.merge(message.getSenderId(), message.getSeq(), Math::min);
+            }
+        }
+        for (Map.Entry<Long, Long> sender : earliestBySender.entrySet()) {
+            Set<Map<String, Long>> targeted = new HashSet<>(byRecipient.getOrDefault(sender.getKey(), List.of()));
+            for (Map<String, Long> receipt : receipts) {
+                if (!receipt.get("userId").equals(sender.getKey()) && receipt.get("lastReadSeq") >= sender.getValue()
+                        && !targeted.contains(receipt)) {
+                    byRecipient.computeIfAbsent(sender.getKey(), k -> new ArrayList<>()).add(receipt);
+                }
+            }
+        }
+        return byRecipient;
+    }
+
+    private void pushReceipts(long conversationId, long recipientId, List<Map<String, Long>> receipts) {
+        long now = System.currentTimeMillis();
+        String messageId = "read_" + UUID.randomUUID();
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("conversationId", conversationId);
+        data.put("receipts", receipts);
+        WebSocketMessage message = WebSocketMessage.newBuilder()
+                .setMessageId(messageId)
+                .setType(MessageType.EVENT_MESSAGE_STATUS_CHANGE)
+                .setStatus(MessageStatus.MESSAGE_NORMAL)
+                .setSenderId("system")
+                .setConversationId(String.valueOf(conversationId))
+                .setTimestamp(now)
+                .setVersion("2.0.0")
+                .setEvent(EventMessage.newBuilder()
+                        .setEventType(RECEIPT_EVENT_TYPE)
+                        .setEventName("已读回执")
+                        .setEventData(gson.toJson(data))
+                        .setEventSource("communication-service")
+                        .setEventTime(now)
+                        .setEventId(messageId)
+                        .build())
+                .build();
+        try {
+            clusterDelivery.deliverToUser(recipientId, RECEIPT_DESTINATION, message);
+            receiptPushes.incrementAndGet();
+        } catch (Exception e) {
+            log.warn("已读回执推送失败: conversationId={}, recipientId={}, receipts={}, error={}",
+                    conversationId, recipientId, receipts.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 从数据库加载水位并回填Redis
+     */
+    private long loadAndBackfill(long conversationId, long userId) {
+        dbLoads.incrementAndGet();
+        Long seq;
+        try {
+            List<Long> rows = jdbcTemplate.queryForList(SELECT_SQL, Long.class, conversationId, userId);
+            seq = rows.isEmpty() ? null : rows.get(0);
+        } catch (Exception e) {
+            log.warn("加载已读水位失败: conversationId={}, userId={}, error={}",
+                    conversationId, userId, e.getMessage());
+            return 0;
+        }
+        long lastRead = seq != null ? seq : 0;
+        if (lastRead > 0) {
+            writeToRedis(List.of(new ReadWatermarkBuffer.Watermark(
+                    new ReadWatermarkBuffer.ReadKey(conversationId, userId), lastRead)));
+        }
+        return lastRead;
+    }
+
+    /**
+     * 从数据库加载最后消息序列号并回填Redis
+     */
+    private long loadLastSeq(long conversationId) {
+        dbLoads.incrementAndGet();
+        long lastSeq;
+        try {
+            List<Message> latest = messageRepository.findLatestByConversationId(conversationId, 1, false);
+            lastSeq = latest.isEmpty() || latest.get(0).getSeq() == null ? 0 : latest.get(0).getSeq();
+        } catch (Exception e) {
+            log.warn("加载最后消息序列号失败: conversationId={}, error={}", conversationId, e.getMessage());
+            return 0;
+        }
+        if (lastSeq > 0) {
+            writeLastSeqs(new HashMap<>(Map.of(conversationId, lastSeq)));
+        }
+        return lastSeq;
+    }
+
+    private static String redisKey(long conversationId) {
+        return REDIS_KEY_PREFIX + conversationId;
+    }
+
+    /**
+     * 已读状态统计
+     */
+    public static class ReadStateStats {
+        private final long readEvents;
+        private final long watermarkWrites;
+        private final long writeFailures;
+        private final long receiptPushes;
+        private final long dbLoads;
+        private final int pendingWatermarks;
+        private final int pendingReceipts;
+
+        public ReadStateStats(long readEvents, long watermarkWrites, long writeFailures, long receiptPushes,
+                              long dbLoads, int pendingWatermarks, int pendingReceipts) {
+            this.readEvents = readEvents;
+            this.watermarkWrites = watermarkWrites;
+            this.writeFailures = writeFailures;
+            this.receiptPushes = receiptPushes;
+            this.dbLoads = dbLoads;
+            this.pendingWatermarks = pendingWatermarks;
+            this.pendingReceipts = pendingReceipts;
+        }
+
+        public long getReadEvents() { return readEvents; }
+        public long getWatermarkWrites() { return watermarkWrites; }
+        public long getWriteFailures() { return writeFailures; }
+        public long getReceiptPushes() { return receiptPushes; }
+        public long getDbLoads() { return dbLoads; }
+        public int getPendingWatermarks() { return pendingWatermarks; }
+        public int getPendingReceipts() { return pendingReceipts; }
+
+        @Override
+        public String toString() {
+            return String.format("ReadStateStats{events=%d, writes=%d, failures=%d, receipts=%d, dbLoads=%d, pendingWatermarks=%d, pendingReceipts=%d}",
+                    readEvents, watermarkWrites, writeFailures, receiptPushes, dbLoads, pendingWatermarks, pendingReceipts);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.acme.im.communication.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 已读水位合并缓冲
+ * 同一用户在同一会话的多次已读只保留最大序列号，刷写时整批取出
+ *
+ * 取出时逐个移除键，取出后到达的更新会重新建立条目，不会丢失
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class ReadWatermarkBuffer {
+
+    private final ConcurrentHashMap<ReadKey, Long> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 会话内用户键
+     */
+    public static final class ReadKey {
+        private final long conversationId;
+        private final long userId;
+
+        public ReadKey(long conversationId, long userId) {
+            this.conversationId = conversationId;
+            this.userId = userId;
+        }
+
+        public long getConversationId() { return conversationId; }
+        public long getUserId() { return userId; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ReadKey other)) {
+                return false;
+            }
+            return conversationId == other.conversationId && userId == other.userId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(conversationId, userId);
+        }
+    }
+
+    /**
+     * 已读水位
+     */
+    public static final class Watermark {
+        private final ReadKey key;
+        private final long lastReadSeq;
+
+        public Watermark(ReadKey key, long lastReadSeq) {
+            this.key = key;
+            this.lastReadSeq = lastReadSeq;
+        }
+
+        public ReadKey getKey() { return key; }
+        public long getConversationId() { return key.conversationId; }
+        public long getUserId() { return key.userId; }
+        public long getLastReadSeq() { return lastReadSeq; }
+    }
+
+    /**
+     * 推进水位，只接受更大的序列号
+     *
+     * @return 合并后的水位
+     */
+    public long advance(long conversationId, long userId, long seq) {
+        return pending.merge(new ReadKey(conversationId, userId), seq, Math::max);
+    }
+
+    /**
+     * 查看尚未取出的水位
+     *
+     * @return 水位，不存在返回-1
+     */
+    public long peek(long conversationId, long userId) {
+        Long seq = pending.get(new ReadKey(conversationId, userId));
+        return seq != null ? seq : -1;
+    }
+
+    /**
+     * 取出至多maxEntries条水位
+     */
+    public List<Watermark> drain(int maxEntries) {
+        List<Watermark> batch = new ArrayList<>(Math.min(maxEntries, pending.size()));
+        Iterator<ReadKey> it = pending.keySet().iterator();
+        while (batch.size() < maxEntries && it.hasNext()) {
+            ReadKey key = it.next();
+            Long seq = pending.remove(key);
+            if (seq != null) {
+                batch.add(new Watermark(key, seq));
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * 写入失败时放回，与期间到达的更新按最大值合并
+     */
+    public void restore(Collection<Watermark> watermarks) {
+        for (Watermark watermark : watermarks) {
+            pending.merge(watermark.key, watermark.lastReadSeq, Math::max);
+        }
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+}
@@ -0,0 +1,469 @@
+package com.acme.im.communication.service;
+
+import com.acme.im.common.infrastructure.database.sharding.ShardNode;
+import com.acme.im.common.infrastructure.database.sharding.ShardRoutingTable;
+import com.acme.im.common.infrastructure.database.sharding.VersionedShardRouter;
+import com.acme.im.communication.config.MessageShardingConfig;
+import com.acme.im.communication.entity.Message;
+import com.acme.im.communication.repository.MessageRepository;
+import com.acme.im.communication.repository.MessageShardMigrationRepository;
+import com.acme.im.communication.repository.ShardDataSourceRegistry;
+import com.acme.im.communication.repository.ShardRoutingTableStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * 消息分片在线迁移服务
+ * 把一组分片槽从源节点迁往新节点（可以是其他数据库实例上的表），迁移期间不停写
+ *
+ * 迁移流程：
+ * 1. 双写 - 发布新路由表版本，迁移槽的写入同步到目标节点，等待所有实例刷新路由表
+ * 2. 回填 - 按ID顺序分批把源节点的存量数据原样复制到目标节点，批次间限速
+ * 3. 校验 - 逐批比对源与目标，修复回填与双写竞争造成的差异，直到一轮无差异
+ * 4. 切读 - 读目标节点、仍双写，等待所有实例刷新，避免旧实例读到落后数据；
+ *    此阶段影子写失败直接让写入失败，不再留给校验
+ * 5. 完成 - 槽归属目标节点，停止双写
+ * 6. 终检 - 所有实例刷新后再扫描一遍源节点，补写目标缺失的行；
+ *    目标上同一ID是另一条消息（主键冲突），或校验后本实例影子写失败次数增加，都拒绝清理
+ * 7. 清理 - 分批删除源节点上的残留数据，完成后撤销扫描过滤
+ *
+ * 切读前可以放弃迁移，路由恢复原状；切读之后只能继续完成。
+ * 终检拒绝清理时任务失败，源节点数据作为残留保留，人工核对后再清理。
+ * 同一时间只运行一个迁移任务。
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ShardMigrationService {
+
+    private final VersionedShardRouter shardRouter;
+    private final ShardRoutingTableStore routingTableStore;
+    private final MessageShardMigrationRepository migrationRepository;
+    private final MessageRepository messageRepository;
+    private final ShardDataSourceRegistry dataSources;
+    private final MessageShardingConfig config;
+
+    private final AtomicReference<MigrationTask> currentTask = new AtomicReference<>();
+
+    private ExecutorService executor;
+
+    /**
+     * 迁移状态
+     */
+    public enum MigrationState {
+        DUAL_WRITE, BACKFILLING, VERIFYING, CUTTING_OVER, FINAL_VERIFYING, CLEANING, COMPLETED, ABORTED, FAILED;
+
+        boolean isTerminal() {
+            return this == COMPLETED || this == ABORTED || this == FAILED;
+        }
+    }
+
+    /**
+     * 迁移任务
+     */
+    private static class MigrationTask {
+        private final int[] slots;
+        private final ShardNode source;
+        private final ShardNode target;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private volatile MigrationState state = MigrationState.DUAL_WRITE;
+        private volatile boolean abortRequested;
+        private volatile boolean cutover;
+        private volatile String error;
+        private volatile LocalDateTime finishedAt;
+        private volatile long shadowFailuresAtVerify;
+        private final AtomicLong copiedRows = new AtomicLong(0);
+        private final AtomicLong verifiedRows = new AtomicLong(0);
+        private final AtomicLong repairedRows = new AtomicLong(0);
+        private final AtomicLong cleanedRows = new AtomicLong(0);
+
+        MigrationTask(int[] slots, ShardNode source, ShardNode target) {
+            this.slots = slots;
+            this.source = source;
+            this.target = target;
+        }
+    }
+
+    /**
+     * 迁移被放弃
+     */
+    private static class MigrationAbortedException extends RuntimeException {
+        MigrationAbortedException() {
+            super("迁移已放弃", null, false, false);
+        }
+    }
+
+    @PostConstruct
+    public void initialize() {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "message-shard-migration");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        MigrationTask task = currentTask.get();
+        if (task != null && !task.state.isTerminal()) {
+            log.warn("服务关闭时分片迁移未完成，路由表停留在当前版本，可重新发起: {}", buildStatus(task));
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * 发起迁移
+     *
+     * @param slots 待迁移的分片槽，必须属于同一源节点
+     * @param dataSource 目标数据源名称（default或已配置的分片数据源）
+     * @param tableName 目标表名，表结构需与消息分表一致且未承载任何分片槽
+     * @return 迁移状态
+     */
+    public synchronized MigrationStatus startMigration(int[] slots, String dataSource, String tableName) {
+        MigrationTask running = currentTask.get();
+        if (running != null && !running.state.isTerminal()) {
+            throw new IllegalStateException("已有迁移任务在运行: " + buildStatus(running));
+        }
+        if (!dataSources.contains(dataSource)) {
+            throw new IllegalArgumentException("未配置的分片数据源: " + dataSource);
+        }
+
+        int[] sortedSlots = Arrays.stream(slots).distinct().sorted().toArray();
+        ShardNode target = new ShardNode(dataSource, tableName);
+        routingTableStore.refresh();
+        ShardRoutingTable table = shardRouter.current();
+        ShardRoutingTable next = table.startMigration(sortedSlots, target);
+        MigrationTask task = new MigrationTask(sortedSlots, table.routeSlot(sortedSlots[0]).getWriteNode(), target);
+
+        routingTableStore.publish(next, String.format("开始迁移: %d个分片槽 %s -> %s", sortedSlots.length, task.source, target));
+        currentTask.set(task);
+        executor.execute(() -> run(task));
+
+        log.info("分片迁移已发起: slots={}, source={}, target={}", sortedSlots.length, task.source, target);
+        return buildStatus(task);
+    }
+
+    /**
+     * 请求放弃当前迁移，仅在切读前生效
+     *
+     * @return 是否受理
+     */
+    public boolean abort() {
+        MigrationTask task = currentTask.get();
+        if (task == null || task.state.isTerminal() || task.cutover) {
+            return false;
+        }
+        task.abortRequested = true;
+        return true;
+    }
+
+    /**
+     * 当前（或最近一次）迁移状态
+     */
+    public MigrationStatus getStatus() {
+        MigrationTask task = currentTask.get();
+        return task == null ? null : buildStatus(task);
+    }
+
+    // ================================
+    // 迁移执行
+    // ================================
+
+    private void run(MigrationTask task) {
+        try {
+            awaitPropagation(task);
+
+            task.state = MigrationState.BACKFILLING;
+            backfill(task);
+
+            task.state = MigrationState.VERIFYING;
+            verify(task);
+            task.shadowFailuresAtVerify = messageRepository.getShadowWriteFailures();
+
+            task.state = MigrationState.CUTTING_OVER;
+            checkAbort(task);
+            task.cutover = true;
+            publish(table -> table.cutover(task.slots), "切读", task);
+            awaitPropagation(task);
+            publish(table -> table.complete(task.slots), "完成迁移", task);
+            awaitPropagation(task);
+
+            task.state = MigrationState.FINAL_VERIFYING;
+            finalVerify(task);
+
+            task.state = MigrationState.CLEANING;
+            cleanup(task);
+            publish(table -> table.clearResidual(task.slots), "清理完成", task);
+
+            task.state = MigrationState.COMPLETED;
+            log.info("分片迁移完成: {}", buildStatus(task));
+        } catch (MigrationAbortedException e) {
+            try {
+                publish(table -> table.abort(task.slots), "放弃迁移", task);
+                task.state = MigrationState.ABORTED;
+                log.warn("分片迁移已放弃，目标节点上已复制的数据需手工清理: {}", buildStatus(task));
+            } catch (Exception publishError) {
+                fail(task, publishError);
+            }
+        } catch (Exception e) {
+            fail(task, e);
+        } finally {
+            task.finishedAt = LocalDateTime.now();
+        }
+    }
+
+    /**
+     * 回填：按ID顺序原样复制源节点数据
+     */
+    private void backfill(MigrationTask task) {
+        int slotCount = shardRouter.current().getSlotCount();
+        long afterId = 0;
+        while (true) {
+            checkAbort(task);
+            List<Message> rows = migrationRepository.scanSlots(task.source, slotCount, task.slots,
+                    afterId, config.getMigration().getBatchSize());
+            if (rows.isEmpty()) {
+                return;
+            }
+            migrationRepository.upsert(task.target, rows);
+            task.copiedRows.addAndGet(rows.size());
+            afterId = rows.get(rows.size() - 1).getId();
+            throttle(task);
+        }
+    }
+
+    /**
+     * 校验：逐批比对并修复，直到一轮无差异
+     */
+    private void verify(MigrationTask task) {
+        int maxPasses = Math.max(1, config.getMigration().getMaxVerifyPasses());
+        for (int pass = 1; pass <= maxPasses; pass++) {
+            long repaired = verifyPass(task);
+            log.info("分片迁移校验: pass={}, repaired={}, target={}", pass, repaired, task.target);
+            if (repaired == 0) {
+                return;
+            }
+        }
+        throw new IllegalStateException("校验未收敛，迁移停留在双写阶段: passes=" + maxPasses);
+    }
+
+    private long verifyPass(MigrationTask task) {
+        int slotCount = shardRouter.current().getSlotCount();
+        long repaired = 0;
+        long afterId = 0;
+        while (true) {
+            checkAbort(task);
+            List<Message> rows = migrationRepository.scanSlots(task.source, slotCount, task.slots,
+                    afterId, config.getMigration().getBatchSize());
+            if (rows.isEmpty()) {
+                return repaired;
+            }
+            List<Long> ids = new ArrayList<>(rows.size());
+            for (Message row : rows) {
+                ids.add(row.getId());
+            }
+            Map<Long, Message> copies = migrationRepository.findByIds(task.target, ids);
+            List<Message> mismatched = new ArrayList<>();
+            for (Message row : rows) {
+                if (!Objects.equals(row, copies.get(row.getId()))) {
+                    mismatched.add(row);
+                }
+            }
+            migrationRepository.upsert(task.target, mismatched);
+            repaired += mismatched.size();
+            task.verifiedRows.addAndGet(rows.size());
+            task.repairedRows.addAndGet(mismatched.size());
+            afterId = rows.get(rows.size() - 1).getId();
+            throttle(task);
+        }
+    }
+
+    /**
+     * 终检：迁移完成且所有实例刷新后，补写目标节点缺失的行
+     * 目标节点此时已独立写入，只补缺失的行，不覆盖已有的行
+     */
+    private void finalVerify(MigrationTask task) {
+        int slotCount = shardRouter.current().getSlotCount();
+        long inserted = 0;
+        long afterId = 0;
+        while (true) {
+            List<Message> rows = migrationRepository.scanSlots(task.source, slotCount, task.slots,
+                    afterId, config.getMigration().getBatchSize());
+            if (rows.isEmpty()) {
+                break;
+            }
+            List<Long> ids = new ArrayList<>(rows.size());
+            for (Message row : rows) {
+                ids.add(row.getId());
+            }
+            Map<Long, Message> copies = migrationRepository.findByIds(task.target, ids);
+            List<Message> missing = new ArrayList<>();
+            for (Message row : rows) {
+                Message copy = copies.get(row.getId());
+                if (copy == null) {
+                    missing.add(row);
+                } else if (!Objects.equals(row.getConversationId(), copy.getConversationId())
+                        || !Objects.equals(row.getSeq(), copy.getSeq())) {
+                    throw new IllegalStateException(String.format(
+                            "终检发现主键冲突，拒绝清理源节点: id=%d, source=%d/%d, target=%d/%d",
+                            row.getId(), row.getConversationId(), row.getSeq(),
+                            copy.getConversationId(), copy.getSeq()));
+                }
+            }
+            // 补写期间目标节点分配了相同ID时抛出DuplicateKeyException，同样拒绝清理
+            migrationRepository.insert(task.target, missing);
+            inserted += missing.size();
+            task.verifiedRows.addAndGet(rows.size());
+            task.repairedRows.addAndGet(missing.size());
+            afterId = rows.get(rows.size() - 1).getId();
+            throttle(task);
+        }
+
+        long failures = messageRepository.getShadowWriteFailures();
+        if (failures > task.shadowFailuresAtVerify) {
+            throw new IllegalStateException(String.format(
+                    "校验后影子写失败次数增加(%d -> %d)，源节点与目标可能不一致，拒绝清理",
+                    task.shadowFailuresAtVerify, failures));
+        }
+        log.info("分片迁移终检完成: inserted={}, target={}", inserted, task.target);
+    }
+
+    /**
+     * 清理源节点残留数据
+     */
+    private void cleanup(MigrationTask task) {
+        int slotCount = shardRouter.current().getSlotCount();
+        while (true) {
+            int deleted = migrationRepository.deleteSlots(task.source, slotCount, task.slots,
+                    config.getMigration().getBatchSize());
+            if (deleted == 0) {
+                return;
+            }
+            task.cleanedRows.addAndGet(deleted);
+            throttle(task);
+        }
+    }
+
+    /**
+     * 基于最新持久化版本发布路由表变更
+     */
+    private void publish(UnaryOperator<ShardRoutingTable> change, String action, MigrationTask task) {
+        routingTableStore.refresh();
+        ShardRoutingTable next = change.apply(shardRouter.current());
+        routingTableStore.publish(next, String.format("%s: %d个分片槽 %s -> %s",
+                action, task.slots.length, task.source, task.target));
+    }
+
+    /**
+     * 等待其他实例刷新到最新路由表
+     */
+    private void awaitPropagation(MigrationTask task) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + config.getMigration().getPropagationWaitMs();
+        while (System.currentTimeMillis() < deadline) {
+            if (!task.cutover) {
+                checkAbort(task);
+            }
+            Thread.sleep(Math.min(200, Math.max(1, deadline - System.currentTimeMillis())));
+        }
+    }
+
+    private void throttle(MigrationTask task) {
+        long interval = config.getMigration().getBatchIntervalMs();
+        if (interval <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(interval);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("迁移线程被中断", e);
+        }
+    }
+
+    private void checkAbort(MigrationTask task) {
+        if (task.abortRequested && !task.cutover) {
+            throw new MigrationAbortedException();
+        }
+    }
+
+    private void fail(MigrationTask task, Exception e) {
+        task.state = MigrationState.FAILED;
+        task.error = e.getMessage();
+        log.error("分片迁移失败，路由表停留在当前版本: {}", buildStatus(task), e);
+    }
+
+    private MigrationStatus buildStatus(MigrationTask task) {
+        return new MigrationStatus(task.state, task.slots.length, task.source.toString(), task.target.toString(),
+                task.copiedRows.get(), task.verifiedRows.get(), task.repairedRows.get(), task.cleanedRows.get(),
+                task.startedAt, task.finishedAt, task.error);
+    }
+
+    /**
+     * 迁移状态快照
+     */
+    public static class MigrationStatus {
+        private final MigrationState state;
+        private final int slotCount;
+        private final String source;
+        private final String target;
+        private final long copiedRows;
+        private final long verifiedRows;
+        private final long repairedRows;
+        private final long cleanedRows;
+        private final LocalDateTime startedAt;
+        private final LocalDateTime finishedAt;
+        private final String error;
+
+        public MigrationStatus(MigrationState state, int slotCount, String source, String target, long copiedRows,
+                               long verifiedRows, long repairedRows, long cleanedRows, LocalDateTime startedAt,
+                               LocalDateTime finishedAt, String error) {
+            this.state = state;
+            this.slotCount = slotCount;
+            this.source = source;
+            this.target = target;
+            this.copiedRows = copiedRows;
+            this.verifiedRows = verifiedRows;
+            this.repairedRows = repairedRows;
+            this.cleanedRows = cleanedRows;
+            this.startedAt = startedAt;
+            this.finishedAt = finishedAt;
+            this.error = error;
+        }
+
+        public MigrationState getState() { return state; }
+        public int getSlotCount() { return slotCount; }
+        public String getSource() { return source; }
+        public String getTarget() { return target; }
+        public long getCopiedRows() { return copiedRows; }
+        public long getVerifiedRows() { return verifiedRows; }
+        public long getRepairedRows() { return repairedRows; }
+        public long getCleanedRows() { return cleanedRows; }
+        public LocalDateTime getStartedAt() { return startedAt; }
+        public LocalDateTime getFinishedAt() { return finishedAt; }
+        public String getError() { return error; }
+
+        @Override
+        public String toString() {
+            return String.format("MigrationStatus{state=%s, slots=%d, %s -> %s, copied=%d, verified=%d, repaired=%d, cleaned=%d, error=%s}",
+                    state, slotCount, source, target, copiedRows, verifiedRows, repairedRows, cleanedRows, error);
+        }
+    }
+}
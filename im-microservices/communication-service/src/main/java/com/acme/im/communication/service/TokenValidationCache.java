@@ -0,0 +1,256 @@
+package com.acme.im.communication.service;
+
+import com.acme.im.common.infrastructure.nats.dto.UserEvents;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token验证结果缓存
+ * 以Token的SHA-256摘要为键缓存验证结果，不保存Token原文
+ *
+ * 1. 过期 - 每条结果带过期时间，不晚于Token本身的过期时间
+ * 2. 吊销 - 按"用户|设备"记录吊销时间水位，签发时间不晚于水位的Token视为已吊销，
+ *    登出整个用户时设备记为"*"；水位精确到毫秒，JWT签发时间只到秒，截断后与吊销同一秒签发的Token
+ *    （包括吊销之后同一秒内重新签发的）一律视为已吊销，宁可让客户端重新登录也不放过吊销前的Token
+ * 3. 容量 - 超出上限时先清理过期条目，仍不足再淘汰部分条目
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class TokenValidationCache {
+
+    private static final String ALL_DEVICES = "*";
+
+    private final int maxEntries;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Long> revocations = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong revokedRejects = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    /**
+     * 缓存条目
+     */
+    private static final class Entry {
+        private final UserEvents.TokenValidationResponse response;
+        private final long issuedAtMs;
+        private final long expiresAtMs;
+
+        Entry(UserEvents.TokenValidationResponse response, long issuedAtMs, long expiresAtMs) {
+            this.response = response;
+            this.issuedAtMs = issuedAtMs;
+            this.expiresAtMs = expiresAtMs;
+        }
+    }
+
+    public TokenValidationCache(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * 查找未过期且未被吊销的验证结果
+     *
+     * @param tokenHash Token摘要
+     * @param nowMs 当前时间（毫秒）
+     * @return 验证结果，未命中返回null
+     */
+    public UserEvents.TokenValidationResponse get(String tokenHash, long nowMs) {
+        Entry entry = entries.get(tokenHash);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.expiresAtMs <= nowMs) {
+            entries.remove(tokenHash, entry);
+            misses.incrementAndGet();
+            return null;
+        }
+        UserEvents.TokenValidationResponse response = entry.response;
+        if (response.isValid() && isRevoked(response.getUserId(), response.getDeviceId(), entry.issuedAtMs)) {
+            entries.remove(tokenHash, entry);
+            revokedRejects.incrementAndGet();
+            return revokedResponse(response);
+        }
+        hits.incrementAndGet();
+        return response;
+    }
+
+    /**
+     * 缓存验证结果
+     *
+     * @param tokenHash Token摘要
+     * @param response 验证结果
+     * @param issuedAtMs Token签发时间（毫秒）
+     * @param expiresAtMs 结果过期时间（毫秒）
+     */
+    public void put(String tokenHash, UserEvents.TokenValidationResponse response,
+                    long issuedAtMs, long expiresAtMs) {
+        if (entries.size() >= maxEntries && !entries.containsKey(tokenHash)) {
+            makeRoom(System.currentTimeMillis());
+        }
+        entries.put(tokenHash, new Entry(response, issuedAtMs, expiresAtMs));
+    }
+
+    /**
+     * 记录吊销水位
+     *
+     * @param userId 用户ID
+     * @param deviceId 设备ID，为null表示用户的全部设备
+     * @param revokedAtMs 吊销时间（毫秒）
+     */
+    public void revoke(Long userId, String deviceId, long revokedAtMs) {
+        if (userId == null) {
+            return;
+        }
+        revocations.merge(revocationKey(userId, deviceId != null ? deviceId : ALL_DEVICES),
+                revokedAtMs, Math::max);
+    }
+
+    /**
+     * 判断Token是否已被吊销
+     */
+    public boolean isRevoked(Long userId, String deviceId, long issuedAtMs) {
+        if (userId == null || revocations.isEmpty()) {
+            return false;
+        }
+        Long allDevices = revocations.get(revocationKey(userId, ALL_DEVICES));
+        if (allDevices != null && issuedAtMs <= allDevices) {
+            return true;
+        }
+        if (deviceId == null) {
+            return false;
+        }
+        Long device = revocations.get(revocationKey(userId, deviceId));
+        return device != null && issuedAtMs <= device;
+    }
+
+    /**
+     * 清理过期条目和超过保留时间的吊销水位
+     *
+     * @return 清理的条目数
+     */
+    public int cleanup(long nowMs, long revocationRetentionSeconds) {
+        int removed = removeExpired(nowMs);
+        long revocationFloor = nowMs - revocationRetentionSeconds * 1000;
+        revocations.values().removeIf(revokedAt -> revokedAt < revocationFloor);
+        return removed;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getRevocationCount() {
+        return revocations.size();
+    }
+
+    /**
+     * 获取缓存统计
+     */
+    public Stats getStats() {
+        return new Stats(entries.size(), revocations.size(), hits.get(), misses.get(),
+                revokedRejects.get(), evictions.get());
+    }
+
+    /**
+     * 计算Token摘要
+     */
+    public static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    private int removeExpired(long nowMs) {
+        int removed = 0;
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expiresAtMs <= nowMs) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private void makeRoom(long nowMs) {
+        int removed = removeExpired(nowMs);
+        if (entries.size() < maxEntries) {
+            evictions.addAndGet(removed);
+            return;
+        }
+        // 仍然已满，淘汰约八分之一的条目，避免每次写入都触发
+        int target = maxEntries - Math.max(1, maxEntries / 8);
+        Iterator<String> it = entries.keySet().iterator();
+        while (entries.size() > target && it.hasNext()) {
+            it.next();
+            it.remove();
+            removed++;
+        }
+        evictions.addAndGet(removed);
+    }
+
+    private static String revocationKey(Long userId, String deviceId) {
+        return userId + "|" + deviceId;
+    }
+
+    static UserEvents.TokenValidationResponse revokedResponse(UserEvents.TokenValidationResponse source) {
+        return UserEvents.TokenValidationResponse.builder()
+                .requestId(source.getRequestId())
+                .valid(false)
+                .userId(source.getUserId())
+                .deviceId(source.getDeviceId())
+                .errorMessage("Token已被吊销")
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+
+    /**
+     * 缓存统计
+     */
+    public static class Stats {
+        private final int size;
+        private final int revocations;
+        private final long hits;
+        private final long misses;
+        private final long revokedRejects;
+        private final long evictions;
+
+        public Stats(int size, int revocations, long hits, long misses, long revokedRejects, long evictions) {
+            this.size = size;
+            this.revocations = revocations;
+            this.hits = hits;
+            this.misses = misses;
+            this.revokedRejects = revokedRejects;
+            this.evictions = evictions;
+        }
+
+        public int getSize() { return size; }
+        public int getRevocations() { return revocations; }
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getRevokedRejects() { return revokedRejects; }
+        public long getEvictions() { return evictions; }
+
+        @Override
+        public String toString() {
+            return String.format("TokenCacheStats{size=%d, revocations=%d, hits=%d, misses=%d, revoked=%d, evictions=%d}",
+                    size, revocations, hits, misses, revokedRejects, evictions);
+        }
+    }
+}
@@ -2,110 +2,282 @@ package com.acme.im.communication.service;
 
 import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
 import com.acme.im.common.infrastructure.nats.dto.UserEvents;
-import com.acme.im.common.infrastructure.nats.publisher.AsyncEventPublisher;
 import com.acme.im.common.infrastructure.nats.constants.EventTopics;
-import lombok.RequiredArgsConstructor;
+import com.acme.im.common.security.jwt.JwtTokenProvider;
+import com.acme.im.communication.config.TokenValidationConfig;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.nats.client.Connection;
+import io.nats.client.Message;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Token验证服务
- * 通过NATS事件调用业务服务验证Token
- * 
+ *
+ * 验证流程：
+ * 1. 缓存 - 按Token摘要命中且未被吊销时直接返回
+ * 2. 本地验签 - 使用与业务服务相同的JWT密钥校验签名和有效期，伪造或过期的Token不出本机
+ * 3. 远程确认 - 缓存未命中时通过NATS请求/应答向业务服务确认用户状态，同一Token的并发请求合并为一次
+ *
+ * 登出、设备移除和吊销事件写入吊销水位，早于水位签发的Token即使仍在缓存中也会被拒绝
+ *
  * @author acme
  * @since 1.0.0
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class TokenValidationService {
 
-    private final AsyncEventPublisher eventPublisher;
-    
-    // 存储待验证的Token请求，key为requestId
+    private static final Type RESPONSE_TYPE =
+            TypeToken.getParameterized(BaseEvent.class, UserEvents.TokenValidationResponse.class).getType();
+
+    private final Connection natsConnection;
+    private final Gson gson;
+    private final JwtTokenProvider jwtTokenProvider;
+    private final TokenValidationConfig config;
+    private final TokenValidationCache cache;
+
+    // 正在向业务服务确认的Token，key为Token摘要
     private final ConcurrentHashMap<String, CompletableFuture<UserEvents.TokenValidationResponse>> pendingValidations = new ConcurrentHashMap<>();
-    
-    // 验证超时时间（秒）
-    private static final int VALIDATION_TIMEOUT = 10;
+
+    // 本地验签是否可用，未配置密钥时关闭
+    private volatile boolean localVerifyAvailable;
+
+    // 统计信息
+    private final AtomicLong localRejects = new AtomicLong(0);
+    private final AtomicLong remoteRequests = new AtomicLong(0);
+    private final AtomicLong remoteTimeouts = new AtomicLong(0);
+    private final AtomicLong coalescedRequests = new AtomicLong(0);
+
+    public TokenValidationService(Connection natsConnection, @Qualifier("gson") Gson gson,
+                                  JwtTokenProvider jwtTokenProvider, TokenValidationConfig config) {
+        this.natsConnection = natsConnection;
+        this.gson = gson;
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.config = config;
+        this.cache = new TokenValidationCache(config.getCacheMaxEntries());
+        this.localVerifyAvailable = config.isLocalVerifyEnabled();
+    }
 
     /**
      * 验证Token
-     * 
+     *
      * @param token JWT Token
-     * @return 用户信息，验证失败返回null
+     * @return 验证结果，业务服务无应答时返回null
      */
     public UserEvents.TokenValidationResponse validateToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return invalidResponse(null, "Token为空");
+        }
+        long now = System.currentTimeMillis();
+        String tokenHash = TokenValidationCache.hash(token);
+        UserEvents.TokenValidationResponse cached = cache.get(tokenHash, now);
+        if (cached != null) {
+            return cached;
+        }
+
+        // 本地验签，签发时间和过期时间用于吊销判断与缓存期限
+        long issuedAtMs = 0;
+        long expiresAtMs = now + TimeUnit.SECONDS.toMillis(config.getCacheTtlSeconds());
+        if (localVerifyAvailable) {
+            try {
+                Claims claims = jwtTokenProvider.parseClaims(token);
+                Date issuedAt = claims.getIssuedAt();
+                Date expiration = claims.getExpiration();
+                issuedAtMs = issuedAt != null ? issuedAt.getTime() : 0;
+                if (expiration != null) {
+                    expiresAtMs = Math.min(expiresAtMs, expiration.getTime());
+                }
+            } catch (JwtException | IllegalArgumentException e) {
+                localRejects.incrementAndGet();
+                log.debug("Token本地验签失败: {}", e.getMessage());
+                return invalidResponse(null, "Token无效或已过期");
+            } catch (IllegalStateException e) {
+                localVerifyAvailable = false;
+                log.warn("JWT密钥不可用，关闭本地验签，全部Token交由业务服务验证: {}", e.getMessage());
+            }
+        }
+
+        UserEvents.TokenValidationResponse response = requestCoalesced(tokenHash, token);
+        if (response == null) {
+            return null;
+        }
+        if (response.isValid() && cache.isRevoked(response.getUserId(), response.getDeviceId(), issuedAtMs)) {
+            return TokenValidationCache.revokedResponse(response);
+        }
+        long ttlMs = response.isValid()
+                ? expiresAtMs - now
+                : Math.min(expiresAtMs - now, TimeUnit.SECONDS.toMillis(config.getNegativeCacheTtlSeconds()));
+        if (ttlMs > 0) {
+            cache.put(tokenHash, response, issuedAtMs, now + ttlMs);
+        }
+        return response;
+    }
+
+    /**
+     * 吊销用户在指定设备上已签发的Token
+     *
+     * @param userId 用户ID
+     * @param deviceId 设备ID，为null表示全部设备
+     * @param revokedAtMs 吊销时间（毫秒）
+     */
+    public void revoke(Long userId, String deviceId, long revokedAtMs) {
+        cache.revoke(userId, deviceId, revokedAtMs);
+        log.debug("记录Token吊销: userId={}, deviceId={}", userId, deviceId);
+    }
+
+    /**
+     * 合并同一Token的并发请求，只有第一个请求访问业务服务
+     */
+    private UserEvents.TokenValidationResponse requestCoalesced(String tokenHash, String token) {
+        CompletableFuture<UserEvents.TokenValidationResponse> future = new CompletableFuture<>();
+        CompletableFuture<UserEvents.TokenValidationResponse> existing = pendingValidations.putIfAbsent(tokenHash, future);
+        if (existing != null) {
+            coalescedRequests.incrementAndGet();
+            try {
+                return existing.get(config.getRequestTimeoutMs(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (Exception e) {
+                return null;
+            }
+        }
+        UserEvents.TokenValidationResponse response = null;
+        try {
+            response = requestRemote(token);
+            return response;
+        } finally {
+            pendingValidations.remove(tokenHash, future);
+            future.complete(response);
+        }
+    }
+
+    /**
+     * 通过NATS请求/应答向业务服务验证Token
+     */
+    private UserEvents.TokenValidationResponse requestRemote(String token) {
+        String requestId = generateRequestId();
         try {
-            String requestId = generateRequestId();
-            CompletableFuture<UserEvents.TokenValidationResponse> future = new CompletableFuture<>();
-            
-            // 存储待验证的请求
-            pendingValidations.put(requestId, future);
-            
-            // 发布Token验证请求事件
             UserEvents.TokenValidationRequest request = UserEvents.TokenValidationRequest.builder()
                     .requestId(requestId)
                     .token(token)
                     .timestamp(System.currentTimeMillis())
                     .build();
-            
+
             BaseEvent<UserEvents.TokenValidationRequest> event = BaseEvent.createRequest(
                     EventTopics.Security.TOKEN_VALIDATE, request)
                     .fromService("communication-service", "default")
                     .addMetadata("requestId", requestId);
-            
-            eventPublisher.publishEvent(EventTopics.Security.TOKEN_VALIDATE, event);
-            
-            log.debug("发送Token验证请求: requestId={}", requestId);
-            
-            // 等待验证结果，设置超时
-            try {
-                return future.get(VALIDATION_TIMEOUT, TimeUnit.SECONDS);
-            } catch (Exception e) {
-                log.warn("Token验证超时: requestId={}", requestId);
-                pendingValidations.remove(requestId);
+
+            remoteRequests.incrementAndGet();
+            Message reply = natsConnection.request(EventTopics.Security.TOKEN_VALIDATE,
+                    gson.toJson(event).getBytes(StandardCharsets.UTF_8),
+                    Duration.ofMillis(config.getRequestTimeoutMs()));
+            if (reply == null || reply.getData() == null || reply.getData().length == 0) {
+                remoteTimeouts.incrementAndGet();
+                log.warn("Token验证请求无应答: requestId={}", requestId);
                 return null;
             }
-            
+
+            BaseEvent<UserEvents.TokenValidationResponse> responseEvent =
+                    gson.fromJson(new String(reply.getData(), StandardCharsets.UTF_8), RESPONSE_TYPE);
+            UserEvents.TokenValidationResponse response = responseEvent != null ? responseEvent.getData() : null;
+            log.debug("收到Token验证应答: requestId={}, valid={}",
+                    requestId, response != null && response.isValid());
+            return response;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         } catch (Exception e) {
-            log.error("Token验证失败: error={}", e.getMessage(), e);
+            log.error("Token验证失败: requestId={}, error={}", requestId, e.getMessage(), e);
             return null;
         }
     }
 
     /**
-     * 处理Token验证响应
-     * 
-     * @param response 验证响应
+     * 生成请求ID
      */
-    public void handleTokenValidationResponse(UserEvents.TokenValidationResponse response) {
-        String requestId = response.getRequestId();
-        CompletableFuture<UserEvents.TokenValidationResponse> future = pendingValidations.remove(requestId);
-        
-        if (future != null) {
-            future.complete(response);
-            log.debug("收到Token验证响应: requestId={}, valid={}", requestId, response.isValid());
-        } else {
-            log.warn("未找到对应的Token验证请求: requestId={}", requestId);
+    private String generateRequestId() {
+        return "token_val_" + UUID.randomUUID();
+    }
+
+    private static UserEvents.TokenValidationResponse invalidResponse(String requestId, String errorMessage) {
+        return UserEvents.TokenValidationResponse.builder()
+                .requestId(requestId)
+                .valid(false)
+                .errorMessage(errorMessage)
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+
+    /**
+     * 清理过期的验证结果和吊销记录
+     */
+    @Scheduled(fixedDelayString = "${app.communication.token-validation.cleanup-interval-ms:60000}")
+    public void cleanupExpiredValidations() {
+        int removed = cache.cleanup(System.currentTimeMillis(), config.getRevocationRetentionSeconds());
+        if (removed > 0) {
+            log.debug("清理过期Token验证结果: removed={}, {}", removed, getStats());
         }
     }
 
     /**
-     * 生成请求ID
+     * 获取统计信息
      */
-    private String generateRequestId() {
-        return "token_val_" + System.currentTimeMillis() + "_" + Thread.currentThread().getId();
+    public ValidationStats getStats() {
+        return new ValidationStats(cache.getStats(), localRejects.get(), remoteRequests.get(),
+                remoteTimeouts.get(), coalescedRequests.get(), pendingValidations.size());
     }
 
     /**
-     * 清理过期的验证请求
+     * 验证统计
      */
-    public void cleanupExpiredValidations() {
-        // 这里可以实现定期清理逻辑
-        // 比如清理超过一定时间的pendingValidations
+    public static class ValidationStats {
+        private final TokenValidationCache.Stats cache;
+        private final long localRejects;
+        private final long remoteRequests;
+        private final long remoteTimeouts;
+        private final long coalescedRequests;
+        private final int pending;
+
+        public ValidationStats(TokenValidationCache.Stats cache, long localRejects, long remoteRequests,
+                               long remoteTimeouts, long coalescedRequests, int pending) {
+            this.cache = cache;
+            this.localRejects = localRejects;
+            this.remoteRequests = remoteRequests;
+            this.remoteTimeouts = remoteTimeouts;
+            this.coalescedRequests = coalescedRequests;
+            this.pending = pending;
+        }
+
+        public TokenValidationCache.Stats getCache() { return cache; }
+        public long getLocalRejects() { return localRejects; }
+        public long getRemoteRequests() { return remoteRequests; }
+        public long getRemoteTimeouts() { return remoteTimeouts; }
+        public long getCoalescedRequests() { return coalescedRequests; }
+        public int getPending() { return pending; }
+
+        @Override
+        public String toString() {
+            return String.format("TokenValidationStats{%s, localRejects=%d, remote=%d, timeouts=%d, coalesced=%d, pending=%d}",
+                    cache, localRejects, remoteRequests, remoteTimeouts, coalescedRequests, pending);
+        }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,217 @@
+package com.acme.im.communication.websocket;
+
+import com.acme.im.communication.config.BinaryWebSocketConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 二进制端点会话注册表
+ * 维护 /ws-binary 连接及其协商的线路格式，供扇出引擎绕过STOMP直接写帧
+ *
+ * 设计要点：
+ * 1. 每个连接包装为ConcurrentWebSocketSessionDecorator，多个扇出分区可并发发送
+ * 2. 发送超时或缓冲超限的慢连接直接关闭，不阻塞扇出线程
+ * 3. 帧字节由调用方按格式编码一次，所有连接共享同一字节数组
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BinarySessionRegistry {
+
+    /**
+     * 线路格式，对应WebSocket子协议
+     */
+    public enum WireFormat {
+        PROTOBUF("im.protobuf.v1"),
+        JSON("im.json.v1");
+
+        private final String subProtocol;
+
+        WireFormat(String subProtocol) {
+            this.subProtocol = subProtocol;
+        }
+
+        public String getSubProtocol() {
+            return subProtocol;
+        }
+
+        /**
+         * 按子协议或format参数解析格式，无法识别时返回null
+         */
+        public static WireFormat resolve(String value) {
+            if (value == null || value.isEmpty()) {
+                return null;
+            }
+            for (WireFormat format : values()) {
+                if (format.subProtocol.equalsIgnoreCase(value) || format.name().equalsIgnoreCase(value)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 二进制端点连接
+     */
+    static class BinaryConnection {
+        private final WebSocketSession session;
+        private final WireFormat format;
+        private volatile Long userId;
+
+        BinaryConnection(WebSocketSession session, WireFormat format) {
+            this.session = session;
+            this.format = format;
+        }
+
+        WebSocketSession getSession() { return session; }
+        WireFormat getFormat() { return format; }
+        Long getUserId() { return userId; }
+        void setUserId(Long userId) { this.userId = userId; }
+    }
+
+    private final BinaryWebSocketConfig config;
+
+    private final Map<String, BinaryConnection> connections = new ConcurrentHashMap<>();
+
+    // 统计信息
+    private final AtomicLong framesSent = new AtomicLong(0);
+    private final AtomicLong bytesSent = new AtomicLong(0);
+    private final AtomicLong sendFailures = new AtomicLong(0);
+
+    /**
+     * 二进制端点统计信息
+     */
+    public static class BinaryStats {
+        private final int connections;
+        private final long framesSent;
+        private final long bytesSent;
+        private final long sendFailures;
+
+        public BinaryStats(int connections, long framesSent, long bytesSent, long sendFailures) {
+            this.connections = connections;
+            this.framesSent = framesSent;
+            this.bytesSent = bytesSent;
+            this.sendFailures = sendFailures;
+        }
+
+        public int getConnections() { return connections; }
+        public long getFramesSent() { return framesSent; }
+        public long getBytesSent() { return bytesSent; }
+        public long getSendFailures() { return sendFailures; }
+        public double getAvgFrameBytes() { return framesSent > 0 ? (double) bytesSent / framesSent : 0.0; }
+
+        @Override
+        public String toString() {
+            return String.format("BinaryStats{connections=%d, framesSent=%d, bytesSent=%d, avgFrameBytes=%.1f, sendFailures=%d}",
+                    connections, framesSent, bytesSent, getAvgFrameBytes(), sendFailures);
+        }
+    }
+
+    /**
+     * 注册连接
+     *
+     * @param session 原始WebSocket会话
+     * @param format 协商的线路格式
+     * @return 连接
+     */
+    BinaryConnection register(WebSocketSession session, WireFormat format) {
+        WebSocketSession concurrent = new ConcurrentWebSocketSessionDecorator(
+                session, config.getSendTimeLimitMs(), config.getSendBufferSizeLimit());
+        BinaryConnection connection = new BinaryConnection(concurrent, format);
+        connections.put(session.getId(), connection);
+        return connection;
+    }
+
+    /**
+     * 注销连接
+     *
+     * @param sessionId 会话ID
+     * @return 被注销的连接，不存在时返回null
+     */
+    BinaryConnection unregister(String sessionId) {
+        return connections.remove(sessionId);
+    }
+
+    BinaryConnection get(String sessionId) {
+        return connections.get(sessionId);
+    }
+
+    /**
+     * 获取会话的线路格式
+     *
+     * @param sessionId 会话ID
+     * @return 线路格式，非二进制端点会话返回null
+     */
+    public WireFormat getFormat(String sessionId) {
+        BinaryConnection connection = connections.get(sessionId);
+        return connection != null ? connection.format : null;
+    }
+
+    /**
+     * 向连接发送已编码的帧
+     *
+     * @param sessionId 会话ID
+     * @param frame 按该连接格式编码的帧（protobuf长度前缀帧或UTF-8 JSON）
+     * @return 是否发送成功
+     */
+    public boolean send(String sessionId, byte[] frame) {
+        BinaryConnection connection = connections.get(sessionId);
+        return connection != null && send(connection, frame);
+    }
+
+    /**
+     * 向连接发送已编码的帧
+     */
+    boolean send(BinaryConnection connection, byte[] frame) {
+        WebSocketSession session = connection.session;
+        if (!session.isOpen()) {
+            return false;
+        }
+        try {
+            // 每次包装独立的ByteBuffer，共享底层字节数组
+            if (connection.format == WireFormat.PROTOBUF) {
+                session.sendMessage(new BinaryMessage(frame));
+            } else {
+                session.sendMessage(new TextMessage(frame));
+            }
+            framesSent.incrementAndGet();
+            bytesSent.addAndGet(frame.length);
+            return true;
+        } catch (Exception e) {
+            sendFailures.incrementAndGet();
+            log.warn("二进制端点发送失败，关闭连接: sessionId={}, error={}", session.getId(), e.getMessage());
+            closeQuietly(session, CloseStatus.SESSION_NOT_RELIABLE);
+            return false;
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public BinaryStats getStats() {
+        return new BinaryStats(connections.size(), framesSent.get(), bytesSent.get(), sendFailures.get());
+    }
+
+    static void closeQuietly(WebSocketSession session, CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            log.debug("关闭连接失败: sessionId={}, error={}", session.getId(), e.getMessage());
+        }
+    }
+}
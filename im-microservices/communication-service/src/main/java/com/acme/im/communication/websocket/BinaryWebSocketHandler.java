@@ -0,0 +1,323 @@
+package com.acme.im.communication.websocket;
+
+import com.acme.im.common.infrastructure.nats.dto.UserEvents;
+import com.acme.im.common.websocket.proto.ChatMessage;
+import com.acme.im.common.websocket.proto.MessageStatus;
+import com.acme.im.common.websocket.proto.MessageType;
+import com.acme.im.common.websocket.proto.SystemMessage;
+import com.acme.im.common.websocket.proto.WebSocketMessage;
+import com.acme.im.communication.config.BinaryWebSocketConfig;
+import com.acme.im.communication.entity.Message;
+import com.acme.im.communication.event.NewMessageEvent;
+import com.acme.im.communication.service.MessageRoutingService;
+import com.acme.im.communication.service.MessageService;
+import com.acme.im.communication.service.TokenValidationService;
+import com.acme.im.communication.websocket.BinarySessionRegistry.BinaryConnection;
+import com.acme.im.communication.websocket.BinarySessionRegistry.WireFormat;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.util.JsonFormat;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.List;
+
+/**
+ * 二进制WebSocket端点处理器
+ * 直接收发长度前缀的protobuf WebSocketMessage帧，按payload分支分发，不经过STOMP与JSON转换
+ *
+ * 格式协商（按优先级）：
+ * 1. WebSocket子协议 im.protobuf.v1 / im.json.v1
+ * 2. 握手URL参数 format=protobuf|json
+ * 3. 配置的默认格式
+ * JSON连接收发文本帧（protobuf JSON映射），二进制帧始终按protobuf解析
+ *
+ * 分发规则：
+ * - system：SYSTEM_AUTH 认证并注册在线连接；SYSTEM_HEARTBEAT 心跳回复；
+ *   system_type 为 JOIN_CONVERSATION / LEAVE_CONVERSATION 时加入/离开会话
+ * - chat：创建普通聊天消息（CHAT_TEXT ~ CHAT_CARD）并回复确认（MESSAGE_ACK），随后经NewMessageEvent推送给会话成员
+ * - notification / event：仅服务端下行，客户端上行忽略
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BinaryWebSocketHandler extends AbstractWebSocketHandler implements SubProtocolCapable {
+
+    private static final JsonFormat.Parser JSON_PARSER = JsonFormat.parser().ignoringUnknownFields();
+
+    private static final List<String> SUB_PROTOCOLS = List.of(
+            WireFormat.PROTOBUF.getSubProtocol(), WireFormat.JSON.getSubProtocol());
+
+    private static final String SYSTEM_TYPE_JOIN = "JOIN_CONVERSATION";
+    private static final String SYSTEM_TYPE_LEAVE = "LEAVE_CONVERSATION";
+    private static final String SYSTEM_TYPE_ACK = "MESSAGE_ACK";
+
+    private final BinaryWebSocketConfig config;
+    private final BinarySessionRegistry binarySessions;
+    private final ConnectionRegistry connectionRegistry;
+    private final MessageFanoutEngine fanoutEngine;
+    private final MessageService messageService;
+    private final MessageRoutingService messageRoutingService;
+    private final TokenValidationService tokenValidationService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Override
+    public List<String> getSubProtocols() {
+        return SUB_PROTOCOLS;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        WireFormat format = negotiateFormat(session);
+        binarySessions.register(session, format);
+        log.info("二进制WebSocket连接建立 - 会话ID: {}, 格式: {}", session.getId(), format);
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        BinaryConnection connection = binarySessions.get(session.getId());
+        if (connection == null || !checkFrameSize(connection, message.getPayloadLength())) {
+            return;
+        }
+        List<WebSocketMessage> messages;
+        try {
+            messages = ProtobufFrameCodec.decode(message.getPayload(), config.getMaxMessagesPerFrame());
+        } catch (InvalidProtocolBufferException e) {
+            log.warn("二进制帧解析失败，关闭连接: sessionId={}, error={}", session.getId(), e.getMessage());
+            BinarySessionRegistry.closeQuietly(connection.getSession(), CloseStatus.BAD_DATA);
+            return;
+        }
+        for (WebSocketMessage wsMessage : messages) {
+            dispatch(connection, wsMessage);
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        BinaryConnection connection = binarySessions.get(session.getId());
+        if (connection == null || !checkFrameSize(connection, message.getPayloadLength())) {
+            return;
+        }
+        WebSocketMessage.Builder builder = WebSocketMessage.newBuilder();
+        try {
+            JSON_PARSER.merge(message.getPayload(), builder);
+        } catch (InvalidProtocolBufferException e) {
+            log.warn("JSON帧解析失败: sessionId={}, error={}", session.getId(), e.getMessage());
+            return;
+        }
+        dispatch(connection, builder.build());
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.warn("二进制WebSocket传输异常: sessionId={}, error={}", session.getId(), exception.getMessage());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        binarySessions.unregister(session.getId());
+        Long userId = connectionRegistry.removeSession(session.getId());
+        log.info("二进制WebSocket连接断开 - 会话ID: {}, 用户ID: {}, 状态: {}", session.getId(), userId, status);
+    }
+
+    // ================================
+    // 消息分发
+    // ================================
+
+    /**
+     * 按payload分支分发
+     */
+    private void dispatch(BinaryConnection connection, WebSocketMessage message) {
+        try {
+            switch (message.getPayloadCase()) {
+                case SYSTEM:
+                    handleSystem(connection, message);
+                    break;
+                case CHAT:
+                    handleChat(connection, message);
+                    break;
+                case PAYLOAD_NOT_SET:
+                    if (message.getType() == MessageType.SYSTEM_HEARTBEAT) {
+                        replyHeartbeat(connection, message);
+                    }
+                    break;
+                default:
+                    log.debug("忽略客户端上行的{}消息: sessionId={}", message.getPayloadCase(), connection.getSession().getId());
+                    break;
+            }
+        } catch (Exception e) {
+            log.error("处理二进制端点消息失败: sessionId={}, messageId={}, error={}",
+                    connection.getSession().getId(), message.getMessageId(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 处理系统消息
+     */
+    private void handleSystem(BinaryConnection connection, WebSocketMessage message) {
+        if (message.getType() == MessageType.SYSTEM_AUTH) {
+            handleAuth(connection, message);
+            return;
+        }
+        if (message.getType() == MessageType.SYSTEM_HEARTBEAT) {
+            replyHeartbeat(connection, message);
+            return;
+        }
+
+        Long userId = requireUser(connection, message);
+        if (userId == null) {
+            return;
+        }
+        String systemType = message.getSystem().getSystemType();
+        String sessionId = connection.getSession().getId();
+        if (SYSTEM_TYPE_JOIN.equals(systemType)) {
+            messageRoutingService.userJoinConversation(userId.toString(), message.getConversationId(), sessionId);
+        } else if (SYSTEM_TYPE_LEAVE.equals(systemType)) {
+            // 仅退出会话成员，保留连接注册（userLeaveConversation会注销整个终端）
+            connectionRegistry.leaveConversation(Long.parseLong(message.getConversationId()), userId);
+        } else {
+            log.debug("忽略未知系统消息: sessionId={}, systemType={}", sessionId, systemType);
+        }
+    }
+
+    /**
+     * 认证：system.content 携带JWT Token
+     */
+    private void handleAuth(BinaryConnection connection, WebSocketMessage message) {
+        String sessionId = connection.getSession().getId();
+        UserEvents.TokenValidationResponse response = tokenValidationService.validateToken(message.getSystem().getContent());
+        if (response == null || !response.isValid() || response.getUserId() == null) {
+            log.warn("二进制端点认证失败: sessionId={}", sessionId);
+            reply(connection, systemReply(message, MessageType.SYSTEM_AUTH, MessageStatus.MESSAGE_REJECTED, "unauthorized"));
+            BinarySessionRegistry.closeQuietly(connection.getSession(), CloseStatus.POLICY_VIOLATION);
+            return;
+        }
+
+        connection.setUserId(response.getUserId());
+        connectionRegistry.addSession(response.getUserId(), sessionId);
+        reply(connection, systemReply(message, MessageType.SYSTEM_AUTH, MessageStatus.MESSAGE_NORMAL, "authenticated")
+                .toBuilder()
+                .setReceiverId(response.getUserId().toString())
+                .build());
+        log.info("二进制端点认证成功: sessionId={}, userId={}", sessionId, response.getUserId());
+    }
+
+    /**
+     * 处理聊天消息：创建消息并确认
+     */
+    private void handleChat(BinaryConnection connection, WebSocketMessage message) {
+        Long userId = requireUser(connection, message);
+        if (userId == null) {
+            return;
+        }
+        ChatMessage chat = message.getChat();
+        WebSocketMessage.Builder ack = WebSocketMessage.newBuilder()
+                .setType(MessageType.SYSTEM_STATUS)
+                .setClientMessageId(message.getClientMessageId())
+                .setConversationId(message.getConversationId())
+                .setReceiverId(userId.toString())
+                .setTimestamp(System.currentTimeMillis());
+        if (message.getTypeValue() > MessageType.CHAT_CARD_VALUE) {
+            // 编辑、引用、转发、撤回等操作暂不经二进制端点上行
+            ack.setStatus(MessageStatus.MESSAGE_REJECTED)
+                    .setSystem(SystemMessage.newBuilder().setSystemType(SYSTEM_TYPE_ACK).setContent("unsupported type: " + message.getType()));
+            reply(connection, ack.build());
+            return;
+        }
+        try {
+            Message saved = messageService.createMessage(Long.parseLong(message.getConversationId()), userId,
+                    message.getTypeValue(), chat.getContent(), message.getClientMessageId(), emptyToNull(chat.getContentExtra()));
+            ack.setMessageId(saved.getId().toString())
+                    .setSequence(saved.getSeq())
+                    .setStatus(MessageStatus.MESSAGE_NORMAL)
+                    .setSystem(SystemMessage.newBuilder().setSystemType(SYSTEM_TYPE_ACK));
+            reply(connection, ack.build());
+            eventPublisher.publishEvent(new NewMessageEvent(saved));
+        } catch (RuntimeException e) {
+            log.warn("二进制端点创建消息失败: sessionId={}, clientMsgId={}, error={}",
+                    connection.getSession().getId(), message.getClientMessageId(), e.getMessage());
+            ack.setStatus(MessageStatus.MESSAGE_REJECTED)
+                    .setSystem(SystemMessage.newBuilder().setSystemType(SYSTEM_TYPE_ACK).setContent(String.valueOf(e.getMessage())));
+            reply(connection, ack.build());
+        }
+    }
+
+    private void replyHeartbeat(BinaryConnection connection, WebSocketMessage message) {
+        reply(connection, systemReply(message, MessageType.SYSTEM_HEARTBEAT, MessageStatus.MESSAGE_NORMAL, null));
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    /**
+     * 协商线路格式
+     */
+    private WireFormat negotiateFormat(WebSocketSession session) {
+        WireFormat format = WireFormat.resolve(session.getAcceptedProtocol());
+        if (format == null && session.getUri() != null) {
+            format = WireFormat.resolve(UriComponentsBuilder.fromUri(session.getUri()).build()
+                    .getQueryParams().getFirst("format"));
+        }
+        if (format == null) {
+            format = WireFormat.resolve(config.getDefaultFormat());
+        }
+        return format != null ? format : WireFormat.PROTOBUF;
+    }
+
+    private boolean checkFrameSize(BinaryConnection connection, int payloadLength) {
+        if (payloadLength <= config.getMaxFrameSize()) {
+            return true;
+        }
+        log.warn("入站帧过大，关闭连接: sessionId={}, size={}", connection.getSession().getId(), payloadLength);
+        BinarySessionRegistry.closeQuietly(connection.getSession(), CloseStatus.TOO_BIG_TO_PROCESS);
+        return false;
+    }
+
+    private Long requireUser(BinaryConnection connection, WebSocketMessage message) {
+        Long userId = connection.getUserId();
+        if (userId == null) {
+            reply(connection, systemReply(message, MessageType.SYSTEM_AUTH, MessageStatus.MESSAGE_REJECTED, "unauthenticated"));
+        }
+        return userId;
+    }
+
+    private WebSocketMessage systemReply(WebSocketMessage request, MessageType type, MessageStatus status, String content) {
+        SystemMessage.Builder system = SystemMessage.newBuilder();
+        if (content != null) {
+            system.setContent(content);
+        }
+        return WebSocketMessage.newBuilder()
+                .setMessageId(request.getMessageId())
+                .setType(type)
+                .setStatus(status)
+                .setTimestamp(System.currentTimeMillis())
+                .setSystem(system)
+                .build();
+    }
+
+    /**
+     * 按连接格式编码后发送
+     */
+    private void reply(BinaryConnection connection, WebSocketMessage message) {
+        byte[] frame = connection.getFormat() == WireFormat.PROTOBUF
+                ? ProtobufFrameCodec.encode(message)
+                : fanoutEngine.toJsonBytes(message);
+        binarySessions.send(connection, frame);
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,349 @@
+package com.acme.im.communication.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WebSocket连接注册表
+ * 维护 用户 -> 会话(session) 与 会话(conversation) -> 成员 的在线映射
+ *
+ * 设计要点：
+ * 1. 以long型ID为键，避免字符串键的重复拼接与比较
+ * 2. 值为写时复制的数组快照，推送时无锁遍历，不受并发加入/离开影响
+ * 3. 维护 sessionId -> userId 反向索引，连接断开时O(1)清理
+ * 4. 用户上下线、会话在本节点有/无关注者时通知PresenceListener，用于集群在线状态发布
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@Slf4j
+public class ConnectionRegistry {
+
+    private static final String[] NO_SESSIONS = new String[0];
+    private static final long[] NO_MEMBERS = new long[0];
+
+    /**
+     * 在线状态变更监听器
+     */
+    public interface PresenceListener {
+        /** 用户在本节点的第一个终端上线 */
+        void onUserOnline(long userId);
+
+        /** 用户在本节点的最后一个终端下线 */
+        void onUserOffline(long userId);
+
+        /** 会话在本节点出现第一个关注者（成员或主题订阅） */
+        void onConversationActive(long conversationId);
+
+        /** 会话在本节点的最后一个关注者离开 */
+        void onConversationInactive(long conversationId);
+    }
+
+    // 用户在线会话：userId -> sessionIds
+    private final Map<Long, String[]> userSessions = new ConcurrentHashMap<>();
+
+    // 会话在线成员：conversationId -> 有序userIds
+    private final Map<Long, long[]> conversationMembers = new ConcurrentHashMap<>();
+
+    // 反向索引：sessionId -> userId
+    private final Map<String, Long> sessionOwners = new ConcurrentHashMap<>();
+
+    // 用户加入的会话：userId -> conversationIds，最后一个终端下线时清理成员关系
+    private final Map<Long, Set<Long>> userConversations = new ConcurrentHashMap<>();
+
+    // 会话主题订阅：sessionId -> (subscriptionId -> conversationId)
+    private final Map<String, Map<String, Long>> sessionSubscriptions = new ConcurrentHashMap<>();
+
+    // 会话在本节点的关注者计数（成员数 + 主题订阅数）
+    private final Map<Long, Integer> conversationInterest = new ConcurrentHashMap<>();
+
+    private volatile PresenceListener presenceListener;
+
+    /**
+     * 设置在线状态变更监听器
+     */
+    public void setPresenceListener(PresenceListener presenceListener) {
+        this.presenceListener = presenceListener;
+    }
+
+    /**
+     * 注册用户会话
+     *
+     * @param userId 用户ID
+     * @param sessionId WebSocket会话ID
+     */
+    public void addSession(long userId, String sessionId) {
+        sessionOwners.put(sessionId, userId);
+        boolean[] firstSession = {false};
+        userSessions.compute(userId, (k, sessions) -> {
+            if (sessions == null) {
+                firstSession[0] = true;
+                return new String[]{sessionId};
+            }
+            for (String existing : sessions) {
+                if (existing.equals(sessionId)) {
+                    return sessions;
+                }
+            }
+            String[] updated = Arrays.copyOf(sessions, sessions.length + 1);
+            updated[sessions.length] = sessionId;
+            return updated;
+        });
+
+        PresenceListener listener = presenceListener;
+        if (firstSession[0] && listener != null) {
+            listener.onUserOnline(userId);
+        }
+    }
+
+    /**
+     * 移除会话（连接断开时调用）
+     * 同时清理该连接的主题订阅；用户最后一个终端下线时退出其加入的所有会话
+     *
+     * @param sessionId WebSocket会话ID
+     * @return 会话所属用户ID，未注册时返回null
+     */
+    public Long removeSession(String sessionId) {
+        Map<String, Long> subscriptions = sessionSubscriptions.remove(sessionId);
+        if (subscriptions != null) {
+            for (Long conversationId : subscriptions.values()) {
+                changeInterest(conversationId, -1);
+            }
+        }
+
+        Long userId = sessionOwners.remove(sessionId);
+        if (userId == null) {
+            return null;
+        }
+
+        boolean[] lastSession = {false};
+        userSessions.computeIfPresent(userId, (k, sessions) -> {
+            String[] updated = remove(sessions, sessionId);
+            if (updated.length == 0) {
+                lastSession[0] = true;
+                return null;
+            }
+            return updated;
+        });
+
+        if (lastSession[0]) {
+            Set<Long> joined = userConversations.remove(userId);
+            if (joined != null) {
+                for (Long conversationId : joined) {
+                    removeMember(conversationId, userId);
+                }
+            }
+            PresenceListener listener = presenceListener;
+            if (listener != null) {
+                listener.onUserOffline(userId);
+            }
+        }
+        return userId;
+    }
+
+    /**
+     * 用户加入会话
+     *
+     * @param conversationId 会话ID
+     * @param userId 用户ID
+     */
+    public void joinConversation(long conversationId, long userId) {
+        boolean[] added = {false};
+        conversationMembers.compute(conversationId, (k, members) -> {
+            if (members == null) {
+                added[0] = true;
+                return new long[]{userId};
+            }
+            int index = Arrays.binarySearch(members, userId);
+            if (index >= 0) {
+                return members;
+            }
+            added[0] = true;
+            int insertAt = -index - 1;
+            long[] updated = new long[members.length + 1];
+            System.arraycopy(members, 0, updated, 0, insertAt);
+            updated[insertAt] = userId;
+            System.arraycopy(members, insertAt, updated, insertAt + 1, members.length - insertAt);
+            return updated;
+        });
+
+        if (added[0]) {
+            userConversations.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(conversationId);
+            changeInterest(conversationId, 1);
+        }
+    }
+
+    /**
+     * 用户离开会话
+     *
+     * @param conversationId 会话ID
+     * @param userId 用户ID
+     */
+    public void leaveConversation(long conversationId, long userId) {
+        Set<Long> joined = userConversations.get(userId);
+        if (joined != null) {
+            joined.remove(conversationId);
+        }
+        removeMember(conversationId, userId);
+    }
+
+    /**
+     * 记录会话主题订阅（/topic/conversation/{conversationId}）
+     *
+     * @param sessionId WebSocket会话ID
+     * @param subscriptionId STOMP订阅ID
+     * @param conversationId 会话ID
+     */
+    public void subscribeConversationTopic(String sessionId, String subscriptionId, long conversationId) {
+        Long previous = sessionSubscriptions
+                .computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>())
+                .put(subscriptionId, conversationId);
+        if (previous == null) {
+            changeInterest(conversationId, 1);
+        } else if (previous != conversationId) {
+            changeInterest(conversationId, 1);
+            changeInterest(previous, -1);
+        }
+    }
+
+    /**
+     * 取消会话主题订阅
+     *
+     * @param sessionId WebSocket会话ID
+     * @param subscriptionId STOMP订阅ID
+     */
+    public void unsubscribeConversationTopic(String sessionId, String subscriptionId) {
+        Map<String, Long> subscriptions = sessionSubscriptions.get(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        Long conversationId = subscriptions.remove(subscriptionId);
+        if (conversationId != null) {
+            changeInterest(conversationId, -1);
+        }
+    }
+
+    /**
+     * 获取用户的在线会话快照
+     *
+     * @param userId 用户ID
+     * @return 会话ID数组（只读）
+     */
+    public String[] getSessions(long userId) {
+        String[] sessions = userSessions.get(userId);
+        return sessions != null ? sessions : NO_SESSIONS;
+    }
+
+    /**
+     * 获取会话的在线成员快照
+     *
+     * @param conversationId 会话ID
+     * @return 用户ID数组（只读）
+     */
+    public long[] getMembers(long conversationId) {
+        long[] members = conversationMembers.get(conversationId);
+        return members != null ? members : NO_MEMBERS;
+    }
+
+    /**
+     * 获取会话所属用户
+     */
+    public Long getSessionOwner(String sessionId) {
+        return sessionOwners.get(sessionId);
+    }
+
+    /**
+     * 获取本节点在线用户ID（只读视图）
+     */
+    public Set<Long> getOnlineUserIds() {
+        return userSessions.keySet();
+    }
+
+    /**
+     * 获取本节点有关注者的会话ID（只读视图）
+     */
+    public Set<Long> getActiveConversationIds() {
+        return conversationInterest.keySet();
+    }
+
+    public int getOnlineUserCount() {
+        return userSessions.size();
+    }
+
+    public int getSessionCount() {
+        return sessionOwners.size();
+    }
+
+    public int getActiveConversationCount() {
+        return conversationInterest.size();
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    /**
+     * 从会话成员中移除用户
+     */
+    private void removeMember(long conversationId, long userId) {
+        boolean[] removed = {false};
+        conversationMembers.computeIfPresent(conversationId, (k, members) -> {
+            int index = Arrays.binarySearch(members, userId);
+            if (index < 0) {
+                return members;
+            }
+            removed[0] = true;
+            if (members.length == 1) {
+                return null;
+            }
+            long[] updated = new long[members.length - 1];
+            System.arraycopy(members, 0, updated, 0, index);
+            System.arraycopy(members, index + 1, updated, index, members.length - index - 1);
+            return updated;
+        });
+
+        if (removed[0]) {
+            changeInterest(conversationId, -1);
+        }
+    }
+
+    /**
+     * 调整会话关注者计数，在 0 <-> 1 跳变时通知监听器
+     */
+    private void changeInterest(long conversationId, int delta) {
+        boolean[] transition = {false};
+        conversationInterest.compute(conversationId, (k, count) -> {
+            int current = count != null ? count : 0;
+            int updated = Math.max(0, current + delta);
+            transition[0] = (current == 0) != (updated == 0);
+            return updated == 0 ? null : updated;
+        });
+
+        PresenceListener listener = presenceListener;
+        if (transition[0] && listener != null) {
+            if (delta > 0) {
+                listener.onConversationActive(conversationId);
+            } else {
+                listener.onConversationInactive(conversationId);
+            }
+        }
+    }
+
+    private static String[] remove(String[] sessions, String sessionId) {
+        for (int i = 0; i < sessions.length; i++) {
+            if (sessions[i].equals(sessionId)) {
+                String[] updated = new String[sessions.length - 1];
+                System.arraycopy(sessions, 0, updated, 0, i);
+                System.arraycopy(sessions, i + 1, updated, i, sessions.length - i - 1);
+                return updated;
+            }
+        }
+        return sessions;
+    }
+}
@@ -0,0 +1,450 @@
+package com.acme.im.communication.websocket;
+
+import com.acme.im.common.websocket.proto.WebSocketMessage;
+import com.acme.im.communication.config.MessageFanoutConfig;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.util.JsonFormat;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消息扇出引擎
+ * 将一条消息推送给会话的所有在线成员及其全部终端
+ *
+ * 特性：
+ * 1. 一次序列化 - 每条消息只序列化一次，所有接收方共享同一字节数组
+ * 2. 分区有序 - 按会话ID分区到固定工作线程，同一会话的推送严格有序
+ * 3. 有界队列 - 分区队列满时限时等待，超时丢弃并计数，不拖垮调用方
+ * 4. 监控统计 - 每次扇出的耗时与接收方数量
+ * 5. 多线路格式 - STOMP终端推送JSON，二进制端点终端直接写protobuf帧；每种格式按需编码且只编码一次
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MessageFanoutEngine {
+
+    private static final JsonFormat.Printer JSON_PRINTER = JsonFormat.printer().omittingInsignificantWhitespace();
+    private static final JsonFormat.Parser JSON_PARSER = JsonFormat.parser().ignoringUnknownFields();
+
+    /**
+     * 用户目的地后缀，与简单代理中 /user/queue/xxx 订阅解析后的目的地一致
+     */
+    private static final String USER_DESTINATION_SUFFIX = "-user";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ConnectionRegistry connectionRegistry;
+    private final BinarySessionRegistry binarySessions;
+    private final MessageFanoutConfig config;
+
+    private Partition[] partitions;
+
+    // 统计信息
+    private final AtomicLong fanoutCount = new AtomicLong(0);
+    private final AtomicLong deliveryCount = new AtomicLong(0);
+    private final AtomicLong failedDeliveries = new AtomicLong(0);
+    private final AtomicLong droppedCount = new AtomicLong(0);
+    private final AtomicLong totalLatencyNanos = new AtomicLong(0);
+    private final AtomicLong maxLatencyNanos = new AtomicLong(0);
+    private final AtomicLong maxRecipients = new AtomicLong(0);
+
+    /**
+     * 扇出任务
+     */
+    private static class FanoutTask {
+        private final long conversationId;
+        private final String topicDestination;
+        private final String userDestination;
+        private final WebSocketMessage message;
+        private final byte[] body;
+        private final String messageId;
+        private final long enqueuedAt;
+
+        FanoutTask(long conversationId, String topicDestination, String userDestination,
+                   WebSocketMessage message, byte[] body, String messageId) {
+            this.conversationId = conversationId;
+            this.topicDestination = topicDestination;
+            this.userDestination = userDestination;
+            this.message = message;
+            this.body = body;
+            this.messageId = messageId;
+            this.enqueuedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * 一次推送的多格式载荷，各格式首次使用时编码，之后所有终端共享
+     */
+    private class PushFrame {
+        private WebSocketMessage message;
+        private byte[] json;
+        private Message<byte[]> stompPayload;
+        private byte[] protobuf;
+
+        PushFrame(WebSocketMessage message, byte[] json) {
+            this.message = message;
+            this.json = json;
+        }
+
+        byte[] json() {
+            if (json == null) {
+                json = toJsonBytes(message);
+            }
+            return json;
+        }
+
+        Message<byte[]> stomp() {
+            if (stompPayload == null) {
+                stompPayload = wrap(json());
+            }
+            return stompPayload;
+        }
+
+        byte[] protobuf() {
+            if (protobuf == null) {
+                if (message == null) {
+                    message = fromJsonBytes(json);
+                }
+                protobuf = ProtobufFrameCodec.encode(message);
+            }
+            return protobuf;
+        }
+
+        byte[] forFormat(BinarySessionRegistry.WireFormat format) {
+            return format == BinarySessionRegistry.WireFormat.PROTOBUF ? protobuf() : json();
+        }
+    }
+
+    /**
+     * 扇出分区：单线程消费有界队列
+     */
+    private class Partition implements Runnable {
+        private final BlockingQueue<FanoutTask> queue;
+        private final Thread worker;
+        private volatile boolean running = true;
+
+        Partition(int index, int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.worker = new Thread(this, "message-fanout-" + index);
+            this.worker.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running || !queue.isEmpty()) {
+                try {
+                    FanoutTask task = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (task != null) {
+                        deliver(task);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    log.error("消息扇出异常: error={}", e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 扇出统计信息
+     */
+    public static class FanoutStats {
+        private final long fanouts;
+        private final long deliveries;
+        private final long failedDeliveries;
+        private final long dropped;
+        private final double avgLatencyMillis;
+        private final double maxLatencyMillis;
+        private final double avgRecipients;
+        private final long maxRecipients;
+        private final int queuedTasks;
+
+        public FanoutStats(long fanouts, long deliveries, long failedDeliveries, long dropped,
+                           double avgLatencyMillis, double maxLatencyMillis, long maxRecipients, int queuedTasks) {
+            this.fanouts = fanouts;
+            this.deliveries = deliveries;
+            this.failedDeliveries = failedDeliveries;
+            this.dropped = dropped;
+            this.avgLatencyMillis = avgLatencyMillis;
+            this.maxLatencyMillis = maxLatencyMillis;
+            this.avgRecipients = fanouts > 0 ? (double) deliveries / fanouts : 0.0;
+            this.maxRecipients = maxRecipients;
+            this.queuedTasks = queuedTasks;
+        }
+
+        public long getFanouts() { return fanouts; }
+        public long getDeliveries() { return deliveries; }
+        public long getFailedDeliveries() { return failedDeliveries; }
+        public long getDropped() { return dropped; }
+        public double getAvgLatencyMillis() { return avgLatencyMillis; }
+        public double getMaxLatencyMillis() { return maxLatencyMillis; }
+        public double getAvgRecipients() { return avgRecipients; }
+        public long getMaxRecipients() { return maxRecipients; }
+        public int getQueuedTasks() { return queuedTasks; }
+
+        @Override
+        public String toString() {
+            return String.format("FanoutStats{fanouts=%d, deliveries=%d, failed=%d, dropped=%d, avgLatency=%.2fms, maxLatency=%.2fms, avgRecipients=%.1f, maxRecipients=%d, queued=%d}",
+                    fanouts, deliveries, failedDeliveries, dropped, avgLatencyMillis, maxLatencyMillis, avgRecipients, maxRecipients, queuedTasks);
+        }
+    }
+
+    /**
+     * 启动分区工作线程
+     */
+    @PostConstruct
+    public void start() {
+        int partitionCount = Math.max(1, config.getPartitions());
+        partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(i, config.getQueueCapacity());
+            partitions[i].worker.start();
+        }
+        log.info("消息扇出引擎启动完成: partitions={}, queueCapacity={}", partitionCount, config.getQueueCapacity());
+    }
+
+    /**
+     * 停止分区工作线程，处理完队列中剩余的任务
+     */
+    @PreDestroy
+    public void stop() {
+        for (Partition partition : partitions) {
+            partition.running = false;
+        }
+        for (Partition partition : partitions) {
+            try {
+                partition.worker.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.info("消息扇出引擎已停止: {}", getStats());
+    }
+
+    /**
+     * 向会话扇出消息
+     *
+     * @param conversationId 会话ID，决定所在分区
+     * @param topicDestination 会话主题目的地，为null时不推送主题
+     * @param userDestination 成员队列目的地（如 /queue/new-messages），为null时不推送给成员
+     * @param message 消息
+     * @return 是否成功入队
+     */
+    public boolean fanout(long conversationId, String topicDestination, String userDestination, WebSocketMessage message) {
+        return enqueue(new FanoutTask(conversationId, topicDestination, userDestination,
+                message, null, message.getMessageId()));
+    }
+
+    /**
+     * 向会话扇出已序列化的消息（跨节点投递时使用，避免重复序列化）
+     *
+     * @param conversationId 会话ID，决定所在分区
+     * @param topicDestination 会话主题目的地，为null时不推送主题
+     * @param userDestination 成员队列目的地，为null时不推送给成员
+     * @param body 已序列化的JSON消息体
+     * @param messageId 消息ID（用于日志）
+     * @return 是否成功入队
+     */
+    public boolean fanout(long conversationId, String topicDestination, String userDestination, byte[] body, String messageId) {
+        return enqueue(new FanoutTask(conversationId, topicDestination, userDestination, null, body, messageId));
+    }
+
+    /**
+     * 向用户的所有终端推送消息（在调用线程执行）
+     *
+     * @param userId 用户ID
+     * @param destination 队列目的地（如 /queue/message-status）
+     * @param message 消息
+     * @return 送达的终端数
+     */
+    public int sendToUser(long userId, String destination, WebSocketMessage message) {
+        return sendToUser(userId, destination, new PushFrame(message, null));
+    }
+
+    /**
+     * 向用户的所有终端推送已序列化的消息（在调用线程执行）
+     *
+     * @param userId 用户ID
+     * @param destination 队列目的地
+     * @param body 已序列化的JSON消息体
+     * @return 送达的终端数
+     */
+    public int sendToUser(long userId, String destination, byte[] body) {
+        return sendToUser(userId, destination, new PushFrame(null, body));
+    }
+
+    /**
+     * 将消息序列化为JSON字节
+     *
+     * @param message 消息
+     * @return UTF-8编码的JSON
+     */
+    public byte[] toJsonBytes(WebSocketMessage message) {
+        try {
+            return JSON_PRINTER.print(message).getBytes(StandardCharsets.UTF_8);
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalArgumentException("消息序列化失败: messageId=" + message.getMessageId(), e);
+        }
+    }
+
+    /**
+     * 从JSON字节解析消息（跨节点投递的载荷推送给二进制端点终端时使用）
+     *
+     * @param json UTF-8编码的JSON
+     * @return 消息
+     */
+    public WebSocketMessage fromJsonBytes(byte[] json) {
+        WebSocketMessage.Builder builder = WebSocketMessage.newBuilder();
+        try {
+            JSON_PARSER.merge(new String(json, StandardCharsets.UTF_8), builder);
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalArgumentException("消息反序列化失败", e);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 获取扇出统计信息
+     */
+    public FanoutStats getStats() {
+        long fanouts = fanoutCount.get();
+        int queued = 0;
+        for (Partition partition : partitions) {
+            queued += partition.queue.size();
+        }
+        return new FanoutStats(
+                fanouts,
+                deliveryCount.get(),
+                failedDeliveries.get(),
+                droppedCount.get(),
+                fanouts > 0 ? totalLatencyNanos.get() / 1_000_000.0 / fanouts : 0.0,
+                maxLatencyNanos.get() / 1_000_000.0,
+                maxRecipients.get(),
+                queued
+        );
+    }
+
+    // ================================
+    // 私有方法
+    // ================================
+
+    /**
+     * 按会话分区入队
+     */
+    private boolean enqueue(FanoutTask task) {
+        long conversationId = task.conversationId;
+        Partition partition = partitions[(int) Math.floorMod(conversationId, (long) partitions.length)];
+        try {
+            if (partition.queue.offer(task, config.getEnqueueTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        droppedCount.incrementAndGet();
+        log.warn("扇出队列已满，丢弃推送: conversationId={}, messageId={}", conversationId, task.messageId);
+        return false;
+    }
+
+    /**
+     * 向用户的所有终端推送
+     */
+    private int sendToUser(long userId, String destination, PushFrame frame) {
+        String[] sessions = connectionRegistry.getSessions(userId);
+        int delivered = 0;
+        for (String sessionId : sessions) {
+            if (sendToSession(sessionId, destination, frame)) {
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * 执行一次扇出：每种格式编码一次，推送主题与所有成员终端
+     * 二进制端点终端没有目的地概念，会话内的推送（含仅主题推送）每个终端只收一帧
+     */
+    private void deliver(FanoutTask task) {
+        PushFrame frame = new PushFrame(task.message, task.body);
+
+        if (task.topicDestination != null) {
+            messagingTemplate.send(task.topicDestination, frame.stomp());
+        }
+
+        int recipients = 0;
+        for (long userId : connectionRegistry.getMembers(task.conversationId)) {
+            for (String sessionId : connectionRegistry.getSessions(userId)) {
+                if (sendToSession(sessionId, task.userDestination, frame)) {
+                    recipients++;
+                }
+            }
+        }
+
+        long latency = System.nanoTime() - task.enqueuedAt;
+        fanoutCount.incrementAndGet();
+        deliveryCount.addAndGet(recipients);
+        totalLatencyNanos.addAndGet(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        maxRecipients.accumulateAndGet(recipients, Math::max);
+
+        log.debug("消息扇出完成: conversationId={}, messageId={}, recipients={}, latency={}μs",
+                task.conversationId, task.messageId, recipients, latency / 1000);
+    }
+
+    /**
+     * 推送到单个终端：二进制端点终端直接写帧，STOMP终端发送到用户目的地（目的地为null时跳过）
+     */
+    private boolean sendToSession(String sessionId, String destination, PushFrame frame) {
+        BinarySessionRegistry.WireFormat format = binarySessions.getFormat(sessionId);
+        if (format != null) {
+            if (binarySessions.send(sessionId, frame.forFormat(format))) {
+                return true;
+            }
+            failedDeliveries.incrementAndGet();
+            return false;
+        }
+        if (destination == null) {
+            return false;
+        }
+        try {
+            messagingTemplate.send(destination + USER_DESTINATION_SUFFIX + sessionId, frame.stomp());
+            return true;
+        } catch (Exception e) {
+            failedDeliveries.incrementAndGet();
+            log.warn("推送到终端失败: sessionId={}, destination={}, error={}", sessionId, destination, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 构建可复用的不可变消息
+     */
+    private Message<byte[]> wrap(byte[] body) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        Message<byte[]> payload = MessageBuilder.createMessage(body, accessor.getMessageHeaders());
+        // 冻结头部，每次发送只复制头部，消息体共享
+        accessor.setImmutable();
+        return payload;
+    }
+}
@@ -0,0 +1,75 @@
+package com.acme.im.communication.websocket;
+
+import com.acme.im.common.websocket.proto.WebSocketMessage;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * protobuf帧编解码
+ * 每个WebSocket二进制帧由一条或多条长度前缀（varint）的WebSocketMessage组成，
+ * 与protobuf的writeDelimitedTo / parseDelimitedFrom格式一致
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public final class ProtobufFrameCodec {
+
+    private ProtobufFrameCodec() {
+    }
+
+    /**
+     * 编码单条消息为长度前缀帧
+     *
+     * @param message 消息
+     * @return 帧字节
+     */
+    public static byte[] encode(WebSocketMessage message) {
+        int size = message.getSerializedSize();
+        byte[] frame = new byte[CodedOutputStream.computeUInt32SizeNoTag(size) + size];
+        CodedOutputStream output = CodedOutputStream.newInstance(frame);
+        try {
+            output.writeUInt32NoTag(size);
+            message.writeTo(output);
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new IllegalStateException("消息编码失败: messageId=" + message.getMessageId(), e);
+        }
+        return frame;
+    }
+
+    /**
+     * 解码帧中的全部消息
+     *
+     * @param frame 帧数据
+     * @param maxMessages 单帧最多消息数
+     * @return 消息列表
+     * @throws InvalidProtocolBufferException 帧格式非法或消息数超限
+     */
+    public static List<WebSocketMessage> decode(ByteBuffer frame, int maxMessages) throws InvalidProtocolBufferException {
+        CodedInputStream input = CodedInputStream.newInstance(frame);
+        List<WebSocketMessage> messages = new ArrayList<>(1);
+        try {
+            while (!input.isAtEnd()) {
+                if (messages.size() >= maxMessages) {
+                    throw new InvalidProtocolBufferException("单帧消息数超过上限: " + maxMessages);
+                }
+                int length = input.readRawVarint32();
+                int oldLimit = input.pushLimit(length);
+                messages.add(WebSocketMessage.parseFrom(input));
+                input.checkLastTagWas(0);
+                input.popLimit(oldLimit);
+            }
+        } catch (InvalidProtocolBufferException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidProtocolBufferException(e);
+        }
+        return messages;
+    }
+}
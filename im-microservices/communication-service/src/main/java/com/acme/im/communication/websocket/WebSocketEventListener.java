@@ -1,5 +1,6 @@
 package com.acme.im.communication.websocket;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
@@ -17,9 +18,14 @@ import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
  * @since 1.0.0
  */
 @Component
+@RequiredArgsConstructor
 @Slf4j
 public class WebSocketEventListener {
 
+    private static final String CONVERSATION_TOPIC_PREFIX = "/topic/conversation/";
+
+    private final ConnectionRegistry connectionRegistry;
+
     /**
      * 处理WebSocket连接建立事件
      * 
@@ -46,10 +52,10 @@ public class WebSocketEventListener {
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
         String sessionId = headerAccessor.getSessionId();
         
-        log.info("WebSocket连接断开 - 会话ID: {}", sessionId);
+        // 清理在线连接注册，避免向已断开的终端扇出
+        Long userId = connectionRegistry.removeSession(sessionId);
         
-        // 这里可以添加连接断开后的逻辑
-        // 例如：清理用户会话、更新用户在线状态等
+        log.info("WebSocket连接断开 - 会话ID: {}, 用户ID: {}", sessionId, userId);
     }
 
     /**
@@ -65,8 +71,15 @@ public class WebSocketEventListener {
         
         log.info("WebSocket订阅 - 会话ID: {}, 目标: {}", sessionId, destination);
         
-        // 这里可以添加订阅后的逻辑
-        // 例如：记录用户订阅的频道、权限验证等
+        // 记录会话主题订阅，使本节点接收该会话的跨节点投递
+        if (destination != null && destination.startsWith(CONVERSATION_TOPIC_PREFIX)) {
+            try {
+                long conversationId = Long.parseLong(destination.substring(CONVERSATION_TOPIC_PREFIX.length()));
+                connectionRegistry.subscribeConversationTopic(sessionId, headerAccessor.getSubscriptionId(), conversationId);
+            } catch (NumberFormatException e) {
+                log.debug("忽略非法会话主题: destination={}", destination);
+            }
+        }
     }
 
     /**
@@ -82,7 +95,6 @@ public class WebSocketEventListener {
         
         log.info("WebSocket取消订阅 - 会话ID: {}, 订阅ID: {}", sessionId, subscriptionId);
         
-        // 这里可以添加取消订阅后的逻辑
-        // 例如：清理用户订阅记录等
+        connectionRegistry.unsubscribeConversationTopic(sessionId, subscriptionId);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,58 @@
+package com.acme.im.communication.event;
+
+import com.acme.im.common.config.GsonConfig;
+import com.acme.im.common.infrastructure.nats.codec.GsonEventCodec;
+import com.acme.im.common.infrastructure.nats.codec.Utf8ByteReader;
+import com.acme.im.common.infrastructure.nats.dto.BaseEvent;
+import com.acme.im.common.infrastructure.nats.dto.UserEvents;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import io.nats.client.impl.NatsMessage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 事件解码测试
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class EventCodecTest {
+
+    @Test
+    public void testUtf8ReaderWithSmallBuffer() throws Exception {
+        String text = "ascii-中文-😀-é-end";
+        Utf8ByteReader reader = new Utf8ByteReader(text.getBytes(StandardCharsets.UTF_8));
+        StringBuilder decoded = new StringBuilder();
+        char[] buffer = new char[3];
+        int n;
+        while ((n = reader.read(buffer, 0, buffer.length)) != -1) {
+            decoded.append(buffer, 0, n);
+        }
+        assertEquals(text, decoded.toString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTypedDecode() throws Exception {
+        Gson gson = new GsonConfig().gson();
+        TypeAdapter<? extends BaseEvent<?>> adapter = (TypeAdapter<? extends BaseEvent<?>>)
+                gson.getAdapter(TypeToken.getParameterized(BaseEvent.class, UserEvents.TokenValidationRequest.class));
+        GsonEventCodec codec = new GsonEventCodec(UserEvents.TokenValidationRequest.class, adapter);
+
+        String json = "{\"eventId\":\"e-1\",\"eventType\":\"REQUEST\",\"data\":{\"requestId\":\"r-1\",\"token\":\"令牌\",\"timestamp\":42}}";
+        BaseEvent<?> event = codec.decode(NatsMessage.builder()
+                .subject("security.token.validate")
+                .data(json.getBytes(StandardCharsets.UTF_8))
+                .build());
+
+        assertEquals("e-1", event.getEventId());
+        UserEvents.TokenValidationRequest request = assertInstanceOf(UserEvents.TokenValidationRequest.class, event.getData());
+        assertEquals("令牌", request.getToken());
+        assertEquals(42L, request.getTimestamp());
+    }
+}
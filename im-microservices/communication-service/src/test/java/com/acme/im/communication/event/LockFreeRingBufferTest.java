@@ -0,0 +1,84 @@
+package com.acme.im.communication.event;
+
+import com.acme.im.common.utils.queue.LockFreeRingBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 事件发布环形队列测试
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class LockFreeRingBufferTest {
+
+    @Test
+    public void testBoundedFifo() {
+        LockFreeRingBuffer<Integer> ring = new LockFreeRingBuffer<>(3);
+        assertEquals(4, ring.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertFalse(ring.offer(4, 1, TimeUnit.MILLISECONDS));
+
+        assertEquals(0, ring.poll());
+        assertTrue(ring.offer(4));
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(4, ring.drainTo(drained, 10));
+        assertEquals(List.of(1, 2, 3, 4), drained);
+        assertNull(ring.poll());
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentProducersKeepPerProducerOrder() throws Exception {
+        int producers = 4;
+        int perProducer = 50000;
+        LockFreeRingBuffer<long[]> ring = new LockFreeRingBuffer<>(256);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (long seq = 0; seq < perProducer; seq++) {
+                    while (!ring.offer(new long[]{producer, seq})) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+
+        long[] next = new long[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            long[] element = ring.poll();
+            if (element == null) {
+                ring.awaitNotEmpty(10, TimeUnit.MILLISECONDS);
+                continue;
+            }
+            int producer = (int) element[0];
+            assertEquals(next[producer], element[1], "生产者内顺序被打乱");
+            next[producer]++;
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(ring.isEmpty());
+    }
+}
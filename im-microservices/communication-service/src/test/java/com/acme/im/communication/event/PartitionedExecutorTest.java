@@ -0,0 +1,62 @@
+package com.acme.im.communication.event;
+
+import com.acme.im.common.infrastructure.nats.handler.PartitionedExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按键有序执行器测试
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class PartitionedExecutorTest {
+
+    @Test
+    public void testPerKeyOrderWithConcurrentProducers() throws Exception {
+        PartitionedExecutor executor = new PartitionedExecutor("test-partition", 4, 8);
+        int keys = 16;
+        int perKey = 500;
+        Map<Integer, List<Integer>> executed = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(keys * perKey);
+
+        // 每个键由一个生产线程按序提交，多个生产线程并发，通道队列很小以触发阻塞提交
+        Thread[] producers = new Thread[keys];
+        for (int k = 0; k < keys; k++) {
+            int key = k;
+            executed.put(key, new CopyOnWriteArrayList<>());
+            producers[k] = new Thread(() -> {
+                for (int i = 0; i < perKey; i++) {
+                    int seq = i;
+                    executor.execute("conversation-" + key, () -> {
+                        executed.get(key).add(seq);
+                        done.countDown();
+                    });
+                }
+            });
+            producers[k].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        for (int k = 0; k < keys; k++) {
+            List<Integer> order = executed.get(k);
+            assertEquals(perKey, order.size());
+            for (int i = 0; i < perKey; i++) {
+                assertEquals(i, order.get(i), "同一键应按提交顺序执行");
+            }
+        }
+        assertEquals(executor.laneOf("conversation-1"), executor.laneOf("conversation-1"));
+        executor.shutdown(1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,43 @@
+package com.acme.im.communication.event;
+
+import com.acme.im.common.infrastructure.nats.handler.SubjectTrie;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 主题前缀树测试
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class SubjectTrieTest {
+
+    @Test
+    public void testWildcardMatching() {
+        SubjectTrie<String> trie = new SubjectTrie<>();
+        trie.insert("im.message.sent", "exact");
+        trie.insert("im.message.*", "single");
+        trie.insert("im.*.sent", "middle");
+        trie.insert("im.>", "tail");
+        trie.insert("business.user.login", "other");
+
+        List<String> matches = trie.match("im.message.sent");
+        assertEquals(4, matches.size());
+        assertTrue(matches.containsAll(List.of("exact", "single", "middle", "tail")));
+
+        assertEquals(List.of("tail"), trie.match("im.message.sent.extra"));
+        assertEquals(List.of("tail"), trie.match("im.group"));
+        assertTrue(trie.match("im").isEmpty(), "> 至少匹配一段");
+        assertTrue(trie.match("business.user").isEmpty());
+        assertEquals(5, trie.size());
+    }
+
+    @Test
+    public void testFullWildcardMustBeLast() {
+        SubjectTrie<String> trie = new SubjectTrie<>();
+        assertThrows(IllegalArgumentException.class, () -> trie.insert("im.>.sent", "bad"));
+    }
+}
@@ -0,0 +1,107 @@
+package com.acme.im.communication.plugin.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 敏感词自动机测试
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class SensitiveWordAutomatonTest {
+
+    @Test
+    public void testOverlappingMatches() {
+        SensitiveWordAutomaton automaton = SensitiveWordAutomaton.build(List.of(
+                word(1, "he", 1), word(2, "she", 1), word(3, "his", 1), word(4, "hers", 1)));
+
+        SensitiveWordAutomaton.MatchResult result = automaton.match("ushers", "*");
+        assertEquals(SensitiveWordAutomaton.Action.WARN, result.getAction());
+        assertEquals("ushers", result.getContent(), "提醒级不修改内容");
+        Set<String> found = new HashSet<>();
+        for (SensitiveWordAutomaton.Hit hit : result.getHits()) {
+            found.add(hit.getWord().getWord() + "@" + hit.getStart());
+        }
+        assertEquals(Set.of("she@1", "he@2", "hers@2"), found);
+    }
+
+    @Test
+    public void testReplaceLeftmostLongestAndNormalization() {
+        SensitiveWordAutomaton automaton = SensitiveWordAutomaton.build(List.of(
+                word(1, "坏蛋", 2), word(2, "大坏蛋", 2), word(3, "Spam", 2, "[广告]"), word(4, "提醒词", 1)));
+
+        SensitiveWordAutomaton.MatchResult result = automaton.match("你这个大坏蛋，发ＳＰＡＭ的提醒词", "*");
+        assertEquals(SensitiveWordAutomaton.Action.REPLACE, result.getAction());
+        assertEquals("你这个***，发[广告]的提醒词", result.getContent());
+        assertEquals(4, result.getHits().size());
+
+        assertEquals(SensitiveWordAutomaton.Action.PASS, automaton.match("正常消息", "*").getAction());
+        assertSame(SensitiveWordAutomaton.Action.PASS, SensitiveWordAutomaton.empty().match("坏蛋", "*").getAction());
+    }
+
+    @Test
+    public void testBlockStopsScan() {
+        SensitiveWordAutomaton automaton = SensitiveWordAutomaton.build(List.of(
+                word(1, "替换", 2), word(2, "违禁", 3), word(3, "违禁品", 1)));
+
+        SensitiveWordAutomaton.MatchResult result = automaton.match("先替换再违禁品", "*");
+        assertTrue(result.isBlocked());
+        assertEquals("先替换再违禁品", result.getContent(), "拦截时保留原内容");
+        assertEquals(2, result.getHits().size(), "命中拦截词后不再继续扫描");
+    }
+
+    @Test
+    public void testRandomDictionaryAgainstNaiveScan() {
+        Random random = new Random(42);
+        String alphabet = "abcde敏感词测";
+        List<SensitiveWordAutomaton.Word> words = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; words.size() < 2000; i++) {
+            String w = randomString(random, alphabet, 1 + random.nextInt(6));
+            if (seen.add(w)) {
+                words.add(word(i, w, 1));
+            }
+        }
+        SensitiveWordAutomaton automaton = SensitiveWordAutomaton.build(words);
+
+        for (int round = 0; round < 200; round++) {
+            String text = randomString(random, alphabet + "xyz ", 80);
+            Set<String> expected = new HashSet<>();
+            for (SensitiveWordAutomaton.Word w : words) {
+                for (int from = text.indexOf(w.getWord()); from >= 0; from = text.indexOf(w.getWord(), from + 1)) {
+                    expected.add(w.getWord() + "@" + from);
+                }
+            }
+            Set<String> actual = new HashSet<>();
+            for (SensitiveWordAutomaton.Hit hit : automaton.match(text, "*").getHits()) {
+                assertEquals(hit.getWord().getWord(), text.substring(hit.getStart(), hit.getEnd()));
+                actual.add(hit.getWord().getWord() + "@" + hit.getStart());
+            }
+            assertEquals(expected, actual, "与逐词扫描结果不一致: " + text);
+        }
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    private static SensitiveWordAutomaton.Word word(long id, String word, int level) {
+        return word(id, word, level, null);
+    }
+
+    private static SensitiveWordAutomaton.Word word(long id, String word, int level, String replacement) {
+        return new SensitiveWordAutomaton.Word(id, word, "test", level, replacement);
+    }
+}
@@ -0,0 +1,199 @@
+package com.acme.im.communication.repository;
+
+import com.acme.im.common.infrastructure.database.sharding.ShardNode;
+import com.acme.im.common.infrastructure.database.sharding.ShardRoute;
+import com.acme.im.common.infrastructure.database.sharding.ShardRouter;
+import com.acme.im.common.infrastructure.database.sharding.ShardRoutingTable;
+import com.acme.im.communication.config.MessageGroupCommitConfig;
+import com.acme.im.communication.entity.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 消息组提交写入器测试
+ * 用内存仓储替代数据库，覆盖合并提交、逐条退化和等待超时
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class MessageGroupCommitWriterTest {
+
+    private static final ShardRoutingTable TABLE = ShardRoutingTable.legacy(4, 64);
+
+    private static final ShardRouter ROUTER = new ShardRouter() {
+        @Override
+        public ShardRoute route(Long conversationId) {
+            return TABLE.route(conversationId);
+        }
+
+        @Override
+        public ShardRoutingTable current() {
+            return TABLE;
+        }
+    };
+
+    /**
+     * 内存仓储：clientMsgId为bad的消息写入失败，blockBatches不为空时批量写入提交后阻塞
+     */
+    private static class InMemoryMessageRepository extends MessageRepository {
+        private final AtomicLong ids = new AtomicLong(0);
+        private final Map<String, Message> written = new ConcurrentHashMap<>();
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        private final AtomicLong singleSaves = new AtomicLong(0);
+        private volatile CountDownLatch blockBatches;
+
+        InMemoryMessageRepository() {
+            super(ROUTER, null);
+        }
+
+        @Override
+        public Message save(Message message) {
+            singleSaves.incrementAndGet();
+            insert(message);
+            return message;
+        }
+
+        @Override
+        public List<Message> saveBatch(ShardNode node, List<Message> messages) {
+            for (Message message : messages) {
+                if ("bad".equals(message.getClientMsgId())) {
+                    throw new IllegalStateException("duplicate key");
+                }
+            }
+            for (Message message : messages) {
+                insert(message);
+            }
+            batchSizes.add(messages.size());
+            CountDownLatch latch = blockBatches;
+            if (latch != null) {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return messages;
+        }
+
+        @Override
+        public Optional<Message> findWrittenByClientMsgId(Long conversationId, String clientMsgId) {
+            return Optional.ofNullable(written.get(conversationId + ":" + clientMsgId));
+        }
+
+        private void insert(Message message) {
+            if ("bad".equals(message.getClientMsgId())) {
+                throw new IllegalStateException("duplicate key");
+            }
+            message.setId(ids.incrementAndGet());
+            written.put(message.getConversationId() + ":" + message.getClientMsgId(), message);
+        }
+    }
+
+    private final InMemoryMessageRepository repository = new InMemoryMessageRepository();
+    private MessageGroupCommitWriter writer;
+
+    private MessageGroupCommitWriter writer(int maxBatchSize, long maxWaitMs, long writeTimeoutMs) {
+        MessageGroupCommitConfig config = new MessageGroupCommitConfig();
+        config.setMaxBatchSize(maxBatchSize);
+        config.setMaxWaitMs(maxWaitMs);
+        config.setWriteTimeoutMs(writeTimeoutMs);
+        writer = new MessageGroupCommitWriter(repository, ROUTER, config);
+        writer.initialize();
+        return writer;
+    }
+
+    private static Message message(long conversationId, String clientMsgId) {
+        return Message.builder().conversationId(conversationId).clientMsgId(clientMsgId).build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        CountDownLatch latch = repository.blockBatches;
+        if (latch != null) {
+            latch.countDown();
+        }
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentWritesAreBatched() throws Exception {
+        MessageGroupCommitWriter writer = writer(8, 200, 5000);
+        ExecutorService senders = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Message>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String clientMsgId = "c" + i;
+                results.add(senders.submit(() -> writer.save(message(4, clientMsgId))));
+            }
+            for (Future<Message> result : results) {
+                assertNotNull(result.get(5, TimeUnit.SECONDS).getId());
+            }
+        } finally {
+            senders.shutdownNow();
+        }
+        assertEquals(8, repository.batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(repository.batchSizes.size() < 8, "同一分表的并发写入应合并: " + repository.batchSizes);
+        assertEquals(0, repository.singleSaves.get());
+    }
+
+    @Test
+    public void testFailedBatchFallsBackToSingleRows() throws Exception {
+        MessageGroupCommitWriter writer = writer(3, 200, 5000);
+        ExecutorService senders = Executors.newFixedThreadPool(3);
+        try {
+            Future<Message> good1 = senders.submit(() -> writer.save(message(4, "g1")));
+            Future<Message> bad = senders.submit(() -> writer.save(message(4, "bad")));
+            Future<Message> good2 = senders.submit(() -> writer.save(message(4, "g2")));
+
+            assertNotNull(good1.get(5, TimeUnit.SECONDS).getId());
+            assertNotNull(good2.get(5, TimeUnit.SECONDS).getId());
+            Exception error = assertThrows(Exception.class, () -> bad.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, error.getCause(), "只有出错的消息失败");
+        } finally {
+            senders.shutdownNow();
+        }
+        assertEquals(3, repository.singleSaves.get());
+        assertEquals(1, writer.getStats().values().iterator().next().getFallbacks());
+    }
+
+    @Test
+    public void testTimeoutWhileQueuedIsNeverWritten() {
+        MessageGroupCommitWriter writer = writer(64, 60_000, 50);
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> writer.save(message(4, "late")));
+        assertTrue(error.getMessage().contains("未写入"), error.getMessage());
+
+        // 关闭时刷写剩余队列，已撤销的消息不能再落库
+        writer.shutdown();
+        assertTrue(repository.written.isEmpty());
+        assertTrue(repository.batchSizes.isEmpty());
+    }
+
+    @Test
+    public void testTimeoutWhileWritingResolvesByClientMsgId() {
+        repository.blockBatches = new CountDownLatch(1);
+        MessageGroupCommitWriter writer = writer(64, 1, 50);
+
+        Message saved = writer.save(message(4, "slow"));
+        assertNotNull(saved.getId(), "写入已提交但确认超时，回查返回已落库的消息");
+        assertEquals("slow", saved.getClientMsgId());
+        assertEquals(1, writer.getStats().values().iterator().next().getTimeouts());
+    }
+}
@@ -0,0 +1,92 @@
+package com.acme.im.communication.repository;
+
+import com.acme.im.common.infrastructure.database.sharding.MigrationPhase;
+import com.acme.im.common.infrastructure.database.sharding.ShardNode;
+import com.acme.im.common.infrastructure.database.sharding.ShardRoute;
+import com.acme.im.common.infrastructure.database.sharding.ShardRoutingTable;
+import com.acme.im.common.infrastructure.database.sharding.ShardScan;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分片路由表测试
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class ShardRoutingTableTest {
+
+    private static final ShardNode TARGET = new ShardNode("shard-b", "messages_00");
+
+    private static ShardScan scanOf(ShardRoutingTable table, ShardNode node) {
+        return table.getScans().stream().filter(scan -> scan.getNode().equals(node)).findFirst().orElse(null);
+    }
+
+    @Test
+    public void testLegacyLayoutMatchesModuloSharding() {
+        ShardRoutingTable table = ShardRoutingTable.legacy(32, 1024);
+
+        for (long conversationId : new long[]{0, 1, 31, 32, 1023, 1024, 987654321L}) {
+            ShardRoute route = table.route(conversationId);
+            assertEquals(String.format("messages_%02d", conversationId % 32), route.getReadNode().getTableName());
+            assertSame(route.getReadNode(), route.getWriteNode());
+            assertFalse(route.isDualWrite());
+        }
+        assertEquals(32, table.getScans().size());
+        assertNull(table.getScans().get(0).getSlots());
+    }
+
+    @Test
+    public void testMigrationPhasesMoveReadsThenWrites() {
+        ShardRoutingTable legacy = ShardRoutingTable.legacy(32, 1024);
+        // 槽32与槽64都属于messages_00
+        int[] slots = {32, 64};
+        ShardNode source = legacy.routeSlot(32).getWriteNode();
+
+        ShardRoutingTable dualWrite = legacy.startMigration(slots, TARGET);
+        ShardRoute route = dualWrite.route(1024 + 32);
+        assertEquals(1, dualWrite.getVersion());
+        assertEquals(MigrationPhase.DUAL_WRITE, route.getPhase());
+        assertEquals(source, route.getReadNode());
+        assertEquals(TARGET, route.getShadowNode());
+        // 目标节点不提供读，源节点无需过滤
+        assertNull(scanOf(dualWrite, TARGET));
+        assertNull(scanOf(dualWrite, source).getSlots());
+
+        ShardRoutingTable cutover = dualWrite.cutover(slots);
+        route = cutover.routeSlot(64);
+        assertEquals(TARGET, route.getReadNode());
+        assertEquals(source, route.getWriteNode());
+        // 目标节点只有迁移槽的数据，源节点上迁移槽的数据不再提供读
+        assertNull(scanOf(cutover, TARGET).getSlots());
+        assertEquals(30, scanOf(cutover, source).getSlots().length);
+
+        ShardRoutingTable completed = cutover.complete(slots);
+        route = completed.routeSlot(32);
+        assertEquals(TARGET, route.getWriteNode());
+        assertFalse(route.isDualWrite());
+        assertNotNull(scanOf(completed, source).getSlots());
+
+        ShardRoutingTable cleaned = completed.clearResidual(slots);
+        assertNull(scanOf(cleaned, source).getSlots());
+        assertNull(scanOf(cleaned, TARGET).getSlots());
+        assertEquals(4, cleaned.getVersion());
+    }
+
+    @Test
+    public void testInvalidMigrationsRejected() {
+        ShardRoutingTable legacy = ShardRoutingTable.legacy(32, 1024);
+
+        // 不同源节点的槽不能一起迁移
+        assertThrows(IllegalStateException.class, () -> legacy.startMigration(new int[]{0, 1}, TARGET));
+        // 目标节点已承载数据
+        assertThrows(IllegalStateException.class,
+                () -> legacy.startMigration(new int[]{0}, legacy.routeSlot(1).getWriteNode()));
+
+        ShardRoutingTable dualWrite = legacy.startMigration(new int[]{0}, TARGET);
+        assertThrows(IllegalStateException.class, () -> dualWrite.complete(new int[]{0}));
+        assertThrows(IllegalStateException.class, () -> dualWrite.cutover(new int[]{0}).abort(new int[]{0}));
+        assertFalse(dualWrite.abort(new int[]{0}).route(0).isDualWrite());
+    }
+}
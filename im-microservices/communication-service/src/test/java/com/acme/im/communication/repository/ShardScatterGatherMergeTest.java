@@ -0,0 +1,72 @@
+package com.acme.im.communication.repository;
+
+import com.acme.im.communication.entity.Message;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 跨分表k路归并测试
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class ShardScatterGatherMergeTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private static Message message(long id, int second) {
+        return Message.builder().id(id).conversationId(id % 32).seq(id).serverTimestamp(BASE.plusSeconds(second)).build();
+    }
+
+    /**
+     * 构造已按时间倒序写入且已结束的分表游标
+     */
+    private static ShardScatterGatherExecutor.ShardCursor cursor(String table, Message... rows) {
+        ShardScatterGatherExecutor.ShardCursor cursor = new ShardScatterGatherExecutor.ShardCursor(table);
+        for (Message row : rows) {
+            cursor.rows.add(row);
+        }
+        cursor.rows.add(ShardScatterGatherExecutor.END);
+        return cursor;
+    }
+
+    private static long deadline() {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Test
+    public void testMergeOrdersAcrossShardsAndStopsAtLimit() {
+        ShardScatterGatherExecutor.ShardCursor[] cursors = {
+                cursor("messages_00", message(1, 50), message(2, 20)),
+                cursor("messages_01"),
+                cursor("messages_02", message(3, 40), message(4, 30), message(5, 10))
+        };
+
+        List<Message> merged = ShardScatterGatherExecutor.merge(cursors,
+                ShardScatterGatherExecutor.MergeOrder.SERVER_TIME_DESC.getComparator(), 4, deadline());
+
+        assertArrayEquals(new long[]{1, 3, 4, 2}, merged.stream().mapToLong(Message::getId).toArray());
+        // 凑满limit后不再继续读取，messages_02的结束标记仍在队列中
+        assertEquals(1, cursors[2].rows.size());
+    }
+
+    @Test
+    public void testShardErrorAndTimeoutPropagate() {
+        ShardScatterGatherExecutor.ShardCursor failed = new ShardScatterGatherExecutor.ShardCursor("messages_03");
+        failed.rows.add(new IllegalStateException("boom"));
+        assertThrows(IllegalStateException.class, () -> ShardScatterGatherExecutor.merge(
+                new ShardScatterGatherExecutor.ShardCursor[]{failed},
+                ShardScatterGatherExecutor.MergeOrder.SEQ_DESC.getComparator(), 10, deadline()));
+
+        ShardScatterGatherExecutor.ShardCursor slow = new ShardScatterGatherExecutor.ShardCursor("messages_04");
+        assertThrows(QueryTimeoutException.class, () -> ShardScatterGatherExecutor.merge(
+                new ShardScatterGatherExecutor.ShardCursor[]{slow},
+                ShardScatterGatherExecutor.MergeOrder.SEQ_DESC.getComparator(), 10, System.nanoTime()));
+    }
+}
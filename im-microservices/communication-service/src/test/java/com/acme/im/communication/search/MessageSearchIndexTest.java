@@ -0,0 +1,166 @@
+package com.acme.im.communication.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 消息搜索索引测试
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class MessageSearchIndexTest {
+
+    private static SearchDocument doc(long conversationId, long messageId, long senderId, int msgType,
+                                      long timestamp, String content) {
+        return new SearchDocument(conversationId, messageId, messageId, senderId, msgType, timestamp, content);
+    }
+
+    private static MessageSearchQuery keyword(String keyword, int limit) {
+        return MessageSearchQuery.builder().keyword(keyword).limit(limit).build();
+    }
+
+    private static List<Long> ids(MessageSearchResult result) {
+        List<Long> ids = new ArrayList<>();
+        for (SearchDocument hit : result.getHits()) {
+            ids.add(hit.getMessageId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testTokenizer() {
+        assertEquals("abc 123", NgramTokenizer.normalize("ＡＢＣ　１２３"));
+        assertEquals(Set.of("今", "天", "今天", "ok"), NgramTokenizer.indexTerms("今天OK"));
+        assertEquals(Set.of("今天"), NgramTokenizer.queryTerms("今天"));
+        assertEquals(Set.of("天"), NgramTokenizer.queryTerms("天"));
+        assertTrue(NgramTokenizer.queryTerms("k").isEmpty(), "单个字母没有可用的索引词");
+        assertEquals(List.of("hello", "世界"), NgramTokenizer.keywords("  Hello\t世界 "));
+    }
+
+    @Test
+    public void testKeywordAndFilters() {
+        MessageSearchIndex index = new MessageSearchIndex(4, 1000);
+        index.add(doc(1, 1, 10, 0, 1000, "今天下午开会"));
+        index.add(doc(2, 2, 11, 0, 2000, "明天开会讨论 Release 计划"));
+        index.add(doc(1, 3, 11, 2, 3000, "会议纪要.pdf"));
+        index.add(doc(3, 4, 10, 0, 4000, "下午茶"));
+
+        assertEquals(List.of(2L, 1L), ids(index.search(keyword("开会", 10))));
+        assertEquals(List.of(4L, 1L), ids(index.search(keyword("下午", 10))));
+        assertEquals(List.of(2L), ids(index.search(keyword("ｒｅｌｅａｓｅ 计划", 10))), "全角大写归一化后命中");
+        assertEquals(List.of(3L), ids(index.search(keyword("pdf", 10))));
+        MessageSearchQuery byConversation = MessageSearchQuery.builder().keyword("会").conversationIds(Set.of(1L))
+                .limit(10).build();
+        assertEquals(List.of(3L, 1L), ids(index.search(byConversation)));
+        assertTrue(index.search(keyword("开会讨论下午", 10)).getHits().isEmpty());
+
+        MessageSearchQuery bySender = MessageSearchQuery.builder().keyword("会").senderId(11L).limit(10).build();
+        assertEquals(List.of(3L, 2L), ids(index.search(bySender)));
+
+        MessageSearchQuery byType = MessageSearchQuery.builder().keyword("会").msgTypes(Set.of(2)).limit(10).build();
+        assertEquals(List.of(3L), ids(index.search(byType)));
+
+        MessageSearchQuery byTime = MessageSearchQuery.builder().keyword("会").startTime(1000L).endTime(3000L)
+                .limit(10).build();
+        assertEquals(List.of(2L, 1L), ids(index.search(byTime)), "结束时间不含");
+
+        MessageSearchQuery filterOnly = MessageSearchQuery.builder().senderId(10L).limit(10).build();
+        assertEquals(List.of(4L, 1L), ids(index.search(filterOnly)));
+    }
+
+    @Test
+    public void testEditAndRemove() {
+        MessageSearchIndex index = new MessageSearchIndex(4, 1000);
+        index.add(doc(1, 1, 10, 0, 1000, "周五发布"));
+        index.add(doc(1, 2, 10, 0, 2000, "周五聚餐"));
+        assertFalse(index.add(doc(1, 2, 10, 0, 2000, "重复写入")));
+
+        assertTrue(index.edit(1, 1, "周六发布"));
+        assertEquals(List.of(2L), ids(index.search(keyword("周五", 10))), "编辑后旧内容不再命中");
+        assertEquals(List.of(1L), ids(index.search(keyword("周六", 10))));
+
+        assertTrue(index.remove(1, 2));
+        assertFalse(index.remove(1, 2));
+        assertTrue(index.search(keyword("聚餐", 10)).getHits().isEmpty());
+        assertEquals(1, index.liveDocs());
+    }
+
+    @Test
+    public void testCursorPaging() {
+        MessageSearchIndex index = new MessageSearchIndex(8, 1000);
+        for (int i = 1; i <= 25; i++) {
+            index.add(doc(i % 5, i, 10, 0, 1000L * (i / 2), "消息" + i));
+        }
+        List<Long> seen = new ArrayList<>();
+        MessageSearchQuery query = keyword("消息", 10);
+        int pages = 0;
+        while (true) {
+            MessageSearchResult result = index.search(query);
+            seen.addAll(ids(result));
+            pages++;
+            if (result.getNextCursor() == null) {
+                break;
+            }
+            query = MessageSearchQuery.builder().keyword("消息").cursor(result.getNextCursor()).limit(10).build();
+        }
+        assertEquals(3, pages);
+        assertEquals(25, seen.size());
+        assertEquals(25, new HashSet<>(seen).size(), "分页不重复不遗漏");
+        assertThrows(IllegalArgumentException.class,
+                () -> index.search(MessageSearchQuery.builder().cursor("bad").limit(10).build()));
+    }
+
+    @Test
+    public void testMatchesNaiveContains() {
+        String alphabet = "今天明会议发布abc1 ";
+        Random random = new Random(42);
+        MessageSearchIndex index = new MessageSearchIndex(4, 100000);
+        List<SearchDocument> docs = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder content = new StringBuilder();
+            int length = 1 + random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                content.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            SearchDocument doc = doc(random.nextInt(50), i, random.nextInt(5), 0, i, content.toString());
+            docs.add(doc);
+            index.add(doc);
+        }
+        for (int q = 0; q < 200; q++) {
+            StringBuilder keyword = new StringBuilder();
+            int length = 1 + random.nextInt(3);
+            for (int j = 0; j < length; j++) {
+                keyword.append(alphabet.charAt(random.nextInt(alphabet.length() - 1)));
+            }
+            List<Long> expected = new ArrayList<>();
+            for (int i = docs.size() - 1; i >= 0 && expected.size() < 20; i--) {
+                if (docs.get(i).getContent().contains(keyword)) {
+                    expected.add(docs.get(i).getMessageId());
+                }
+            }
+            assertEquals(expected, ids(index.search(keyword(keyword.toString(), 20))), "关键词: " + keyword);
+        }
+    }
+
+    @Test
+    public void testCoverageAdvancesOnEviction() {
+        MessageSearchIndex index = new MessageSearchIndex(1, 10);
+        for (int i = 1; i <= 10; i++) {
+            index.add(doc(1, i, 10, 0, 1000L * i, "消息" + i));
+        }
+        assertEquals(Long.MIN_VALUE, index.coveredSince(1), "未淘汰时全部覆盖");
+
+        index.add(doc(1, 11, 10, 0, 11000, "消息11"));
+        assertEquals(9, index.liveDocs());
+        assertEquals(2001, index.coveredSince(1), "最旧的两条被淘汰，覆盖起点推进到其后");
+        assertEquals(List.of(11L, 10L, 9L, 8L, 7L, 6L, 5L, 4L, 3L), ids(index.search(keyword("消息", 20))));
+    }
+}
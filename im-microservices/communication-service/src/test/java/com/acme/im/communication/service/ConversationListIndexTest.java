@@ -0,0 +1,68 @@
+package com.acme.im.communication.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 会话列表索引编码测试
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class ConversationListIndexTest {
+
+    @Test
+    public void testEntryRoundTrip() {
+        ConversationSummary summary = new ConversationSummary();
+        summary.setLastMessageId(900001);
+        summary.setLastSeq(42);
+        summary.setLastSenderId(7);
+        summary.setLastMsgType(1);
+        summary.setLastMessageTime(1_700_000_000_123L);
+        summary.setLastMessagePreview(ConversationListIndex.preview("a|b\nc", 60));
+
+        ConversationSummary decoded = new ConversationSummary();
+        assertTrue(ConversationListIndex.decode(ConversationListIndex.encode(summary), decoded));
+        assertEquals(900001, decoded.getLastMessageId());
+        assertEquals(42, decoded.getLastSeq());
+        assertEquals(7, decoded.getLastSenderId());
+        assertEquals(1, decoded.getLastMsgType());
+        assertEquals(1_700_000_000_123L, decoded.getLastMessageTime());
+        assertFalse(decoded.isLastMessageRecalled());
+        assertEquals("a|b c", decoded.getLastMessagePreview(), "摘要可以包含分隔符");
+        assertFalse(ConversationListIndex.needsBody(decoded));
+
+        ConversationSummary rebuilt = new ConversationSummary();
+        rebuilt.setLastMessageId(900001);
+        ConversationSummary partial = new ConversationSummary();
+        assertTrue(ConversationListIndex.decode(ConversationListIndex.encode(rebuilt), partial));
+        assertTrue(ConversationListIndex.needsBody(partial), "重建条目只有消息ID");
+
+        assertFalse(ConversationListIndex.decode("1|2|x", new ConversationSummary()));
+        assertFalse(ConversationListIndex.decode(null, new ConversationSummary()));
+    }
+
+    @Test
+    public void testPinnedScoresSortFirst() {
+        long older = ConversationListIndex.score(1_600_000_000_000L, true);
+        long newer = ConversationListIndex.score(1_700_000_000_000L, false);
+        assertTrue(older > newer, "置顶会话排在未置顶的新会话之前");
+        assertEquals(1_600_000_000_000L, ConversationListIndex.lastActiveMillis(older));
+        assertEquals(1_700_000_000_000L, ConversationListIndex.lastActiveMillis(newer));
+        assertTrue((double) older == older, "分值在double精确范围内");
+    }
+
+    @Test
+    public void testCursor() {
+        long[] position = ConversationListIndex.parseCursor(ConversationListIndex.cursor(11_700_000_000_000L, 1001));
+        assertNotNull(position);
+        assertEquals(11_700_000_000_000L, position[0]);
+        assertEquals(1001, position[1]);
+
+        assertNull(ConversationListIndex.parseCursor(null));
+        assertNull(ConversationListIndex.parseCursor(""));
+        assertNull(ConversationListIndex.parseCursor("abc"));
+        assertNull(ConversationListIndex.parseCursor("1:x"));
+    }
+}
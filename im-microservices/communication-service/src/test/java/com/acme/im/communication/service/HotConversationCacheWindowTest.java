@@ -0,0 +1,81 @@
+package com.acme.im.communication.service;
+
+import com.acme.im.communication.entity.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 热点会话缓存环形窗口测试
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class HotConversationCacheWindowTest {
+
+    private static Message message(long seq) {
+        return Message.builder().id(seq * 10).conversationId(1001L).seq(seq).status(1).content("m" + seq).build();
+    }
+
+    /**
+     * 构造seq为[from, to]的降序列表（与数据库 ORDER BY seq DESC 一致）
+     */
+    private static List<Message> desc(long from, long to) {
+        List<Message> messages = new ArrayList<>();
+        for (long seq = to; seq >= from; seq--) {
+            messages.add(message(seq));
+        }
+        return messages;
+    }
+
+    private static long[] seqs(List<Message> messages) {
+        return messages.stream().mapToLong(Message::getSeq).toArray();
+    }
+
+    @Test
+    public void testPartialWindowServesOnlyCoveredRange() {
+        HotConversationCache.RingWindow window = new HotConversationCache.RingWindow(5, desc(6, 10), false);
+
+        assertArrayEquals(new long[]{10, 9, 8}, seqs(window.latest(3)));
+        assertArrayEquals(new long[]{8, 7}, seqs(window.before(9, 2)));
+        // 窗口内seq<8只有2条，不足以回答3条且窗口不完整
+        assertNull(window.before(8, 3));
+        assertNull(window.latest(6));
+    }
+
+    @Test
+    public void testCompleteWindowAnswersAnyRange() {
+        HotConversationCache.RingWindow window = new HotConversationCache.RingWindow(5, desc(1, 3), true);
+
+        assertArrayEquals(new long[]{3, 2, 1}, seqs(window.latest(10)));
+        assertArrayEquals(new long[]{1}, seqs(window.before(2, 10)));
+        assertTrue(window.before(1, 10).isEmpty());
+    }
+
+    @Test
+    public void testUpsertKeepsOrderAndEvictsOldestWhenFull() {
+        HotConversationCache.RingWindow window = new HotConversationCache.RingWindow(4, desc(1, 3), true);
+
+        window.upsert(message(5));
+        // 乱序提交的seq 4插入到正确位置
+        window.upsert(message(4));
+        assertArrayEquals(new long[]{5, 4, 3, 2}, seqs(window.latest(4)));
+        assertFalse(window.isComplete());
+
+        // 低于覆盖范围的写入被忽略
+        window.upsert(message(1));
+        assertEquals(4, window.size());
+
+        Message edited = message(3);
+        edited.setContent("edited");
+        window.upsert(edited);
+        assertEquals("edited", window.latest(3).get(2).getContent());
+
+        window.remove(4);
+        assertArrayEquals(new long[]{5, 3, 2}, seqs(window.latest(3)));
+        assertNull(window.latest(4));
+    }
+}
@@ -0,0 +1,99 @@
+package com.acme.im.communication.service;
+
+import com.acme.im.communication.entity.Message;
+import com.acme.im.communication.repository.MessageRepository.MessageKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 收件箱同步结果页测试
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class InboxSyncPageTest {
+
+    @Test
+    public void testPointerEncoding() {
+        InboxPointer pointer = InboxPointer.parse(42, InboxPointer.member(1001, 17, 900001));
+        assertNotNull(pointer);
+        assertEquals(42, pointer.getSyncSeq());
+        assertEquals(1001, pointer.getConversationId());
+        assertEquals(17, pointer.getSeq());
+        assertEquals(900001, pointer.getMessageId());
+
+        assertNull(InboxPointer.parse(1, "1001:17"));
+        assertNull(InboxPointer.parse(1, "a:b:c"));
+    }
+
+    @Test
+    public void testContiguousPageSkipsDeletedAndAdvances() {
+        List<InboxPointer> scanned = List.of(
+                new InboxPointer(11, 1, 5, 100), new InboxPointer(12, 2, 8, 200), new InboxPointer(13, 1, 6, 101));
+        Map<MessageKey, Message> bodies = new HashMap<>();
+        bodies.put(new MessageKey(1, 100), message(1, 100, 1));
+        bodies.put(new MessageKey(1, 101), message(1, 101, 0));
+
+        InboxSyncPage page = InboxSyncPage.assemble(10, 20, 3, scanned, true, bodies);
+        assertFalse(page.isTruncated());
+        assertTrue(page.isHasMore());
+        assertEquals(13, page.getNextSyncSeq(), "跳过的消息仍推进同步点");
+        assertEquals(1, page.getMessages().size());
+        assertEquals(100L, page.getMessages().get(0).getId());
+
+        InboxSyncPage last = InboxSyncPage.assemble(13, 13, 3, List.of(), false, Map.of());
+        assertEquals(13, last.getNextSyncSeq());
+        assertFalse(last.isTruncated());
+    }
+
+    @Test
+    public void testTrimmedAndResetTimelines() {
+        InboxSyncPage trimmed = InboxSyncPage.assemble(10, 30, 15,
+                List.of(new InboxPointer(15, 1, 9, 300)), false, Map.of(new MessageKey(1, 300), message(1, 300, 1)));
+        assertTrue(trimmed.isTruncated(), "11到14已被裁剪");
+        assertEquals(30, trimmed.getNextSyncSeq());
+
+        InboxSyncPage expired = InboxSyncPage.assemble(10, 30, 0, List.of(), false, Map.of());
+        assertTrue(expired.isTruncated());
+        assertEquals(30, expired.getNextSyncSeq());
+
+        InboxSyncPage reset = InboxSyncPage.assemble(50, 2, 1,
+                List.of(new InboxPointer(1, 1, 1, 1), new InboxPointer(2, 1, 2, 2)), false, Map.of());
+        assertTrue(reset.isTruncated(), "计数器重置后从头扫描");
+        assertEquals(2, reset.getNextSyncSeq());
+
+        assertFalse(InboxSyncPage.assemble(0, 0, 0, List.of(), false, Map.of()).isTruncated());
+    }
+
+    @Test
+    public void testSameIdInDifferentShardsIsNotMixedUp() {
+        // 两个会话落在不同分表，各自的自增ID都是500
+        List<InboxPointer> scanned = List.of(new InboxPointer(11, 1, 5, 500), new InboxPointer(12, 2, 9, 500));
+        Map<MessageKey, Message> bodies = new HashMap<>();
+        bodies.put(new MessageKey(1, 500), message(1, 500, 1));
+        bodies.put(new MessageKey(2, 500), message(2, 500, 1));
+
+        InboxSyncPage page = InboxSyncPage.assemble(10, 12, 1, scanned, false, bodies);
+        assertEquals(2, page.getMessages().size());
+        assertEquals(1L, page.getMessages().get(0).getConversationId());
+        assertEquals(2L, page.getMessages().get(1).getConversationId());
+
+        InboxSyncPage missing = InboxSyncPage.assemble(10, 12, 1, scanned, false,
+                Map.of(new MessageKey(2, 500), message(2, 500, 1)));
+        assertEquals(1, missing.getMessages().size());
+        assertEquals(2L, missing.getMessages().get(0).getConversationId(), "其他会话的同ID消息不会顶替");
+    }
+
+    private static Message message(long conversationId, long id, int status) {
+        Message message = new Message();
+        message.setConversationId(conversationId);
+        message.setId(id);
+        message.setStatus(status);
+        return message;
+    }
+}
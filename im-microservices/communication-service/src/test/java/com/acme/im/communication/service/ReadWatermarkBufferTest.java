@@ -0,0 +1,71 @@
+package com.acme.im.communication.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 已读水位合并缓冲测试
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class ReadWatermarkBufferTest {
+
+    @Test
+    public void testCoalesceAndDrain() {
+        ReadWatermarkBuffer buffer = new ReadWatermarkBuffer();
+        buffer.advance(1L, 100L, 5);
+        buffer.advance(1L, 100L, 9);
+        buffer.advance(1L, 100L, 7);
+        buffer.advance(2L, 100L, 3);
+
+        assertEquals(2, buffer.size(), "同一会话同一用户只保留一条");
+        assertEquals(9, buffer.peek(1L, 100L), "水位只前进不后退");
+        assertEquals(-1, buffer.peek(3L, 100L));
+
+        List<ReadWatermarkBuffer.Watermark> first = buffer.drain(1);
+        assertEquals(1, first.size());
+        assertEquals(1, buffer.size());
+        buffer.drain(10);
+        assertTrue(buffer.isEmpty());
+
+        // 写入失败放回时与期间的新水位合并
+        buffer.advance(1L, 100L, 12);
+        buffer.restore(List.of(new ReadWatermarkBuffer.Watermark(new ReadWatermarkBuffer.ReadKey(1L, 100L), 9)));
+        assertEquals(12, buffer.peek(1L, 100L));
+    }
+
+    @Test
+    public void testConcurrentAdvanceNeverLosesMaximum() throws Exception {
+        ReadWatermarkBuffer buffer = new ReadWatermarkBuffer();
+        AtomicLong flushedMax = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            int offset = t;
+            executor.execute(() -> {
+                for (int seq = 1; seq <= 20000; seq++) {
+                    buffer.advance(1L, 100L, seq * 4L + offset);
+                }
+            });
+        }
+        // 并发取出，模拟刷写线程
+        while (!executor.isTerminated()) {
+            for (ReadWatermarkBuffer.Watermark w : buffer.drain(100)) {
+                flushedMax.accumulateAndGet(w.getLastReadSeq(), Math::max);
+            }
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MILLISECONDS);
+        }
+        for (ReadWatermarkBuffer.Watermark w : buffer.drain(100)) {
+            flushedMax.accumulateAndGet(w.getLastReadSeq(), Math::max);
+        }
+        assertEquals(20000 * 4L + 3, flushedMax.get());
+    }
+}
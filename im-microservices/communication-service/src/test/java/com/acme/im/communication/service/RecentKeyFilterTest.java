@@ -0,0 +1,65 @@
+package com.acme.im.communication.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 近期键布隆过滤器测试
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class RecentKeyFilterTest {
+
+    @Test
+    public void testInsertedKeysAreAlwaysFound() {
+        MessageIdempotencyService.RecentKeyFilter filter = new MessageIdempotencyService.RecentKeyFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("1001:client-" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain("1001:client-" + i));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRateWithinBound() {
+        MessageIdempotencyService.RecentKeyFilter filter = new MessageIdempotencyService.RecentKeyFilter(10000, 0.01);
+        for (int i = 0; i < 9999; i++) {
+            filter.put("1001:client-" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("2002:other-" + i)) {
+                falsePositives++;
+            }
+        }
+        // 允许一定统计波动
+        assertTrue(falsePositives < 300, "误判次数过多: " + falsePositives);
+    }
+
+    @Test
+    public void testRotationKeepsPreviousGenerationAndDropsOlder() {
+        MessageIdempotencyService.RecentKeyFilter filter = new MessageIdempotencyService.RecentKeyFilter(100, 0.01);
+        for (int i = 0; i < 100; i++) {
+            filter.put("gen1:" + i);
+        }
+        // 第一代写满后轮换，仍可查到
+        assertTrue(filter.mightContain("gen1:0"));
+
+        for (int i = 0; i < 100; i++) {
+            filter.put("gen2:" + i);
+        }
+        // 再次轮换后第一代被丢弃，第二代仍可查到
+        assertTrue(filter.mightContain("gen2:0"));
+        int stillFound = 0;
+        for (int i = 0; i < 100; i++) {
+            if (filter.mightContain("gen1:" + i)) {
+                stillFound++;
+            }
+        }
+        assertTrue(stillFound < 10, "过期代的键仍被大量命中: " + stillFound);
+    }
+}
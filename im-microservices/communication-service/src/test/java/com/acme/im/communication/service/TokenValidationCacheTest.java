@@ -0,0 +1,76 @@
+package com.acme.im.communication.service;
+
+import com.acme.im.common.infrastructure.nats.dto.UserEvents;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Token验证结果缓存测试
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class TokenValidationCacheTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    public void testExpiryAndRevocationWatermark() {
+        TokenValidationCache cache = new TokenValidationCache(100);
+        String hash = TokenValidationCache.hash("token-a");
+        cache.put(hash, valid(1L, "phone"), NOW - 60_000, NOW + 1000);
+
+        assertTrue(cache.get(hash, NOW).isValid());
+        assertNull(cache.get(hash, NOW + 1000), "过期后不应命中");
+
+        cache.put(hash, valid(1L, "phone"), NOW - 60_000, NOW + 60000);
+        cache.revoke(1L, "tablet", NOW);
+        assertTrue(cache.get(hash, NOW).isValid(), "其他设备的吊销不影响本设备");
+
+        cache.revoke(1L, "phone", NOW);
+        UserEvents.TokenValidationResponse revoked = cache.get(hash, NOW);
+        assertFalse(revoked.isValid());
+        assertNull(cache.get(hash, NOW), "吊销后条目应被移除");
+
+        // 吊销之后签发的新Token不受影响，整用户吊销覆盖全部设备
+        assertFalse(cache.isRevoked(1L, "phone", NOW + 1000));
+        cache.revoke(1L, null, NOW + 10_000);
+        assertTrue(cache.isRevoked(1L, "phone", NOW + 1000));
+        assertFalse(cache.isRevoked(2L, "phone", NOW + 1000));
+
+        cache.cleanup(NOW + 3_600_000L, 60);
+        assertEquals(0, cache.getRevocationCount());
+    }
+
+    @Test
+    public void testRevocationWithinSameSecond() {
+        TokenValidationCache cache = new TokenValidationCache(100);
+        // JWT签发时间只到秒，截断后落在吊销的同一秒内
+        long issuedAtMs = NOW - NOW % 1000;
+        cache.revoke(1L, "phone", issuedAtMs + 500);
+        assertTrue(cache.isRevoked(1L, "phone", issuedAtMs), "同一秒内签发的Token视为已吊销");
+
+        cache.revoke(2L, null, issuedAtMs);
+        assertTrue(cache.isRevoked(2L, "phone", issuedAtMs), "签发时间等于水位视为已吊销");
+        assertFalse(cache.isRevoked(2L, "phone", issuedAtMs + 1000));
+    }
+
+    @Test
+    public void testCapacityBound() {
+        TokenValidationCache cache = new TokenValidationCache(64);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(TokenValidationCache.hash("token-" + i), valid((long) i, "d"), NOW, NOW + 60000);
+        }
+        assertTrue(cache.size() <= 64);
+        assertTrue(cache.getStats().getEvictions() > 0);
+    }
+
+    private static UserEvents.TokenValidationResponse valid(Long userId, String deviceId) {
+        return UserEvents.TokenValidationResponse.builder()
+                .valid(true)
+                .userId(userId)
+                .deviceId(deviceId)
+                .build();
+    }
+}
@@ -0,0 +1,69 @@
+package com.acme.im.communication.websocket;
+
+import com.acme.im.common.websocket.proto.ChatMessage;
+import com.acme.im.common.websocket.proto.MessageType;
+import com.acme.im.common.websocket.proto.WebSocketMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * protobuf帧编解码测试
+ *
+ * @author IM开发团队
+ * @since 1.0.0
+ */
+public class ProtobufFrameCodecTest {
+
+    private static WebSocketMessage chat(String id, String content) {
+        return WebSocketMessage.newBuilder()
+                .setMessageId(id)
+                .setType(MessageType.CHAT_TEXT)
+                .setConversationId("1001")
+                .setChat(ChatMessage.newBuilder().setContent(content))
+                .build();
+    }
+
+    @Test
+    public void testEncodeMatchesWriteDelimited() throws Exception {
+        WebSocketMessage message = chat("m1", "你好");
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        message.writeDelimitedTo(expected);
+
+        assertArrayEquals(expected.toByteArray(), ProtobufFrameCodec.encode(message));
+    }
+
+    @Test
+    public void testDecodeMultipleMessagesInOneFrame() throws Exception {
+        byte[] first = ProtobufFrameCodec.encode(chat("m1", "a"));
+        byte[] second = ProtobufFrameCodec.encode(chat("m2", "b".repeat(300)));
+        byte[] frame = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, frame, first.length, second.length);
+
+        List<WebSocketMessage> messages = ProtobufFrameCodec.decode(ByteBuffer.wrap(frame), 64);
+
+        assertEquals(2, messages.size());
+        assertEquals("m1", messages.get(0).getMessageId());
+        assertEquals(WebSocketMessage.PayloadCase.CHAT, messages.get(1).getPayloadCase());
+        assertEquals(300, messages.get(1).getChat().getContent().length());
+    }
+
+    @Test
+    public void testRejectsTruncatedFrameAndTooManyMessages() {
+        byte[] encoded = ProtobufFrameCodec.encode(chat("m1", "content"));
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 2);
+        assertThrows(InvalidProtocolBufferException.class,
+                () -> ProtobufFrameCodec.decode(ByteBuffer.wrap(truncated), 64));
+
+        byte[] twice = Arrays.copyOf(encoded, encoded.length * 2);
+        System.arraycopy(encoded, 0, twice, encoded.length, encoded.length);
+        assertThrows(InvalidProtocolBufferException.class,
+                () -> ProtobufFrameCodec.decode(ByteBuffer.wrap(twice), 1));
+    }
+}
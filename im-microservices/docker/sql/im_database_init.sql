@@ -540,6 +540,9 @@ CREATE TABLE `event_records` (
     INDEX `idx_failed_events` (`status`, `error_code`, `created_at`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='NATS事件记录表';
 
+-- 事件记录读视图（主表与按天分表的合集，启用分表后由EventRecordBatchWriter重建）
+CREATE OR REPLACE VIEW `event_records_all` AS SELECT * FROM `event_records`;
+
 -- 事件统计表（用于快速查询事件统计信息）
 CREATE TABLE `event_statistics` (
     `id` BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '统计ID',
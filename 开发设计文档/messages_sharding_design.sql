@@ -114,6 +114,18 @@ CREATE TABLE `messages_00` (
     FULLTEXT KEY `ft_content` (`content`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='消息表分片00（优化版）';
 
+-- ================================
+-- 分片路由表（在线扩容）
+-- 会话按 conversation_id % slot_count 落到分片槽，槽映射到物理分片节点（数据源 + 表）
+-- 每次路由变更插入一个新版本，各服务实例定时拉取最新版本；没有任何版本时使用与 % 32 一致的初始布局
+-- ================================
+CREATE TABLE `message_shard_routing` (
+    `version` BIGINT PRIMARY KEY COMMENT '路由表版本',
+    `layout` JSON NOT NULL COMMENT '路由布局：节点列表、槽映射、迁移目标与阶段、残留槽',
+    `description` VARCHAR(255) COMMENT '变更说明',
+    `created_at` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '发布时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='消息分片路由表';
+
 -- ================================
 -- 批量创建分表的存储过程（保留，因为有用）
 -- ================================